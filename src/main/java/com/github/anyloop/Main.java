@@ -23,17 +23,33 @@
 
 package com.github.anyloop;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.anyloop.amplitude.AmplitudeStage;
 import com.github.anyloop.chassis.ClassHelper;
 import com.github.anyloop.chassis.Configurator;
 import com.github.anyloop.chassis.ConfigurableRunnable;
+import com.github.anyloop.chassis.ConfigurationException;
 import com.github.anyloop.chassis.DefaultConfigurator;
 import com.github.anyloop.chassis.annotations.ConfigProperty;
 import com.github.anyloop.chassis.annotations.DefaultValue;
+import com.github.anyloop.codegen.OptimizerStage;
+import com.github.anyloop.diagrams.DiagramStage;
+import com.github.anyloop.distributed.DistributedConfig;
+import com.github.anyloop.distributed.JvmLauncher;
+import com.github.anyloop.distributed.PartitionTask;
+import com.github.anyloop.distributed.Worker;
+import com.github.anyloop.distributed.WorkerLauncher;
+import com.github.anyloop.ibp.ReductionStage;
+import com.github.anyloop.symbolic.MemoryBudget;
+import com.github.anyloop.symbolic.MemoryConfig;
 
 /**
  * The main class of the AnyLoop program.
@@ -48,8 +64,13 @@ public final class Main {
     private interface MainConfig {
 
         @ConfigProperty("debug")
+        @DefaultValue("false")
         boolean getDebug();
 
+        /**
+         * The number of worker threads; zero or less means one per
+         * available processor.
+         */
         @ConfigProperty("jobs")
         @DefaultValue("1")
         int getNumberOfJobs();
@@ -83,13 +104,48 @@ public final class Main {
 
             private MainConfig config;
 
+            private MemoryConfig memoryConfig;
+
+            private DistributedConfig distributedConfig;
+
+            private final DiagramStage diagrams = new DiagramStage();
+
+            private final AmplitudeStage amplitudes = new AmplitudeStage();
+
+            private final ReductionStage reduction = new ReductionStage();
+
+            private final OptimizerStage optimizer = new OptimizerStage();
+
             @Override
             public void init(final Configurator c) {
                 this.config = c.create(MainConfig.class);
+                this.memoryConfig = c.create(MemoryConfig.class);
+                this.distributedConfig = c.create(DistributedConfig.class);
+                this.diagrams.init(c);
+                this.amplitudes.init(c);
+                this.reduction.init(c);
+                this.optimizer.init(c);
             }
 
             @Override
             public void run() {
+                final String coordinator;
+                try {
+                    coordinator = this.distributedConfig.getCoordinator();
+                } catch (ConfigurationException ex) {
+                    logger.error("Configuration failed", ex);
+                    return;
+                }
+                final int jobs = this.jobs();
+                this.diagrams.setJobs(jobs);
+                this.reduction.setJobs(jobs);
+                if (!coordinator.isEmpty()) {
+                    // a worker started by a coordinator; its output
+                    // goes back over the connection
+                    this.work(coordinator);
+                    return;
+                }
+
                 final String notice = String.format(
                     properties.getProperty("copyright"),
                     getName() + " " + getVersion(),
@@ -101,10 +157,67 @@ public final class Main {
                     logger.debug("This is a debug message");
                 }
                 logger.info("JOBS = " + this.config.getNumberOfJobs());
+
+                final MemoryBudget budget;
+                try {
+                    // one budget for all stages which build large sums
+                    budget = MemoryBudget.fromConfig(this.memoryConfig);
+                    final WorkerLauncher launcher = JvmLauncher.fromConfig(
+                        this.distributedConfig, Main.class.getName(),
+                        Arrays.asList(args));
+                    this.diagrams.setDebug(this.config.getDebug());
+                    this.diagrams.setLauncher(launcher);
+                    this.reduction.setLauncher(launcher);
+                    this.reduction.setMemoryBudget(budget);
+                    this.optimizer.setMemoryBudget(budget);
+                    // a later stage is not run on the output of a
+                    // stage which is configured wrongly
+                    this.diagrams.generate();
+                    this.amplitudes.evaluate();
+                    this.reduction.reduce();
+                } catch (ConfigurationException ex) {
+                    logger.error("Configuration failed", ex);
+                    return;
+                }
+                this.optimizer.run();
+                logger.info(String.format("Memory budget: peak of %d"
+                    + " of %d bytes", budget.getPeak(), budget.getLimit()));
+            }
+
+            /**
+             * Returns the number of worker threads.
+             */
+            private int jobs() {
+                final int jobs = this.config.getNumberOfJobs();
+                return jobs < 1
+                    ? Runtime.getRuntime().availableProcessors() : jobs;
+            }
+
+            /**
+             * Serves a coordinator as a worker, computing the
+             * partitions of the stages it assigns.
+             */
+            private void work(final String coordinator) {
+                final Map<String, PartitionTask> tasks = new HashMap<>();
+                tasks.put(this.diagrams.getName(),
+                    this.diagrams.getPartitionTask());
+                tasks.put(this.reduction.getName(),
+                    this.reduction.getPartitionTask());
+                try {
+                    Worker.serve(coordinator,
+                        this.distributedConfig.getWorker(), tasks);
+                } catch (ConfigurationException | IOException ex) {
+                    logger.error("Worker failed", ex);
+                }
             }
 
             @Override
-            public void terminate() { }
+            public void terminate() {
+                this.diagrams.terminate();
+                this.amplitudes.terminate();
+                this.reduction.terminate();
+                this.optimizer.terminate();
+            }
 
             @Override
             public synchronized String getVersion() {
@@ -0,0 +1,119 @@
+/*
+ * AmplitudeConfig.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.amplitude;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.chassis.annotations.ConfigProperty;
+import com.github.anyloop.chassis.annotations.DefaultValue;
+
+/**
+ * Configuration of the numerical evaluation of tree amplitudes.
+ *
+ * The couplings and masses of the model are symbols, whose values are
+ * given here. In YAML notation:
+ * <pre>
+ * amplitude:
+ *   points: 1000
+ *   seed: 1
+ *   energy: 10
+ *   parameters:
+ *     parameter:
+ *       - name: g
+ *         value: 0.5
+ *       - name: m
+ *         value: 1
+ * </pre>
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public interface AmplitudeConfig {
+
+    /**
+     * Configuration object for the value of a symbol.
+     *
+     * @since 0.1.0
+     */
+    interface Parameter {
+        /**
+         * The symbol of a coupling or mass of the model.
+         *
+         * @return the symbol
+         * @throws ConfigurationException if the name is missing
+         */
+        @ConfigProperty(".name")
+        String getName() throws ConfigurationException;
+
+        /**
+         * The value of the symbol.
+         *
+         * @return the value
+         * @throws ConfigurationException if the value is missing
+         */
+        @ConfigProperty(".value")
+        double getValue() throws ConfigurationException;
+    }
+
+    /**
+     * The number of random phase-space points at which the tree
+     * amplitude of the process is evaluated. Zero skips the
+     * evaluation.
+     *
+     * @return the number of points
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("amplitude.points")
+    @DefaultValue("0")
+    int getPoints() throws ConfigurationException;
+
+    /**
+     * The seed of the random phase-space points.
+     *
+     * @return the seed
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("amplitude.seed")
+    @DefaultValue("1")
+    long getSeed() throws ConfigurationException;
+
+    /**
+     * The energy in the centre-of-mass frame of the incoming
+     * particles, in the units of the masses.
+     *
+     * @return the energy
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("amplitude.energy")
+    @DefaultValue("10")
+    double getEnergy() throws ConfigurationException;
+
+    /**
+     * The values of the couplings and masses.
+     *
+     * @return the values
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("amplitude.parameters.parameter")
+    Parameter[] getParameters() throws ConfigurationException;
+}
@@ -0,0 +1,243 @@
+/*
+ * AmplitudeEngine.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.amplitude;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.model.Model;
+import com.github.anyloop.model.ProcessConfig;
+import com.github.anyloop.model.ScatteringProcess;
+
+/**
+ * Evaluates the tree amplitude of a process of scalar particles.
+ *
+ * A vertex with coupling <code>g</code> contributes <code>-i g</code>
+ * and a propagator <code>i / (q^2 - m^2)</code>, so that a tree
+ * diagram with couplings <code>g_v</code> and propagators
+ * <code>q_e</code> contributes
+ * <code>-prod g_v * prod 1 / (q_e^2 - m_e^2)</code> to the amplitude
+ * <code>M</code>. The momenta of a phase-space point are stored
+ * contiguously in a <code>double[]</code> as <code>E, px, py, pz</code>
+ * per leg, incoming legs first, with the physical direction of flow.
+ * The filters of the process do not apply, as they remove no tree
+ * diagram of a scalar theory without two-point vertices.
+ *
+ * Instances keep workspaces for the evaluation and are not
+ * thread-safe.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public abstract class AmplitudeEngine {
+
+    /**
+     * The process.
+     */
+    private final ScatteringProcess process;
+
+    /**
+     * The values of the symbols.
+     */
+    private final Map<String, Double> parameters;
+
+    /**
+     * Creates an engine.
+     *
+     * @param theProcess the process
+     * @param theParameters the values of the couplings and masses
+     * @throws IllegalArgumentException if the model has fields other
+     *         than scalars or vertices with less than three legs
+     */
+    AmplitudeEngine(
+            final ScatteringProcess theProcess,
+            final Map<String, Double> theParameters) {
+        final Model model = theProcess.getModel();
+        for (int f = 0; f < model.getFieldCount(); ++f) {
+            if (model.getTwiceSpin(f) != 0) {
+                throw new IllegalArgumentException(
+                    "Only scalar fields are supported, not "
+                    + model.getFieldName(f));
+            }
+        }
+        for (int t = 0; t < model.getVertexTypeCount(); ++t) {
+            if (model.getVertexDegree(t) < 3) {
+                throw new IllegalArgumentException(
+                    "Vertices with less than three legs are not"
+                    + " supported");
+            }
+        }
+        this.process = theProcess;
+        this.parameters = new HashMap<>(theParameters);
+    }
+
+    /**
+     * Creates an engine.
+     *
+     * @param method <code>diagrams</code> for the sum over the Feynman
+     *        diagrams or <code>berends-giele</code> for the recursion
+     *        of off-shell currents
+     * @param process the process
+     * @param parameters the values of the couplings and masses
+     * @return the engine
+     * @throws IllegalArgumentException if the method is unknown, the
+     *         model is not supported or a value is missing
+     *
+     * @since 0.1.0
+     */
+    public static AmplitudeEngine create(
+            final String method,
+            final ScatteringProcess process,
+            final Map<String, Double> parameters) {
+        switch (method) {
+            case DiagramAmplitude.METHOD:
+                return new DiagramAmplitude(process, parameters);
+            case BerendsGiele.METHOD:
+                return new BerendsGiele(process, parameters);
+            default:
+                throw new IllegalArgumentException(
+                    "Unknown amplitude method " + method);
+        }
+    }
+
+    /**
+     * Creates the engine chosen for a process.
+     *
+     * @param processConfig the configuration of the process
+     * @param process the process
+     * @param config the configuration of the values
+     * @return the engine
+     * @throws ConfigurationException if the method is unknown, the
+     *         model is not supported or a value is missing
+     *
+     * @since 0.1.0
+     */
+    public static AmplitudeEngine fromConfig(
+            final ProcessConfig processConfig,
+            final ScatteringProcess process,
+            final AmplitudeConfig config) throws ConfigurationException {
+        final Map<String, Double> parameters = new HashMap<>();
+        for (final AmplitudeConfig.Parameter p : config.getParameters()) {
+            if (parameters.put(p.getName(), p.getValue()) != null) {
+                throw new ConfigurationException(
+                    "Duplicate parameter " + p.getName());
+            }
+        }
+        try {
+            return create(processConfig.getAmplitude(), process,
+                parameters);
+        } catch (IllegalArgumentException ex) {
+            throw new ConfigurationException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Returns the name of the method.
+     *
+     * @return the value of <code>process.amplitude</code> selecting
+     *         this engine
+     *
+     * @since 0.1.0
+     */
+    public abstract String getMethod();
+
+    /**
+     * Returns the process.
+     *
+     * @return the process
+     *
+     * @since 0.1.0
+     */
+    public ScatteringProcess getProcess() {
+        return this.process;
+    }
+
+    /**
+     * Returns the mass of an external leg.
+     *
+     * @param leg the index of the leg
+     * @return the mass
+     *
+     * @since 0.1.0
+     */
+    public double getMass(final int leg) {
+        return this.value(this.process.getModel().getMass(
+            this.process.getExternalField(leg)));
+    }
+
+    /**
+     * Evaluates the amplitude at a phase-space point.
+     *
+     * @param momenta the momenta of the legs
+     * @param offset the index of the energy of the first leg
+     * @return the amplitude <code>M</code>
+     *
+     * @since 0.1.0
+     */
+    public abstract double evaluate(double[] momenta, int offset);
+
+    /**
+     * Returns the value of a symbol.
+     *
+     * @param symbol a symbol or a number
+     * @return the value
+     * @throws IllegalArgumentException if no value is given
+     */
+    final double value(final String symbol) {
+        final Double v = this.parameters.get(symbol);
+        if (v != null) {
+            return v;
+        }
+        try {
+            return Double.parseDouble(symbol);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(
+                "No value for parameter " + symbol, ex);
+        }
+    }
+
+    /**
+     * Returns the squared mass of a field.
+     *
+     * @param field the field ID
+     * @return the squared mass
+     */
+    final double massSquared(final int field) {
+        final double m = this.value(this.process.getModel().getMass(field));
+        return m * m;
+    }
+
+    /**
+     * Returns the sign which turns the momentum of a leg into an
+     * outgoing one.
+     *
+     * @param leg the index of the leg
+     * @return <code>-1</code> for incoming and <code>1</code> for
+     *         outgoing legs
+     */
+    final double sign(final int leg) {
+        return leg < this.process.getIncomingCount() ? -1 : 1;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * AmplitudeStage.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.amplitude;
+
+import java.util.Random;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.anyloop.chassis.ClassHelper;
+import com.github.anyloop.chassis.ConfigurableRunnable;
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.chassis.Configurator;
+import com.github.anyloop.model.Model;
+import com.github.anyloop.model.ModelConfig;
+import com.github.anyloop.model.ProcessConfig;
+import com.github.anyloop.model.ScatteringProcess;
+
+/**
+ * The pipeline stage which evaluates the tree amplitude of the
+ * configured process at random phase-space points.
+ *
+ * The stage runs if the model has particles and
+ * <code>amplitude.points</code> is positive. It reports the mean of
+ * the squared amplitude over the points, which are drawn by a
+ * {@link PhaseSpace} from the seed <code>amplitude.seed</code>, and
+ * the time taken by the {@link AmplitudeEngine} chosen for the
+ * process.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class AmplitudeStage implements ConfigurableRunnable {
+
+    /**
+     * The logger of this class.
+     */
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(AmplitudeStage.class);
+
+    private ModelConfig modelConfig;
+
+    private ProcessConfig processConfig;
+
+    private AmplitudeConfig config;
+
+    @Override
+    public String getName() {
+        return "amplitudes";
+    }
+
+    @Override
+    public String getVersion() {
+        return ClassHelper.getVersion(AmplitudeStage.class);
+    }
+
+    @Override
+    public void init(final Configurator theConfigurator) {
+        this.modelConfig = theConfigurator.create(ModelConfig.class);
+        this.processConfig = theConfigurator.create(ProcessConfig.class);
+        this.config = theConfigurator.create(AmplitudeConfig.class);
+    }
+
+    @Override
+    public void run() {
+        try {
+            this.evaluate();
+        } catch (ConfigurationException ex) {
+            LOGGER.error("Configuration failed", ex);
+        }
+    }
+
+    /**
+     * Evaluates the amplitude, if the model has particles and points
+     * are asked for.
+     *
+     * @throws ConfigurationException if the configuration is invalid
+     *
+     * @since 0.1.0
+     */
+    public void evaluate() throws ConfigurationException {
+        final int points = this.config.getPoints();
+        if (points <= 0 || this.modelConfig.getParticles().length == 0) {
+            return;
+        }
+        final ScatteringProcess process = ScatteringProcess.fromConfig(
+            this.processConfig, Model.fromConfig(this.modelConfig));
+        final AmplitudeEngine engine = AmplitudeEngine.fromConfig(
+            this.processConfig, process, this.config);
+        final PhaseSpace space;
+        try {
+            space = PhaseSpace.of(engine, this.config.getEnergy());
+        } catch (IllegalArgumentException ex) {
+            throw new ConfigurationException(ex.getMessage(), ex);
+        }
+        final Random random = new Random(this.config.getSeed());
+        final double[] momenta = new double[4 * space.getLegCount()];
+        final long start = System.nanoTime();
+        double sum = 0;
+        for (int i = 0; i < points; ++i) {
+            space.generate(random, momenta, 0);
+            final double m = engine.evaluate(momenta, 0);
+            sum += m * m;
+        }
+        LOGGER.info(String.format(
+            "%s: mean |M|^2 = %g at %d tree-level points (%s, %d ms)",
+            process, sum / points, points, engine.getMethod(),
+            (System.nanoTime() - start) / 1000000));
+    }
+
+    @Override
+    public void terminate() { }
+}
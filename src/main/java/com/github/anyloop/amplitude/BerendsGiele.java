@@ -0,0 +1,323 @@
+/*
+ * BerendsGiele.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.amplitude;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import com.github.anyloop.model.Model;
+import com.github.anyloop.model.ScatteringProcess;
+
+/**
+ * Evaluates a tree amplitude by the Berends-Giele recursion.
+ *
+ * The last leg is singled out. For every non-empty subset
+ * <code>S</code> of the other legs, the off-shell current
+ * <code>J(S, f)</code> sums all trees connecting the legs in
+ * <code>S</code> to one more line, through which the field
+ * <code>f</code> leaves them. A single leg is its own current. A larger
+ * subset is split among the other legs of the vertex at which the line
+ * starts, in all ways, and the currents of the parts, with their
+ * propagators attached, are multiplied. The amplitude is the current of
+ * all legs but the last one, taken with the field of the last leg.
+ *
+ * Subsets are bit masks, so every part of a subset is a smaller
+ * number and the currents are computed in the order of the masks.
+ * They are kept in flat arrays indexed by <code>mask * fields +
+ * field</code>, together with the momenta of the subsets, which are
+ * allocated once. With <code>n</code> legs and vertices of at most
+ * <code>k</code> legs the cost grows like <code>k^n</code> instead of
+ * factorially like the number of diagrams.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class BerendsGiele extends AmplitudeEngine {
+
+    /**
+     * The name of the method.
+     *
+     * @since 0.1.0
+     */
+    public static final String METHOD = "berends-giele";
+
+    /**
+     * The largest number of legs, which bounds the size of the
+     * workspace to <code>2^25</code> subsets.
+     *
+     * @since 0.1.0
+     */
+    public static final int MAX_LEGS = 26;
+
+    /**
+     * The number of legs.
+     */
+    private final int legs;
+
+    /**
+     * The number of fields of the model.
+     */
+    private final int fields;
+
+    /**
+     * The field through which each leg but the last leaves its
+     * current.
+     */
+    private final int[] leaves;
+
+    /**
+     * The field the current of all legs but the last must carry.
+     */
+    private final int root;
+
+    /**
+     * The field of the line of each way to start a current at a
+     * vertex.
+     */
+    private final int[] starts;
+
+    /**
+     * The coupling of each way to start a current.
+     */
+    private final double[] couplings;
+
+    /**
+     * The fields through which the parts must leave their currents,
+     * for each way to start a current, sorted so that equal fields
+     * are adjacent.
+     */
+    private final int[][] parts;
+
+    /**
+     * The squared mass of each field.
+     */
+    private final double[] masses;
+
+    /**
+     * The energies of the subsets, all momenta outgoing.
+     */
+    private final double[] e;
+
+    /**
+     * The x components of the momenta of the subsets.
+     */
+    private final double[] x;
+
+    /**
+     * The y components of the momenta of the subsets.
+     */
+    private final double[] y;
+
+    /**
+     * The z components of the momenta of the subsets.
+     */
+    private final double[] z;
+
+    /**
+     * The currents of the subsets.
+     */
+    private final double[] currents;
+
+    /**
+     * The currents of the subsets with their propagators attached.
+     */
+    private final double[] propagated;
+
+    /**
+     * Prepares the recursion for a process.
+     *
+     * @param process the process
+     * @param parameters the values of the couplings and masses
+     * @throws IllegalArgumentException if the model is not supported,
+     *         a value is missing or there are more than
+     *         {@link #MAX_LEGS} legs
+     *
+     * @since 0.1.0
+     */
+    public BerendsGiele(
+            final ScatteringProcess process,
+            final Map<String, Double> parameters) {
+        super(process, parameters);
+        this.legs = process.getExternalCount();
+        if (this.legs > MAX_LEGS) {
+            throw new IllegalArgumentException(
+                "Too many legs: " + this.legs);
+        }
+        final Model model = process.getModel();
+        this.fields = model.getFieldCount();
+
+        final int last = Math.max(0, this.legs - 1);
+        this.leaves = new int[last];
+        for (int i = 0; i < last; ++i) {
+            // an external leg emits the antiparticle into the diagram
+            this.leaves[i] =
+                model.getConjugate(process.getExternalField(i));
+        }
+        this.root = this.legs > 0 ? process.getExternalField(last) : -1;
+
+        this.masses = new double[this.fields];
+        for (int f = 0; f < this.fields; ++f) {
+            this.masses[f] = this.massSquared(f);
+        }
+
+        // one way per vertex key and distinct field of its legs; the
+        // vertex types with the same fields share it, adding up their
+        // couplings
+        final int keys = model.getVertexKeyCount();
+        int count = 0;
+        for (int k = 0; k < keys; ++k) {
+            for (int i = 0; i < model.getVertexKeyLength(k); ++i) {
+                if (i == 0 || model.getVertexKeyField(k, i - 1)
+                        != model.getVertexKeyField(k, i)) {
+                    ++count;
+                }
+            }
+        }
+        this.starts = new int[count];
+        this.couplings = new double[count];
+        this.parts = new int[count][];
+        int w = 0;
+        for (int k = 0; k < keys; ++k) {
+            double coupling = 0;
+            for (int i = 0; i < model.getVertexCountWithKey(k); ++i) {
+                coupling += this.value(
+                    model.getCoupling(model.getVertexWithKey(k, i)));
+            }
+            final int degree = model.getVertexKeyLength(k);
+            for (int leg = 0; leg < degree; ++leg) {
+                final int f = model.getVertexKeyField(k, leg);
+                if (leg > 0 && model.getVertexKeyField(k, leg - 1) == f) {
+                    continue;
+                }
+                final int[] part = new int[degree - 1];
+                for (int i = 0, j = 0; i < degree; ++i) {
+                    if (i != leg) {
+                        part[j++] = model.getConjugate(
+                            model.getVertexKeyField(k, i));
+                    }
+                }
+                Arrays.sort(part);
+                this.starts[w] = f;
+                this.couplings[w] = coupling;
+                this.parts[w++] = part;
+            }
+        }
+
+        final int subsets = 1 << last;
+        this.e = new double[subsets];
+        this.x = new double[subsets];
+        this.y = new double[subsets];
+        this.z = new double[subsets];
+        this.currents = new double[subsets * this.fields];
+        this.propagated = new double[subsets * this.fields];
+    }
+
+    @Override
+    public String getMethod() {
+        return METHOD;
+    }
+
+    @Override
+    public double evaluate(final double[] momenta, final int offset) {
+        if (this.legs < 3) {
+            return 0;
+        }
+        final int nf = this.fields;
+        final int all = (1 << (this.legs - 1)) - 1;
+        for (int s = 1; s <= all; ++s) {
+            final int leg = Integer.numberOfTrailingZeros(s);
+            final int rest = s & (s - 1);
+            final int i = offset + 4 * leg;
+            final double sign = this.sign(leg);
+            this.e[s] = this.e[rest] + sign * momenta[i];
+            this.x[s] = this.x[rest] + sign * momenta[i + 1];
+            this.y[s] = this.y[rest] + sign * momenta[i + 2];
+            this.z[s] = this.z[rest] + sign * momenta[i + 3];
+
+            final int row = s * nf;
+            Arrays.fill(this.currents, row, row + nf, 0);
+            if (rest == 0) {
+                this.currents[row + this.leaves[leg]] = 1;
+                System.arraycopy(this.currents, row,
+                    this.propagated, row, nf);
+                continue;
+            }
+            for (int w = 0; w < this.starts.length; ++w) {
+                final double j = this.split(this.parts[w], 0, s, -1);
+                if (j != 0) {
+                    this.currents[row + this.starts[w]] +=
+                        this.couplings[w] * j;
+                }
+            }
+            final double q2 = this.e[s] * this.e[s] - this.x[s] * this.x[s]
+                - this.y[s] * this.y[s] - this.z[s] * this.z[s];
+            for (int f = 0; f < nf; ++f) {
+                final double j = this.currents[row + f];
+                this.propagated[row + f] =
+                    j == 0 ? 0 : j / (q2 - this.masses[f]);
+            }
+        }
+        return -this.currents[all * nf + this.root];
+    }
+
+    /**
+     * Sums over the ways to split a subset among the legs of a vertex.
+     * Legs with the same field are interchangeable, so their parts are
+     * taken in the order of their lowest legs to count every tree once.
+     *
+     * @param fieldsOfParts the fields of the parts
+     * @param index the first part still to be chosen
+     * @param subset the legs left for the remaining parts
+     * @param previous the lowest leg of the previous part
+     * @return the sum of the products of the propagated currents
+     */
+    private double split(
+            final int[] fieldsOfParts,
+            final int index,
+            final int subset,
+            final int previous) {
+        final int f = fieldsOfParts[index];
+        final boolean ordered =
+            index > 0 && fieldsOfParts[index - 1] == f;
+        if (index == fieldsOfParts.length - 1) {
+            return ordered
+                && Integer.numberOfTrailingZeros(subset) <= previous
+                ? 0 : this.propagated[subset * this.fields + f];
+        }
+        double sum = 0;
+        for (int part = (subset - 1) & subset; part != 0;
+                part = (part - 1) & subset) {
+            final int low = Integer.numberOfTrailingZeros(part);
+            if (ordered && low <= previous) {
+                continue;
+            }
+            final double j = this.propagated[part * this.fields + f];
+            if (j != 0) {
+                sum += j * this.split(
+                    fieldsOfParts, index + 1, subset & ~part, low);
+            }
+        }
+        return sum;
+    }
+}
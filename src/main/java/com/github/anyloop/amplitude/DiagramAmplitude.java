@@ -0,0 +1,225 @@
+/*
+ * DiagramAmplitude.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.amplitude;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+
+import com.github.anyloop.diagrams.Diagram;
+import com.github.anyloop.diagrams.DiagramGenerator;
+import com.github.anyloop.model.Model;
+import com.github.anyloop.model.ScatteringProcess;
+
+/**
+ * Evaluates a tree amplitude as the sum over its Feynman diagrams.
+ *
+ * The diagrams are generated once. Each propagator is reduced to the
+ * set of external legs on one side of it, a bit mask, and its squared
+ * mass, and each diagram to the product of its couplings divided by
+ * its symmetry factor, so that the evaluation is a loop over flat
+ * arrays. The number of diagrams, and hence the cost, grows
+ * factorially with the number of legs; the engine serves as the
+ * reference for {@link BerendsGiele}.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class DiagramAmplitude extends AmplitudeEngine {
+
+    /**
+     * The name of the method.
+     *
+     * @since 0.1.0
+     */
+    public static final String METHOD = "diagrams";
+
+    /**
+     * The factor of each diagram.
+     */
+    private final double[] weights;
+
+    /**
+     * The index of the first propagator of each diagram in
+     * {@link #masks}, followed by the total number.
+     */
+    private final int[] starts;
+
+    /**
+     * The legs behind each propagator.
+     */
+    private final int[] masks;
+
+    /**
+     * The squared mass of each propagator.
+     */
+    private final double[] masses;
+
+    /**
+     * The outgoing momenta of the point being evaluated.
+     */
+    private final double[] outgoing;
+
+    /**
+     * Generates the tree diagrams of a process.
+     *
+     * @param process the process
+     * @param parameters the values of the couplings and masses
+     * @throws IllegalArgumentException if the model is not supported,
+     *         a value is missing or there are more than 31 legs
+     *
+     * @since 0.1.0
+     */
+    public DiagramAmplitude(
+            final ScatteringProcess process,
+            final Map<String, Double> parameters) {
+        super(process, parameters);
+        final int legs = process.getExternalCount();
+        if (legs >= Integer.SIZE) {
+            throw new IllegalArgumentException(
+                "Too many legs: " + legs);
+        }
+        final Model model = process.getModel();
+        final int[] fields = new int[legs];
+        for (int i = 0; i < legs; ++i) {
+            fields[i] = process.getExternalField(i);
+        }
+        final Queue<Diagram> diagrams = new ConcurrentLinkedQueue<>();
+        new DiagramGenerator(new ScatteringProcess(model, fields,
+            process.getIncomingCount(), 0, false, false, false))
+            .generate(0, ForkJoinPool.commonPool(), diagrams::add);
+
+        this.weights = new double[diagrams.size()];
+        this.starts = new int[diagrams.size() + 1];
+        int propagators = 0;
+        for (final Diagram d : diagrams) {
+            propagators += d.getEdgeCount() - legs;
+        }
+        this.masks = new int[propagators];
+        this.masses = new double[propagators];
+        this.outgoing = new double[4 * legs];
+
+        int k = 0;
+        int e = 0;
+        for (final Diagram d : diagrams) {
+            double weight = -1.0 / d.getSymmetryFactor();
+            for (int v = 0; v < d.getVertexCount(); ++v) {
+                weight *= this.value(model.getCoupling(d.getVertexType(v)));
+            }
+            this.weights[k] = weight;
+            this.starts[k++] = e;
+            for (int edge = 0; edge < d.getEdgeCount(); ++edge) {
+                if (d.getEdgeFrom(edge) >= legs && d.getEdgeTo(edge) >= legs) {
+                    this.masks[e] = legsBehind(d, edge);
+                    this.masses[e++] = this.massSquared(d.getEdgeField(edge));
+                }
+            }
+        }
+        this.starts[k] = e;
+    }
+
+    /**
+     * Finds the external legs on the side of the end node of a
+     * propagator of a tree diagram.
+     *
+     * @param d the diagram
+     * @param edge the propagator
+     * @return the bit mask of the legs
+     */
+    private static int legsBehind(final Diagram d, final int edge) {
+        final int legs = d.getExternalCount();
+        final boolean[] seen = new boolean[d.getNodeCount()];
+        final int[] stack = new int[d.getNodeCount()];
+        int top = 0;
+        int mask = 0;
+        stack[top++] = d.getEdgeTo(edge);
+        seen[d.getEdgeTo(edge)] = true;
+        seen[d.getEdgeFrom(edge)] = true;
+        while (top > 0) {
+            final int n = stack[--top];
+            if (n < legs) {
+                mask |= 1 << n;
+            }
+            for (int e = 0; e < d.getEdgeCount(); ++e) {
+                int m = -1;
+                if (d.getEdgeFrom(e) == n) {
+                    m = d.getEdgeTo(e);
+                } else if (d.getEdgeTo(e) == n) {
+                    m = d.getEdgeFrom(e);
+                }
+                if (m >= 0 && !seen[m]) {
+                    seen[m] = true;
+                    stack[top++] = m;
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Returns the number of diagrams.
+     *
+     * @return the number of tree diagrams of the process
+     *
+     * @since 0.1.0
+     */
+    public int getDiagramCount() {
+        return this.weights.length;
+    }
+
+    @Override
+    public String getMethod() {
+        return METHOD;
+    }
+
+    @Override
+    public double evaluate(final double[] momenta, final int offset) {
+        final double[] p = this.outgoing;
+        for (int i = 0; i < p.length; ++i) {
+            p[i] = this.sign(i >> 2) * momenta[offset + i];
+        }
+        double sum = 0;
+        for (int k = 0; k < this.weights.length; ++k) {
+            double term = this.weights[k];
+            for (int e = this.starts[k]; e < this.starts[k + 1]; ++e) {
+                double q0 = 0;
+                double q1 = 0;
+                double q2 = 0;
+                double q3 = 0;
+                for (int m = this.masks[e]; m != 0; m &= m - 1) {
+                    final int i = 4 * Integer.numberOfTrailingZeros(m);
+                    q0 += p[i];
+                    q1 += p[i + 1];
+                    q2 += p[i + 2];
+                    q3 += p[i + 3];
+                }
+                term /= q0 * q0 - q1 * q1 - q2 * q2 - q3 * q3
+                    - this.masses[e];
+            }
+            sum += term;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * PhaseSpace.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.amplitude;
+
+import java.util.Random;
+
+/**
+ * Generates random phase-space points of a process at a fixed energy.
+ *
+ * One incoming particle is at rest, two collide along the z axis in
+ * their centre-of-mass frame. The outgoing momenta are drawn by the
+ * RAMBO algorithm for massless particles and then rescaled to the
+ * masses, which keeps them distributed over the whole phase space,
+ * though not uniformly. The momenta are written as described in
+ * {@link AmplitudeEngine}.
+ *
+ * Instances keep a workspace and are not thread-safe.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class PhaseSpace {
+
+    /**
+     * The number of Newton steps after which the rescaling gives up
+     * improving.
+     */
+    private static final int MAX_STEPS = 64;
+
+    /**
+     * The energy in the centre-of-mass frame.
+     */
+    private final double energy;
+
+    /**
+     * The masses of the legs.
+     */
+    private final double[] masses;
+
+    /**
+     * The number of incoming legs.
+     */
+    private final int incoming;
+
+    /**
+     * The massless outgoing momenta.
+     */
+    private final double[] massless;
+
+    /**
+     * Creates a generator.
+     *
+     * @param theEnergy the energy in the centre-of-mass frame, the mass
+     *        of a decaying particle
+     * @param theMasses the masses of the legs, incoming ones first
+     * @param theIncoming the number of incoming legs, one or two
+     * @throws IllegalArgumentException if the numbers of legs are not
+     *         supported or the energy is below a threshold
+     *
+     * @since 0.1.0
+     */
+    public PhaseSpace(
+            final double theEnergy,
+            final double[] theMasses,
+            final int theIncoming) {
+        final int outgoing = theMasses.length - theIncoming;
+        if (theIncoming < 1 || theIncoming > 2 || outgoing < 2) {
+            throw new IllegalArgumentException(
+                "Only one or two incoming and at least two outgoing"
+                + " particles are supported");
+        }
+        double in = 0;
+        double out = 0;
+        for (int i = 0; i < theMasses.length; ++i) {
+            if (i < theIncoming) {
+                in += theMasses[i];
+            } else {
+                out += theMasses[i];
+            }
+        }
+        if (theEnergy <= out || (theIncoming == 2 && theEnergy < in)) {
+            throw new IllegalArgumentException(
+                "The energy " + theEnergy + " is below the threshold");
+        }
+        this.energy = theEnergy;
+        this.masses = theMasses.clone();
+        this.incoming = theIncoming;
+        this.massless = new double[4 * outgoing];
+    }
+
+    /**
+     * Creates a generator for the process of an amplitude.
+     *
+     * @param engine the amplitude
+     * @param energy the energy in the centre-of-mass frame
+     * @return the generator
+     * @throws IllegalArgumentException if the process is not supported
+     *         or the energy is below a threshold
+     *
+     * @since 0.1.0
+     */
+    public static PhaseSpace of(
+            final AmplitudeEngine engine,
+            final double energy) {
+        final double[] masses =
+            new double[engine.getProcess().getExternalCount()];
+        for (int i = 0; i < masses.length; ++i) {
+            masses[i] = Math.abs(engine.getMass(i));
+        }
+        return new PhaseSpace(energy, masses,
+            engine.getProcess().getIncomingCount());
+    }
+
+    /**
+     * Returns the number of legs.
+     *
+     * @return the number of legs
+     *
+     * @since 0.1.0
+     */
+    public int getLegCount() {
+        return this.masses.length;
+    }
+
+    /**
+     * Draws a point.
+     *
+     * @param random the source of random numbers
+     * @param momenta the array receiving the momenta
+     * @param offset the index of the energy of the first leg
+     *
+     * @since 0.1.0
+     */
+    public void generate(
+            final Random random,
+            final double[] momenta,
+            final int offset) {
+        final double w = this.energy;
+        if (this.incoming == 1) {
+            momenta[offset] = w;
+            momenta[offset + 1] = 0;
+            momenta[offset + 2] = 0;
+            momenta[offset + 3] = 0;
+        } else {
+            final double m1 = this.masses[0] * this.masses[0];
+            final double m2 = this.masses[1] * this.masses[1];
+            final double e1 = (w * w + m1 - m2) / (2 * w);
+            final double p = Math.sqrt(Math.max(0, e1 * e1 - m1));
+            momenta[offset] = e1;
+            momenta[offset + 1] = 0;
+            momenta[offset + 2] = 0;
+            momenta[offset + 3] = p;
+            momenta[offset + 4] = w - e1;
+            momenta[offset + 5] = 0;
+            momenta[offset + 6] = 0;
+            momenta[offset + 7] = -p;
+        }
+        this.rambo(random);
+        this.rescale(momenta, offset + 4 * this.incoming);
+    }
+
+    /**
+     * Draws massless momenta adding up to the energy at rest.
+     *
+     * @param random the source of random numbers
+     */
+    private void rambo(final Random random) {
+        final double[] q = this.massless;
+        double s0 = 0;
+        double s1 = 0;
+        double s2 = 0;
+        double s3 = 0;
+        for (int i = 0; i < q.length; i += 4) {
+            final double c = 2 * random.nextDouble() - 1;
+            final double s = Math.sqrt(1 - c * c);
+            final double phi = 2 * Math.PI * random.nextDouble();
+            final double e = -Math.log(
+                (1 - random.nextDouble()) * (1 - random.nextDouble()));
+            q[i] = e;
+            q[i + 1] = e * s * Math.cos(phi);
+            q[i + 2] = e * s * Math.sin(phi);
+            q[i + 3] = e * c;
+            s0 += q[i];
+            s1 += q[i + 1];
+            s2 += q[i + 2];
+            s3 += q[i + 3];
+        }
+        // boost the sum to rest and scale it to the energy
+        final double m = Math.sqrt(s0 * s0 - s1 * s1 - s2 * s2 - s3 * s3);
+        final double b1 = -s1 / m;
+        final double b2 = -s2 / m;
+        final double b3 = -s3 / m;
+        final double gamma = s0 / m;
+        final double a = 1 / (1 + gamma);
+        final double scale = this.energy / m;
+        for (int i = 0; i < q.length; i += 4) {
+            final double bq = b1 * q[i + 1] + b2 * q[i + 2] + b3 * q[i + 3];
+            final double c = q[i] + a * bq;
+            q[i + 1] = scale * (q[i + 1] + b1 * c);
+            q[i + 2] = scale * (q[i + 2] + b2 * c);
+            q[i + 3] = scale * (q[i + 3] + b3 * c);
+            q[i] = scale * (gamma * q[i] + bq);
+        }
+    }
+
+    /**
+     * Scales the three-momenta of the massless momenta by a common
+     * factor, so that the energies with the masses add up to the
+     * energy.
+     *
+     * @param momenta the array receiving the massive momenta
+     * @param offset the index of the energy of the first outgoing leg
+     */
+    private void rescale(final double[] momenta, final int offset) {
+        final double[] q = this.massless;
+        double massSum = 0;
+        for (int i = this.incoming; i < this.masses.length; ++i) {
+            massSum += this.masses[i];
+        }
+        final double w = this.energy;
+        double xi = Math.sqrt(1 - (massSum / w) * (massSum / w));
+        for (int step = 0; step < MAX_STEPS; ++step) {
+            double f = -w;
+            double df = 0;
+            for (int i = 0, k = this.incoming; i < q.length; i += 4, ++k) {
+                final double m = this.masses[k];
+                final double e = Math.sqrt(m * m + xi * xi * q[i] * q[i]);
+                f += e;
+                df += xi * q[i] * q[i] / e;
+            }
+            final double delta = f / df;
+            xi -= delta;
+            if (Math.abs(delta) <= 1e-15 * xi) {
+                break;
+            }
+        }
+        for (int i = 0, k = this.incoming; i < q.length; i += 4, ++k) {
+            final double m = this.masses[k];
+            momenta[offset + i] = Math.sqrt(m * m + xi * xi * q[i] * q[i]);
+            momenta[offset + i + 1] = xi * q[i + 1];
+            momenta[offset + i + 2] = xi * q[i + 2];
+            momenta[offset + i + 3] = xi * q[i + 3];
+        }
+    }
+}
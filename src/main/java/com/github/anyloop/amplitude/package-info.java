@@ -0,0 +1,36 @@
+/*
+ * package-info.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+/**
+ * This package evaluates tree amplitudes of scalar theories
+ * numerically at phase-space points.
+ *
+ * There are two interchangeable engines: the sum over the Feynman
+ * diagrams, which is simple but grows factorially with the number of
+ * legs, and the Berends-Giele recursion, which builds the off-shell
+ * currents of all subsets of the legs from the smaller ones and grows
+ * exponentially only. The engine is chosen per process by
+ * <code>process.amplitude</code>; the two agree up to rounding, which
+ * makes the diagrams a cross-check of the recursion.
+ */
+package com.github.anyloop.amplitude;
@@ -0,0 +1,66 @@
+/*
+ * CacheConfig.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.cache;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.chassis.annotations.ConfigProperty;
+import com.github.anyloop.chassis.annotations.DefaultValue;
+
+/**
+ * Configuration of the result cache.
+ *
+ * In YAML notation:
+ * <pre>
+ * cache:
+ *   directory: /home/user/.cache/anyloop
+ *   size: 10737418240
+ * </pre>
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public interface CacheConfig {
+
+    /**
+     * The directory holding the cached results. An empty value
+     * disables the cache.
+     *
+     * @return the directory
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("cache.directory")
+    @DefaultValue("")
+    String getDirectory() throws ConfigurationException;
+
+    /**
+     * The number of bytes the cached results may occupy before the
+     * least recently used ones are evicted.
+     *
+     * @return the size in bytes
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("cache.size")
+    @DefaultValue("1073741824")
+    long getSize() throws ConfigurationException;
+}
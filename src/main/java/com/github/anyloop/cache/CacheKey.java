@@ -0,0 +1,282 @@
+/*
+ * CacheKey.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import com.github.anyloop.chassis.annotations.ConfigProperty;
+
+/**
+ * A stable hash identifying the input of a pipeline stage.
+ *
+ * A key is built from the name and version of the stage, the values of
+ * the configuration properties the stage reads and the content of its
+ * input files. Configuration objects are walked through their getters
+ * annotated with {@link ConfigProperty} in the order of the property
+ * names, descending into nested objects and lists of them. The key
+ * therefore depends on every value, whether it was given explicitly
+ * or taken from the default, but not on the layout of the
+ * configuration file. A property which is neither set nor has a
+ * default contributes a marker of its own.
+ *
+ * The key is the hexadecimal SHA-256 hash of this description. A
+ * program run from class files rather than from a jar has no version;
+ * all such runs share the version <code>unversioned</code>, so the
+ * cache must be cleared by hand while developing.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class CacheKey {
+
+    /**
+     * The version used if the program has none.
+     */
+    static final String UNVERSIONED = "unversioned";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * The hash of the description so far.
+     */
+    private final MessageDigest digest;
+
+    /**
+     * The hash, once it has been computed.
+     */
+    private String hash;
+
+    private CacheKey(final String stage, final String version) {
+        this.digest = newDigest();
+        this.add("stage", stage);
+        this.add("version", version == null ? UNVERSIONED : version);
+    }
+
+    /**
+     * Starts a key.
+     *
+     * @param stage the name of the stage
+     * @param version the version of the program, may be
+     *        <code>null</code>
+     * @return the key, to which the input of the stage is to be added
+     *
+     * @since 0.1.0
+     */
+    public static CacheKey of(final String stage, final String version) {
+        return new CacheKey(stage, version);
+    }
+
+    /**
+     * Creates a SHA-256 digest, which every Java platform provides.
+     *
+     * @return the digest
+     */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    /**
+     * Formats a hash.
+     *
+     * @param bytes the hash
+     * @return the lower-case hexadecimal digits
+     */
+    static String hex(final byte[] bytes) {
+        final char[] chars = new char[2 * bytes.length];
+        for (int i = 0; i < bytes.length; ++i) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Adds a named value.
+     *
+     * @param name the name of the value
+     * @param value the value, formatted with {@link String#valueOf}
+     * @return this key
+     * @throws IllegalStateException if the hash has been computed
+     *
+     * @since 0.1.0
+     */
+    public CacheKey add(final String name, final Object value) {
+        this.update(name, String.valueOf(value));
+        return this;
+    }
+
+    /**
+     * Adds the values of all properties of a configuration object.
+     *
+     * @param <T> the configuration interface
+     * @param type the configuration interface
+     * @param config the configuration object
+     * @return this key
+     * @throws IllegalStateException if the hash has been computed
+     * @throws IllegalArgumentException if a getter cannot be called
+     *
+     * @since 0.1.0
+     */
+    public <T> CacheKey add(final Class<T> type, final T config) {
+        this.addConfig("", type, config);
+        return this;
+    }
+
+    /**
+     * Adds the content of a file.
+     *
+     * @param name the name under which the file is added
+     * @param file the file
+     * @return this key
+     * @throws IOException if the file cannot be read
+     * @throws IllegalStateException if the hash has been computed
+     *
+     * @since 0.1.0
+     */
+    public CacheKey addFile(final String name, final Path file)
+            throws IOException {
+        final MessageDigest content = newDigest();
+        try (InputStream in = new DigestInputStream(
+                Files.newInputStream(file), content)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        this.update(name, hex(content.digest()));
+        return this;
+    }
+
+    private void addConfig(
+            final String prefix,
+            final Class<?> type,
+            final Object config) {
+        final List<Method> getters = new ArrayList<>();
+        for (final Method method : type.getMethods()) {
+            if (method.getParameterCount() == 0
+                    && !Modifier.isStatic(method.getModifiers())
+                    && method.isAnnotationPresent(ConfigProperty.class)) {
+                getters.add(method);
+            }
+        }
+        getters.sort(Comparator.comparing(
+                (Method m) -> m.getAnnotation(ConfigProperty.class).value())
+            .thenComparing(Method::getName));
+
+        for (final Method getter : getters) {
+            final String name =
+                prefix + getter.getAnnotation(ConfigProperty.class).value();
+            final Object value;
+            try {
+                value = getter.invoke(config);
+            } catch (InvocationTargetException ex) {
+                // the key is not set and has no default
+                this.update(name, null);
+                continue;
+            } catch (IllegalAccessException ex) {
+                throw new IllegalArgumentException(
+                    "Cannot read " + name, ex);
+            }
+            this.addValue(name, getter.getReturnType(), value);
+        }
+    }
+
+    private void addValue(
+            final String name,
+            final Class<?> type,
+            final Object value) {
+        if (value == null) {
+            this.update(name, null);
+        } else if (type.isArray()) {
+            final int n = Array.getLength(value);
+            this.update(name, Integer.toString(n));
+            for (int i = 0; i < n; ++i) {
+                this.addValue(name + "[" + i + "]",
+                    type.getComponentType(), Array.get(value, i));
+            }
+        } else if (type.isInterface()) {
+            this.addConfig(name, type, value);
+        } else {
+            this.update(name, String.valueOf(value));
+        }
+    }
+
+    /**
+     * Hashes an entry of the description. Names and values are
+     * prefixed by their lengths, so that no two different
+     * descriptions have the same encoding.
+     *
+     * @param name the name
+     * @param value the value or <code>null</code> for a missing one
+     */
+    private void update(final String name, final String value) {
+        if (this.hash != null) {
+            throw new IllegalStateException("The key is complete");
+        }
+        final StringBuilder sb = new StringBuilder();
+        sb.append(name.length()).append(':').append(name);
+        if (value == null) {
+            sb.append('!');
+        } else {
+            sb.append('=').append(value.length()).append(':').append(value);
+        }
+        sb.append('\n');
+        this.digest.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the hash. No values can be added afterwards.
+     *
+     * @return the 64 hexadecimal digits of the hash
+     *
+     * @since 0.1.0
+     */
+    public String getHash() {
+        if (this.hash == null) {
+            this.hash = hex(this.digest.digest());
+        }
+        return this.hash;
+    }
+
+    @Override
+    public String toString() {
+        return this.getHash();
+    }
+}
@@ -0,0 +1,751 @@
+/*
+ * StageCache.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.anyloop.chassis.ConfigDependencies;
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.chassis.Configurator;
+
+/**
+ * A directory of results of pipeline stages, addressed by
+ * {@link CacheKey}.
+ *
+ * A result is a set of named files. Every file is stored as a blob
+ * named after the SHA-256 hash of its content, so that a file which
+ * is part of several results is stored once. For each key a manifest
+ * lists the hash, size and name of each file of the result. Blobs and
+ * manifests are written to temporary files first and then renamed, so
+ * that a crashed run leaves no partial result behind.
+ *
+ * Each manifest records the last use of its result as a number
+ * counting the uses of the cache, which orders the results exactly
+ * whatever the resolution of the file times. The manifests are read
+ * once when the cache is opened and kept in an index in memory. When a
+ * new result makes the blobs exceed the size of the cache, the least
+ * recently used results are removed, together with the blobs no other
+ * result refers to, until the cache fits again. The new result itself
+ * is kept even if it is larger than the cache.
+ *
+ * A stage which does not know in advance which configuration keys it
+ * reads stores its result together with the {@link ConfigDependencies}
+ * recorded while it ran. An index named after the key of the stage,
+ * which then covers only the inputs other than the configuration,
+ * lists the SHA-256 hashes of the values of the keys read for each of
+ * its results. A later run reuses a result if all of these keys still
+ * have the same values, just as make rebuilds a target only if one of
+ * its prerequisites has changed. Changing a key which the stage never
+ * read therefore does not invalidate its result.
+ *
+ * Instances are thread-safe. Several processes may share a directory;
+ * a result evicted by one of them while another one looks it up is
+ * reported as missing. A process only evicts the results it has read
+ * when it opened the cache or stored or looked up since.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class StageCache {
+
+    /**
+     * The suffix of temporary files.
+     */
+    private static final String TMP = ".tmp";
+
+    /**
+     * The start of the line of a manifest recording the last use.
+     */
+    private static final String USED = "used ";
+
+    /**
+     * The name of the file holding a result given as text.
+     */
+    private static final String TEXT = "result.txt";
+
+    /**
+     * The directory of the blobs.
+     */
+    private final Path blobs;
+
+    /**
+     * The directory of the manifests.
+     */
+    private final Path entries;
+
+    /**
+     * The directory of the indexes of the configuration keys read by
+     * the stages.
+     */
+    private final Path dependencies;
+
+    /**
+     * The number of bytes the blobs may occupy.
+     */
+    private final long maxSize;
+
+    /**
+     * The manifests known to this instance by the hash of their key.
+     */
+    private final Map<String, Manifest> index = new HashMap<>();
+
+    /**
+     * The number of manifests in the index referring to each blob.
+     */
+    private final Map<String, Integer> references = new HashMap<>();
+
+    /**
+     * The total size of the blobs referred to by the index.
+     */
+    private long total;
+
+    /**
+     * The number of the last use of the cache.
+     */
+    private long clock;
+
+    /**
+     * Opens a cache, creating the directory if necessary, and reads
+     * its manifests.
+     *
+     * @param directory the directory of the cache
+     * @param theMaxSize the number of bytes the cached files may
+     *        occupy
+     * @throws IOException if the directory cannot be created or read
+     * @throws IllegalArgumentException if the size is not positive
+     *
+     * @since 0.1.0
+     */
+    public StageCache(final Path directory, final long theMaxSize)
+            throws IOException {
+        if (theMaxSize <= 0) {
+            throw new IllegalArgumentException(
+                "The size of the cache must be positive");
+        }
+        this.blobs = Files.createDirectories(directory.resolve("blobs"));
+        this.entries = Files.createDirectories(directory.resolve("entries"));
+        this.dependencies =
+            Files.createDirectories(directory.resolve("dependencies"));
+        this.maxSize = theMaxSize;
+        this.load();
+    }
+
+    /**
+     * Opens the configured cache.
+     *
+     * @param config the configuration
+     * @return the cache or <code>null</code> if no directory is
+     *         configured
+     * @throws ConfigurationException if the configuration is invalid
+     *         or the directory cannot be created
+     *
+     * @since 0.1.0
+     */
+    public static StageCache fromConfig(final CacheConfig config)
+            throws ConfigurationException {
+        final String dir = config.getDirectory();
+        if (dir.isEmpty()) {
+            return null;
+        }
+        final long size = config.getSize();
+        if (size <= 0) {
+            throw new ConfigurationException("cache.size must be positive");
+        }
+        try {
+            return new StageCache(Paths.get(dir), size);
+        } catch (IOException ex) {
+            throw new ConfigurationException(
+                "Cannot create cache directory '" + dir + "'", ex);
+        }
+    }
+
+    /**
+     * Looks up a result and marks it as used.
+     *
+     * @param key the key
+     * @return the files of the result by name, which must be copied
+     *         rather than modified, or <code>null</code> if there is
+     *         no result for the key
+     * @throws IOException if the cache cannot be read
+     *
+     * @since 0.1.0
+     */
+    public synchronized Map<String, Path> get(final CacheKey key)
+            throws IOException {
+        return this.get(key.getHash());
+    }
+
+    /**
+     * Looks up a result of a stage whose configuration keys are
+     * unchanged and marks it as used. Of several such results the
+     * most recently stored one is returned.
+     *
+     * @param stage the key of the stage, without the configuration
+     * @param configuration the current configuration
+     * @return the files of the result by name, which must be copied
+     *         rather than modified, or <code>null</code> if there is
+     *         no result for the current configuration
+     * @throws IOException if the cache cannot be read
+     *
+     * @since 0.1.0
+     */
+    public synchronized Map<String, Path> get(
+            final CacheKey stage,
+            final Configurator configuration) throws IOException {
+        final List<String> lines =
+            readIndex(this.dependencies.resolve(stage.getHash()));
+        final Map<String, String> current = new HashMap<>();
+        for (int i = lines.size() - 1; i >= 0; --i) {
+            final String[] fields = lines.get(i).split("\t");
+            boolean unchanged = true;
+            for (int k = 1; k < fields.length && unchanged; ++k) {
+                final int space = fields[k].indexOf(' ');
+                if (space < 0) {
+                    throw new IOException("Malformed cache index "
+                        + stage.getHash());
+                }
+                final String name = fields[k].substring(space + 1);
+                unchanged = fields[k].substring(0, space).equals(
+                    current.computeIfAbsent(name,
+                        n -> hashValue(configuration.lookup(n))));
+            }
+            if (unchanged) {
+                final Map<String, Path> files = this.get(fields[0]);
+                if (files != null) {
+                    return files;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Looks up a result of a stage given as text, see
+     * {@link #get(CacheKey, Configurator)}.
+     *
+     * @param stage the key of the stage, without the configuration
+     * @param configuration the current configuration
+     * @return the text or <code>null</code> if there is no result for
+     *         the current configuration
+     * @throws IOException if the cache cannot be read
+     *
+     * @since 0.1.0
+     */
+    public String getText(
+            final CacheKey stage,
+            final Configurator configuration) throws IOException {
+        final Map<String, Path> files = this.get(stage, configuration);
+        return files == null || !files.containsKey(TEXT) ? null
+            : Files.readString(files.get(TEXT), StandardCharsets.UTF_8);
+    }
+
+    private Map<String, Path> get(final String hash) throws IOException {
+        final Path entry = this.entries.resolve(hash);
+        final Manifest manifest = readManifest(entry);
+        if (manifest == null) {
+            // evicted by another process
+            this.forget(hash);
+            return null;
+        }
+        final Map<String, Path> files = new LinkedHashMap<>();
+        for (final Blob blob : manifest.files) {
+            final Path file = this.getBlob(blob.hash);
+            if (!Files.exists(file)) {
+                return null;
+            }
+            files.put(blob.name, file);
+        }
+        final Manifest used = new Manifest(++this.clock, manifest.files);
+        this.write(entry, used.toString());
+        this.forget(hash);
+        this.remember(hash, used);
+        return Collections.unmodifiableMap(files);
+    }
+
+    /**
+     * Stores a result consisting of a single file.
+     *
+     * @param key the key
+     * @param name the name of the file
+     * @param data the content of the file
+     * @throws IOException if the cache cannot be written
+     *
+     * @since 0.1.0
+     */
+    public void put(final CacheKey key, final String name, final byte[] data)
+            throws IOException {
+        this.put(key, Collections.emptyMap(),
+            Collections.singletonMap(name, data));
+    }
+
+    /**
+     * Stores a result, replacing any previous result for the key, and
+     * evicts the least recently used results if the cache is full.
+     *
+     * @param key the key
+     * @param files the files of the result by name
+     * @param data further files of the result, given by their content
+     * @throws IOException if the cache cannot be written
+     * @throws IllegalArgumentException if a name contains a line break
+     *         or occurs twice
+     *
+     * @since 0.1.0
+     */
+    public synchronized void put(
+            final CacheKey key,
+            final Map<String, Path> files,
+            final Map<String, byte[]> data) throws IOException {
+        this.put(key.getHash(), files, data);
+    }
+
+    /**
+     * Stores a result of a stage consisting of a single file together
+     * with the configuration keys read by the stage.
+     *
+     * @param stage the key of the stage, without the configuration
+     * @param read the configuration keys read by the stage
+     * @param name the name of the file
+     * @param data the content of the file
+     * @throws IOException if the cache cannot be written
+     *
+     * @since 0.1.0
+     */
+    public void put(
+            final CacheKey stage,
+            final ConfigDependencies read,
+            final String name,
+            final byte[] data) throws IOException {
+        this.put(stage, read, Collections.emptyMap(),
+            Collections.singletonMap(name, data));
+    }
+
+    /**
+     * Stores a result of a stage given as text together with the
+     * configuration keys read by the stage.
+     *
+     * @param stage the key of the stage, without the configuration
+     * @param read the configuration keys read by the stage
+     * @param text the result
+     * @throws IOException if the cache cannot be written
+     *
+     * @since 0.1.0
+     */
+    public void putText(
+            final CacheKey stage,
+            final ConfigDependencies read,
+            final String text) throws IOException {
+        this.put(stage, read, TEXT, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Stores a result of a stage together with the configuration keys
+     * read by the stage, replacing any previous result for the same
+     * values of these keys, and evicts the least recently used results
+     * if the cache is full.
+     *
+     * @param stage the key of the stage, without the configuration
+     * @param read the configuration keys read by the stage
+     * @param files the files of the result by name
+     * @param data further files of the result, given by their content
+     * @throws IOException if the cache cannot be written
+     * @throws IllegalArgumentException if a name contains a line break
+     *         or occurs twice, or a key contains a tab or line break
+     *
+     * @since 0.1.0
+     */
+    public synchronized void put(
+            final CacheKey stage,
+            final ConfigDependencies read,
+            final Map<String, Path> files,
+            final Map<String, byte[]> data) throws IOException {
+        // the result is stored under a hash of the stage and the
+        // values read, one line of the index describes it
+        final MessageDigest digest = CacheKey.newDigest();
+        digest.update(stage.getHash().getBytes(StandardCharsets.UTF_8));
+        final StringBuilder line = new StringBuilder();
+        for (final Map.Entry<String, String> value
+                : read.getValues().entrySet()) {
+            final String name = value.getKey();
+            if (name.indexOf('\t') >= 0 || name.indexOf('\n') >= 0
+                    || name.indexOf('\r') >= 0) {
+                throw new IllegalArgumentException(
+                    "Tab or line break in key " + name);
+            }
+            final String entry = "\t" + hashValue(value.getValue())
+                + " " + name;
+            digest.update(entry.getBytes(StandardCharsets.UTF_8));
+            line.append(entry);
+        }
+        final String hash = CacheKey.hex(digest.digest());
+        this.put(hash, files, data);
+
+        final Path index = this.dependencies.resolve(stage.getHash());
+        final StringBuilder content = new StringBuilder();
+        for (final String old : readIndex(index)) {
+            // drop the replaced line and those of evicted results
+            final int tab = old.indexOf('\t');
+            final String entry = tab < 0 ? old : old.substring(0, tab);
+            if (!entry.equals(hash)
+                    && Files.exists(this.entries.resolve(entry))) {
+                content.append(old).append('\n');
+            }
+        }
+        content.append(hash).append(line).append('\n');
+        this.write(index, content.toString());
+    }
+
+    private void put(
+            final String hash,
+            final Map<String, Path> files,
+            final Map<String, byte[]> data) throws IOException {
+        final List<Blob> content = new ArrayList<>();
+        for (final Map.Entry<String, Path> file : files.entrySet()) {
+            try (InputStream in = Files.newInputStream(file.getValue())) {
+                content.add(this.store(file.getKey(), in));
+            }
+        }
+        for (final Map.Entry<String, byte[]> file : data.entrySet()) {
+            if (files.containsKey(file.getKey())) {
+                throw new IllegalArgumentException(
+                    "Duplicate name " + file.getKey());
+            }
+            content.add(this.store(file.getKey(),
+                new ByteArrayInputStream(file.getValue())));
+        }
+
+        final Manifest manifest = new Manifest(++this.clock, content);
+        this.write(this.entries.resolve(hash), manifest.toString());
+        final Manifest replaced = this.forget(hash);
+        this.remember(hash, manifest);
+        if (replaced != null) {
+            this.deleteUnreferenced(replaced);
+        }
+        this.evict(hash);
+    }
+
+    /**
+     * Replaces a file atomically.
+     *
+     * @param file the file
+     * @param content the new content
+     * @throws IOException if the file cannot be written
+     */
+    private void write(final Path file, final String content)
+            throws IOException {
+        final Path tmp =
+            Files.createTempFile(file.getParent(), "entry", TMP);
+        try {
+            Files.write(tmp, content.getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Hashes the value of a configuration key.
+     *
+     * @param value the value or <code>null</code> if the key is not
+     *        set
+     * @return the hexadecimal SHA-256 hash
+     */
+    private static String hashValue(final String value) {
+        final String text = value == null ? "!" : "=" + value;
+        return CacheKey.hex(CacheKey.newDigest().digest(
+            text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Reads the index of the results of a stage.
+     *
+     * @param index the index
+     * @return the lines, one per result, or an empty list if there is
+     *         no index
+     * @throws IOException if the index cannot be read
+     */
+    private static List<String> readIndex(final Path index)
+            throws IOException {
+        try {
+            return Files.readAllLines(index, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException ex) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Stores a blob unless one with the same content exists.
+     *
+     * @param name the name of the file
+     * @param in the content
+     * @return the line of the manifest describing the file
+     * @throws IOException if the blob cannot be written
+     */
+    private Blob store(final String name, final InputStream in)
+            throws IOException {
+        if (name.indexOf('\n') >= 0 || name.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException(
+                "Line break in file name " + name);
+        }
+        final MessageDigest digest = CacheKey.newDigest();
+        final Path tmp = Files.createTempFile(this.blobs, "blob", TMP);
+        try {
+            final long size;
+            try (OutputStream out = new DigestOutputStream(
+                    Files.newOutputStream(tmp), digest)) {
+                size = in.transferTo(out);
+            }
+            final String hash = CacheKey.hex(digest.digest());
+            final Path blob = this.getBlob(hash);
+            if (!Files.exists(blob)) {
+                Files.createDirectories(blob.getParent());
+                Files.move(tmp, blob, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            }
+            return new Blob(hash, size, name);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Reads all manifests into the index.
+     *
+     * @throws IOException if the cache cannot be read
+     */
+    private void load() throws IOException {
+        try (DirectoryStream<Path> stream =
+                Files.newDirectoryStream(this.entries)) {
+            for (final Path entry : stream) {
+                final String hash = entry.getFileName().toString();
+                if (hash.endsWith(TMP)) {
+                    continue;
+                }
+                final Manifest manifest = readManifest(entry);
+                if (manifest != null) {
+                    this.remember(hash, manifest);
+                    this.clock = Math.max(this.clock, manifest.used);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a manifest to the index.
+     *
+     * @param hash the hash of the key
+     * @param manifest the manifest, not in the index yet
+     */
+    private void remember(final String hash, final Manifest manifest) {
+        this.index.put(hash, manifest);
+        for (final Blob blob : manifest.files) {
+            if (this.references.merge(blob.hash, 1, Integer::sum) == 1) {
+                this.total += blob.size;
+            }
+        }
+    }
+
+    /**
+     * Removes a manifest from the index.
+     *
+     * @param hash the hash of the key
+     * @return the manifest removed or <code>null</code> if the index
+     *         had none
+     */
+    private Manifest forget(final String hash) {
+        final Manifest manifest = this.index.remove(hash);
+        if (manifest != null) {
+            for (final Blob blob : manifest.files) {
+                if (this.references.merge(blob.hash, -1, Integer::sum)
+                        == 0) {
+                    this.references.remove(blob.hash);
+                    this.total -= blob.size;
+                }
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Deletes the blobs of a manifest no longer in the index which no
+     * manifest in the index refers to.
+     *
+     * @param manifest the manifest
+     * @throws IOException if a blob cannot be deleted
+     */
+    private void deleteUnreferenced(final Manifest manifest)
+            throws IOException {
+        for (final Blob blob : manifest.files) {
+            if (!this.references.containsKey(blob.hash)) {
+                Files.deleteIfExists(this.getBlob(blob.hash));
+            }
+        }
+    }
+
+    /**
+     * Removes the least recently used results while the blobs exceed
+     * the size of the cache.
+     *
+     * @param keep the hash of the key whose result is kept in any case
+     * @throws IOException if the cache cannot be modified
+     */
+    private void evict(final String keep) throws IOException {
+        if (this.total <= this.maxSize) {
+            return;
+        }
+        final List<Map.Entry<String, Manifest>> lru =
+            new ArrayList<>(this.index.entrySet());
+        lru.sort((a, b) -> {
+            final int c = Long.compare(a.getValue().used, b.getValue().used);
+            return c != 0 ? c : a.getKey().compareTo(b.getKey());
+        });
+        for (final Map.Entry<String, Manifest> entry : lru) {
+            if (this.total <= this.maxSize) {
+                break;
+            }
+            final String hash = entry.getKey();
+            if (hash.equals(keep)) {
+                continue;
+            }
+            Files.deleteIfExists(this.entries.resolve(hash));
+            this.deleteUnreferenced(this.forget(hash));
+        }
+    }
+
+    /**
+     * Returns the total size of the cached files, counting files
+     * shared by several results once.
+     *
+     * @return the size in bytes
+     *
+     * @since 0.1.0
+     */
+    public synchronized long getSize() {
+        return this.total;
+    }
+
+    private Path getBlob(final String hash) {
+        return this.blobs.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    /**
+     * Reads a manifest.
+     *
+     * @param entry the file of the manifest
+     * @return the manifest or <code>null</code> if the file does not
+     *         exist
+     * @throws IOException if the manifest cannot be read or is
+     *         malformed
+     */
+    private static Manifest readManifest(final Path entry)
+            throws IOException {
+        final List<String> lines;
+        try {
+            lines = Files.readAllLines(entry, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+        long used = 0;
+        final List<Blob> files = new ArrayList<>(lines.size());
+        try {
+            for (final String line : lines) {
+                if (line.startsWith(USED)) {
+                    used = Long.parseLong(line.substring(USED.length()));
+                    continue;
+                }
+                final String[] fields = line.split(" ", 3);
+                if (fields.length != 3) {
+                    throw new IOException("Malformed cache entry " + entry);
+                }
+                files.add(new Blob(fields[0], Long.parseLong(fields[1]),
+                    fields[2]));
+            }
+        } catch (NumberFormatException ex) {
+            throw new IOException("Malformed cache entry " + entry, ex);
+        }
+        return new Manifest(used, files);
+    }
+
+    /**
+     * The content of a manifest.
+     */
+    private static final class Manifest {
+
+        final long used;
+
+        final List<Blob> files;
+
+        Manifest(final long theUsed, final List<Blob> theFiles) {
+            this.used = theUsed;
+            this.files = theFiles;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder();
+            sb.append(USED).append(this.used).append('\n');
+            for (final Blob blob : this.files) {
+                sb.append(blob.hash).append(' ').append(blob.size)
+                    .append(' ').append(blob.name).append('\n');
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * A line of a manifest.
+     */
+    private static final class Blob {
+
+        final String hash;
+
+        final long size;
+
+        final String name;
+
+        Blob(final String theHash, final long theSize, final String theName) {
+            this.hash = theHash;
+            this.size = theSize;
+            this.name = theName;
+        }
+    }
+}
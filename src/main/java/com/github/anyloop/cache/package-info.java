@@ -0,0 +1,36 @@
+/*
+ * package-info.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+/**
+ * This package keeps the results of pipeline stages across runs.
+ *
+ * A stage describes its input by a {@link
+ * com.github.anyloop.cache.CacheKey}, a hash over the configuration
+ * values it reads, the content of its input files and the program
+ * version. The {@link com.github.anyloop.cache.StageCache} maps such
+ * keys to the files the stage produced, which are stored once per
+ * distinct content, so that a later run with the same key can skip
+ * the stage. The least recently used results are evicted when the
+ * cache exceeds its size.
+ */
+package com.github.anyloop.cache;
@@ -0,0 +1,98 @@
+/*
+ * ConfigDependencies.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.chassis;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The configuration keys read by a component, together with the
+ * values it saw.
+ *
+ * Configuration objects created by
+ * {@link Configurator#create(Class, ConfigDependencies)} report every
+ * getter call here. A key is recorded by its absolute name, such as
+ * <code>model.particles.particle(2).mass</code>, with the value as
+ * given in the configuration, or <code>null</code> if it is not set
+ * and the default was used. For a list of nested objects the number
+ * of elements is recorded under the name of the list followed by
+ * {@link #COUNT}. {@link Configurator#lookup} returns the current
+ * value of a recorded key in the same form, so that a later run can
+ * tell whether a component would see the same configuration again.
+ *
+ * Instances are thread-safe.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class ConfigDependencies {
+
+    /**
+     * The suffix of the key under which the length of a list of nested
+     * objects is recorded.
+     */
+    public static final String COUNT = "#";
+
+    /**
+     * The values by key.
+     */
+    private final SortedMap<String, String> values = new TreeMap<>();
+
+    /**
+     * Records that a key has been read.
+     *
+     * @param key the absolute name of the key
+     * @param value the value or <code>null</code> if the key is not
+     *        set
+     */
+    synchronized void record(final String key, final String value) {
+        this.values.put(key, value);
+    }
+
+    /**
+     * Returns the keys read so far.
+     *
+     * @return the values by key in the order of the keys; a value is
+     *         <code>null</code> if the key is not set
+     *
+     * @since 0.1.0
+     */
+    public synchronized SortedMap<String, String> getValues() {
+        return Collections.unmodifiableSortedMap(new TreeMap<>(this.values));
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (final Map.Entry<String, String> e : this.values.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(System.lineSeparator());
+            }
+            sb.append(e.getKey()).append(" = ").append(e.getValue());
+        }
+        return sb.toString();
+    }
+}
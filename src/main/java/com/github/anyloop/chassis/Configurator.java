@@ -60,4 +60,30 @@ public interface Configurator {
      * @since 0.1.0
      */
     <T> T create(Class<T> clazz);
+
+    /**
+     * Creates a dynamic implementation of the given interface which
+     * records every key it reads.
+     *
+     * @param <T> implicit generic type of the interface to be implemented
+     * @param clazz the interface to be implemented
+     * @param dependencies receives the keys read through the returned
+     *        object and the objects nested in it
+     *
+     * @return a dynamic proxy implementing the given interface
+     *
+     * @since 0.1.0
+     */
+    <T> T create(Class<T> clazz, ConfigDependencies dependencies);
+
+    /**
+     * Looks up the current value of a key in the form in which
+     * {@link ConfigDependencies} records it.
+     *
+     * @param key the absolute name of the key
+     * @return the value or <code>null</code> if the key is not set
+     *
+     * @since 0.1.0
+     */
+    String lookup(String key);
 }
@@ -30,7 +30,11 @@ import java.lang.reflect.Array;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.configuration2.ImmutableHierarchicalConfiguration;
 import org.apache.commons.configuration2.BaseHierarchicalConfiguration;
@@ -52,6 +56,15 @@ class ConfiguratorHandler implements InvocationHandler {
     public static final String PATH_SEPARATOR =
         DefaultExpressionEngineSymbols.DEFAULT_PROPERTY_DELIMITER;
 
+    /**
+     * The annotation data of all getters invoked so far. Reading
+     * annotations copies arrays on every call, which adds up when
+     * large lists of configuration objects such as the vertices of
+     * a model are read.
+     */
+    private static final Map<Method, PropertySpec> SPECS =
+        new ConcurrentHashMap<>();
+
     /**
      * Configuration that supplies the values for the invoked methods.
      * This configuration is used for resolving absolute names.
@@ -68,6 +81,16 @@ class ConfiguratorHandler implements InvocationHandler {
      */
     private final ImmutableHierarchicalConfiguration currentConfig;
 
+    /**
+     * The absolute name of {@link #currentConfig}, empty for the root.
+     */
+    private final String prefix;
+
+    /**
+     * Receives the keys read or <code>null</code>.
+     */
+    private final ConfigDependencies dependencies;
+
     /**
      * Creates an invocation handler.
      *
@@ -77,7 +100,22 @@ class ConfiguratorHandler implements InvocationHandler {
      */
     ConfiguratorHandler(
             final BaseHierarchicalConfiguration theRootConfig) {
-        this(theRootConfig, theRootConfig);
+        this(theRootConfig, null);
+    }
+
+    /**
+     * Creates an invocation handler which records the keys read.
+     *
+     * @param theRootConfig the configuration to be used
+     * @param theDependencies receives the keys read or
+     *        <code>null</code>
+     *
+     * @since 0.1.0
+     */
+    ConfiguratorHandler(
+            final BaseHierarchicalConfiguration theRootConfig,
+            final ConfigDependencies theDependencies) {
+        this(theRootConfig, theRootConfig, "", theDependencies);
     }
 
     /**
@@ -87,14 +125,74 @@ class ConfiguratorHandler implements InvocationHandler {
      *        node names
      * @param theCurrentConfig the configuration relative to which
      *        node names are interpreted if they are not absolute.
+     * @param thePrefix the absolute name of the current configuration
+     * @param theDependencies receives the keys read or
+     *        <code>null</code>
      *
      * @since 0.1.0
      */
     protected ConfiguratorHandler(
             final BaseHierarchicalConfiguration theRootConfig,
-            final ImmutableHierarchicalConfiguration theCurrentConfig) {
+            final ImmutableHierarchicalConfiguration theCurrentConfig,
+            final String thePrefix,
+            final ConfigDependencies theDependencies) {
         this.rootConfig = theRootConfig;
         this.currentConfig = theCurrentConfig;
+        this.prefix = thePrefix;
+        this.dependencies = theDependencies;
+    }
+
+    /**
+     * Looks up the value of a key in the form in which it is recorded.
+     *
+     * @param config the root configuration
+     * @param key the absolute name of the key
+     * @return the value or <code>null</code> if the key is not set
+     */
+    static String lookup(
+            final BaseHierarchicalConfiguration config,
+            final String key) {
+        if (key.endsWith(ConfigDependencies.COUNT)) {
+            return Integer.toString(config.immutableConfigurationsAt(
+                key.substring(0, key.length()
+                    - ConfigDependencies.COUNT.length())).size());
+        }
+        return describe(config, config.getProperty(key));
+    }
+
+    /**
+     * Formats a value for recording, resolving variables.
+     *
+     * @param config the configuration providing the variables
+     * @param value the value or <code>null</code>
+     * @return the value as text or <code>null</code>
+     */
+    private static String describe(
+            final BaseHierarchicalConfiguration config,
+            final Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Collection) {
+            final List<String> elements = new ArrayList<>();
+            for (final Object element : (Collection<?>) value) {
+                elements.add(describe(config, element));
+            }
+            return elements.toString();
+        }
+        return String.valueOf(config.getInterpolator().interpolate(value));
+    }
+
+    /**
+     * Records that a key has been read.
+     *
+     * @param key the absolute name of the key
+     * @param value the value as text or <code>null</code>
+     */
+    private void record(final String key, final String value) {
+        if (this.dependencies != null) {
+            this.dependencies.record(key, value);
+        }
     }
 
     @Override
@@ -103,6 +201,27 @@ class ConfiguratorHandler implements InvocationHandler {
         final Method method,
         final Object[] args)
             throws Throwable {
+        final PropertySpec spec = getSpec(method);
+        return this.getProperty(spec.path, method.getReturnType(),
+            spec.useDefault, spec.defaultValue);
+    }
+
+    /**
+     * Returns the annotation data of a getter, extracting it on
+     * first use.
+     *
+     * @param method the invoked getter
+     * @return the annotation data
+     * @throws ConfigurationException if the getter is not annotated
+     *         with {@link ConfigProperty}
+     */
+    private static PropertySpec getSpec(final Method method)
+            throws ConfigurationException {
+        final PropertySpec cached = SPECS.get(method);
+        if (cached != null) {
+            return cached;
+        }
+
         // Extract annotations of type:
         // - ConfigProperty
         String subPath = null;
@@ -136,10 +255,10 @@ class ConfiguratorHandler implements InvocationHandler {
                 + "." + method.getName());
         }
 
-        Class rettype = method.getReturnType();
-
-        return this.getProperty(subPath, rettype,
-            useDefaultValue, defaultValue);
+        final PropertySpec spec =
+            new PropertySpec(subPath, useDefaultValue, defaultValue);
+        SPECS.putIfAbsent(method, spec);
+        return spec;
     }
 
     /**
@@ -165,13 +284,16 @@ class ConfiguratorHandler implements InvocationHandler {
 
         ImmutableHierarchicalConfiguration configuration;
         String path;
+        String key;
 
         if (thePath.startsWith(PATH_SEPARATOR)) {
             configuration = this.currentConfig;
             path = thePath.substring(1);
+            key = this.prefix.isEmpty() ? path : this.prefix + thePath;
         } else {
             configuration = this.rootConfig;
             path = thePath;
+            key = thePath;
         }
 
         if (theType.isArray()) {
@@ -181,7 +303,8 @@ class ConfiguratorHandler implements InvocationHandler {
             }
 
             final Class componentType = theType.getComponentType();
-            return this.getArrayProperty(path, configuration, componentType);
+            return this.getArrayProperty(
+                path, key, configuration, componentType);
         }
 
         if (theType.isInterface()) {
@@ -191,10 +314,11 @@ class ConfiguratorHandler implements InvocationHandler {
             }
 
             var sub = configuration.immutableConfigurationAt(path);
-            return this.getInterfaceProperty(sub, theType);
+            return this.getInterfaceProperty(sub, key, theType);
         }
 
         final Object value = configuration.getProperty(path);
+        this.record(key, describe(this.rootConfig, value));
 
         if (value == null) {
             if (useDefault) {
@@ -210,12 +334,15 @@ class ConfiguratorHandler implements InvocationHandler {
 
     private Object getArrayProperty(
             final String theLocalPath,
+            final String theKey,
             final ImmutableHierarchicalConfiguration theLocalConfig,
             final Class theComponentType) throws ConfigurationException {
 
         if (theComponentType.isInterface()) {
             var confs = theLocalConfig.immutableConfigurationsAt(theLocalPath);
             final int n = confs.size();
+            this.record(theKey + ConfigDependencies.COUNT,
+                Integer.toString(n));
 
             final Object result = Array.newInstance(theComponentType, n);
 
@@ -223,8 +350,9 @@ class ConfiguratorHandler implements InvocationHandler {
             for (var it = confs.iterator(); it.hasNext();) {
                 var sub = it.next();
 
-                final InvocationHandler handler =
-                    new ConfiguratorHandler(this.rootConfig, sub);
+                final InvocationHandler handler = new ConfiguratorHandler(
+                    this.rootConfig, sub, theKey + "(" + i + ")",
+                    this.dependencies);
                 Array.set(result, i++, Proxy.newProxyInstance(
                     theComponentType.getClassLoader(),
                     new Class[] {theComponentType},
@@ -235,14 +363,14 @@ class ConfiguratorHandler implements InvocationHandler {
 
         final Object value = theLocalConfig
             .getProperty(theLocalPath);
+        this.record(theKey, describe(this.rootConfig, value));
 
         if (value == null) {
-            final Object[] result = new Object[0];
-            return result;
+            return Array.newInstance(theComponentType, 0);
         }
 
         if (value instanceof Collection) {
-            final Collection c = (Collection) value;
+            final Collection<?> c = (Collection<?>) value;
             final Object result = Array.newInstance(theComponentType, c.size());
 
             int i = 0;
@@ -263,11 +391,14 @@ class ConfiguratorHandler implements InvocationHandler {
 
     private Object getInterfaceProperty(
             final ImmutableHierarchicalConfiguration theLocalConfiguration,
+            final String theKey,
             final Class theInterfaceType) throws ConfigurationException {
         final InvocationHandler handler =
             new ConfiguratorHandler(
                 this.rootConfig,
-                theLocalConfiguration);
+                theLocalConfiguration,
+                theKey,
+                this.dependencies);
         return Proxy.newProxyInstance(
             theInterfaceType.getClassLoader(),
             new Class[] {theInterfaceType},
@@ -304,5 +435,33 @@ class ConfiguratorHandler implements InvocationHandler {
                 ex);
         }
     }
-}
 
+    /**
+     * The data of the annotations of a getter.
+     */
+    private static final class PropertySpec {
+        /**
+         * The path given by {@link ConfigProperty}.
+         */
+        private final String path;
+
+        /**
+         * Tells whether a {@link DefaultValue} is given.
+         */
+        private final boolean useDefault;
+
+        /**
+         * The value given by {@link DefaultValue}.
+         */
+        private final String defaultValue;
+
+        PropertySpec(
+                final String thePath,
+                final boolean theUseDefault,
+                final String theDefaultValue) {
+            this.path = thePath;
+            this.useDefault = theUseDefault;
+            this.defaultValue = theDefaultValue;
+        }
+    }
+}
@@ -72,6 +72,12 @@ import org.slf4j.LoggerFactory;
  *      to the set of configuration files.</dt>
  *   <dd><code>-D, --define</code></dd><dt>defines a property directly at the
  *      command line</dt>
+ *   <dd><code>-r, --resume</code></dd><dt>continues an interrupted run from
+ *      its checkpoints; a shorthand for
+ *      <code>-D checkpoint.resume=true</code></dt>
+ *   <dd><code>-w, --workers</code></dd><dt>spreads the work over the given
+ *      number of worker processes; a shorthand for
+ *      <code>-D distributed.workers=n</code></dt>
  * </dl>
  *
  * The parser accepts multiple <code>-c</code> options. The last option
@@ -145,8 +151,10 @@ public final class DefaultConfigurator implements Configurator {
             return;
         }
 
-        this.config.getKeys().forEachRemaining((String key) ->
-            LOGGER.debug("KEY: " + key));
+        if (LOGGER.isDebugEnabled()) {
+            this.config.getKeys().forEachRemaining((String key) ->
+                LOGGER.debug("KEY: " + key));
+        }
 
         runnable.init(this);
         runnable.run();
@@ -157,10 +165,27 @@ public final class DefaultConfigurator implements Configurator {
     public <T> T create(final Class<T> clazz) {
         final InvocationHandler handler = new ConfiguratorHandler(
             this.config);
-        return (T) Proxy.newProxyInstance(
+        return clazz.cast(Proxy.newProxyInstance(
+            clazz.getClassLoader(),
+            new Class<?>[] {clazz},
+            handler));
+    }
+
+    @Override
+    public <T> T create(
+            final Class<T> clazz,
+            final ConfigDependencies dependencies) {
+        final InvocationHandler handler = new ConfiguratorHandler(
+            this.config, dependencies);
+        return clazz.cast(Proxy.newProxyInstance(
             clazz.getClassLoader(),
-            new Class[] {clazz},
-            handler);
+            new Class<?>[] {clazz},
+            handler));
+    }
+
+    @Override
+    public String lookup(final String key) {
+        return ConfiguratorHandler.lookup(this.config, key);
     }
 
     /**
@@ -201,6 +226,19 @@ public final class DefaultConfigurator implements Configurator {
 
             final Properties props = cmd.getOptionProperties(
                 PROPERTIES.getProperty("Option.define.short"));
+            if (cmd.hasOption(
+                    PROPERTIES.getProperty("Option.resume.short"))) {
+                props.setProperty(
+                    PROPERTIES.getProperty("Option.resume.property"),
+                    "true");
+            }
+            final String workers = cmd.getOptionValue(
+                PROPERTIES.getProperty("Option.workers.short"));
+            if (workers != null) {
+                props.setProperty(
+                    PROPERTIES.getProperty("Option.workers.property"),
+                    workers);
+            }
 
             return createConfiguration(configs, props);
         } catch (ParseException exp) {
@@ -327,10 +365,26 @@ public final class DefaultConfigurator implements Configurator {
             .numberOfArgs(1)
             .build();
 
+        final Option resume = Option.builder(
+                PROPERTIES.getProperty("Option.resume.short"))
+            .longOpt(PROPERTIES.getProperty("Option.resume.long"))
+            .desc(PROPERTIES.getProperty("Option.resume.description"))
+            .build();
+
+        final Option workers = Option.builder(
+                PROPERTIES.getProperty("Option.workers.short"))
+            .longOpt(PROPERTIES.getProperty("Option.workers.long"))
+            .argName(PROPERTIES.getProperty("Option.workers.argname"))
+            .desc(PROPERTIES.getProperty("Option.workers.description"))
+            .hasArg()
+            .build();
+
         options.addOption(property);
         options.addOption(help);
         options.addOption(version);
         options.addOption(configs);
+        options.addOption(resume);
+        options.addOption(workers);
 
         return options;
     }
@@ -0,0 +1,80 @@
+/*
+ * CheckpointConfig.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.checkpoint;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.chassis.annotations.ConfigProperty;
+import com.github.anyloop.chassis.annotations.DefaultValue;
+
+/**
+ * Configuration of the checkpoints.
+ *
+ * In YAML notation:
+ * <pre>
+ * checkpoint:
+ *   directory: /scratch/anyloop/checkpoints
+ *   interval: 60
+ *   resume: false
+ * </pre>
+ *
+ * The command line option <code>--resume</code> sets
+ * <code>checkpoint.resume</code>.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public interface CheckpointConfig {
+
+    /**
+     * The directory holding the checkpoint logs. An empty value
+     * disables checkpoints.
+     *
+     * @return the directory
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("checkpoint.directory")
+    @DefaultValue("")
+    String getDirectory() throws ConfigurationException;
+
+    /**
+     * The number of seconds after which records are forced to disk.
+     *
+     * @return the interval in seconds
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("checkpoint.interval")
+    @DefaultValue("60")
+    int getInterval() throws ConfigurationException;
+
+    /**
+     * Tells whether a run continues from the existing logs rather
+     * than starting afresh.
+     *
+     * @return <code>true</code> to resume
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("checkpoint.resume")
+    @DefaultValue("false")
+    boolean isResume() throws ConfigurationException;
+}
@@ -0,0 +1,528 @@
+/*
+ * CheckpointLog.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.checkpoint;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.anyloop.cache.CacheKey;
+import com.github.anyloop.chassis.ConfigurationException;
+
+/**
+ * An append-only log of the progress of a stage.
+ *
+ * The log is a file starting with a magic number, followed by
+ * records, each consisting of the length of its payload, the payload
+ * and a CRC-32 checksum of both. Records are only ever appended, so
+ * that a crash can at worst leave an incomplete or garbled last
+ * record. Opening a log for resumption reads it up to the last intact
+ * record and cuts off the rest; the intact records can then be
+ * {@link #replay replayed} while new ones are appended.
+ *
+ * {@link #append} merely queues a record. A background thread encodes
+ * the queued records, writes them and forces them to disk at the
+ * configured interval and when the log is closed. A record is encoded
+ * after <code>append</code> has returned, so the data it refers to
+ * must not change any more. The queue is bounded, so that a disk which
+ * cannot keep up slows down the producers instead of letting the
+ * pending records grow without limit.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class CheckpointLog implements Closeable {
+
+    /**
+     * Writes the payload of a record.
+     *
+     * @since 0.1.0
+     */
+    @FunctionalInterface
+    public interface Record {
+
+        /**
+         * Writes the payload.
+         *
+         * @param out the destination
+         * @throws IOException if the payload cannot be written
+         *
+         * @since 0.1.0
+         */
+        void write(DataOutput out) throws IOException;
+    }
+
+    /**
+     * Reads the payload of a record.
+     *
+     * @since 0.1.0
+     */
+    @FunctionalInterface
+    public interface Replay {
+
+        /**
+         * Reads the payload.
+         *
+         * @param in the payload of one record
+         * @throws IOException if the payload is malformed
+         *
+         * @since 0.1.0
+         */
+        void read(DataInput in) throws IOException;
+    }
+
+    /**
+     * The logger of this class.
+     */
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(CheckpointLog.class);
+
+    /**
+     * The first bytes of a log, "ALCKPT" and a format version.
+     */
+    private static final long MAGIC = 0x414c434b50540001L;
+
+    /**
+     * The size of the header of a record.
+     */
+    private static final int HEADER = Integer.BYTES;
+
+    /**
+     * The size of the trailer of a record.
+     */
+    private static final int TRAILER = Integer.BYTES;
+
+    /**
+     * The queued item which tells the writer to stop.
+     */
+    private static final Record CLOSE = out -> { };
+
+    /**
+     * The number of records waiting to be written at most.
+     */
+    private static final int CAPACITY = 4096;
+
+    /**
+     * The number of milliseconds a producer waits for room in the
+     * queue before it checks whether the writer has failed.
+     */
+    private static final long OFFER_MILLIS = 100;
+
+    /**
+     * The file of the log.
+     */
+    private final Path file;
+
+    /**
+     * The end of the intact records found when the log was opened.
+     */
+    private final long replayEnd;
+
+    /**
+     * The records waiting to be written.
+     */
+    private final BlockingQueue<Record> queue =
+        new ArrayBlockingQueue<>(CAPACITY);
+
+    /**
+     * The channel to which the records are appended.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The number of milliseconds after which records are forced to
+     * disk.
+     */
+    private final long syncMillis;
+
+    /**
+     * The thread writing the records.
+     */
+    private final Thread writer;
+
+    /**
+     * The first error of the writer, if any.
+     */
+    private volatile IOException failure;
+
+    /**
+     * Whether {@link #close} has been called.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Opens a log.
+     *
+     * @param theFile the file of the log
+     * @param resume <code>true</code> to keep the intact records of an
+     *        existing log, <code>false</code> to start afresh
+     * @param theSyncMillis the number of milliseconds after which
+     *        records are forced to disk
+     * @throws IOException if the file cannot be opened
+     * @throws IllegalArgumentException if the interval is negative
+     *
+     * @since 0.1.0
+     */
+    public CheckpointLog(
+            final Path theFile,
+            final boolean resume,
+            final long theSyncMillis) throws IOException {
+        if (theSyncMillis < 0) {
+            throw new IllegalArgumentException(
+                "The interval must not be negative");
+        }
+        this.file = theFile;
+        this.syncMillis = theSyncMillis;
+        final long end = resume && Files.exists(theFile)
+            ? scan(theFile) : 0;
+        this.channel = FileChannel.open(theFile, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE);
+        if (end == 0) {
+            this.channel.truncate(0);
+            final ByteBuffer magic = ByteBuffer.allocate(Long.BYTES);
+            magic.putLong(MAGIC).flip();
+            while (magic.hasRemaining()) {
+                this.channel.write(magic, magic.position());
+            }
+            this.replayEnd = Long.BYTES;
+        } else {
+            this.channel.truncate(end);
+            this.replayEnd = end;
+        }
+        this.channel.position(this.replayEnd);
+        this.channel.force(true);
+
+        this.writer = new Thread(this::write,
+            "checkpoint-" + theFile.getFileName());
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Opens the log of a stage in the configured directory.
+     *
+     * @param config the configuration
+     * @param key the key identifying the input of the stage
+     * @return the log or <code>null</code> if checkpoints are disabled
+     * @throws ConfigurationException if the configuration is invalid
+     *         or the log cannot be opened
+     *
+     * @since 0.1.0
+     */
+    public static CheckpointLog fromConfig(
+            final CheckpointConfig config,
+            final CacheKey key) throws ConfigurationException {
+        final String dir = config.getDirectory();
+        if (dir.isEmpty()) {
+            return null;
+        }
+        final int interval = config.getInterval();
+        if (interval < 0) {
+            throw new ConfigurationException(
+                "checkpoint.interval must not be negative");
+        }
+        try {
+            final Path directory = Files.createDirectories(Paths.get(dir));
+            return new CheckpointLog(
+                directory.resolve(key.getHash() + ".log"),
+                config.isResume(), TimeUnit.SECONDS.toMillis(interval));
+        } catch (IOException ex) {
+            throw new ConfigurationException(
+                "Cannot open checkpoint in '" + dir + "'", ex);
+        }
+    }
+
+    /**
+     * Finds the end of the intact records of a log.
+     *
+     * @param file the log
+     * @return the offset after the last intact record or zero if the
+     *         file is no log
+     * @throws IOException if the file cannot be read
+     */
+    private static long scan(final Path file) throws IOException {
+        final long size = Files.size(file);
+        if (size < Long.BYTES) {
+            return 0;
+        }
+        try (DataInputStream in = open(file)) {
+            if (in.readLong() != MAGIC) {
+                return 0;
+            }
+            long end = Long.BYTES;
+            byte[] payload;
+            while ((payload = next(in, size - end)) != null) {
+                end += HEADER + payload.length + TRAILER;
+            }
+            return end;
+        }
+    }
+
+    private static DataInputStream open(final Path file) throws IOException {
+        final InputStream in = Files.newInputStream(file);
+        return new DataInputStream(new BufferedInputStream(in));
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @param in the log, positioned at a record
+     * @param remaining the number of bytes up to the end of the log
+     * @return the payload or <code>null</code> if there is no intact
+     *         record
+     * @throws IOException if the log cannot be read
+     */
+    private static byte[] next(final DataInputStream in, final long remaining)
+            throws IOException {
+        if (remaining < HEADER + TRAILER) {
+            return null;
+        }
+        final int length = in.readInt();
+        if (length < 0 || length > remaining - HEADER - TRAILER) {
+            return null;
+        }
+        final byte[] payload = new byte[length];
+        in.readFully(payload);
+        return in.readInt() == checksum(payload, length)
+            ? payload : null;
+    }
+
+    /**
+     * Computes the checksum of a record.
+     *
+     * @param payload the buffer holding the payload
+     * @param length the length of the payload
+     * @return the CRC-32 of the length and the payload
+     */
+    private static int checksum(final byte[] payload, final int length) {
+        final CRC32 crc = new CRC32();
+        for (int shift = Integer.SIZE - Byte.SIZE; shift >= 0;
+                shift -= Byte.SIZE) {
+            crc.update(length >>> shift);
+        }
+        crc.update(payload, 0, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Returns the file of the log.
+     *
+     * @return the file
+     *
+     * @since 0.1.0
+     */
+    public Path getFile() {
+        return this.file;
+    }
+
+    /**
+     * Reads the records which were found intact when the log was
+     * opened, in the order in which they were appended. Records
+     * appended since are not included.
+     *
+     * @param replay receives the records
+     * @return the number of records
+     * @throws IOException if the log cannot be read or the replay
+     *         fails
+     *
+     * @since 0.1.0
+     */
+    public int replay(final Replay replay) throws IOException {
+        int count = 0;
+        try (DataInputStream in = open(this.file)) {
+            in.readLong();
+            long end = Long.BYTES;
+            byte[] payload;
+            while (end < this.replayEnd
+                    && (payload = next(in, this.replayEnd - end)) != null) {
+                replay.read(new DataInputStream(
+                    new ByteArrayInputStream(payload)));
+                end += HEADER + payload.length + TRAILER;
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Queues a record for writing. The method blocks only while the
+     * queue is full; records are silently dropped once writing has
+     * failed or the calling thread is interrupted, which is reported
+     * by {@link #close}.
+     *
+     * @param record the record
+     * @throws IllegalStateException if the log is closed
+     *
+     * @since 0.1.0
+     */
+    public void append(final Record record) {
+        if (this.closed) {
+            throw new IllegalStateException("The log is closed");
+        }
+        try {
+            while (this.failure == null && !this.queue.offer(
+                    record, OFFER_MILLIS, TimeUnit.MILLISECONDS)) {
+                // the writer is behind
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            this.failure = new InterruptedIOException(
+                "Interrupted while appending to " + this.file);
+        }
+    }
+
+    /**
+     * The loop of the writer thread.
+     */
+    private void write() {
+        final Buffer payload = new Buffer();
+        final DataOutputStream out = new DataOutputStream(payload);
+        final Buffer batch = new Buffer();
+        final DataOutputStream frames = new DataOutputStream(batch);
+        final List<Record> records = new ArrayList<>();
+        long lastSync = System.nanoTime();
+        boolean dirty = false;
+        boolean closing = false;
+        try {
+            while (!closing) {
+                final Record first;
+                if (dirty) {
+                    final long wait = this.syncMillis
+                        - TimeUnit.NANOSECONDS.toMillis(
+                            System.nanoTime() - lastSync);
+                    first = this.queue.poll(
+                        Math.max(0, wait), TimeUnit.MILLISECONDS);
+                } else {
+                    first = this.queue.take();
+                }
+                if (first != null) {
+                    records.add(first);
+                    this.queue.drainTo(records);
+                }
+
+                batch.reset();
+                for (final Record record : records) {
+                    if (record == CLOSE) {
+                        closing = true;
+                        break;
+                    }
+                    payload.reset();
+                    record.write(out);
+                    out.flush();
+                    final int length = payload.size();
+                    frames.writeInt(length);
+                    frames.write(payload.array(), 0, length);
+                    frames.writeInt(checksum(payload.array(), length));
+                }
+                records.clear();
+                frames.flush();
+
+                final ByteBuffer bytes =
+                    ByteBuffer.wrap(batch.array(), 0, batch.size());
+                while (bytes.hasRemaining()) {
+                    this.channel.write(bytes);
+                    dirty = true;
+                }
+                if (dirty && (closing || System.nanoTime() - lastSync
+                        >= TimeUnit.MILLISECONDS.toNanos(this.syncMillis))) {
+                    this.channel.force(false);
+                    dirty = false;
+                    lastSync = System.nanoTime();
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            this.failure = ex instanceof IOException ? (IOException) ex
+                : new IOException("Cannot encode checkpoint", ex);
+            this.queue.clear();
+            LOGGER.error("Cannot write checkpoint " + this.file, ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the queued records, forces them to disk and closes the
+     * file.
+     *
+     * @throws IOException if writing any record failed
+     *
+     * @since 0.1.0
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            while (this.writer.isAlive() && !this.queue.offer(
+                    CLOSE, OFFER_MILLIS, TimeUnit.MILLISECONDS)) {
+                // the writer is behind
+            }
+            this.writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                "Interrupted while closing " + this.file);
+        } finally {
+            this.channel.close();
+        }
+        if (this.failure != null) {
+            throw this.failure;
+        }
+    }
+
+    /**
+     * A byte array stream giving access to its buffer.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+
+        byte[] array() {
+            return this.buf;
+        }
+    }
+}
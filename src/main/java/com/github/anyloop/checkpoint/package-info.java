@@ -0,0 +1,35 @@
+/*
+ * package-info.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+/**
+ * This package lets long runs continue after an interruption.
+ *
+ * A stage appends the results of finished units of work to a
+ * {@link com.github.anyloop.checkpoint.CheckpointLog} while it runs.
+ * The records are written by a background thread, so that the workers
+ * are not held up, and each of them is protected by a checksum, so
+ * that a log cut short by a crash can be read up to the last complete
+ * record. When the program is started again with <code>--resume</code>,
+ * the stage reads the log back and skips the work recorded there.
+ */
+package com.github.anyloop.checkpoint;
@@ -0,0 +1,261 @@
+/*
+ * BytecodeCompiler.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.codegen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.codegen.ClassFileWriter.Bytes;
+
+import static com.github.anyloop.codegen.ClassFileWriter.ACC_FINAL;
+import static com.github.anyloop.codegen.ClassFileWriter.ACC_PRIVATE;
+import static com.github.anyloop.codegen.ClassFileWriter.ACC_PROTECTED;
+import static com.github.anyloop.codegen.ClassFileWriter.ACC_PUBLIC;
+import static com.github.anyloop.codegen.ClassFileWriter.ACC_STATIC;
+import static com.github.anyloop.codegen.ClassFileWriter.ALOAD_0;
+import static com.github.anyloop.codegen.ClassFileWriter.INVOKESPECIAL;
+import static com.github.anyloop.codegen.ClassFileWriter.INVOKESTATIC;
+import static com.github.anyloop.codegen.ClassFileWriter.RETURN;
+import static com.github.anyloop.codegen.ProgramAssembler.STEP;
+
+/**
+ * Compiles programs into classes at run time.
+ *
+ * The instructions of a program become straight-line bytecode over
+ * <code>double</code> locals, split into static methods no larger
+ * than the configured size, so that the JIT compiler accepts every
+ * one of them. The methods are called in order by a tree of
+ * dispatching methods of the same size limit. Every generated class
+ * is defined by a class loader of its own, so that it is unloaded as
+ * soon as its evaluator is no longer referenced.
+ *
+ * Instances are thread-safe.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class BytecodeCompiler {
+
+    /**
+     * The smallest size of a method.
+     *
+     * @since 0.1.0
+     */
+    public static final int MIN_METHOD_SIZE = 256;
+
+    /**
+     * The largest size of a method; HotSpot does not compile larger
+     * ones.
+     *
+     * @since 0.1.0
+     */
+    public static final int MAX_METHOD_SIZE = 8000;
+
+    /**
+     * The logger of this class.
+     */
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(BytecodeCompiler.class);
+
+    /**
+     * The internal name of the superclass of the generated classes.
+     */
+    private static final String BASE =
+        "com/github/anyloop/codegen/CompiledEvaluator";
+
+    /**
+     * The internal name of the generated classes, without the serial
+     * number.
+     */
+    private static final String NAME =
+        "com/github/anyloop/codegen/GeneratedEvaluator";
+
+    /**
+     * The size of the code of one call of a step method.
+     */
+    private static final int CALL_SIZE = 6;
+
+    /**
+     * The serial number of the last generated class.
+     */
+    private static final AtomicLong SERIAL = new AtomicLong();
+
+    /**
+     * Defines one generated class.
+     */
+    private static final class Loader extends ClassLoader {
+
+        Loader() {
+            super(CompiledEvaluator.class.getClassLoader());
+        }
+
+        Class<?> define(final String name, final byte[] bytes) {
+            return this.defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * The size limit of the methods.
+     */
+    private final int methodSize;
+
+    /**
+     * Creates a compiler.
+     *
+     * @param theMethodSize the size in bytes up to which the bytecode
+     *        of a generated method may grow
+     * @throws IllegalArgumentException if the size is below
+     *         {@link #MIN_METHOD_SIZE} or above {@link #MAX_METHOD_SIZE}
+     *
+     * @since 0.1.0
+     */
+    public BytecodeCompiler(final int theMethodSize) {
+        if (theMethodSize < MIN_METHOD_SIZE
+                || theMethodSize > MAX_METHOD_SIZE) {
+            throw new IllegalArgumentException(
+                "Method size out of range: " + theMethodSize);
+        }
+        this.methodSize = theMethodSize;
+    }
+
+    /**
+     * Creates a compiler from the configuration.
+     *
+     * @param config the configuration
+     * @return the compiler
+     * @throws ConfigurationException if the configuration is invalid
+     *
+     * @since 0.1.0
+     */
+    public static BytecodeCompiler fromConfig(final CodegenConfig config)
+            throws ConfigurationException {
+        final int size = config.getMethodSize();
+        if (size < MIN_METHOD_SIZE || size > MAX_METHOD_SIZE) {
+            throw new ConfigurationException(
+                "codegen.methodSize must be between " + MIN_METHOD_SIZE
+                + " and " + MAX_METHOD_SIZE);
+        }
+        return new BytecodeCompiler(size);
+    }
+
+    /**
+     * Returns the size limit of the generated methods.
+     *
+     * @return the size in bytes
+     *
+     * @since 0.1.0
+     */
+    public int getMethodSize() {
+        return this.methodSize;
+    }
+
+    /**
+     * Compiles a program and loads the generated class.
+     *
+     * @param program the program
+     * @return a new instance of the generated class
+     * @throws IllegalArgumentException if the program is too large for
+     *         a single class
+     *
+     * @since 0.1.0
+     */
+    public CompiledEvaluator compile(final Program program) {
+        final long start = System.nanoTime();
+        final String name = NAME + SERIAL.incrementAndGet();
+        final ClassFileWriter writer = new ClassFileWriter(name, BASE);
+        final ProgramAssembler assembler =
+            new ProgramAssembler(program, writer, this.methodSize);
+        List<String> calls = assembler.assemble();
+
+        final int fanout = (this.methodSize - 1) / CALL_SIZE;
+        for (int level = 0; calls.size() > fanout; ++level) {
+            final List<String> dispatchers = new ArrayList<>();
+            for (int from = 0; from < calls.size(); from += fanout) {
+                final String dispatcher =
+                    "d" + level + "_" + dispatchers.size();
+                final Bytes code = this.calls(writer, name,
+                    calls.subList(from, Math.min(from + fanout,
+                        calls.size())), 0);
+                writer.addMethod(ACC_PRIVATE | ACC_STATIC,
+                    dispatcher, STEP, 3, 3, code);
+                dispatchers.add(dispatcher);
+            }
+            calls = dispatchers;
+        }
+        writer.addMethod(ACC_PROTECTED | ACC_FINAL, "run", STEP, 3, 4,
+            this.calls(writer, name, calls, 1));
+
+        final int methods = writer.getMethodCount() + 1;
+        final Bytes init = new Bytes().u1(ALOAD_0);
+        writer.push(init, assembler.getWorkspaceSize());
+        writer.push(init, methods);
+        init.u1(INVOKESPECIAL).u2(writer.methodRef(BASE, "<init>", "(II)V"))
+            .u1(RETURN);
+        writer.addMethod(ACC_PUBLIC, "<init>", "()V", 3, 1, init);
+
+        final byte[] bytes = writer.toByteArray();
+        final CompiledEvaluator evaluator;
+        try {
+            evaluator = new Loader().define(name.replace('/', '.'), bytes)
+                .asSubclass(CompiledEvaluator.class)
+                .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException(
+                "Cannot instantiate generated class", ex);
+        }
+        LOGGER.debug(String.format(
+            "Compiled %d operations into %d methods of %d bytes in %.3f s",
+            program.getOperationCount(), methods, bytes.length,
+            (System.nanoTime() - start) * 1e-9));
+        return evaluator;
+    }
+
+    /**
+     * Generates code calling step methods in order.
+     *
+     * @param writer the writer of the generated class
+     * @param owner the internal name of the generated class
+     * @param targets the names of the methods to be called
+     * @param first the local variable slot of the input array
+     * @return the code
+     */
+    private Bytes calls(
+            final ClassFileWriter writer,
+            final String owner,
+            final List<String> targets,
+            final int first) {
+        final Bytes code = new Bytes();
+        for (final String target : targets) {
+            code.u1(ALOAD_0 + first).u1(ALOAD_0 + first + 1)
+                .u1(ALOAD_0 + first + 2).u1(INVOKESTATIC)
+                .u2(writer.methodRef(owner, target, STEP));
+        }
+        return code.u1(RETURN);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * CEmitter.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.codegen;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import com.github.anyloop.codegen.Program.Op;
+
+/**
+ * Writes programs as C source code.
+ *
+ * Every part file defines functions <code>name_f0</code>,
+ * <code>name_f1</code> and so on, which fill the workspace from the
+ * inputs. The driver declares them and defines
+ * <pre>
+ * void name(const double *x, double *out, double *w);
+ * </pre>
+ * with a workspace <code>w</code> of <code>NAME_WORKSPACE</code>
+ * elements provided by the caller.
+ *
+ * @since 0.1.0
+ */
+final class CEmitter extends Emitter {
+
+    CEmitter(
+            final Compression theCompression,
+            final long theFileSize,
+            final int theFunctionSize,
+            final int theBufferSize) {
+        super(theCompression, theFileSize, theFunctionSize, theBufferSize);
+    }
+
+    @Override
+    String getExtension() {
+        return ".c";
+    }
+
+    @Override
+    void beginPart(final CodeWriter out, final String name, final int part)
+            throws IOException {
+        out.append("/* Generated by anyloop. */\n\n#include <math.h>\n");
+    }
+
+    @Override
+    void beginFunction(
+            final CodeWriter out,
+            final String name,
+            final int function) throws IOException {
+        out.append("\nvoid ");
+        function(out, name, function);
+        out.append("(const double *x, double *w)\n{\n");
+    }
+
+    @Override
+    void endFunction(final CodeWriter out) throws IOException {
+        out.append("}\n");
+    }
+
+    @Override
+    void endPart(final CodeWriter out, final int from, final int to) { }
+
+    @Override
+    void driver(
+            final CodeWriter out,
+            final String name,
+            final Program program,
+            final int[] slots,
+            final int workspace,
+            final Layout layout) throws IOException {
+        out.append("/* Generated by anyloop. */\n\n/*\n * Inputs:\n");
+        for (int k = 0; k < layout.getInputs().size(); ++k) {
+            out.append(" *   x[").append(k).append("] = ")
+                .append(layout.getInputs().get(k).toString()).append('\n');
+        }
+        out.append(" */\n\n#define ").append(name.toUpperCase(Locale.ROOT))
+            .append("_WORKSPACE ").append(Math.max(workspace, 1))
+            .append("\n\n");
+        for (int f = 0; f < layout.getFunctions(); ++f) {
+            out.append("void ");
+            function(out, name, f);
+            out.append("(const double *x, double *w);\n");
+        }
+        out.append("\nvoid ").append(name)
+            .append("(const double *x, double *out, double *w)\n{\n");
+        for (int f = 0; f < layout.getFunctions(); ++f) {
+            out.append("    ");
+            function(out, name, f);
+            out.append("(x, w);\n");
+        }
+        for (int k = 0; k < program.getOutputCount(); ++k) {
+            out.append("    out[").append(k).append("] = ");
+            this.operand(out, program, slots, program.getOutput(k));
+            out.append("; /* ").append(layout.getNames().get(k))
+                .append(" */\n");
+        }
+        out.append("}\n");
+    }
+
+    private static void function(
+            final CodeWriter out,
+            final String name,
+            final int function) throws IOException {
+        out.append(name).append("_f").append(function);
+    }
+
+    @Override
+    void assign(final CodeWriter out, final int slot) throws IOException {
+        out.append("    w[").append(slot).append("] = ");
+    }
+
+    @Override
+    void operand(
+            final CodeWriter out,
+            final Program program,
+            final int[] slots,
+            final int value) throws IOException {
+        switch (program.getOp(value)) {
+            case INPUT:
+                out.append("x[").append(program.getLeft(value)).append(']');
+                break;
+            case CONSTANT:
+                constant(out, program.getConstant(value));
+                break;
+            default:
+                out.append("w[").append(slots[value]).append(']');
+                break;
+        }
+    }
+
+    /**
+     * Writes a floating-point literal that reads back as the same
+     * value in C and Java.
+     *
+     * @param out the writer
+     * @param value the value
+     * @throws IOException if the file cannot be written
+     */
+    static void constant(final CodeWriter out, final double value)
+            throws IOException {
+        if (value < 0) {
+            out.append('(').append(Double.toString(value)).append(')');
+        } else {
+            out.append(Double.toString(value));
+        }
+    }
+
+    @Override
+    String getFunction(final Op op) {
+        return op.name().toLowerCase(Locale.ROOT);
+    }
+}
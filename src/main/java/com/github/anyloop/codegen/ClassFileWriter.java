@@ -0,0 +1,468 @@
+/*
+ * ClassFileWriter.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.codegen;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A minimal writer of class files, just sufficient for the
+ * straight-line methods of {@link BytecodeCompiler}.
+ *
+ * Since the methods contain no branches, they need no stack map
+ * frames.
+ *
+ * @since 0.1.0
+ */
+final class ClassFileWriter {
+
+    /** Access flag. */
+    static final int ACC_PUBLIC = 0x0001;
+
+    /** Access flag. */
+    static final int ACC_PRIVATE = 0x0002;
+
+    /** Access flag. */
+    static final int ACC_PROTECTED = 0x0004;
+
+    /** Access flag. */
+    static final int ACC_STATIC = 0x0008;
+
+    /** Access flag. */
+    static final int ACC_FINAL = 0x0010;
+
+    /** Access flag of classes. */
+    static final int ACC_SUPER = 0x0020;
+
+    /** Opcode. */
+    static final int ICONST_0 = 0x03;
+
+    /** Opcode. */
+    static final int BIPUSH = 0x10;
+
+    /** Opcode. */
+    static final int SIPUSH = 0x11;
+
+    /** Opcode. */
+    static final int LDC_W = 0x13;
+
+    /** Opcode. */
+    static final int LDC2_W = 0x14;
+
+    /** Opcode. */
+    static final int DLOAD = 0x18;
+
+    /** Opcode. */
+    static final int DLOAD_0 = 0x26;
+
+    /** Opcode. */
+    static final int ALOAD_0 = 0x2a;
+
+    /** Opcode. */
+    static final int DALOAD = 0x31;
+
+    /** Opcode. */
+    static final int DSTORE = 0x39;
+
+    /** Opcode. */
+    static final int DSTORE_0 = 0x47;
+
+    /** Opcode. */
+    static final int DASTORE = 0x52;
+
+    /** Opcode. */
+    static final int DUP2 = 0x5c;
+
+    /** Opcode. */
+    static final int DADD = 0x63;
+
+    /** Opcode. */
+    static final int DSUB = 0x67;
+
+    /** Opcode. */
+    static final int DMUL = 0x6b;
+
+    /** Opcode. */
+    static final int DDIV = 0x6f;
+
+    /** Opcode. */
+    static final int DNEG = 0x77;
+
+    /** Opcode. */
+    static final int RETURN = 0xb1;
+
+    /** Opcode. */
+    static final int INVOKESPECIAL = 0xb7;
+
+    /** Opcode. */
+    static final int INVOKESTATIC = 0xb8;
+
+    /** Opcode. */
+    static final int WIDE = 0xc4;
+
+    /**
+     * The largest number of bytes taken by {@link #push}.
+     */
+    static final int PUSH_SIZE = 3;
+
+    /**
+     * The class file version of Java 11.
+     */
+    private static final int VERSION = 55;
+
+    /**
+     * The largest number of constant pool entries.
+     */
+    private static final int MAX_CONSTANTS = 0xffff;
+
+    /**
+     * A growable array of bytes.
+     */
+    static final class Bytes {
+
+        private byte[] data = new byte[256];
+
+        private int size;
+
+        /**
+         * Returns the number of bytes written.
+         *
+         * @return the size
+         */
+        int size() {
+            return this.size;
+        }
+
+        /**
+         * Appends a byte.
+         *
+         * @param b the byte
+         * @return this array
+         */
+        Bytes u1(final int b) {
+            this.ensure(1);
+            this.data[this.size++] = (byte) b;
+            return this;
+        }
+
+        /**
+         * Appends a big-endian 16-bit value.
+         *
+         * @param v the value
+         * @return this array
+         */
+        Bytes u2(final int v) {
+            return this.u1(v >>> 8).u1(v);
+        }
+
+        /**
+         * Appends a big-endian 32-bit value.
+         *
+         * @param v the value
+         * @return this array
+         */
+        Bytes u4(final int v) {
+            return this.u2(v >>> 16).u2(v);
+        }
+
+        /**
+         * Appends the contents of another array.
+         *
+         * @param other the other array
+         * @return this array
+         */
+        Bytes append(final Bytes other) {
+            this.ensure(other.size);
+            System.arraycopy(other.data, 0, this.data, this.size, other.size);
+            this.size += other.size;
+            return this;
+        }
+
+        private void ensure(final int n) {
+            if (this.size + n > this.data.length) {
+                this.data = Arrays.copyOf(this.data,
+                    Math.max(2 * this.data.length, this.size + n));
+            }
+        }
+
+        /**
+         * Returns a copy of the bytes written.
+         *
+         * @return the bytes
+         */
+        byte[] toByteArray() {
+            return Arrays.copyOf(this.data, this.size);
+        }
+    }
+
+    private final Bytes pool = new Bytes();
+
+    private int poolCount = 1;
+
+    /**
+     * The index of each constant pool entry, keyed by a tag character
+     * followed by the value.
+     */
+    private final Map<String, Integer> entries = new HashMap<>();
+
+    private final Bytes methods = new Bytes();
+
+    private int methodCount;
+
+    private final int thisClass;
+
+    private final int superClass;
+
+    /**
+     * Creates a writer for a public final class.
+     *
+     * @param name the internal name of the class
+     * @param superName the internal name of its superclass
+     */
+    ClassFileWriter(final String name, final String superName) {
+        this.thisClass = this.classRef(name);
+        this.superClass = this.classRef(superName);
+    }
+
+    private int entry(final String key, final int slots, final Bytes b) {
+        final int i = this.poolCount;
+        this.poolCount += slots;
+        this.pool.append(b);
+        this.entries.put(key, i);
+        return i;
+    }
+
+    /**
+     * Returns the constant pool index of a string.
+     *
+     * @param s the string
+     * @return the index
+     */
+    int utf8(final String s) {
+        final Integer index = this.entries.get("U" + s);
+        if (index != null) {
+            return index;
+        }
+        final byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        final Bytes entry = new Bytes().u1(1).u2(b.length);
+        for (final byte x : b) {
+            entry.u1(x);
+        }
+        return this.entry("U" + s, 1, entry);
+    }
+
+    /**
+     * Returns the constant pool index of a class.
+     *
+     * @param name the internal name of the class
+     * @return the index
+     */
+    int classRef(final String name) {
+        final Integer index = this.entries.get("C" + name);
+        if (index != null) {
+            return index;
+        }
+        final int u = this.utf8(name);
+        return this.entry("C" + name, 1, new Bytes().u1(7).u2(u));
+    }
+
+    /**
+     * Returns the constant pool index of a method.
+     *
+     * @param owner the internal name of the class
+     * @param name the name of the method
+     * @param descriptor the descriptor of the method
+     * @return the index
+     */
+    int methodRef(
+            final String owner,
+            final String name,
+            final String descriptor) {
+        final String key = "M" + owner + '.' + name + descriptor;
+        final Integer index = this.entries.get(key);
+        if (index != null) {
+            return index;
+        }
+        final int c = this.classRef(owner);
+        final int nt = this.nameAndType(name, descriptor);
+        return this.entry(key, 1, new Bytes().u1(10).u2(c).u2(nt));
+    }
+
+    private int nameAndType(final String name, final String descriptor) {
+        final String key = "N" + name + ' ' + descriptor;
+        final Integer index = this.entries.get(key);
+        if (index != null) {
+            return index;
+        }
+        final int n = this.utf8(name);
+        final int d = this.utf8(descriptor);
+        return this.entry(key, 1, new Bytes().u1(12).u2(n).u2(d));
+    }
+
+    /**
+     * Returns the constant pool index of a <code>double</code>.
+     *
+     * @param value the constant
+     * @return the index
+     */
+    int doubleConstant(final double value) {
+        final long bits = Double.doubleToRawLongBits(value);
+        final Integer index = this.entries.get("D" + bits);
+        if (index != null) {
+            return index;
+        }
+        return this.entry("D" + bits, 2, new Bytes().u1(6)
+            .u4((int) (bits >>> 32)).u4((int) bits));
+    }
+
+    /**
+     * Returns the constant pool index of an <code>int</code>.
+     *
+     * @param value the constant
+     * @return the index
+     */
+    int intConstant(final int value) {
+        final Integer index = this.entries.get("I" + value);
+        if (index != null) {
+            return index;
+        }
+        return this.entry("I" + value, 1, new Bytes().u1(3).u4(value));
+    }
+
+    /**
+     * Appends an instruction pushing an <code>int</code>.
+     *
+     * @param code the bytecode
+     * @param value the value
+     */
+    void push(final Bytes code, final int value) {
+        if (value >= -1 && value <= 5) {
+            code.u1(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            code.u1(BIPUSH).u1(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            code.u1(SIPUSH).u2(value);
+        } else {
+            code.u1(LDC_W).u2(this.intConstant(value));
+        }
+    }
+
+    /**
+     * Appends an instruction loading a <code>double</code> local.
+     *
+     * @param code the bytecode
+     * @param slot the local variable slot
+     */
+    static void load(final Bytes code, final int slot) {
+        local(code, DLOAD_0, DLOAD, slot);
+    }
+
+    /**
+     * Appends an instruction storing a <code>double</code> local.
+     *
+     * @param code the bytecode
+     * @param slot the local variable slot
+     */
+    static void store(final Bytes code, final int slot) {
+        local(code, DSTORE_0, DSTORE, slot);
+    }
+
+    private static void local(
+            final Bytes code,
+            final int shortForm,
+            final int opcode,
+            final int slot) {
+        if (slot <= 3) {
+            code.u1(shortForm + slot);
+        } else if (slot <= 0xff) {
+            code.u1(opcode).u1(slot);
+        } else {
+            code.u1(WIDE).u1(opcode).u2(slot);
+        }
+    }
+
+    /**
+     * Returns the number of constant pool slots in use.
+     *
+     * @return the number of slots, including the unused first one
+     */
+    int getConstantCount() {
+        return this.poolCount;
+    }
+
+    /**
+     * Returns the number of methods added so far.
+     *
+     * @return the number of methods
+     */
+    int getMethodCount() {
+        return this.methodCount;
+    }
+
+    /**
+     * Adds a method.
+     *
+     * @param access the access flags
+     * @param name the name of the method
+     * @param descriptor the descriptor of the method
+     * @param maxStack the largest depth of the operand stack
+     * @param maxLocals the number of local variable slots
+     * @param code the bytecode
+     */
+    void addMethod(
+            final int access,
+            final String name,
+            final String descriptor,
+            final int maxStack,
+            final int maxLocals,
+            final Bytes code) {
+        this.methods.u2(access).u2(this.utf8(name))
+            .u2(this.utf8(descriptor)).u2(1)
+            .u2(this.utf8("Code")).u4(12 + code.size())
+            .u2(maxStack).u2(maxLocals).u4(code.size()).append(code)
+            .u2(0).u2(0);
+        ++this.methodCount;
+    }
+
+    /**
+     * Returns the class file.
+     *
+     * @return the bytes of the class file
+     * @throws IllegalArgumentException if the constant pool overflows
+     */
+    byte[] toByteArray() {
+        if (this.poolCount > MAX_CONSTANTS) {
+            throw new IllegalArgumentException(
+                "Too many constants for one class");
+        }
+        return new Bytes().u4(0xcafebabe).u2(0).u2(VERSION)
+            .u2(this.poolCount).append(this.pool)
+            .u2(ACC_PUBLIC | ACC_FINAL | ACC_SUPER)
+            .u2(this.thisClass).u2(this.superClass).u2(0).u2(0)
+            .u2(this.methodCount).append(this.methods)
+            .u2(0).toByteArray();
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * CodeWriter.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.codegen;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import com.github.luben.zstd.ZstdDirectBufferCompressingStreamNoFinalizer;
+
+/**
+ * Writes text to a sequence of files through direct buffers.
+ *
+ * Characters are encoded into a direct buffer, which is handed to the
+ * file channel, the {@link Deflater} or the Zstandard compressor as a
+ * whole when it is full, so that no strings or heap arrays grow with
+ * the size of the output. The buffers are reused for all files opened
+ * by the same writer.
+ *
+ * @since 0.1.0
+ */
+final class CodeWriter implements Closeable {
+
+    /**
+     * The compression level of gzip: generated code compresses well
+     * even at the fastest level.
+     */
+    private static final int GZIP_LEVEL = Deflater.BEST_SPEED;
+
+    /**
+     * The compression level of Zstandard.
+     */
+    private static final int ZSTD_LEVEL = 3;
+
+    /**
+     * The header of a gzip member without file name and time stamp.
+     */
+    private static final byte[] GZIP_HEADER = {
+        0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff,
+    };
+
+    /**
+     * The input of the {@link Deflater} between two calls of
+     * {@link #drain}.
+     */
+    private static final byte[] NO_INPUT = new byte[0];
+
+    private final Compression compression;
+
+    /**
+     * The encoded text not yet written.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The compressed data not yet written, <code>null</code> for plain
+     * files.
+     */
+    private final ByteBuffer packed;
+
+    private final Deflater deflater;
+
+    private final CRC32 crc = new CRC32();
+
+    private ZstdDirectBufferCompressingStreamNoFinalizer zstd;
+
+    /**
+     * The current file or <code>null</code>.
+     */
+    private FileChannel channel;
+
+    /**
+     * The number of bytes of text in the current file.
+     */
+    private long size;
+
+    /**
+     * The number of bytes of text in all files.
+     */
+    private long totalSize;
+
+    /**
+     * Creates a writer.
+     *
+     * @param theCompression the compression of the files
+     * @param bufferSize the size of the buffers in bytes
+     */
+    CodeWriter(final Compression theCompression, final int bufferSize) {
+        this.compression = theCompression;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        switch (theCompression) {
+            case GZIP:
+                this.packed = ByteBuffer.allocateDirect(bufferSize)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+                this.deflater = new Deflater(GZIP_LEVEL, true);
+                break;
+            case ZSTD:
+                this.packed = ByteBuffer.allocateDirect(Math.max(bufferSize,
+                    ZstdDirectBufferCompressingStreamNoFinalizer
+                        .recommendedOutputBufferSize()));
+                this.deflater = null;
+                break;
+            default:
+                this.packed = null;
+                this.deflater = null;
+                break;
+        }
+    }
+
+    /**
+     * Starts a new file, finishing the current one.
+     *
+     * @param file the file, which is replaced if it exists
+     * @throws IOException if the file cannot be created
+     */
+    void open(final Path file) throws IOException {
+        this.finish();
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.size = 0;
+        if (this.compression == Compression.GZIP) {
+            this.packed.put(GZIP_HEADER);
+        } else if (this.compression == Compression.ZSTD) {
+            this.zstd = new ZstdDirectBufferCompressingStreamNoFinalizer(
+                    this.packed, ZSTD_LEVEL) {
+                @Override
+                protected ByteBuffer flushBuffer(final ByteBuffer toFlush)
+                        throws IOException {
+                    CodeWriter.this.writePacked();
+                    return toFlush;
+                }
+            };
+        }
+    }
+
+    /**
+     * Returns the amount of text written to the current file.
+     *
+     * @return the number of bytes before compression
+     */
+    long getSize() {
+        return this.size + this.buffer.position();
+    }
+
+    /**
+     * Returns the amount of text written to all files.
+     *
+     * @return the number of bytes before compression
+     */
+    long getTotalSize() {
+        return this.totalSize + this.buffer.position();
+    }
+
+    /**
+     * Appends a character.
+     *
+     * @param c the character
+     * @return this writer
+     * @throws IOException if the file cannot be written
+     */
+    CodeWriter append(final char c) throws IOException {
+        if (c >= 0x80) {
+            return this.append(String.valueOf(c));
+        }
+        if (!this.buffer.hasRemaining()) {
+            this.drain();
+        }
+        this.buffer.put((byte) c);
+        return this;
+    }
+
+    /**
+     * Appends a text.
+     *
+     * @param text the text
+     * @return this writer
+     * @throws IOException if the file cannot be written
+     */
+    CodeWriter append(final CharSequence text) throws IOException {
+        final int n = text.length();
+        for (int i = 0; i < n; ++i) {
+            final char c = text.charAt(i);
+            if (c >= 0x80) {
+                this.appendEncoded(text, i);
+                break;
+            }
+            if (!this.buffer.hasRemaining()) {
+                this.drain();
+            }
+            this.buffer.put((byte) c);
+        }
+        return this;
+    }
+
+    private void appendEncoded(final CharSequence text, final int from)
+            throws IOException {
+        final ByteBuffer bytes = StandardCharsets.UTF_8.encode(
+            CharBuffer.wrap(text, from, text.length()));
+        while (bytes.hasRemaining()) {
+            if (!this.buffer.hasRemaining()) {
+                this.drain();
+            }
+            final int n = Math.min(bytes.remaining(), this.buffer.remaining());
+            final ByteBuffer chunk = bytes.duplicate();
+            chunk.limit(chunk.position() + n);
+            this.buffer.put(chunk);
+            bytes.position(bytes.position() + n);
+        }
+    }
+
+    /**
+     * Appends an integer in decimal notation.
+     *
+     * @param n the integer
+     * @return this writer
+     * @throws IOException if the file cannot be written
+     */
+    CodeWriter append(final long n) throws IOException {
+        if (n < 0) {
+            if (n == Long.MIN_VALUE) {
+                return this.append(Long.toString(n));
+            }
+            this.append('-');
+            return this.append(-n);
+        }
+        long scale = 1;
+        while (scale <= n / 10) {
+            scale *= 10;
+        }
+        for (long rest = n; scale > 0; scale /= 10) {
+            this.append((char) ('0' + rest / scale));
+            rest %= scale;
+        }
+        return this;
+    }
+
+    /**
+     * Passes the buffered text on to the file or the compressor.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    private void drain() throws IOException {
+        this.buffer.flip();
+        this.size += this.buffer.remaining();
+        this.totalSize += this.buffer.remaining();
+        switch (this.compression) {
+            case GZIP:
+                this.crc.update(this.buffer.duplicate());
+                this.deflater.setInput(this.buffer);
+                while (!this.deflater.needsInput()) {
+                    this.deflate();
+                }
+                // the buffer is about to be refilled
+                this.deflater.setInput(NO_INPUT);
+                break;
+            case ZSTD:
+                this.zstd.compress(this.buffer);
+                break;
+            default:
+                while (this.buffer.hasRemaining()) {
+                    this.channel.write(this.buffer);
+                }
+                break;
+        }
+        this.buffer.clear();
+    }
+
+    private void deflate() throws IOException {
+        this.deflater.deflate(this.packed);
+        if (!this.packed.hasRemaining()) {
+            this.writePacked();
+        }
+    }
+
+    /**
+     * Writes the compressed data to the file.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    private void writePacked() throws IOException {
+        this.packed.flip();
+        while (this.packed.hasRemaining()) {
+            this.channel.write(this.packed);
+        }
+        this.packed.clear();
+    }
+
+    /**
+     * Writes the rest of the current file and closes it. Nothing
+     * happens if there is no current file.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    void finish() throws IOException {
+        if (this.channel == null) {
+            return;
+        }
+        try {
+            this.drain();
+            if (this.compression == Compression.GZIP) {
+                this.deflater.finish();
+                while (!this.deflater.finished()) {
+                    this.deflate();
+                }
+                if (this.packed.remaining() < 2 * Integer.BYTES) {
+                    this.writePacked();
+                }
+                this.packed.putInt((int) this.crc.getValue());
+                this.packed.putInt((int) this.size);
+                this.writePacked();
+                this.deflater.reset();
+                this.crc.reset();
+            } else if (this.compression == Compression.ZSTD) {
+                this.zstd.close();
+                this.zstd = null;
+            }
+        } finally {
+            this.buffer.clear();
+            if (this.packed != null) {
+                this.packed.clear();
+            }
+            this.channel.close();
+            this.channel = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            this.finish();
+        } finally {
+            if (this.deflater != null) {
+                this.deflater.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * CodegenConfig.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.codegen;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.chassis.annotations.ConfigProperty;
+import com.github.anyloop.chassis.annotations.DefaultValue;
+
+/**
+ * Configuration of the code generation.
+ *
+ * In YAML notation:
+ * <pre>
+ * codegen:
+ *   input: amplitudes.txt
+ *   effort: 8
+ *   timeBudget: 60
+ *   methodSize: 4000
+ *   output: generated/amplitudes
+ *   language: c
+ *   compression: zstd
+ *   fileSize: 100000000
+ *   functionSize: 2000
+ *   bufferSize: 1048576
+ * </pre>
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public interface CodegenConfig {
+
+    /**
+     * The file with the expressions to be optimised, in the notation
+     * of {@link com.github.anyloop.symbolic.ExprReader}; empty for none.
+     *
+     * @return the path of the file
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("codegen.input")
+    @DefaultValue("")
+    String getInput() throws ConfigurationException;
+
+    /**
+     * The number of Horner schemes tried for the expressions; zero
+     * turns the Horner schemes off, one takes the greedy scheme only.
+     *
+     * @return the effort
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("codegen.effort")
+    @DefaultValue("1")
+    int getEffort() throws ConfigurationException;
+
+    /**
+     * The time after which no further Horner schemes are tried.
+     *
+     * @return the time in seconds
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("codegen.timeBudget")
+    @DefaultValue("60")
+    double getTimeBudget() throws ConfigurationException;
+
+    /**
+     * The size in bytes up to which the bytecode of a single generated
+     * method may grow. The JIT compiler skips methods larger than
+     * 8000 bytes altogether.
+     *
+     * @return the size of a method
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("codegen.methodSize")
+    @DefaultValue("4000")
+    int getMethodSize() throws ConfigurationException;
+
+    /**
+     * The path of the generated source code without extension; empty
+     * for none. The file name must be an identifier.
+     *
+     * @return the base path of the output
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("codegen.output")
+    @DefaultValue("")
+    String getOutput() throws ConfigurationException;
+
+    /**
+     * The language of the generated source code: <code>c</code>,
+     * <code>java</code> or <code>form</code>.
+     *
+     * @return the language
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("codegen.language")
+    @DefaultValue("c")
+    String getLanguage() throws ConfigurationException;
+
+    /**
+     * The compression of the generated files: <code>none</code>,
+     * <code>gzip</code> or <code>zstd</code>.
+     *
+     * @return the name of the compression
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("codegen.compression")
+    @DefaultValue("none")
+    String getCompression() throws ConfigurationException;
+
+    /**
+     * The size before compression after which a generated file is
+     * finished and the next one started.
+     *
+     * @return the size in bytes
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("codegen.fileSize")
+    @DefaultValue("100000000")
+    long getFileSize() throws ConfigurationException;
+
+    /**
+     * The number of statements per generated function. Java methods
+     * are limited to 450 statements regardless.
+     *
+     * @return the number of statements
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("codegen.functionSize")
+    @DefaultValue("2000")
+    int getFunctionSize() throws ConfigurationException;
+
+    /**
+     * The size of the buffers through which the source code is
+     * written, at least 4096.
+     *
+     * @return the size in bytes
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("codegen.bufferSize")
+    @DefaultValue("1048576")
+    int getBufferSize() throws ConfigurationException;
+}
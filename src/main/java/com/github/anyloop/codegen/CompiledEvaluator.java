@@ -0,0 +1,133 @@
+/*
+ * CompiledEvaluator.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.codegen;
+
+/**
+ * The base class of the evaluators generated by
+ * {@link BytecodeCompiler}.
+ *
+ * A generated class keeps the values which are passed from one of its
+ * methods to another in a workspace array. Every thread has a
+ * workspace of its own, so that evaluators are thread-safe and
+ * {@link #evaluate(double[], double[])} does not allocate.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public abstract class CompiledEvaluator implements Evaluator {
+
+    /**
+     * The length of the workspace.
+     */
+    private final int workspaceSize;
+
+    /**
+     * The number of methods of the generated class.
+     */
+    private final int methodCount;
+
+    /**
+     * The workspace of each thread.
+     */
+    private final ThreadLocal<double[]> workspaces;
+
+    /**
+     * Creates an evaluator.
+     *
+     * @param theWorkspaceSize the length of the workspace
+     * @param theMethodCount the number of methods of the generated
+     *        class
+     *
+     * @since 0.1.0
+     */
+    protected CompiledEvaluator(
+            final int theWorkspaceSize,
+            final int theMethodCount) {
+        this.workspaceSize = theWorkspaceSize;
+        this.methodCount = theMethodCount;
+        this.workspaces = ThreadLocal.withInitial(
+            () -> new double[theWorkspaceSize]);
+    }
+
+    /**
+     * Returns the length of the workspace.
+     *
+     * @return the number of values passed between methods
+     *
+     * @since 0.1.0
+     */
+    public final int getWorkspaceSize() {
+        return this.workspaceSize;
+    }
+
+    /**
+     * Returns the number of methods of the generated class.
+     *
+     * @return the number of methods, including the constructor
+     *
+     * @since 0.1.0
+     */
+    public final int getMethodCount() {
+        return this.methodCount;
+    }
+
+    @Override
+    public final void evaluate(
+            final double[] inputs,
+            final double[] outputs) {
+        this.run(inputs, outputs, this.workspaces.get());
+    }
+
+    /**
+     * Evaluates the expressions with a workspace provided by the
+     * caller.
+     *
+     * @param inputs the values of the input variables
+     * @param outputs receives the values of the expressions
+     * @param workspace an array of at least {@link #getWorkspaceSize}
+     *        elements, not shared with another thread
+     *
+     * @since 0.1.0
+     */
+    public final void evaluate(
+            final double[] inputs,
+            final double[] outputs,
+            final double[] workspace) {
+        this.run(inputs, outputs, workspace);
+    }
+
+    /**
+     * Evaluates the expressions; implemented by the generated class.
+     *
+     * @param inputs the values of the input variables
+     * @param outputs receives the values of the expressions
+     * @param workspace the workspace
+     *
+     * @since 0.1.0
+     */
+    protected abstract void run(
+        double[] inputs,
+        double[] outputs,
+        double[] workspace);
+}
@@ -0,0 +1,104 @@
+/*
+ * Compression.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.codegen;
+
+/**
+ * The compression of generated source files.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public enum Compression {
+
+    /**
+     * Plain files.
+     */
+    NONE("none", ""),
+
+    /**
+     * Files in gzip format, as written by {@link java.util.zip.Deflater}.
+     */
+    GZIP("gzip", ".gz"),
+
+    /**
+     * Files in Zstandard format, which compresses about as well as
+     * gzip at several times its speed.
+     */
+    ZSTD("zstd", ".zst");
+
+    /**
+     * The name in the configuration.
+     */
+    private final String name;
+
+    /**
+     * The suffix appended to file names.
+     */
+    private final String suffix;
+
+    Compression(final String theName, final String theSuffix) {
+        this.name = theName;
+        this.suffix = theSuffix;
+    }
+
+    /**
+     * Returns the name used in the configuration.
+     *
+     * @return the name
+     *
+     * @since 0.1.0
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Returns the suffix appended to the names of compressed files.
+     *
+     * @return the suffix including the dot, empty for plain files
+     *
+     * @since 0.1.0
+     */
+    public String getSuffix() {
+        return this.suffix;
+    }
+
+    /**
+     * Looks up a compression by its name in the configuration.
+     *
+     * @param name the name
+     * @return the compression or <code>null</code> if the name is
+     *         unknown
+     *
+     * @since 0.1.0
+     */
+    public static Compression forName(final String name) {
+        for (final Compression compression : values()) {
+            if (compression.name.equals(name)) {
+                return compression;
+            }
+        }
+        return null;
+    }
+}
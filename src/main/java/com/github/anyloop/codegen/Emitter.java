@@ -0,0 +1,487 @@
+/*
+ * Emitter.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.codegen;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.codegen.Program.Op;
+import com.github.anyloop.symbolic.Expr;
+
+/**
+ * Writes programs as source code.
+ *
+ * The instructions of a program become assignments to the elements
+ * of a workspace, in order, grouped into functions of a bounded number
+ * of statements. The functions are written to part files until these
+ * reach the configured size; a driver file then calls them in order
+ * and copies the outputs. Everything is streamed through a
+ * {@link CodeWriter}, so that the memory needed does not depend on
+ * the size of the source code.
+ *
+ * A base path <code>dir/amp</code> yields the driver
+ * <code>dir/amp.c</code> and the parts <code>dir/amp_0.c</code>,
+ * <code>dir/amp_1.c</code> and so on for C, with the suffix of the
+ * compression appended.
+ *
+ * Instances are thread-safe.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public abstract class Emitter {
+
+    /**
+     * The smallest size of the buffers.
+     *
+     * @since 0.1.0
+     */
+    public static final int MIN_BUFFER_SIZE = 1 << 12;
+
+    /**
+     * The names allowed as base names of the files.
+     */
+    private static final Pattern IDENTIFIER =
+        Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private final Compression compression;
+
+    private final long fileSize;
+
+    private final int functionSize;
+
+    private final int bufferSize;
+
+    /**
+     * Creates an emitter.
+     *
+     * @param theCompression the compression of the files
+     * @param theFileSize the size in bytes after which a part file is
+     *        finished, before compression
+     * @param theFunctionSize the number of statements per function
+     * @param theBufferSize the size of the buffers in bytes
+     * @throws IllegalArgumentException if a size is out of range
+     */
+    Emitter(
+            final Compression theCompression,
+            final long theFileSize,
+            final int theFunctionSize,
+            final int theBufferSize) {
+        if (theFileSize < 1 || theFunctionSize < 1
+                || theBufferSize < MIN_BUFFER_SIZE) {
+            throw new IllegalArgumentException(String.format(
+                "Invalid sizes: file %d, function %d, buffer %d",
+                theFileSize, theFunctionSize, theBufferSize));
+        }
+        this.compression = theCompression;
+        this.fileSize = theFileSize;
+        this.functionSize = Math.min(theFunctionSize,
+            this.getMaxFunctionSize());
+        this.bufferSize = theBufferSize;
+    }
+
+    /**
+     * Creates an emitter for a language.
+     *
+     * @param language <code>c</code>, <code>java</code> or
+     *        <code>form</code>
+     * @param compression the compression of the files
+     * @param fileSize the size in bytes after which a part file is
+     *        finished, before compression
+     * @param functionSize the number of statements per function
+     * @param bufferSize the size of the buffers in bytes
+     * @return the emitter
+     * @throws IllegalArgumentException if the language is unknown or a
+     *         size is out of range
+     *
+     * @since 0.1.0
+     */
+    public static Emitter create(
+            final String language,
+            final Compression compression,
+            final long fileSize,
+            final int functionSize,
+            final int bufferSize) {
+        switch (language) {
+            case "c":
+                return new CEmitter(compression, fileSize, functionSize,
+                    bufferSize);
+            case "java":
+                return new JavaEmitter(compression, fileSize, functionSize,
+                    bufferSize);
+            case "form":
+                return new FormEmitter(compression, fileSize, functionSize,
+                    bufferSize);
+            default:
+                throw new IllegalArgumentException(
+                    "Unknown language " + language);
+        }
+    }
+
+    /**
+     * Creates an emitter from the configuration.
+     *
+     * @param config the configuration
+     * @return the emitter
+     * @throws ConfigurationException if the configuration is invalid
+     *
+     * @since 0.1.0
+     */
+    public static Emitter fromConfig(final CodegenConfig config)
+            throws ConfigurationException {
+        final Compression compression =
+            Compression.forName(config.getCompression());
+        if (compression == null) {
+            throw new ConfigurationException(
+                "Unknown codegen.compression " + config.getCompression());
+        }
+        try {
+            return create(config.getLanguage(), compression,
+                config.getFileSize(), config.getFunctionSize(),
+                config.getBufferSize());
+        } catch (IllegalArgumentException ex) {
+            throw new ConfigurationException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Returns the compression of the files.
+     *
+     * @return the compression
+     *
+     * @since 0.1.0
+     */
+    public Compression getCompression() {
+        return this.compression;
+    }
+
+    /**
+     * Returns the number of statements per function.
+     *
+     * @return the configured number, limited by what the language
+     *         allows
+     *
+     * @since 0.1.0
+     */
+    public int getFunctionSize() {
+        return this.functionSize;
+    }
+
+    /**
+     * Writes a program.
+     *
+     * @param base the path of the driver without extension; its file
+     *        name must be an identifier
+     * @param program the program
+     * @param names the names of the outputs
+     * @param inputs the input variables
+     * @return the files written, the driver last
+     * @throws IOException if a file cannot be written
+     * @throws IllegalArgumentException if the base name is not an
+     *         identifier or the numbers of names or inputs do not match
+     *         the program
+     *
+     * @since 0.1.0
+     */
+    public List<Path> emit(
+            final Path base,
+            final Program program,
+            final List<String> names,
+            final List<Expr> inputs) throws IOException {
+        final String name = base.getFileName().toString();
+        if (!IDENTIFIER.matcher(name).matches()) {
+            throw new IllegalArgumentException(
+                name + " is not an identifier");
+        }
+        if (names.size() != program.getOutputCount()
+                || inputs.size() != program.getInputCount()) {
+            throw new IllegalArgumentException(
+                "Names and inputs do not match the program");
+        }
+
+        // workspace slots of the computed values
+        final int n = program.getInstructionCount();
+        final int[] slots = new int[n];
+        int workspace = 0;
+        for (int i = 0; i < n; ++i) {
+            final Op op = program.getOp(i);
+            slots[i] = op == Op.INPUT || op == Op.CONSTANT ? -1 : workspace++;
+        }
+
+        final List<Path> files = new ArrayList<>();
+        final Path dir = base.toAbsolutePath().getParent();
+        final String suffix = this.getExtension()
+            + this.compression.getSuffix();
+        try (CodeWriter out = new CodeWriter(
+                this.compression, this.bufferSize)) {
+            final List<Integer> starts = new ArrayList<>();
+            int functions = 0;
+            int i = 0;
+            while (i < n) {
+                final Path part = dir.resolve(
+                    name + "_" + starts.size() + suffix);
+                files.add(part);
+                out.open(part);
+                this.beginPart(out, name, starts.size());
+                starts.add(functions);
+                // every part gets at least one function
+                long statements = 0;
+                do {
+                    this.beginFunction(out, name, functions);
+                    for (int count = 0; i < n
+                            && count < this.functionSize; ++i) {
+                        if (slots[i] >= 0) {
+                            this.statement(out, program, slots, i);
+                            ++count;
+                        }
+                    }
+                    this.endFunction(out);
+                    ++functions;
+                    statements += this.functionSize;
+                } while (i < n && out.getSize() < this.fileSize
+                    && statements < this.getMaxPartSize());
+                this.endPart(out, starts.get(starts.size() - 1), functions);
+            }
+            starts.add(functions);
+
+            final Path driver = dir.resolve(name + suffix);
+            files.add(driver);
+            out.open(driver);
+            this.driver(out, name, program, slots, workspace,
+                new Layout(starts, names, inputs));
+        }
+        return Collections.unmodifiableList(files);
+    }
+
+    /**
+     * The outline of the written source code.
+     */
+    static final class Layout {
+
+        /**
+         * The index of the first function of each part, followed by
+         * the number of functions.
+         */
+        private final List<Integer> starts;
+
+        private final List<String> names;
+
+        private final List<Expr> inputs;
+
+        Layout(
+                final List<Integer> theStarts,
+                final List<String> theNames,
+                final List<Expr> theInputs) {
+            this.starts = theStarts;
+            this.names = theNames;
+            this.inputs = theInputs;
+        }
+
+        int getParts() {
+            return this.starts.size() - 1;
+        }
+
+        int getFunctions() {
+            return this.starts.get(this.starts.size() - 1);
+        }
+
+        int getFirstFunction(final int part) {
+            return this.starts.get(part);
+        }
+
+        List<String> getNames() {
+            return this.names;
+        }
+
+        List<Expr> getInputs() {
+            return this.inputs;
+        }
+    }
+
+    /**
+     * Returns the extension of the files.
+     *
+     * @return the extension including the dot
+     */
+    abstract String getExtension();
+
+    /**
+     * Returns the largest number of statements the language allows in
+     * a function.
+     *
+     * @return the number of statements
+     */
+    int getMaxFunctionSize() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns the largest number of statements the language allows in
+     * a part file.
+     *
+     * @return the number of statements
+     */
+    long getMaxPartSize() {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Writes the beginning of a part file.
+     *
+     * @param out the writer
+     * @param name the base name
+     * @param part the index of the part
+     * @throws IOException if the file cannot be written
+     */
+    abstract void beginPart(CodeWriter out, String name, int part)
+        throws IOException;
+
+    /**
+     * Writes the beginning of a function.
+     *
+     * @param out the writer
+     * @param name the base name
+     * @param function the index of the function
+     * @throws IOException if the file cannot be written
+     */
+    abstract void beginFunction(CodeWriter out, String name, int function)
+        throws IOException;
+
+    /**
+     * Writes the end of a function.
+     *
+     * @param out the writer
+     * @throws IOException if the file cannot be written
+     */
+    abstract void endFunction(CodeWriter out) throws IOException;
+
+    /**
+     * Writes the end of a part file.
+     *
+     * @param out the writer
+     * @param from the index of the first function of the part
+     * @param to the index after the last function of the part
+     * @throws IOException if the file cannot be written
+     */
+    abstract void endPart(CodeWriter out, int from, int to)
+        throws IOException;
+
+    /**
+     * Writes the driver.
+     *
+     * @param out the writer
+     * @param name the base name
+     * @param program the program
+     * @param slots the workspace slot of each instruction, negative for
+     *        inputs and constants
+     * @param workspace the size of the workspace
+     * @param layout the parts and functions written
+     * @throws IOException if the file cannot be written
+     */
+    abstract void driver(
+            CodeWriter out,
+            String name,
+            Program program,
+            int[] slots,
+            int workspace,
+            Layout layout) throws IOException;
+
+    /**
+     * Writes the start of the assignment to a workspace slot.
+     *
+     * @param out the writer
+     * @param slot the slot
+     * @throws IOException if the file cannot be written
+     */
+    abstract void assign(CodeWriter out, int slot) throws IOException;
+
+    /**
+     * Writes the value of an instruction as an operand.
+     *
+     * @param out the writer
+     * @param program the program
+     * @param slots the workspace slots
+     * @param value the instruction
+     * @throws IOException if the file cannot be written
+     */
+    abstract void operand(
+            CodeWriter out,
+            Program program,
+            int[] slots,
+            int value) throws IOException;
+
+    /**
+     * Returns the name under which a function is called.
+     *
+     * @param op {@link Op#SQRT}, {@link Op#EXP} or {@link Op#LOG}
+     * @return the name
+     */
+    abstract String getFunction(Op op);
+
+    /**
+     * Writes an instruction as a statement. Operators are written in
+     * infix notation with a blank on either side.
+     *
+     * @param out the writer
+     * @param program the program
+     * @param slots the workspace slots
+     * @param i the instruction
+     * @throws IOException if the file cannot be written
+     */
+    void statement(
+            final CodeWriter out,
+            final Program program,
+            final int[] slots,
+            final int i) throws IOException {
+        final Op op = program.getOp(i);
+        this.assign(out, slots[i]);
+        switch (op) {
+            case ADD:
+            case SUBTRACT:
+            case MULTIPLY:
+            case DIVIDE:
+                this.operand(out, program, slots, program.getLeft(i));
+                out.append(' ')
+                    .append("+-*/".charAt(op.ordinal() - Op.ADD.ordinal()))
+                    .append(' ');
+                this.operand(out, program, slots, program.getRight(i));
+                break;
+            case NEGATE:
+                out.append('-');
+                this.operand(out, program, slots, program.getLeft(i));
+                break;
+            default:
+                out.append(this.getFunction(op)).append('(');
+                this.operand(out, program, slots, program.getLeft(i));
+                out.append(')');
+                break;
+        }
+        out.append(";\n");
+    }
+}
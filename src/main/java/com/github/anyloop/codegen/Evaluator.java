@@ -0,0 +1,44 @@
+/*
+ * Evaluator.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.codegen;
+
+/**
+ * Numerical evaluation of a set of expressions at one point.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+@FunctionalInterface
+public interface Evaluator {
+
+    /**
+     * Evaluates the expressions.
+     *
+     * @param inputs the values of the input variables
+     * @param outputs receives the values of the expressions
+     *
+     * @since 0.1.0
+     */
+    void evaluate(double[] inputs, double[] outputs);
+}
@@ -0,0 +1,262 @@
+/*
+ * FormEmitter.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.codegen;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.github.anyloop.codegen.Program.Op;
+import com.github.anyloop.finitefield.Rational;
+import com.github.anyloop.symbolic.Expr;
+
+/**
+ * Writes programs in the syntax of FORM.
+ *
+ * The inputs and the workspace are preprocessor dollar variables
+ * <code>$x0, $x1, ...</code> and <code>$w0, $w1, ...</code>, which the
+ * part files assign in order. The driver declares the symbols and
+ * functions, includes the parts and defines a local expression for
+ * every output, so that it can be included into a FORM program.
+ * Divisions are written with the function <code>den</code> and
+ * constants as exact fractions. FORM cannot include compressed files,
+ * so these have to be unpacked first.
+ *
+ * @since 0.1.0
+ */
+final class FormEmitter extends Emitter {
+
+    /**
+     * The largest denominator tried when looking for a short fraction
+     * equal to a constant.
+     */
+    private static final long MAX_DENOMINATOR = 1L << 32;
+
+    /**
+     * The largest numerator tried.
+     */
+    private static final long MAX_NUMERATOR = 1L << 62;
+
+    FormEmitter(
+            final Compression theCompression,
+            final long theFileSize,
+            final int theFunctionSize,
+            final int theBufferSize) {
+        super(theCompression, theFileSize, theFunctionSize, theBufferSize);
+    }
+
+    @Override
+    String getExtension() {
+        return ".frm";
+    }
+
+    @Override
+    void beginPart(final CodeWriter out, final String name, final int part)
+            throws IOException {
+        out.append("* Generated by anyloop.\n");
+    }
+
+    @Override
+    void beginFunction(
+            final CodeWriter out,
+            final String name,
+            final int function) { }
+
+    @Override
+    void endFunction(final CodeWriter out) { }
+
+    @Override
+    void endPart(final CodeWriter out, final int from, final int to) { }
+
+    @Override
+    void driver(
+            final CodeWriter out,
+            final String name,
+            final Program program,
+            final int[] slots,
+            final int workspace,
+            final Layout layout) throws IOException {
+        final Set<String> symbols = new TreeSet<>();
+        final Set<String> functions = new TreeSet<>();
+        for (final Expr e : layout.getInputs()) {
+            collect(e, symbols, functions);
+        }
+        if (program.getOperationCount(Op.DIVIDE) > 0) {
+            functions.add("den");
+        }
+        for (final Op op : new Op[] {Op.SQRT, Op.EXP, Op.LOG}) {
+            if (program.getOperationCount(op) > 0) {
+                functions.add(this.getFunction(op));
+            }
+        }
+
+        out.append("* Generated by anyloop.\n");
+        declare(out, "Symbols", symbols);
+        declare(out, "CFunctions", functions);
+        for (int k = 0; k < layout.getInputs().size(); ++k) {
+            out.append("#$x").append(k).append(" = ")
+                .append(layout.getInputs().get(k).toString()).append(";\n");
+        }
+        for (int p = 0; p < layout.getParts(); ++p) {
+            out.append("#include ").append(name).append('_').append(p)
+                .append(this.getExtension()).append('\n');
+        }
+        for (int k = 0; k < program.getOutputCount(); ++k) {
+            out.append("Local ").append(layout.getNames().get(k))
+                .append(" = ");
+            this.operand(out, program, slots, program.getOutput(k));
+            out.append(";\n");
+        }
+        out.append(".sort\n");
+    }
+
+    private static void collect(
+            final Expr e,
+            final Set<String> symbols,
+            final Set<String> functions) {
+        if (e.getKind() == Expr.Kind.SYMBOL) {
+            symbols.add(e.getName());
+        } else if (e.getKind() == Expr.Kind.FUNCTION) {
+            functions.add(e.getName());
+        }
+        for (int i = 0; i < e.getArgCount(); ++i) {
+            collect(e.getArg(i), symbols, functions);
+        }
+    }
+
+    private static void declare(
+            final CodeWriter out,
+            final String statement,
+            final Set<String> names) throws IOException {
+        if (names.isEmpty()) {
+            return;
+        }
+        out.append(statement);
+        String separator = " ";
+        for (final String name : names) {
+            out.append(separator).append(name);
+            separator = ", ";
+        }
+        out.append(";\n");
+    }
+
+    @Override
+    void assign(final CodeWriter out, final int slot) throws IOException {
+        out.append("#$w").append(slot).append(" = ");
+    }
+
+    @Override
+    void operand(
+            final CodeWriter out,
+            final Program program,
+            final int[] slots,
+            final int value) throws IOException {
+        switch (program.getOp(value)) {
+            case INPUT:
+                out.append("$x").append(program.getLeft(value));
+                break;
+            case CONSTANT:
+                final Rational r = toRational(program.getConstant(value));
+                if (r.getNumerator().signum() < 0) {
+                    out.append('(').append(r.toString()).append(')');
+                } else {
+                    out.append(r.toString());
+                }
+                break;
+            default:
+                out.append("$w").append(slots[value]);
+                break;
+        }
+    }
+
+    @Override
+    void statement(
+            final CodeWriter out,
+            final Program program,
+            final int[] slots,
+            final int i) throws IOException {
+        if (program.getOp(i) != Op.DIVIDE) {
+            super.statement(out, program, slots, i);
+            return;
+        }
+        this.assign(out, slots[i]);
+        this.operand(out, program, slots, program.getLeft(i));
+        out.append("*den(");
+        this.operand(out, program, slots, program.getRight(i));
+        out.append(");\n");
+    }
+
+    @Override
+    String getFunction(final Op op) {
+        return op.name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Converts a constant back into a fraction. The constants of a
+     * program stem from fractions with small denominators, which are
+     * recovered from the continued fraction expansion; other values
+     * are written exactly with a power of two as denominator.
+     *
+     * @param value a finite value
+     * @return the fraction equal to the value
+     */
+    static Rational toRational(final double value) {
+        // convergents p/q of the continued fraction of |value|
+        final double x = Math.abs(value);
+        long p0 = 0;
+        long q0 = 1;
+        long p1 = 1;
+        long q1 = 0;
+        double rest = x;
+        while (rest < MAX_NUMERATOR) {
+            final long a = (long) rest;
+            if (a > 0 && p1 > (MAX_NUMERATOR - p0) / a) {
+                break;
+            }
+            final long p = a * p1 + p0;
+            final long q = a * q1 + q0;
+            if (q > MAX_DENOMINATOR) {
+                break;
+            }
+            if ((double) p / q == x) {
+                return Rational.of(value < 0 ? -p : p, q);
+            }
+            p0 = p1;
+            q0 = q1;
+            p1 = p;
+            q1 = q;
+            if (rest == a) {
+                break;
+            }
+            rest = 1 / (rest - a);
+        }
+        final BigDecimal d = new BigDecimal(value);
+        return d.scale() <= 0
+            ? Rational.of(d.toBigIntegerExact(), BigInteger.ONE)
+            : Rational.of(d.unscaledValue(), BigInteger.TEN.pow(d.scale()));
+    }
+}
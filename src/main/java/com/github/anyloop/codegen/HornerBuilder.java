@@ -0,0 +1,657 @@
+/*
+ * HornerBuilder.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.codegen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import com.github.anyloop.codegen.Program.Op;
+import com.github.anyloop.symbolic.Expr;
+
+/**
+ * Builds a program evaluating every sum by a multivariate Horner
+ * scheme.
+ *
+ * The terms of a sum are monomials in atoms, i.e. symbols, functions
+ * and nested sums, with integer exponents. The atom occurring in most
+ * terms with exponents of equal sign is factored out of these terms,
+ * together with the lowest such power, and the same is repeated for
+ * the remaining sum of the factored terms and for the rest of the
+ * terms. Denominators are factored before numerators, so that terms
+ * over a common denominator share one division. Signs are carried
+ * along and turn additions into subtractions, so that hardly any
+ * negations are left.
+ *
+ * Before an atom is factored out, the builder looks for a factor of
+ * a sum without denominators. If the sum is a product, the coefficient
+ * <code>C</code> of the highest power of an atom is, up to a number,
+ * the product of the factors without the atom. So if the division of
+ * the sum by <code>C</code> leaves no remainder for some atom, the sum
+ * is evaluated as the product of <code>C</code> and the quotient, both
+ * of which are factored further in the same way. Expanded products of
+ * sums, such as the numerators of the diagrams of an amplitude, thus
+ * cost about as many operations as their factors instead of as many
+ * as their terms.
+ *
+ * Instead of always taking the most frequent atom, the builder may
+ * take a random one among those that occur almost as often, so that
+ * repeated builds explore different orders.
+ *
+ * @since 0.1.0
+ */
+final class HornerBuilder extends ProgramBuilder {
+
+    /**
+     * A monomial.
+     */
+    private static final class Term {
+
+        /**
+         * The rational coefficient.
+         */
+        private final double coefficient;
+
+        /**
+         * The atoms in ascending order.
+         */
+        private final int[] atoms;
+
+        /**
+         * The non-zero exponent of each atom.
+         */
+        private final int[] exponents;
+
+        Term(
+                final double theCoefficient,
+                final int[] theAtoms,
+                final int[] theExponents) {
+            this.coefficient = theCoefficient;
+            this.atoms = theAtoms;
+            this.exponents = theExponents;
+        }
+
+        int exponent(final int atom) {
+            final int i = Arrays.binarySearch(this.atoms, atom);
+            return i < 0 ? 0 : this.exponents[i];
+        }
+
+        /**
+         * Divides by a power of an atom.
+         *
+         * @param atom the atom
+         * @param exponent the exponent
+         * @return the quotient
+         */
+        Term divide(final int atom, final int exponent) {
+            final int i = Arrays.binarySearch(this.atoms, atom);
+            if (this.exponents[i] != exponent) {
+                final int[] e = this.exponents.clone();
+                e[i] -= exponent;
+                return new Term(this.coefficient, this.atoms, e);
+            }
+            final int n = this.atoms.length - 1;
+            final int[] a = new int[n];
+            final int[] e = new int[n];
+            System.arraycopy(this.atoms, 0, a, 0, i);
+            System.arraycopy(this.atoms, i + 1, a, i, n - i);
+            System.arraycopy(this.exponents, 0, e, 0, i);
+            System.arraycopy(this.exponents, i + 1, e, i, n - i);
+            return new Term(this.coefficient, a, e);
+        }
+
+        /**
+         * Returns the sum of the exponents.
+         *
+         * @return the degree
+         */
+        int degree() {
+            int d = 0;
+            for (final int e : this.exponents) {
+                d += e;
+            }
+            return d;
+        }
+
+        /**
+         * Multiplies monomials.
+         *
+         * @param t the other monomial
+         * @return the product
+         */
+        Term times(final Term t) {
+            final int[] a = new int[this.atoms.length + t.atoms.length];
+            final int[] e = new int[a.length];
+            int n = 0;
+            int i = 0;
+            int j = 0;
+            while (i < this.atoms.length || j < t.atoms.length) {
+                if (j == t.atoms.length || (i < this.atoms.length
+                        && this.atoms[i] < t.atoms[j])) {
+                    a[n] = this.atoms[i];
+                    e[n++] = this.exponents[i++];
+                } else if (i == this.atoms.length
+                        || t.atoms[j] < this.atoms[i]) {
+                    a[n] = t.atoms[j];
+                    e[n++] = t.exponents[j++];
+                } else {
+                    a[n] = this.atoms[i];
+                    e[n++] = this.exponents[i++] + t.exponents[j++];
+                }
+            }
+            return new Term(this.coefficient * t.coefficient,
+                Arrays.copyOf(a, n), Arrays.copyOf(e, n));
+        }
+
+        /**
+         * Divides by a monomial with positive exponents.
+         *
+         * @param t the divisor
+         * @param c the coefficient of the quotient
+         * @return the quotient or <code>null</code> if the monomial
+         *         is no divisor
+         */
+        Term over(final Term t, final double c) {
+            final int[] e = this.exponents.clone();
+            int n = this.atoms.length;
+            for (int j = 0; j < t.atoms.length; ++j) {
+                final int i = Arrays.binarySearch(this.atoms, t.atoms[j]);
+                if (i < 0 || e[i] < t.exponents[j]) {
+                    return null;
+                }
+                e[i] -= t.exponents[j];
+                if (e[i] == 0) {
+                    --n;
+                }
+            }
+            final int[] a = new int[n];
+            final int[] f = new int[n];
+            n = 0;
+            for (int i = 0; i < e.length; ++i) {
+                if (e[i] != 0) {
+                    a[n] = this.atoms[i];
+                    f[n++] = e[i];
+                }
+            }
+            return new Term(c, a, f);
+        }
+    }
+
+    /**
+     * A random choice is made among the atoms occurring in at least
+     * four fifths as many terms as the most frequent one.
+     */
+    private static final double THRESHOLD = 1.25;
+
+    /**
+     * Marks a signed value of no terms.
+     */
+    private static final int NONE = -1;
+
+    /**
+     * The smallest number of terms of a sum which may have a linear
+     * factor with more than one term.
+     */
+    private static final int MIN_FACTOR_TERMS = 4;
+
+    /**
+     * The size of a coefficient left by a division, relative to the
+     * largest coefficient of the dividend, below which it counts as
+     * cancelled.
+     */
+    private static final double TOLERANCE = 1e-9;
+
+    /**
+     * The largest number of monomial products a trial division may
+     * take, so that failing divisions of huge sums stay cheap.
+     */
+    private static final long MAX_DIVISION_WORK = 1 << 20;
+
+    /**
+     * The source of random choices or <code>null</code>.
+     */
+    private final Random random;
+
+    /**
+     * The ID of each atom.
+     */
+    private final Map<Expr, Integer> atomIds = new IdentityHashMap<>();
+
+    /**
+     * The atom of each ID.
+     */
+    private final List<Expr> atoms = new ArrayList<>();
+
+    /**
+     * Creates a builder.
+     *
+     * @param theInputs the input variables
+     * @param theRandom the source of random choices of the factored
+     *        atoms, <code>null</code> for always taking the most frequent
+     *        one
+     */
+    HornerBuilder(final List<Expr> theInputs, final Random theRandom) {
+        super(theInputs);
+        this.random = theRandom;
+    }
+
+    @Override
+    void sumOperands(final Expr e, final List<Expr> out) {
+        for (int i = 0; i < e.getArgCount(); ++i) {
+            final Expr t = e.getArg(i);
+            if (t.getKind() == Expr.Kind.PRODUCT) {
+                for (int j = 0; j < t.getArgCount(); ++j) {
+                    addBase(t.getArg(j), out);
+                }
+            } else {
+                addBase(t, out);
+            }
+        }
+    }
+
+    private static void addBase(final Expr factor, final List<Expr> out) {
+        if (factor.getKind() == Expr.Kind.POWER) {
+            out.add(factor.getArg(0));
+        } else if (factor.getKind() != Expr.Kind.NUMBER) {
+            out.add(factor);
+        }
+    }
+
+    @Override
+    int emitSum(final Expr e) {
+        final List<Term> terms = new ArrayList<>(e.getArgCount());
+        final List<Expr> factors = new ArrayList<>();
+        for (int i = 0; i < e.getArgCount(); ++i) {
+            final Expr t = e.getArg(i);
+            factors.clear();
+            if (t.getKind() == Expr.Kind.PRODUCT) {
+                for (int j = 0; j < t.getArgCount(); ++j) {
+                    factors.add(t.getArg(j));
+                }
+            } else {
+                factors.add(t);
+            }
+            terms.add(this.term(factors));
+        }
+        return this.unsign(this.horner(terms));
+    }
+
+    /**
+     * Converts the factors of a term into a monomial.
+     *
+     * @param factors the factors, with a number only in front
+     * @return the monomial
+     */
+    private Term term(final List<Expr> factors) {
+        double coefficient = 1;
+        final int[] a = new int[factors.size()];
+        final int[] e = new int[factors.size()];
+        int n = 0;
+        for (final Expr f : factors) {
+            if (f.getKind() == Expr.Kind.NUMBER) {
+                coefficient = (double) f.getNumerator() / f.getDenominator();
+                continue;
+            }
+            final boolean power = f.getKind() == Expr.Kind.POWER;
+            final Expr base = power ? f.getArg(0) : f;
+            Integer id = this.atomIds.get(base);
+            if (id == null) {
+                id = this.atoms.size();
+                this.atoms.add(base);
+                this.atomIds.put(base, id);
+            }
+            a[n] = id;
+            e[n] = power ? f.getExponent() : 1;
+            ++n;
+        }
+        // the factors of a product are distinct, so are their atoms
+        final Integer[] order = new Integer[n];
+        for (int i = 0; i < n; ++i) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> Integer.compare(a[x], a[y]));
+        final int[] atomsOut = new int[n];
+        final int[] exponentsOut = new int[n];
+        for (int i = 0; i < n; ++i) {
+            atomsOut[i] = a[order[i]];
+            exponentsOut[i] = e[order[i]];
+        }
+        return new Term(coefficient, atomsOut, exponentsOut);
+    }
+
+    private static int signed(final int value, final boolean negative) {
+        return 2 * value + (negative ? 1 : 0);
+    }
+
+    private int unsign(final int s) {
+        if (s == NONE) {
+            return this.constant(0);
+        }
+        return (s & 1) != 0 ? this.add(Op.NEGATE, s >>> 1, 0) : s >>> 1;
+    }
+
+    /**
+     * Adds two signed values.
+     *
+     * @param x a signed value or {@link #NONE}
+     * @param y another signed value
+     * @return the signed sum
+     */
+    private int plus(final int x, final int y) {
+        if (x == NONE) {
+            return y;
+        }
+        final int a = x >>> 1;
+        final int b = y >>> 1;
+        final boolean na = (x & 1) != 0;
+        final boolean nb = (y & 1) != 0;
+        if (na == nb) {
+            return signed(this.add(Op.ADD, a, b), na);
+        }
+        return na ? signed(this.add(Op.SUBTRACT, b, a), false)
+            : signed(this.add(Op.SUBTRACT, a, b), false);
+    }
+
+    /**
+     * Evaluates a sum of monomials.
+     *
+     * @param terms the monomials
+     * @return the signed value of the sum
+     */
+    private int horner(final List<Term> terms) {
+        if (terms.size() >= MIN_FACTOR_TERMS) {
+            final int product = this.factor(terms);
+            if (product != NONE) {
+                return product;
+            }
+        }
+        int result = NONE;
+        List<Term> current = terms;
+        while (!current.isEmpty()) {
+            final int choice = this.choose(current);
+            if (choice < 0) {
+                for (final Term t : current) {
+                    result = this.plus(result, this.monomial(t));
+                }
+                break;
+            }
+            final int atom = choice >>> 1;
+            final boolean negative = (choice & 1) != 0;
+            int lowest = Integer.MAX_VALUE;
+            for (final Term t : current) {
+                final int e = t.exponent(atom);
+                if (e != 0 && (e < 0) == negative) {
+                    lowest = Math.min(lowest, Math.abs(e));
+                }
+            }
+            final int exponent = negative ? -lowest : lowest;
+            final List<Term> inner = new ArrayList<>();
+            final List<Term> rest = new ArrayList<>();
+            for (final Term t : current) {
+                final int e = t.exponent(atom);
+                if (e != 0 && (e < 0) == negative) {
+                    inner.add(t.divide(atom, exponent));
+                } else {
+                    rest.add(t);
+                }
+            }
+            final int factor = this.power(
+                this.valueOf(this.atoms.get(atom)), lowest);
+            final int s = this.horner(inner);
+            final int v = negative
+                ? this.add(Op.DIVIDE, s >>> 1, factor)
+                : this.add(Op.MULTIPLY, factor, s >>> 1);
+            result = this.plus(result, signed(v, (s & 1) != 0));
+            current = rest;
+        }
+        return result;
+    }
+
+    /**
+     * Looks for a linear factor of a sum without denominators.
+     *
+     * @param terms the monomials
+     * @return the signed value of the factored sum or {@link #NONE} if
+     *         no factor is found
+     */
+    private int factor(final List<Term> terms) {
+        // the highest exponent of each atom and the number of terms
+        // with it
+        final Map<Integer, int[]> degrees = new HashMap<>();
+        for (final Term t : terms) {
+            for (int i = 0; i < t.atoms.length; ++i) {
+                if (t.exponents[i] < 0) {
+                    return NONE;
+                }
+                final int[] d = degrees.computeIfAbsent(
+                    t.atoms[i], k -> new int[2]);
+                if (t.exponents[i] > d[0]) {
+                    d[0] = t.exponents[i];
+                    d[1] = 0;
+                }
+                if (t.exponents[i] == d[0]) {
+                    d[1]++;
+                }
+            }
+        }
+        final List<Integer> candidates = new ArrayList<>();
+        for (final Map.Entry<Integer, int[]> entry : degrees.entrySet()) {
+            final int[] d = entry.getValue();
+            if (d[1] > 1 && d[1] < terms.size()) {
+                candidates.add(entry.getKey());
+            }
+        }
+        candidates.sort(null);
+        for (final int atom : candidates) {
+            final int top = degrees.get(atom)[0];
+            final List<Term> leading = new ArrayList<>();
+            for (final Term t : terms) {
+                if (t.exponent(atom) == top) {
+                    leading.add(t.divide(atom, top));
+                }
+            }
+            final List<Term> cofactor = quotient(terms, leading);
+            if (cofactor == null) {
+                continue;
+            }
+            final int a = this.horner(cofactor);
+            final int b = this.horner(leading);
+            return signed(this.add(Op.MULTIPLY, a >>> 1, b >>> 1),
+                ((a ^ b) & 1) != 0);
+        }
+        return NONE;
+    }
+
+    /**
+     * Divides sums without denominators.
+     *
+     * @param dividend the monomials of the dividend
+     * @param divisor the monomials of the divisor
+     * @return the monomials of the quotient or <code>null</code> if
+     *         the division leaves a remainder
+     */
+    private static List<Term> quotient(
+            final List<Term> dividend,
+            final List<Term> divisor) {
+        Term lead = divisor.get(0);
+        for (final Term t : divisor) {
+            if (compare(t, lead) > 0) {
+                lead = t;
+            }
+        }
+        // the coefficients are keyed by monomial, whatever the
+        // coefficient of the key
+        final TreeMap<Term, Double> rest =
+            new TreeMap<>(HornerBuilder::compare);
+        double largest = 0;
+        for (final Term t : dividend) {
+            rest.merge(t, t.coefficient, Double::sum);
+            largest = Math.max(largest, Math.abs(t.coefficient));
+        }
+        final double tolerance = TOLERANCE * largest;
+        final List<Term> quotient = new ArrayList<>();
+        while (!rest.isEmpty()) {
+            final Map.Entry<Term, Double> top = rest.lastEntry();
+            final Term q = top.getKey().over(
+                lead, top.getValue() / lead.coefficient);
+            if (q == null || quotient.size() == dividend.size()
+                    || (long) quotient.size() * divisor.size()
+                        > MAX_DIVISION_WORK) {
+                return null;
+            }
+            quotient.add(q);
+            for (final Term t : divisor) {
+                final Term p = t.times(q);
+                final double c =
+                    rest.getOrDefault(p, 0.0) - p.coefficient;
+                if (Math.abs(c) <= tolerance) {
+                    rest.remove(p);
+                } else {
+                    rest.put(p, c);
+                }
+            }
+        }
+        return quotient;
+    }
+
+    /**
+     * Compares monomials by their degree and then lexicographically,
+     * ignoring the coefficients. This order is kept by multiplication.
+     *
+     * @param x a monomial
+     * @param y another monomial
+     * @return the comparison
+     */
+    private static int compare(final Term x, final Term y) {
+        if (x.degree() != y.degree()) {
+            return Integer.compare(x.degree(), y.degree());
+        }
+        for (int i = 0; i < x.atoms.length && i < y.atoms.length; ++i) {
+            if (x.atoms[i] != y.atoms[i]) {
+                // an atom the other monomial lacks makes it larger
+                return x.atoms[i] < y.atoms[i] ? 1 : -1;
+            }
+            if (x.exponents[i] != y.exponents[i]) {
+                return Integer.compare(x.exponents[i], y.exponents[i]);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Chooses the atom to be factored out.
+     *
+     * @param terms the monomials
+     * @return twice the atom plus one for negative exponents, or
+     *         <code>-1</code> if no atom occurs in two terms
+     */
+    private int choose(final List<Term> terms) {
+        final Map<Integer, int[]> counts = new HashMap<>();
+        for (final Term t : terms) {
+            for (int i = 0; i < t.atoms.length; ++i) {
+                final int key =
+                    2 * t.atoms[i] + (t.exponents[i] < 0 ? 1 : 0);
+                counts.computeIfAbsent(key, k -> new int[1])[0]++;
+            }
+        }
+        // denominators first, so that every division is shared by as
+        // many terms as possible
+        for (final int parity : new int[] {1, 0}) {
+            int best = -1;
+            int most = 1;
+            for (final Map.Entry<Integer, int[]> entry : counts.entrySet()) {
+                final int key = entry.getKey();
+                final int c = entry.getValue()[0];
+                if ((key & 1) == parity
+                        && (c > most || (c == most && key < best))) {
+                    most = c;
+                    best = key;
+                }
+            }
+            if (best >= 0) {
+                return this.random == null
+                    ? best : this.pick(counts, parity, most);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Picks a random atom among the frequent ones.
+     *
+     * @param counts the number of terms of each candidate
+     * @param parity one for denominators, zero for numerators
+     * @param most the number of terms of the most frequent candidate
+     * @return the chosen candidate
+     */
+    private int pick(
+            final Map<Integer, int[]> counts,
+            final int parity,
+            final int most) {
+        final List<Integer> candidates = new ArrayList<>();
+        for (final Map.Entry<Integer, int[]> entry : counts.entrySet()) {
+            final int c = entry.getValue()[0];
+            if ((entry.getKey() & 1) == parity
+                    && c > 1 && THRESHOLD * c >= most) {
+                candidates.add(entry.getKey());
+            }
+        }
+        candidates.sort(null);
+        return candidates.get(this.random.nextInt(candidates.size()));
+    }
+
+    /**
+     * Evaluates a monomial.
+     *
+     * @param t the monomial
+     * @return the signed value
+     */
+    private int monomial(final Term t) {
+        int numerator = -1;
+        int denominator = -1;
+        for (int i = 0; i < t.atoms.length; ++i) {
+            final int e = t.exponents[i];
+            final int v = this.power(
+                this.valueOf(this.atoms.get(t.atoms[i])), Math.abs(e));
+            if (e > 0) {
+                numerator = numerator < 0
+                    ? v : this.add(Op.MULTIPLY, numerator, v);
+            } else {
+                denominator = denominator < 0
+                    ? v : this.add(Op.MULTIPLY, denominator, v);
+            }
+        }
+        final int c = this.constant(Math.abs(t.coefficient));
+        int result = numerator < 0 ? c : this.add(Op.MULTIPLY, c, numerator);
+        if (denominator >= 0) {
+            result = this.add(Op.DIVIDE, result, denominator);
+        }
+        return signed(result, t.coefficient < 0);
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * JavaEmitter.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.codegen;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import com.github.anyloop.codegen.Program.Op;
+
+/**
+ * Writes programs as Java source code in the unnamed package.
+ *
+ * Every part file holds a class <code>name_k</code> with static
+ * methods <code>f0</code>, <code>f1</code> and so on, which fill the
+ * workspace from the inputs, and a method <code>run</code> calling
+ * them in order. The driver is the class <code>name</code> with
+ * <pre>
+ * public static void evaluate(double[] x, double[] out, double[] w);
+ * </pre>
+ * and the size of the workspace as <code>WORKSPACE</code>.
+ *
+ * Methods are kept below the 8000 bytes of bytecode which the JIT
+ * compiler accepts, and classes below the limits of the constant
+ * pool.
+ *
+ * @since 0.1.0
+ */
+final class JavaEmitter extends Emitter {
+
+    /**
+     * The largest number of statements per method: a statement
+     * compiles to at most 16 bytes.
+     */
+    private static final int MAX_METHOD_STATEMENTS = 450;
+
+    /**
+     * The largest number of statements per class: a statement adds at
+     * most five entries to the constant pool.
+     */
+    private static final int MAX_CLASS_STATEMENTS = 8000;
+
+    private static final String INDENT = "        ";
+
+    JavaEmitter(
+            final Compression theCompression,
+            final long theFileSize,
+            final int theFunctionSize,
+            final int theBufferSize) {
+        super(theCompression, theFileSize, theFunctionSize, theBufferSize);
+    }
+
+    @Override
+    String getExtension() {
+        return ".java";
+    }
+
+    @Override
+    int getMaxFunctionSize() {
+        return MAX_METHOD_STATEMENTS;
+    }
+
+    @Override
+    long getMaxPartSize() {
+        return MAX_CLASS_STATEMENTS;
+    }
+
+    @Override
+    void beginPart(final CodeWriter out, final String name, final int part)
+            throws IOException {
+        out.append("// Generated by anyloop.\n\nfinal class ").append(name)
+            .append('_').append(part).append(" {\n\n    private ")
+            .append(name).append('_').append(part).append("() { }\n");
+    }
+
+    @Override
+    void beginFunction(
+            final CodeWriter out,
+            final String name,
+            final int function) throws IOException {
+        out.append("\n    static void f").append(function)
+            .append("(final double[] x, final double[] w) {\n");
+    }
+
+    @Override
+    void endFunction(final CodeWriter out) throws IOException {
+        out.append("    }\n");
+    }
+
+    @Override
+    void endPart(final CodeWriter out, final int from, final int to)
+            throws IOException {
+        out.append("\n    static void run(final double[] x, final double[] w)"
+            + " {\n");
+        for (int f = from; f < to; ++f) {
+            out.append(INDENT).append('f').append(f).append("(x, w);\n");
+        }
+        out.append("    }\n}\n");
+    }
+
+    @Override
+    void driver(
+            final CodeWriter out,
+            final String name,
+            final Program program,
+            final int[] slots,
+            final int workspace,
+            final Layout layout) throws IOException {
+        out.append("// Generated by anyloop.\n\n/**\n * Inputs:\n");
+        for (int k = 0; k < layout.getInputs().size(); ++k) {
+            out.append(" *   x[").append(k).append("] = ")
+                .append(layout.getInputs().get(k).toString()).append('\n');
+        }
+        out.append(" */\npublic final class ").append(name)
+            .append(" {\n\n    public static final int WORKSPACE = ")
+            .append(Math.max(workspace, 1)).append(";\n\n    private ")
+            .append(name).append("() { }\n\n")
+            .append("    public static void evaluate(\n")
+            .append("            final double[] x,\n")
+            .append("            final double[] out,\n")
+            .append("            final double[] w) {\n");
+        for (int p = 0; p < layout.getParts(); ++p) {
+            out.append(INDENT).append(name).append('_').append(p)
+                .append(".run(x, w);\n");
+        }
+        final int copies = (program.getOutputCount()
+            + MAX_METHOD_STATEMENTS - 1) / MAX_METHOD_STATEMENTS;
+        for (int c = 0; c < copies; ++c) {
+            out.append(INDENT).append("copy").append(c)
+                .append("(x, out, w);\n");
+        }
+        out.append("    }\n");
+        for (int c = 0; c < copies; ++c) {
+            out.append("\n    private static void copy").append(c)
+                .append("(\n            final double[] x,\n")
+                .append("            final double[] out,\n")
+                .append("            final double[] w) {\n");
+            final int end = Math.min(program.getOutputCount(),
+                (c + 1) * MAX_METHOD_STATEMENTS);
+            for (int k = c * MAX_METHOD_STATEMENTS; k < end; ++k) {
+                out.append(INDENT).append("out[").append(k).append("] = ");
+                this.operand(out, program, slots, program.getOutput(k));
+                out.append("; // ").append(layout.getNames().get(k))
+                    .append('\n');
+            }
+            out.append("    }\n");
+        }
+        out.append("}\n");
+    }
+
+    @Override
+    void assign(final CodeWriter out, final int slot) throws IOException {
+        out.append(INDENT).append("w[").append(slot).append("] = ");
+    }
+
+    @Override
+    void operand(
+            final CodeWriter out,
+            final Program program,
+            final int[] slots,
+            final int value) throws IOException {
+        switch (program.getOp(value)) {
+            case INPUT:
+                out.append("x[").append(program.getLeft(value)).append(']');
+                break;
+            case CONSTANT:
+                CEmitter.constant(out, program.getConstant(value));
+                break;
+            default:
+                out.append("w[").append(slots[value]).append(']');
+                break;
+        }
+    }
+
+    @Override
+    String getFunction(final Op op) {
+        return "Math." + op.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * Optimizer.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.codegen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.symbolic.Expr;
+import com.github.anyloop.symbolic.MemoryBudget;
+
+/**
+ * Translates expressions into programs with few operations.
+ *
+ * Common subexpressions are eliminated globally: subterms shared in
+ * the expression DAG are evaluated once, and so is every operation
+ * that recurs on the same operands, wherever it stems from. Sums are
+ * split into factors where the division by a candidate factor is
+ * exact, and evaluated by multivariate Horner schemes otherwise. The
+ * first scheme factors out the most frequent atom at every step;
+ * further schemes pick among the frequent atoms at random, and the
+ * cheapest program is kept. The number of schemes is the effort,
+ * bounded by a time budget. Each further scheme is built next to the
+ * best program so far; given a {@link MemoryBudget} which does not
+ * admit a second program, the greedy scheme is kept.
+ *
+ * Instances are immutable and thread-safe.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class Optimizer {
+
+    /**
+     * The logger of this class.
+     */
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(Optimizer.class);
+
+    /**
+     * The functions evaluated by programs.
+     */
+    private static final List<String> FUNCTIONS =
+        Arrays.asList("sqrt", "exp", "log");
+
+    /**
+     * The approximate heap bytes of an operation of a program under
+     * construction, including the tables of its builder.
+     */
+    private static final long OPERATION_BYTES = 64;
+
+    /**
+     * The number of Horner schemes tried.
+     */
+    private final int effort;
+
+    /**
+     * The time budget in nanoseconds.
+     */
+    private final long timeBudget;
+
+    /**
+     * Creates an optimizer.
+     *
+     * @param theEffort the number of Horner schemes tried, zero for
+     *        none
+     * @param theTimeBudget the time in seconds after which no further
+     *        schemes are tried
+     * @throws IllegalArgumentException if a parameter is negative
+     *
+     * @since 0.1.0
+     */
+    public Optimizer(final int theEffort, final double theTimeBudget) {
+        if (theEffort < 0 || !(theTimeBudget >= 0)) {
+            throw new IllegalArgumentException(
+                "Effort and time budget must not be negative");
+        }
+        this.effort = theEffort;
+        this.timeBudget = (long) Math.min(theTimeBudget * 1e9,
+            Long.MAX_VALUE / 2);
+    }
+
+    /**
+     * Creates an optimizer from the configuration.
+     *
+     * @param config the configuration
+     * @return the optimizer
+     * @throws ConfigurationException if the configuration is invalid
+     *
+     * @since 0.1.0
+     */
+    public static Optimizer fromConfig(final CodegenConfig config)
+            throws ConfigurationException {
+        if (config.getEffort() < 0) {
+            throw new ConfigurationException(
+                "codegen.effort must not be negative");
+        }
+        if (!(config.getTimeBudget() >= 0)) {
+            throw new ConfigurationException(
+                "codegen.timeBudget must not be negative");
+        }
+        return new Optimizer(config.getEffort(), config.getTimeBudget());
+    }
+
+    /**
+     * Returns the number of Horner schemes tried.
+     *
+     * @return the effort
+     *
+     * @since 0.1.0
+     */
+    public int getEffort() {
+        return this.effort;
+    }
+
+    /**
+     * Collects the symbols and functions of expressions which must be
+     * inputs of a program, i.e. all functions other than
+     * <code>sqrt</code>, <code>exp</code> and <code>log</code> and all
+     * symbols outside their arguments.
+     *
+     * @param exprs the expressions
+     * @return the inputs in canonical order
+     *
+     * @since 0.1.0
+     */
+    public static List<Expr> collectInputs(final List<Expr> exprs) {
+        final Map<Expr, Boolean> seen = new IdentityHashMap<>();
+        final List<Expr> stack = new ArrayList<>(exprs);
+        final List<Expr> inputs = new ArrayList<>();
+        while (!stack.isEmpty()) {
+            final Expr e = stack.remove(stack.size() - 1);
+            if (seen.put(e, Boolean.TRUE) != null) {
+                continue;
+            }
+            if (e.getKind() == Expr.Kind.SYMBOL
+                    || (e.getKind() == Expr.Kind.FUNCTION
+                        && !FUNCTIONS.contains(e.getName()))) {
+                inputs.add(e);
+                continue;
+            }
+            for (int i = 0; i < e.getArgCount(); ++i) {
+                stack.add(e.getArg(i));
+            }
+        }
+        inputs.sort(null);
+        return inputs;
+    }
+
+    /**
+     * Counts the operations needed to evaluate expressions written out
+     * as trees, i.e. without sharing any subterm. Powers are counted
+     * as evaluated by repeated squaring.
+     *
+     * @param exprs the expressions
+     * @return the number of operations, saturating at
+     *         {@link Long#MAX_VALUE}
+     *
+     * @since 0.1.0
+     */
+    public static long countTreeOperations(final List<Expr> exprs) {
+        final Map<Expr, Long> counts = new IdentityHashMap<>();
+        long total = 0;
+        for (final Expr e : exprs) {
+            total = saturatedAdd(total, countTreeOperations(e, counts));
+        }
+        return total;
+    }
+
+    private static long countTreeOperations(
+            final Expr e,
+            final Map<Expr, Long> counts) {
+        final Long known = counts.get(e);
+        if (known != null) {
+            return known;
+        }
+        long count = 0;
+        for (int i = 0; i < e.getArgCount(); ++i) {
+            count = saturatedAdd(count,
+                countTreeOperations(e.getArg(i), counts));
+        }
+        switch (e.getKind()) {
+            case SUM:
+            case PRODUCT:
+                count = saturatedAdd(count, e.getArgCount() - 1);
+                break;
+            case POWER:
+                final int n = Math.abs(e.getExponent());
+                count = saturatedAdd(count,
+                    Integer.SIZE - 2 - Integer.numberOfLeadingZeros(n)
+                    + Integer.bitCount(n) + (e.getExponent() < 0 ? 1 : 0));
+                break;
+            case FUNCTION:
+                if (FUNCTIONS.contains(e.getName())) {
+                    count = saturatedAdd(count, 1);
+                } else {
+                    count = 0;
+                }
+                break;
+            default:
+                break;
+        }
+        counts.put(e, count);
+        return count;
+    }
+
+    private static long saturatedAdd(final long a, final long b) {
+        final long s = a + b;
+        return s < 0 ? Long.MAX_VALUE : s;
+    }
+
+    /**
+     * Translates expressions into a program.
+     *
+     * @param inputs the input variables
+     * @param outputs the expressions
+     * @return the program with the fewest operations found
+     * @throws IllegalArgumentException if an expression contains a
+     *         symbol or function that is not an input
+     *
+     * @since 0.1.0
+     *
+     * @see Program#of
+     */
+    public Program optimize(
+            final List<Expr> inputs,
+            final List<Expr> outputs) {
+        return this.optimize(inputs, outputs, null);
+    }
+
+    /**
+     * Translates expressions into a program within a heap budget. The
+     * footprint of a second program is reserved before the randomised
+     * schemes are tried; if the budget refuses it, the program of the
+     * greedy scheme is returned.
+     *
+     * @param inputs the input variables
+     * @param outputs the expressions
+     * @param budget the heap budget or <code>null</code>
+     * @return the program with the fewest operations found
+     * @throws IllegalArgumentException if an expression contains a
+     *         symbol or function that is not an input
+     *
+     * @since 0.1.0
+     */
+    public Program optimize(
+            final List<Expr> inputs,
+            final List<Expr> outputs,
+            final MemoryBudget budget) {
+        if (this.effort == 0) {
+            return Program.of(inputs, outputs);
+        }
+        final long start = System.nanoTime();
+        Program best = build(inputs, outputs, null);
+        int tried = 1;
+        final long bytes = OPERATION_BYTES * best.getOperationCount();
+        final boolean reserve = this.effort > 1 && budget != null;
+        if (reserve && !budget.tryReserve(bytes)) {
+            LOGGER.info("Memory budget does not admit a second program of "
+                + bytes + " bytes, keeping the greedy Horner scheme");
+            return best;
+        }
+        try {
+            while (tried < this.effort
+                    && System.nanoTime() - start < this.timeBudget) {
+                final Program p =
+                    build(inputs, outputs, new Random(tried));
+                ++tried;
+                if (p.getOperationCount() < best.getOperationCount()) {
+                    best = p;
+                }
+            }
+        } finally {
+            if (reserve) {
+                budget.release(bytes);
+            }
+        }
+        LOGGER.debug(String.format(
+            "Best of %d Horner schemes has %d operations, found in %.3f s",
+            tried, best.getOperationCount(),
+            (System.nanoTime() - start) * 1e-9));
+        return best;
+    }
+
+    private static Program build(
+            final List<Expr> inputs,
+            final List<Expr> outputs,
+            final Random random) {
+        final HornerBuilder builder = new HornerBuilder(inputs, random);
+        final int[] values = new int[outputs.size()];
+        for (int k = 0; k < values.length; ++k) {
+            values[k] = builder.translate(outputs.get(k));
+        }
+        return builder.build(values);
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * OptimizerStage.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.codegen;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.anyloop.cache.CacheConfig;
+import com.github.anyloop.cache.CacheKey;
+import com.github.anyloop.cache.StageCache;
+import com.github.anyloop.chassis.ClassHelper;
+import com.github.anyloop.chassis.ConfigDependencies;
+import com.github.anyloop.chassis.ConfigurableRunnable;
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.chassis.Configurator;
+import com.github.anyloop.codegen.Program.Op;
+import com.github.anyloop.symbolic.Expr;
+import com.github.anyloop.symbolic.ExprReader;
+import com.github.anyloop.symbolic.MemoryBudget;
+
+/**
+ * The pipeline stage which optimises expressions for evaluation.
+ *
+ * The stage reads the expressions from the file given by
+ * <code>codegen.input</code>, if any, translates them with an
+ * {@link Optimizer} and reports the number of operations before and
+ * after. If <code>codegen.output</code> is set as well, the program is
+ * written as source code by the configured {@link Emitter}. The
+ * program is kept for the stages which compile it. A
+ * {@link MemoryBudget} shared with the other stages of the run limits
+ * the programs built at a time, see {@link Optimizer}.
+ *
+ * If a {@link StageCache} is configured, the program and the files
+ * are stored there together with the content of the input file and
+ * the <code>codegen</code> settings actually read, and restored from
+ * there instead of being computed again by a later run. Settings of
+ * an emitter therefore do not matter if no output is written.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class OptimizerStage implements ConfigurableRunnable {
+
+    /**
+     * The logger of this class.
+     */
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(OptimizerStage.class);
+
+    /**
+     * The name of the program in a cached result, which is no valid
+     * file name.
+     */
+    private static final String PROGRAM = "/program";
+
+    private Configurator configurator;
+
+    private CodegenConfig config;
+
+    private CacheConfig cacheConfig;
+
+    private MemoryBudget budget;
+
+    private List<String> names = Collections.emptyList();
+
+    private List<Expr> inputs = Collections.emptyList();
+
+    private Program program;
+
+    private List<Path> files = Collections.emptyList();
+
+    @Override
+    public String getName() {
+        return "optimizer";
+    }
+
+    @Override
+    public String getVersion() {
+        return ClassHelper.getVersion(OptimizerStage.class);
+    }
+
+    @Override
+    public void init(final Configurator theConfigurator) {
+        this.configurator = theConfigurator;
+        this.config = theConfigurator.create(CodegenConfig.class);
+        this.cacheConfig = theConfigurator.create(CacheConfig.class);
+    }
+
+    /**
+     * Sets the heap budget shared with the other stages of the run.
+     *
+     * @param theBudget the budget or <code>null</code> for none
+     *
+     * @since 0.1.0
+     */
+    public void setMemoryBudget(final MemoryBudget theBudget) {
+        this.budget = theBudget;
+    }
+
+    @Override
+    public void run() {
+        try {
+            final String input = this.config.getInput();
+            if (!input.isEmpty()) {
+                this.optimize(input);
+            }
+        } catch (ConfigurationException ex) {
+            LOGGER.error("Configuration failed", ex);
+        } catch (IOException ex) {
+            LOGGER.error("Cannot read expressions", ex);
+        }
+    }
+
+    private void optimize(final String input)
+            throws ConfigurationException, IOException {
+        final ConfigDependencies read = new ConfigDependencies();
+        final CodegenConfig tracked =
+            this.configurator.create(CodegenConfig.class, read);
+        final Optimizer optimizer = Optimizer.fromConfig(tracked);
+        final String output = tracked.getOutput();
+        final Emitter emitter = output.isEmpty()
+            ? null : Emitter.fromConfig(tracked);
+        final StageCache cache = StageCache.fromConfig(this.cacheConfig);
+        final List<String> n = new ArrayList<>();
+        final List<Expr> exprs = new ArrayList<>();
+        try (ExprReader reader = new ExprReader(Files.newBufferedReader(
+                Paths.get(input), StandardCharsets.UTF_8))) {
+            while (reader.next()) {
+                n.add(reader.getName());
+                exprs.add(reader.getExpr());
+            }
+        }
+        this.names = n;
+        this.inputs = Optimizer.collectInputs(exprs);
+
+        final CacheKey key = cache == null ? null
+            : CacheKey.of(this.getName(), this.getVersion())
+                .addFile("input", Paths.get(input));
+        if (key != null && this.restore(cache, key, output)) {
+            LOGGER.info("Restored " + describe(this.program)
+                + " and " + this.files.size() + " files from the cache");
+            return;
+        }
+
+        final long start = System.nanoTime();
+        final Program plain = Program.of(this.inputs, exprs);
+        this.program = optimizer.optimize(this.inputs, exprs, this.budget);
+        LOGGER.info(String.format("Optimised %d expressions in %d "
+            + "variables in %.3f s: %s instead of %s, or %d as written",
+            exprs.size(), this.inputs.size(),
+            (System.nanoTime() - start) * 1e-9,
+            describe(this.program), describe(plain),
+            Optimizer.countTreeOperations(exprs)));
+
+        if (emitter != null) {
+            final long emitStart = System.nanoTime();
+            this.files = emitter.emit(Paths.get(output), this.program,
+                this.names, this.inputs);
+            long bytes = 0;
+            for (final Path file : this.files) {
+                bytes += Files.size(file);
+            }
+            LOGGER.info(String.format("Wrote %d files of %d bytes in "
+                + "%.3f s", this.files.size(), bytes,
+                (System.nanoTime() - emitStart) * 1e-9));
+        }
+        if (cache != null) {
+            try {
+                this.store(cache, key, read);
+            } catch (IOException ex) {
+                LOGGER.warn("Cannot update the cache", ex);
+            }
+        }
+    }
+
+    /**
+     * Restores the program and the files from the cache.
+     *
+     * @param cache the cache
+     * @param key the key of the current input file
+     * @param output the configured output
+     * @return <code>true</code> if a result was found
+     * @throws IOException if the result cannot be read or the files
+     *         cannot be written
+     */
+    private boolean restore(
+            final StageCache cache,
+            final CacheKey key,
+            final String output) throws IOException {
+        final Map<String, Path> cached = cache.get(key, this.configurator);
+        if (cached == null) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(cached.get(PROGRAM))))) {
+            this.program = Program.read(in);
+        }
+        final List<Path> restored = new ArrayList<>();
+        if (!output.isEmpty()) {
+            final Path dir = Paths.get(output).toAbsolutePath().getParent();
+            for (final Map.Entry<String, Path> file : cached.entrySet()) {
+                if (!PROGRAM.equals(file.getKey())) {
+                    restored.add(Files.copy(file.getValue(),
+                        dir.resolve(file.getKey()),
+                        StandardCopyOption.REPLACE_EXISTING));
+                }
+            }
+        }
+        this.files = restored;
+        return true;
+    }
+
+    /**
+     * Stores the program and the files in the cache.
+     *
+     * @param cache the cache
+     * @param key the key of the current input file
+     * @param read the settings read
+     * @throws IOException if the cache cannot be written
+     */
+    private void store(
+            final StageCache cache,
+            final CacheKey key,
+            final ConfigDependencies read) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            this.program.write(out);
+        }
+        final Map<String, Path> result = new LinkedHashMap<>();
+        for (final Path file : this.files) {
+            result.put(file.getFileName().toString(), file);
+        }
+        cache.put(key, read, result,
+            Collections.singletonMap(PROGRAM, bytes.toByteArray()));
+    }
+
+    /**
+     * Summarises the operations of a program.
+     *
+     * @param p the program
+     * @return the numbers of operations by kind
+     */
+    static String describe(final Program p) {
+        return String.format("%d operations (%d additions, "
+            + "%d multiplications, %d divisions, %d others)",
+            p.getOperationCount(),
+            p.getOperationCount(Op.ADD) + p.getOperationCount(Op.SUBTRACT),
+            p.getOperationCount(Op.MULTIPLY),
+            p.getOperationCount(Op.DIVIDE),
+            p.getOperationCount() - p.getOperationCount(Op.ADD)
+                - p.getOperationCount(Op.SUBTRACT)
+                - p.getOperationCount(Op.MULTIPLY)
+                - p.getOperationCount(Op.DIVIDE));
+    }
+
+    @Override
+    public void terminate() { }
+
+    /**
+     * Returns the names of the expressions.
+     *
+     * @return the names, in the order of the outputs of the program
+     *
+     * @since 0.1.0
+     */
+    public List<String> getNames() {
+        return this.names;
+    }
+
+    /**
+     * Returns the input variables of the program.
+     *
+     * @return the symbols and functions, in the order of the inputs
+     *
+     * @since 0.1.0
+     */
+    public List<Expr> getInputs() {
+        return this.inputs;
+    }
+
+    /**
+     * Returns the optimised program.
+     *
+     * @return the program or <code>null</code> if the stage has not
+     *         run on any input
+     *
+     * @since 0.1.0
+     */
+    public Program getProgram() {
+        return this.program;
+    }
+
+    /**
+     * Returns the files written.
+     *
+     * @return the part files followed by the driver, empty if no
+     *         output is configured
+     *
+     * @since 0.1.0
+     */
+    public List<Path> getFiles() {
+        return this.files;
+    }
+}
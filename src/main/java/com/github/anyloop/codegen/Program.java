@@ -0,0 +1,471 @@
+/*
+ * Program.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.codegen;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
+import com.github.anyloop.symbolic.Expr;
+
+/**
+ * A straight-line program evaluating a set of expressions.
+ *
+ * Every instruction defines one value, identified by the index of the
+ * instruction, from the values of earlier instructions. Values are
+ * numbered globally: two instructions never perform the same operation
+ * on the same operands, so every common subexpression is evaluated
+ * once. The results of the expressions are values designated as
+ * outputs.
+ *
+ * Instances are immutable and thread-safe.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class Program {
+
+    /**
+     * The operations of a program.
+     *
+     * @since 0.1.0
+     */
+    public enum Op {
+        /** Reads the input variable given by the left operand. */
+        INPUT,
+        /** A constant. */
+        CONSTANT,
+        /** The sum of two values. */
+        ADD,
+        /** The difference of two values. */
+        SUBTRACT,
+        /** The product of two values. */
+        MULTIPLY,
+        /** The quotient of two values. */
+        DIVIDE,
+        /** The negative of a value. */
+        NEGATE,
+        /** The square root of a value. */
+        SQRT,
+        /** The exponential of a value. */
+        EXP,
+        /** The natural logarithm of a value. */
+        LOG
+    }
+
+    /**
+     * The operation of each instruction.
+     */
+    private final Op[] ops;
+
+    /**
+     * The left or only operand of each instruction, or the index of
+     * the input variable.
+     */
+    private final int[] left;
+
+    /**
+     * The right operand of each binary instruction.
+     */
+    private final int[] right;
+
+    /**
+     * The value of each constant.
+     */
+    private final double[] constants;
+
+    /**
+     * The value of each output.
+     */
+    private final int[] outputs;
+
+    /**
+     * The number of input variables.
+     */
+    private final int inputCount;
+
+    /**
+     * Creates a program; the arrays are taken over.
+     *
+     * @param theOps the operation of each instruction
+     * @param theLeft the left operands
+     * @param theRight the right operands
+     * @param theConstants the values of the constants
+     * @param theOutputs the output values
+     * @param theInputCount the number of input variables
+     */
+    Program(
+            final Op[] theOps,
+            final int[] theLeft,
+            final int[] theRight,
+            final double[] theConstants,
+            final int[] theOutputs,
+            final int theInputCount) {
+        this.ops = theOps;
+        this.left = theLeft;
+        this.right = theRight;
+        this.constants = theConstants;
+        this.outputs = theOutputs;
+        this.inputCount = theInputCount;
+    }
+
+    /**
+     * Translates expressions into a program.
+     *
+     * The expressions may contain rational numbers, sums, products,
+     * integer powers and the functions <code>sqrt</code>,
+     * <code>exp</code> and <code>log</code> of one argument. Any other
+     * subexpression must be one of the inputs, which may be symbols as
+     * well as other functions, such as spinor products.
+     *
+     * @param inputs the input variables
+     * @param outputs the expressions
+     * @return the program
+     * @throws IllegalArgumentException if an expression contains a
+     *         symbol or function that is not an input
+     *
+     * @since 0.1.0
+     */
+    public static Program of(
+            final List<Expr> inputs,
+            final List<Expr> outputs) {
+        final ProgramBuilder builder = new ProgramBuilder(inputs);
+        final int[] values = new int[outputs.size()];
+        for (int k = 0; k < values.length; ++k) {
+            values[k] = builder.translate(outputs.get(k));
+        }
+        return builder.build(values);
+    }
+
+    /**
+     * Returns the number of input variables.
+     *
+     * @return the number of inputs
+     *
+     * @since 0.1.0
+     */
+    public int getInputCount() {
+        return this.inputCount;
+    }
+
+    /**
+     * Returns the number of instructions.
+     *
+     * @return the number of values
+     *
+     * @since 0.1.0
+     */
+    public int getInstructionCount() {
+        return this.ops.length;
+    }
+
+    /**
+     * Counts the arithmetic operations, i.e. all instructions other
+     * than inputs and constants.
+     *
+     * @return the number of operations
+     *
+     * @since 0.1.0
+     */
+    public int getOperationCount() {
+        int count = 0;
+        for (final Op op : this.ops) {
+            if (op != Op.INPUT && op != Op.CONSTANT) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts the instructions of one kind.
+     *
+     * @param op the operation
+     * @return the number of instructions
+     *
+     * @since 0.1.0
+     */
+    public int getOperationCount(final Op op) {
+        int count = 0;
+        for (final Op o : this.ops) {
+            if (o == op) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the operation of an instruction.
+     *
+     * @param i the index of the instruction
+     * @return the operation
+     *
+     * @since 0.1.0
+     */
+    public Op getOp(final int i) {
+        return this.ops[i];
+    }
+
+    /**
+     * Returns the left or only operand of an instruction.
+     *
+     * @param i the index of the instruction
+     * @return the index of the operand, or of the input variable
+     *
+     * @since 0.1.0
+     */
+    public int getLeft(final int i) {
+        return this.left[i];
+    }
+
+    /**
+     * Returns the right operand of a binary instruction.
+     *
+     * @param i the index of the instruction
+     * @return the index of the operand
+     *
+     * @since 0.1.0
+     */
+    public int getRight(final int i) {
+        return this.right[i];
+    }
+
+    /**
+     * Returns the value of a constant.
+     *
+     * @param i the index of the instruction
+     * @return the constant
+     *
+     * @since 0.1.0
+     */
+    public double getConstant(final int i) {
+        return this.constants[i];
+    }
+
+    /**
+     * Returns the number of outputs.
+     *
+     * @return the number of expressions
+     *
+     * @since 0.1.0
+     */
+    public int getOutputCount() {
+        return this.outputs.length;
+    }
+
+    /**
+     * Returns the value holding an output.
+     *
+     * @param k the index of the output
+     * @return the index of the instruction
+     *
+     * @since 0.1.0
+     */
+    public int getOutput(final int k) {
+        return this.outputs[k];
+    }
+
+    /**
+     * Evaluates the program by interpreting one instruction after the
+     * other. This is meant for checks and small programs; see
+     * {@link BytecodeCompiler} for the fast way.
+     *
+     * @param inputs the values of the input variables
+     * @param results receives the values of the outputs
+     *
+     * @since 0.1.0
+     */
+    public void interpret(final double[] inputs, final double[] results) {
+        final double[] v = new double[this.ops.length];
+        for (int i = 0; i < v.length; ++i) {
+            final int a = this.left[i];
+            final int b = this.right[i];
+            switch (this.ops[i]) {
+                case INPUT:
+                    v[i] = inputs[a];
+                    break;
+                case CONSTANT:
+                    v[i] = this.constants[i];
+                    break;
+                case ADD:
+                    v[i] = v[a] + v[b];
+                    break;
+                case SUBTRACT:
+                    v[i] = v[a] - v[b];
+                    break;
+                case MULTIPLY:
+                    v[i] = v[a] * v[b];
+                    break;
+                case DIVIDE:
+                    v[i] = v[a] / v[b];
+                    break;
+                case NEGATE:
+                    v[i] = -v[a];
+                    break;
+                case SQRT:
+                    v[i] = Math.sqrt(v[a]);
+                    break;
+                case EXP:
+                    v[i] = Math.exp(v[a]);
+                    break;
+                default:
+                    v[i] = Math.log(v[a]);
+                    break;
+            }
+        }
+        for (int k = 0; k < this.outputs.length; ++k) {
+            results[k] = v[this.outputs[k]];
+        }
+    }
+
+    /**
+     * Writes the program in the binary format read by {@link #read}.
+     *
+     * @param out the destination
+     * @throws IOException if the program cannot be written
+     *
+     * @since 0.1.0
+     */
+    public void write(final DataOutput out) throws IOException {
+        out.writeInt(this.inputCount);
+        out.writeInt(this.ops.length);
+        for (int i = 0; i < this.ops.length; ++i) {
+            out.writeByte(this.ops[i].ordinal());
+            out.writeInt(this.left[i]);
+            out.writeInt(this.right[i]);
+            out.writeDouble(this.constants[i]);
+        }
+        out.writeInt(this.outputs.length);
+        for (final int output : this.outputs) {
+            out.writeInt(output);
+        }
+    }
+
+    /**
+     * Reads a program written by {@link #write}.
+     *
+     * @param in the source
+     * @return the program
+     * @throws IOException if the program cannot be read or is
+     *         malformed
+     *
+     * @since 0.1.0
+     */
+    public static Program read(final DataInput in) throws IOException {
+        final Op[] all = Op.values();
+        final int inputCount = in.readInt();
+        final int n = in.readInt();
+        if (inputCount < 0 || n < 0) {
+            throw new IOException("Malformed program");
+        }
+        final Op[] ops = new Op[n];
+        final int[] left = new int[n];
+        final int[] right = new int[n];
+        final double[] constants = new double[n];
+        for (int i = 0; i < n; ++i) {
+            final int op = in.readUnsignedByte();
+            left[i] = in.readInt();
+            right[i] = in.readInt();
+            constants[i] = in.readDouble();
+            if (op >= all.length) {
+                throw new IOException("Malformed program");
+            }
+            ops[i] = all[op];
+            final boolean valid;
+            switch (ops[i]) {
+                case INPUT:
+                    valid = left[i] >= 0 && left[i] < inputCount;
+                    break;
+                case CONSTANT:
+                    valid = true;
+                    break;
+                case ADD:
+                case SUBTRACT:
+                case MULTIPLY:
+                case DIVIDE:
+                    valid = left[i] >= 0 && left[i] < i
+                        && right[i] >= 0 && right[i] < i;
+                    break;
+                default:
+                    valid = left[i] >= 0 && left[i] < i;
+                    break;
+            }
+            if (!valid) {
+                throw new IOException("Malformed program");
+            }
+        }
+        final int outputCount = in.readInt();
+        if (outputCount < 0) {
+            throw new IOException("Malformed program");
+        }
+        final int[] outputs = new int[outputCount];
+        for (int k = 0; k < outputs.length; ++k) {
+            outputs[k] = in.readInt();
+            if (outputs[k] < 0 || outputs[k] >= n) {
+                throw new IOException("Malformed program");
+            }
+        }
+        return new Program(ops, left, right, constants, outputs, inputCount);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < this.ops.length; ++i) {
+            sb.append('v').append(i).append(" = ");
+            switch (this.ops[i]) {
+                case INPUT:
+                    sb.append("in[").append(this.left[i]).append(']');
+                    break;
+                case CONSTANT:
+                    sb.append(this.constants[i]);
+                    break;
+                case ADD:
+                case SUBTRACT:
+                case MULTIPLY:
+                case DIVIDE:
+                    sb.append('v').append(this.left[i]).append(' ')
+                        .append("+-*/".charAt(
+                            this.ops[i].ordinal() - Op.ADD.ordinal()))
+                        .append(" v").append(this.right[i]);
+                    break;
+                case NEGATE:
+                    sb.append("-v").append(this.left[i]);
+                    break;
+                default:
+                    sb.append(this.ops[i].name().toLowerCase())
+                        .append("(v").append(this.left[i]).append(')');
+                    break;
+            }
+            sb.append(System.lineSeparator());
+        }
+        for (int k = 0; k < this.outputs.length; ++k) {
+            sb.append("out[").append(k).append("] = v")
+                .append(this.outputs[k]).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+}
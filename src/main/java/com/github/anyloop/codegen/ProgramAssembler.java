@@ -0,0 +1,406 @@
+/*
+ * ProgramAssembler.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.codegen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.github.anyloop.codegen.ClassFileWriter.Bytes;
+import com.github.anyloop.codegen.Program.Op;
+
+import static com.github.anyloop.codegen.ClassFileWriter.ACC_PRIVATE;
+import static com.github.anyloop.codegen.ClassFileWriter.ACC_STATIC;
+import static com.github.anyloop.codegen.ClassFileWriter.ALOAD_0;
+import static com.github.anyloop.codegen.ClassFileWriter.DADD;
+import static com.github.anyloop.codegen.ClassFileWriter.DALOAD;
+import static com.github.anyloop.codegen.ClassFileWriter.DASTORE;
+import static com.github.anyloop.codegen.ClassFileWriter.DDIV;
+import static com.github.anyloop.codegen.ClassFileWriter.DMUL;
+import static com.github.anyloop.codegen.ClassFileWriter.DNEG;
+import static com.github.anyloop.codegen.ClassFileWriter.DSUB;
+import static com.github.anyloop.codegen.ClassFileWriter.DUP2;
+import static com.github.anyloop.codegen.ClassFileWriter.INVOKESTATIC;
+import static com.github.anyloop.codegen.ClassFileWriter.LDC2_W;
+import static com.github.anyloop.codegen.ClassFileWriter.PUSH_SIZE;
+import static com.github.anyloop.codegen.ClassFileWriter.RETURN;
+
+/**
+ * Translates the instructions of a {@link Program} into static
+ * methods of a generated class, each with the signature
+ * <code>(double[] in, double[] out, double[] workspace)</code>.
+ *
+ * The instructions are taken in order and appended to the current
+ * method until its bytecode would grow beyond the size limit. Within
+ * a method every value lives in a <code>double</code> local. A value
+ * still needed by a later method is stored in the workspace when its
+ * method ends, and read back into a local where it is first used
+ * again. Inputs are read directly from the input array and constants
+ * from the constant pool.
+ *
+ * @since 0.1.0
+ */
+final class ProgramAssembler {
+
+    /**
+     * The descriptor of the generated methods.
+     */
+    static final String STEP = "([D[D[D)V";
+
+    /**
+     * The first local variable slot for values.
+     */
+    private static final int FIRST_SLOT = 3;
+
+    /**
+     * The largest size of the code loading an operand.
+     */
+    private static final int LOAD_SIZE = 2 + PUSH_SIZE + 5;
+
+    /**
+     * The size of the code storing a local into an array.
+     */
+    private static final int STORE_SIZE = 2 + PUSH_SIZE + 4;
+
+    /**
+     * The largest size of the code of one instruction.
+     */
+    private static final int INSTRUCTION_SIZE = 2 * LOAD_SIZE + 3 + 4;
+
+    /**
+     * The largest size of the code of one output taken directly from
+     * an input or constant.
+     */
+    private static final int OUTPUT_SIZE = 2 + PUSH_SIZE + LOAD_SIZE;
+
+    private final Program program;
+
+    private final ClassFileWriter writer;
+
+    private final int methodSize;
+
+    /**
+     * The last instruction using each value, or <code>-1</code>.
+     */
+    private final int[] lastUse;
+
+    /**
+     * The first output of each value, or <code>-1</code>.
+     */
+    private final int[] firstOutput;
+
+    /**
+     * The next output of the same value, or <code>-1</code>.
+     */
+    private final int[] nextOutput;
+
+    /**
+     * The workspace index of each value, or <code>-1</code>.
+     */
+    private final int[] spill;
+
+    /**
+     * The local variable slot of each value in the current method, or
+     * <code>-1</code>.
+     */
+    private final int[] local;
+
+    /**
+     * The method which defines each value, or <code>-1</code>.
+     */
+    private final int[] method;
+
+    /**
+     * The values with a local in the current method.
+     */
+    private final int[] touched;
+
+    private int touchedCount;
+
+    /**
+     * The values defined in the current method.
+     */
+    private final int[] defined;
+
+    private int definedCount;
+
+    /**
+     * The names of the methods written so far.
+     */
+    private final List<String> methods = new ArrayList<>();
+
+    private Bytes code;
+
+    private int nextSlot;
+
+    /**
+     * The number of bytes needed to close the current method.
+     */
+    private int closing;
+
+    private int spillCount;
+
+    /**
+     * Creates an assembler.
+     *
+     * @param theProgram the program
+     * @param theWriter the writer of the generated class
+     * @param theMethodSize the size limit of the methods
+     */
+    ProgramAssembler(
+            final Program theProgram,
+            final ClassFileWriter theWriter,
+            final int theMethodSize) {
+        this.program = theProgram;
+        this.writer = theWriter;
+        this.methodSize = theMethodSize;
+
+        final int n = theProgram.getInstructionCount();
+        this.lastUse = new int[n];
+        this.firstOutput = new int[n];
+        this.nextOutput = new int[theProgram.getOutputCount()];
+        this.spill = new int[n];
+        this.local = new int[n];
+        this.method = new int[n];
+        this.touched = new int[n];
+        this.defined = new int[n];
+        Arrays.fill(this.lastUse, -1);
+        Arrays.fill(this.firstOutput, -1);
+        Arrays.fill(this.spill, -1);
+        Arrays.fill(this.local, -1);
+        Arrays.fill(this.method, -1);
+        for (int i = 0; i < n; ++i) {
+            if (isArithmetic(theProgram.getOp(i))) {
+                this.lastUse[theProgram.getLeft(i)] = i;
+                if (isBinary(theProgram.getOp(i))) {
+                    this.lastUse[theProgram.getRight(i)] = i;
+                }
+            }
+        }
+        for (int k = this.nextOutput.length - 1; k >= 0; --k) {
+            final int v = theProgram.getOutput(k);
+            this.nextOutput[k] = this.firstOutput[v];
+            this.firstOutput[v] = k;
+        }
+    }
+
+    private static boolean isArithmetic(final Op op) {
+        return op != Op.INPUT && op != Op.CONSTANT;
+    }
+
+    private static boolean isBinary(final Op op) {
+        return op == Op.ADD || op == Op.SUBTRACT
+            || op == Op.MULTIPLY || op == Op.DIVIDE;
+    }
+
+    /**
+     * Writes the methods.
+     *
+     * @return the names of the methods, in the order in which they
+     *         must be called
+     */
+    List<String> assemble() {
+        this.begin();
+        final int n = this.program.getInstructionCount();
+        for (int i = 0; i < n; ++i) {
+            if (isArithmetic(this.program.getOp(i))) {
+                this.instruction(i);
+            }
+        }
+        for (int k = 0; k < this.program.getOutputCount(); ++k) {
+            final int v = this.program.getOutput(k);
+            if (!isArithmetic(this.program.getOp(v))) {
+                this.reserve(OUTPUT_SIZE);
+                this.code.u1(ALOAD_0 + 1);
+                this.writer.push(this.code, k);
+                this.load(v);
+                this.code.u1(DASTORE);
+            }
+        }
+        this.end();
+        return this.methods;
+    }
+
+    /**
+     * Returns the length of the workspace.
+     *
+     * @return the number of values passed between methods
+     */
+    int getWorkspaceSize() {
+        return this.spillCount;
+    }
+
+    /**
+     * Starts a new method if the current one cannot take more code.
+     *
+     * @param size the largest size of the code to be added, including
+     *        any growth of the code needed to close the method
+     */
+    private void reserve(final int size) {
+        if (this.code.size() > 0 && this.code.size() + size
+                + this.closing + 1 > this.methodSize) {
+            this.end();
+            this.begin();
+        }
+    }
+
+    private void instruction(final int i) {
+        int outputs = 0;
+        for (int k = this.firstOutput[i]; k >= 0; k = this.nextOutput[k]) {
+            ++outputs;
+        }
+        final int closes = STORE_SIZE * outputs
+            + (this.lastUse[i] > i ? STORE_SIZE : 0);
+        this.reserve(INSTRUCTION_SIZE + closes);
+
+        final Op op = this.program.getOp(i);
+        final int a = this.program.getLeft(i);
+        final int b = this.program.getRight(i);
+        this.load(a);
+        if (isBinary(op)) {
+            this.load(b);
+        }
+        switch (op) {
+            case ADD:
+                this.code.u1(DADD);
+                break;
+            case SUBTRACT:
+                this.code.u1(DSUB);
+                break;
+            case MULTIPLY:
+                this.code.u1(DMUL);
+                break;
+            case DIVIDE:
+                this.code.u1(DDIV);
+                break;
+            case NEGATE:
+                this.code.u1(DNEG);
+                break;
+            default:
+                this.code.u1(INVOKESTATIC).u2(this.writer.methodRef(
+                    "java/lang/Math", op.name().toLowerCase(), "(D)D"));
+                break;
+        }
+        this.define(i);
+        this.closing += closes;
+
+        // operands defined in this method and now dead need not be kept
+        final int current = this.methods.size();
+        if (this.lastUse[a] == i && this.method[a] == current) {
+            this.closing -= STORE_SIZE;
+        }
+        if (isBinary(op) && b != a
+                && this.lastUse[b] == i && this.method[b] == current) {
+            this.closing -= STORE_SIZE;
+        }
+    }
+
+    /**
+     * Stores the value on top of the stack in a new local.
+     *
+     * @param v the value
+     */
+    private void define(final int v) {
+        this.local[v] = this.nextSlot;
+        this.touched[this.touchedCount++] = v;
+        ClassFileWriter.store(this.code, this.nextSlot);
+        this.nextSlot += 2;
+        if (isArithmetic(this.program.getOp(v))
+                && this.method[v] < 0) {
+            this.method[v] = this.methods.size();
+            this.defined[this.definedCount++] = v;
+        }
+    }
+
+    /**
+     * Pushes a value onto the stack.
+     *
+     * @param v the value
+     */
+    private void load(final int v) {
+        if (this.local[v] >= 0) {
+            ClassFileWriter.load(this.code, this.local[v]);
+            return;
+        }
+        switch (this.program.getOp(v)) {
+            case CONSTANT:
+                this.code.u1(LDC2_W).u2(this.writer.doubleConstant(
+                    this.program.getConstant(v)));
+                return;
+            case INPUT:
+                this.code.u1(ALOAD_0);
+                this.writer.push(this.code, this.program.getLeft(v));
+                break;
+            default:
+                this.code.u1(ALOAD_0 + 2);
+                this.writer.push(this.code, this.spill[v]);
+                break;
+        }
+        this.code.u1(DALOAD).u1(DUP2);
+        this.define(v);
+    }
+
+    private void begin() {
+        this.code = new Bytes();
+        this.nextSlot = FIRST_SLOT;
+        this.closing = 0;
+    }
+
+    /**
+     * Closes the current method, storing its values needed later.
+     */
+    private void end() {
+        final int last = this.definedCount > 0
+            ? this.defined[this.definedCount - 1] : -1;
+        for (int j = 0; j < this.definedCount; ++j) {
+            final int v = this.defined[j];
+            if (this.lastUse[v] > last) {
+                this.spill[v] = this.spillCount++;
+                this.code.u1(ALOAD_0 + 2);
+                this.writer.push(this.code, this.spill[v]);
+                ClassFileWriter.load(this.code, this.local[v]);
+                this.code.u1(DASTORE);
+            }
+            for (int k = this.firstOutput[v]; k >= 0;
+                    k = this.nextOutput[k]) {
+                this.code.u1(ALOAD_0 + 1);
+                this.writer.push(this.code, k);
+                ClassFileWriter.load(this.code, this.local[v]);
+                this.code.u1(DASTORE);
+            }
+        }
+        this.code.u1(RETURN);
+
+        final String name = "s" + this.methods.size();
+        this.writer.addMethod(ACC_PRIVATE | ACC_STATIC, name, STEP,
+            6, this.nextSlot, this.code);
+        this.methods.add(name);
+
+        for (int j = 0; j < this.touchedCount; ++j) {
+            this.local[this.touched[j]] = -1;
+        }
+        this.touchedCount = 0;
+        this.definedCount = 0;
+    }
+}
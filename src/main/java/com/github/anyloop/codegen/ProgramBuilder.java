@@ -0,0 +1,478 @@
+/*
+ * ProgramBuilder.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.codegen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.anyloop.codegen.Program.Op;
+import com.github.anyloop.symbolic.Expr;
+
+/**
+ * Builds a {@link Program} with global value numbering: an
+ * instruction that repeats an earlier one is not added again, the
+ * earlier value is returned instead.
+ *
+ * Expressions are translated without recursion, since Horner schemes
+ * and long products nest deeply. Thanks to hash-consing a subterm that
+ * occurs several times is the same object and is translated once.
+ * Sums are added up term by term; subclasses may evaluate them in a
+ * different way.
+ *
+ * @since 0.1.0
+ */
+class ProgramBuilder {
+
+    /**
+     * The largest number of values, so that two operands and the
+     * operation fit into the key of an instruction.
+     */
+    private static final int MAX_VALUES = 1 << 29;
+
+    private Op[] ops = new Op[64];
+
+    private int[] left = new int[64];
+
+    private int[] right = new int[64];
+
+    private double[] constants = new double[64];
+
+    private int size;
+
+    /**
+     * The value of each instruction, keyed by operation and operands.
+     */
+    private final Map<Long, Integer> numbering = new HashMap<>();
+
+    /**
+     * The value of each constant, keyed by its bits.
+     */
+    private final Map<Long, Integer> constantValues = new HashMap<>();
+
+    /**
+     * The index of each input variable.
+     */
+    private final Map<Expr, Integer> inputs = new IdentityHashMap<>();
+
+    /**
+     * The value of each expression translated so far.
+     */
+    private final Map<Expr, Integer> values = new IdentityHashMap<>();
+
+    /**
+     * Creates a builder.
+     *
+     * @param theInputs the input variables
+     */
+    ProgramBuilder(final List<Expr> theInputs) {
+        for (int k = 0; k < theInputs.size(); ++k) {
+            if (this.inputs.putIfAbsent(theInputs.get(k), k) != null) {
+                throw new IllegalArgumentException(
+                    "Duplicate input " + theInputs.get(k));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of values defined so far.
+     *
+     * @return the number of instructions
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Creates the program.
+     *
+     * @param outputs the values of the outputs
+     * @return the program
+     */
+    Program build(final int[] outputs) {
+        return new Program(
+            Arrays.copyOf(this.ops, this.size),
+            Arrays.copyOf(this.left, this.size),
+            Arrays.copyOf(this.right, this.size),
+            Arrays.copyOf(this.constants, this.size),
+            outputs.clone(),
+            this.inputs.size());
+    }
+
+    /**
+     * Returns the value of an input variable.
+     *
+     * @param index the index of the variable
+     * @return the value
+     */
+    int input(final int index) {
+        return this.add(Op.INPUT, index, 0);
+    }
+
+    /**
+     * Returns the value of a constant.
+     *
+     * @param c the constant
+     * @return the value
+     */
+    int constant(final double c) {
+        final Long key = Double.doubleToLongBits(c);
+        final Integer v = this.constantValues.get(key);
+        if (v != null) {
+            return v;
+        }
+        final int i = this.append(Op.CONSTANT, 0, 0);
+        this.constants[i] = c;
+        this.constantValues.put(key, i);
+        return i;
+    }
+
+    /**
+     * Tells whether a value is a given constant.
+     *
+     * @param v the value
+     * @param c the constant
+     * @return <code>true</code> if <code>v</code> is the constant
+     */
+    boolean isConstant(final int v, final double c) {
+        return this.ops[v] == Op.CONSTANT && this.constants[v] == c;
+    }
+
+    /**
+     * Returns the value of an operation. Operations with a neutral
+     * constant operand are simplified, and the operands of commutative
+     * operations are ordered.
+     *
+     * @param op an arithmetic operation
+     * @param a the left or only operand
+     * @param b the right operand of a binary operation
+     * @return the value
+     */
+    int add(final Op op, final int a, final int b) {
+        switch (op) {
+            case ADD:
+                if (this.isConstant(a, 0)) {
+                    return b;
+                }
+                if (this.isConstant(b, 0)) {
+                    return a;
+                }
+                return this.number(op, Math.min(a, b), Math.max(a, b));
+            case MULTIPLY:
+                if (this.isConstant(a, 1)) {
+                    return b;
+                }
+                if (this.isConstant(b, 1)) {
+                    return a;
+                }
+                return this.number(op, Math.min(a, b), Math.max(a, b));
+            case SUBTRACT:
+                return this.isConstant(b, 0) ? a : this.number(op, a, b);
+            case DIVIDE:
+                return this.isConstant(b, 1) ? a : this.number(op, a, b);
+            default:
+                return this.number(op, a, b);
+        }
+    }
+
+    private int number(final Op op, final int a, final int b) {
+        final Long key = ((long) op.ordinal() << 58)
+            | ((long) a << 29) | b;
+        final Integer v = this.numbering.get(key);
+        if (v != null) {
+            return v;
+        }
+        final int i = this.append(op, a, b);
+        this.numbering.put(key, i);
+        return i;
+    }
+
+    private int append(final Op op, final int a, final int b) {
+        if (this.size == MAX_VALUES) {
+            throw new IllegalArgumentException("Program too large");
+        }
+        if (this.size == this.ops.length) {
+            final int capacity = 2 * this.size;
+            this.ops = Arrays.copyOf(this.ops, capacity);
+            this.left = Arrays.copyOf(this.left, capacity);
+            this.right = Arrays.copyOf(this.right, capacity);
+            this.constants = Arrays.copyOf(this.constants, capacity);
+        }
+        final int i = this.size++;
+        this.ops[i] = op;
+        this.left[i] = a;
+        this.right[i] = b;
+        return i;
+    }
+
+    /**
+     * Returns <code>v^n</code> by repeated squaring.
+     *
+     * @param v the base
+     * @param n the exponent, positive
+     * @return the value
+     */
+    int power(final int v, final int n) {
+        int result = -1;
+        int square = v;
+        for (int e = n; e > 0; e >>>= 1) {
+            if ((e & 1) != 0) {
+                result = result < 0
+                    ? square : this.add(Op.MULTIPLY, result, square);
+            }
+            if (e > 1) {
+                square = this.add(Op.MULTIPLY, square, square);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Translates an expression.
+     *
+     * @param root the expression
+     * @return the value of the expression
+     * @throws IllegalArgumentException if the expression contains a
+     *         symbol or function that is neither an input nor known
+     */
+    int translate(final Expr root) {
+        final List<Expr> stack = new ArrayList<>();
+        final List<Expr> operands = new ArrayList<>();
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            final Expr e = stack.get(stack.size() - 1);
+            if (this.values.containsKey(e)) {
+                stack.remove(stack.size() - 1);
+                continue;
+            }
+            operands.clear();
+            this.operands(e, operands);
+            boolean ready = true;
+            for (final Expr o : operands) {
+                if (!this.values.containsKey(o)) {
+                    stack.add(o);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                stack.remove(stack.size() - 1);
+                this.values.put(e, this.emit(e));
+            }
+        }
+        return this.values.get(root);
+    }
+
+    /**
+     * Collects the expressions whose values are needed for an
+     * expression.
+     *
+     * @param e the expression
+     * @param out receives the operands
+     */
+    private void operands(final Expr e, final List<Expr> out) {
+        if (this.inputs.containsKey(e)) {
+            return;
+        }
+        switch (e.getKind()) {
+            case SUM:
+                this.sumOperands(e, out);
+                break;
+            case PRODUCT:
+            case POWER:
+                for (int i = 0; i < e.getArgCount(); ++i) {
+                    final Expr f = e.getArg(i);
+                    if (f.getKind() == Expr.Kind.POWER) {
+                        out.add(f.getArg(0));
+                    } else if (f.getKind() != Expr.Kind.NUMBER) {
+                        out.add(f);
+                    }
+                }
+                break;
+            case FUNCTION:
+                if (e.getArgCount() > 0) {
+                    out.add(e.getArg(0));
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Collects the expressions whose values are needed for a sum.
+     *
+     * @param e the sum
+     * @param out receives the operands
+     */
+    void sumOperands(final Expr e, final List<Expr> out) {
+        for (int i = 0; i < e.getArgCount(); ++i) {
+            final Expr t = e.getArg(i);
+            out.add(isNegative(t) ? t.negate() : t);
+        }
+    }
+
+    /**
+     * Adds the instructions of a sum whose operands have been
+     * translated.
+     *
+     * @param e the sum
+     * @return the value of the sum
+     */
+    int emitSum(final Expr e) {
+        int sum = -1;
+        for (int i = 0; i < e.getArgCount(); ++i) {
+            final Expr t = e.getArg(i);
+            if (isNegative(t)) {
+                final int v = this.values.get(t.negate());
+                sum = sum < 0 ? this.add(Op.NEGATE, v, 0)
+                    : this.add(Op.SUBTRACT, sum, v);
+            } else {
+                final int v = this.values.get(t);
+                sum = sum < 0 ? v : this.add(Op.ADD, sum, v);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the value of a translated expression.
+     *
+     * @param e the expression
+     * @return the value
+     */
+    int valueOf(final Expr e) {
+        return this.values.get(e);
+    }
+
+    /**
+     * Tells whether a term has a negative rational coefficient.
+     *
+     * @param t the term
+     * @return <code>true</code> if the term is better subtracted
+     */
+    private static boolean isNegative(final Expr t) {
+        return t.getKind() == Expr.Kind.PRODUCT
+            && t.getArg(0).getKind() == Expr.Kind.NUMBER
+            && t.getArg(0).getNumerator() < 0;
+    }
+
+    /**
+     * Adds the instructions of an expression whose operands have
+     * been translated.
+     *
+     * @param e the expression
+     * @return the value of the expression
+     */
+    private int emit(final Expr e) {
+        final Integer input = this.inputs.get(e);
+        if (input != null) {
+            return this.input(input);
+        }
+        switch (e.getKind()) {
+            case NUMBER:
+                return this.constant(
+                    (double) e.getNumerator() / e.getDenominator());
+            case SUM:
+                return this.emitSum(e);
+            case PRODUCT:
+            case POWER:
+                return this.emitProduct(e);
+            case FUNCTION:
+                return this.emitFunction(e);
+            default:
+                throw new IllegalArgumentException(
+                    "Unknown symbol " + e);
+        }
+    }
+
+    /**
+     * Translates a product or power into the quotient of the factors
+     * with positive and with negative exponents.
+     *
+     * @param e the product or power
+     * @return the value of the expression
+     */
+    private int emitProduct(final Expr e) {
+        final boolean power = e.getKind() == Expr.Kind.POWER;
+        final int n = power ? 1 : e.getArgCount();
+        double coefficient = 1;
+        int numerator = -1;
+        int denominator = -1;
+        for (int i = 0; i < n; ++i) {
+            final Expr f = power ? e : e.getArg(i);
+            if (f.getKind() == Expr.Kind.NUMBER) {
+                coefficient = (double) f.getNumerator() / f.getDenominator();
+                continue;
+            }
+            final int exponent =
+                f.getKind() == Expr.Kind.POWER ? f.getExponent() : 1;
+            final int base = this.values.get(
+                f.getKind() == Expr.Kind.POWER ? f.getArg(0) : f);
+            final int v = this.power(base, Math.abs(exponent));
+            if (exponent > 0) {
+                numerator = numerator < 0
+                    ? v : this.add(Op.MULTIPLY, numerator, v);
+            } else {
+                denominator = denominator < 0
+                    ? v : this.add(Op.MULTIPLY, denominator, v);
+            }
+        }
+        int result;
+        if (numerator < 0) {
+            result = this.constant(Math.abs(coefficient));
+        } else {
+            result = this.add(Op.MULTIPLY,
+                this.constant(Math.abs(coefficient)), numerator);
+        }
+        if (denominator >= 0) {
+            result = this.add(Op.DIVIDE, result, denominator);
+        }
+        return coefficient < 0 ? this.add(Op.NEGATE, result, 0) : result;
+    }
+
+    private int emitFunction(final Expr e) {
+        final Op op;
+        switch (e.getName()) {
+            case "sqrt":
+                op = Op.SQRT;
+                break;
+            case "exp":
+                op = Op.EXP;
+                break;
+            case "log":
+                op = Op.LOG;
+                break;
+            default:
+                op = null;
+                break;
+        }
+        if (op == null || e.getArgCount() != 1) {
+            throw new IllegalArgumentException("Unknown function " + e);
+        }
+        return this.add(op, this.values.get(e.getArg(0)), 0);
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * package-info.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+/**
+ * This package turns finished amplitude expressions into code that
+ * evaluates them numerically.
+ *
+ * An expression DAG is first flattened into a
+ * {@link com.github.anyloop.codegen.Program}, a straight-line sequence
+ * of floating-point operations in which every shared subterm is
+ * computed once. The program may be interpreted directly, or compiled
+ * into a class whose methods hold the operations as plain bytecode
+ * over <code>double</code> locals, which the JIT compiler translates
+ * into machine code like any other method.
+ */
+package com.github.anyloop.codegen;
@@ -0,0 +1,824 @@
+/*
+ * ColourAlgebra.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.colour;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.anyloop.cache.CacheKey;
+import com.github.anyloop.cache.StageCache;
+import com.github.anyloop.chassis.ClassHelper;
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.colour.ColourProduct.Line;
+import com.github.anyloop.finitefield.Rational;
+import com.github.anyloop.symbolic.BoundedCache;
+
+/**
+ * Reduces colour factors to a {@link ColourBasis} and computes colour
+ * matrices.
+ *
+ * A product is reduced by joining strings of generators at their
+ * common quark indices and then contracting one gluon index after the
+ * other by the Fierz identity, until every gluon index occurs once.
+ * Each product with contracted indices is first brought into a
+ * canonical form: its traces are ordered and rotated, and the
+ * contracted indices are renamed in the order of their occurrence,
+ * choosing the smallest such form. The reduced products are cached
+ * under this form, so that, for instance, the entries of a colour
+ * matrix that differ by a relabelling of the gluons are computed once.
+ *
+ * Matrices of the trace basis of <code>n</code> gluons are in addition
+ * kept in a {@link StageCache}, if one is given, and read back by later
+ * runs instead of being recomputed. Their keys hold the key of the
+ * context the algebra is used in, such as the model and the process,
+ * so that the cached matrices follow the lifetime of the other results
+ * of that context.
+ *
+ * Instances are thread-safe.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class ColourAlgebra {
+
+    /**
+     * The largest number of orderings and rotations of traces tried
+     * when looking for the canonical form of a product.
+     */
+    private static final int MAX_CANDIDATES = 1 << 12;
+
+    /**
+     * The name of a colour matrix in the cache.
+     */
+    private static final String MATRIX = "gluons.matrix";
+
+    /**
+     * The factor <code>-1/N</code> of the Fierz identity.
+     */
+    private static final ColourFactor MINUS_INVERSE_N =
+        ColourFactor.monomial(Rational.of(-1, 1), -1);
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(ColourAlgebra.class);
+
+    /**
+     * The colour basis.
+     */
+    private final ColourBasis basis;
+
+    /**
+     * The cache of the colour matrices or <code>null</code>.
+     */
+    private final StageCache stageCache;
+
+    /**
+     * The key of the context of the colour matrices or
+     * <code>null</code>.
+     */
+    private final CacheKey context;
+
+    /**
+     * The reduced products with contracted indices.
+     */
+    private final BoundedCache<Key, ColourSum> cache;
+
+    /**
+     * Creates an algebra.
+     *
+     * @param theBasis the colour basis
+     * @param cacheSize the largest number of cached reductions
+     * @param theStageCache the cache of colour matrices or
+     *        <code>null</code>
+     * @param theContext the key of the context of the colour matrices,
+     *        e.g. of the model and process configuration, or
+     *        <code>null</code>
+     *
+     * @since 0.1.0
+     */
+    public ColourAlgebra(
+            final ColourBasis theBasis,
+            final int cacheSize,
+            final StageCache theStageCache,
+            final CacheKey theContext) {
+        this.basis = theBasis;
+        this.stageCache = theStageCache;
+        this.context = theContext;
+        this.cache = new BoundedCache<>(cacheSize);
+    }
+
+    /**
+     * Creates an algebra from its configuration.
+     *
+     * @param config the configuration
+     * @return the algebra
+     * @throws ConfigurationException if the configuration is invalid
+     *
+     * @since 0.1.0
+     */
+    public static ColourAlgebra fromConfig(final ColourConfig config)
+            throws ConfigurationException {
+        return fromConfig(config, null, null);
+    }
+
+    /**
+     * Creates an algebra from its configuration which keeps its colour
+     * matrices in a cache.
+     *
+     * @param config the configuration
+     * @param stageCache the cache of colour matrices or
+     *        <code>null</code>
+     * @param context the key of the context of the colour matrices,
+     *        e.g. of the model and process configuration, or
+     *        <code>null</code>
+     * @return the algebra
+     * @throws ConfigurationException if the configuration is invalid
+     *
+     * @since 0.1.0
+     */
+    public static ColourAlgebra fromConfig(
+            final ColourConfig config,
+            final StageCache stageCache,
+            final CacheKey context) throws ConfigurationException {
+        final ColourBasis basis = ColourBasis.forName(config.getBasis());
+        if (basis == null) {
+            throw new ConfigurationException("Unknown colour.basis '"
+                + config.getBasis() + "', expected trace or flow");
+        }
+        if (config.getCacheSize() <= 0) {
+            throw new ConfigurationException(
+                "colour.cacheSize must be positive");
+        }
+        return new ColourAlgebra(
+            basis, config.getCacheSize(), stageCache, context);
+    }
+
+    /**
+     * Returns the colour basis.
+     *
+     * @return the basis
+     *
+     * @since 0.1.0
+     */
+    public ColourBasis getBasis() {
+        return this.basis;
+    }
+
+    /**
+     * Returns the cache of reduced products, for statistics.
+     *
+     * @return the cache
+     *
+     * @since 0.1.0
+     */
+    public BoundedCache<?, ?> getCache() {
+        return this.cache;
+    }
+
+    /**
+     * Contracts all gluon indices which occur twice and all quark
+     * indices which occur as quark and as antiquark index.
+     *
+     * @param sum the colour factor
+     * @return the reduced colour factor
+     * @throws IllegalArgumentException if a gluon index occurs more than
+     *         twice or a quark index more than once on either side
+     *
+     * @since 0.1.0
+     */
+    public ColourSum reduce(final ColourSum sum) {
+        final Map<ColourProduct, ColourFactor> terms = new TreeMap<>();
+        for (int t = 0; t < sum.getTermCount(); ++t) {
+            final ColourSum r = this.reduce(sum.getProduct(t));
+            for (int s = 0; s < r.getTermCount(); ++s) {
+                terms.merge(r.getProduct(s),
+                    r.getFactor(s).multiply(sum.getFactor(t)),
+                    ColourFactor::add);
+            }
+        }
+        return new ColourSum(terms);
+    }
+
+    /**
+     * Returns the sum over all colours of <code>x y^*</code>.
+     *
+     * @param x the first colour factor
+     * @param y the second colour factor
+     * @return the scalar product
+     * @throws IllegalArgumentException if the indices of the factors do
+     *         not match
+     *
+     * @since 0.1.0
+     */
+    public ColourFactor scalarProduct(final ColourSum x, final ColourSum y) {
+        final ColourSum r = this.reduce(x.multiply(y.conjugate()));
+        if (r.getTermCount() > 1 || (r.getTermCount() == 1
+                && r.getProduct(0).getLineCount() > 0)) {
+            throw new IllegalArgumentException(
+                "Colour indices are left open: " + r);
+        }
+        return r.getScalar();
+    }
+
+    /**
+     * Computes the matrix of scalar products of basis elements.
+     *
+     * @param elements the basis elements
+     * @return the matrix
+     *
+     * @since 0.1.0
+     */
+    public ColourMatrix matrix(final List<ColourSum> elements) {
+        final int n = elements.size();
+        final ColourSum[] conjugates = new ColourSum[n];
+        for (int j = 0; j < n; ++j) {
+            conjugates[j] = elements.get(j).conjugate();
+        }
+        final ColourFactor[] entries = new ColourFactor[n * n];
+        for (int i = 0; i < n; ++i) {
+            for (int j = i; j < n; ++j) {
+                final ColourSum r = this.reduce(
+                    elements.get(i).multiply(conjugates[j]));
+                if (r.getTermCount() > 1 || (r.getTermCount() == 1
+                        && r.getProduct(0).getLineCount() > 0)) {
+                    throw new IllegalArgumentException(
+                        "Colour indices are left open: " + r);
+                }
+                // all factors are real, so the matrix is symmetric
+                entries[i * n + j] = r.getScalar();
+                entries[j * n + i] = r.getScalar();
+            }
+        }
+        return new ColourMatrix(this.basis, n, entries);
+    }
+
+    /**
+     * Returns the trace basis of the colour factors of <code>n</code>
+     * gluons with the indices <code>0, ..., n - 1</code>: the traces
+     * <code>Tr(0, s(1), ..., s(n - 1))</code> for all permutations
+     * <code>s</code>, in lexicographic order.
+     *
+     * @param n the number of gluons, at least two
+     * @return the basis elements
+     *
+     * @since 0.1.0
+     */
+    public static List<ColourSum> gluonBasis(final int n) {
+        if (n < 2) {
+            throw new IllegalArgumentException(
+                "A gluon basis needs at least two gluons");
+        }
+        final List<ColourSum> elements = new ArrayList<>();
+        final int[] perm = new int[n];
+        for (int k = 0; k < n; ++k) {
+            perm[k] = k;
+        }
+        do {
+            elements.add(ColourSum.trace(perm));
+        } while (nextPermutation(perm, 1));
+        return elements;
+    }
+
+    private static boolean nextPermutation(final int[] a, final int from) {
+        int i = a.length - 2;
+        while (i >= from && a[i] >= a[i + 1]) {
+            --i;
+        }
+        if (i < from) {
+            return false;
+        }
+        int j = a.length - 1;
+        while (a[j] <= a[i]) {
+            --j;
+        }
+        swap(a, i, j);
+        for (int l = i + 1, r = a.length - 1; l < r; ++l, --r) {
+            swap(a, l, r);
+        }
+        return true;
+    }
+
+    private static void swap(final int[] a, final int i, final int j) {
+        final int x = a[i];
+        a[i] = a[j];
+        a[j] = x;
+    }
+
+    /**
+     * Returns the colour matrix of <code>n</code> gluons in the basis
+     * of {@link #gluonBasis}. If a cache is given, a matrix computed
+     * by an earlier run in the same context is read from there, and a
+     * new one is stored for later runs.
+     *
+     * @param n the number of gluons, at least two
+     * @return the matrix
+     *
+     * @since 0.1.0
+     */
+    public ColourMatrix gluonMatrix(final int n) {
+        final CacheKey key = this.stageCache == null ? null
+            : CacheKey.of("colour", ClassHelper.getVersion(
+                ColourAlgebra.class))
+                .add("context", this.context == null
+                    ? "" : this.context.getHash())
+                .add("basis", this.basis.getName())
+                .add("gluons", n);
+        if (key != null) {
+            try {
+                final Map<String, Path> cached = this.stageCache.get(key);
+                if (cached != null) {
+                    final ColourMatrix m =
+                        ColourMatrix.load(cached.get(MATRIX));
+                    if (m.getBasis() == this.basis) {
+                        return m;
+                    }
+                }
+            } catch (IOException ex) {
+                LOGGER.warn("Recomputing unreadable colour matrix", ex);
+            }
+        }
+        final ColourMatrix m = this.matrix(gluonBasis(n));
+        if (key != null) {
+            try {
+                final StringWriter out = new StringWriter();
+                m.write(out);
+                this.stageCache.put(key, MATRIX,
+                    out.toString().getBytes(StandardCharsets.UTF_8));
+            } catch (IOException ex) {
+                LOGGER.warn("Cannot store colour matrix", ex);
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Reduces a single product.
+     *
+     * @param product the product
+     * @return the reduced colour factor
+     */
+    private ColourSum reduce(final ColourProduct product) {
+        final List<Line> lines = new ArrayList<>();
+        final int loops = join(product.toLines(), lines);
+        final ColourFactor factor = power(loops);
+        if (this.vanishes(lines)) {
+            return ColourSum.ZERO;
+        }
+        if (!hasContractions(lines)) {
+            final Map<ColourProduct, ColourFactor> terms = new TreeMap<>();
+            terms.put(new ColourProduct(lines), factor);
+            return new ColourSum(terms);
+        }
+        final Key key = canonical(lines);
+        ColourSum reduced = this.cache.get(key);
+        if (reduced == null) {
+            final Map<ColourProduct, ColourFactor> terms = new TreeMap<>();
+            this.contract(key.toLines(), ColourFactor.ONE, terms,
+                new int[] {-1});
+            reduced = this.cache.putIfAbsent(key, new ColourSum(terms));
+        }
+        return factor == ColourFactor.ONE
+            ? reduced : reduced.scale(factor);
+    }
+
+    private static ColourFactor power(final int loops) {
+        ColourFactor factor = ColourFactor.ONE;
+        for (int k = 0; k < loops; ++k) {
+            factor = factor.multiply(ColourFactor.N);
+        }
+        return factor;
+    }
+
+    /**
+     * Joins open lines at common quark indices and drops empty traces.
+     *
+     * @param lines the lines
+     * @param out receives the joined lines
+     * @return the number of empty traces, each a factor <code>N</code>
+     */
+    private static int join(final List<Line> lines, final List<Line> out) {
+        final Map<Integer, Line> byStart = new HashMap<>();
+        final Map<Integer, Line> byEnd = new HashMap<>();
+        int loops = 0;
+        for (final Line line : lines) {
+            if (line.closed) {
+                if (line.gluons.length == 0) {
+                    ++loops;
+                } else {
+                    out.add(line);
+                }
+            } else if (byStart.put(line.start, line) != null
+                    || byEnd.put(line.end, line) != null) {
+                throw new IllegalArgumentException("Quark index "
+                    + line.start + " or " + line.end + " occurs twice");
+            }
+        }
+        // chains start where no other line ends; the remaining lines
+        // form cycles
+        final List<Line> heads = new ArrayList<>();
+        for (final Line line : byStart.values()) {
+            if (!byEnd.containsKey(line.start)) {
+                heads.add(line);
+            }
+        }
+        for (final Line head : heads) {
+            out.add(follow(head, byStart, false));
+        }
+        while (!byStart.isEmpty()) {
+            final Line line = follow(byStart.values().iterator().next(),
+                byStart, true);
+            if (line.gluons.length == 0) {
+                ++loops;
+            } else {
+                out.add(line);
+            }
+        }
+        return loops;
+    }
+
+    private static Line follow(
+            final Line head,
+            final Map<Integer, Line> byStart,
+            final boolean cycle) {
+        int[] gluons = new int[0];
+        Line line = head;
+        int end;
+        do {
+            byStart.remove(line.start);
+            final int[] g = Arrays.copyOf(gluons,
+                gluons.length + line.gluons.length);
+            System.arraycopy(line.gluons, 0, g, gluons.length,
+                line.gluons.length);
+            gluons = g;
+            end = line.end;
+            line = byStart.get(end);
+        } while (line != null);
+        return cycle ? new Line(true, 0, 0, gluons)
+            : new Line(false, head.start, end, gluons);
+    }
+
+    /**
+     * Tells whether a product contains the trace of a single generator,
+     * which vanishes for SU(N) but not for the U(N) generators of the
+     * colour-flow basis.
+     */
+    private boolean vanishes(final List<Line> lines) {
+        if (this.basis == ColourBasis.COLOUR_FLOW) {
+            return false;
+        }
+        for (final Line line : lines) {
+            if (line.closed && line.gluons.length == 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasContractions(final List<Line> lines) {
+        final Map<Integer, Integer> count = new HashMap<>();
+        boolean found = false;
+        for (final Line line : lines) {
+            for (final int g : line.gluons) {
+                final int c = count.merge(g, 1, Integer::sum);
+                if (c > 2) {
+                    throw new IllegalArgumentException(
+                        "Gluon index " + g + " occurs more than twice");
+                }
+                found |= c == 2;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Contracts all repeated gluon indices.
+     *
+     * @param lines the joined lines
+     * @param factor the coefficient of the product
+     * @param out receives the reduced products
+     * @param fresh the next unused internal quark index, negative
+     */
+    private void contract(
+            final List<Line> lines,
+            final ColourFactor factor,
+            final Map<ColourProduct, ColourFactor> out,
+            final int[] fresh) {
+        final Map<Integer, int[]> seen = new HashMap<>();
+        for (int l = 0; l < lines.size(); ++l) {
+            final int[] gluons = lines.get(l).gluons;
+            for (int k = 0; k < gluons.length; ++k) {
+                final int[] first = seen.putIfAbsent(gluons[k],
+                    new int[] {l, k});
+                if (first != null) {
+                    this.fierz(lines, first[0], first[1], l, k, factor,
+                        out, fresh);
+                    return;
+                }
+            }
+        }
+        out.merge(new ColourProduct(lines), factor, ColourFactor::add);
+    }
+
+    /**
+     * Applies the Fierz identity to the generators at two positions
+     * and continues with the resulting products.
+     */
+    private void fierz(
+            final List<Line> lines,
+            final int lp,
+            final int kp,
+            final int lq,
+            final int kq,
+            final ColourFactor factor,
+            final Map<ColourProduct, ColourFactor> out,
+            final int[] fresh) {
+        final List<Line> others = new ArrayList<>(lines);
+        others.remove(Math.max(lp, lq));
+        if (lp != lq) {
+            others.remove(Math.min(lp, lq));
+        }
+        // a trace is cut open at the first generator, its ends being
+        // joined again by an internal quark index
+        Line p = lines.get(lp);
+        int i = kp;
+        int j = kq;
+        if (p.closed) {
+            final int n = p.gluons.length;
+            final int[] rotated = new int[n];
+            for (int k = 0; k < n; ++k) {
+                rotated[k] = p.gluons[(kp + k) % n];
+            }
+            final int x = fresh[0]--;
+            p = new Line(false, x, x, rotated);
+            if (lp == lq) {
+                j = (kq - kp + n) % n;
+            }
+            i = 0;
+        }
+        final boolean unitary = this.basis == ColourBasis.COLOUR_FLOW;
+        final ColourFactor subtracted = factor.multiply(MINUS_INVERSE_N);
+        final int[] g = p.gluons;
+        if (lp == lq) {
+            // A T^a B T^a C = Tr(B) A C - A B C / N
+            final int[] a = Arrays.copyOfRange(g, 0, i);
+            final int[] b = Arrays.copyOfRange(g, i + 1, j);
+            final int[] c = Arrays.copyOfRange(g, j + 1, g.length);
+            final List<Line> first = new ArrayList<>(others);
+            first.add(new Line(false, p.start, p.end, concat(a, c)));
+            first.add(new Line(true, 0, 0, b));
+            this.rejoin(first, factor, out, fresh);
+            if (!unitary) {
+                final List<Line> second = new ArrayList<>(others);
+                second.add(new Line(false, p.start, p.end,
+                    concat(a, concat(b, c))));
+                this.rejoin(second, subtracted, out, fresh);
+            }
+            return;
+        }
+        Line q = lines.get(lq);
+        if (q.closed) {
+            final int n = q.gluons.length;
+            final int[] rotated = new int[n];
+            for (int k = 0; k < n; ++k) {
+                rotated[k] = q.gluons[(kq + k) % n];
+            }
+            final int x = fresh[0]--;
+            q = new Line(false, x, x, rotated);
+            j = 0;
+        }
+        // (A T^a B)_il (C T^a D)_km
+        //     = (A D)_im (C B)_kl - (A B)_il (C D)_km / N
+        final int[] a = Arrays.copyOfRange(g, 0, i);
+        final int[] b = Arrays.copyOfRange(g, i + 1, g.length);
+        final int[] c = Arrays.copyOfRange(q.gluons, 0, j);
+        final int[] d = Arrays.copyOfRange(q.gluons, j + 1, q.gluons.length);
+        final List<Line> first = new ArrayList<>(others);
+        first.add(new Line(false, p.start, q.end, concat(a, d)));
+        first.add(new Line(false, q.start, p.end, concat(c, b)));
+        this.rejoin(first, factor, out, fresh);
+        if (!unitary) {
+            final List<Line> second = new ArrayList<>(others);
+            second.add(new Line(false, p.start, p.end, concat(a, b)));
+            second.add(new Line(false, q.start, q.end, concat(c, d)));
+            this.rejoin(second, subtracted, out, fresh);
+        }
+    }
+
+    private void rejoin(
+            final List<Line> lines,
+            final ColourFactor factor,
+            final Map<ColourProduct, ColourFactor> out,
+            final int[] fresh) {
+        final List<Line> joined = new ArrayList<>();
+        final int loops = join(lines, joined);
+        if (this.vanishes(joined)) {
+            return;
+        }
+        this.contract(joined, factor.multiply(power(loops)), out, fresh);
+    }
+
+    private static int[] concat(final int[] x, final int[] y) {
+        final int[] r = Arrays.copyOf(x, x.length + y.length);
+        System.arraycopy(y, 0, r, x.length, y.length);
+        return r;
+    }
+
+    /**
+     * Finds the canonical form of a product of joined lines. Open lines
+     * are ordered by their quark index; the traces are tried in all
+     * orders and rotations, as long as there are not too many, and
+     * the contracted gluon indices are numbered <code>-1, -2, ...</code>
+     * in the order of their occurrence.
+     *
+     * @param lines the lines
+     * @return the canonical form
+     */
+    private static Key canonical(final List<Line> lines) {
+        final List<Line> open = new ArrayList<>();
+        final List<Line> traces = new ArrayList<>();
+        final Map<Integer, Integer> count = new HashMap<>();
+        for (final Line line : lines) {
+            (line.closed ? traces : open).add(line);
+            for (final int g : line.gluons) {
+                count.merge(g, 1, Integer::sum);
+            }
+        }
+        open.sort((x, y) -> Integer.compare(x.start, y.start));
+        traces.sort((x, y) -> Arrays.compare(
+            ColourProduct.smallestRotation(x.gluons),
+            ColourProduct.smallestRotation(y.gluons)));
+
+        long candidates = 1;
+        for (int t = 0; t < traces.size(); ++t) {
+            candidates *= (t + 1) * (long) traces.get(t).gluons.length;
+            if (candidates > MAX_CANDIDATES) {
+                break;
+            }
+        }
+        final int[] order = new int[traces.size()];
+        for (int t = 0; t < order.length; ++t) {
+            order[t] = t;
+        }
+        final int[] rotation = new int[traces.size()];
+        int[] best = encode(open, traces, order, rotation, count);
+        if (candidates <= MAX_CANDIDATES) {
+            do {
+                Arrays.fill(rotation, 0);
+                int t;
+                do {
+                    final int[] code =
+                        encode(open, traces, order, rotation, count);
+                    if (Arrays.compare(code, best) < 0) {
+                        best = code;
+                    }
+                    // next combination of rotations
+                    for (t = 0; t < rotation.length; ++t) {
+                        if (++rotation[t]
+                                < traces.get(order[t]).gluons.length) {
+                            break;
+                        }
+                        rotation[t] = 0;
+                    }
+                } while (t < rotation.length);
+            } while (nextPermutation(order, 0));
+        }
+        return new Key(best);
+    }
+
+    private static int[] encode(
+            final List<Line> open,
+            final List<Line> traces,
+            final int[] order,
+            final int[] rotation,
+            final Map<Integer, Integer> count) {
+        final Map<Integer, Integer> names = new HashMap<>();
+        int size = 0;
+        for (final Line line : open) {
+            size += 4 + line.gluons.length;
+        }
+        for (final Line line : traces) {
+            size += 2 + line.gluons.length;
+        }
+        final int[] code = new int[size];
+        int pos = 0;
+        for (final Line line : open) {
+            code[pos++] = 0;
+            code[pos++] = line.start;
+            code[pos++] = line.end;
+            code[pos++] = line.gluons.length;
+            for (final int g : line.gluons) {
+                code[pos++] = rename(g, names, count);
+            }
+        }
+        for (int t = 0; t < order.length; ++t) {
+            final int[] g = traces.get(order[t]).gluons;
+            code[pos++] = 1;
+            code[pos++] = g.length;
+            for (int k = 0; k < g.length; ++k) {
+                code[pos++] = rename(g[(rotation[t] + k) % g.length],
+                    names, count);
+            }
+        }
+        return code;
+    }
+
+    private static int rename(
+            final int g,
+            final Map<Integer, Integer> names,
+            final Map<Integer, Integer> count) {
+        if (count.get(g) < 2) {
+            return g;
+        }
+        return names.computeIfAbsent(g, x -> -1 - names.size());
+    }
+
+    /**
+     * A canonical product as a hash key.
+     */
+    private static final class Key {
+        /**
+         * The encoded lines.
+         */
+        private final int[] code;
+
+        /**
+         * The hash code.
+         */
+        private final int hash;
+
+        Key(final int[] theCode) {
+            this.code = theCode;
+            this.hash = Arrays.hashCode(theCode);
+        }
+
+        /**
+         * Decodes the lines.
+         *
+         * @return the lines
+         */
+        List<Line> toLines() {
+            final List<Line> lines = new ArrayList<>();
+            int pos = 0;
+            while (pos < this.code.length) {
+                if (this.code[pos] == 0) {
+                    final int n = this.code[pos + 3];
+                    lines.add(new Line(false, this.code[pos + 1],
+                        this.code[pos + 2], Arrays.copyOfRange(
+                            this.code, pos + 4, pos + 4 + n)));
+                    pos += 4 + n;
+                } else {
+                    final int n = this.code[pos + 1];
+                    lines.add(new Line(true, 0, 0, Arrays.copyOfRange(
+                        this.code, pos + 2, pos + 2 + n)));
+                    pos += 2 + n;
+                }
+            }
+            return lines;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof Key
+                && Arrays.equals(this.code, ((Key) obj).code);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * ColourBasis.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.colour;
+
+/**
+ * The colour bases to which colour factors are reduced.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public enum ColourBasis {
+
+    /**
+     * Products of traces and strings of <code>SU(N)</code> generators.
+     * Contracting a gluon index uses the Fierz identity
+     * <code>T^a_ij T^a_kl = delta_il delta_kj - delta_ij delta_kl / N</code>.
+     */
+    TRACE("trace"),
+
+    /**
+     * The colour-flow basis: each gluon carries a quark and an
+     * antiquark index, and the basis elements are chains of Kronecker
+     * deltas, one per trace of the trace basis. The gluons are
+     * <code>U(N)</code> fields, so the Fierz identity lacks the
+     * <code>1/N</code> term; the <code>U(1)</code> gluon decouples from
+     * purely gluonic amplitudes.
+     */
+    COLOUR_FLOW("flow");
+
+    /**
+     * The name in the configuration.
+     */
+    private final String name;
+
+    ColourBasis(final String theName) {
+        this.name = theName;
+    }
+
+    /**
+     * Returns the name used in the configuration.
+     *
+     * @return the name
+     *
+     * @since 0.1.0
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Looks up a basis by its name in the configuration.
+     *
+     * @param name the name
+     * @return the basis or <code>null</code> if the name is unknown
+     *
+     * @since 0.1.0
+     */
+    public static ColourBasis forName(final String name) {
+        for (final ColourBasis basis : values()) {
+            if (basis.name.equals(name)) {
+                return basis;
+            }
+        }
+        return null;
+    }
+}
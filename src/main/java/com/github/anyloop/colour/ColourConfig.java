@@ -0,0 +1,64 @@
+/*
+ * ColourConfig.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.colour;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.chassis.annotations.ConfigProperty;
+import com.github.anyloop.chassis.annotations.DefaultValue;
+
+/**
+ * Configuration of the colour algebra.
+ *
+ * In YAML notation:
+ * <pre>
+ * colour:
+ *   basis: trace
+ *   cacheSize: 65536
+ * </pre>
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public interface ColourConfig {
+
+    /**
+     * The colour basis, either <code>trace</code> or <code>flow</code>.
+     *
+     * @return the name of the basis
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("colour.basis")
+    @DefaultValue("trace")
+    String getBasis() throws ConfigurationException;
+
+    /**
+     * The largest number of reduced colour structures kept in memory.
+     *
+     * @return the number of cached structures
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("colour.cacheSize")
+    @DefaultValue("65536")
+    int getCacheSize() throws ConfigurationException;
+}
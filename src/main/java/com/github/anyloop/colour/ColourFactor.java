@@ -0,0 +1,301 @@
+/*
+ * ColourFactor.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.colour;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.github.anyloop.finitefield.Rational;
+
+/**
+ * An immutable Laurent polynomial in the number of colours
+ * <code>N</code> with rational coefficients.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class ColourFactor {
+
+    /**
+     * The rational zero.
+     */
+    private static final Rational RATIONAL_ZERO = Rational.of(0, 1);
+
+    /**
+     * The factor zero.
+     *
+     * @since 0.1.0
+     */
+    public static final ColourFactor ZERO =
+        new ColourFactor(new int[0], new Rational[0]);
+
+    /**
+     * The factor one.
+     *
+     * @since 0.1.0
+     */
+    public static final ColourFactor ONE = monomial(Rational.of(1, 1), 0);
+
+    /**
+     * The number of colours.
+     *
+     * @since 0.1.0
+     */
+    public static final ColourFactor N = monomial(Rational.of(1, 1), 1);
+
+    /**
+     * The powers of <code>N</code>, ascending.
+     */
+    private final int[] powers;
+
+    /**
+     * The coefficient of each power, never zero.
+     */
+    private final Rational[] coefficients;
+
+    private ColourFactor(
+            final int[] thePowers,
+            final Rational[] theCoefficients) {
+        this.powers = thePowers;
+        this.coefficients = theCoefficients;
+    }
+
+    /**
+     * Returns a multiple of a power of <code>N</code>.
+     *
+     * @param coefficient the coefficient
+     * @param power the exponent, possibly negative
+     * @return the monomial
+     *
+     * @since 0.1.0
+     */
+    public static ColourFactor monomial(
+            final Rational coefficient,
+            final int power) {
+        if (coefficient.getNumerator().signum() == 0) {
+            return ZERO;
+        }
+        return new ColourFactor(
+            new int[] {power}, new Rational[] {coefficient});
+    }
+
+    private static ColourFactor of(final Map<Integer, Rational> terms) {
+        terms.values().removeIf(c -> c.getNumerator().signum() == 0);
+        final int[] p = new int[terms.size()];
+        final Rational[] c = new Rational[p.length];
+        int k = 0;
+        for (final Map.Entry<Integer, Rational> e : terms.entrySet()) {
+            p[k] = e.getKey();
+            c[k++] = e.getValue();
+        }
+        return new ColourFactor(p, c);
+    }
+
+    /**
+     * Tells whether this is zero.
+     *
+     * @return <code>true</code> for the zero polynomial
+     *
+     * @since 0.1.0
+     */
+    public boolean isZero() {
+        return this.powers.length == 0;
+    }
+
+    /**
+     * Returns the coefficient of a power of <code>N</code>.
+     *
+     * @param power the exponent
+     * @return the coefficient, zero if the power does not occur
+     *
+     * @since 0.1.0
+     */
+    public Rational getCoefficient(final int power) {
+        final int k = Arrays.binarySearch(this.powers, power);
+        return k < 0 ? RATIONAL_ZERO : this.coefficients[k];
+    }
+
+    /**
+     * Returns <code>this + other</code>.
+     *
+     * @param other the other summand
+     * @return the sum
+     *
+     * @since 0.1.0
+     */
+    public ColourFactor add(final ColourFactor other) {
+        if (other.isZero()) {
+            return this;
+        }
+        if (this.isZero()) {
+            return other;
+        }
+        final Map<Integer, Rational> terms = new TreeMap<>();
+        for (int k = 0; k < this.powers.length; ++k) {
+            terms.put(this.powers[k], this.coefficients[k]);
+        }
+        for (int k = 0; k < other.powers.length; ++k) {
+            terms.merge(other.powers[k], other.coefficients[k],
+                Rational::add);
+        }
+        return of(terms);
+    }
+
+    /**
+     * Returns <code>this * other</code>.
+     *
+     * @param other the other factor
+     * @return the product
+     *
+     * @since 0.1.0
+     */
+    public ColourFactor multiply(final ColourFactor other) {
+        if (this == ONE) {
+            return other;
+        }
+        if (other == ONE) {
+            return this;
+        }
+        final Map<Integer, Rational> terms = new TreeMap<>();
+        for (int i = 0; i < this.powers.length; ++i) {
+            for (int j = 0; j < other.powers.length; ++j) {
+                terms.merge(this.powers[i] + other.powers[j],
+                    this.coefficients[i].multiply(other.coefficients[j]),
+                    Rational::add);
+            }
+        }
+        return of(terms);
+    }
+
+    /**
+     * Evaluates the polynomial for a number of colours.
+     *
+     * @param colours the number of colours, positive
+     * @return the value
+     *
+     * @since 0.1.0
+     */
+    public Rational evaluate(final int colours) {
+        final BigInteger n = BigInteger.valueOf(colours);
+        Rational sum = RATIONAL_ZERO;
+        for (int k = 0; k < this.powers.length; ++k) {
+            final int p = this.powers[k];
+            final Rational power = p >= 0
+                ? Rational.of(n.pow(p), BigInteger.ONE)
+                : Rational.of(BigInteger.ONE, n.pow(-p));
+            sum = sum.add(this.coefficients[k].multiply(power));
+        }
+        return sum;
+    }
+
+    /**
+     * Encodes this polynomial as text that {@link #decode} reads back,
+     * a list of <code>power:coefficient</code> pairs.
+     *
+     * @return the code
+     *
+     * @since 0.1.0
+     */
+    public String encode() {
+        if (this.isZero()) {
+            return "0";
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (int k = 0; k < this.powers.length; ++k) {
+            if (k > 0) {
+                sb.append(' ');
+            }
+            sb.append(this.powers[k]).append(':')
+                .append(this.coefficients[k]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Decodes a polynomial written by {@link #encode}.
+     *
+     * @param code the code
+     * @return the polynomial
+     * @throws NumberFormatException if the code is malformed
+     *
+     * @since 0.1.0
+     */
+    public static ColourFactor decode(final String code) {
+        final String s = code.trim();
+        if ("0".equals(s)) {
+            return ZERO;
+        }
+        final Map<Integer, Rational> terms = new TreeMap<>();
+        for (final String term : s.split(" +")) {
+            final int colon = term.indexOf(':');
+            if (colon < 0) {
+                throw new NumberFormatException("Malformed term " + term);
+            }
+            terms.merge(Integer.parseInt(term.substring(0, colon)),
+                Rational.parse(term.substring(colon + 1)), Rational::add);
+        }
+        return of(terms);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ColourFactor)) {
+            return false;
+        }
+        final ColourFactor other = (ColourFactor) obj;
+        return Arrays.equals(this.powers, other.powers)
+            && Arrays.equals(this.coefficients, other.coefficients);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(this.powers)
+            + Arrays.hashCode(this.coefficients);
+    }
+
+    @Override
+    public String toString() {
+        if (this.isZero()) {
+            return "0";
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (int k = this.powers.length - 1; k >= 0; --k) {
+            if (sb.length() > 0) {
+                sb.append(" + ");
+            }
+            sb.append(this.coefficients[k]);
+            if (this.powers[k] == 1) {
+                sb.append("*N");
+            } else if (this.powers[k] != 0) {
+                sb.append("*N^").append(this.powers[k]);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * ColourMatrix.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.colour;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.github.anyloop.finitefield.Rational;
+
+/**
+ * An immutable square matrix of colour factors, such as the scalar
+ * products <code>C_ij = sum over colours of c_i c_j^*</code> of the
+ * elements of a colour basis. The squared amplitude is
+ * <code>sum over i, j of A_i^* C_ij A_j</code>.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class ColourMatrix {
+
+    /**
+     * The first line of the file format.
+     */
+    private static final String HEADER = "# anyloop colour matrix 1";
+
+    /**
+     * The basis of which this is the matrix of scalar products.
+     */
+    private final ColourBasis basis;
+
+    /**
+     * The number of rows and columns.
+     */
+    private final int dimension;
+
+    /**
+     * The entries in row-major order.
+     */
+    private final ColourFactor[] entries;
+
+    /**
+     * Creates a matrix.
+     *
+     * @param theBasis the colour basis
+     * @param theDimension the number of rows and columns
+     * @param theEntries the entries in row-major order, not copied
+     */
+    ColourMatrix(
+            final ColourBasis theBasis,
+            final int theDimension,
+            final ColourFactor[] theEntries) {
+        this.basis = theBasis;
+        this.dimension = theDimension;
+        this.entries = theEntries;
+    }
+
+    /**
+     * Returns the colour basis.
+     *
+     * @return the basis
+     *
+     * @since 0.1.0
+     */
+    public ColourBasis getBasis() {
+        return this.basis;
+    }
+
+    /**
+     * Returns the number of rows and columns.
+     *
+     * @return the dimension
+     *
+     * @since 0.1.0
+     */
+    public int getDimension() {
+        return this.dimension;
+    }
+
+    /**
+     * Returns an entry.
+     *
+     * @param row the row
+     * @param column the column
+     * @return the entry
+     *
+     * @since 0.1.0
+     */
+    public ColourFactor get(final int row, final int column) {
+        return this.entries[row * this.dimension + column];
+    }
+
+    /**
+     * Evaluates the matrix for a number of colours.
+     *
+     * @param colours the number of colours, positive
+     * @return the entries as floating-point numbers
+     *
+     * @since 0.1.0
+     */
+    public double[][] evaluate(final int colours) {
+        final double[][] m = new double[this.dimension][this.dimension];
+        for (int i = 0; i < this.dimension; ++i) {
+            for (int j = 0; j < this.dimension; ++j) {
+                final Rational r = this.get(i, j).evaluate(colours);
+                m[i][j] = r.getNumerator().doubleValue()
+                    / r.getDenominator().doubleValue();
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Writes the matrix in the format read by {@link #load}.
+     *
+     * @param out the writer
+     * @throws IOException if the matrix cannot be written
+     *
+     * @since 0.1.0
+     */
+    public void write(final Writer out) throws IOException {
+        final BufferedWriter w = new BufferedWriter(out);
+        w.write(HEADER);
+        w.newLine();
+        w.write(this.basis.getName() + " " + this.dimension);
+        w.newLine();
+        for (final ColourFactor entry : this.entries) {
+            w.write(entry.encode());
+            w.newLine();
+        }
+        w.flush();
+    }
+
+    /**
+     * Reads a matrix written by {@link #write}.
+     *
+     * @param file the file
+     * @return the matrix
+     * @throws IOException if the file cannot be read or is malformed
+     *
+     * @since 0.1.0
+     */
+    public static ColourMatrix load(final Path file) throws IOException {
+        try (BufferedReader in =
+                Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(in.readLine())) {
+                throw new IOException(file + " is not a colour matrix");
+            }
+            final String line = in.readLine();
+            final String[] fields = line == null ? new String[0]
+                : line.trim().split(" ");
+            final ColourBasis basis = fields.length == 2
+                ? ColourBasis.forName(fields[0]) : null;
+            if (basis == null) {
+                throw new IOException("Malformed header in " + file);
+            }
+            final int n = Integer.parseInt(fields[1]);
+            final ColourFactor[] entries = new ColourFactor[n * n];
+            for (int k = 0; k < entries.length; ++k) {
+                final String entry = in.readLine();
+                if (entry == null) {
+                    throw new IOException("Truncated matrix in " + file);
+                }
+                entries[k] = ColourFactor.decode(entry);
+            }
+            return new ColourMatrix(basis, n, entries);
+        } catch (NumberFormatException | ArithmeticException ex) {
+            throw new IOException("Malformed entry in " + file, ex);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * ColourProduct.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.colour;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable product of colour lines.
+ *
+ * A closed line is a trace <code>Tr(T^a T^b ...)</code> of generators
+ * in the fundamental representation, written <code>Tr(a,b,...)</code>.
+ * An open line is a string of generators
+ * <code>(T^a T^b ...)_ij</code> running from the quark index
+ * <code>i</code> to the antiquark index <code>j</code>, written
+ * <code>T(a,b,...)[i,j]</code>; without generators it is the
+ * Kronecker delta. Gluon and quark indices are non-negative labels in
+ * separate name spaces.
+ *
+ * Traces are stored in their smallest cyclic rotation and the lines
+ * in a fixed order, so that equal products are equal objects.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class ColourProduct implements Comparable<ColourProduct> {
+
+    /**
+     * The empty product.
+     *
+     * @since 0.1.0
+     */
+    public static final ColourProduct ONE =
+        new ColourProduct(new ArrayList<>());
+
+    /**
+     * The lines, each encoded as
+     * <code>closed, quark, antiquark, length, gluons...</code>.
+     */
+    private final int[] code;
+
+    /**
+     * The start of each line in the code.
+     */
+    private final int[] offsets;
+
+    /**
+     * Creates a product in canonical form.
+     *
+     * @param lines the lines, which are rotated and sorted in place
+     */
+    ColourProduct(final List<Line> lines) {
+        final List<int[]> blocks = new ArrayList<>(lines.size());
+        int size = 0;
+        for (final Line line : lines) {
+            final int[] g = line.closed ? smallestRotation(line.gluons)
+                : line.gluons;
+            final int[] block = new int[4 + g.length];
+            block[0] = line.closed ? 1 : 0;
+            block[1] = line.closed ? 0 : line.start;
+            block[2] = line.closed ? 0 : line.end;
+            block[3] = g.length;
+            System.arraycopy(g, 0, block, 4, g.length);
+            blocks.add(block);
+            size += block.length;
+        }
+        blocks.sort(Arrays::compare);
+        this.code = new int[size];
+        this.offsets = new int[blocks.size()];
+        int pos = 0;
+        for (int l = 0; l < blocks.size(); ++l) {
+            this.offsets[l] = pos;
+            System.arraycopy(blocks.get(l), 0, this.code, pos,
+                blocks.get(l).length);
+            pos += blocks.get(l).length;
+        }
+    }
+
+    /**
+     * Returns the smallest cyclic rotation of a sequence.
+     *
+     * @param s the sequence
+     * @return a new array holding the rotation
+     */
+    static int[] smallestRotation(final int[] s) {
+        final int n = s.length;
+        int best = 0;
+        for (int start = 1; start < n; ++start) {
+            for (int k = 0; k < n; ++k) {
+                final int a = s[(start + k) % n];
+                final int b = s[(best + k) % n];
+                if (a != b) {
+                    if (a < b) {
+                        best = start;
+                    }
+                    break;
+                }
+            }
+        }
+        final int[] result = new int[n];
+        for (int k = 0; k < n; ++k) {
+            result[k] = s[(best + k) % n];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the lines for further processing.
+     *
+     * @return new line objects
+     */
+    List<Line> toLines() {
+        final List<Line> lines = new ArrayList<>(this.offsets.length);
+        for (int l = 0; l < this.offsets.length; ++l) {
+            lines.add(new Line(this.isClosed(l), this.getQuark(l),
+                this.getAntiquark(l), this.getGluons(l)));
+        }
+        return lines;
+    }
+
+    /**
+     * Returns the number of lines.
+     *
+     * @return the number of lines
+     *
+     * @since 0.1.0
+     */
+    public int getLineCount() {
+        return this.offsets.length;
+    }
+
+    /**
+     * Tells whether a line is a trace.
+     *
+     * @param line the index of the line
+     * @return <code>true</code> for a trace
+     *
+     * @since 0.1.0
+     */
+    public boolean isClosed(final int line) {
+        return this.code[this.offsets[line]] != 0;
+    }
+
+    /**
+     * Returns the quark index at which an open line starts.
+     *
+     * @param line the index of the line
+     * @return the quark index, zero for traces
+     *
+     * @since 0.1.0
+     */
+    public int getQuark(final int line) {
+        return this.code[this.offsets[line] + 1];
+    }
+
+    /**
+     * Returns the antiquark index at which an open line ends.
+     *
+     * @param line the index of the line
+     * @return the antiquark index, zero for traces
+     *
+     * @since 0.1.0
+     */
+    public int getAntiquark(final int line) {
+        return this.code[this.offsets[line] + 2];
+    }
+
+    /**
+     * Returns the gluon indices of the generators of a line.
+     *
+     * @param line the index of the line
+     * @return the gluon indices from left to right
+     *
+     * @since 0.1.0
+     */
+    public int[] getGluons(final int line) {
+        final int start = this.offsets[line] + 4;
+        return Arrays.copyOfRange(this.code, start,
+            start + this.code[this.offsets[line] + 3]);
+    }
+
+    @Override
+    public int compareTo(final ColourProduct other) {
+        return Arrays.compare(this.code, other.code);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return obj instanceof ColourProduct
+            && Arrays.equals(this.code, ((ColourProduct) obj).code);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.code);
+    }
+
+    @Override
+    public String toString() {
+        if (this.offsets.length == 0) {
+            return "1";
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (int l = 0; l < this.offsets.length; ++l) {
+            if (l > 0) {
+                sb.append('*');
+            }
+            final int[] g = this.getGluons(l);
+            if (this.isClosed(l)) {
+                sb.append("Tr(");
+            } else {
+                sb.append(g.length == 0 ? "delta" : "T(");
+            }
+            for (int k = 0; k < g.length; ++k) {
+                sb.append(k > 0 ? "," : "").append(g[k]);
+            }
+            if (this.isClosed(l) || g.length > 0) {
+                sb.append(')');
+            }
+            if (!this.isClosed(l)) {
+                sb.append('[').append(this.getQuark(l)).append(',')
+                    .append(this.getAntiquark(l)).append(']');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A line under construction.
+     */
+    static final class Line {
+        /**
+         * Tells whether the line is a trace.
+         */
+        final boolean closed;
+
+        /**
+         * The quark index of an open line.
+         */
+        final int start;
+
+        /**
+         * The antiquark index of an open line.
+         */
+        final int end;
+
+        /**
+         * The gluon indices.
+         */
+        final int[] gluons;
+
+        Line(
+                final boolean theClosed,
+                final int theStart,
+                final int theEnd,
+                final int[] theGluons) {
+            this.closed = theClosed;
+            this.start = theStart;
+            this.end = theEnd;
+            this.gluons = theGluons;
+        }
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * ColourSum.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.colour;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.github.anyloop.colour.ColourProduct.Line;
+import com.github.anyloop.finitefield.Rational;
+
+/**
+ * An immutable linear combination of {@link ColourProduct}s with
+ * coefficients in {@link ColourFactor}.
+ *
+ * The generators are normalized to <code>Tr(T^a T^b) = delta^ab</code>,
+ * and the structure constants enter as
+ * <code>Tr(T^a T^b T^c) - Tr(T^a T^c T^b)</code>, which is
+ * <code>i sqrt(2) f^abc</code> in the usual normalization. With these
+ * conventions all colour factors are real.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class ColourSum {
+
+    /**
+     * The sum zero.
+     *
+     * @since 0.1.0
+     */
+    public static final ColourSum ZERO = new ColourSum(new TreeMap<>());
+
+    /**
+     * The sum one.
+     *
+     * @since 0.1.0
+     */
+    public static final ColourSum ONE = scalar(ColourFactor.ONE);
+
+    /**
+     * The coefficient minus one.
+     */
+    private static final ColourFactor MINUS_ONE =
+        ColourFactor.monomial(Rational.of(-1, 1), 0);
+
+    /**
+     * The products, sorted.
+     */
+    private final ColourProduct[] products;
+
+    /**
+     * The coefficient of each product, never zero.
+     */
+    private final ColourFactor[] factors;
+
+    /**
+     * Creates a sum from its terms.
+     *
+     * @param terms the terms, zero coefficients are dropped
+     */
+    ColourSum(final Map<ColourProduct, ColourFactor> terms) {
+        terms.values().removeIf(ColourFactor::isZero);
+        this.products = new ColourProduct[terms.size()];
+        this.factors = new ColourFactor[terms.size()];
+        int t = 0;
+        for (final Map.Entry<ColourProduct, ColourFactor> e
+                : new TreeMap<>(terms).entrySet()) {
+            this.products[t] = e.getKey();
+            this.factors[t++] = e.getValue();
+        }
+    }
+
+    private static ColourSum single(final List<Line> lines) {
+        final Map<ColourProduct, ColourFactor> terms = new TreeMap<>();
+        terms.put(new ColourProduct(lines), ColourFactor.ONE);
+        return new ColourSum(terms);
+    }
+
+    private static int[] check(final int... labels) {
+        for (final int label : labels) {
+            if (label < 0) {
+                throw new IllegalArgumentException(
+                    "Colour index " + label + " is negative");
+            }
+        }
+        return labels.clone();
+    }
+
+    /**
+     * Returns a colour factor without colour indices.
+     *
+     * @param factor the factor
+     * @return the sum consisting of the factor only
+     *
+     * @since 0.1.0
+     */
+    public static ColourSum scalar(final ColourFactor factor) {
+        final Map<ColourProduct, ColourFactor> terms = new TreeMap<>();
+        terms.put(ColourProduct.ONE, factor);
+        return new ColourSum(terms);
+    }
+
+    /**
+     * Returns the trace of a string of generators.
+     *
+     * @param gluons the gluon indices of the generators
+     * @return <code>Tr(T^gluons[0] T^gluons[1] ...)</code>
+     *
+     * @since 0.1.0
+     */
+    public static ColourSum trace(final int... gluons) {
+        if (gluons.length == 0) {
+            return scalar(ColourFactor.N);
+        }
+        final List<Line> lines = new ArrayList<>();
+        lines.add(new Line(true, 0, 0, check(gluons)));
+        return single(lines);
+    }
+
+    /**
+     * Returns a string of generators between a quark and an antiquark
+     * index.
+     *
+     * @param quark the quark (row) index
+     * @param antiquark the antiquark (column) index
+     * @param gluons the gluon indices of the generators
+     * @return <code>(T^gluons[0] T^gluons[1] ...)_quark,antiquark</code>
+     *
+     * @since 0.1.0
+     */
+    public static ColourSum line(
+            final int quark,
+            final int antiquark,
+            final int... gluons) {
+        check(quark, antiquark);
+        final List<Line> lines = new ArrayList<>();
+        lines.add(new Line(false, quark, antiquark, check(gluons)));
+        return single(lines);
+    }
+
+    /**
+     * Returns a structure constant.
+     *
+     * @param a the first gluon index
+     * @param b the second gluon index
+     * @param c the third gluon index
+     * @return <code>Tr(T^a T^b T^c) - Tr(T^a T^c T^b)</code>
+     *
+     * @since 0.1.0
+     */
+    public static ColourSum structureConstant(
+            final int a,
+            final int b,
+            final int c) {
+        return trace(a, b, c).add(trace(a, c, b).scale(MINUS_ONE));
+    }
+
+    /**
+     * Returns the number of terms.
+     *
+     * @return the number of terms
+     *
+     * @since 0.1.0
+     */
+    public int getTermCount() {
+        return this.products.length;
+    }
+
+    /**
+     * Returns the product of a term.
+     *
+     * @param term the index of the term
+     * @return the product of colour lines
+     *
+     * @since 0.1.0
+     */
+    public ColourProduct getProduct(final int term) {
+        return this.products[term];
+    }
+
+    /**
+     * Returns the coefficient of a term.
+     *
+     * @param term the index of the term
+     * @return the coefficient
+     *
+     * @since 0.1.0
+     */
+    public ColourFactor getFactor(final int term) {
+        return this.factors[term];
+    }
+
+    /**
+     * Returns the coefficient of the term without colour lines.
+     *
+     * @return the scalar part
+     *
+     * @since 0.1.0
+     */
+    public ColourFactor getScalar() {
+        return this.products.length > 0
+            && this.products[0].getLineCount() == 0
+            ? this.factors[0] : ColourFactor.ZERO;
+    }
+
+    /**
+     * Returns <code>this + other</code>.
+     *
+     * @param other the other summand
+     * @return the sum
+     *
+     * @since 0.1.0
+     */
+    public ColourSum add(final ColourSum other) {
+        final Map<ColourProduct, ColourFactor> terms = this.toMap();
+        for (int t = 0; t < other.products.length; ++t) {
+            terms.merge(other.products[t], other.factors[t],
+                ColourFactor::add);
+        }
+        return new ColourSum(terms);
+    }
+
+    /**
+     * Multiplies every coefficient by a factor.
+     *
+     * @param factor the factor
+     * @return the scaled sum
+     *
+     * @since 0.1.0
+     */
+    public ColourSum scale(final ColourFactor factor) {
+        final Map<ColourProduct, ColourFactor> terms = new TreeMap<>();
+        for (int t = 0; t < this.products.length; ++t) {
+            terms.put(this.products[t], this.factors[t].multiply(factor));
+        }
+        return new ColourSum(terms);
+    }
+
+    /**
+     * Returns <code>this * other</code> without contracting indices.
+     * Use {@link ColourAlgebra#reduce} to contract the indices which
+     * occur twice.
+     *
+     * @param other the other factor
+     * @return the product
+     *
+     * @since 0.1.0
+     */
+    public ColourSum multiply(final ColourSum other) {
+        final Map<ColourProduct, ColourFactor> terms = new TreeMap<>();
+        for (int s = 0; s < this.products.length; ++s) {
+            for (int t = 0; t < other.products.length; ++t) {
+                final List<Line> lines = this.products[s].toLines();
+                lines.addAll(other.products[t].toLines());
+                terms.merge(new ColourProduct(lines),
+                    this.factors[s].multiply(other.factors[t]),
+                    ColourFactor::add);
+            }
+        }
+        return new ColourSum(terms);
+    }
+
+    /**
+     * Returns the complex conjugate. Since the generators are
+     * hermitian, this reverses every line and swaps the quark and the
+     * antiquark index of open lines.
+     *
+     * @return the conjugate
+     *
+     * @since 0.1.0
+     */
+    public ColourSum conjugate() {
+        final Map<ColourProduct, ColourFactor> terms = new TreeMap<>();
+        for (int t = 0; t < this.products.length; ++t) {
+            final List<Line> lines = new ArrayList<>();
+            for (final Line line : this.products[t].toLines()) {
+                final int n = line.gluons.length;
+                final int[] reversed = new int[n];
+                for (int k = 0; k < n; ++k) {
+                    reversed[k] = line.gluons[n - 1 - k];
+                }
+                lines.add(new Line(line.closed, line.end, line.start,
+                    reversed));
+            }
+            terms.put(new ColourProduct(lines), this.factors[t]);
+        }
+        return new ColourSum(terms);
+    }
+
+    private Map<ColourProduct, ColourFactor> toMap() {
+        final Map<ColourProduct, ColourFactor> terms = new TreeMap<>();
+        for (int t = 0; t < this.products.length; ++t) {
+            terms.put(this.products[t], this.factors[t]);
+        }
+        return terms;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ColourSum)) {
+            return false;
+        }
+        final ColourSum other = (ColourSum) obj;
+        return Arrays.equals(this.products, other.products)
+            && Arrays.equals(this.factors, other.factors);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(this.products)
+            + Arrays.hashCode(this.factors);
+    }
+
+    @Override
+    public String toString() {
+        if (this.products.length == 0) {
+            return "0";
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (int t = 0; t < this.products.length; ++t) {
+            if (t > 0) {
+                sb.append(" + ");
+            }
+            sb.append('(').append(this.factors[t]).append(")*")
+                .append(this.products[t]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * package-info.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+/**
+ * This package reduces <code>SU(N)</code> colour factors to the trace
+ * or colour-flow basis and computes the colour matrices needed to
+ * square colour-decomposed amplitudes.
+ *
+ * Colour factors are linear combinations of products of traces and
+ * strings of generators. All gluon indices which occur twice are
+ * contracted by the Fierz identity. Products are cached under a
+ * canonical form in which the contracted indices are renamed, so that
+ * structures repeating across diagrams or matrix entries are reduced
+ * only once, and colour matrices can be kept on disk across runs.
+ */
+package com.github.anyloop.colour;
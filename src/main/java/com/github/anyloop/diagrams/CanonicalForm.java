@@ -0,0 +1,206 @@
+/*
+ * CanonicalForm.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.diagrams;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The canonical form of a diagram together with the order of its
+ * automorphism group.
+ *
+ * Two diagrams have equal canonical forms if and only if they are
+ * isomorphic with external legs fixed, so canonical forms can be used
+ * as keys of a hash index.
+ *
+ * @since 0.1.0
+ */
+final class CanonicalForm {
+
+    /**
+     * Number of bits reserved for the field of an edge in the encoding.
+     */
+    static final int FIELD_BITS = 21;
+
+    /**
+     * Mask for the field or node of an edge in the encoding.
+     */
+    static final long MASK = (1L << FIELD_BITS) - 1;
+
+    /**
+     * The number of external legs.
+     */
+    private final int externalCount;
+
+    /**
+     * The number of internal vertices.
+     */
+    private final int vertexCount;
+
+    /**
+     * The vertex types in canonical order followed by the sorted edge
+     * codes.
+     */
+    private final long[] code;
+
+    /**
+     * The number of automorphisms of the diagram, counting the
+     * permutations of vertices as well as of equivalent edges.
+     */
+    private final long symmetryFactor;
+
+    /**
+     * The cached hash code.
+     */
+    private final int hash;
+
+    /**
+     * Creates a canonical form.
+     *
+     * @param theExternalCount the number of external legs
+     * @param theVertexCount the number of internal vertices
+     * @param theCode the canonical encoding
+     * @param theSymmetryFactor the number of automorphisms
+     */
+    CanonicalForm(
+            final int theExternalCount,
+            final int theVertexCount,
+            final long[] theCode,
+            final long theSymmetryFactor) {
+        this.externalCount = theExternalCount;
+        this.vertexCount = theVertexCount;
+        this.code = theCode;
+        this.symmetryFactor = theSymmetryFactor;
+        this.hash = Arrays.hashCode(theCode);
+    }
+
+    /**
+     * Encodes an edge.
+     *
+     * @param from the start node
+     * @param to the end node
+     * @param field the field flowing from start to end
+     * @return the edge code
+     */
+    static long encodeEdge(final int from, final int to, final int field) {
+        return ((long) from << (2 * FIELD_BITS))
+            | ((long) to << FIELD_BITS)
+            | field;
+    }
+
+    /**
+     * Returns the symmetry factor, i.e. the order of the automorphism
+     * group of the diagram.
+     *
+     * @return the symmetry factor
+     */
+    long getSymmetryFactor() {
+        return this.symmetryFactor;
+    }
+
+    /**
+     * Reconstructs the diagram in canonical labelling.
+     *
+     * @param loops the number of loops
+     * @return the canonically labelled diagram
+     */
+    Diagram toDiagram(final int loops) {
+        final int edges = this.code.length - this.vertexCount;
+        final int[] types = new int[this.vertexCount];
+        final int[] from = new int[edges];
+        final int[] to = new int[edges];
+        final int[] fields = new int[edges];
+        for (int v = 0; v < this.vertexCount; ++v) {
+            types[v] = (int) this.code[v];
+        }
+        for (int e = 0; e < edges; ++e) {
+            final long c = this.code[this.vertexCount + e];
+            from[e] = (int) (c >>> (2 * FIELD_BITS));
+            to[e] = (int) ((c >>> FIELD_BITS) & MASK);
+            fields[e] = (int) (c & MASK);
+        }
+        return new Diagram(this.externalCount, loops, types,
+            from, to, fields, this.symmetryFactor);
+    }
+
+    /**
+     * Writes the canonical form in the binary format read by
+     * {@link #read}.
+     *
+     * @param out the destination
+     * @throws IOException if the form cannot be written
+     */
+    void write(final DataOutput out) throws IOException {
+        out.writeInt(this.externalCount);
+        out.writeInt(this.vertexCount);
+        out.writeLong(this.symmetryFactor);
+        out.writeInt(this.code.length);
+        for (final long c : this.code) {
+            out.writeLong(c);
+        }
+    }
+
+    /**
+     * Reads a canonical form written by {@link #write}.
+     *
+     * @param in the source
+     * @return the canonical form
+     * @throws IOException if the form cannot be read or is malformed
+     */
+    static CanonicalForm read(final DataInput in) throws IOException {
+        final int externals = in.readInt();
+        final int vertices = in.readInt();
+        final long symmetry = in.readLong();
+        final int length = in.readInt();
+        if (externals < 0 || vertices < 0 || length < vertices) {
+            throw new IOException("Malformed diagram");
+        }
+        final long[] code = new long[length];
+        for (int i = 0; i < length; ++i) {
+            code[i] = in.readLong();
+        }
+        return new CanonicalForm(externals, vertices, code, symmetry);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof CanonicalForm)) {
+            return false;
+        }
+        final CanonicalForm form = (CanonicalForm) other;
+        return this.hash == form.hash
+            && this.externalCount == form.externalCount
+            && Arrays.equals(this.code, form.code);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+}
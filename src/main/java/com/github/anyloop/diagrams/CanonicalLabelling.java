@@ -0,0 +1,591 @@
+/*
+ * CanonicalLabelling.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.diagrams;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.github.anyloop.model.Model;
+
+/**
+ * Computes the canonical form of a diagram.
+ *
+ * A diagram is treated as a multigraph whose nodes are coloured by
+ * vertex type and whose edges are coloured by the field they carry;
+ * the external legs are fixed, i.e. each of them has a colour of its
+ * own. The canonical labelling is found by individualisation and
+ * refinement: starting from the partition of nodes by colour, cells
+ * are split by the multiset of (neighbour cell, edge field) pairs of
+ * their nodes until the partition is equitable. If cells with more
+ * than one node remain, each node of the first such cell is
+ * individualised in turn and the search continues. Every discrete
+ * partition yields a labelling; the canonical one is the labelling
+ * with the smallest encoding.
+ *
+ * Two leaves with the same encoding differ by an automorphism, which
+ * is recorded. A node of the search tree skips a child lying in the
+ * same orbit as one explored before, under the automorphisms found so
+ * far which fix the nodes individualised above it, since both
+ * subtrees yield the same encodings. Likewise, once a leaf turns out
+ * to be equivalent to the first or the best leaf, the rest of the
+ * subtree in which their paths part is skipped. This keeps the search
+ * of highly symmetric graphs, such as multi-loop vacuum topologies,
+ * from growing with the order of their automorphism group.
+ *
+ * The number of vertex automorphisms is the product, over the nodes
+ * on the path to the first leaf, of the size of the orbit of the
+ * child on that path under the automorphisms fixing the nodes
+ * individualised above. Multiplying it by the permutations of parallel
+ * edges and the reflections of self-conjugate self-loops gives the
+ * symmetry factor of the diagram.
+ *
+ * With external legs fixed, refinement alone is almost always enough
+ * to reach a discrete partition, so the search tree rarely has more
+ * than a handful of leaves.
+ *
+ * @since 0.1.0
+ */
+final class CanonicalLabelling {
+
+    /**
+     * The diagram to be labelled.
+     */
+    private final Diagram diagram;
+
+    /**
+     * The model of the diagram.
+     */
+    private final Model model;
+
+    /**
+     * The number of nodes of the diagram.
+     */
+    private final int nodes;
+
+    /**
+     * Start of the adjacency list of each node (plus one sentinel).
+     */
+    private final int[] adjStart;
+
+    /**
+     * Neighbour of each adjacency entry.
+     */
+    private final int[] adjNode;
+
+    /**
+     * Field flowing from the node to the neighbour of each adjacency
+     * entry.
+     */
+    private final int[] adjField;
+
+    /**
+     * Position of each node in the current leaf.
+     */
+    private final int[] position;
+
+    /**
+     * Encoding of the current leaf.
+     */
+    private final long[] current;
+
+    /**
+     * Returned by the search if no subtree is to be skipped.
+     */
+    private static final int NO_JUMP = Integer.MAX_VALUE;
+
+    /**
+     * The nodes individualised on the way to the current node of the
+     * search tree.
+     */
+    private final int[] path;
+
+    /**
+     * Encoding of the first leaf.
+     */
+    private long[] first;
+
+    /**
+     * The nodes of the first leaf in canonical order.
+     */
+    private int[] firstOrder;
+
+    /**
+     * The path to the first leaf.
+     */
+    private int[] firstPath;
+
+    /**
+     * Smallest encoding found so far.
+     */
+    private long[] best;
+
+    /**
+     * The nodes of the leaf with the smallest encoding in canonical
+     * order.
+     */
+    private int[] bestOrder;
+
+    /**
+     * The path to the leaf with the smallest encoding.
+     */
+    private int[] bestPath;
+
+    /**
+     * The automorphisms found, each mapping every node to its image.
+     */
+    private final List<int[]> automorphisms = new ArrayList<>();
+
+    /**
+     * Prepares the adjacency lists of a diagram.
+     *
+     * @param theDiagram the diagram
+     * @param theModel its model
+     */
+    private CanonicalLabelling(final Diagram theDiagram, final Model theModel) {
+        this.diagram = theDiagram;
+        this.model = theModel;
+        this.nodes = theDiagram.getNodeCount();
+
+        final int edges = theDiagram.getEdgeCount();
+        this.adjStart = new int[this.nodes + 1];
+        for (int e = 0; e < edges; ++e) {
+            ++this.adjStart[theDiagram.getEdgeFrom(e) + 1];
+            ++this.adjStart[theDiagram.getEdgeTo(e) + 1];
+        }
+        for (int n = 0; n < this.nodes; ++n) {
+            this.adjStart[n + 1] += this.adjStart[n];
+        }
+        this.adjNode = new int[2 * edges];
+        this.adjField = new int[2 * edges];
+        final int[] fill = Arrays.copyOf(this.adjStart, this.nodes);
+        for (int e = 0; e < edges; ++e) {
+            final int a = theDiagram.getEdgeFrom(e);
+            final int b = theDiagram.getEdgeTo(e);
+            final int f = theDiagram.getEdgeField(e);
+            this.adjNode[fill[a]] = b;
+            this.adjField[fill[a]++] = f;
+            this.adjNode[fill[b]] = a;
+            this.adjField[fill[b]++] = theModel.getConjugate(f);
+        }
+
+        this.position = new int[this.nodes];
+        this.path = new int[this.nodes];
+        this.current = new long[theDiagram.getVertexCount() + edges];
+    }
+
+    /**
+     * Computes the canonical form of a diagram.
+     *
+     * @param diagram the diagram
+     * @param model the model of the diagram
+     * @return the canonical form including the symmetry factor
+     */
+    static CanonicalForm compute(final Diagram diagram, final Model model) {
+        final CanonicalLabelling labelling =
+            new CanonicalLabelling(diagram, model);
+
+        final int ext = diagram.getExternalCount();
+        final int vertices = diagram.getVertexCount();
+        final int[] order = new int[labelling.nodes];
+        final int[] cellOf = new int[labelling.nodes];
+        for (int i = 0; i < ext; ++i) {
+            order[i] = i;
+            cellOf[i] = i;
+        }
+
+        // initial cells: internal vertices grouped by type
+        final Integer[] sorted = new Integer[vertices];
+        for (int v = 0; v < vertices; ++v) {
+            sorted[v] = v;
+        }
+        Arrays.sort(sorted, (a, b) -> Integer.compare(
+            diagram.getVertexType(a), diagram.getVertexType(b)));
+        int cell = ext;
+        for (int p = 0; p < vertices; ++p) {
+            if (p > 0 && diagram.getVertexType(sorted[p])
+                    != diagram.getVertexType(sorted[p - 1])) {
+                cell = ext + p;
+            }
+            order[ext + p] = ext + sorted[p];
+            cellOf[ext + sorted[p]] = cell;
+        }
+
+        labelling.search(order, cellOf, 0);
+        return new CanonicalForm(ext, vertices, labelling.best,
+            labelling.countAutomorphisms() * edgeSymmetry(diagram, model));
+    }
+
+    /**
+     * Explores the search tree below the given partition.
+     *
+     * @param order the nodes in cell order
+     * @param cellOf the start position of the cell of each node
+     * @param depth the number of nodes individualised so far
+     * @return the depth of the node of the search tree at which the
+     *         search is to continue, or {@link #NO_JUMP}
+     */
+    private int search(final int[] order, final int[] cellOf,
+            final int depth) {
+        this.refine(order, cellOf);
+
+        int target = 0;
+        while (target < this.nodes - 1
+                && cellOf[order[target + 1]] != target) {
+            ++target;
+        }
+        if (target >= this.nodes - 1) {
+            return this.leaf(order, depth);
+        }
+        int end = target + 1;
+        while (end < this.nodes && cellOf[order[end]] == target) {
+            ++end;
+        }
+
+        final int[] explored = new int[end - target];
+        int count = 0;
+        for (int i = target; i < end; ++i) {
+            if (this.inOrbit(order[i], explored, count, depth)) {
+                continue;
+            }
+            explored[count++] = order[i];
+            final int[] o = order.clone();
+            final int[] c = cellOf.clone();
+            o[i] = o[target];
+            o[target] = order[i];
+            c[order[i]] = target;
+            for (int j = target + 1; j < end; ++j) {
+                c[o[j]] = target + 1;
+            }
+            this.path[depth] = order[i];
+            final int jump = this.search(o, c, depth + 1);
+            if (jump < depth) {
+                return jump;
+            }
+        }
+        return NO_JUMP;
+    }
+
+    /**
+     * Checks whether a node lies in the orbit of one of the given
+     * nodes under the automorphisms which fix the current path.
+     *
+     * @param node the node
+     * @param others the nodes
+     * @param count the number of nodes
+     * @param depth the length of the current path
+     * @return <code>true</code> if the node is in one of their orbits
+     */
+    private boolean inOrbit(
+            final int node,
+            final int[] others,
+            final int count,
+            final int depth) {
+        if (count == 0 || this.automorphisms.isEmpty()) {
+            return false;
+        }
+        final boolean[] orbit = this.orbit(node, this.path, depth);
+        for (int k = 0; k < count; ++k) {
+            if (orbit[others[k]]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Computes the orbit of a node under the automorphisms found which
+     * fix the first nodes of a path.
+     *
+     * @param node the node
+     * @param fixed the path
+     * @param depth the number of nodes of the path to be fixed
+     * @return the membership of each node in the orbit
+     */
+    private boolean[] orbit(
+            final int node,
+            final int[] fixed,
+            final int depth) {
+        final List<int[]> group = new ArrayList<>();
+        for (final int[] gamma : this.automorphisms) {
+            boolean fixes = true;
+            for (int d = 0; d < depth && fixes; ++d) {
+                fixes = gamma[fixed[d]] == fixed[d];
+            }
+            if (fixes) {
+                group.add(gamma);
+            }
+        }
+        final boolean[] orbit = new boolean[this.nodes];
+        final int[] stack = new int[this.nodes];
+        int top = 0;
+        orbit[node] = true;
+        stack[top++] = node;
+        while (top > 0) {
+            final int n = stack[--top];
+            for (final int[] gamma : group) {
+                if (!orbit[gamma[n]]) {
+                    orbit[gamma[n]] = true;
+                    stack[top++] = gamma[n];
+                }
+            }
+        }
+        return orbit;
+    }
+
+    /**
+     * Counts the vertex automorphisms as the product of the orbit
+     * sizes along the path to the first leaf.
+     *
+     * @return the order of the automorphism group of the nodes
+     */
+    private long countAutomorphisms() {
+        long count = 1;
+        for (int d = 0; d < this.firstPath.length; ++d) {
+            int size = 0;
+            for (final boolean b
+                    : this.orbit(this.firstPath[d], this.firstPath, d)) {
+                if (b) {
+                    ++size;
+                }
+            }
+            count *= size;
+        }
+        return count;
+    }
+
+    /**
+     * Refines a partition until it is equitable.
+     *
+     * @param order the nodes in cell order
+     * @param cellOf the start position of the cell of each node
+     */
+    private void refine(final int[] order, final int[] cellOf) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int start = 0;
+            while (start < this.nodes) {
+                int end = start + 1;
+                while (end < this.nodes && cellOf[order[end]] == start) {
+                    ++end;
+                }
+                if (end - start > 1 && this.split(order, cellOf, start, end)) {
+                    changed = true;
+                }
+                start = end;
+            }
+        }
+    }
+
+    /**
+     * Splits a cell by the neighbourhood signatures of its nodes.
+     *
+     * @param order the nodes in cell order
+     * @param cellOf the start position of the cell of each node
+     * @param start the first position of the cell
+     * @param end the position after the cell
+     * @return <code>true</code> if the cell was split
+     */
+    private boolean split(
+            final int[] order,
+            final int[] cellOf,
+            final int start,
+            final int end) {
+        final int size = end - start;
+        final long[][] signatures = new long[size][];
+        final Integer[] index = new Integer[size];
+        for (int i = 0; i < size; ++i) {
+            final int n = order[start + i];
+            final long[] sig =
+                new long[this.adjStart[n + 1] - this.adjStart[n]];
+            for (int k = 0; k < sig.length; ++k) {
+                final int a = this.adjStart[n] + k;
+                sig[k] = ((long) cellOf[this.adjNode[a]] << 32)
+                    | this.adjField[a];
+            }
+            Arrays.sort(sig);
+            signatures[i] = sig;
+            index[i] = i;
+        }
+        Arrays.sort(index,
+            (a, b) -> Arrays.compare(signatures[a], signatures[b]));
+        if (Arrays.equals(signatures[index[0]], signatures[index[size - 1]])) {
+            return false;
+        }
+
+        final int[] nodesOfCell = new int[size];
+        for (int i = 0; i < size; ++i) {
+            nodesOfCell[i] = order[start + i];
+        }
+        int cell = start;
+        for (int i = 0; i < size; ++i) {
+            if (i > 0 && !Arrays.equals(
+                    signatures[index[i]], signatures[index[i - 1]])) {
+                cell = start + i;
+            }
+            final int n = nodesOfCell[index[i]];
+            order[start + i] = n;
+            cellOf[n] = cell;
+        }
+        return true;
+    }
+
+    /**
+     * Encodes the labelling given by a discrete partition, keeps track
+     * of the smallest encoding and records the automorphism to an
+     * equivalent leaf.
+     *
+     * @param order the nodes in canonical order
+     * @param depth the length of the path to the leaf
+     * @return the length of the common path with an equivalent leaf,
+     *         or {@link #NO_JUMP}
+     */
+    private int leaf(final int[] order, final int depth) {
+        final int ext = this.diagram.getExternalCount();
+        final int vertices = this.diagram.getVertexCount();
+        for (int p = 0; p < this.nodes; ++p) {
+            this.position[order[p]] = p;
+        }
+        for (int p = 0; p < vertices; ++p) {
+            this.current[p] = this.diagram.getVertexType(order[ext + p] - ext);
+        }
+        for (int e = 0; e < this.diagram.getEdgeCount(); ++e) {
+            int a = this.position[this.diagram.getEdgeFrom(e)];
+            int b = this.position[this.diagram.getEdgeTo(e)];
+            int f = this.diagram.getEdgeField(e);
+            if (a > b) {
+                final int t = a;
+                a = b;
+                b = t;
+                f = this.model.getConjugate(f);
+            } else if (a == b) {
+                f = Math.min(f, this.model.getConjugate(f));
+            }
+            this.current[vertices + e] = CanonicalForm.encodeEdge(a, b, f);
+        }
+        Arrays.sort(this.current, vertices, this.current.length);
+
+        if (this.first == null) {
+            this.first = this.current.clone();
+            this.firstOrder = order;
+            this.firstPath = Arrays.copyOf(this.path, depth);
+            this.best = this.first;
+            this.bestOrder = this.firstOrder;
+            this.bestPath = this.firstPath;
+            return NO_JUMP;
+        }
+        final int cmp = Arrays.compare(this.current, this.best);
+        if (cmp < 0) {
+            this.best = this.current.clone();
+            this.bestOrder = order;
+            this.bestPath = Arrays.copyOf(this.path, depth);
+            return NO_JUMP;
+        }
+        if (cmp == 0) {
+            return this.equivalent(this.bestOrder, this.bestPath,
+                order, depth);
+        }
+        if (this.first != this.best
+                && Arrays.equals(this.current, this.first)) {
+            return this.equivalent(this.firstOrder, this.firstPath,
+                order, depth);
+        }
+        return NO_JUMP;
+    }
+
+    /**
+     * Records the automorphism mapping an earlier leaf to the current
+     * one with the same encoding.
+     *
+     * @param otherOrder the nodes of the earlier leaf in canonical order
+     * @param otherPath the path to the earlier leaf
+     * @param order the nodes of the current leaf in canonical order
+     * @param depth the length of the path to the current leaf
+     * @return the length of the common path of both leaves
+     */
+    private int equivalent(
+            final int[] otherOrder,
+            final int[] otherPath,
+            final int[] order,
+            final int depth) {
+        final int[] gamma = new int[this.nodes];
+        for (int p = 0; p < this.nodes; ++p) {
+            gamma[otherOrder[p]] = order[p];
+        }
+        this.automorphisms.add(gamma);
+        int common = 0;
+        while (common < depth && common < otherPath.length
+                && otherPath[common] == this.path[common]) {
+            ++common;
+        }
+        return common;
+    }
+
+    /**
+     * Counts the automorphisms which fix all nodes: permutations of
+     * parallel propagators carrying the same field in the same
+     * direction, and reflections of self-loops of self-conjugate
+     * fields.
+     *
+     * @param diagram the diagram
+     * @param model its model
+     * @return the number of edge automorphisms
+     */
+    private static long edgeSymmetry(final Diagram diagram, final Model model) {
+        final int ext = diagram.getExternalCount();
+        final long[] codes = new long[diagram.getEdgeCount() - ext];
+        for (int e = ext; e < diagram.getEdgeCount(); ++e) {
+            int a = diagram.getEdgeFrom(e);
+            int b = diagram.getEdgeTo(e);
+            int f = diagram.getEdgeField(e);
+            if (a > b) {
+                final int t = a;
+                a = b;
+                b = t;
+                f = model.getConjugate(f);
+            } else if (a == b) {
+                f = Math.min(f, model.getConjugate(f));
+            }
+            codes[e - ext] = CanonicalForm.encodeEdge(a, b, f);
+        }
+        Arrays.sort(codes);
+
+        long factor = 1;
+        int run = 0;
+        for (int i = 0; i < codes.length; ++i) {
+            run = (i > 0 && codes[i] == codes[i - 1]) ? run + 1 : 1;
+            factor *= run;
+            final long c = codes[i];
+            final int from = (int) (c >>> (2 * CanonicalForm.FIELD_BITS));
+            final int to = (int) ((c >>> CanonicalForm.FIELD_BITS)
+                & CanonicalForm.MASK);
+            final int f = (int) (c & CanonicalForm.MASK);
+            if (from == to && model.getConjugate(f) == f) {
+                factor *= 2;
+            }
+        }
+        return factor;
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * Diagram.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.diagrams;
+
+import java.util.Arrays;
+
+import com.github.anyloop.model.Model;
+
+/**
+ * An immutable Feynman diagram.
+ *
+ * The nodes of the diagram are numbered such that the external legs
+ * come first (<code>0 .. E-1</code>), followed by the internal
+ * vertices (<code>E .. E+V-1</code>). Each edge carries a field which
+ * flows from its first node to its second node. The first
+ * <code>E</code> edges are the external legs, edge <code>i</code>
+ * connecting external node <code>i</code> to an internal vertex;
+ * all other edges are propagators.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class Diagram {
+
+    /**
+     * The number of external legs.
+     */
+    private final int externalCount;
+
+    /**
+     * The number of loops.
+     */
+    private final int loops;
+
+    /**
+     * The vertex type of each internal vertex.
+     */
+    private final int[] vertexTypes;
+
+    /**
+     * The node from which each edge starts.
+     */
+    private final int[] edgeFrom;
+
+    /**
+     * The node at which each edge ends.
+     */
+    private final int[] edgeTo;
+
+    /**
+     * The field flowing along each edge.
+     */
+    private final int[] edgeFields;
+
+    /**
+     * The order of the automorphism group of the diagram.
+     */
+    private final long symmetryFactor;
+
+    /**
+     * Creates a diagram. The arrays are taken over without copying.
+     *
+     * @param theExternalCount the number of external legs
+     * @param theLoops the number of loops
+     * @param theVertexTypes the vertex type per internal vertex
+     * @param theEdgeFrom the start node per edge
+     * @param theEdgeTo the end node per edge
+     * @param theEdgeFields the field per edge
+     * @param theSymmetryFactor the order of the automorphism group or
+     *        zero if it is not known
+     */
+    Diagram(
+            final int theExternalCount,
+            final int theLoops,
+            final int[] theVertexTypes,
+            final int[] theEdgeFrom,
+            final int[] theEdgeTo,
+            final int[] theEdgeFields,
+            final long theSymmetryFactor) {
+        this.externalCount = theExternalCount;
+        this.loops = theLoops;
+        this.vertexTypes = theVertexTypes;
+        this.edgeFrom = theEdgeFrom;
+        this.edgeTo = theEdgeTo;
+        this.edgeFields = theEdgeFields;
+        this.symmetryFactor = theSymmetryFactor;
+    }
+
+    /**
+     * Returns the number of external legs.
+     *
+     * @return the number of external legs
+     *
+     * @since 0.1.0
+     */
+    public int getExternalCount() {
+        return this.externalCount;
+    }
+
+    /**
+     * Returns the number of loops.
+     *
+     * @return the number of loops
+     *
+     * @since 0.1.0
+     */
+    public int getLoops() {
+        return this.loops;
+    }
+
+    /**
+     * Returns the number of internal vertices.
+     *
+     * @return the number of internal vertices
+     *
+     * @since 0.1.0
+     */
+    public int getVertexCount() {
+        return this.vertexTypes.length;
+    }
+
+    /**
+     * Returns the number of nodes, i.e. external legs plus internal
+     * vertices.
+     *
+     * @return the number of nodes
+     *
+     * @since 0.1.0
+     */
+    public int getNodeCount() {
+        return this.externalCount + this.vertexTypes.length;
+    }
+
+    /**
+     * Returns the vertex type of an internal vertex.
+     *
+     * @param vertex the index of the vertex, starting at zero
+     * @return the vertex type ID of the model
+     *
+     * @since 0.1.0
+     */
+    public int getVertexType(final int vertex) {
+        return this.vertexTypes[vertex];
+    }
+
+    /**
+     * Returns the number of edges, i.e. external legs plus
+     * propagators.
+     *
+     * @return the number of edges
+     *
+     * @since 0.1.0
+     */
+    public int getEdgeCount() {
+        return this.edgeFrom.length;
+    }
+
+    /**
+     * Returns the node at which an edge starts.
+     *
+     * @param edge the index of the edge
+     * @return the start node
+     *
+     * @since 0.1.0
+     */
+    public int getEdgeFrom(final int edge) {
+        return this.edgeFrom[edge];
+    }
+
+    /**
+     * Returns the node at which an edge ends.
+     *
+     * @param edge the index of the edge
+     * @return the end node
+     *
+     * @since 0.1.0
+     */
+    public int getEdgeTo(final int edge) {
+        return this.edgeTo[edge];
+    }
+
+    /**
+     * Returns the field flowing along an edge.
+     *
+     * @param edge the index of the edge
+     * @return the field ID
+     *
+     * @since 0.1.0
+     */
+    public int getEdgeField(final int edge) {
+        return this.edgeFields[edge];
+    }
+
+    /**
+     * Returns the symmetry factor <code>S</code> of the diagram, which
+     * contributes with a weight of <code>1/S</code>. It is the number
+     * of permutations of vertices and propagators, keeping the external
+     * legs fixed, which map the diagram onto itself.
+     *
+     * @return the symmetry factor
+     *
+     * @since 0.1.0
+     */
+    public long getSymmetryFactor() {
+        return this.symmetryFactor;
+    }
+
+    /**
+     * Tells whether the diagram is one-particle irreducible, i.e.
+     * whether it stays connected when any propagator is cut.
+     *
+     * @return <code>true</code> if the diagram is 1PI
+     *
+     * @since 0.1.0
+     */
+    public boolean isOnePI() {
+        for (int e = this.externalCount; e < this.edgeFrom.length; ++e) {
+            if (this.countExternalBehindBridge(e) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tells whether the diagram contains a tadpole, i.e. a propagator
+     * which, when cut, separates a part without external legs.
+     *
+     * @return <code>true</code> if the diagram contains a tadpole
+     *
+     * @since 0.1.0
+     */
+    public boolean hasTadpole() {
+        for (int e = this.externalCount; e < this.edgeFrom.length; ++e) {
+            if (this.countExternalBehindBridge(e) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells whether the diagram contains a self-energy insertion on an
+     * external leg, i.e. a propagator which, when cut, separates a part
+     * with exactly one external leg.
+     *
+     * @return <code>true</code> if an external leg is dressed
+     *
+     * @since 0.1.0
+     */
+    public boolean hasExternalSelfEnergy() {
+        for (int e = this.externalCount; e < this.edgeFrom.length; ++e) {
+            if (this.countExternalBehindBridge(e) == 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Cuts a propagator and counts the external legs on the side
+     * of its end node.
+     *
+     * @param edge the edge to be cut
+     * @return the smaller number of external legs on either side of
+     *         the cut, or <code>-1</code> if the edge is not a bridge
+     */
+    private int countExternalBehindBridge(final int edge) {
+        final int nodes = this.getNodeCount();
+        final boolean[] seen = new boolean[nodes];
+        final int[] stack = new int[nodes];
+        int top = 0;
+        stack[top++] = this.edgeTo[edge];
+        seen[this.edgeTo[edge]] = true;
+        int externals = 0;
+
+        while (top > 0) {
+            final int n = stack[--top];
+            if (n < this.externalCount) {
+                ++externals;
+            }
+            for (int e = 0; e < this.edgeFrom.length; ++e) {
+                if (e == edge) {
+                    continue;
+                }
+                int m = -1;
+                if (this.edgeFrom[e] == n) {
+                    m = this.edgeTo[e];
+                } else if (this.edgeTo[e] == n) {
+                    m = this.edgeFrom[e];
+                }
+                if (m >= 0 && !seen[m]) {
+                    seen[m] = true;
+                    stack[top++] = m;
+                }
+            }
+        }
+
+        if (seen[this.edgeFrom[edge]]) {
+            return -1;
+        }
+        return Math.min(externals, this.externalCount - externals);
+    }
+
+    /**
+     * Formats the diagram using the particle names of the model.
+     *
+     * @param model the model the diagram was generated from
+     * @return a human readable representation
+     *
+     * @since 0.1.0
+     */
+    public String format(final Model model) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("Diagram[loops=").append(this.loops)
+            .append("; S=").append(this.symmetryFactor).append(';');
+        for (int e = 0; e < this.edgeFrom.length; ++e) {
+            sb.append(' ')
+                .append(this.edgeFrom[e]).append('-')
+                .append(model.getFieldName(this.edgeFields[e]))
+                .append("->").append(this.edgeTo[e]);
+        }
+        return sb.append(']').toString();
+    }
+
+    @Override
+    public String toString() {
+        return "Diagram[loops=" + this.loops
+            + "; S=" + this.symmetryFactor
+            + "; vertices=" + Arrays.toString(this.vertexTypes)
+            + "; from=" + Arrays.toString(this.edgeFrom)
+            + "; to=" + Arrays.toString(this.edgeTo)
+            + "; fields=" + Arrays.toString(this.edgeFields) + "]";
+    }
+}
@@ -0,0 +1,529 @@
+/*
+ * DiagramGenerator.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.diagrams;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import com.github.anyloop.checkpoint.CheckpointLog;
+import com.github.anyloop.model.Model;
+import com.github.anyloop.model.ScatteringProcess;
+
+/**
+ * Enumerates the Feynman diagrams of a scattering process.
+ *
+ * Diagrams are built by repeatedly completing the first open leg,
+ * either by joining it to another open leg with the conjugate field
+ * (forming a propagator) or by attaching a new vertex of the model.
+ * The number of vertices is bounded by the loop order: for a
+ * connected diagram with <code>E</code> external legs and
+ * <code>L</code> loops the sum of <code>(degree - 2)</code> over all
+ * vertices equals <code>E + 2L - 2</code>.
+ *
+ * The search tree is split across the tasks of a
+ * {@link ForkJoinPool}. Every complete diagram is brought into its
+ * canonical labelling and looked up in a concurrent hash index of
+ * canonical forms, so that each diagram is reported exactly once to
+ * the consumer, from whichever worker thread found it first. The
+ * reported diagrams are canonically labelled and carry their symmetry
+ * factors; the order in which they are reported is not deterministic.
+ *
+ * A generation run may record its progress in a {@link CheckpointLog}
+ * and be resumed from it after an interruption.
+ *
+ * The search can also be split into partitions, e.g. for separate
+ * processes: the branches at depth {@link #PARTITION_DEPTH} are
+ * shared out among the partitions by a hash of their paths, while the
+ * few branches ending above that depth are searched in every
+ * partition. A diagram may therefore be reported by more than one
+ * partition, so that the union of the partitions must be formed by
+ * the canonical labellings of the diagrams.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class DiagramGenerator {
+
+    /**
+     * Default depth of the search tree down to which alternatives
+     * may be forked as separate tasks.
+     */
+    public static final int DEFAULT_SPLIT_DEPTH = 12;
+
+    /**
+     * The depth of the search tree at which the branches are shared
+     * out among partitions.
+     */
+    public static final int PARTITION_DEPTH = 6;
+
+    /**
+     * The tag of a checkpoint record holding a diagram.
+     */
+    private static final byte DIAGRAM = 'D';
+
+    /**
+     * The tag of a checkpoint record holding a finished branch.
+     */
+    private static final byte BRANCH = 'B';
+
+    /**
+     * The process for which diagrams are generated.
+     */
+    private final ScatteringProcess process;
+
+    /**
+     * The depth down to which the search is split into tasks.
+     */
+    private final int splitDepth;
+
+    /**
+     * Creates a generator for the given process.
+     *
+     * @param theProcess the process
+     *
+     * @since 0.1.0
+     */
+    public DiagramGenerator(final ScatteringProcess theProcess) {
+        this(theProcess, DEFAULT_SPLIT_DEPTH);
+    }
+
+    /**
+     * Creates a generator for the given process.
+     *
+     * @param theProcess the process
+     * @param theSplitDepth the depth down to which the search tree may
+     *        be split into separate tasks
+     *
+     * @since 0.1.0
+     */
+    public DiagramGenerator(
+            final ScatteringProcess theProcess,
+            final int theSplitDepth) {
+        this.process = theProcess;
+        this.splitDepth = theSplitDepth;
+    }
+
+    /**
+     * Generates all diagrams with the given number of loops.
+     *
+     * The consumer is called concurrently from the worker threads of
+     * the pool and must therefore be thread-safe.
+     *
+     * @param loops the number of loops
+     * @param pool the pool in which the search is run
+     * @param sink the consumer receiving the diagrams
+     * @return the number of diagrams passed to the consumer
+     *
+     * @since 0.1.0
+     */
+    public long generate(
+            final int loops,
+            final ForkJoinPool pool,
+            final Consumer<? super Diagram> sink) {
+        return this.search(
+            new Run(this.process.getModel(), loops, sink, null), pool);
+    }
+
+    /**
+     * Generates the diagrams of one partition of the search tree.
+     *
+     * The consumer is called concurrently from the worker threads of
+     * the pool and must therefore be thread-safe.
+     *
+     * @param loops the number of loops
+     * @param pool the pool in which the search is run
+     * @param sink the consumer receiving the diagrams
+     * @param partition the number of the partition
+     * @param count the number of partitions
+     * @return the number of diagrams passed to the consumer
+     * @throws IllegalArgumentException if the partition does not exist
+     *
+     * @since 0.1.0
+     */
+    public long generate(
+            final int loops,
+            final ForkJoinPool pool,
+            final Consumer<? super Diagram> sink,
+            final int partition,
+            final int count) {
+        if (partition < 0 || partition >= count) {
+            throw new IllegalArgumentException("There is no partition "
+                + partition + " of " + count);
+        }
+        final Run run =
+            new Run(this.process.getModel(), loops, sink, null);
+        run.partition = partition;
+        run.partitionCount = count;
+        return this.search(run, pool);
+    }
+
+    /**
+     * Generates all diagrams with the given number of loops, recording
+     * the progress in a checkpoint log.
+     *
+     * The log receives every diagram and every finished branch of the
+     * search. If it holds the records of an interrupted run, which must
+     * have been for the same process and number of loops, the diagrams
+     * found then are not reported again and the finished branches are
+     * not searched again; they are included in the count, though.
+     *
+     * The consumer is called concurrently from the worker threads of
+     * the pool and must therefore be thread-safe.
+     *
+     * @param loops the number of loops
+     * @param pool the pool in which the search is run
+     * @param sink the consumer receiving the diagrams
+     * @param checkpoint the log
+     * @return the number of diagrams of the process
+     * @throws IOException if the log cannot be read
+     *
+     * @since 0.1.0
+     */
+    public long generate(
+            final int loops,
+            final ForkJoinPool pool,
+            final Consumer<? super Diagram> sink,
+            final CheckpointLog checkpoint) throws IOException {
+        return this.generate(loops, pool, sink, checkpoint, false);
+    }
+
+    /**
+     * Generates all diagrams with the given number of loops, recording
+     * the progress in a checkpoint log and optionally reporting the
+     * diagrams restored from it once more.
+     *
+     * A consumer which, unlike the log, does not survive an
+     * interruption, such as a freshly created output file, needs the
+     * diagrams of the interrupted run as well. They are passed to it
+     * on the calling thread before the search starts.
+     *
+     * @param loops the number of loops
+     * @param pool the pool in which the search is run
+     * @param sink the consumer receiving the diagrams
+     * @param checkpoint the log
+     * @param replay whether the diagrams restored from the log are
+     *        reported
+     * @return the number of diagrams of the process
+     * @throws IOException if the log cannot be read
+     *
+     * @since 0.1.0
+     */
+    public long generate(
+            final int loops,
+            final ForkJoinPool pool,
+            final Consumer<? super Diagram> sink,
+            final CheckpointLog checkpoint,
+            final boolean replay) throws IOException {
+        final Run run =
+            new Run(this.process.getModel(), loops, sink, checkpoint);
+        run.replay = replay;
+        checkpoint.replay(run::restore);
+        return this.search(run, pool);
+    }
+
+    private long search(final Run run, final ForkJoinPool pool) {
+        final Model model = this.process.getModel();
+        final int[] fields = new int[this.process.getExternalCount()];
+        for (int i = 0; i < fields.length; ++i) {
+            fields[i] = this.process.getExternalField(i);
+        }
+
+        final GenerationState initial =
+            new GenerationState(model, fields, run.loops);
+        if (initial.getBudget() < 0) {
+            return 0;
+        }
+
+        if (fields.length > 0) {
+            pool.invoke(new GenerationTask(run, initial, 0, 0, new int[0]));
+        } else {
+            // vacuum diagrams: start from every possible first vertex
+            for (int k = 0; k < model.getVertexKeyCount(); ++k) {
+                final int t = model.getVertexWithKey(k, 0);
+                if (model.getVertexDegree(t) - 2 <= initial.getBudget()) {
+                    final GenerationState root = initial.copy();
+                    root.addRootVertex(t);
+                    pool.invoke(new GenerationTask(
+                        run, root, 0, 0, new int[] {k}));
+                }
+            }
+        }
+        return run.count.sum();
+    }
+
+    /**
+     * The data shared between all tasks of a single call of
+     * {@link DiagramGenerator#generate}.
+     */
+    final class Run {
+        /**
+         * The model.
+         */
+        private final Model model;
+
+        /**
+         * The number of loops.
+         */
+        private final int loops;
+
+        /**
+         * The consumer receiving the diagrams.
+         */
+        private final Consumer<? super Diagram> sink;
+
+        /**
+         * The canonical forms of all diagrams found so far.
+         */
+        private final Set<CanonicalForm> seen =
+            ConcurrentHashMap.newKeySet();
+
+        /**
+         * The number of diagrams passed to the sink or restored from
+         * the checkpoint.
+         */
+        private final LongAdder count = new LongAdder();
+
+        /**
+         * The log receiving the progress or <code>null</code>.
+         */
+        private final CheckpointLog checkpoint;
+
+        /**
+         * The branches finished before the run was interrupted, see
+         * {@link #key}.
+         */
+        private final Set<String> finished = new HashSet<>();
+
+        /**
+         * The longest path of a finished branch or <code>-1</code>.
+         */
+        private int finishedDepth = -1;
+
+        /**
+         * Whether the diagrams restored from the checkpoint are passed
+         * to the sink.
+         */
+        private boolean replay;
+
+        /**
+         * The partition searched.
+         */
+        private int partition;
+
+        /**
+         * The number of partitions.
+         */
+        private int partitionCount = 1;
+
+        Run(final Model theModel,
+                final int theLoops,
+                final Consumer<? super Diagram> theSink,
+                final CheckpointLog theCheckpoint) {
+            this.model = theModel;
+            this.loops = theLoops;
+            this.sink = theSink;
+            this.checkpoint = theCheckpoint;
+        }
+
+        Model getModel() {
+            return this.model;
+        }
+
+        int getSplitDepth() {
+            return DiagramGenerator.this.splitDepth;
+        }
+
+        /**
+         * Identifies a branch of the search by its path, i.e. by the
+         * index of the alternative taken at every decision.
+         *
+         * @param path the path
+         * @param length the length of the path
+         * @return the key of the branch
+         */
+        private String key(final int[] path, final int length) {
+            final StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < length; ++i) {
+                sb.append(path[i]).append(',');
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Tells whether a branch was finished before the run was
+         * interrupted.
+         *
+         * @param path the path of the branch
+         * @param length the length of the path
+         * @return <code>true</code> if the branch can be skipped
+         */
+        boolean isFinished(final int[] path, final int length) {
+            return length <= this.finishedDepth
+                && this.finished.contains(this.key(path, length));
+        }
+
+        /**
+         * Tells whether a branch belongs to the partition searched.
+         *
+         * @param path the path of the branch
+         * @param length the length of the path
+         * @return <code>false</code> if the branch can be skipped
+         */
+        boolean isAssigned(final int[] path, final int length) {
+            if (this.partitionCount == 1 || length != PARTITION_DEPTH) {
+                return true;
+            }
+            // the hash of Arrays.hashCode, which is the same in every
+            // process, over the first length elements
+            int hash = 1;
+            for (int i = 0; i < length; ++i) {
+                hash = 31 * hash + path[i];
+            }
+            return Math.floorMod(hash, this.partitionCount)
+                == this.partition;
+        }
+
+        /**
+         * Called by a task once its branch has been searched.
+         *
+         * @param path the path of the branch
+         */
+        void finish(final int[] path) {
+            if (this.checkpoint != null) {
+                this.checkpoint.append(out -> {
+                    out.writeByte(BRANCH);
+                    out.writeInt(path.length);
+                    for (final int choice : path) {
+                        out.writeInt(choice);
+                    }
+                });
+            }
+        }
+
+        /**
+         * Restores the progress from a checkpoint record.
+         *
+         * @param in the record
+         * @throws IOException if the record is malformed
+         */
+        void restore(final DataInput in) throws IOException {
+            final byte tag = in.readByte();
+            if (tag == DIAGRAM) {
+                final CanonicalForm form = CanonicalForm.read(in);
+                if (this.seen.add(form)) {
+                    this.count.increment();
+                    if (this.replay) {
+                        this.sink.accept(form.toDiagram(this.loops));
+                    }
+                }
+            } else if (tag == BRANCH) {
+                final int length = in.readInt();
+                if (length < 0) {
+                    throw new IOException("Malformed branch");
+                }
+                final int[] path = new int[length];
+                for (int i = 0; i < length; ++i) {
+                    path[i] = in.readInt();
+                }
+                this.finished.add(this.key(path, length));
+                this.finishedDepth = Math.max(this.finishedDepth, length);
+            } else {
+                throw new IOException("Unknown checkpoint record " + tag);
+            }
+        }
+
+        /**
+         * Called by the tasks for every state without open legs.
+         *
+         * The search attaches only the first vertex type of every
+         * vertex key, so the state is reported once for every choice
+         * of vertex types with the same keys. The state is left as it
+         * was.
+         *
+         * @param state the complete state
+         */
+        void complete(final GenerationState state) {
+            if (!state.isConnected()) {
+                return;
+            }
+            final Diagram diagram = state.toDiagram(this.loops);
+            final ScatteringProcess p = DiagramGenerator.this.process;
+            if ((p.isOnePI() && !diagram.isOnePI())
+                    || (p.isNoTadpoles() && diagram.hasTadpole())
+                    || (p.isOnShell() && diagram.hasExternalSelfEnergy())) {
+                return;
+            }
+            this.report(diagram);
+
+            final int vertices = state.getVertexCount();
+            final int[] keys = new int[vertices];
+            final int[] choices = new int[vertices];
+            for (int v = 0; v < vertices; ++v) {
+                keys[v] = this.model.getVertexKey(state.getVertexType(v));
+            }
+            int v = 0;
+            while (v < vertices) {
+                // next choice, counting with the first vertex fastest
+                final int key = keys[v];
+                if (++choices[v] < this.model.getVertexCountWithKey(key)) {
+                    state.setVertexType(v,
+                        this.model.getVertexWithKey(key, choices[v]));
+                    this.report(state.toDiagram(this.loops));
+                    v = 0;
+                } else {
+                    choices[v] = 0;
+                    state.setVertexType(v,
+                        this.model.getVertexWithKey(key, 0));
+                    ++v;
+                }
+            }
+        }
+
+        /**
+         * Passes a diagram on unless it has been found before.
+         *
+         * @param diagram a complete diagram
+         */
+        private void report(final Diagram diagram) {
+            final CanonicalForm form =
+                CanonicalLabelling.compute(diagram, this.model);
+            if (this.seen.add(form)) {
+                this.count.increment();
+                this.sink.accept(form.toDiagram(this.loops));
+                if (this.checkpoint != null) {
+                    this.checkpoint.append(out -> {
+                        out.writeByte(DIAGRAM);
+                        form.write(out);
+                    });
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,542 @@
+/*
+ * DiagramStage.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.diagrams;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.anyloop.cache.CacheConfig;
+import com.github.anyloop.cache.CacheKey;
+import com.github.anyloop.cache.StageCache;
+import com.github.anyloop.chassis.ClassHelper;
+import com.github.anyloop.chassis.ConfigDependencies;
+import com.github.anyloop.chassis.ConfigurableRunnable;
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.chassis.Configurator;
+import com.github.anyloop.checkpoint.CheckpointConfig;
+import com.github.anyloop.checkpoint.CheckpointLog;
+import com.github.anyloop.distributed.Coordinator;
+import com.github.anyloop.distributed.DistributedConfig;
+import com.github.anyloop.distributed.FingerprintSet;
+import com.github.anyloop.distributed.PartitionTask;
+import com.github.anyloop.distributed.WorkerLauncher;
+import com.github.anyloop.model.Model;
+import com.github.anyloop.model.ModelConfig;
+import com.github.anyloop.model.ProcessConfig;
+import com.github.anyloop.model.ScatteringProcess;
+import com.github.anyloop.pipeline.LineWriter;
+import com.github.anyloop.pipeline.Pipeline;
+import com.github.anyloop.pipeline.PipelineConfig;
+import com.github.anyloop.pipeline.PipelineSource;
+import com.github.anyloop.pipeline.PipelineStage;
+import com.github.anyloop.scheduler.CostFeatures;
+import com.github.anyloop.scheduler.CostModel;
+import com.github.anyloop.scheduler.ScheduledTask;
+import com.github.anyloop.scheduler.SchedulerConfig;
+import com.github.anyloop.scheduler.TaskScheduler;
+
+/**
+ * The pipeline stage which generates the diagrams of the configured
+ * process.
+ *
+ * The stage runs if the model has particles. The diagrams of all loop
+ * orders are generated side by side by a {@link TaskScheduler} and
+ * counted, and written to the file given by
+ * <code>process.output</code>, if any, as they are found. With
+ * <code>distributed.workers</code> set, the loop orders are split
+ * into partitions which are generated by worker processes, see
+ * {@link #getPartitionTask}; otherwise each loop order keeps a
+ * {@link CheckpointLog} from which an interrupted run resumes.
+ *
+ * If a {@link StageCache} is configured and the diagrams are neither
+ * written nor logged, the counts are stored there together with the
+ * <code>model</code> and <code>process</code> settings actually read,
+ * and restored from there by a later run.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class DiagramStage implements ConfigurableRunnable {
+
+    /**
+     * The logger of this class.
+     */
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(DiagramStage.class);
+
+    private Configurator configurator;
+
+    private ModelConfig modelConfig;
+
+    private ProcessConfig processConfig;
+
+    private CacheConfig cacheConfig;
+
+    private CheckpointConfig checkpointConfig;
+
+    private PipelineConfig pipelineConfig;
+
+    private SchedulerConfig schedulerConfig;
+
+    private DistributedConfig distributedConfig;
+
+    private boolean debug;
+
+    private int jobs = 1;
+
+    private WorkerLauncher launcher;
+
+    @Override
+    public String getName() {
+        return "diagrams";
+    }
+
+    @Override
+    public String getVersion() {
+        return ClassHelper.getVersion(DiagramStage.class);
+    }
+
+    @Override
+    public void init(final Configurator theConfigurator) {
+        this.configurator = theConfigurator;
+        this.modelConfig = theConfigurator.create(ModelConfig.class);
+        this.processConfig = theConfigurator.create(ProcessConfig.class);
+        this.cacheConfig = theConfigurator.create(CacheConfig.class);
+        this.checkpointConfig =
+            theConfigurator.create(CheckpointConfig.class);
+        this.pipelineConfig = theConfigurator.create(PipelineConfig.class);
+        this.schedulerConfig =
+            theConfigurator.create(SchedulerConfig.class);
+        this.distributedConfig =
+            theConfigurator.create(DistributedConfig.class);
+    }
+
+    /**
+     * Sets whether each diagram is logged.
+     *
+     * @param theDebug <code>true</code> to log the diagrams
+     *
+     * @since 0.1.0
+     */
+    public void setDebug(final boolean theDebug) {
+        this.debug = theDebug;
+    }
+
+    /**
+     * Sets the number of threads of a worker.
+     *
+     * @param theJobs the number of threads
+     *
+     * @since 0.1.0
+     */
+    public void setJobs(final int theJobs) {
+        this.jobs = theJobs;
+    }
+
+    /**
+     * Sets the launcher of the workers, which is needed if
+     * <code>distributed.workers</code> is set.
+     *
+     * @param theLauncher the launcher
+     *
+     * @since 0.1.0
+     */
+    public void setLauncher(final WorkerLauncher theLauncher) {
+        this.launcher = theLauncher;
+    }
+
+    @Override
+    public void run() {
+        try {
+            this.generate();
+        } catch (ConfigurationException ex) {
+            LOGGER.error("Configuration failed", ex);
+        }
+    }
+
+    /**
+     * Generates the diagrams, if the model has particles.
+     *
+     * @throws ConfigurationException if the configuration is invalid
+     *
+     * @since 0.1.0
+     */
+    public void generate() throws ConfigurationException {
+        if (this.modelConfig.getParticles().length == 0) {
+            return;
+        }
+        // the result depends on the keys actually read
+        final ConfigDependencies read = new ConfigDependencies();
+        final Model model = Model.fromConfig(
+            this.configurator.create(ModelConfig.class, read));
+        final ScatteringProcess process =
+            ScatteringProcess.fromConfig(this.configurator.create(
+                ProcessConfig.class, read), model);
+        final String output = this.processConfig.getOutput();
+        final StageCache cache = StageCache.fromConfig(this.cacheConfig);
+        // the diagrams themselves are not cached
+        final CacheKey stage = cache == null || this.debug
+            || !output.isEmpty() ? null
+            : CacheKey.of(this.getName(), this.getVersion());
+        final String cached = this.lookup(cache, stage);
+        if (cached != null) {
+            LOGGER.info(cached);
+            return;
+        }
+
+        final long[] counts = new long[process.getLoops() + 1];
+        final CheckpointLog[] logs = new CheckpointLog[counts.length];
+        final CostModel costs =
+            CostModel.fromConfig(this.schedulerConfig, this.getName());
+        final TaskScheduler[] scheduler = new TaskScheduler[1];
+        final int workers = this.distributedConfig.getWorkers();
+        LineWriter writer = null;
+        try {
+            if (!output.isEmpty()) {
+                writer = new LineWriter(Paths.get(output));
+            }
+            if (workers > 0) {
+                this.diagrams(process, counts, writer);
+            } else {
+                for (int l = 0; l < logs.length; ++l) {
+                    logs[l] = CheckpointLog.fromConfig(
+                        this.checkpointConfig,
+                        CacheKey.of(this.getName(), this.getVersion())
+                            .add(ModelConfig.class, this.modelConfig)
+                            .add(ProcessConfig.class, this.processConfig)
+                            .add("loops", l));
+                }
+                this.diagrams(process, logs, counts, costs, scheduler,
+                    writer).execute(this.pipelineConfig);
+            }
+        } catch (IOException ex) {
+            LOGGER.error("Diagram generation failed", ex);
+            return;
+        } finally {
+            for (final CheckpointLog log : logs) {
+                if (log != null) {
+                    close(log);
+                }
+            }
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException ex) {
+                    LOGGER.error("Cannot write " + output, ex);
+                }
+            }
+        }
+
+        if (scheduler[0] != null) {
+            LOGGER.info("Scheduled " + costs.getKind() + ": "
+                + scheduler[0].getReport());
+            costs.save(this.schedulerConfig);
+        }
+
+        final StringBuilder result = new StringBuilder();
+        for (int loops = 0; loops < counts.length; ++loops) {
+            if (loops > 0) {
+                result.append(System.lineSeparator());
+            }
+            result.append(process).append(": ").append(counts[loops])
+                .append(" diagrams with ").append(loops).append(" loops");
+        }
+        this.store(cache, stage, read, result.toString());
+    }
+
+    /**
+     * Returns the task of a worker, which generates the diagrams of
+     * all loop orders in a partition. A diagram is sent as its loop
+     * order and its formatted line.
+     *
+     * @return the task
+     *
+     * @since 0.1.0
+     */
+    public PartitionTask getPartitionTask() {
+        return (partition, count, out) -> {
+            final ScatteringProcess process;
+            try {
+                process = ScatteringProcess.fromConfig(this.processConfig,
+                    Model.fromConfig(this.modelConfig));
+            } catch (ConfigurationException ex) {
+                throw new IOException("Invalid process", ex);
+            }
+            final Model model = process.getModel();
+            final DiagramGenerator generator = new DiagramGenerator(process);
+            final ForkJoinPool pool = new ForkJoinPool(this.jobs);
+            try {
+                for (int l = 0; l <= process.getLoops(); ++l) {
+                    final int loops = l;
+                    generator.generate(loops, pool,
+                        d -> out.accept(record(loops, d.format(model))),
+                        partition, count);
+                }
+            } finally {
+                pool.shutdown();
+            }
+        };
+    }
+
+    /**
+     * Looks up the counts in the cache.
+     *
+     * @param cache the cache or <code>null</code>
+     * @param stage the key of the stage or <code>null</code> if the
+     *        counts are not to be cached
+     * @return the counts or <code>null</code> if there are none
+     */
+    private String lookup(final StageCache cache, final CacheKey stage) {
+        if (stage == null) {
+            return null;
+        }
+        try {
+            return cache.getText(stage, this.configurator);
+        } catch (IOException ex) {
+            LOGGER.warn("Cannot read the cache", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the counts in the cache.
+     *
+     * @param cache the cache or <code>null</code>
+     * @param stage the key of the stage or <code>null</code> if the
+     *        counts are not to be cached
+     * @param read the configuration keys read
+     * @param result the counts
+     */
+    private void store(
+            final StageCache cache,
+            final CacheKey stage,
+            final ConfigDependencies read,
+            final String result) {
+        if (stage == null) {
+            return;
+        }
+        try {
+            cache.putText(stage, read, result);
+        } catch (IOException ex) {
+            LOGGER.warn("Cannot update the cache", ex);
+        }
+    }
+
+    /**
+     * Closes a checkpoint log, which writes the pending records.
+     *
+     * @param log the log
+     */
+    private static void close(final CheckpointLog log) {
+        try {
+            log.close();
+        } catch (IOException ex) {
+            LOGGER.warn("Cannot write checkpoint " + log.getFile(), ex);
+        }
+    }
+
+    /**
+     * Encodes a diagram found by a worker.
+     *
+     * @param loops the loop order
+     * @param line the formatted diagram
+     * @return the record
+     */
+    private static byte[] record(final int loops, final String line) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(loops);
+            out.writeUTF(line);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Generates the diagrams of all loop orders on workers and writes
+     * them as they arrive. Partitions may overlap in diagrams with
+     * symmetries, and a partition tried again sends its diagrams
+     * again, so duplicates are dropped by the fingerprint of their
+     * record, which holds the loop order and the canonical form.
+     *
+     * @param process the process
+     * @param counts receives the number of diagrams of each loop order
+     * @param writer the output or <code>null</code>
+     * @throws ConfigurationException if the configuration is invalid
+     * @throws IOException if the generation fails
+     */
+    private void diagrams(
+            final ScatteringProcess process,
+            final long[] counts,
+            final LineWriter writer)
+            throws ConfigurationException, IOException {
+        final DistributedConfig c = this.distributedConfig;
+        final int partitions = c.getPartitions() > 0
+            ? c.getPartitions() : 4 * c.getWorkers();
+        final FingerprintSet seen = new FingerprintSet();
+        Coordinator.fromConfig(this.getName(), partitions, c,
+            this.launcher).stream((partition, record) -> {
+                if (!seen.add(record)) {
+                    return;
+                }
+                final DataInputStream in = new DataInputStream(
+                    new ByteArrayInputStream(record));
+                final int loops = in.readInt();
+                final String line = in.readUTF();
+                ++counts[loops];
+                if (this.debug) {
+                    LOGGER.debug(line);
+                }
+                if (writer != null) {
+                    writer.process(line, null);
+                }
+            });
+        for (int l = 0; l < counts.length; ++l) {
+            LOGGER.info(process + ": " + counts[l] + " diagrams with " + l
+                + " loops");
+        }
+    }
+
+    /**
+     * Builds the pipeline which generates the diagrams of all loop
+     * orders and formats and writes them as they are found. The loop
+     * orders are generated side by side, the most expensive first, by
+     * a scheduler left in <code>scheduler[0]</code>.
+     *
+     * @param process the process
+     * @param logs the checkpoint of each loop order
+     * @param counts receives the number of diagrams of each loop order
+     * @param costs the cost model of the loop orders
+     * @param scheduler receives the scheduler
+     * @param writer the output or <code>null</code>
+     * @return the pipeline
+     */
+    private Pipeline diagrams(
+            final ScatteringProcess process,
+            final CheckpointLog[] logs,
+            final long[] counts,
+            final CostModel costs,
+            final TaskScheduler[] scheduler,
+            final LineWriter writer) {
+        final DiagramGenerator generator = new DiagramGenerator(process);
+        final Model model = process.getModel();
+        final boolean logged = this.debug;
+        final PipelineSource<Diagram> source = new PipelineSource<>() {
+            @Override
+            public void emit(
+                    final int workers,
+                    final Consumer<? super Diagram> out)
+                    throws IOException {
+                final List<ScheduledTask<Long>> tasks = new ArrayList<>();
+                for (int l = 0; l < counts.length; ++l) {
+                    tasks.add(generation(l, logs[l], out));
+                }
+                try (TaskScheduler s = new TaskScheduler(workers, costs)) {
+                    scheduler[0] = s;
+                    final List<Long> n = s.run(tasks);
+                    for (int l = 0; l < counts.length; ++l) {
+                        counts[l] = n.get(l);
+                        LOGGER.info(process + ": " + counts[l]
+                            + " diagrams with " + l + " loops");
+                    }
+                }
+            }
+
+            private ScheduledTask<Long> generation(
+                    final int loops,
+                    final CheckpointLog log,
+                    final Consumer<? super Diagram> out) {
+                return new ScheduledTask<>() {
+                    @Override
+                    public CostFeatures getFeatures() {
+                        // the most propagators any diagram can have,
+                        // with cubic vertices only
+                        return new CostFeatures(loops,
+                            Math.max(0, process.getExternalCount()
+                                + 3 * loops - 3), 0);
+                    }
+
+                    @Override
+                    public Long call() throws IOException {
+                        final ForkJoinPool pool = scheduler[0].getPool();
+                        // the output file is written afresh, so it
+                        // needs the restored diagrams
+                        return log == null
+                            ? generator.generate(loops, pool, out)
+                            : generator.generate(loops, pool, out, log,
+                                writer != null);
+                    }
+                };
+            }
+
+            @Override
+            public int getWeight() {
+                // by far the most expensive step
+                return 3;
+            }
+        };
+        final Pipeline.Builder<Diagram> builder =
+            Pipeline.from(this.getName(), source);
+        if (!logged && writer == null) {
+            return builder.build();
+        }
+
+        final Pipeline.Builder<String> formatted = builder.then(
+            new PipelineStage<Diagram, String>() {
+                @Override
+                public String getName() {
+                    return "format";
+                }
+
+                @Override
+                public void process(
+                        final Diagram diagram,
+                        final Consumer<? super String> out) {
+                    final String line = diagram.format(model);
+                    if (logged) {
+                        LOGGER.debug(line);
+                    }
+                    out.accept(line);
+                }
+            });
+        return writer == null ? formatted.build()
+            : formatted.then(writer).build();
+    }
+
+    @Override
+    public void terminate() { }
+}
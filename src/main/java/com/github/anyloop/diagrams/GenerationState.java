@@ -0,0 +1,426 @@
+/*
+ * GenerationState.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.diagrams;
+
+import java.util.Arrays;
+
+import com.github.anyloop.model.Model;
+
+/**
+ * A partially constructed diagram.
+ *
+ * The state is a set of half-edges, each owned by a node and carrying
+ * the field flowing out of that node. Two half-edges can be joined if
+ * their fields are conjugate to each other. External legs are owned
+ * by the external nodes; every internal vertex contributes one
+ * half-edge per leg, stored contiguously.
+ *
+ * The state is mutable and supports undoing the last step, so that
+ * a depth-first search needs no copies. {@link #copy} is only used
+ * where the search is split into parallel tasks.
+ *
+ * @since 0.1.0
+ */
+final class GenerationState {
+
+    /**
+     * Marker for a half-edge without partner.
+     */
+    static final int PENDING = -1;
+
+    /**
+     * The model from which vertices are taken.
+     */
+    private final Model model;
+
+    /**
+     * The number of external legs.
+     */
+    private final int externalCount;
+
+    /**
+     * The owning node of each half-edge.
+     */
+    private int[] owner;
+
+    /**
+     * The outgoing field of each half-edge.
+     */
+    private int[] field;
+
+    /**
+     * The partner of each half-edge or {@link #PENDING}.
+     */
+    private int[] partner;
+
+    /**
+     * The number of half-edges in use.
+     */
+    private int halfEdgeCount;
+
+    /**
+     * The vertex type of each internal vertex.
+     */
+    private int[] vertexTypes;
+
+    /**
+     * The number of internal vertices.
+     */
+    private int vertexCount;
+
+    /**
+     * The remaining sum of <code>(degree - 2)</code> over all vertices
+     * still to be added. A connected diagram with <code>E</code>
+     * external legs and <code>L</code> loops has a total of
+     * <code>E + 2L - 2</code>.
+     */
+    private int budget;
+
+    /**
+     * Creates the initial state consisting of unpaired external legs.
+     *
+     * @param theModel the model
+     * @param externalFields the outgoing fields of the external legs
+     * @param loops the number of loops
+     */
+    GenerationState(
+            final Model theModel,
+            final int[] externalFields,
+            final int loops) {
+        this.model = theModel;
+        this.externalCount = externalFields.length;
+        this.budget = externalFields.length + 2 * loops - 2;
+
+        final int capacity = Math.max(16, 4 * externalFields.length
+            + 4 * Math.max(0, this.budget));
+        this.owner = new int[capacity];
+        this.field = new int[capacity];
+        this.partner = new int[capacity];
+        this.vertexTypes = new int[Math.max(4, this.budget)];
+
+        for (int i = 0; i < externalFields.length; ++i) {
+            // the external node absorbs the particle, i.e. emits its
+            // antiparticle into the diagram
+            this.owner[i] = i;
+            this.field[i] = theModel.getConjugate(externalFields[i]);
+            this.partner[i] = PENDING;
+        }
+        this.halfEdgeCount = externalFields.length;
+    }
+
+    /**
+     * Creates a deep copy.
+     *
+     * @param other the state to be copied
+     */
+    private GenerationState(final GenerationState other) {
+        this.model = other.model;
+        this.externalCount = other.externalCount;
+        this.owner = other.owner.clone();
+        this.field = other.field.clone();
+        this.partner = other.partner.clone();
+        this.halfEdgeCount = other.halfEdgeCount;
+        this.vertexTypes = other.vertexTypes.clone();
+        this.vertexCount = other.vertexCount;
+        this.budget = other.budget;
+    }
+
+    /**
+     * Creates a deep copy of this state.
+     *
+     * @return the copy
+     */
+    GenerationState copy() {
+        return new GenerationState(this);
+    }
+
+    /**
+     * Returns the remaining vertex budget.
+     *
+     * @return the remaining sum of <code>(degree - 2)</code>
+     */
+    int getBudget() {
+        return this.budget;
+    }
+
+    /**
+     * Returns the number of half-edges.
+     *
+     * @return the number of half-edges
+     */
+    int getHalfEdgeCount() {
+        return this.halfEdgeCount;
+    }
+
+    /**
+     * Returns the outgoing field of a half-edge.
+     *
+     * @param h the half-edge
+     * @return the field ID
+     */
+    int getField(final int h) {
+        return this.field[h];
+    }
+
+    /**
+     * Returns the number of internal vertices.
+     *
+     * @return the number of vertices
+     */
+    int getVertexCount() {
+        return this.vertexCount;
+    }
+
+    /**
+     * Returns the type of an internal vertex.
+     *
+     * @param vertex the index of the vertex
+     * @return the vertex type ID
+     */
+    int getVertexType(final int vertex) {
+        return this.vertexTypes[vertex];
+    }
+
+    /**
+     * Replaces the type of an internal vertex by another one with the
+     * same vertex key, which leaves the half-edges valid.
+     *
+     * @param vertex the index of the vertex
+     * @param type the vertex type ID
+     */
+    void setVertexType(final int vertex, final int type) {
+        this.vertexTypes[vertex] = type;
+    }
+
+    /**
+     * Finds the first unpaired half-edge.
+     *
+     * @param from the half-edge at which the search starts
+     * @return the first unpaired half-edge at or after
+     *         <code>from</code> or {@link #PENDING} if there is none
+     */
+    int firstPending(final int from) {
+        for (int h = from; h < this.halfEdgeCount; ++h) {
+            if (this.partner[h] == PENDING) {
+                return h;
+            }
+        }
+        return PENDING;
+    }
+
+    /**
+     * Tells whether two half-edges may be paired. Besides matching
+     * fields this requires that they are not both external legs and
+     * that <code>g</code> is the first unpaired leg of its vertex
+     * carrying its field: the legs of a vertex with the same field are
+     * interchangeable, so trying the others would only reproduce the
+     * same diagram.
+     *
+     * @param h the first unpaired half-edge
+     * @param g a half-edge after <code>h</code>
+     * @return <code>true</code> if the half-edges can be joined
+     */
+    boolean canPair(final int h, final int g) {
+        if (this.partner[g] != PENDING
+                || this.field[g] != this.model.getConjugate(this.field[h])
+                || (this.owner[g] < this.externalCount
+                    && this.owner[h] < this.externalCount)) {
+            return false;
+        }
+        for (int k = g - 1; k > h && this.owner[k] == this.owner[g]; --k) {
+            if (this.partner[k] == PENDING && this.field[k] == this.field[g]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Joins two half-edges.
+     *
+     * @param h a half-edge
+     * @param g another half-edge
+     */
+    void pair(final int h, final int g) {
+        this.partner[h] = g;
+        this.partner[g] = h;
+    }
+
+    /**
+     * Reverts {@link #pair}.
+     *
+     * @param h a half-edge
+     * @param g another half-edge
+     */
+    void unpair(final int h, final int g) {
+        this.partner[h] = PENDING;
+        this.partner[g] = PENDING;
+    }
+
+    /**
+     * Adds a new vertex and joins the first of its legs which matches
+     * the given half-edge.
+     *
+     * @param type the vertex type
+     * @param h the half-edge to which the new vertex is attached
+     */
+    void addVertex(final int type, final int h) {
+        final int degree = this.model.getVertexDegree(type);
+        final int leg = this.model.getVertexLeg(
+            type, this.model.getConjugate(this.field[h]));
+
+        this.ensureCapacity(degree);
+
+        final int node = this.externalCount + this.vertexCount;
+        this.vertexTypes[this.vertexCount++] = type;
+        final int base = this.halfEdgeCount;
+        for (int i = 0; i < degree; ++i) {
+            this.owner[base + i] = node;
+            this.field[base + i] = this.model.getVertexField(type, i);
+            this.partner[base + i] = PENDING;
+        }
+        this.halfEdgeCount += degree;
+        this.budget -= degree - 2;
+        this.pair(h, base + leg);
+    }
+
+    /**
+     * Makes room for one more vertex with the given number of legs.
+     *
+     * @param degree the number of legs of the new vertex
+     */
+    private void ensureCapacity(final int degree) {
+        if (this.halfEdgeCount + degree > this.owner.length) {
+            final int capacity = 2 * (this.halfEdgeCount + degree);
+            this.owner = Arrays.copyOf(this.owner, capacity);
+            this.field = Arrays.copyOf(this.field, capacity);
+            this.partner = Arrays.copyOf(this.partner, capacity);
+        }
+        if (this.vertexCount == this.vertexTypes.length) {
+            this.vertexTypes = Arrays.copyOf(
+                this.vertexTypes, 2 * this.vertexCount + 1);
+        }
+    }
+
+    /**
+     * Reverts {@link #addVertex}.
+     *
+     * @param h the half-edge to which the vertex was attached
+     */
+    void removeVertex(final int h) {
+        final int type = this.vertexTypes[--this.vertexCount];
+        final int degree = this.model.getVertexDegree(type);
+        this.unpair(h, this.partner[h]);
+        this.halfEdgeCount -= degree;
+        this.budget += degree - 2;
+    }
+
+    /**
+     * Adds a first vertex that is not attached to anything. This is
+     * needed for vacuum diagrams only.
+     *
+     * @param type the vertex type
+     */
+    void addRootVertex(final int type) {
+        final int degree = this.model.getVertexDegree(type);
+        this.ensureCapacity(degree);
+
+        final int node = this.externalCount + this.vertexCount;
+        this.vertexTypes[this.vertexCount++] = type;
+        for (int i = 0; i < degree; ++i) {
+            this.owner[this.halfEdgeCount + i] = node;
+            this.field[this.halfEdgeCount + i] =
+                this.model.getVertexField(type, i);
+            this.partner[this.halfEdgeCount + i] = PENDING;
+        }
+        this.halfEdgeCount += degree;
+        this.budget -= degree - 2;
+    }
+
+    /**
+     * Tells whether all nodes are connected.
+     *
+     * @return <code>true</code> if the state forms a connected graph
+     */
+    boolean isConnected() {
+        final int nodes = this.externalCount + this.vertexCount;
+        if (nodes == 0) {
+            return true;
+        }
+        final int[] root = new int[nodes];
+        for (int n = 0; n < nodes; ++n) {
+            root[n] = n;
+        }
+        int components = nodes;
+        for (int h = 0; h < this.halfEdgeCount; ++h) {
+            final int g = this.partner[h];
+            if (g > h) {
+                final int a = find(root, this.owner[h]);
+                final int b = find(root, this.owner[g]);
+                if (a != b) {
+                    root[a] = b;
+                    --components;
+                }
+            }
+        }
+        return components == 1;
+    }
+
+    private static int find(final int[] root, final int node) {
+        int n = node;
+        while (root[n] != n) {
+            root[n] = root[root[n]];
+            n = root[n];
+        }
+        return n;
+    }
+
+    /**
+     * Converts a complete state into a diagram.
+     *
+     * @param loops the number of loops
+     * @return the diagram
+     */
+    Diagram toDiagram(final int loops) {
+        final int edges = this.halfEdgeCount / 2;
+        final int[] from = new int[edges];
+        final int[] to = new int[edges];
+        final int[] fields = new int[edges];
+        int e = 0;
+        for (int h = 0; h < this.halfEdgeCount; ++h) {
+            final int g = this.partner[h];
+            if (g > h) {
+                from[e] = this.owner[h];
+                to[e] = this.owner[g];
+                fields[e] = this.field[h];
+                ++e;
+            }
+        }
+        return new Diagram(
+            this.externalCount,
+            loops,
+            Arrays.copyOf(this.vertexTypes, this.vertexCount),
+            from, to, fields, 0);
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * GenerationTask.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.diagrams;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+import com.github.anyloop.model.Model;
+
+/**
+ * A branch of the diagram search.
+ *
+ * The search always completes the first unpaired half-edge, either by
+ * joining it to another unpaired half-edge or by attaching a new
+ * vertex to it. Near the root of the search tree, and as long as the
+ * pool is short of work, the alternatives are forked as separate
+ * tasks; deeper down they are explored sequentially on a single
+ * mutable state.
+ *
+ * Every branch is identified by its path, the index of the
+ * alternative taken at every decision, so that the branches finished
+ * by an interrupted run can be skipped wherever they turn up, whether
+ * in a task of their own or not.
+ *
+ * @since 0.1.0
+ */
+final class GenerationTask extends RecursiveAction {
+
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Tasks are only forked if the local queue holds fewer surplus
+     * tasks than this.
+     */
+    private static final int SURPLUS_THRESHOLD = 3;
+
+    /**
+     * The shared data of all tasks of one generation run.
+     */
+    private final transient DiagramGenerator.Run run;
+
+    /**
+     * The state explored by this task, owned exclusively.
+     */
+    private final transient GenerationState state;
+
+    /**
+     * The first half-edge which might be unpaired.
+     */
+    private final int from;
+
+    /**
+     * The number of decisions taken before this task.
+     */
+    private final int depth;
+
+    /**
+     * The path of the branch explored by this task.
+     */
+    private final int[] path;
+
+    /**
+     * Creates a task.
+     *
+     * @param theRun the shared data of the generation run
+     * @param theState the state to be explored
+     * @param theFrom the first half-edge which might be unpaired
+     * @param theDepth the depth in the search tree
+     * @param thePath the path of the branch
+     */
+    GenerationTask(
+            final DiagramGenerator.Run theRun,
+            final GenerationState theState,
+            final int theFrom,
+            final int theDepth,
+            final int[] thePath) {
+        this.run = theRun;
+        this.state = theState;
+        this.from = theFrom;
+        this.depth = theDepth;
+        this.path = thePath;
+    }
+
+    @Override
+    protected void compute() {
+        final int[] buffer = Arrays.copyOf(this.path, this.path.length + 16);
+        this.explore(this.state, this.from, this.depth,
+            buffer, this.path.length);
+        this.run.finish(this.path);
+    }
+
+    /**
+     * Explores a branch.
+     *
+     * @param s the state
+     * @param start the first half-edge which might be unpaired
+     * @param level the depth in the search tree
+     * @param prefix the path of the branch, possibly longer
+     * @param length the length of the path
+     */
+    private void explore(
+            final GenerationState s,
+            final int start,
+            final int level,
+            final int[] prefix,
+            final int length) {
+        if (this.run.isFinished(prefix, length)
+                || !this.run.isAssigned(prefix, length)) {
+            return;
+        }
+        final int h = s.firstPending(start);
+        if (h == GenerationState.PENDING) {
+            if (s.getBudget() == 0) {
+                this.run.complete(s);
+            }
+            return;
+        }
+
+        final boolean split = level < this.run.getSplitDepth()
+            && getSurplusQueuedTaskCount() < SURPLUS_THRESHOLD;
+        final List<GenerationTask> forks = split ? new ArrayList<>() : null;
+        final int[] p = length < prefix.length
+            ? prefix : Arrays.copyOf(prefix, 2 * length + 1);
+        int choice = 0;
+
+        for (int g = h + 1; g < s.getHalfEdgeCount(); ++g) {
+            if (s.canPair(h, g)) {
+                s.pair(h, g);
+                p[length] = choice++;
+                if (split) {
+                    forks.add(new GenerationTask(this.run, s.copy(),
+                        h + 1, level + 1, Arrays.copyOf(p, length + 1)));
+                } else {
+                    this.explore(s, h + 1, level + 1, p, length + 1);
+                }
+                s.unpair(h, g);
+            }
+        }
+
+        // vertex types with the same fields are tried as one, see
+        // DiagramGenerator.Run#complete
+        final Model model = this.run.getModel();
+        final int f = model.getConjugate(s.getField(h));
+        final int n = model.getVertexKeyCountWithField(f);
+        for (int i = 0; i < n; ++i) {
+            final int type = model.getVertexWithKey(
+                model.getVertexKeyWithField(f, i), 0);
+            if (model.getVertexDegree(type) - 2 > s.getBudget()) {
+                continue;
+            }
+            s.addVertex(type, h);
+            p[length] = choice++;
+            if (split) {
+                forks.add(new GenerationTask(this.run, s.copy(),
+                    h + 1, level + 1, Arrays.copyOf(p, length + 1)));
+            } else {
+                this.explore(s, h + 1, level + 1, p, length + 1);
+            }
+            s.removeVertex(h);
+        }
+
+        if (split) {
+            invokeAll(forks);
+        }
+    }
+}
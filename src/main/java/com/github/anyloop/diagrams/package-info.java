@@ -0,0 +1,33 @@
+/*
+ * package-info.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+/**
+ * This package enumerates the Feynman diagrams contributing to
+ * a {@link com.github.anyloop.model.ScatteringProcess}.
+ *
+ * Diagrams are generated in parallel on a
+ * {@link java.util.concurrent.ForkJoinPool} and handed to a consumer
+ * as soon as they are found, so that no complete list of diagrams is
+ * ever held in memory.
+ */
+package com.github.anyloop.diagrams;
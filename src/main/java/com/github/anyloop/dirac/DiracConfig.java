@@ -0,0 +1,64 @@
+/*
+ * DiracConfig.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.dirac;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.chassis.annotations.ConfigProperty;
+import com.github.anyloop.chassis.annotations.DefaultValue;
+
+/**
+ * Configuration of the Dirac trace engine.
+ *
+ * In YAML notation:
+ * <pre>
+ * dirac:
+ *   dimension: d
+ *   cacheSize: 65536
+ * </pre>
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public interface DiracConfig {
+
+    /**
+     * The name of the symbol denoting the space-time dimension.
+     *
+     * @return the symbol name
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("dirac.dimension")
+    @DefaultValue("d")
+    String getDimension() throws ConfigurationException;
+
+    /**
+     * The largest number of subtraces kept in the memo table.
+     *
+     * @return the number of cached subtraces
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("dirac.cacheSize")
+    @DefaultValue("65536")
+    int getCacheSize() throws ConfigurationException;
+}
@@ -0,0 +1,402 @@
+/*
+ * TraceEngine.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.dirac;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.symbolic.BoundedCache;
+import com.github.anyloop.symbolic.Expr;
+import com.github.anyloop.symbolic.IntegerRing;
+import com.github.anyloop.symbolic.Polynomial;
+import com.github.anyloop.symbolic.Symbols;
+
+/**
+ * Computes traces of strings of gamma matrices in <code>d</code>
+ * dimensions.
+ *
+ * A string consists of symbols, each standing either for a Lorentz
+ * index <code>mu</code>, i.e. the matrix <code>gamma^mu</code>, or for
+ * a momentum <code>p</code>, i.e. the slashed momentum
+ * <code>gamma.p</code>. The trace is returned as a sum of products of
+ * <ul>
+ *   <li><code>g(mu, nu)</code> for the metric tensor,</li>
+ *   <li><code>p(mu)</code> for the components of a momentum and</li>
+ *   <li><code>dot(p, q)</code> for scalar products,</li>
+ * </ul>
+ * normalized to <code>Tr 1 = 4</code>.
+ *
+ * Each pair of equal indices is contracted first by
+ * <code>gamma^mu S gamma_mu = -(gamma^mu S' gamma_mu) x + 2 x S'</code>
+ * for <code>S = S' x</code>, which turns it into a sum of strings that
+ * are two matrices shorter. Strings without repeated indices are
+ * expanded along their first matrix. The traces of all substrings are
+ * memoized in a {@link BoundedCache} under the smallest of their
+ * cyclic rotations and reversals, which leave a trace unchanged.
+ *
+ * Instances are thread-safe and meant to be shared by all workers.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class TraceEngine {
+
+    /**
+     * The coefficient minus one.
+     */
+    private static final Polynomial MINUS_ONE = TraceTerms.ONE.negate();
+
+    /**
+     * The coefficient two.
+     */
+    private static final Polynomial TWO =
+        Polynomial.constant(IntegerRing.INSTANCE, 1, 2);
+
+    /**
+     * The coefficient <code>d</code>.
+     */
+    private static final Polynomial D =
+        Polynomial.variable(IntegerRing.INSTANCE, 1, 0);
+
+    /**
+     * The trace of the unit matrix.
+     */
+    private static final long TRACE_OF_ONE = 4;
+
+    /**
+     * The symbol denoting the dimension.
+     */
+    private final Expr dimension;
+
+    /**
+     * The memoized traces of canonical strings.
+     */
+    private final BoundedCache<Key, TraceTerms> cache;
+
+    /**
+     * Creates an engine.
+     *
+     * @param theDimension the symbol denoting the dimension
+     * @param cacheSize the largest number of memoized subtraces
+     *
+     * @since 0.1.0
+     */
+    public TraceEngine(final Expr theDimension, final int cacheSize) {
+        if (theDimension.getKind() != Expr.Kind.SYMBOL) {
+            throw new IllegalArgumentException(
+                "The dimension must be a symbol, not " + theDimension);
+        }
+        this.dimension = theDimension;
+        this.cache = new BoundedCache<>(cacheSize);
+    }
+
+    /**
+     * Creates an engine from its configuration.
+     *
+     * @param config the configuration
+     * @return the engine
+     * @throws ConfigurationException if the configuration is invalid
+     *
+     * @since 0.1.0
+     */
+    public static TraceEngine fromConfig(final DiracConfig config)
+            throws ConfigurationException {
+        final String name = config.getDimension().trim();
+        if (name.isEmpty()) {
+            throw new ConfigurationException(
+                "dirac.dimension must not be empty");
+        }
+        if (config.getCacheSize() <= 0) {
+            throw new ConfigurationException(
+                "dirac.cacheSize must be positive");
+        }
+        return new TraceEngine(Expr.symbol(name), config.getCacheSize());
+    }
+
+    /**
+     * Returns the symbol denoting the dimension.
+     *
+     * @return the symbol
+     *
+     * @since 0.1.0
+     */
+    public Expr getDimension() {
+        return this.dimension;
+    }
+
+    /**
+     * Returns the memo table of subtraces, for statistics.
+     *
+     * @return the cache
+     *
+     * @since 0.1.0
+     */
+    public BoundedCache<?, ?> getCache() {
+        return this.cache;
+    }
+
+    /**
+     * Computes the trace of a string of gamma matrices.
+     *
+     * @param gammas the symbols of the string from left to right
+     * @param indices the symbols which are Lorentz indices; all other
+     *        symbols are momenta
+     * @return the trace
+     * @throws IllegalArgumentException if an element of the string is
+     *         not a symbol or an index occurs more than twice
+     *
+     * @since 0.1.0
+     */
+    public Expr trace(final List<Expr> gammas, final Set<Expr> indices) {
+        final int[] slots = new int[gammas.size()];
+        for (int i = 0; i < slots.length; ++i) {
+            final Expr gamma = gammas.get(i);
+            if (gamma.getKind() != Expr.Kind.SYMBOL) {
+                throw new IllegalArgumentException(
+                    gamma + " is neither an index nor a momentum");
+            }
+            final boolean index = indices.contains(gamma);
+            slots[i] = gamma.getSymbol() << 1 | (index ? 1 : 0);
+            if (index) {
+                int count = 0;
+                for (int j = 0; j <= i; ++j) {
+                    count += slots[j] == slots[i] ? 1 : 0;
+                }
+                if (count > 2) {
+                    throw new IllegalArgumentException(
+                        "Index " + gamma + " occurs more than twice");
+                }
+            }
+        }
+        return this.toExpr(this.traceOf(slots));
+    }
+
+    private static boolean isIndex(final int slot) {
+        return (slot & 1) != 0;
+    }
+
+    /**
+     * Returns the trace of a string, normalized to <code>Tr 1 = 1</code>.
+     *
+     * @param slots the string, which is not modified
+     * @return the trace
+     */
+    TraceTerms traceOf(final int[] slots) {
+        if ((slots.length & 1) != 0) {
+            return TraceTerms.ZERO;
+        }
+        if (slots.length == 0) {
+            return TraceTerms.UNIT;
+        }
+        final Key key = new Key(canonical(slots));
+        final TraceTerms cached = this.cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        return this.cache.putIfAbsent(key, this.expand(key.slots));
+    }
+
+    /**
+     * Returns the smallest cyclic rotation or reversal of a string in
+     * lexicographic order.
+     *
+     * @param s the string
+     * @return a new array holding the canonical string
+     */
+    static int[] canonical(final int[] s) {
+        final int n = s.length;
+        int best = 0;
+        int bestStep = 1;
+        for (int start = 0; start < n; ++start) {
+            for (int step = -1; step <= 1; step += 2) {
+                for (int k = 0; k < n; ++k) {
+                    final int a = s[Math.floorMod(start + step * k, n)];
+                    final int b = s[Math.floorMod(best + bestStep * k, n)];
+                    if (a != b) {
+                        if (a < b) {
+                            best = start;
+                            bestStep = step;
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+        final int[] result = new int[n];
+        for (int k = 0; k < n; ++k) {
+            result[k] = s[Math.floorMod(best + bestStep * k, n)];
+        }
+        return result;
+    }
+
+    /**
+     * Computes the trace of a canonical string of even length.
+     *
+     * @param s the string
+     * @return the trace
+     */
+    private TraceTerms expand(final int[] s) {
+        final int n = s.length;
+        for (int i = 0; i < n; ++i) {
+            if (isIndex(s[i])) {
+                for (int j = i + 1; j < n; ++j) {
+                    if (s[j] == s[i]) {
+                        return this.contract(s, i, j);
+                    }
+                }
+            }
+        }
+
+        // Tr(a1 a2 ... an) = sum over k of (-1)^k (a1.ak) Tr(a2 ... an)
+        // without ak
+        final TraceTerms.Builder out = new TraceTerms.Builder();
+        final int[] rest = new int[n - 2];
+        for (int k = 1; k < n; ++k) {
+            System.arraycopy(s, 1, rest, 0, k - 1);
+            System.arraycopy(s, k + 1, rest, k - 1, n - k - 1);
+            out.add(this.traceOf(rest), TraceTerms.pair(s[0], s[k]),
+                (k & 1) != 0 ? TraceTerms.ONE : MINUS_ONE);
+        }
+        return out.build();
+    }
+
+    /**
+     * Computes the trace of a string with a contracted pair of indices.
+     *
+     * @param s the string
+     * @param i the position of the first index
+     * @param j the position of the second index
+     * @return the trace
+     */
+    private TraceTerms contract(final int[] s, final int i, final int j) {
+        final int n = s.length;
+        // the string is Tr(gamma^mu S gamma_mu T), cyclically
+        final int[] tail = new int[n - j + i - 1];
+        System.arraycopy(s, j + 1, tail, 0, n - j - 1);
+        System.arraycopy(s, 0, tail, n - j - 1, i);
+
+        List<Polynomial> coefficients = new ArrayList<>();
+        List<int[]> strings = new ArrayList<>();
+        coefficients.add(D);
+        strings.add(new int[0]);
+        for (int m = 0; m < j - i - 1; ++m) {
+            final int x = s[i + 1 + m];
+            final List<Polynomial> c = new ArrayList<>();
+            final List<int[]> t = new ArrayList<>();
+            for (int k = 0; k < strings.size(); ++k) {
+                final int[] string = Arrays.copyOf(strings.get(k), m + 1);
+                string[m] = x;
+                c.add(coefficients.get(k).negate());
+                t.add(string);
+            }
+            final int[] moved = new int[m + 1];
+            moved[0] = x;
+            System.arraycopy(s, i + 1, moved, 1, m);
+            c.add(TWO);
+            t.add(moved);
+            coefficients = c;
+            strings = t;
+        }
+
+        final TraceTerms.Builder out = new TraceTerms.Builder();
+        for (int k = 0; k < strings.size(); ++k) {
+            final int[] string = strings.get(k);
+            final int[] full = Arrays.copyOf(string,
+                string.length + tail.length);
+            System.arraycopy(tail, 0, full, string.length, tail.length);
+            out.add(this.traceOf(full), TraceTerms.NO_PAIR,
+                coefficients.get(k));
+        }
+        return out.build();
+    }
+
+    private Expr toExpr(final TraceTerms trace) {
+        final List<Expr> terms = new ArrayList<>();
+        for (int t = 0; t < trace.size(); ++t) {
+            final List<Expr> factors = new ArrayList<>();
+            final Polynomial c = trace.getCoefficient(t);
+            final List<Expr> powers = new ArrayList<>();
+            for (int k = 0; k < c.getTermCount(); ++k) {
+                powers.add(Expr.product(
+                    Expr.number(TRACE_OF_ONE * c.getCoefficient(k)),
+                    Expr.power(this.dimension, c.getExponent(k, 0))));
+            }
+            factors.add(Expr.sum(powers));
+            for (final long pair : trace.getPairs(t)) {
+                factors.add(factor((int) (pair >>> Integer.SIZE),
+                    (int) pair));
+            }
+            terms.add(Expr.product(factors));
+        }
+        return Expr.sum(terms);
+    }
+
+    private static Expr factor(final int a, final int b) {
+        final Expr x = Expr.symbol(a >>> 1);
+        final Expr y = Expr.symbol(b >>> 1);
+        if (isIndex(a) != isIndex(b)) {
+            return isIndex(a)
+                ? Expr.function(Symbols.name(b >>> 1), x)
+                : Expr.function(Symbols.name(a >>> 1), y);
+        }
+        final String name = isIndex(a) ? "g" : "dot";
+        return x.compareTo(y) <= 0
+            ? Expr.function(name, x, y)
+            : Expr.function(name, y, x);
+    }
+
+    /**
+     * A canonical string as a hash key.
+     */
+    private static final class Key {
+        /**
+         * The canonical string.
+         */
+        private final int[] slots;
+
+        /**
+         * The hash code.
+         */
+        private final int hash;
+
+        Key(final int[] theSlots) {
+            this.slots = theSlots;
+            this.hash = Arrays.hashCode(theSlots);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof Key
+                && Arrays.equals(this.slots, ((Key) obj).slots);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * TraceTerms.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.dirac;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.github.anyloop.symbolic.IntegerRing;
+import com.github.anyloop.symbolic.Polynomial;
+
+/**
+ * The expanded trace of a gamma string: a sum of products of metric
+ * tensors and scalar products, each with a coefficient that is a
+ * polynomial in the dimension.
+ *
+ * A factor is stored as a pair of slot codes, the smaller one in the
+ * upper half of a <code>long</code>. The factors of a term are sorted,
+ * so that equal products have equal arrays. Instances are immutable.
+ *
+ * @since 0.1.0
+ */
+final class TraceTerms {
+
+    /**
+     * The coefficient one.
+     */
+    static final Polynomial ONE =
+        Polynomial.constant(IntegerRing.INSTANCE, 1, 1);
+
+    /**
+     * Marker for the absence of an additional factor.
+     */
+    static final long NO_PAIR = -1;
+
+    /**
+     * The trace of an odd number of gamma matrices.
+     */
+    static final TraceTerms ZERO =
+        new TraceTerms(new long[0][], new Polynomial[0]);
+
+    /**
+     * The trace of the empty string, normalized to one.
+     */
+    static final TraceTerms UNIT =
+        new TraceTerms(new long[][] {{}}, new Polynomial[] {ONE});
+
+    /**
+     * The factors of each term.
+     */
+    private final long[][] pairs;
+
+    /**
+     * The coefficient of each term.
+     */
+    private final Polynomial[] coefficients;
+
+    private TraceTerms(
+            final long[][] thePairs,
+            final Polynomial[] theCoefficients) {
+        this.pairs = thePairs;
+        this.coefficients = theCoefficients;
+    }
+
+    /**
+     * Encodes the contraction of two slots.
+     *
+     * @param a the first slot
+     * @param b the second slot
+     * @return the factor
+     */
+    static long pair(final int a, final int b) {
+        final int lo = Math.min(a, b);
+        final int hi = Math.max(a, b);
+        return ((long) lo << Integer.SIZE) | (hi & 0xffffffffL);
+    }
+
+    /**
+     * Returns the number of terms.
+     *
+     * @return the number of terms
+     */
+    int size() {
+        return this.pairs.length;
+    }
+
+    /**
+     * Returns the factors of a term.
+     *
+     * @param term the index of the term
+     * @return the sorted factors; the array must not be modified
+     */
+    long[] getPairs(final int term) {
+        return this.pairs[term];
+    }
+
+    /**
+     * Returns the coefficient of a term.
+     *
+     * @param term the index of the term
+     * @return the coefficient as a polynomial in the dimension
+     */
+    Polynomial getCoefficient(final int term) {
+        return this.coefficients[term];
+    }
+
+    /**
+     * Collects terms, combining equal products.
+     */
+    static final class Builder {
+        /**
+         * The coefficient of each product.
+         */
+        private final Map<Key, Polynomial> terms = new HashMap<>();
+
+        /**
+         * Adds a multiple of a trace.
+         *
+         * @param trace the trace
+         * @param pair a factor multiplying every term or
+         *        {@link #NO_PAIR}
+         * @param factor the coefficient multiplying every term
+         */
+        void add(
+                final TraceTerms trace,
+                final long pair,
+                final Polynomial factor) {
+            for (int t = 0; t < trace.size(); ++t) {
+                final long[] p = trace.pairs[t];
+                final Key key = new Key(pair == NO_PAIR ? p : insert(p, pair));
+                final Polynomial c = factor == ONE
+                    ? trace.coefficients[t]
+                    : trace.coefficients[t].multiply(factor);
+                this.terms.merge(key, c, (x, y) -> {
+                    final Polynomial sum = x.add(y);
+                    return sum.isZero() ? null : sum;
+                });
+            }
+        }
+
+        private static long[] insert(final long[] sorted, final long pair) {
+            final long[] result = new long[sorted.length + 1];
+            int k = 0;
+            while (k < sorted.length && sorted[k] < pair) {
+                result[k] = sorted[k];
+                ++k;
+            }
+            result[k] = pair;
+            System.arraycopy(sorted, k, result, k + 1, sorted.length - k);
+            return result;
+        }
+
+        TraceTerms build() {
+            final long[][] p = new long[this.terms.size()][];
+            final Polynomial[] c = new Polynomial[p.length];
+            int t = 0;
+            for (final Map.Entry<Key, Polynomial> e : this.terms.entrySet()) {
+                p[t] = e.getKey().pairs;
+                c[t++] = e.getValue();
+            }
+            return new TraceTerms(p, c);
+        }
+    }
+
+    /**
+     * A product of factors as a hash key.
+     */
+    private static final class Key {
+        /**
+         * The sorted factors.
+         */
+        private final long[] pairs;
+
+        /**
+         * The hash code.
+         */
+        private final int hash;
+
+        Key(final long[] thePairs) {
+            this.pairs = thePairs;
+            this.hash = Arrays.hashCode(thePairs);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof Key
+                && Arrays.equals(this.pairs, ((Key) obj).pairs);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * package-info.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+/**
+ * This package computes traces of strings of Dirac gamma matrices in
+ * <code>d</code> dimensions.
+ *
+ * Repeated Lorentz indices are contracted before a trace is expanded
+ * into products of metric tensors and scalar products, and the traces
+ * of all substrings are memoized under a canonical form that is
+ * invariant under cyclic rotation and reversal, so that strings of
+ * a few momenta stay cheap however long they are.
+ */
+package com.github.anyloop.dirac;
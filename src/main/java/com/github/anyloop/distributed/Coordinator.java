@@ -0,0 +1,683 @@
+/*
+ * Coordinator.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.anyloop.chassis.ConfigurationException;
+
+/**
+ * Hands the partitions of a stage to worker processes and merges
+ * their results.
+ *
+ * The coordinator listens on a socket of the loopback interface and
+ * starts the workers, which connect back and ask for work. Each
+ * worker processes one partition at a time and streams its records
+ * back. A {@link RecordMerger} given to {@link #stream} receives them
+ * as they arrive, so that the coordinator holds no partition in
+ * memory. For a {@link PartitionMerger} given to {@link #run}, the
+ * records of a partition are held back until the worker reports it
+ * as done and are then passed on together, so that a crash loses
+ * nothing but the partition in progress. If a worker fails on a
+ * partition or its
+ * connection is lost, the partition is handed to another worker, and
+ * a new worker is started in place of a lost one. The run fails once
+ * a partition has failed as many times as there are attempts.
+ *
+ * All events are handled by the thread calling {@link #run}; each
+ * connection has a thread of its own that only reads. The queue of
+ * events is bounded, so that a reader waits while the merger falls
+ * behind and the workers in turn wait for the socket to drain.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class Coordinator {
+
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(Coordinator.class);
+
+    /**
+     * The number of seconds the workers are given to exit.
+     */
+    private static final long EXIT_SECONDS = 10;
+
+    /**
+     * The number of events waiting to be handled at most.
+     */
+    private static final int EVENT_CAPACITY = 1024;
+
+    /**
+     * The number of milliseconds a reader waits for room in the queue
+     * before it checks whether the run is over.
+     */
+    private static final long POST_MILLIS = 100;
+
+    /**
+     * The number of milliseconds the exit of a worker which has not
+     * connected is held back, so that a connection made just before
+     * is handled first.
+     */
+    private static final long CONNECT_GRACE_MILLIS = 500;
+
+    /**
+     * The name of the stage.
+     */
+    private final String name;
+
+    /**
+     * The number of partitions.
+     */
+    private final int partitionCount;
+
+    /**
+     * The number of workers running at the same time.
+     */
+    private final int workers;
+
+    /**
+     * The number of attempts per partition.
+     */
+    private final int attempts;
+
+    /**
+     * The launcher of the workers.
+     */
+    private final WorkerLauncher launcher;
+
+    /**
+     * The number of failed attempts of the last run.
+     */
+    private int failureCount;
+
+    /**
+     * The number of workers started in the last run.
+     */
+    private int launchCount;
+
+    /**
+     * Creates a coordinator.
+     *
+     * @param theName the name of the stage
+     * @param thePartitionCount the number of partitions
+     * @param theWorkers the number of workers running at the same time
+     * @param theAttempts the number of times a partition is tried
+     * @param theLauncher the launcher of the workers
+     * @throws IllegalArgumentException if a number is not positive
+     *
+     * @since 0.1.0
+     */
+    public Coordinator(
+            final String theName,
+            final int thePartitionCount,
+            final int theWorkers,
+            final int theAttempts,
+            final WorkerLauncher theLauncher) {
+        if (thePartitionCount < 1 || theWorkers < 1 || theAttempts < 1) {
+            throw new IllegalArgumentException(
+                "The numbers of partitions, workers and attempts must be"
+                + " positive");
+        }
+        this.name = theName;
+        this.partitionCount = thePartitionCount;
+        this.workers = theWorkers;
+        this.attempts = theAttempts;
+        this.launcher = theLauncher;
+    }
+
+    /**
+     * Creates the coordinator of a stage with the configured workers
+     * and attempts.
+     *
+     * @param name the name of the stage
+     * @param partitionCount the number of partitions
+     * @param config the configuration
+     * @param launcher the launcher of the workers
+     * @return the coordinator
+     * @throws ConfigurationException if the configuration is invalid
+     *
+     * @since 0.1.0
+     */
+    public static Coordinator fromConfig(
+            final String name,
+            final int partitionCount,
+            final DistributedConfig config,
+            final WorkerLauncher launcher) throws ConfigurationException {
+        try {
+            return new Coordinator(name, partitionCount,
+                config.getWorkers(), config.getAttempts(), launcher);
+        } catch (IllegalArgumentException ex) {
+            throw new ConfigurationException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Returns the number of partitions.
+     *
+     * @return the number of partitions
+     *
+     * @since 0.1.0
+     */
+    public int getPartitionCount() {
+        return this.partitionCount;
+    }
+
+    /**
+     * Returns the number of failed attempts of the last run.
+     *
+     * @return the number of partitions handed out again
+     *
+     * @since 0.1.0
+     */
+    public int getFailureCount() {
+        return this.failureCount;
+    }
+
+    /**
+     * Returns the number of workers started in the last run.
+     *
+     * @return the number of workers, counting restarts
+     *
+     * @since 0.1.0
+     */
+    public int getLaunchCount() {
+        return this.launchCount;
+    }
+
+    /**
+     * Processes all partitions, or as many as the merger needs, and
+     * stops the workers.
+     *
+     * @param merger the merger of the results
+     * @throws IOException if a partition fails too often, the workers
+     *         cannot be started or the results cannot be merged
+     *
+     * @since 0.1.0
+     */
+    public void run(final PartitionMerger merger) throws IOException {
+        final Map<Integer, List<byte[]>> records = new HashMap<>();
+        this.stream(new RecordMerger() {
+            @Override
+            public void record(final int partition, final byte[] record) {
+                records.computeIfAbsent(partition, p -> new ArrayList<>())
+                    .add(record);
+            }
+
+            @Override
+            public boolean done(final int partition) throws IOException {
+                final List<byte[]> r = records.remove(partition);
+                return merger.merge(partition,
+                    r == null ? Collections.emptyList() : r);
+            }
+
+            @Override
+            public void failed(final int partition) {
+                records.remove(partition);
+            }
+        });
+    }
+
+    /**
+     * Processes all partitions, or as many as the merger needs, passing
+     * on every record as it arrives, and stops the workers.
+     *
+     * @param merger the merger of the records
+     * @throws IOException if a partition fails too often, the workers
+     *         cannot be started or the records cannot be merged
+     *
+     * @since 0.1.0
+     */
+    public void stream(final RecordMerger merger) throws IOException {
+        this.failureCount = 0;
+        this.launchCount = 0;
+        final Session session = new Session(merger);
+        try (ServerSocket server = new ServerSocket(
+                0, 0, InetAddress.getLoopbackAddress())) {
+            session.address = server.getInetAddress().getHostAddress()
+                + ":" + server.getLocalPort();
+            final Thread acceptor = new Thread(() -> {
+                try {
+                    while (true) {
+                        new Connection(session, server.accept()).start();
+                    }
+                } catch (IOException ex) {
+                    // the server socket is closed
+                }
+            }, this.name + "-coordinator");
+            acceptor.setDaemon(true);
+            acceptor.start();
+            session.run();
+        } finally {
+            session.shutdown();
+        }
+    }
+
+    /**
+     * Something that happened in a reader thread, to be handled by
+     * the coordinating thread.
+     */
+    @FunctionalInterface
+    private interface Action {
+        void apply() throws IOException;
+    }
+
+    /**
+     * The state of a single run, only accessed by the coordinating
+     * thread.
+     */
+    private final class Session {
+        /**
+         * The merger.
+         */
+        private final RecordMerger merger;
+
+        /**
+         * The events to be handled.
+         */
+        private final BlockingQueue<Action> events =
+            new ArrayBlockingQueue<>(EVENT_CAPACITY);
+
+        /**
+         * Set once the run is over and events are no longer handled.
+         */
+        private volatile boolean finished;
+
+        /**
+         * The partitions not handed out yet.
+         */
+        private final Deque<Integer> pending = new ArrayDeque<>();
+
+        /**
+         * The failed attempts of each partition.
+         */
+        private final int[] failures =
+            new int[Coordinator.this.partitionCount];
+
+        /**
+         * Which partitions have been merged.
+         */
+        private final boolean[] merged =
+            new boolean[Coordinator.this.partitionCount];
+
+        /**
+         * The number of partitions not merged yet.
+         */
+        private int remaining = Coordinator.this.partitionCount;
+
+        /**
+         * Set once the merger has all it needs.
+         */
+        private boolean complete;
+
+        /**
+         * The processes by number of the worker.
+         */
+        private final Map<Integer, Process> processes = new HashMap<>();
+
+        /**
+         * The numbers of the workers which have connected.
+         */
+        private final Set<Integer> connected = new HashSet<>();
+
+        /**
+         * The open connections.
+         */
+        private final List<Connection> connections = new ArrayList<>();
+
+        /**
+         * The number of workers which exited without connecting.
+         */
+        private int startFailures;
+
+        /**
+         * The address of the coordinator.
+         */
+        private String address;
+
+        Session(final RecordMerger theMerger) {
+            this.merger = theMerger;
+            for (int p = 0; p < Coordinator.this.partitionCount; ++p) {
+                this.pending.add(p);
+            }
+        }
+
+        /**
+         * Queues an event, waiting while the queue is full. Events
+         * posted after the run is over are dropped.
+         *
+         * @param action the event
+         */
+        void post(final Action action) {
+            try {
+                while (!this.finished && !this.events.offer(
+                        action, POST_MILLIS, TimeUnit.MILLISECONDS)) {
+                    // the coordinating thread is behind
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void run() throws IOException {
+            final int n = Math.min(
+                Coordinator.this.workers, Coordinator.this.partitionCount);
+            for (int i = 0; i < n; ++i) {
+                this.launch();
+            }
+            while (!this.complete && this.remaining > 0) {
+                try {
+                    this.events.take().apply();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException(
+                        "Coordinator of " + Coordinator.this.name
+                        + " interrupted");
+                }
+            }
+        }
+
+        private void launch() throws IOException {
+            final int worker = Coordinator.this.launchCount++;
+            final Process process = Coordinator.this.launcher.launch(
+                worker, this.address);
+            this.processes.put(worker, process);
+            process.onExit().thenRunAsync(
+                () -> this.post(() -> this.exited(worker)),
+                CompletableFuture.delayedExecutor(
+                    CONNECT_GRACE_MILLIS, TimeUnit.MILLISECONDS));
+        }
+
+        void connected(final Connection c) throws IOException {
+            if (!this.processes.containsKey(c.worker)) {
+                // the worker has been given up and replaced already
+                c.close();
+                return;
+            }
+            this.connections.add(c);
+            this.connected.add(c.worker);
+            this.assign(c);
+        }
+
+        private void assign(final Connection c) throws IOException {
+            if (this.complete || this.pending.isEmpty()) {
+                c.dismiss();
+                return;
+            }
+            c.partition = this.pending.poll();
+            try {
+                c.out.writeByte(Protocol.ASSIGN);
+                c.out.writeUTF(Coordinator.this.name);
+                c.out.writeInt(c.partition);
+                c.out.writeInt(Coordinator.this.partitionCount);
+                c.out.flush();
+            } catch (IOException ex) {
+                this.lost(c);
+            }
+        }
+
+        void record(final Connection c, final int partition,
+                final byte[] data) throws IOException {
+            if (c.partition == partition) {
+                this.merger.record(partition, data);
+            }
+        }
+
+        void done(final Connection c, final int partition)
+                throws IOException {
+            if (c.partition != partition) {
+                return;
+            }
+            c.partition = -1;
+            if (!this.merged[partition]) {
+                this.merged[partition] = true;
+                --this.remaining;
+                if (this.merger.done(partition)) {
+                    this.complete = true;
+                }
+            }
+            this.assign(c);
+        }
+
+        void failed(final Connection c, final int partition,
+                final String message) throws IOException {
+            if (c.partition != partition) {
+                return;
+            }
+            c.partition = -1;
+            this.fail(partition, message);
+            this.assign(c);
+        }
+
+        private void fail(final int partition, final String message)
+                throws IOException {
+            ++Coordinator.this.failureCount;
+            this.merger.failed(partition);
+            LOGGER.warn("Partition " + partition + " of "
+                + Coordinator.this.name + " failed: " + message);
+            if (++this.failures[partition] >= Coordinator.this.attempts) {
+                throw new IOException("Partition " + partition + " of "
+                    + Coordinator.this.name + " failed "
+                    + Coordinator.this.attempts + " times: " + message);
+            }
+            this.pending.addFirst(partition);
+        }
+
+        void lost(final Connection c) throws IOException {
+            if (c.closed) {
+                return;
+            }
+            c.close();
+            this.connections.remove(c);
+            if (c.partition >= 0) {
+                final int partition = c.partition;
+                c.partition = -1;
+                this.fail(partition, "worker " + c.worker + " lost");
+                if (!this.complete) {
+                    this.launch();
+                }
+            }
+        }
+
+        void exited(final int worker) throws IOException {
+            final Process process = this.processes.remove(worker);
+            if (this.connected.contains(worker) || process == null) {
+                // a lost connection is handled by the reader
+                return;
+            }
+            LOGGER.warn("Worker " + worker + " of " + Coordinator.this.name
+                + " exited with code " + process.exitValue());
+            if (++this.startFailures >= Coordinator.this.attempts) {
+                throw new IOException("Workers of " + Coordinator.this.name
+                    + " cannot be started");
+            }
+            if (!this.complete && !this.pending.isEmpty()) {
+                this.launch();
+            }
+        }
+
+        /**
+         * Stops the idle workers and kills the others.
+         */
+        void shutdown() {
+            this.finished = true;
+            this.events.clear();
+            for (final Connection c : this.connections) {
+                if (c.partition < 0) {
+                    c.dismiss();
+                } else {
+                    final Process process = this.processes.get(c.worker);
+                    if (process != null) {
+                        process.destroyForcibly();
+                    }
+                    c.close();
+                }
+            }
+            for (final Process process : this.processes.values()) {
+                try {
+                    if (!process.waitFor(EXIT_SECONDS, TimeUnit.SECONDS)) {
+                        process.destroyForcibly();
+                    }
+                } catch (InterruptedException ex) {
+                    process.destroyForcibly();
+                    Thread.currentThread().interrupt();
+                }
+            }
+            for (final Connection c : this.connections) {
+                c.close();
+            }
+        }
+    }
+
+    /**
+     * The connection to a worker.
+     */
+    private static final class Connection extends Thread {
+        /**
+         * The session.
+         */
+        private final Session session;
+
+        /**
+         * The socket.
+         */
+        private final Socket socket;
+
+        /**
+         * The stream to the worker, only used by the coordinating
+         * thread.
+         */
+        private final DataOutputStream out;
+
+        /**
+         * The number of the worker.
+         */
+        private int worker = -1;
+
+        /**
+         * The partition in progress or <code>-1</code>.
+         */
+        private int partition = -1;
+
+        /**
+         * Set once the connection is closed.
+         */
+        private boolean closed;
+
+        Connection(final Session theSession, final Socket theSocket)
+                throws IOException {
+            this.session = theSession;
+            this.socket = theSocket;
+            this.out = new DataOutputStream(
+                new BufferedOutputStream(theSocket.getOutputStream()));
+            this.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                final DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(this.socket.getInputStream()));
+                if (in.readByte() != Protocol.HELLO
+                        || in.readInt() != Protocol.MAGIC) {
+                    throw new IOException("Not a worker");
+                }
+                this.worker = in.readInt();
+                this.setName("worker-" + this.worker);
+                this.session.post(() -> this.session.connected(this));
+                while (true) {
+                    final byte tag = in.readByte();
+                    final int p = in.readInt();
+                    if (tag == Protocol.RECORD) {
+                        final int length = in.readInt();
+                        if (length < 0) {
+                            throw new IOException("Malformed record");
+                        }
+                        final byte[] data = new byte[length];
+                        in.readFully(data);
+                        this.session.post(
+                            () -> this.session.record(this, p, data));
+                    } else if (tag == Protocol.DONE) {
+                        this.session.post(() -> this.session.done(this, p));
+                    } else if (tag == Protocol.FAILED) {
+                        final String message = in.readUTF();
+                        this.session.post(
+                            () -> this.session.failed(this, p, message));
+                    } else {
+                        throw new IOException("Unknown message " + tag);
+                    }
+                }
+            } catch (IOException ex) {
+                this.session.post(() -> this.session.lost(this));
+            }
+        }
+
+        /**
+         * Tells the worker to exit.
+         */
+        void dismiss() {
+            try {
+                this.out.writeByte(Protocol.STOP);
+                this.out.flush();
+            } catch (IOException ex) {
+                // the worker is gone already
+            }
+        }
+
+        void close() {
+            this.closed = true;
+            try {
+                this.socket.close();
+            } catch (IOException ex) {
+                // nothing left to do
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * DistributedConfig.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.distributed;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.chassis.annotations.ConfigProperty;
+import com.github.anyloop.chassis.annotations.DefaultValue;
+
+/**
+ * Configuration of the distribution of work over worker processes.
+ *
+ * In YAML notation:
+ * <pre>
+ * distributed:
+ *   workers: 4
+ *   partitions: 64
+ *   attempts: 3
+ *   javaOptions: -Xmx8g -XX:+UseParallelGC
+ * </pre>
+ *
+ * The command line option <code>--workers</code> sets
+ * <code>distributed.workers</code>. The keys
+ * <code>distributed.coordinator</code> and
+ * <code>distributed.worker</code> are set by the coordinator on the
+ * command lines of the workers it starts.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public interface DistributedConfig {
+
+    /**
+     * The number of worker processes. Zero runs everything in this
+     * process.
+     *
+     * @return the number of workers
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("distributed.workers")
+    @DefaultValue("0")
+    int getWorkers() throws ConfigurationException;
+
+    /**
+     * The number of partitions into which the work is split where it
+     * can be split freely; zero or less means four per worker.
+     *
+     * @return the number of partitions
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("distributed.partitions")
+    @DefaultValue("0")
+    int getPartitions() throws ConfigurationException;
+
+    /**
+     * The number of times a partition is tried before the run fails.
+     *
+     * @return the number of attempts
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("distributed.attempts")
+    @DefaultValue("3")
+    int getAttempts() throws ConfigurationException;
+
+    /**
+     * The options passed to the JVMs of the workers, separated by
+     * whitespace.
+     *
+     * @return the options
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("distributed.javaOptions")
+    @DefaultValue("")
+    String getJavaOptions() throws ConfigurationException;
+
+    /**
+     * The address <code>host:port</code> of the coordinator. If it is
+     * set, the program runs as a worker.
+     *
+     * @return the address or an empty string
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("distributed.coordinator")
+    @DefaultValue("")
+    String getCoordinator() throws ConfigurationException;
+
+    /**
+     * The number under which a worker was started.
+     *
+     * @return the number of the worker
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("distributed.worker")
+    @DefaultValue("0")
+    int getWorker() throws ConfigurationException;
+}
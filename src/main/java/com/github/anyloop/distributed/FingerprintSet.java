@@ -0,0 +1,136 @@
+/*
+ * FingerprintSet.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.distributed;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The set of records seen by a {@link RecordMerger}, kept as 128-bit
+ * fingerprints instead of the records themselves.
+ *
+ * A fingerprint is the first half of the SHA-256 hash of a record, so
+ * that even billions of records collide with negligible probability,
+ * and it takes two <code>long</code> entries of an open-addressing
+ * table whatever the length of the record.
+ *
+ * Instances are not thread-safe.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class FingerprintSet {
+
+    /**
+     * The initial number of slots.
+     */
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    private final MessageDigest digest;
+
+    /**
+     * The two halves of the fingerprint in each slot, zero for an
+     * empty slot.
+     */
+    private long[] slots = new long[2 * INITIAL_CAPACITY];
+
+    private int size;
+
+    /**
+     * Creates an empty set.
+     *
+     * @since 0.1.0
+     */
+    public FingerprintSet() {
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    /**
+     * Returns the number of distinct records added.
+     *
+     * @return the size
+     *
+     * @since 0.1.0
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Adds a record unless one with the same fingerprint is present.
+     *
+     * @param record the record
+     * @return <code>true</code> if the record is new
+     *
+     * @since 0.1.0
+     */
+    public boolean add(final byte[] record) {
+        final ByteBuffer hash = ByteBuffer.wrap(this.digest.digest(record));
+        final long high = hash.getLong();
+        long low = hash.getLong();
+        if (high == 0 && low == 0) {
+            // reserved for empty slots
+            low = 1;
+        }
+        if (!this.insert(high, low)) {
+            return false;
+        }
+        if (2 * ++this.size > this.slots.length / 2) {
+            this.grow();
+        }
+        return true;
+    }
+
+    private boolean insert(final long high, final long low) {
+        final int mask = this.slots.length / 2 - 1;
+        // the hash is uniform, so its bits serve as the index
+        for (int i = (int) low & mask;; i = (i + 1) & mask) {
+            final long h = this.slots[2 * i];
+            final long l = this.slots[2 * i + 1];
+            if (h == 0 && l == 0) {
+                this.slots[2 * i] = high;
+                this.slots[2 * i + 1] = low;
+                return true;
+            }
+            if (h == high && l == low) {
+                return false;
+            }
+        }
+    }
+
+    private void grow() {
+        final long[] old = this.slots;
+        this.slots = new long[2 * old.length];
+        for (int i = 0; i < old.length; i += 2) {
+            if (old[i] != 0 || old[i + 1] != 0) {
+                this.insert(old[i], old[i + 1]);
+            }
+        }
+    }
+}
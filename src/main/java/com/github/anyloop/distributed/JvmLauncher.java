@@ -0,0 +1,137 @@
+/*
+ * JvmLauncher.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.distributed;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.github.anyloop.chassis.ConfigurationException;
+
+/**
+ * Starts workers as JVMs on this machine, with the class path of this
+ * JVM.
+ *
+ * A worker is run with the given main class and arguments, to which
+ * the definitions of <code>distributed.coordinator</code> and
+ * <code>distributed.worker</code> are appended in the form of the
+ * command line option <code>-D</code>. Its standard output and error
+ * are those of this process.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class JvmLauncher implements WorkerLauncher {
+
+    /**
+     * The options of the JVM.
+     */
+    private final List<String> javaOptions;
+
+    /**
+     * The main class of the workers.
+     */
+    private final String mainClass;
+
+    /**
+     * The arguments of the main class.
+     */
+    private final List<String> arguments;
+
+    /**
+     * Creates a launcher.
+     *
+     * @param theJavaOptions the options of the JVM
+     * @param theMainClass the main class of the workers
+     * @param theArguments the arguments of the main class
+     *
+     * @since 0.1.0
+     */
+    public JvmLauncher(
+            final List<String> theJavaOptions,
+            final String theMainClass,
+            final List<String> theArguments) {
+        this.javaOptions = new ArrayList<>(theJavaOptions);
+        this.mainClass = theMainClass;
+        this.arguments = new ArrayList<>(theArguments);
+    }
+
+    /**
+     * Creates a launcher with the configured options of the JVM.
+     *
+     * @param config the configuration
+     * @param mainClass the main class of the workers
+     * @param arguments the arguments of the main class
+     * @return the launcher
+     * @throws ConfigurationException if the options cannot be read
+     *
+     * @since 0.1.0
+     */
+    public static JvmLauncher fromConfig(
+            final DistributedConfig config,
+            final String mainClass,
+            final List<String> arguments) throws ConfigurationException {
+        final String options = config.getJavaOptions().trim();
+        return new JvmLauncher(options.isEmpty() ? List.of()
+                : Arrays.asList(options.split("\\s+")),
+            mainClass, arguments);
+    }
+
+    /**
+     * Returns the command line of a worker.
+     *
+     * @param worker the number of the worker
+     * @param coordinator the address of the coordinator
+     * @return the command and its arguments
+     *
+     * @since 0.1.0
+     */
+    public List<String> getCommand(
+            final int worker,
+            final String coordinator) {
+        final List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java")
+            .toString());
+        command.addAll(this.javaOptions);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(this.mainClass);
+        command.addAll(this.arguments);
+        Collections.addAll(command,
+            "-D", "distributed.coordinator=" + coordinator,
+            "-D", "distributed.worker=" + worker);
+        return command;
+    }
+
+    @Override
+    public Process launch(final int worker, final String coordinator)
+            throws IOException {
+        return new ProcessBuilder(this.getCommand(worker, coordinator))
+            .inheritIO()
+            .start();
+    }
+}
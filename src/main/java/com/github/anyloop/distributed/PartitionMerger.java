@@ -0,0 +1,53 @@
+/*
+ * PartitionMerger.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.distributed;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Merges the results of the partitions in the coordinator.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+@FunctionalInterface
+public interface PartitionMerger {
+
+    /**
+     * Merges the results of a partition, which is called exactly once
+     * for every partition processed completely and never
+     * concurrently. The records of a failed attempt are never passed
+     * on.
+     *
+     * @param partition the number of the partition
+     * @param records the records sent by the worker, in order
+     * @return <code>true</code> if the result is complete, so that the
+     *         remaining partitions need not be processed
+     * @throws IOException if the results cannot be merged
+     *
+     * @since 0.1.0
+     */
+    boolean merge(int partition, List<byte[]> records) throws IOException;
+}
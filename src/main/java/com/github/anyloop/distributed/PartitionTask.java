@@ -0,0 +1,52 @@
+/*
+ * PartitionTask.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.distributed;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Processes one partition of the work of a stage in a worker.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+@FunctionalInterface
+public interface PartitionTask {
+
+    /**
+     * Processes a partition. The consumer may be called from several
+     * threads; it throws an {@link java.io.UncheckedIOException} if
+     * the connection to the coordinator is lost.
+     *
+     * @param partition the number of the partition
+     * @param count the number of partitions
+     * @param out receives the results as records of bytes
+     * @throws IOException if the partition cannot be processed
+     *
+     * @since 0.1.0
+     */
+    void run(int partition, int count, Consumer<byte[]> out)
+        throws IOException;
+}
@@ -0,0 +1,99 @@
+/*
+ * Protocol.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.distributed;
+
+/**
+ * The messages exchanged between the coordinator and its workers.
+ *
+ * Every message starts with its tag. A worker opens the connection
+ * with {@link #HELLO}, followed by {@link #MAGIC} and its number. The
+ * coordinator answers with {@link #ASSIGN}, followed by the name of
+ * the stage, the number of the partition and the number of
+ * partitions, or with {@link #STOP}. The worker then sends any number
+ * of {@link #RECORD} messages, each followed by the partition, the
+ * length and the bytes of the record, and finally either
+ * {@link #DONE} followed by the partition or {@link #FAILED} followed
+ * by the partition and a message, after which it waits for the next
+ * assignment.
+ *
+ * @since 0.1.0
+ */
+final class Protocol {
+
+    /**
+     * Identifies the protocol and its version.
+     */
+    static final int MAGIC = 0x414c5001;
+
+    /**
+     * A worker has connected.
+     */
+    static final byte HELLO = 'H';
+
+    /**
+     * A partition is assigned to a worker.
+     */
+    static final byte ASSIGN = 'A';
+
+    /**
+     * A worker is to exit.
+     */
+    static final byte STOP = 'S';
+
+    /**
+     * A result of a partition.
+     */
+    static final byte RECORD = 'R';
+
+    /**
+     * A partition is done.
+     */
+    static final byte DONE = 'D';
+
+    /**
+     * A partition has failed.
+     */
+    static final byte FAILED = 'F';
+
+    private Protocol() {
+    }
+
+    /**
+     * Splits an address into host and port.
+     *
+     * @param address the address <code>host:port</code>
+     * @return the host and the port
+     * @throws IllegalArgumentException if the address is malformed
+     */
+    static String[] parse(final String address) {
+        final int colon = address.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException(
+                "Invalid address '" + address + "'");
+        }
+        final String port = address.substring(colon + 1);
+        Integer.parseInt(port);
+        return new String[] {address.substring(0, colon), port};
+    }
+}
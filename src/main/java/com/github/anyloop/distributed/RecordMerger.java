@@ -0,0 +1,80 @@
+/*
+ * RecordMerger.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.distributed;
+
+import java.io.IOException;
+
+/**
+ * Merges the records of the partitions in the coordinator as they
+ * arrive, so that they need not be held until a partition is done.
+ *
+ * Unlike a {@link PartitionMerger}, a record merger also receives the
+ * records of attempts which fail later, and the records of the
+ * partition are sent again by the next attempt. Merging must therefore
+ * be idempotent, e.g. by dropping records seen before.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+@FunctionalInterface
+public interface RecordMerger {
+
+    /**
+     * Merges a record, which is never called concurrently.
+     *
+     * @param partition the number of the partition
+     * @param record the record sent by the worker
+     * @throws IOException if the record cannot be merged
+     *
+     * @since 0.1.0
+     */
+    void record(int partition, byte[] record) throws IOException;
+
+    /**
+     * Called once for every partition processed completely, after all
+     * of its records.
+     *
+     * @param partition the number of the partition
+     * @return <code>true</code> if the result is complete, so that the
+     *         remaining partitions need not be processed
+     * @throws IOException if the results cannot be merged
+     *
+     * @since 0.1.0
+     */
+    default boolean done(final int partition) throws IOException {
+        return false;
+    }
+
+    /**
+     * Called when an attempt on a partition has failed, after the
+     * records it has sent.
+     *
+     * @param partition the number of the partition
+     * @throws IOException if the results cannot be merged
+     *
+     * @since 0.1.0
+     */
+    default void failed(final int partition) throws IOException {
+    }
+}
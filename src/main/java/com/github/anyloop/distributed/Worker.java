@@ -0,0 +1,142 @@
+/*
+ * Worker.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The worker side of a distributed stage.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class Worker {
+
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(Worker.class);
+
+    private Worker() {
+    }
+
+    /**
+     * Connects to a coordinator and processes the partitions assigned
+     * to this worker until it is told to stop.
+     *
+     * A task that fails is reported to the coordinator, which may
+     * assign the partition again, and the worker carries on.
+     *
+     * @param coordinator the address <code>host:port</code> of the
+     *        coordinator
+     * @param worker the number of this worker
+     * @param tasks the tasks by name of the stage
+     * @throws IOException if the connection fails
+     * @throws IllegalArgumentException if the address is malformed
+     *
+     * @since 0.1.0
+     */
+    public static void serve(
+            final String coordinator,
+            final int worker,
+            final Map<String, PartitionTask> tasks) throws IOException {
+        final String[] address = Protocol.parse(coordinator);
+        try (Socket socket =
+                new Socket(address[0], Integer.parseInt(address[1]))) {
+            final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+            final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+            out.writeByte(Protocol.HELLO);
+            out.writeInt(Protocol.MAGIC);
+            out.writeInt(worker);
+            out.flush();
+
+            for (byte tag = in.readByte(); tag == Protocol.ASSIGN;
+                    tag = in.readByte()) {
+                final String stage = in.readUTF();
+                final int partition = in.readInt();
+                final int count = in.readInt();
+                process(tasks.get(stage), stage, partition, count, out);
+            }
+        }
+    }
+
+    private static void process(
+            final PartitionTask task,
+            final String stage,
+            final int partition,
+            final int count,
+            final DataOutputStream out) throws IOException {
+        final Consumer<byte[]> records = record -> {
+            synchronized (out) {
+                try {
+                    out.writeByte(Protocol.RECORD);
+                    out.writeInt(partition);
+                    out.writeInt(record.length);
+                    out.write(record);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        };
+        String failure = null;
+        try {
+            if (task == null) {
+                throw new IOException("Unknown stage " + stage);
+            }
+            task.run(partition, count, records);
+        } catch (UncheckedIOException ex) {
+            // the connection is lost
+            throw ex.getCause();
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.error("Partition " + partition + " of " + stage
+                + " failed", ex);
+            failure = String.valueOf(ex);
+        }
+        synchronized (out) {
+            if (failure == null) {
+                out.writeByte(Protocol.DONE);
+                out.writeInt(partition);
+            } else {
+                out.writeByte(Protocol.FAILED);
+                out.writeInt(partition);
+                out.writeUTF(failure);
+            }
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * WorkerLauncher.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.distributed;
+
+import java.io.IOException;
+
+/**
+ * Starts the worker processes of a {@link Coordinator}.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+@FunctionalInterface
+public interface WorkerLauncher {
+
+    /**
+     * Starts a worker which connects to the coordinator.
+     *
+     * @param worker the number of the worker, counting restarts
+     * @param coordinator the address <code>host:port</code> of the
+     *        coordinator
+     * @return the process
+     * @throws IOException if the process cannot be started
+     *
+     * @since 0.1.0
+     */
+    Process launch(int worker, String coordinator) throws IOException;
+}
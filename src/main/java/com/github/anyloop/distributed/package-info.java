@@ -0,0 +1,42 @@
+/*
+ * package-info.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+/**
+ * This package spreads the work of a stage over several worker
+ * processes.
+ *
+ * A single JVM with a huge heap makes poor use of a large machine,
+ * since its garbage collection pauses grow with the heap. Instead, a
+ * {@link com.github.anyloop.distributed.Coordinator} splits the work
+ * into numbered partitions and starts worker JVMs with heaps of their
+ * own. Each {@link com.github.anyloop.distributed.Worker} connects back
+ * over a socket, processes the partitions handed to it and streams the
+ * results back, where they are merged. The partitions of a worker that
+ * crashes are handed to another one.
+ *
+ * The workers are started by a
+ * {@link com.github.anyloop.distributed.WorkerLauncher}, by default as
+ * local processes; only the launcher and the address the coordinator
+ * listens on would change for workers on other nodes.
+ */
+package com.github.anyloop.distributed;
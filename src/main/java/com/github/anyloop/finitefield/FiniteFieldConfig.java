@@ -0,0 +1,78 @@
+/*
+ * FiniteFieldConfig.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.finitefield;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.chassis.annotations.ConfigProperty;
+import com.github.anyloop.chassis.annotations.DefaultValue;
+
+/**
+ * Configuration of finite-field computations.
+ *
+ * In YAML notation:
+ * <pre>
+ * finitefield:
+ *   primes: [9223372036854775783, 9223372036854775643]
+ *   primeCount: 16
+ *   samples: 1
+ * </pre>
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public interface FiniteFieldConfig {
+
+    /**
+     * The primes to be used, in this order. If none are given, the
+     * largest primes below <code>2^63</code> are used.
+     *
+     * @return the primes
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("finitefield.primes")
+    Long[] getPrimes() throws ConfigurationException;
+
+    /**
+     * The number of primes generated if no primes are given
+     * explicitly. This bounds the size of the rational numbers that
+     * can be reconstructed.
+     *
+     * @return the number of primes
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("finitefield.primeCount")
+    @DefaultValue("16")
+    int getPrimeCount() throws ConfigurationException;
+
+    /**
+     * The number of additional primes whose images must agree with a
+     * reconstructed result before it is accepted.
+     *
+     * @return the number of verification samples
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("finitefield.samples")
+    @DefaultValue("1")
+    int getSamples() throws ConfigurationException;
+}
@@ -0,0 +1,48 @@
+/*
+ * ModularComputation.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.finitefield;
+
+/**
+ * A calculation that can be carried out modulo a prime.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+@FunctionalInterface
+public interface ModularComputation {
+
+    /**
+     * Carries out the calculation in a prime field. The method is
+     * called concurrently for different primes.
+     *
+     * @param field the field
+     * @return the results as elements of the field; the number of
+     *         results must not depend on the prime
+     * @throws ArithmeticException if the prime is unlucky, e.g. if it
+     *         divides a denominator; the prime is then skipped
+     *
+     * @since 0.1.0
+     */
+    long[] compute(PrimeField field);
+}
@@ -0,0 +1,289 @@
+/*
+ * ModularEngine.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.finitefield;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.github.anyloop.chassis.ConfigurationException;
+
+/**
+ * Lifts the results of a {@link ModularComputation} to the rational
+ * numbers.
+ *
+ * The computation is run modulo one prime after the other, as many
+ * primes at a time as the pool has worker threads, since the images
+ * are independent of each other. After every image the residues are
+ * combined by Chinese remaindering and the rational numbers are
+ * reconstructed; a result is accepted once the images modulo the
+ * configured number of further primes agree with it.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class ModularEngine {
+
+    /**
+     * The fields in the order in which they are used.
+     */
+    private final PrimeField[] fields;
+
+    /**
+     * The number of primes that must confirm a reconstruction.
+     */
+    private final int samples;
+
+    /**
+     * Creates an engine from its configuration.
+     *
+     * @param config the configuration
+     * @throws ConfigurationException if the configuration is invalid,
+     *         e.g. if a given number is not prime
+     *
+     * @since 0.1.0
+     */
+    public ModularEngine(final FiniteFieldConfig config)
+            throws ConfigurationException {
+        this.samples = config.getSamples();
+        if (this.samples < 0) {
+            throw new ConfigurationException(
+                "finitefield.samples must not be negative");
+        }
+
+        final Long[] given = config.getPrimes();
+        final long[] primes;
+        if (given.length > 0) {
+            primes = new long[given.length];
+            for (int i = 0; i < given.length; ++i) {
+                primes[i] = given[i];
+            }
+        } else {
+            final int count = config.getPrimeCount();
+            if (count < 1) {
+                throw new ConfigurationException(
+                    "finitefield.primeCount must be positive");
+            }
+            primes = PrimeField.largestPrimesBelow(Long.MAX_VALUE, count);
+        }
+
+        this.fields = new PrimeField[primes.length];
+        for (int i = 0; i < primes.length; ++i) {
+            try {
+                this.fields[i] = PrimeField.of(primes[i]);
+            } catch (IllegalArgumentException ex) {
+                throw new ConfigurationException(
+                    "Invalid value in finitefield.primes", ex);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of available primes.
+     *
+     * @return the number of primes
+     *
+     * @since 0.1.0
+     */
+    public int getFieldCount() {
+        return this.fields.length;
+    }
+
+    /**
+     * Returns one of the fields.
+     *
+     * @param index the index of the field
+     * @return the field
+     *
+     * @since 0.1.0
+     */
+    public PrimeField getField(final int index) {
+        return this.fields[index];
+    }
+
+    /**
+     * Runs a computation modulo as many primes as needed and
+     * reconstructs its rational results.
+     *
+     * @param computation the computation
+     * @param pool the pool in which the primes are processed
+     * @return the rational results
+     * @throws ArithmeticException if the primes are exhausted before
+     *         the results could be reconstructed
+     *
+     * @since 0.1.0
+     */
+    public Rational[] reconstruct(
+            final ModularComputation computation,
+            final ForkJoinPool pool) {
+        final Lifting lifting = new Lifting();
+        final int batch = Math.max(1, pool.getParallelism());
+        for (int next = 0; next < this.fields.length; next += batch) {
+            final int end = Math.min(next + batch, this.fields.length);
+            final List<ForkJoinTask<long[]>> tasks = new ArrayList<>();
+            for (int i = next; i < end; ++i) {
+                final PrimeField field = this.fields[i];
+                tasks.add(pool.submit(() -> computation.compute(field)));
+            }
+            for (int i = next; i < end; ++i) {
+                final long[] image;
+                try {
+                    image = tasks.get(i - next).join();
+                } catch (ArithmeticException ex) {
+                    // unlucky prime
+                    continue;
+                }
+                if (lifting.add(this.fields[i], image)) {
+                    for (int j = i + 1; j < end; ++j) {
+                        tasks.get(j - next).cancel(false);
+                    }
+                    return lifting.candidate;
+                }
+            }
+        }
+        throw new ArithmeticException(
+            "Rational reconstruction failed with "
+            + this.fields.length + " primes");
+    }
+
+    /**
+     * Starts the reconstruction of results whose images are computed
+     * elsewhere, e.g. in other processes.
+     *
+     * @return the state of the reconstruction
+     *
+     * @since 0.1.0
+     */
+    public Lifting lifting() {
+        return new Lifting();
+    }
+
+    /**
+     * The state of the reconstruction.
+     *
+     * @since 0.1.0
+     */
+    public final class Lifting {
+        /**
+         * The combined residues.
+         */
+        private BigInteger[] residues;
+
+        /**
+         * The product of the primes used so far.
+         */
+        private BigInteger modulus = BigInteger.ONE;
+
+        /**
+         * The rational results reconstructed so far, if any.
+         */
+        private Rational[] candidate;
+
+        /**
+         * The number of primes that confirmed the candidate.
+         */
+        private int confirmations;
+
+        private Lifting() {
+        }
+
+        /**
+         * Adds the image modulo another prime.
+         *
+         * @param field the field of the image
+         * @param image the results modulo the prime
+         * @return <code>true</code> if the candidate is confirmed
+         *
+         * @since 0.1.0
+         */
+        public boolean add(final PrimeField field, final long[] image) {
+            final long p = field.getPrime();
+            if (this.residues == null) {
+                this.residues = new BigInteger[image.length];
+                Arrays.fill(this.residues, BigInteger.ZERO);
+            }
+
+            if (this.candidate != null) {
+                if (this.agrees(field, image)) {
+                    if (++this.confirmations >= ModularEngine.this.samples) {
+                        return true;
+                    }
+                } else {
+                    this.candidate = null;
+                }
+            }
+
+            for (int k = 0; k < image.length; ++k) {
+                this.residues[k] = RationalReconstruction.chineseRemainder(
+                    this.residues[k], this.modulus, field.toLong(image[k]), p);
+            }
+            this.modulus = this.modulus.multiply(BigInteger.valueOf(p));
+
+            if (this.candidate == null) {
+                final Rational[] values = new Rational[image.length];
+                for (int k = 0; k < image.length; ++k) {
+                    values[k] = RationalReconstruction.reconstruct(
+                        this.residues[k], this.modulus);
+                    if (values[k] == null) {
+                        return false;
+                    }
+                }
+                this.candidate = values;
+                this.confirmations = 0;
+                return ModularEngine.this.samples == 0;
+            }
+            return false;
+        }
+
+        /**
+         * Returns the confirmed results.
+         *
+         * @return the rational results or <code>null</code> if they
+         *         have not been confirmed by enough primes yet
+         *
+         * @since 0.1.0
+         */
+        public Rational[] getResult() {
+            return this.candidate != null
+                && this.confirmations >= ModularEngine.this.samples
+                ? this.candidate : null;
+        }
+
+        private boolean agrees(final PrimeField field, final long[] image) {
+            for (int k = 0; k < image.length; ++k) {
+                try {
+                    if (this.candidate[k].toField(field) != image[k]) {
+                        return false;
+                    }
+                } catch (ArithmeticException ex) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,433 @@
+/*
+ * PrimeField.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.finitefield;
+
+import java.math.BigInteger;
+
+import com.github.anyloop.symbolic.CoefficientRing;
+
+/**
+ * Arithmetic in the field of integers modulo an odd prime below
+ * <code>2^63</code>.
+ *
+ * Elements are stored in Montgomery form, i.e. <code>a</code> is
+ * represented by <code>a * 2^64 mod p</code>, so that a modular
+ * multiplication needs two 64-bit multiplications and no division.
+ * Use {@link #fromLong} and {@link #toLong} to convert between
+ * integers and this representation; zero is represented by zero.
+ * Besides the scalar operations of {@link CoefficientRing} there are
+ * batched operations on <code>long[]</code> vectors.
+ *
+ * Instances are immutable and thread-safe.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class PrimeField implements CoefficientRing {
+
+    /**
+     * The prime.
+     */
+    private final long prime;
+
+    /**
+     * <code>-p^-1 mod 2^64</code>.
+     */
+    private final long negInverse;
+
+    /**
+     * <code>2^128 mod p</code>, for converting into Montgomery form.
+     */
+    private final long r2;
+
+    /**
+     * The representation of one.
+     */
+    private final long one;
+
+    private PrimeField(final long thePrime) {
+        this.prime = thePrime;
+
+        // Newton iteration; an odd p is its own inverse modulo 8
+        long inverse = thePrime;
+        for (int i = 0; i < 5; ++i) {
+            inverse *= 2 - thePrime * inverse;
+        }
+        this.negInverse = -inverse;
+
+        final BigInteger p = BigInteger.valueOf(thePrime);
+        final BigInteger r = BigInteger.ONE.shiftLeft(Long.SIZE);
+        this.one = r.mod(p).longValue();
+        this.r2 = r.multiply(r).mod(p).longValue();
+    }
+
+    /**
+     * Returns the field of integers modulo a prime.
+     *
+     * @param prime an odd prime below <code>2^63</code>
+     * @return the field
+     * @throws IllegalArgumentException if the number is not an odd
+     *         prime
+     *
+     * @since 0.1.0
+     */
+    public static PrimeField of(final long prime) {
+        if (prime < 3 || (prime & 1) == 0
+                || !BigInteger.valueOf(prime).isProbablePrime(64)) {
+            throw new IllegalArgumentException(
+                prime + " is not an odd prime");
+        }
+        return new PrimeField(prime);
+    }
+
+    /**
+     * Returns the largest primes below a bound, in descending order.
+     *
+     * @param bound the exclusive upper bound
+     * @param count the number of primes
+     * @return the primes
+     *
+     * @since 0.1.0
+     */
+    public static long[] largestPrimesBelow(final long bound, final int count) {
+        final long[] primes = new long[count];
+        long candidate = bound - 1;
+        if ((candidate & 1) == 0) {
+            --candidate;
+        }
+        for (int found = 0; found < count; candidate -= 2) {
+            if (candidate < 3) {
+                throw new IllegalArgumentException(
+                    "There are fewer than " + count
+                    + " odd primes below " + bound);
+            }
+            if (BigInteger.valueOf(candidate).isProbablePrime(64)) {
+                primes[found++] = candidate;
+            }
+        }
+        return primes;
+    }
+
+    /**
+     * Returns the prime.
+     *
+     * @return the characteristic of the field
+     *
+     * @since 0.1.0
+     */
+    public long getPrime() {
+        return this.prime;
+    }
+
+    /**
+     * Montgomery reduction of a 128-bit product.
+     *
+     * @param hi the upper 64 bits, less than <code>p</code>
+     * @param lo the lower 64 bits
+     * @return <code>(hi * 2^64 + lo) / 2^64 mod p</code>
+     */
+    private long reduce(final long hi, final long lo) {
+        final long m = lo * this.negInverse;
+        // unsigned upper half of m * p, p being positive
+        final long mp = Math.multiplyHigh(m, this.prime)
+            + ((m >> (Long.SIZE - 1)) & this.prime);
+        // lo + low(m * p) is either 0 or exactly 2^64
+        final long t = hi + mp + (lo != 0 ? 1 : 0);
+        return Long.compareUnsigned(t, this.prime) >= 0 ? t - this.prime : t;
+    }
+
+    @Override
+    public long fromLong(final long n) {
+        return this.multiply(Math.floorMod(n, this.prime), this.r2);
+    }
+
+    /**
+     * Converts an element back into an integer.
+     *
+     * @param a an element
+     * @return the integer between <code>0</code> and <code>p - 1</code>
+     *
+     * @since 0.1.0
+     */
+    public long toLong(final long a) {
+        return this.reduce(0, a);
+    }
+
+    @Override
+    public long add(final long a, final long b) {
+        final long s = a + b;
+        return Long.compareUnsigned(s, this.prime) >= 0 ? s - this.prime : s;
+    }
+
+    @Override
+    public long subtract(final long a, final long b) {
+        final long d = a - b;
+        return d < 0 ? d + this.prime : d;
+    }
+
+    @Override
+    public long negate(final long a) {
+        return a == 0 ? 0 : this.prime - a;
+    }
+
+    @Override
+    public long multiply(final long a, final long b) {
+        return this.reduce(Math.multiplyHigh(a, b), a * b);
+    }
+
+    /**
+     * Computes the multiplicative inverse of an element.
+     *
+     * @param a an element other than zero
+     * @return <code>1 / a</code>
+     * @throws ArithmeticException if <code>a</code> is zero
+     *
+     * @since 0.1.0
+     */
+    public long inverse(final long a) {
+        if (a == 0) {
+            throw new ArithmeticException("Division by zero");
+        }
+        // extended Euclid on the integer value; all values stay
+        // below p in magnitude
+        long r0 = this.prime;
+        long r1 = this.toLong(a);
+        long t0 = 0;
+        long t1 = 1;
+        while (r1 != 0) {
+            final long q = r0 / r1;
+            long x = r0 - q * r1;
+            r0 = r1;
+            r1 = x;
+            x = t0 - q * t1;
+            t0 = t1;
+            t1 = x;
+        }
+        return this.fromLong(t0);
+    }
+
+    /**
+     * Divides two elements.
+     *
+     * @param a the dividend
+     * @param b the divisor, not zero
+     * @return <code>a / b</code>
+     *
+     * @since 0.1.0
+     */
+    public long divide(final long a, final long b) {
+        return this.multiply(a, this.inverse(b));
+    }
+
+    /**
+     * Raises an element to a power.
+     *
+     * @param a the base
+     * @param exponent the exponent, not negative
+     * @return <code>a^exponent</code>
+     *
+     * @since 0.1.0
+     */
+    public long pow(final long a, final long exponent) {
+        long result = this.one;
+        long square = a;
+        for (long e = exponent; e > 0; e >>>= 1) {
+            if ((e & 1) != 0) {
+                result = this.multiply(result, square);
+            }
+            square = this.multiply(square, square);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the representation of one.
+     *
+     * @return one
+     *
+     * @since 0.1.0
+     */
+    public long one() {
+        return this.one;
+    }
+
+    /**
+     * Converts integers into elements.
+     *
+     * @param in the integers
+     * @param out the elements, may be the same array as <code>in</code>
+     * @param n the number of values
+     *
+     * @since 0.1.0
+     */
+    public void fromLongs(final long[] in, final long[] out, final int n) {
+        for (int i = 0; i < n; ++i) {
+            out[i] = this.fromLong(in[i]);
+        }
+    }
+
+    /**
+     * Converts elements back into integers.
+     *
+     * @param in the elements
+     * @param out the integers, may be the same array as <code>in</code>
+     * @param n the number of values
+     *
+     * @since 0.1.0
+     */
+    public void toLongs(final long[] in, final long[] out, final int n) {
+        for (int i = 0; i < n; ++i) {
+            out[i] = this.reduce(0, in[i]);
+        }
+    }
+
+    /**
+     * Adds two vectors element-wise.
+     *
+     * @param a the first vector
+     * @param b the second vector
+     * @param out the result, may be the same array as an operand
+     * @param n the number of elements
+     *
+     * @since 0.1.0
+     */
+    public void add(
+            final long[] a,
+            final long[] b,
+            final long[] out,
+            final int n) {
+        final long p = this.prime;
+        for (int i = 0; i < n; ++i) {
+            final long s = a[i] + b[i];
+            out[i] = Long.compareUnsigned(s, p) >= 0 ? s - p : s;
+        }
+    }
+
+    /**
+     * Multiplies two vectors element-wise.
+     *
+     * @param a the first vector
+     * @param b the second vector
+     * @param out the result, may be the same array as an operand
+     * @param n the number of elements
+     *
+     * @since 0.1.0
+     */
+    public void multiply(
+            final long[] a,
+            final long[] b,
+            final long[] out,
+            final int n) {
+        for (int i = 0; i < n; ++i) {
+            out[i] = this.reduce(Math.multiplyHigh(a[i], b[i]), a[i] * b[i]);
+        }
+    }
+
+    /**
+     * Multiplies a vector by a scalar.
+     *
+     * @param a the vector
+     * @param c the scalar
+     * @param out the result, may be the same array as <code>a</code>
+     * @param n the number of elements
+     *
+     * @since 0.1.0
+     */
+    public void scale(
+            final long[] a,
+            final long c,
+            final long[] out,
+            final int n) {
+        for (int i = 0; i < n; ++i) {
+            out[i] = this.reduce(Math.multiplyHigh(a[i], c), a[i] * c);
+        }
+    }
+
+    /**
+     * Adds a multiple of one vector to another, the inner loop of
+     * Gaussian elimination.
+     *
+     * @param target the vector to which <code>c * a</code> is added
+     * @param a the other vector
+     * @param c the scalar
+     * @param from the first index
+     * @param to the index after the last one
+     *
+     * @since 0.1.0
+     */
+    public void multiplyAdd(
+            final long[] target,
+            final long[] a,
+            final long c,
+            final int from,
+            final int to) {
+        final long p = this.prime;
+        for (int i = from; i < to; ++i) {
+            final long s = target[i]
+                + this.reduce(Math.multiplyHigh(a[i], c), a[i] * c);
+            target[i] = Long.compareUnsigned(s, p) >= 0 ? s - p : s;
+        }
+    }
+
+    /**
+     * Inverts all elements of a vector with a single field inversion
+     * (Montgomery's trick).
+     *
+     * @param a the vector, without zeros
+     * @param out the inverses, must not be the same array as
+     *        <code>a</code>
+     * @param n the number of elements
+     * @throws ArithmeticException if an element is zero
+     *
+     * @since 0.1.0
+     */
+    public void inverse(final long[] a, final long[] out, final int n) {
+        if (n == 0) {
+            return;
+        }
+        // out[i] = a[0] * ... * a[i]
+        long acc = this.one;
+        for (int i = 0; i < n; ++i) {
+            acc = this.multiply(acc, a[i]);
+            out[i] = acc;
+        }
+        long inv = this.inverse(acc);
+        for (int i = n - 1; i > 0; --i) {
+            final long ai = a[i];
+            out[i] = this.multiply(inv, out[i - 1]);
+            inv = this.multiply(inv, ai);
+        }
+        out[0] = inv;
+    }
+
+    @Override
+    public String format(final long a) {
+        return Long.toString(this.toLong(a));
+    }
+
+    @Override
+    public String toString() {
+        return "GF(" + this.prime + ")";
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Rational.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.finitefield;
+
+import java.math.BigInteger;
+
+/**
+ * An immutable rational number of arbitrary size, in lowest terms
+ * with a positive denominator.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class Rational {
+
+    /**
+     * The numerator.
+     */
+    private final BigInteger numerator;
+
+    /**
+     * The denominator, always positive.
+     */
+    private final BigInteger denominator;
+
+    private Rational(
+            final BigInteger theNumerator,
+            final BigInteger theDenominator) {
+        this.numerator = theNumerator;
+        this.denominator = theDenominator;
+    }
+
+    /**
+     * Creates a rational number.
+     *
+     * @param numerator the numerator
+     * @param denominator the denominator, not zero
+     * @return the number in lowest terms
+     * @throws ArithmeticException if the denominator is zero
+     *
+     * @since 0.1.0
+     */
+    public static Rational of(
+            final BigInteger numerator,
+            final BigInteger denominator) {
+        if (denominator.signum() == 0) {
+            throw new ArithmeticException("Division by zero");
+        }
+        BigInteger g = numerator.gcd(denominator);
+        if (denominator.signum() < 0) {
+            g = g.negate();
+        }
+        return new Rational(numerator.divide(g), denominator.divide(g));
+    }
+
+    /**
+     * Creates a rational number.
+     *
+     * @param numerator the numerator
+     * @param denominator the denominator, not zero
+     * @return the number in lowest terms
+     *
+     * @since 0.1.0
+     */
+    public static Rational of(final long numerator, final long denominator) {
+        return of(BigInteger.valueOf(numerator),
+            BigInteger.valueOf(denominator));
+    }
+
+    /**
+     * Parses a rational number written as an integer or as a fraction
+     * such as <code>-3/7</code>.
+     *
+     * @param text the number
+     * @return the number in lowest terms
+     * @throws NumberFormatException if the text is not a number
+     * @throws ArithmeticException if the denominator is zero
+     *
+     * @since 0.1.0
+     */
+    public static Rational parse(final String text) {
+        final String s = text.trim();
+        final int slash = s.indexOf('/');
+        if (slash < 0) {
+            return of(new BigInteger(s), BigInteger.ONE);
+        }
+        return of(new BigInteger(s.substring(0, slash).trim()),
+            new BigInteger(s.substring(slash + 1).trim()));
+    }
+
+    /**
+     * Returns the numerator.
+     *
+     * @return the numerator
+     *
+     * @since 0.1.0
+     */
+    public BigInteger getNumerator() {
+        return this.numerator;
+    }
+
+    /**
+     * Returns the denominator.
+     *
+     * @return the denominator, always positive
+     *
+     * @since 0.1.0
+     */
+    public BigInteger getDenominator() {
+        return this.denominator;
+    }
+
+    /**
+     * Returns <code>this + other</code>.
+     *
+     * @param other the other summand
+     * @return the sum
+     *
+     * @since 0.1.0
+     */
+    public Rational add(final Rational other) {
+        return of(this.numerator.multiply(other.denominator)
+                .add(other.numerator.multiply(this.denominator)),
+            this.denominator.multiply(other.denominator));
+    }
+
+    /**
+     * Returns <code>this * other</code>.
+     *
+     * @param other the other factor
+     * @return the product
+     *
+     * @since 0.1.0
+     */
+    public Rational multiply(final Rational other) {
+        return of(this.numerator.multiply(other.numerator),
+            this.denominator.multiply(other.denominator));
+    }
+
+    /**
+     * Maps this number into a prime field.
+     *
+     * @param field the field
+     * @return the element of the field
+     * @throws ArithmeticException if the prime divides the denominator
+     *
+     * @since 0.1.0
+     */
+    public long toField(final PrimeField field) {
+        final BigInteger p = BigInteger.valueOf(field.getPrime());
+        return field.divide(
+            field.fromLong(this.numerator.mod(p).longValue()),
+            field.fromLong(this.denominator.mod(p).longValue()));
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Rational)) {
+            return false;
+        }
+        final Rational other = (Rational) obj;
+        return this.numerator.equals(other.numerator)
+            && this.denominator.equals(other.denominator);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.numerator.hashCode() + this.denominator.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return BigInteger.ONE.equals(this.denominator)
+            ? this.numerator.toString()
+            : this.numerator + "/" + this.denominator;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * RationalReconstruction.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.finitefield;
+
+import java.math.BigInteger;
+
+/**
+ * Chinese remaindering and rational reconstruction.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class RationalReconstruction {
+
+    /**
+     * Hidden constructor.
+     */
+    private RationalReconstruction() { }
+
+    /**
+     * Combines a residue modulo <code>m</code> with a residue modulo a
+     * prime <code>p</code> not dividing <code>m</code>.
+     *
+     * @param x the residue modulo <code>m</code>
+     * @param m the modulus of <code>x</code>
+     * @param r the residue modulo <code>p</code>
+     * @param p the prime
+     * @return the residue modulo <code>m * p</code>
+     *
+     * @since 0.1.0
+     */
+    public static BigInteger chineseRemainder(
+            final BigInteger x,
+            final BigInteger m,
+            final long r,
+            final long p) {
+        final BigInteger bp = BigInteger.valueOf(p);
+        // x + m * ((r - x) / m mod p)
+        final BigInteger k = BigInteger.valueOf(r).subtract(x)
+            .multiply(m.modInverse(bp)).mod(bp);
+        return x.add(m.multiply(k));
+    }
+
+    /**
+     * Finds the rational number <code>n/d</code> congruent to
+     * <code>a</code> modulo <code>m</code> with
+     * <code>|n|, d &lt;= sqrt(m/2)</code> (Wang's algorithm).
+     *
+     * @param a the residue, between <code>0</code> and <code>m - 1</code>
+     * @param m the modulus
+     * @return the rational number or <code>null</code> if there is none
+     *         within the bounds
+     *
+     * @since 0.1.0
+     */
+    public static Rational reconstruct(
+            final BigInteger a,
+            final BigInteger m) {
+        final BigInteger bound = m.shiftRight(1).sqrt();
+        BigInteger r0 = m;
+        BigInteger r1 = a.mod(m);
+        BigInteger t0 = BigInteger.ZERO;
+        BigInteger t1 = BigInteger.ONE;
+        while (r1.compareTo(bound) > 0) {
+            final BigInteger[] qr = r0.divideAndRemainder(r1);
+            r0 = r1;
+            r1 = qr[1];
+            final BigInteger t = t0.subtract(qr[0].multiply(t1));
+            t0 = t1;
+            t1 = t;
+        }
+        if (t1.signum() == 0 || t1.abs().compareTo(bound) > 0
+                || !r1.gcd(t1).equals(BigInteger.ONE)) {
+            return null;
+        }
+        return Rational.of(r1, t1);
+    }
+}
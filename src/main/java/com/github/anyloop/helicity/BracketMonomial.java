@@ -0,0 +1,362 @@
+/*
+ * BracketMonomial.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.helicity;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A helicity amplitude given by a product of powers of spinor products,
+ * such as the Parke-Taylor formula of the maximally helicity-violating
+ * gluon amplitudes.
+ *
+ * An amplitude is built like this:
+ * <pre>
+ * // &lt;01&gt;^3 / (&lt;12&gt; &lt;23&gt; &lt;30&gt;) for the gluons
+ * // with helicities - - + +
+ * BracketMonomial a = BracketMonomial.builder(4)
+ *     .angle(0, 1, 3)
+ *     .angle(1, 2, -1)
+ *     .angle(2, 3, -1)
+ *     .angle(3, 0, -1)
+ *     .build();
+ * </pre>
+ *
+ * Instances are immutable and thread-safe.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class BracketMonomial {
+
+    /**
+     * The number of legs.
+     */
+    private final int legs;
+
+    /**
+     * The coefficient.
+     */
+    private final double coefficient;
+
+    /**
+     * The first leg of each factor.
+     */
+    private final int[] first;
+
+    /**
+     * The second leg of each factor, after the first one.
+     */
+    private final int[] second;
+
+    /**
+     * Whether each factor is a square bracket.
+     */
+    private final boolean[] square;
+
+    /**
+     * The exponent of each factor.
+     */
+    private final int[] exponents;
+
+    private BracketMonomial(final Builder builder) {
+        this.legs = builder.legs;
+        this.coefficient = builder.coefficient;
+        this.first = Arrays.copyOf(builder.first, builder.count);
+        this.second = Arrays.copyOf(builder.second, builder.count);
+        this.square = Arrays.copyOf(builder.square, builder.count);
+        this.exponents = Arrays.copyOf(builder.exponents, builder.count);
+    }
+
+    /**
+     * Starts building an amplitude.
+     *
+     * @param legs the number of legs
+     * @return the builder
+     *
+     * @since 0.1.0
+     */
+    public static Builder builder(final int legs) {
+        return new Builder(legs);
+    }
+
+    /**
+     * Returns the colour-ordered amplitude of <code>n</code> gluons of
+     * which two have negative helicity,
+     * <code>&lt;ij&gt;^4 / (&lt;01&gt; &lt;12&gt; ... &lt;n-1 0&gt;)
+     * </code>, leaving out the couplings and the factor <code>i</code>.
+     *
+     * @param n the number of gluons, at least four
+     * @param i the first gluon with negative helicity
+     * @param j the second gluon with negative helicity
+     * @return the amplitude
+     * @throws IllegalArgumentException if a number is out of range
+     *
+     * @since 0.1.0
+     */
+    public static BracketMonomial parkeTaylor(
+            final int n,
+            final int i,
+            final int j) {
+        if (n < 4) {
+            throw new IllegalArgumentException(
+                "At least four gluons are needed, not " + n);
+        }
+        final Builder builder = builder(n).angle(i, j, 4);
+        for (int k = 0; k < n; ++k) {
+            builder.angle(k, (k + 1) % n, -1);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the number of legs.
+     *
+     * @return the number of legs
+     *
+     * @since 0.1.0
+     */
+    public int getLegCount() {
+        return this.legs;
+    }
+
+    /**
+     * Computes the spinors of a batch and evaluates the amplitude,
+     * split among the workers of a pool.
+     *
+     * @param batch the points
+     * @param pool the pool or <code>null</code> to compute on the
+     *        calling thread
+     * @param count the number of points
+     * @param re receives the real parts
+     * @param im receives the imaginary parts
+     * @throws IllegalArgumentException if the numbers of legs differ
+     *         or the count exceeds the capacity of the batch
+     *
+     * @since 0.1.0
+     */
+    public void evaluate(
+            final SpinorBatch batch,
+            final ForkJoinPool pool,
+            final int count,
+            final double[] re,
+            final double[] im) {
+        this.check(batch);
+        batch.split(pool, count, (from, to) -> {
+            batch.compute(from, to);
+            this.evaluate(batch, from, to, re, im);
+        });
+    }
+
+    /**
+     * Evaluates the amplitude at a range of points whose spinor
+     * products have been computed.
+     *
+     * @param batch the points
+     * @param from the first point
+     * @param to the point after the last one
+     * @param re receives the real parts
+     * @param im receives the imaginary parts
+     * @throws IllegalArgumentException if the numbers of legs differ
+     *
+     * @since 0.1.0
+     */
+    public void evaluate(
+            final SpinorBatch batch,
+            final int from,
+            final int to,
+            final double[] re,
+            final double[] im) {
+        this.check(batch);
+        Arrays.fill(re, from, to, this.coefficient);
+        Arrays.fill(im, from, to, 0);
+        for (int f = 0; f < this.exponents.length; ++f) {
+            final int k = batch.pair(this.first[f], this.second[f]);
+            final double[] zr =
+                this.square[f] ? batch.squareRe[k] : batch.angleRe[k];
+            final double[] zi =
+                this.square[f] ? batch.squareIm[k] : batch.angleIm[k];
+            final int e = this.exponents[f];
+            for (int n = 0; n < Math.abs(e); ++n) {
+                if (e > 0) {
+                    multiply(re, im, zr, zi, from, to);
+                } else {
+                    divide(re, im, zr, zi, from, to);
+                }
+            }
+        }
+    }
+
+    private void check(final SpinorBatch batch) {
+        if (batch.getLegCount() != this.legs) {
+            throw new IllegalArgumentException(
+                "The batch has " + batch.getLegCount()
+                + " legs instead of " + this.legs);
+        }
+    }
+
+    private static void multiply(
+            final double[] re,
+            final double[] im,
+            final double[] zr,
+            final double[] zi,
+            final int from,
+            final int to) {
+        for (int p = from; p < to; ++p) {
+            final double r = re[p] * zr[p] - im[p] * zi[p];
+            im[p] = re[p] * zi[p] + im[p] * zr[p];
+            re[p] = r;
+        }
+    }
+
+    private static void divide(
+            final double[] re,
+            final double[] im,
+            final double[] zr,
+            final double[] zi,
+            final int from,
+            final int to) {
+        for (int p = from; p < to; ++p) {
+            final double norm = 1 / (zr[p] * zr[p] + zi[p] * zi[p]);
+            final double r = (re[p] * zr[p] + im[p] * zi[p]) * norm;
+            im[p] = (im[p] * zr[p] - re[p] * zi[p]) * norm;
+            re[p] = r;
+        }
+    }
+
+    /**
+     * Collects the factors of an amplitude.
+     *
+     * @since 0.1.0
+     */
+    public static final class Builder {
+
+        private final int legs;
+
+        private double coefficient = 1;
+
+        private int[] first = new int[4];
+
+        private int[] second = new int[4];
+
+        private boolean[] square = new boolean[4];
+
+        private int[] exponents = new int[4];
+
+        private int count;
+
+        private Builder(final int theLegs) {
+            if (theLegs < 2) {
+                throw new IllegalArgumentException(
+                    "At least two legs are needed, not " + theLegs);
+            }
+            this.legs = theLegs;
+        }
+
+        /**
+         * Multiplies the amplitude by a number.
+         *
+         * @param factor the number
+         * @return this builder
+         *
+         * @since 0.1.0
+         */
+        public Builder coefficient(final double factor) {
+            this.coefficient *= factor;
+            return this;
+        }
+
+        /**
+         * Multiplies the amplitude by a power of
+         * <code>&lt;ij&gt;</code>.
+         *
+         * @param i a leg
+         * @param j another leg
+         * @param exponent the exponent, negative for a denominator
+         * @return this builder
+         * @throws IllegalArgumentException if a leg is out of range or
+         *         the legs are the same
+         *
+         * @since 0.1.0
+         */
+        public Builder angle(final int i, final int j, final int exponent) {
+            return this.add(i, j, false, exponent);
+        }
+
+        /**
+         * Multiplies the amplitude by a power of <code>[ij]</code>.
+         *
+         * @param i a leg
+         * @param j another leg
+         * @param exponent the exponent, negative for a denominator
+         * @return this builder
+         * @throws IllegalArgumentException if a leg is out of range or
+         *         the legs are the same
+         *
+         * @since 0.1.0
+         */
+        public Builder square(final int i, final int j, final int exponent) {
+            return this.add(i, j, true, exponent);
+        }
+
+        private Builder add(
+                final int i,
+                final int j,
+                final boolean isSquare,
+                final int exponent) {
+            if (i < 0 || j < 0 || i >= this.legs || j >= this.legs
+                    || i == j) {
+                throw new IllegalArgumentException(
+                    "Invalid pair of legs " + i + ", " + j);
+            }
+            // the products are antisymmetric
+            if (i > j && (exponent & 1) != 0) {
+                this.coefficient = -this.coefficient;
+            }
+            if (this.count == this.exponents.length) {
+                final int n = 2 * this.count;
+                this.first = Arrays.copyOf(this.first, n);
+                this.second = Arrays.copyOf(this.second, n);
+                this.square = Arrays.copyOf(this.square, n);
+                this.exponents = Arrays.copyOf(this.exponents, n);
+            }
+            this.first[this.count] = Math.min(i, j);
+            this.second[this.count] = Math.max(i, j);
+            this.square[this.count] = isSquare;
+            this.exponents[this.count++] = exponent;
+            return this;
+        }
+
+        /**
+         * Creates the amplitude.
+         *
+         * @return the amplitude
+         *
+         * @since 0.1.0
+         */
+        public BracketMonomial build() {
+            return new BracketMonomial(this);
+        }
+    }
+}
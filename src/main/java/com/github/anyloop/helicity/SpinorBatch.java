@@ -0,0 +1,453 @@
+/*
+ * SpinorBatch.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.helicity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The momenta of a batch of phase-space points of massless particles
+ * together with their spinors and spinor products.
+ *
+ * The momenta are given with their physical direction of flow,
+ * incoming legs first. The spinors of an outgoing momentum
+ * <code>p</code> with <code>p+ = E + pz</code> are
+ * <code>lambda = (sqrt(p+), (px + i py) / sqrt(p+))</code> and its
+ * complex conjugate <code>lambda~</code>; an incoming leg is crossed
+ * to the outgoing momentum <code>-p</code>, whose spinors are those
+ * of <code>p</code> times <code>i</code>. The products are
+ * <code>&lt;ij&gt; = lambda_i1 lambda_j2 - lambda_i2 lambda_j1</code>
+ * and <code>[ij] = lambda~_i2 lambda~_j1 - lambda~_i1 lambda~_j2</code>,
+ * so that <code>&lt;ij&gt;[ji] = 2 k_i.k_j</code> for the outgoing
+ * momenta <code>k</code>.
+ *
+ * The batch owns all its rows. Workers may compute disjoint ranges of
+ * points at the same time; otherwise instances are not thread-safe.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class SpinorBatch {
+
+    /**
+     * The number of points the ranges of the workers are aligned to,
+     * the number of lanes of a vector of eight doubles.
+     *
+     * @since 0.1.0
+     */
+    public static final int LANES = 8;
+
+    /**
+     * The least number of points per range handed to a worker.
+     */
+    private static final int GRAIN = 64 * LANES;
+
+    /**
+     * A computation over a range of points.
+     */
+    interface Range {
+        /**
+         * Processes a range of points.
+         *
+         * @param from the first point
+         * @param to the point after the last one
+         */
+        void run(int from, int to);
+    }
+
+    /**
+     * The number of legs.
+     */
+    private final int legs;
+
+    /**
+     * The number of incoming legs.
+     */
+    private final int incoming;
+
+    /**
+     * The number of points.
+     */
+    private final int capacity;
+
+    /**
+     * The momenta, the row <code>4 * leg + mu</code> holding the
+     * component <code>mu</code> of the momentum of a leg.
+     */
+    private final double[][] momenta;
+
+    /**
+     * The real parts of the spinors <code>lambda</code>, the row
+     * <code>2 * leg + a</code> holding the component <code>a</code>.
+     */
+    private final double[][] lambdaRe;
+
+    /**
+     * The imaginary parts of the spinors <code>lambda</code>.
+     */
+    private final double[][] lambdaIm;
+
+    /**
+     * The real parts of the spinors <code>lambda~</code>.
+     */
+    private final double[][] tildeRe;
+
+    /**
+     * The imaginary parts of the spinors <code>lambda~</code>.
+     */
+    private final double[][] tildeIm;
+
+    /**
+     * The real parts of <code>&lt;ij&gt;</code>, one row per pair
+     * <code>i &lt; j</code>.
+     */
+    final double[][] angleRe;
+
+    /**
+     * The imaginary parts of <code>&lt;ij&gt;</code>.
+     */
+    final double[][] angleIm;
+
+    /**
+     * The real parts of <code>[ij]</code>.
+     */
+    final double[][] squareRe;
+
+    /**
+     * The imaginary parts of <code>[ij]</code>.
+     */
+    final double[][] squareIm;
+
+    /**
+     * Allocates a batch.
+     *
+     * @param theLegs the number of legs, at least two
+     * @param theIncoming the number of incoming legs
+     * @param theCapacity the number of points
+     * @throws IllegalArgumentException if a number is out of range
+     *
+     * @since 0.1.0
+     */
+    public SpinorBatch(
+            final int theLegs,
+            final int theIncoming,
+            final int theCapacity) {
+        if (theLegs < 2 || theIncoming < 0 || theIncoming > theLegs
+                || theCapacity < 1) {
+            throw new IllegalArgumentException(String.format(
+                "Invalid batch: %d legs, %d incoming, %d points",
+                theLegs, theIncoming, theCapacity));
+        }
+        this.legs = theLegs;
+        this.incoming = theIncoming;
+        this.capacity = theCapacity;
+        this.momenta = new double[4 * theLegs][theCapacity];
+        this.lambdaRe = new double[2 * theLegs][theCapacity];
+        this.lambdaIm = new double[2 * theLegs][theCapacity];
+        this.tildeRe = new double[2 * theLegs][theCapacity];
+        this.tildeIm = new double[2 * theLegs][theCapacity];
+        final int pairs = theLegs * (theLegs - 1) / 2;
+        this.angleRe = new double[pairs][theCapacity];
+        this.angleIm = new double[pairs][theCapacity];
+        this.squareRe = new double[pairs][theCapacity];
+        this.squareIm = new double[pairs][theCapacity];
+    }
+
+    /**
+     * Returns the number of legs.
+     *
+     * @return the number of legs
+     *
+     * @since 0.1.0
+     */
+    public int getLegCount() {
+        return this.legs;
+    }
+
+    /**
+     * Returns the number of points.
+     *
+     * @return the capacity of the batch
+     *
+     * @since 0.1.0
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Sets the momenta of a point.
+     *
+     * @param point the index of the point
+     * @param values the momenta as <code>E, px, py, pz</code> per leg,
+     *        as written by
+     *        {@link com.github.anyloop.amplitude.PhaseSpace}
+     * @param offset the index of the energy of the first leg
+     *
+     * @since 0.1.0
+     */
+    public void setMomenta(
+            final int point,
+            final double[] values,
+            final int offset) {
+        for (int k = 0; k < this.momenta.length; ++k) {
+            this.momenta[k][point] = values[offset + k];
+        }
+    }
+
+    /**
+     * Returns the index of the row of a pair of legs.
+     *
+     * @param i a leg
+     * @param j a leg after <code>i</code>
+     * @return the index of the pair
+     */
+    int pair(final int i, final int j) {
+        return i * (2 * this.legs - i - 1) / 2 + j - i - 1;
+    }
+
+    /**
+     * Returns the real part of <code>&lt;ij&gt;</code> at a point.
+     *
+     * @param i a leg
+     * @param j a leg
+     * @param point the index of the point
+     * @return the real part
+     *
+     * @since 0.1.0
+     */
+    public double getAngleRe(final int i, final int j, final int point) {
+        return this.get(this.angleRe, i, j, point);
+    }
+
+    /**
+     * Returns the imaginary part of <code>&lt;ij&gt;</code> at a point.
+     *
+     * @param i a leg
+     * @param j a leg
+     * @param point the index of the point
+     * @return the imaginary part
+     *
+     * @since 0.1.0
+     */
+    public double getAngleIm(final int i, final int j, final int point) {
+        return this.get(this.angleIm, i, j, point);
+    }
+
+    /**
+     * Returns the real part of <code>[ij]</code> at a point.
+     *
+     * @param i a leg
+     * @param j a leg
+     * @param point the index of the point
+     * @return the real part
+     *
+     * @since 0.1.0
+     */
+    public double getSquareRe(final int i, final int j, final int point) {
+        return this.get(this.squareRe, i, j, point);
+    }
+
+    /**
+     * Returns the imaginary part of <code>[ij]</code> at a point.
+     *
+     * @param i a leg
+     * @param j a leg
+     * @param point the index of the point
+     * @return the imaginary part
+     *
+     * @since 0.1.0
+     */
+    public double getSquareIm(final int i, final int j, final int point) {
+        return this.get(this.squareIm, i, j, point);
+    }
+
+    private double get(
+            final double[][] rows,
+            final int i,
+            final int j,
+            final int point) {
+        if (i == j) {
+            return 0;
+        }
+        return i < j ? rows[this.pair(i, j)][point]
+            : -rows[this.pair(j, i)][point];
+    }
+
+    /**
+     * Computes the spinors and their products of all points, split
+     * among the workers of a pool.
+     *
+     * @param pool the pool or <code>null</code> to compute on the
+     *        calling thread
+     * @param count the number of points
+     *
+     * @since 0.1.0
+     */
+    public void compute(final ForkJoinPool pool, final int count) {
+        this.split(pool, count, this::compute);
+    }
+
+    /**
+     * Computes the spinors and their products of a range of points.
+     *
+     * @param from the first point
+     * @param to the point after the last one
+     *
+     * @since 0.1.0
+     */
+    public void compute(final int from, final int to) {
+        for (int leg = 0; leg < this.legs; ++leg) {
+            this.spinors(leg, from, to);
+        }
+        for (int i = 0; i < this.legs; ++i) {
+            for (int j = i + 1; j < this.legs; ++j) {
+                final int k = this.pair(i, j);
+                product(this.lambdaRe, this.lambdaIm, i, j, 1,
+                    this.angleRe[k], this.angleIm[k], from, to);
+                product(this.tildeRe, this.tildeIm, i, j, -1,
+                    this.squareRe[k], this.squareIm[k], from, to);
+            }
+        }
+    }
+
+    /**
+     * Computes the spinors of a leg.
+     *
+     * @param leg the leg
+     * @param from the first point
+     * @param to the point after the last one
+     */
+    private void spinors(final int leg, final int from, final int to) {
+        final double[] e = this.momenta[4 * leg];
+        final double[] x = this.momenta[4 * leg + 1];
+        final double[] y = this.momenta[4 * leg + 2];
+        final double[] z = this.momenta[4 * leg + 3];
+        final double[] l1r = this.lambdaRe[2 * leg];
+        final double[] l1i = this.lambdaIm[2 * leg];
+        final double[] l2r = this.lambdaRe[2 * leg + 1];
+        final double[] l2i = this.lambdaIm[2 * leg + 1];
+        final double[] t1r = this.tildeRe[2 * leg];
+        final double[] t1i = this.tildeIm[2 * leg];
+        final double[] t2r = this.tildeRe[2 * leg + 1];
+        final double[] t2i = this.tildeIm[2 * leg + 1];
+        // the phase of the crossing, 1 or i
+        final double cr = leg < this.incoming ? 0 : 1;
+        final double ci = 1 - cr;
+        for (int p = from; p < to; ++p) {
+            final double a = Math.sqrt(Math.max(e[p] + z[p], 0));
+            final double inverse = a > 0 ? 1 / a : 0;
+            // along the negative z axis lambda = (0, sqrt(p-))
+            final double br = a > 0 ? x[p] * inverse
+                : Math.sqrt(Math.max(e[p] - z[p], 0));
+            final double bi = y[p] * inverse;
+            l1r[p] = cr * a;
+            l1i[p] = ci * a;
+            l2r[p] = cr * br - ci * bi;
+            l2i[p] = cr * bi + ci * br;
+            t1r[p] = cr * a;
+            t1i[p] = ci * a;
+            t2r[p] = cr * br + ci * bi;
+            t2i[p] = ci * br - cr * bi;
+        }
+    }
+
+    /**
+     * Computes <code>sign * (s_i1 s_j2 - s_i2 s_j1)</code> of two
+     * spinors <code>s</code>.
+     *
+     * @param re the real parts of the spinors
+     * @param im the imaginary parts of the spinors
+     * @param i the first leg
+     * @param j the second leg
+     * @param sign the sign
+     * @param outRe receives the real parts
+     * @param outIm receives the imaginary parts
+     * @param from the first point
+     * @param to the point after the last one
+     */
+    private static void product(
+            final double[][] re,
+            final double[][] im,
+            final int i,
+            final int j,
+            final double sign,
+            final double[] outRe,
+            final double[] outIm,
+            final int from,
+            final int to) {
+        final double[] i1r = re[2 * i];
+        final double[] i1i = im[2 * i];
+        final double[] i2r = re[2 * i + 1];
+        final double[] i2i = im[2 * i + 1];
+        final double[] j1r = re[2 * j];
+        final double[] j1i = im[2 * j];
+        final double[] j2r = re[2 * j + 1];
+        final double[] j2i = im[2 * j + 1];
+        for (int p = from; p < to; ++p) {
+            outRe[p] = sign * (i1r[p] * j2r[p] - i1i[p] * j2i[p]
+                - i2r[p] * j1r[p] + i2i[p] * j1i[p]);
+            outIm[p] = sign * (i1r[p] * j2i[p] + i1i[p] * j2r[p]
+                - i2r[p] * j1i[p] - i2i[p] * j1r[p]);
+        }
+    }
+
+    /**
+     * Splits the points into ranges starting at multiples of
+     * {@link #LANES} and processes them on the workers of a pool.
+     *
+     * @param pool the pool or <code>null</code> to process all points
+     *        on the calling thread
+     * @param count the number of points
+     * @param range the computation
+     * @throws IllegalArgumentException if the count exceeds the
+     *         capacity
+     */
+    void split(final ForkJoinPool pool, final int count, final Range range) {
+        if (count < 0 || count > this.capacity) {
+            throw new IllegalArgumentException(
+                count + " points do not fit into a batch of "
+                + this.capacity);
+        }
+        final int chunks = pool == null ? 1 : Math.min(
+            4 * pool.getParallelism(), (count + GRAIN - 1) / GRAIN);
+        if (chunks <= 1) {
+            range.run(0, count);
+            return;
+        }
+        final int vectors = (count + LANES - 1) / LANES;
+        final List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int k = 0; k < chunks; ++k) {
+            final int from = (int) ((long) k * vectors / chunks) * LANES;
+            final int to = Math.min(count,
+                (int) ((k + 1L) * vectors / chunks) * LANES);
+            tasks.add(pool.submit(() -> range.run(from, to)));
+        }
+        for (final ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * package-info.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+/**
+ * This package evaluates helicity amplitudes of massless particles
+ * numerically in the spinor-helicity formalism.
+ *
+ * Phase-space points are processed in batches, which are stored as
+ * structures of arrays: every component of a momentum, spinor or
+ * spinor product has a <code>double[]</code> row with one column per
+ * point, and complex numbers have separate rows for their real and
+ * imaginary parts. The rows are allocated once per batch and reused,
+ * so that evaluating a point allocates nothing, and a batch is split
+ * into ranges of points for the workers of a fork/join pool.
+ *
+ * Every loop of the kernels runs over a contiguous range of points of
+ * a few rows, without calls or branches in its body other than
+ * selects. A build for a newer JDK can therefore replace the loop
+ * bodies by lanes of the incubating Vector API without changing the
+ * layout; the ranges handed to the workers already start at multiples
+ * of {@link com.github.anyloop.helicity.SpinorBatch#LANES}.
+ */
+package com.github.anyloop.helicity;
@@ -0,0 +1,214 @@
+/*
+ * IbpConfig.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.ibp;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.chassis.annotations.ConfigProperty;
+import com.github.anyloop.chassis.annotations.DefaultValue;
+
+/**
+ * Configuration view of an integral family and its reduction.
+ *
+ * The massless one-loop bubble in YAML notation:
+ * <pre>
+ * ibp:
+ *   loopMomenta: [k]
+ *   externalMomenta: [p]
+ *   propagators:
+ *     propagator:
+ *       - momentum: k
+ *       - momentum: k - p
+ *   kinematics:
+ *     product:
+ *       - momenta: [p, p]
+ *         value: 3
+ *   dimension: 1013/257
+ *   rmax: 3
+ *   smax: 1
+ *   targets: ["1,2", "2,2"]
+ * </pre>
+ *
+ * The propagators, including irreducible numerators, must form a
+ * basis of the scalar products involving loop momenta. Scalar
+ * products of external momenta which are not listed are zero.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public interface IbpConfig {
+
+    /**
+     * Configuration object for a propagator.
+     *
+     * @since 0.1.0
+     */
+    interface Propagator {
+        /**
+         * The momentum flowing through the propagator as a linear
+         * combination of momenta, e.g. <code>k1 - 2*p1</code>.
+         *
+         * @return the momentum
+         * @throws ConfigurationException if the value is missing
+         */
+        @ConfigProperty(".momentum")
+        String getMomentum() throws ConfigurationException;
+
+        /**
+         * The squared mass as a rational number.
+         *
+         * @return the squared mass
+         * @throws ConfigurationException if the value cannot be read
+         */
+        @ConfigProperty(".mass2")
+        @DefaultValue("0")
+        String getMassSquared() throws ConfigurationException;
+
+        /**
+         * Tells whether this is an irreducible numerator, which only
+         * occurs with non-positive powers.
+         *
+         * @return <code>true</code> for a numerator
+         * @throws ConfigurationException if the value cannot be read
+         */
+        @ConfigProperty(".numerator")
+        @DefaultValue("false")
+        boolean isNumerator() throws ConfigurationException;
+    }
+
+    /**
+     * Configuration object for the value of a scalar product of
+     * external momenta.
+     *
+     * @since 0.1.0
+     */
+    interface ScalarProduct {
+        /**
+         * The two momenta.
+         *
+         * @return the names of the momenta
+         * @throws ConfigurationException if the value cannot be read
+         */
+        @ConfigProperty(".momenta")
+        String[] getMomenta() throws ConfigurationException;
+
+        /**
+         * The value as a rational number.
+         *
+         * @return the value
+         * @throws ConfigurationException if the value is missing
+         */
+        @ConfigProperty(".value")
+        String getValue() throws ConfigurationException;
+    }
+
+    /**
+     * The name of the family, used when printing integrals.
+     *
+     * @return the name
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("ibp.name")
+    @DefaultValue("I")
+    String getName() throws ConfigurationException;
+
+    /**
+     * The names of the loop momenta.
+     *
+     * @return the loop momenta
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("ibp.loopMomenta")
+    String[] getLoopMomenta() throws ConfigurationException;
+
+    /**
+     * The names of the independent external momenta.
+     *
+     * @return the external momenta
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("ibp.externalMomenta")
+    String[] getExternalMomenta() throws ConfigurationException;
+
+    /**
+     * The propagators of the family. An empty list disables the
+     * reduction.
+     *
+     * @return the propagators
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("ibp.propagators.propagator")
+    Propagator[] getPropagators() throws ConfigurationException;
+
+    /**
+     * The values of the scalar products of external momenta.
+     *
+     * @return the scalar products
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("ibp.kinematics.product")
+    ScalarProduct[] getScalarProducts() throws ConfigurationException;
+
+    /**
+     * The space-time dimension as a rational number. The reduction is
+     * carried out at this numerical value, which should therefore be
+     * generic.
+     *
+     * @return the dimension
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("ibp.dimension")
+    @DefaultValue("1013/257")
+    String getDimension() throws ConfigurationException;
+
+    /**
+     * The largest sum of positive powers of the seed integrals.
+     *
+     * @return the maximal number of dots plus lines
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("ibp.rmax")
+    @DefaultValue("0")
+    int getMaxDots() throws ConfigurationException;
+
+    /**
+     * The largest sum of negative powers of the seed integrals.
+     *
+     * @return the maximal number of numerator powers
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("ibp.smax")
+    @DefaultValue("1")
+    int getMaxNumerators() throws ConfigurationException;
+
+    /**
+     * The integrals to be reduced, each given by its comma-separated
+     * powers. If none are given, the integral with all propagators of
+     * the top sector raised to the first power is reduced.
+     *
+     * @return the target integrals
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("ibp.targets")
+    String[] getTargets() throws ConfigurationException;
+}
@@ -0,0 +1,623 @@
+/*
+ * IbpReducer.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.ibp;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.checkpoint.CheckpointLog;
+import com.github.anyloop.finitefield.ModularEngine;
+import com.github.anyloop.finitefield.PrimeField;
+import com.github.anyloop.finitefield.Rational;
+import com.github.anyloop.storage.OffHeapStorage;
+import com.github.anyloop.storage.RecordStore;
+import com.github.anyloop.symbolic.MemoryBudget;
+
+/**
+ * Reduces integrals of a family to master integrals with Laporta's
+ * algorithm.
+ *
+ * The system of IBP identities is solved modulo one prime after the
+ * other, the elimination of each being split into fork/join tasks;
+ * the {@link ModularEngine} lifts the coefficients to rational
+ * numbers. A prime for which a different set of master integrals
+ * emerges is discarded as unlucky.
+ *
+ * The dimension and the kinematics are numbers, so that the
+ * coefficients are rational numbers valid at that point only.
+ *
+ * A reduction may record its progress in a {@link CheckpointLog}: every
+ * pivot row as soon as it is fixed and the result modulo every prime.
+ * A resumed reduction skips the primes which were done and restores
+ * the pivot rows of the others before continuing the elimination.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class IbpReducer {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(IbpReducer.class);
+
+    /**
+     * The tag of a checkpoint record holding a pivot row.
+     */
+    private static final byte PIVOT = 'P';
+
+    /**
+     * The tag of a checkpoint record holding the result modulo a
+     * prime.
+     */
+    private static final byte SOLVED = 'S';
+
+    private final IntegralFamily family;
+
+    /**
+     * The packed target integrals.
+     */
+    private final long[] targets;
+
+    /**
+     * The largest sum of positive powers of the seeds.
+     */
+    private final int maxDots;
+
+    /**
+     * The largest sum of negative powers of the seeds.
+     */
+    private final int maxNumerators;
+
+    /**
+     * Creates a reducer. The seeds are extended as needed to include
+     * the targets.
+     *
+     * @param theFamily the integral family
+     * @param theTargets the power of each propagator of each target
+     * @param theMaxDots the largest sum of positive powers of the seeds
+     * @param theMaxNumerators the largest sum of negative powers of the
+     *        seeds
+     * @throws ConfigurationException if a target does not belong to
+     *         the family or the powers are out of range
+     *
+     * @since 0.1.0
+     */
+    public IbpReducer(
+            final IntegralFamily theFamily,
+            final int[][] theTargets,
+            final int theMaxDots,
+            final int theMaxNumerators) throws ConfigurationException {
+        this.family = theFamily;
+        final int n = theFamily.getPropagatorCount();
+        int dots = theMaxDots;
+        int numerators = theMaxNumerators;
+        this.targets = new long[theTargets.length];
+        for (int t = 0; t < theTargets.length; ++t) {
+            final int[] powers = theTargets[t];
+            if (powers.length != n) {
+                throw new ConfigurationException(
+                    "Target " + Arrays.toString(powers) + " needs "
+                    + n + " powers");
+            }
+            int r = 0;
+            int s = 0;
+            for (int j = 0; j < n; ++j) {
+                if (powers[j] > 0) {
+                    if (theFamily.isNumerator(j)) {
+                        throw new ConfigurationException("Numerator "
+                            + (j + 1) + " of target "
+                            + Arrays.toString(powers)
+                            + " must not be positive");
+                    }
+                    r += powers[j];
+                } else {
+                    s -= powers[j];
+                }
+            }
+            dots = Math.max(dots, r);
+            numerators = Math.max(numerators, s);
+        }
+        if (numerators < 0 || dots > Integrals.MAX_POWER - 1
+                || numerators > -Integrals.MIN_POWER - 1) {
+            throw new ConfigurationException(
+                "The powers of the seeds are out of range");
+        }
+        for (int t = 0; t < theTargets.length; ++t) {
+            this.targets[t] = Integrals.pack(theTargets[t]);
+        }
+        this.maxDots = dots;
+        this.maxNumerators = numerators;
+    }
+
+    /**
+     * Creates a reducer from its configuration.
+     *
+     * @param config the configuration
+     * @return the reducer
+     * @throws ConfigurationException if the configuration is invalid
+     *
+     * @since 0.1.0
+     */
+    public static IbpReducer fromConfig(final IbpConfig config)
+            throws ConfigurationException {
+        final IntegralFamily family = IntegralFamily.fromConfig(config);
+        final String[] given = config.getTargets();
+        final int[][] targets;
+        if (given.length == 0) {
+            final int n = family.getPropagatorCount();
+            targets = new int[1][n];
+            for (int j = 0; j < n; ++j) {
+                targets[0][j] = family.isNumerator(j) ? 0 : 1;
+            }
+        } else {
+            targets = new int[given.length][];
+            for (int t = 0; t < given.length; ++t) {
+                final String[] parts = given[t].split(",");
+                targets[t] = new int[parts.length];
+                try {
+                    for (int j = 0; j < parts.length; ++j) {
+                        targets[t][j] = Integer.parseInt(parts[j].trim());
+                    }
+                } catch (NumberFormatException ex) {
+                    throw new ConfigurationException(
+                        "Invalid target '" + given[t] + "'", ex);
+                }
+            }
+        }
+        return new IbpReducer(family, targets,
+            config.getMaxDots(), config.getMaxNumerators());
+    }
+
+    /**
+     * Returns the integral family.
+     *
+     * @return the family
+     *
+     * @since 0.1.0
+     */
+    public IntegralFamily getFamily() {
+        return this.family;
+    }
+
+    /**
+     * Returns the largest sum of negative powers of the seeds, i.e.
+     * the highest rank of the numerators.
+     *
+     * @return the highest rank
+     *
+     * @since 0.1.0
+     */
+    public int getMaxNumerators() {
+        return this.maxNumerators;
+    }
+
+    /**
+     * Reduces the targets.
+     *
+     * @param engine the engine which supplies the primes and lifts the
+     *        results
+     * @param pool the pool in which the primes are processed and the
+     *        elimination is run
+     * @return the reduction table
+     * @throws ArithmeticException if the coefficients cannot be
+     *         reconstructed with the available primes
+     *
+     * @since 0.1.0
+     */
+    public ReductionTable reduce(
+            final ModularEngine engine,
+            final ForkJoinPool pool) {
+        return this.reduce(engine, pool, null);
+    }
+
+    /**
+     * Reduces the targets, keeping the eliminated rows of the systems
+     * off the heap.
+     *
+     * @param engine the engine which supplies the primes and lifts the
+     *        results
+     * @param pool the pool in which the primes are processed and the
+     *        elimination is run
+     * @param storage the storage for the rows or <code>null</code> to
+     *        keep them on the heap
+     * @return the reduction table
+     * @throws ArithmeticException if the coefficients cannot be
+     *         reconstructed with the available primes
+     *
+     * @since 0.1.0
+     */
+    public ReductionTable reduce(
+            final ModularEngine engine,
+            final ForkJoinPool pool,
+            final OffHeapStorage storage) {
+        return this.reduce(engine, pool, storage, null, null,
+            Collections.emptyMap());
+    }
+
+    /**
+     * Reduces the targets, recording the progress in a checkpoint log.
+     * If the log holds the records of an interrupted reduction, which
+     * must have been of the same system with the same primes, the
+     * reduction continues from there.
+     *
+     * @param engine the engine which supplies the primes and lifts the
+     *        results
+     * @param pool the pool in which the primes are processed and the
+     *        elimination is run
+     * @param storage the storage for the rows or <code>null</code> to
+     *        keep them on the heap
+     * @param checkpoint the log
+     * @return the reduction table
+     * @throws IOException if the log cannot be read
+     * @throws ArithmeticException if the coefficients cannot be
+     *         reconstructed with the available primes
+     *
+     * @since 0.1.0
+     */
+    public ReductionTable reduce(
+            final ModularEngine engine,
+            final ForkJoinPool pool,
+            final OffHeapStorage storage,
+            final CheckpointLog checkpoint) throws IOException {
+        return this.reduce(engine, pool, storage, null, checkpoint);
+    }
+
+    /**
+     * Reduces the targets within a heap budget, optionally recording
+     * the progress in a checkpoint log. The eliminated rows of the
+     * systems stay on the heap as long as the budget admits them, and
+     * only the rows beyond it are moved into the storage.
+     *
+     * @param engine the engine which supplies the primes and lifts the
+     *        results
+     * @param pool the pool in which the primes are processed and the
+     *        elimination is run
+     * @param storage the storage for the rows beyond the budget or
+     *        <code>null</code> to keep them on the heap
+     * @param budget the heap budget or <code>null</code> to move all
+     *        eliminated rows into the storage
+     * @param checkpoint the log or <code>null</code>
+     * @return the reduction table
+     * @throws IOException if the log cannot be read
+     * @throws ArithmeticException if the coefficients cannot be
+     *         reconstructed with the available primes
+     *
+     * @since 0.1.0
+     */
+    public ReductionTable reduce(
+            final ModularEngine engine,
+            final ForkJoinPool pool,
+            final OffHeapStorage storage,
+            final MemoryBudget budget,
+            final CheckpointLog checkpoint) throws IOException {
+        final Map<Long, Progress> progress = new HashMap<>();
+        if (checkpoint != null) {
+            checkpoint.replay(in -> restore(in, progress));
+        }
+        return this.reduce(
+            engine, pool, storage, budget, checkpoint, progress);
+    }
+
+    private ReductionTable reduce(
+            final ModularEngine engine,
+            final ForkJoinPool pool,
+            final OffHeapStorage storage,
+            final MemoryBudget budget,
+            final CheckpointLog checkpoint,
+            final Map<Long, Progress> progress) {
+        final AtomicReference<long[]> masters = new AtomicReference<>();
+        final Rational[] coefficients = engine.reconstruct(field -> {
+            final Progress restored = progress.get(field.getPrime());
+            final ReductionRun.Result result;
+            if (restored != null && restored.result != null) {
+                result = restored.result;
+            } else if (storage == null) {
+                result = this.reduce(
+                    field, null, budget, restored, checkpoint);
+            } else {
+                try (RecordStore store = storage.createStore()) {
+                    result = this.reduce(
+                        field, store, budget, restored, checkpoint);
+                }
+            }
+            masters.compareAndSet(null, result.getMasters());
+            if (!Arrays.equals(masters.get(), result.getMasters())) {
+                throw new ArithmeticException(
+                    "Different master integrals modulo " + field.getPrime());
+            }
+            return result.getCoefficients();
+        }, pool);
+        return new ReductionTable(
+            this.family, this.targets, masters.get(), coefficients);
+    }
+
+    /**
+     * Reduces the targets modulo a single prime, e.g. in a worker
+     * process, and writes the masters and the coefficients.
+     *
+     * @param field the prime field
+     * @param out receives the image, to be read by
+     *        {@link ReductionImages#add}
+     * @throws IOException if the image cannot be written
+     * @throws ArithmeticException if the prime is unlucky
+     *
+     * @since 0.1.0
+     */
+    public void reduce(final PrimeField field, final DataOutput out)
+            throws IOException {
+        final ReductionRun.Result result =
+            this.reduce(field, null, null, null, null);
+        writeLongs(out, result.getMasters());
+        writeLongs(out, result.getCoefficients());
+    }
+
+    /**
+     * Starts combining images written by
+     * {@link #reduce(PrimeField, DataOutput)} into the reduction
+     * table.
+     *
+     * @param engine the engine which lifts the results
+     * @return the combination of the images
+     *
+     * @since 0.1.0
+     */
+    public ReductionImages images(final ModularEngine engine) {
+        return new ReductionImages(
+            this.family, this.targets, engine.lifting());
+    }
+
+    /**
+     * Reduces the targets modulo a single prime.
+     *
+     * @param field the prime field
+     * @param store the store for the pivot rows or <code>null</code>
+     * @param budget the heap budget or <code>null</code>
+     * @param restored the progress of an interrupted run or
+     *        <code>null</code>
+     * @param checkpoint the log or <code>null</code>
+     * @return the masters and coefficients
+     */
+    private ReductionRun.Result reduce(
+            final PrimeField field,
+            final RecordStore store,
+            final MemoryBudget budget,
+            final Progress restored,
+            final CheckpointLog checkpoint) {
+        final long start = System.nanoTime();
+        final long prime = field.getPrime();
+        ReductionRun run = this.prepare(field, store, budget);
+        try {
+            int pivots = 0;
+            if (restored != null) {
+                for (final Pivot p : restored.pivots) {
+                    if (!run.restorePivot(
+                            p.column, p.row, p.cols, p.vals)) {
+                        LOGGER.warn("Checkpoint does not match the system "
+                            + "modulo " + prime + ", starting afresh");
+                        run.releaseBudget();
+                        run = this.prepare(field, store, budget);
+                        pivots = 0;
+                        break;
+                    }
+                    ++pivots;
+                }
+            }
+            final ReductionRun.Result result =
+                this.eliminate(run, prime, pivots, checkpoint, start);
+            if (store == null && run.getOverBudgetCount() > 0) {
+                LOGGER.warn(run.getOverBudgetCount() + " pivot rows modulo "
+                    + prime + " exceed the memory budget; set"
+                    + " storage.offHeap to keep them off the heap");
+            }
+            return result;
+        } finally {
+            run.releaseBudget();
+        }
+    }
+
+    /**
+     * Eliminates a prepared system modulo a single prime.
+     *
+     * @param run the system, possibly with restored pivots
+     * @param prime the prime
+     * @param pivots the number of restored pivots
+     * @param checkpoint the log or <code>null</code>
+     * @param start the start time of the reduction in nanoseconds
+     * @return the masters and coefficients
+     */
+    private ReductionRun.Result eliminate(
+            final ReductionRun run,
+            final long prime,
+            final int pivots,
+            final CheckpointLog checkpoint,
+            final long start) {
+        run.eliminate(checkpoint == null ? null
+            : (column, row, cols, vals) -> checkpoint.append(out -> {
+                out.writeByte(PIVOT);
+                out.writeLong(prime);
+                out.writeInt(column);
+                out.writeInt(row);
+                out.writeInt(cols.length);
+                for (int k = 0; k < cols.length; ++k) {
+                    out.writeInt(cols[k]);
+                }
+                for (int k = 0; k < vals.length; ++k) {
+                    out.writeLong(vals[k]);
+                }
+            }));
+        final ReductionRun.Result result = run.solve(this.targets);
+        if (checkpoint != null) {
+            checkpoint.append(out -> {
+                out.writeByte(SOLVED);
+                out.writeLong(prime);
+                writeLongs(out, result.getMasters());
+                writeLongs(out, result.getCoefficients());
+            });
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(String.format(
+                "IBP modulo %d: %d equations, %d integrals, %d masters,"
+                + " %d pivots restored, %d pivots beyond the budget,"
+                + " %.1f ms", prime, run.getRowCount(),
+                run.getColumnCount(), result.getMasters().length, pivots,
+                run.getOverBudgetCount(),
+                (System.nanoTime() - start) / 1e6));
+        }
+        return result;
+    }
+
+    /**
+     * Sets up the system of equations modulo a prime.
+     *
+     * @param field the prime field
+     * @param store the store for the pivot rows or <code>null</code>
+     * @param budget the heap budget or <code>null</code>
+     * @return the system, ready for elimination
+     */
+    private ReductionRun prepare(
+            final PrimeField field,
+            final RecordStore store,
+            final MemoryBudget budget) {
+        final ReductionRun run =
+            new ReductionRun(this.family, field, store, budget);
+        run.generate(this.maxDots, this.maxNumerators);
+        run.buildRows(this.targets);
+        return run;
+    }
+
+    private static void writeLongs(
+            final DataOutput out,
+            final long[] values) throws IOException {
+        out.writeInt(values.length);
+        for (final long v : values) {
+            out.writeLong(v);
+        }
+    }
+
+    static long[] readLongs(final DataInput in) throws IOException {
+        final int n = in.readInt();
+        if (n < 0) {
+            throw new IOException("Malformed checkpoint record");
+        }
+        final long[] values = new long[n];
+        for (int i = 0; i < n; ++i) {
+            values[i] = in.readLong();
+        }
+        return values;
+    }
+
+    /**
+     * Restores the progress from a checkpoint record.
+     *
+     * @param in the record
+     * @param progress receives the progress for each prime
+     * @throws IOException if the record is malformed
+     */
+    private static void restore(
+            final DataInput in,
+            final Map<Long, Progress> progress) throws IOException {
+        final byte tag = in.readByte();
+        final Progress p =
+            progress.computeIfAbsent(in.readLong(), k -> new Progress());
+        if (tag == PIVOT) {
+            final int column = in.readInt();
+            final int row = in.readInt();
+            final int n = in.readInt();
+            if (n < 0) {
+                throw new IOException("Malformed checkpoint record");
+            }
+            final int[] cols = new int[n];
+            for (int k = 0; k < n; ++k) {
+                cols[k] = in.readInt();
+            }
+            final long[] vals = new long[n];
+            for (int k = 0; k < n; ++k) {
+                vals[k] = in.readLong();
+            }
+            p.pivots.add(new Pivot(column, row, cols, vals));
+        } else if (tag == SOLVED) {
+            final long[] masters = readLongs(in);
+            p.result = new ReductionRun.Result(masters, readLongs(in));
+        } else {
+            throw new IOException("Unknown checkpoint record " + tag);
+        }
+    }
+
+    /**
+     * The progress of an interrupted reduction modulo a prime.
+     */
+    private static final class Progress {
+
+        /**
+         * The pivot rows in the order in which they were fixed.
+         */
+        private final List<Pivot> pivots = new ArrayList<>();
+
+        /**
+         * The result or <code>null</code> if the reduction was not
+         * finished.
+         */
+        private ReductionRun.Result result;
+    }
+
+    /**
+     * A pivot row restored from a checkpoint.
+     */
+    private static final class Pivot {
+
+        private final int column;
+
+        private final int row;
+
+        private final int[] cols;
+
+        private final long[] vals;
+
+        Pivot(
+                final int theColumn,
+                final int theRow,
+                final int[] theCols,
+                final long[] theVals) {
+            this.column = theColumn;
+            this.row = theRow;
+            this.cols = theCols;
+            this.vals = theVals;
+        }
+    }
+}
@@ -0,0 +1,563 @@
+/*
+ * IntegralFamily.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.ibp;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.finitefield.Rational;
+
+/**
+ * A family of Feynman integrals
+ * <code>I(a_1, ..., a_N) = &int; d^dk_1 ... d^dk_L
+ * / (D_1^a_1 ... D_N^a_N)</code>
+ * with propagators <code>D_j = Q_j^2 - m_j^2</code>, where each
+ * momentum <code>Q_j</code> is an integer linear combination of the
+ * loop momenta and the external momenta.
+ *
+ * Momenta are numbered with the loop momenta first, followed by the
+ * external momenta. The propagators must form a basis of the scalar
+ * products involving loop momenta, so that every such product can be
+ * written as a linear combination of propagators.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class IntegralFamily {
+
+    /**
+     * The largest number of propagators, bounded by the packing of
+     * integrals into <code>long</code> keys.
+     */
+    public static final int MAX_PROPAGATORS = Integrals.MAX_PROPAGATORS;
+
+    /**
+     * The name used when printing integrals.
+     */
+    private final String name;
+
+    /**
+     * The number of loop momenta.
+     */
+    private final int loops;
+
+    /**
+     * The number of external momenta.
+     */
+    private final int externals;
+
+    /**
+     * The momentum coefficients of each propagator, indexed by
+     * propagator and momentum.
+     */
+    private final int[][] momenta;
+
+    /**
+     * The squared mass of each propagator.
+     */
+    private final Rational[] massSquares;
+
+    /**
+     * The propagators which are irreducible numerators.
+     */
+    private final boolean[] numerators;
+
+    /**
+     * The scalar products of external momenta.
+     */
+    private final Rational[][] kinematics;
+
+    /**
+     * The space-time dimension.
+     */
+    private final Rational dimension;
+
+    /**
+     * Creates a family. The arrays are taken over without copying.
+     *
+     * @param theName the name of the family
+     * @param theLoops the number of loop momenta
+     * @param theExternals the number of external momenta
+     * @param theMomenta the momentum coefficients per propagator
+     * @param theMassSquares the squared mass per propagator
+     * @param theNumerators marks the irreducible numerators
+     * @param theKinematics the symmetric matrix of scalar products of
+     *        external momenta
+     * @param theDimension the space-time dimension
+     * @throws ConfigurationException if the propagators do not form a
+     *         basis of the scalar products
+     *
+     * @since 0.1.0
+     */
+    public IntegralFamily(
+            final String theName,
+            final int theLoops,
+            final int theExternals,
+            final int[][] theMomenta,
+            final Rational[] theMassSquares,
+            final boolean[] theNumerators,
+            final Rational[][] theKinematics,
+            final Rational theDimension) throws ConfigurationException {
+        this.name = theName;
+        this.loops = theLoops;
+        this.externals = theExternals;
+        this.momenta = theMomenta;
+        this.massSquares = theMassSquares;
+        this.numerators = theNumerators;
+        this.kinematics = theKinematics;
+        this.dimension = theDimension;
+
+        if (theLoops < 1) {
+            throw new ConfigurationException(
+                "An integral family needs at least one loop momentum");
+        }
+        final int expected = this.getScalarProductCount();
+        if (theMomenta.length != expected) {
+            throw new ConfigurationException(
+                "A family with " + theLoops + " loop and " + theExternals
+                + " external momenta needs " + expected
+                + " propagators including numerators, but has "
+                + theMomenta.length);
+        }
+        if (expected > MAX_PROPAGATORS) {
+            throw new ConfigurationException(
+                "At most " + MAX_PROPAGATORS + " propagators are supported");
+        }
+        for (final int[] q : theMomenta) {
+            boolean loop = false;
+            for (int m = 0; m < theLoops; ++m) {
+                loop |= q[m] != 0;
+            }
+            if (!loop) {
+                throw new ConfigurationException(
+                    "Every propagator must depend on a loop momentum");
+            }
+        }
+        if (!isRegular(this.getScalarProductMatrix())) {
+            throw new ConfigurationException(
+                "The propagators do not form a basis of the scalar "
+                + "products involving loop momenta");
+        }
+    }
+
+    /**
+     * Creates a family from its configuration.
+     *
+     * @param config the configuration
+     * @return the family
+     * @throws ConfigurationException if the configuration is invalid
+     *
+     * @since 0.1.0
+     */
+    public static IntegralFamily fromConfig(final IbpConfig config)
+            throws ConfigurationException {
+        final String[] loopNames = config.getLoopMomenta();
+        final String[] externalNames = config.getExternalMomenta();
+        final Map<String, Integer> index = new HashMap<>();
+        for (final String n : loopNames) {
+            define(index, n);
+        }
+        for (final String n : externalNames) {
+            define(index, n);
+        }
+
+        final IbpConfig.Propagator[] props = config.getPropagators();
+        final int[][] momenta = new int[props.length][];
+        final Rational[] masses = new Rational[props.length];
+        final boolean[] numerators = new boolean[props.length];
+        for (int j = 0; j < props.length; ++j) {
+            momenta[j] = parseMomentum(props[j].getMomentum(), index);
+            masses[j] = parseRational(
+                props[j].getMassSquared(), "ibp.propagators...mass2");
+            numerators[j] = props[j].isNumerator();
+        }
+
+        final int e = externalNames.length;
+        final Rational[][] kinematics = new Rational[e][e];
+        for (final Rational[] row : kinematics) {
+            Arrays.fill(row, Rational.of(0, 1));
+        }
+        for (final IbpConfig.ScalarProduct sp : config.getScalarProducts()) {
+            final String[] pair = sp.getMomenta();
+            if (pair.length != 2) {
+                throw new ConfigurationException(
+                    "A scalar product needs exactly two momenta");
+            }
+            final int a = externalIndex(index, pair[0], loopNames.length);
+            final int b = externalIndex(index, pair[1], loopNames.length);
+            final Rational value = parseRational(
+                sp.getValue(), "ibp.kinematics...value");
+            kinematics[a][b] = value;
+            kinematics[b][a] = value;
+        }
+
+        return new IntegralFamily(
+            config.getName(),
+            loopNames.length,
+            e,
+            momenta,
+            masses,
+            numerators,
+            kinematics,
+            parseRational(config.getDimension(), "ibp.dimension"));
+    }
+
+    private static void define(
+            final Map<String, Integer> index,
+            final String momentum) throws ConfigurationException {
+        if (!momentum.matches("[A-Za-z_]\\w*")) {
+            throw new ConfigurationException(
+                "Invalid momentum name '" + momentum + "'");
+        }
+        if (index.putIfAbsent(momentum, index.size()) != null) {
+            throw new ConfigurationException(
+                "Momentum '" + momentum + "' is defined twice");
+        }
+    }
+
+    private static int externalIndex(
+            final Map<String, Integer> index,
+            final String momentum,
+            final int loops) throws ConfigurationException {
+        final Integer m = index.get(momentum.trim());
+        if (m == null || m < loops) {
+            throw new ConfigurationException(
+                "'" + momentum + "' is not an external momentum");
+        }
+        return m - loops;
+    }
+
+    /**
+     * Parses a linear combination of momenta such as
+     * <code>k1 - 2*p1 + p2</code>.
+     *
+     * @param text the linear combination
+     * @param index the index of each momentum name
+     * @return the coefficient of each momentum
+     * @throws ConfigurationException if the text cannot be parsed
+     */
+    static int[] parseMomentum(
+            final String text,
+            final Map<String, Integer> index) throws ConfigurationException {
+        final int[] result = new int[index.size()];
+        final String s = text.replaceAll("\\s+", "");
+        int pos = 0;
+        boolean any = false;
+        while (pos < s.length()) {
+            int sign = 1;
+            if (s.charAt(pos) == '+' || s.charAt(pos) == '-') {
+                sign = s.charAt(pos) == '-' ? -1 : 1;
+                ++pos;
+            } else if (any) {
+                throw new ConfigurationException(
+                    "Cannot parse momentum '" + text + "'");
+            }
+            int start = pos;
+            while (pos < s.length() && Character.isDigit(s.charAt(pos))) {
+                ++pos;
+            }
+            int factor = 1;
+            if (pos > start) {
+                factor = Integer.parseInt(s.substring(start, pos));
+                if (pos < s.length() && s.charAt(pos) == '*') {
+                    ++pos;
+                }
+            }
+            start = pos;
+            while (pos < s.length()
+                    && (Character.isLetterOrDigit(s.charAt(pos))
+                        || s.charAt(pos) == '_')) {
+                ++pos;
+            }
+            final Integer m = index.get(s.substring(start, pos));
+            if (m == null) {
+                throw new ConfigurationException(
+                    "Unknown momentum in '" + text + "'");
+            }
+            result[m] += sign * factor;
+            any = true;
+        }
+        if (!any) {
+            throw new ConfigurationException("Empty momentum");
+        }
+        return result;
+    }
+
+    private static Rational parseRational(
+            final String text,
+            final String key) throws ConfigurationException {
+        try {
+            return Rational.parse(text);
+        } catch (NumberFormatException | ArithmeticException ex) {
+            throw new ConfigurationException(
+                "Invalid number '" + text + "' in " + key, ex);
+        }
+    }
+
+    /**
+     * Returns the name of the family.
+     *
+     * @return the name
+     *
+     * @since 0.1.0
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Returns the number of loop momenta.
+     *
+     * @return the number of loops
+     *
+     * @since 0.1.0
+     */
+    public int getLoopCount() {
+        return this.loops;
+    }
+
+    /**
+     * Returns the number of external momenta.
+     *
+     * @return the number of external momenta
+     *
+     * @since 0.1.0
+     */
+    public int getExternalCount() {
+        return this.externals;
+    }
+
+    /**
+     * Returns the number of momenta, i.e. loop plus external momenta.
+     *
+     * @return the number of momenta
+     *
+     * @since 0.1.0
+     */
+    public int getMomentumCount() {
+        return this.loops + this.externals;
+    }
+
+    /**
+     * Returns the number of propagators, including numerators.
+     *
+     * @return the number of propagators
+     *
+     * @since 0.1.0
+     */
+    public int getPropagatorCount() {
+        return this.momenta.length;
+    }
+
+    /**
+     * Returns the number of scalar products involving at least one loop
+     * momentum, which equals the number of propagators.
+     *
+     * @return <code>L(L+1)/2 + L*E</code>
+     *
+     * @since 0.1.0
+     */
+    public int getScalarProductCount() {
+        return this.loops * (this.loops + 1) / 2 + this.loops * this.externals;
+    }
+
+    /**
+     * Returns the index of the scalar product <code>q_m.q_n</code> of
+     * two momenta, at least one of which is a loop momentum.
+     *
+     * @param m the index of the first momentum
+     * @param n the index of the second momentum
+     * @return the index of the scalar product
+     */
+    int getScalarProductIndex(final int m, final int n) {
+        final int lo = Math.min(m, n);
+        final int hi = Math.max(m, n);
+        final int size = this.getMomentumCount();
+        return lo * size - lo * (lo - 1) / 2 + hi - lo;
+    }
+
+    /**
+     * Expands the quadratic part of the propagators in the scalar
+     * products involving loop momenta.
+     *
+     * @return the coefficient of each scalar product, indexed by
+     *         propagator and {@link #getScalarProductIndex}
+     */
+    int[][] getScalarProductMatrix() {
+        final int n = this.momenta.length;
+        final int size = this.getMomentumCount();
+        final int[][] result = new int[n][this.getScalarProductCount()];
+        for (int j = 0; j < n; ++j) {
+            for (int m = 0; m < this.loops; ++m) {
+                for (int k = m; k < size; ++k) {
+                    result[j][this.getScalarProductIndex(m, k)] =
+                        (m == k ? 1 : 2)
+                        * this.momenta[j][m] * this.momenta[j][k];
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Tells whether a square integer matrix is regular, using
+     * fraction-free elimination.
+     */
+    private static boolean isRegular(final int[][] matrix) {
+        final int n = matrix.length;
+        final BigInteger[][] m = new BigInteger[n][n];
+        for (int i = 0; i < n; ++i) {
+            for (int k = 0; k < n; ++k) {
+                m[i][k] = BigInteger.valueOf(matrix[i][k]);
+            }
+        }
+        BigInteger previous = BigInteger.ONE;
+        for (int col = 0; col < n; ++col) {
+            int pivot = col;
+            while (pivot < n && m[pivot][col].signum() == 0) {
+                ++pivot;
+            }
+            if (pivot == n) {
+                return false;
+            }
+            final BigInteger[] row = m[pivot];
+            m[pivot] = m[col];
+            m[col] = row;
+            for (int i = col + 1; i < n; ++i) {
+                for (int k = col + 1; k < n; ++k) {
+                    m[i][k] = m[i][k].multiply(row[col])
+                        .subtract(m[i][col].multiply(row[k]))
+                        .divide(previous);
+                }
+                m[i][col] = BigInteger.ZERO;
+            }
+            previous = row[col];
+        }
+        return true;
+    }
+
+    /**
+     * Returns the coefficient of a momentum in a propagator.
+     *
+     * @param propagator the index of the propagator
+     * @param momentum the index of the momentum
+     * @return the integer coefficient
+     *
+     * @since 0.1.0
+     */
+    public int getMomentumCoefficient(
+            final int propagator,
+            final int momentum) {
+        return this.momenta[propagator][momentum];
+    }
+
+    /**
+     * Returns the squared mass of a propagator.
+     *
+     * @param propagator the index of the propagator
+     * @return the squared mass
+     *
+     * @since 0.1.0
+     */
+    public Rational getMassSquared(final int propagator) {
+        return this.massSquares[propagator];
+    }
+
+    /**
+     * Tells whether a propagator is an irreducible numerator.
+     *
+     * @param propagator the index of the propagator
+     * @return <code>true</code> for a numerator
+     *
+     * @since 0.1.0
+     */
+    public boolean isNumerator(final int propagator) {
+        return this.numerators[propagator];
+    }
+
+    /**
+     * Returns the set of propagators which are not numerators as a
+     * bit mask.
+     *
+     * @return the top sector
+     *
+     * @since 0.1.0
+     */
+    public int getTopSector() {
+        int mask = 0;
+        for (int j = 0; j < this.numerators.length; ++j) {
+            if (!this.numerators[j]) {
+                mask |= 1 << j;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Returns the scalar product of two external momenta.
+     *
+     * @param a the index of the first external momentum, starting at
+     *        zero
+     * @param b the index of the second external momentum
+     * @return the value
+     *
+     * @since 0.1.0
+     */
+    public Rational getScalarProduct(final int a, final int b) {
+        return this.kinematics[a][b];
+    }
+
+    /**
+     * Returns the space-time dimension.
+     *
+     * @return the dimension
+     *
+     * @since 0.1.0
+     */
+    public Rational getDimension() {
+        return this.dimension;
+    }
+
+    /**
+     * Formats an integral.
+     *
+     * @param powers the power of each propagator
+     * @return e.g. <code>I(1,1,0)</code>
+     *
+     * @since 0.1.0
+     */
+    public String format(final int[] powers) {
+        final StringBuilder sb = new StringBuilder(this.name).append('(');
+        for (int j = 0; j < powers.length; ++j) {
+            if (j > 0) {
+                sb.append(',');
+            }
+            sb.append(powers[j]);
+        }
+        return sb.append(')').toString();
+    }
+}
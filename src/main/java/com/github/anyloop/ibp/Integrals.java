@@ -0,0 +1,183 @@
+/*
+ * Integrals.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.ibp;
+
+/**
+ * Packs the powers of the propagators of an integral into a single
+ * <code>long</code> and defines the order in which integrals are
+ * eliminated.
+ *
+ * Each power is stored with an offset in a field of
+ * {@link #FIELD_BITS} bits, propagator <code>j</code> occupying the
+ * bits from <code>FIELD_BITS * j</code> upwards. Keys of integrals of
+ * the same family can therefore be compared for equality and hashed as
+ * plain numbers, and raising a single power is an addition.
+ *
+ * @since 0.1.0
+ */
+final class Integrals {
+
+    /**
+     * The number of bits per power.
+     */
+    static final int FIELD_BITS = 6;
+
+    /**
+     * The largest number of propagators.
+     */
+    static final int MAX_PROPAGATORS = Long.SIZE / FIELD_BITS;
+
+    /**
+     * The offset added to each power.
+     */
+    private static final int OFFSET = 1 << (FIELD_BITS - 1);
+
+    /**
+     * The largest representable power.
+     */
+    static final int MAX_POWER = OFFSET - 1;
+
+    /**
+     * The smallest representable power.
+     */
+    static final int MIN_POWER = -OFFSET;
+
+    private static final long MASK = (1L << FIELD_BITS) - 1;
+
+    /**
+     * The bits needed per component of the rank; enough for sums of
+     * {@link #MAX_PROPAGATORS} powers.
+     */
+    private static final int RANK_BITS = 9;
+
+    private Integrals() {
+    }
+
+    /**
+     * Packs the powers of an integral.
+     *
+     * @param powers the power of each propagator
+     * @return the key
+     * @throws ArithmeticException if a power is out of range
+     */
+    static long pack(final int[] powers) {
+        long key = 0;
+        for (int j = 0; j < powers.length; ++j) {
+            if (powers[j] < MIN_POWER || powers[j] > MAX_POWER) {
+                throw new ArithmeticException(
+                    "Power " + powers[j] + " out of range");
+            }
+            key |= (long) (powers[j] + OFFSET) << (FIELD_BITS * j);
+        }
+        return key;
+    }
+
+    /**
+     * Unpacks the powers of an integral.
+     *
+     * @param key the key
+     * @param count the number of propagators
+     * @return the power of each propagator
+     */
+    static int[] unpack(final long key, final int count) {
+        final int[] powers = new int[count];
+        for (int j = 0; j < count; ++j) {
+            powers[j] = getPower(key, j);
+        }
+        return powers;
+    }
+
+    /**
+     * Returns the power of a propagator.
+     *
+     * @param key the key
+     * @param propagator the index of the propagator
+     * @return the power
+     */
+    static int getPower(final long key, final int propagator) {
+        return (int) ((key >>> (FIELD_BITS * propagator)) & MASK) - OFFSET;
+    }
+
+    /**
+     * Changes the power of a propagator. The result must stay within
+     * the representable range.
+     *
+     * @param key the key
+     * @param propagator the index of the propagator
+     * @param delta the change of the power
+     * @return the key of the modified integral
+     */
+    static long shift(final long key, final int propagator, final int delta) {
+        return key + ((long) delta << (FIELD_BITS * propagator));
+    }
+
+    /**
+     * Returns the sector of an integral, i.e. the set of propagators
+     * with positive powers.
+     *
+     * @param key the key
+     * @param count the number of propagators
+     * @return the sector as a bit mask
+     */
+    static int getSector(final long key, final int count) {
+        int mask = 0;
+        for (int j = 0; j < count; ++j) {
+            if (getPower(key, j) > 0) {
+                mask |= 1 << j;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Computes the complexity of an integral. Integrals are ranked by
+     * the number of lines, then by the sum of positive powers, then by
+     * the sum of negative powers and finally by the sector. The result
+     * is non-negative and less than <code>2^32</code>.
+     *
+     * @param key the key
+     * @param count the number of propagators
+     * @return the rank; more complex integrals have larger ranks
+     */
+    static long rank(final long key, final int count) {
+        int lines = 0;
+        int dots = 0;
+        int numerators = 0;
+        int sector = 0;
+        for (int j = 0; j < count; ++j) {
+            final int a = getPower(key, j);
+            if (a > 0) {
+                ++lines;
+                dots += a;
+                sector |= 1 << j;
+            } else {
+                numerators -= a;
+            }
+        }
+        return ((long) lines << (2 * RANK_BITS + MAX_PROPAGATORS))
+            | ((long) dots << (RANK_BITS + MAX_PROPAGATORS))
+            | ((long) numerators << MAX_PROPAGATORS)
+            | sector;
+    }
+}
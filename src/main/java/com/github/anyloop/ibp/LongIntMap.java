@@ -0,0 +1,161 @@
+/*
+ * LongIntMap.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.ibp;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash map from <code>long</code> to non-negative
+ * <code>int</code> without boxing.
+ *
+ * @since 0.1.0
+ */
+final class LongIntMap {
+
+    /**
+     * The value returned for absent keys.
+     */
+    static final int ABSENT = -1;
+
+    private long[] keys;
+
+    private int[] values;
+
+    private int size;
+
+    /**
+     * Creates an empty map.
+     *
+     * @param expected the expected number of entries
+     */
+    LongIntMap(final int expected) {
+        int capacity = 16;
+        while (capacity < 2 * expected) {
+            capacity <<= 1;
+        }
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        Arrays.fill(this.values, ABSENT);
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return the size
+     */
+    int size() {
+        return this.size;
+    }
+
+    private static int mix(final long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        return (int) h;
+    }
+
+    /**
+     * Looks up a key.
+     *
+     * @param key the key
+     * @return the value or {@link #ABSENT}
+     */
+    int get(final long key) {
+        final int mask = this.keys.length - 1;
+        for (int i = mix(key) & mask;; i = (i + 1) & mask) {
+            if (this.values[i] == ABSENT || this.keys[i] == key) {
+                return this.values[i];
+            }
+        }
+    }
+
+    /**
+     * Adds a key unless it is present.
+     *
+     * @param key the key
+     * @param value the non-negative value for a new key
+     * @return the value of the key, which is <code>value</code> if the
+     *         key was absent
+     */
+    int putIfAbsent(final long key, final int value) {
+        final int mask = this.keys.length - 1;
+        int i = mix(key) & mask;
+        while (this.values[i] != ABSENT) {
+            if (this.keys[i] == key) {
+                return this.values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        this.keys[i] = key;
+        this.values[i] = value;
+        if (2 * ++this.size > this.keys.length) {
+            this.grow();
+        }
+        return value;
+    }
+
+    /**
+     * Replaces the value of a key which is present.
+     *
+     * @param key the key
+     * @param value the new non-negative value
+     */
+    void replace(final long key, final int value) {
+        final int mask = this.keys.length - 1;
+        int i = mix(key) & mask;
+        while (this.keys[i] != key || this.values[i] == ABSENT) {
+            i = (i + 1) & mask;
+        }
+        this.values[i] = value;
+    }
+
+    /**
+     * Returns all keys in unspecified order.
+     *
+     * @return the keys
+     */
+    long[] keys() {
+        final long[] result = new long[this.size];
+        int n = 0;
+        for (int i = 0; i < this.keys.length; ++i) {
+            if (this.values[i] != ABSENT) {
+                result[n++] = this.keys[i];
+            }
+        }
+        return result;
+    }
+
+    private void grow() {
+        final long[] oldKeys = this.keys;
+        final int[] oldValues = this.values;
+        this.keys = new long[2 * oldKeys.length];
+        this.values = new int[2 * oldKeys.length];
+        Arrays.fill(this.values, ABSENT);
+        this.size = 0;
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldValues[i] != ABSENT) {
+                this.putIfAbsent(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+}
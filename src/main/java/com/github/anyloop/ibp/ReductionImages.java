@@ -0,0 +1,124 @@
+/*
+ * ReductionImages.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.ibp;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.github.anyloop.finitefield.ModularEngine;
+import com.github.anyloop.finitefield.PrimeField;
+import com.github.anyloop.finitefield.Rational;
+
+/**
+ * Combines the images of a reduction modulo single primes, computed
+ * e.g. by separate processes, into a {@link ReductionTable}.
+ *
+ * Instances are not thread-safe.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class ReductionImages {
+
+    /**
+     * The integral family.
+     */
+    private final IntegralFamily family;
+
+    /**
+     * The packed target integrals.
+     */
+    private final long[] targets;
+
+    /**
+     * The reconstruction of the coefficients.
+     */
+    private final ModularEngine.Lifting lifting;
+
+    /**
+     * The master integrals of the first image or <code>null</code>.
+     */
+    private long[] masters;
+
+    /**
+     * Creates an empty combination.
+     *
+     * @param theFamily the integral family
+     * @param theTargets the packed target integrals
+     * @param theLifting the reconstruction of the coefficients
+     */
+    ReductionImages(
+            final IntegralFamily theFamily,
+            final long[] theTargets,
+            final ModularEngine.Lifting theLifting) {
+        this.family = theFamily;
+        this.targets = theTargets;
+        this.lifting = theLifting;
+    }
+
+    /**
+     * Adds the image modulo another prime.
+     *
+     * @param field the prime field
+     * @param in the image written by
+     *        {@link IbpReducer#reduce(PrimeField, java.io.DataOutput)}
+     * @return <code>true</code> once the coefficients are confirmed
+     * @throws IOException if the image cannot be read
+     * @throws ArithmeticException if the master integrals differ from
+     *         those of the previous images
+     *
+     * @since 0.1.0
+     */
+    public boolean add(final PrimeField field, final DataInput in)
+            throws IOException {
+        final long[] m = IbpReducer.readLongs(in);
+        final long[] coefficients = IbpReducer.readLongs(in);
+        if (coefficients.length != m.length * this.targets.length) {
+            throw new IOException("Malformed image modulo "
+                + field.getPrime());
+        }
+        if (this.masters == null) {
+            this.masters = m;
+        } else if (!Arrays.equals(this.masters, m)) {
+            throw new ArithmeticException(
+                "Different master integrals modulo " + field.getPrime());
+        }
+        return this.lifting.add(field, coefficients);
+    }
+
+    /**
+     * Returns the reduction table.
+     *
+     * @return the table or <code>null</code> if the coefficients have
+     *         not been confirmed yet
+     *
+     * @since 0.1.0
+     */
+    public ReductionTable getTable() {
+        final Rational[] coefficients = this.lifting.getResult();
+        return coefficients == null ? null : new ReductionTable(
+            this.family, this.targets, this.masters, coefficients);
+    }
+}
@@ -0,0 +1,1073 @@
+/*
+ * ReductionRun.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.ibp;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import com.github.anyloop.finitefield.PrimeField;
+import com.github.anyloop.storage.RecordStore;
+import com.github.anyloop.symbolic.MemoryBudget;
+
+/**
+ * The reduction of an integral family modulo a single prime.
+ *
+ * The IBP identities of all seed integrals are generated into a sparse
+ * system whose columns are the integrals, sorted by decreasing
+ * complexity, so that the leading entry of every row is its most
+ * complex integral. Rows are stored as sorted primitive arrays of
+ * column indices and field elements.
+ *
+ * Forward elimination runs in rounds. In each round the active rows
+ * are grouped by their leading column; the shortest row of a group
+ * without pivot becomes the pivot of that column, and all other rows
+ * of the group are reduced by it. These reductions are independent of
+ * each other and run as fork/join tasks in the pool of the calling
+ * thread. Rows whose leading column changes take part in the next
+ * round, until every row is a pivot or has vanished. The non-pivot
+ * columns are the master integrals, in terms of which the targets are
+ * expressed by back substitution.
+ *
+ * If a {@link RecordStore} is given, pivot rows are moved into it as
+ * soon as they are chosen, since they do not change any more, so that
+ * the heap only holds the rows still being reduced. If a
+ * {@link MemoryBudget} is given as well, pivot rows stay on the heap as
+ * long as the budget admits their footprint, and only the rows beyond
+ * it are moved into the store.
+ *
+ * @since 0.1.0
+ */
+final class ReductionRun {
+
+    /**
+     * The number of row reductions below which a task is not split.
+     */
+    private static final int SEQUENTIAL_THRESHOLD = 64;
+
+    /**
+     * The approximate heap bytes of the two arrays of a row.
+     */
+    private static final long ROW_BYTES = 32;
+
+    /**
+     * The approximate heap bytes of a column index and a coefficient.
+     */
+    private static final long ENTRY_BYTES = 12;
+
+    private final IntegralFamily family;
+
+    private final PrimeField field;
+
+    /**
+     * The number of propagators.
+     */
+    private final int propagators;
+
+    /**
+     * The zero flag of every sector.
+     */
+    private final boolean[] zero;
+
+    /**
+     * The space-time dimension in the field.
+     */
+    private final long dimension;
+
+    /**
+     * The constant part of <code>v.&part;D_j/&part;k_i</code> after
+     * rewriting scalar products by propagators, indexed by
+     * <code>i * M + v</code> and <code>j</code>.
+     */
+    private final long[][] constants;
+
+    /**
+     * The coefficient of <code>D_a</code> in
+     * <code>v.&part;D_j/&part;k_i</code>, indexed by
+     * <code>i * M + v</code>, <code>j</code> and <code>a</code>.
+     */
+    private final long[][][] gradients;
+
+    /**
+     * Collects the equations before they are converted to rows.
+     */
+    private EquationBuffer equations = new EquationBuffer();
+
+    /**
+     * The store receiving the pivot rows or <code>null</code>.
+     */
+    private final RecordStore store;
+
+    /**
+     * The budget admitting the pivot rows kept on the heap or
+     * <code>null</code>.
+     */
+    private final MemoryBudget budget;
+
+    /**
+     * The bytes reserved from the budget.
+     */
+    private long reserved;
+
+    /**
+     * The number of pivot rows the budget has not admitted.
+     */
+    private int overBudget;
+
+    /**
+     * The handle of each pivot row in the store.
+     */
+    private long[] handles;
+
+    /**
+     * The column of each integral.
+     */
+    private LongIntMap columns;
+
+    /**
+     * The integral of each column.
+     */
+    private long[] columnKeys;
+
+    /**
+     * The column indices of each row.
+     */
+    private int[][] rowColumns;
+
+    /**
+     * The coefficients of each row.
+     */
+    private long[][] rowValues;
+
+    /**
+     * The pivot row of each column or <code>-1</code>.
+     */
+    private int[] pivots;
+
+    /**
+     * Prepares a reduction.
+     *
+     * @param theFamily the integral family
+     * @param theField the prime field
+     * @param theStore the store for the pivot rows or <code>null</code>
+     *        to keep them on the heap
+     * @param theBudget the budget for the pivot rows on the heap or
+     *        <code>null</code> to move all of them into the store
+     * @throws ArithmeticException if the prime is unlucky
+     */
+    ReductionRun(
+            final IntegralFamily theFamily,
+            final PrimeField theField,
+            final RecordStore theStore,
+            final MemoryBudget theBudget) {
+        this.family = theFamily;
+        this.field = theField;
+        this.store = theStore;
+        this.budget = theBudget;
+        this.propagators = theFamily.getPropagatorCount();
+        this.zero = ZeroSectors.compute(theFamily, theField);
+        this.dimension = theFamily.getDimension().toField(theField);
+
+        final int loops = theFamily.getLoopCount();
+        final int size = theFamily.getMomentumCount();
+        final int n = this.propagators;
+
+        // D = A.s + b, hence s = A^-1.D - A^-1.b
+        final int[][] a = theFamily.getScalarProductMatrix();
+        final long[][] inverse = new long[n][n];
+        final long[] b = new long[n];
+        for (int j = 0; j < n; ++j) {
+            for (int x = 0; x < n; ++x) {
+                inverse[j][x] = theField.fromLong(a[j][x]);
+            }
+            for (int m = loops; m < size; ++m) {
+                for (int k = m; k < size; ++k) {
+                    final long c = (m == k ? 1L : 2L)
+                        * theFamily.getMomentumCoefficient(j, m)
+                        * theFamily.getMomentumCoefficient(j, k);
+                    if (c != 0) {
+                        b[j] = theField.add(b[j], theField.multiply(
+                            theField.fromLong(c),
+                            this.externalProduct(m, k)));
+                    }
+                }
+            }
+            b[j] = theField.subtract(b[j],
+                theFamily.getMassSquared(j).toField(theField));
+        }
+        invert(inverse, theField);
+        final long[] offsets = new long[n];
+        for (int x = 0; x < n; ++x) {
+            for (int j = 0; j < n; ++j) {
+                offsets[x] = theField.subtract(offsets[x],
+                    theField.multiply(inverse[x][j], b[j]));
+            }
+        }
+
+        this.constants = new long[loops * size][n];
+        this.gradients = new long[loops * size][n][n];
+        for (int i = 0; i < loops; ++i) {
+            for (int v = 0; v < size; ++v) {
+                final long[] k = this.constants[i * size + v];
+                final long[][] g = this.gradients[i * size + v];
+                for (int j = 0; j < n; ++j) {
+                    final int cji = theFamily.getMomentumCoefficient(j, i);
+                    if (cji == 0) {
+                        continue;
+                    }
+                    for (int m = 0; m < size; ++m) {
+                        final int cjm = theFamily.getMomentumCoefficient(j, m);
+                        if (cjm == 0) {
+                            continue;
+                        }
+                        final long f = theField.fromLong(2L * cji * cjm);
+                        if (v < loops || m < loops) {
+                            final int x =
+                                theFamily.getScalarProductIndex(v, m);
+                            k[j] = theField.add(k[j],
+                                theField.multiply(f, offsets[x]));
+                            theField.multiplyAdd(g[j], inverse[x], f, 0, n);
+                        } else {
+                            k[j] = theField.add(k[j], theField.multiply(
+                                f, this.externalProduct(v, m)));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the scalar product of two external momenta in the field.
+     *
+     * @param m the index of the first momentum
+     * @param n the index of the second momentum
+     */
+    private long externalProduct(final int m, final int n) {
+        final int loops = this.family.getLoopCount();
+        return this.family.getScalarProduct(m - loops, n - loops)
+            .toField(this.field);
+    }
+
+    /**
+     * Inverts a matrix in place by Gauss-Jordan elimination.
+     *
+     * @throws ArithmeticException if the matrix is singular modulo the
+     *         prime
+     */
+    private static void invert(final long[][] m, final PrimeField field) {
+        final int n = m.length;
+        final long[][] aug = new long[n][2 * n];
+        for (int i = 0; i < n; ++i) {
+            System.arraycopy(m[i], 0, aug[i], 0, n);
+            aug[i][n + i] = field.one();
+        }
+        for (int col = 0; col < n; ++col) {
+            int pivot = col;
+            while (pivot < n && aug[pivot][col] == 0) {
+                ++pivot;
+            }
+            if (pivot == n) {
+                throw new ArithmeticException(
+                    "Propagators are dependent modulo " + field.getPrime());
+            }
+            final long[] row = aug[pivot];
+            aug[pivot] = aug[col];
+            aug[col] = row;
+            field.scale(row, field.inverse(row[col]), row, 2 * n);
+            for (int i = 0; i < n; ++i) {
+                if (i != col && aug[i][col] != 0) {
+                    field.multiplyAdd(aug[i], row,
+                        field.negate(aug[i][col]), 0, 2 * n);
+                }
+            }
+        }
+        for (int i = 0; i < n; ++i) {
+            System.arraycopy(aug[i], n, m[i], 0, n);
+        }
+    }
+
+    /**
+     * Tells whether an integral vanishes because its sector does.
+     *
+     * @param key the integral
+     * @return <code>true</code> for a zero integral
+     */
+    boolean isZero(final long key) {
+        return this.zero[Integrals.getSector(key, this.propagators)];
+    }
+
+    /**
+     * Generates the IBP identities of all seeds in the non-zero sectors
+     * of the family. A seed in a sector with <code>t</code> lines has
+     * positive powers summing to at most <code>max(t, maxDots)</code>
+     * and negative powers summing to at most <code>maxNumerators</code>.
+     *
+     * @param maxDots the largest sum of positive powers
+     * @param maxNumerators the largest sum of negative powers
+     */
+    void generate(final int maxDots, final int maxNumerators) {
+        final int top = this.family.getTopSector();
+        final int[] powers = new int[this.propagators];
+        for (int sector = top;; sector = (sector - 1) & top) {
+            if (!this.zero[sector]) {
+                final int lines = Integer.bitCount(sector);
+                for (int r = lines; r <= Math.max(lines, maxDots); ++r) {
+                    for (int s = 0; s <= maxNumerators; ++s) {
+                        this.distribute(powers, sector, 0, r - lines, s);
+                    }
+                }
+            }
+            if (sector == 0) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Enumerates the seeds of a sector by distributing the remaining
+     * dots over its lines and the numerator powers over the other
+     * propagators.
+     */
+    private void distribute(
+            final int[] powers,
+            final int sector,
+            final int j,
+            final int dots,
+            final int numerators) {
+        if (j == this.propagators) {
+            if (dots == 0 && numerators == 0) {
+                this.addIdentities(Integrals.pack(powers));
+            }
+            return;
+        }
+        if ((sector & (1 << j)) != 0) {
+            for (int d = 0; d <= dots; ++d) {
+                powers[j] = 1 + d;
+                this.distribute(powers, sector, j + 1, dots - d, numerators);
+            }
+        } else {
+            for (int s = 0; s <= numerators; ++s) {
+                powers[j] = -s;
+                this.distribute(powers, sector, j + 1, dots, numerators - s);
+            }
+        }
+    }
+
+    /**
+     * Adds the identities
+     * <code>&int; &part;/&part;k_i . (v / D^a) = 0</code> of a seed for
+     * every loop momentum <code>k_i</code> and every momentum
+     * <code>v</code>.
+     */
+    private void addIdentities(final long seed) {
+        final int size = this.family.getMomentumCount();
+        final int n = this.propagators;
+        final EquationBuffer eq = this.equations;
+        for (int i = 0; i < this.family.getLoopCount(); ++i) {
+            for (int v = 0; v < size; ++v) {
+                final long[] k = this.constants[i * size + v];
+                final long[][] g = this.gradients[i * size + v];
+                eq.start();
+                if (v == i) {
+                    eq.add(seed, this.dimension);
+                }
+                for (int j = 0; j < n; ++j) {
+                    final int aj = Integrals.getPower(seed, j);
+                    if (aj == 0) {
+                        continue;
+                    }
+                    final long f = this.field.fromLong(-aj);
+                    final long raised = Integrals.shift(seed, j, 1);
+                    if (k[j] != 0) {
+                        eq.add(raised, this.field.multiply(f, k[j]));
+                    }
+                    for (int a = 0; a < n; ++a) {
+                        if (g[j][a] != 0) {
+                            eq.add(Integrals.shift(raised, a, -1),
+                                this.field.multiply(f, g[j][a]));
+                        }
+                    }
+                }
+                eq.finish(this);
+            }
+        }
+    }
+
+    /**
+     * Sorts the integrals by decreasing complexity and converts the
+     * equations into rows.
+     *
+     * @param targets integrals which must have columns even if they do
+     *        not occur in any equation
+     */
+    void buildRows(final long[] targets) {
+        final EquationBuffer eq = this.equations;
+        final LongIntMap map = new LongIntMap(eq.size / 4);
+        for (int t = 0; t < eq.size; ++t) {
+            map.putIfAbsent(eq.keys[t], 0);
+        }
+        for (final long t : targets) {
+            if (!this.isZero(t)) {
+                map.putIfAbsent(t, 0);
+            }
+        }
+
+        final long[] keys = map.keys();
+        Arrays.sort(keys);
+        final long[] order = new long[keys.length];
+        for (int c = 0; c < keys.length; ++c) {
+            order[c] = (Integrals.rank(keys[c], this.propagators)
+                << (Integer.SIZE - 1)) | c;
+        }
+        Arrays.sort(order);
+        this.columnKeys = new long[keys.length];
+        for (int p = 0; p < order.length; ++p) {
+            final long key = keys[(int) (order[p] & Integer.MAX_VALUE)];
+            final int column = keys.length - 1 - p;
+            this.columnKeys[column] = key;
+            map.replace(key, column);
+        }
+        this.columns = map;
+
+        final int rows = eq.rows;
+        this.rowColumns = new int[rows][];
+        this.rowValues = new long[rows][];
+        for (int r = 0; r < rows; ++r) {
+            final int from = eq.starts[r];
+            final int len = eq.starts[r + 1] - from;
+            final int[] cols = new int[len];
+            final long[] vals = new long[len];
+            for (int t = 0; t < len; ++t) {
+                // insertion sort, rows are short
+                final int c = map.get(eq.keys[from + t]);
+                final long v = eq.values[from + t];
+                int u = t;
+                while (u > 0 && cols[u - 1] > c) {
+                    cols[u] = cols[u - 1];
+                    vals[u] = vals[u - 1];
+                    --u;
+                }
+                cols[u] = c;
+                vals[u] = v;
+            }
+            this.rowColumns[r] = cols;
+            this.rowValues[r] = vals;
+        }
+        this.equations = null;
+        this.pivots = new int[keys.length];
+        Arrays.fill(this.pivots, -1);
+    }
+
+    /**
+     * Receives the pivot rows as they are fixed.
+     */
+    @FunctionalInterface
+    interface PivotSink {
+
+        /**
+         * Called once a row has become the pivot of a column. The
+         * row is normalised and does not change any more.
+         *
+         * @param column the leading column of the row
+         * @param row the index of the row
+         * @param cols the column indices of the row
+         * @param vals the coefficients of the row
+         */
+        void pivot(int column, int row, int[] cols, long[] vals);
+    }
+
+    /**
+     * Installs a pivot row found by an earlier run on the same system,
+     * before the elimination.
+     *
+     * @param column the leading column of the row
+     * @param row the index of the row
+     * @param cols the column indices of the row
+     * @param vals the normalised coefficients of the row
+     * @return <code>false</code> if the row does not fit the system
+     */
+    boolean restorePivot(
+            final int column,
+            final int row,
+            final int[] cols,
+            final long[] vals) {
+        if (row < 0 || row >= this.rowColumns.length
+                || column < 0 || column >= this.pivots.length
+                || this.pivots[column] >= 0 || this.rowColumns[row] == null
+                || (this.rowColumns[row].length > 0
+                    && this.pivots[this.rowColumns[row][0]] == row)
+                || cols.length == 0 || cols.length != vals.length
+                || cols[0] != column || vals[0] != this.field.one()) {
+            return false;
+        }
+        for (int k = 1; k < cols.length; ++k) {
+            if (cols[k] <= cols[k - 1] || cols[k] >= this.pivots.length) {
+                return false;
+            }
+        }
+        this.rowColumns[row] = cols;
+        this.rowValues[row] = vals;
+        this.pivots[column] = row;
+        this.release(row);
+        return true;
+    }
+
+    /**
+     * Returns the number of integrals in the system.
+     *
+     * @return the number of columns
+     */
+    int getColumnCount() {
+        return this.columnKeys.length;
+    }
+
+    /**
+     * Returns the number of equations in the system.
+     *
+     * @return the number of rows
+     */
+    int getRowCount() {
+        return this.rowColumns.length;
+    }
+
+    /**
+     * Brings the system into row echelon form.
+     */
+    void eliminate() {
+        this.eliminate(null);
+    }
+
+    /**
+     * Brings the system into row echelon form, starting from the
+     * restored pivot rows, if any.
+     *
+     * @param sink receives the new pivot rows or <code>null</code>
+     */
+    void eliminate(final PivotSink sink) {
+        long[] order = new long[this.rowColumns.length];
+        int active = 0;
+        for (int r = 0; r < this.rowColumns.length; ++r) {
+            final int[] cols = this.rowColumns[r];
+            if (cols != null && cols.length > 0
+                    && this.pivots[cols[0]] != r) {
+                order[active++] = (long) cols[0] << 32 | r;
+            }
+        }
+        final int[] targets = new int[active];
+        final int[] sources = new int[active];
+        while (active > 0) {
+            Arrays.sort(order, 0, active);
+            int pairs = 0;
+            for (int start = 0; start < active;) {
+                final int lead = (int) (order[start] >>> 32);
+                int end = start;
+                int shortest = -1;
+                while (end < active && (int) (order[end] >>> 32) == lead) {
+                    final int r = (int) order[end];
+                    if (shortest < 0 || this.rowColumns[r].length
+                            < this.rowColumns[shortest].length) {
+                        shortest = r;
+                    }
+                    ++end;
+                }
+                int pivot = this.pivots[lead];
+                if (pivot < 0) {
+                    pivot = shortest;
+                    this.pivots[lead] = pivot;
+                    final long[] vals = this.rowValues[pivot];
+                    this.field.scale(vals, this.field.inverse(vals[0]),
+                        vals, vals.length);
+                    if (sink != null) {
+                        sink.pivot(lead, pivot,
+                            this.rowColumns[pivot], vals);
+                    }
+                    this.release(pivot);
+                }
+                for (int k = start; k < end; ++k) {
+                    final int r = (int) order[k];
+                    if (r != pivot) {
+                        targets[pairs] = r;
+                        sources[pairs] = pivot;
+                        ++pairs;
+                    }
+                }
+                start = end;
+            }
+
+            new Reduction(targets, sources, 0, pairs).invoke();
+
+            active = 0;
+            for (int k = 0; k < pairs; ++k) {
+                final int r = targets[k];
+                if (this.rowColumns[r].length > 0) {
+                    order[active++] = (long) this.rowColumns[r][0] << 32 | r;
+                }
+            }
+        }
+    }
+
+    /**
+     * Keeps a pivot row on the heap if the budget admits it, and moves
+     * it into the store otherwise, if there is one.
+     *
+     * @param row the pivot row
+     */
+    private void release(final int row) {
+        final int[] cols = this.rowColumns[row];
+        if (this.budget != null) {
+            final long bytes = ROW_BYTES + ENTRY_BYTES * cols.length;
+            if (this.budget.tryReserve(bytes)) {
+                this.reserved += bytes;
+                return;
+            }
+            ++this.overBudget;
+        }
+        if (this.store == null) {
+            return;
+        }
+        if (this.handles == null) {
+            this.handles = new long[this.rowColumns.length];
+        }
+        this.handles[row] = this.store.append(
+            cols, cols.length, this.rowValues[row], cols.length);
+        this.rowColumns[row] = null;
+        this.rowValues[row] = null;
+    }
+
+    /**
+     * Returns the number of pivot rows the budget has not admitted to
+     * the heap.
+     *
+     * @return the number of rows beyond the budget
+     */
+    int getOverBudgetCount() {
+        return this.overBudget;
+    }
+
+    /**
+     * Returns the bytes of the pivot rows on the heap to the budget.
+     * The run must not be used afterwards.
+     */
+    void releaseBudget() {
+        if (this.budget != null) {
+            this.budget.release(this.reserved);
+            this.reserved = 0;
+        }
+    }
+
+    /**
+     * Gives access to a row, wherever it is kept. A view is used by a
+     * single thread.
+     */
+    private final class RowView {
+        /**
+         * The column indices, possibly longer than the row.
+         */
+        private int[] cols;
+
+        /**
+         * The coefficients, possibly longer than the row.
+         */
+        private long[] vals;
+
+        /**
+         * The length of the row.
+         */
+        private int length;
+
+        /**
+         * The buffer for the column indices of rows in the store.
+         */
+        private int[] bufferCols = new int[0];
+
+        /**
+         * The buffer for the coefficients of rows in the store.
+         */
+        private long[] bufferVals = new long[0];
+
+        /**
+         * Makes the view show a row.
+         *
+         * @param row the row
+         */
+        void load(final int row) {
+            final ReductionRun run = ReductionRun.this;
+            if (run.rowColumns[row] != null) {
+                this.cols = run.rowColumns[row];
+                this.vals = run.rowValues[row];
+                this.length = this.cols.length;
+                return;
+            }
+            final long handle = run.handles[row];
+            this.length = run.store.getIntCount(handle);
+            if (this.bufferCols.length < this.length) {
+                final int capacity =
+                    Math.max(this.length, 2 * this.bufferCols.length);
+                this.bufferCols = new int[capacity];
+                this.bufferVals = new long[capacity];
+            }
+            run.store.read(handle, this.bufferCols, this.bufferVals);
+            this.cols = this.bufferCols;
+            this.vals = this.bufferVals;
+        }
+    }
+
+    /**
+     * Reduces rows in parallel.
+     */
+    private final class Reduction extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] targets;
+
+        private final int[] sources;
+
+        private final int from;
+
+        private final int to;
+
+        Reduction(
+                final int[] theTargets,
+                final int[] theSources,
+                final int theFrom,
+                final int theTo) {
+            this.targets = theTargets;
+            this.sources = theSources;
+            this.from = theFrom;
+            this.to = theTo;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= SEQUENTIAL_THRESHOLD) {
+                final RowView view = new RowView();
+                for (int k = this.from; k < this.to; ++k) {
+                    ReductionRun.this.reduce(
+                        this.targets[k], this.sources[k], view);
+                }
+            } else {
+                final int mid = (this.from + this.to) >>> 1;
+                ForkJoinTask.invokeAll(
+                    new Reduction(this.targets, this.sources, this.from, mid),
+                    new Reduction(this.targets, this.sources, mid, this.to));
+            }
+        }
+    }
+
+    /**
+     * Eliminates the leading entry of a row by a normalised pivot row
+     * with the same leading column.
+     *
+     * @param row the row to be reduced
+     * @param pivot the pivot row
+     * @param view the view used to access the pivot row
+     */
+    private void reduce(final int row, final int pivot, final RowView view) {
+        final int[] rc = this.rowColumns[row];
+        final long[] rv = this.rowValues[row];
+        view.load(pivot);
+        final int[] pc = view.cols;
+        final long[] pv = view.vals;
+        final int plen = view.length;
+        final long f = this.field.negate(rv[0]);
+        final int[] oc = new int[rc.length + plen - 2];
+        final long[] ov = new long[oc.length];
+        int n = 0;
+        int i = 1;
+        int k = 1;
+        while (i < rc.length || k < plen) {
+            if (k == plen || (i < rc.length && rc[i] < pc[k])) {
+                oc[n] = rc[i];
+                ov[n++] = rv[i++];
+            } else if (i == rc.length || rc[i] > pc[k]) {
+                oc[n] = pc[k];
+                ov[n++] = this.field.multiply(pv[k++], f);
+            } else {
+                final long v = this.field.add(
+                    rv[i], this.field.multiply(pv[k], f));
+                if (v != 0) {
+                    oc[n] = rc[i];
+                    ov[n++] = v;
+                }
+                ++i;
+                ++k;
+            }
+        }
+        this.rowColumns[row] = Arrays.copyOf(oc, n);
+        this.rowValues[row] = Arrays.copyOf(ov, n);
+    }
+
+    /**
+     * Expresses integrals in terms of master integrals by back
+     * substitution.
+     *
+     * @param targets the integrals to be reduced
+     * @return the reduction
+     */
+    Result solve(final long[] targets) {
+        final int count = this.columnKeys.length;
+        final int[] targetColumns = new int[targets.length];
+        final boolean[] needed = new boolean[count];
+        final int[] stack = new int[count];
+        final RowView view = new RowView();
+        for (int t = 0; t < targets.length; ++t) {
+            targetColumns[t] = this.isZero(targets[t])
+                ? -1 : this.columns.get(targets[t]);
+            final int c = targetColumns[t];
+            if (c < 0 || this.pivots[c] < 0 || needed[c]) {
+                continue;
+            }
+            int top = 0;
+            needed[c] = true;
+            stack[top++] = c;
+            while (top > 0) {
+                view.load(this.pivots[stack[--top]]);
+                final int[] cols = view.cols;
+                for (int k = 1; k < view.length; ++k) {
+                    if (this.pivots[cols[k]] >= 0 && !needed[cols[k]]) {
+                        needed[cols[k]] = true;
+                        stack[top++] = cols[k];
+                    }
+                }
+            }
+        }
+
+        // simpler integrals have larger columns and are resolved first
+        final int[][] resolvedColumns = new int[count][];
+        final long[][] resolvedValues = new long[count][];
+        final long[] accumulator = new long[count];
+        final boolean[] touched = new boolean[count];
+        final int[] touchedList = new int[count];
+        for (int c = count - 1; c >= 0; --c) {
+            if (!needed[c]) {
+                continue;
+            }
+            view.load(this.pivots[c]);
+            final int[] cols = view.cols;
+            final long[] vals = view.vals;
+            int touchedCount = 0;
+            for (int k = 1; k < view.length; ++k) {
+                final long f = this.field.negate(vals[k]);
+                if (this.pivots[cols[k]] < 0) {
+                    touchedCount = this.accumulate(accumulator, touched,
+                        touchedList, touchedCount, cols[k], f);
+                } else {
+                    final int[] sc = resolvedColumns[cols[k]];
+                    final long[] sv = resolvedValues[cols[k]];
+                    for (int m = 0; m < sc.length; ++m) {
+                        touchedCount = this.accumulate(accumulator, touched,
+                            touchedList, touchedCount, sc[m],
+                            this.field.multiply(f, sv[m]));
+                    }
+                }
+            }
+            Arrays.sort(touchedList, 0, touchedCount);
+            int n = 0;
+            final int[] oc = new int[touchedCount];
+            final long[] ov = new long[touchedCount];
+            for (int k = 0; k < touchedCount; ++k) {
+                final int m = touchedList[k];
+                if (accumulator[m] != 0) {
+                    oc[n] = m;
+                    ov[n++] = accumulator[m];
+                }
+                accumulator[m] = 0;
+                touched[m] = false;
+            }
+            resolvedColumns[c] = Arrays.copyOf(oc, n);
+            resolvedValues[c] = Arrays.copyOf(ov, n);
+        }
+
+        // the masters occurring in the reductions, simplest first
+        final boolean[] master = new boolean[count];
+        for (final int c : targetColumns) {
+            if (c < 0) {
+                continue;
+            }
+            if (this.pivots[c] < 0) {
+                master[c] = true;
+            } else {
+                for (final int m : resolvedColumns[c]) {
+                    master[m] = true;
+                }
+            }
+        }
+        final int[] index = new int[count];
+        int masters = 0;
+        for (int c = count - 1; c >= 0; --c) {
+            if (master[c]) {
+                index[c] = masters++;
+            }
+        }
+        final long[] masterKeys = new long[masters];
+        for (int c = 0; c < count; ++c) {
+            if (master[c]) {
+                masterKeys[index[c]] = this.columnKeys[c];
+            }
+        }
+
+        final long[] coefficients = new long[targets.length * masters];
+        for (int t = 0; t < targets.length; ++t) {
+            final int c = targetColumns[t];
+            if (c < 0) {
+                continue;
+            }
+            if (this.pivots[c] < 0) {
+                coefficients[t * masters + index[c]] = this.field.one();
+            } else {
+                final int[] cols = resolvedColumns[c];
+                for (int k = 0; k < cols.length; ++k) {
+                    coefficients[t * masters + index[cols[k]]] =
+                        resolvedValues[c][k];
+                }
+            }
+        }
+        return new Result(masterKeys, coefficients);
+    }
+
+    private int accumulate(
+            final long[] accumulator,
+            final boolean[] touched,
+            final int[] touchedList,
+            final int touchedCount,
+            final int column,
+            final long value) {
+        accumulator[column] = this.field.add(accumulator[column], value);
+        if (touched[column]) {
+            return touchedCount;
+        }
+        touched[column] = true;
+        touchedList[touchedCount] = column;
+        return touchedCount + 1;
+    }
+
+    /**
+     * The reduction of the targets modulo the prime.
+     */
+    static final class Result {
+        /**
+         * The master integrals, simplest first.
+         */
+        private final long[] masters;
+
+        /**
+         * The coefficient of each master in each target, indexed by
+         * <code>target * masters + master</code>.
+         */
+        private final long[] coefficients;
+
+        Result(final long[] theMasters, final long[] theCoefficients) {
+            this.masters = theMasters;
+            this.coefficients = theCoefficients;
+        }
+
+        long[] getMasters() {
+            return this.masters;
+        }
+
+        long[] getCoefficients() {
+            return this.coefficients;
+        }
+    }
+
+    /**
+     * A growable buffer of equations, each stored as a run of integral
+     * keys and coefficients.
+     */
+    private static final class EquationBuffer {
+
+        private long[] keys = new long[1024];
+
+        private long[] values = new long[1024];
+
+        private int[] starts = new int[257];
+
+        /**
+         * The number of stored terms.
+         */
+        private int size;
+
+        /**
+         * The number of complete equations.
+         */
+        private int rows;
+
+        void start() {
+            if (this.rows + 2 > this.starts.length) {
+                this.starts =
+                    Arrays.copyOf(this.starts, 2 * this.starts.length);
+            }
+            this.starts[this.rows] = this.size;
+        }
+
+        void add(final long key, final long value) {
+            if (this.size == this.keys.length) {
+                this.keys = Arrays.copyOf(this.keys, 2 * this.size);
+                this.values = Arrays.copyOf(this.values, 2 * this.size);
+            }
+            this.keys[this.size] = key;
+            this.values[this.size++] = value;
+        }
+
+        /**
+         * Completes the current equation, combining equal integrals and
+         * dropping zero terms and integrals of zero sectors.
+         */
+        void finish(final ReductionRun run) {
+            final PrimeField field = run.field;
+            final int from = this.starts[this.rows];
+            // sort the few terms by key
+            for (int t = from + 1; t < this.size; ++t) {
+                final long k = this.keys[t];
+                final long v = this.values[t];
+                int u = t;
+                while (u > from && this.keys[u - 1] > k) {
+                    this.keys[u] = this.keys[u - 1];
+                    this.values[u] = this.values[u - 1];
+                    --u;
+                }
+                this.keys[u] = k;
+                this.values[u] = v;
+            }
+            int n = from;
+            for (int t = from; t < this.size;) {
+                final long k = this.keys[t];
+                long v = 0;
+                while (t < this.size && this.keys[t] == k) {
+                    v = field.add(v, this.values[t++]);
+                }
+                if (v != 0 && !run.isZero(k)) {
+                    this.keys[n] = k;
+                    this.values[n++] = v;
+                }
+            }
+            this.size = n;
+            if (n > from) {
+                this.starts[++this.rows] = n;
+            }
+        }
+    }
+}
@@ -0,0 +1,383 @@
+/*
+ * ReductionStage.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.ibp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.anyloop.cache.CacheConfig;
+import com.github.anyloop.cache.CacheKey;
+import com.github.anyloop.cache.StageCache;
+import com.github.anyloop.chassis.ClassHelper;
+import com.github.anyloop.chassis.ConfigDependencies;
+import com.github.anyloop.chassis.ConfigurableRunnable;
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.chassis.Configurator;
+import com.github.anyloop.checkpoint.CheckpointConfig;
+import com.github.anyloop.checkpoint.CheckpointLog;
+import com.github.anyloop.distributed.Coordinator;
+import com.github.anyloop.distributed.DistributedConfig;
+import com.github.anyloop.distributed.PartitionTask;
+import com.github.anyloop.distributed.WorkerLauncher;
+import com.github.anyloop.finitefield.FiniteFieldConfig;
+import com.github.anyloop.finitefield.ModularEngine;
+import com.github.anyloop.scheduler.CostFeatures;
+import com.github.anyloop.scheduler.CostModel;
+import com.github.anyloop.scheduler.ScheduledTask;
+import com.github.anyloop.scheduler.SchedulerConfig;
+import com.github.anyloop.scheduler.TaskScheduler;
+import com.github.anyloop.storage.OffHeapStorage;
+import com.github.anyloop.storage.StorageConfig;
+import com.github.anyloop.symbolic.MemoryBudget;
+
+/**
+ * The pipeline stage which reduces the configured integral family.
+ *
+ * The stage runs if the family has propagators. The {@link IbpReducer}
+ * solves the system modulo the primes of a {@link ModularEngine} and
+ * reports the reduction table. With <code>distributed.workers</code>
+ * set, each prime is a partition solved by a worker process, see
+ * {@link #getPartitionTask}; otherwise the primes are solved in this
+ * process, which keeps a {@link CheckpointLog} from which an
+ * interrupted run resumes.
+ *
+ * If a {@link StageCache} is configured, the table is stored there
+ * together with the <code>ibp</code> and <code>finiteField</code>
+ * settings actually read, and restored from there by a later run.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class ReductionStage implements ConfigurableRunnable {
+
+    /**
+     * The logger of this class.
+     */
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(ReductionStage.class);
+
+    private Configurator configurator;
+
+    private IbpConfig config;
+
+    private FiniteFieldConfig finiteFieldConfig;
+
+    private StorageConfig storageConfig;
+
+    private CacheConfig cacheConfig;
+
+    private CheckpointConfig checkpointConfig;
+
+    private SchedulerConfig schedulerConfig;
+
+    private DistributedConfig distributedConfig;
+
+    private MemoryBudget budget;
+
+    private int jobs = 1;
+
+    private WorkerLauncher launcher;
+
+    @Override
+    public String getName() {
+        return "reduction";
+    }
+
+    @Override
+    public String getVersion() {
+        return ClassHelper.getVersion(ReductionStage.class);
+    }
+
+    @Override
+    public void init(final Configurator theConfigurator) {
+        this.configurator = theConfigurator;
+        this.config = theConfigurator.create(IbpConfig.class);
+        this.finiteFieldConfig =
+            theConfigurator.create(FiniteFieldConfig.class);
+        this.storageConfig = theConfigurator.create(StorageConfig.class);
+        this.cacheConfig = theConfigurator.create(CacheConfig.class);
+        this.checkpointConfig =
+            theConfigurator.create(CheckpointConfig.class);
+        this.schedulerConfig =
+            theConfigurator.create(SchedulerConfig.class);
+        this.distributedConfig =
+            theConfigurator.create(DistributedConfig.class);
+    }
+
+    /**
+     * Sets the heap budget shared with the other stages of the run.
+     *
+     * @param theBudget the budget or <code>null</code> for none
+     *
+     * @since 0.1.0
+     */
+    public void setMemoryBudget(final MemoryBudget theBudget) {
+        this.budget = theBudget;
+    }
+
+    /**
+     * Sets the number of threads solving the system.
+     *
+     * @param theJobs the number of threads
+     *
+     * @since 0.1.0
+     */
+    public void setJobs(final int theJobs) {
+        this.jobs = theJobs;
+    }
+
+    /**
+     * Sets the launcher of the workers, which is needed if
+     * <code>distributed.workers</code> is set.
+     *
+     * @param theLauncher the launcher
+     *
+     * @since 0.1.0
+     */
+    public void setLauncher(final WorkerLauncher theLauncher) {
+        this.launcher = theLauncher;
+    }
+
+    @Override
+    public void run() {
+        try {
+            this.reduce();
+        } catch (ConfigurationException ex) {
+            LOGGER.error("Configuration failed", ex);
+        }
+    }
+
+    /**
+     * Reduces the family, if it has propagators.
+     *
+     * @throws ConfigurationException if the configuration is invalid
+     *
+     * @since 0.1.0
+     */
+    public void reduce() throws ConfigurationException {
+        if (this.config.getPropagators().length == 0) {
+            return;
+        }
+        final ConfigDependencies read = new ConfigDependencies();
+        final IbpReducer reducer = IbpReducer.fromConfig(
+            this.configurator.create(IbpConfig.class, read));
+        final String title = "Reduction of "
+            + reducer.getFamily().getName() + ":" + System.lineSeparator();
+        final StageCache cache = StageCache.fromConfig(this.cacheConfig);
+        final CacheKey stage = cache == null ? null
+            : CacheKey.of(this.getName(), this.getVersion());
+        final String cached = this.lookup(cache, stage);
+        if (cached != null) {
+            LOGGER.info(title + cached);
+            return;
+        }
+        final ModularEngine engine = new ModularEngine(
+            this.configurator.create(FiniteFieldConfig.class, read));
+        final OffHeapStorage storage = this.storageConfig.isOffHeap()
+            ? OffHeapStorage.fromConfig(this.storageConfig) : null;
+        final int workers = this.distributedConfig.getWorkers();
+        // a checkpoint must be found before the keys are read
+        final CheckpointLog log = workers > 0 ? null
+            : CheckpointLog.fromConfig(this.checkpointConfig,
+                CacheKey.of(this.getName(), this.getVersion())
+                    .add(IbpConfig.class, this.config)
+                    .add(FiniteFieldConfig.class, this.finiteFieldConfig));
+        final IntegralFamily family = reducer.getFamily();
+        final CostModel costs =
+            CostModel.fromConfig(this.schedulerConfig, "ibp");
+        final TaskScheduler scheduler = new TaskScheduler(this.jobs, costs);
+        final ScheduledTask<String> task = new ScheduledTask<>() {
+            @Override
+            public CostFeatures getFeatures() {
+                return new CostFeatures(family.getLoopCount(),
+                    family.getPropagatorCount(),
+                    reducer.getMaxNumerators());
+            }
+
+            @Override
+            public String call() throws IOException {
+                final ForkJoinPool pool = scheduler.getPool();
+                return reducer.reduce(engine, pool, storage,
+                    ReductionStage.this.budget, log).toString();
+            }
+        };
+        try {
+            final String result;
+            if (workers > 0) {
+                result = this.reduce(reducer, engine);
+            } else {
+                result = scheduler.run(List.of(task)).get(0);
+                LOGGER.info("Scheduled " + costs.getKind() + ": "
+                    + scheduler.getReport());
+                costs.save(this.schedulerConfig);
+            }
+            LOGGER.info(title + result);
+            this.store(cache, stage, read, result);
+        } catch (ArithmeticException ex) {
+            LOGGER.error("IBP reduction failed", ex);
+        } catch (IOException ex) {
+            LOGGER.error(workers > 0 ? "Distributed IBP reduction failed"
+                : "Cannot resume IBP reduction", ex);
+        } finally {
+            scheduler.close();
+            if (log != null) {
+                try {
+                    log.close();
+                } catch (IOException ex) {
+                    LOGGER.warn("Cannot write checkpoint " + log.getFile(),
+                        ex);
+                }
+            }
+            if (storage != null) {
+                try {
+                    storage.close();
+                } catch (IOException ex) {
+                    LOGGER.warn("Cannot clean up storage", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the task of a worker, which solves the system modulo
+     * the prime of a partition and sends the images as one record.
+     * An unlucky prime sends nothing.
+     *
+     * @return the task
+     *
+     * @since 0.1.0
+     */
+    public PartitionTask getPartitionTask() {
+        return (partition, count, out) -> {
+            final IbpReducer reducer;
+            final ModularEngine engine;
+            try {
+                reducer = IbpReducer.fromConfig(this.config);
+                engine = new ModularEngine(this.finiteFieldConfig);
+            } catch (ConfigurationException ex) {
+                throw new IOException("Invalid reduction", ex);
+            }
+            final ForkJoinPool pool = new ForkJoinPool(this.jobs);
+            try {
+                out.accept(pool.submit(() -> {
+                    final ByteArrayOutputStream bytes =
+                        new ByteArrayOutputStream();
+                    reducer.reduce(engine.getField(partition),
+                        new DataOutputStream(bytes));
+                    return bytes.toByteArray();
+                }).join());
+            } catch (ArithmeticException ex) {
+                // an unlucky prime has no image
+                LOGGER.info("Prime " + partition + " skipped", ex);
+            } finally {
+                pool.shutdown();
+            }
+        };
+    }
+
+    /**
+     * Reduces on workers, one prime per partition, and lifts the
+     * images as they arrive until the result is confirmed.
+     *
+     * @param reducer the reducer
+     * @param engine the engine holding the primes
+     * @return the reduction table
+     * @throws ConfigurationException if the configuration is invalid
+     * @throws IOException if the distributed run fails
+     */
+    private String reduce(
+            final IbpReducer reducer,
+            final ModularEngine engine)
+            throws ConfigurationException, IOException {
+        final ReductionImages images = reducer.images(engine);
+        Coordinator.fromConfig(this.getName(), engine.getFieldCount(),
+            this.distributedConfig, this.launcher).run(
+                (partition, records) -> !records.isEmpty()
+                    && images.add(engine.getField(partition),
+                        new DataInputStream(new ByteArrayInputStream(
+                            records.get(0)))));
+        final ReductionTable table = images.getTable();
+        if (table == null) {
+            throw new ArithmeticException(
+                "Rational reconstruction failed with "
+                + engine.getFieldCount() + " primes");
+        }
+        return table.toString();
+    }
+
+    /**
+     * Looks up the reduction table in the cache.
+     *
+     * @param cache the cache or <code>null</code>
+     * @param stage the key of the stage or <code>null</code> if the
+     *        table is not to be cached
+     * @return the table or <code>null</code> if there is none
+     */
+    private String lookup(final StageCache cache, final CacheKey stage) {
+        if (stage == null) {
+            return null;
+        }
+        try {
+            return cache.getText(stage, this.configurator);
+        } catch (IOException ex) {
+            LOGGER.warn("Cannot read the cache", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the reduction table in the cache.
+     *
+     * @param cache the cache or <code>null</code>
+     * @param stage the key of the stage or <code>null</code> if the
+     *        table is not to be cached
+     * @param read the configuration keys read
+     * @param result the table
+     */
+    private void store(
+            final StageCache cache,
+            final CacheKey stage,
+            final ConfigDependencies read,
+            final String result) {
+        if (stage == null) {
+            return;
+        }
+        try {
+            cache.putText(stage, read, result);
+        } catch (IOException ex) {
+            LOGGER.warn("Cannot update the cache", ex);
+        }
+    }
+
+    @Override
+    public void terminate() { }
+}
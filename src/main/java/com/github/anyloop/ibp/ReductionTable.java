@@ -0,0 +1,166 @@
+/*
+ * ReductionTable.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.ibp;
+
+import com.github.anyloop.finitefield.Rational;
+
+/**
+ * The reduction of a set of integrals to master integrals, with
+ * rational coefficients.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class ReductionTable {
+
+    private final IntegralFamily family;
+
+    /**
+     * The packed target integrals.
+     */
+    private final long[] targets;
+
+    /**
+     * The packed master integrals, simplest first.
+     */
+    private final long[] masters;
+
+    /**
+     * The coefficients, indexed by <code>target * masters + master</code>.
+     */
+    private final Rational[] coefficients;
+
+    /**
+     * Creates a table. The arrays are taken over without copying.
+     *
+     * @param theFamily the integral family
+     * @param theTargets the packed target integrals
+     * @param theMasters the packed master integrals
+     * @param theCoefficients the coefficients
+     */
+    ReductionTable(
+            final IntegralFamily theFamily,
+            final long[] theTargets,
+            final long[] theMasters,
+            final Rational[] theCoefficients) {
+        this.family = theFamily;
+        this.targets = theTargets;
+        this.masters = theMasters;
+        this.coefficients = theCoefficients;
+    }
+
+    /**
+     * Returns the integral family.
+     *
+     * @return the family
+     *
+     * @since 0.1.0
+     */
+    public IntegralFamily getFamily() {
+        return this.family;
+    }
+
+    /**
+     * Returns the number of reduced integrals.
+     *
+     * @return the number of targets
+     *
+     * @since 0.1.0
+     */
+    public int getTargetCount() {
+        return this.targets.length;
+    }
+
+    /**
+     * Returns a reduced integral.
+     *
+     * @param target the index of the target
+     * @return the power of each propagator
+     *
+     * @since 0.1.0
+     */
+    public int[] getTarget(final int target) {
+        return Integrals.unpack(
+            this.targets[target], this.family.getPropagatorCount());
+    }
+
+    /**
+     * Returns the number of master integrals.
+     *
+     * @return the number of masters
+     *
+     * @since 0.1.0
+     */
+    public int getMasterCount() {
+        return this.masters.length;
+    }
+
+    /**
+     * Returns a master integral. Masters are sorted by increasing
+     * complexity.
+     *
+     * @param master the index of the master
+     * @return the power of each propagator
+     *
+     * @since 0.1.0
+     */
+    public int[] getMaster(final int master) {
+        return Integrals.unpack(
+            this.masters[master], this.family.getPropagatorCount());
+    }
+
+    /**
+     * Returns the coefficient of a master integral in the reduction of
+     * a target.
+     *
+     * @param target the index of the target
+     * @param master the index of the master
+     * @return the coefficient
+     *
+     * @since 0.1.0
+     */
+    public Rational getCoefficient(final int target, final int master) {
+        return this.coefficients[target * this.masters.length + master];
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (int t = 0; t < this.targets.length; ++t) {
+            sb.append(this.family.format(this.getTarget(t))).append(" =");
+            boolean any = false;
+            for (int m = 0; m < this.masters.length; ++m) {
+                final Rational c = this.getCoefficient(t, m);
+                if (c.getNumerator().signum() == 0) {
+                    continue;
+                }
+                sb.append(any ? " + " : " ").append(c).append('*')
+                    .append(this.family.format(this.getMaster(m)));
+                any = true;
+            }
+            sb.append(any ? "" : " 0").append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * ZeroSectors.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.ibp;
+
+import com.github.anyloop.finitefield.PrimeField;
+import com.github.anyloop.symbolic.Polynomial;
+
+/**
+ * Finds the sectors whose integrals vanish because they are scaleless.
+ *
+ * A sector is scaleless if the Lee-Pomeransky polynomial
+ * <code>G = U + F</code> of its propagators, a polynomial in the
+ * Feynman parameters <code>x_j</code>, admits a vector
+ * <code>k</code> with <code>&sum; k_j x_j &part;G/&part;x_j = G</code>.
+ * Since <code>x_j &part;/&part;x_j</code> multiplies every monomial by
+ * its exponent of <code>x_j</code>, this is a linear system with one
+ * equation per monomial of <code>G</code>. Both polynomials are
+ * computed modulo a prime, for the numerical kinematics of the family.
+ *
+ * @since 0.1.0
+ */
+final class ZeroSectors {
+
+    private ZeroSectors() {
+    }
+
+    /**
+     * Classifies all sectors.
+     *
+     * @param family the integral family
+     * @param field the prime field
+     * @return a flag for every bit mask of propagators which is set if
+     *         the sector vanishes
+     */
+    static boolean[] compute(
+            final IntegralFamily family,
+            final PrimeField field) {
+        final int n = family.getPropagatorCount();
+        final int top = family.getTopSector();
+        final long[][] products = externalProducts(family, field);
+        final boolean[] zero = new boolean[1 << n];
+        for (int sector = 0; sector < zero.length; ++sector) {
+            zero[sector] = (sector & ~top) != 0
+                || isScaleless(family, field, products, sector);
+        }
+        return zero;
+    }
+
+    /**
+     * Computes the scalar products of the external parts
+     * <code>P_j</code> of the propagator momenta.
+     *
+     * @return the matrix <code>P_i.P_j</code>
+     */
+    private static long[][] externalProducts(
+            final IntegralFamily family,
+            final PrimeField field) {
+        final int n = family.getPropagatorCount();
+        final int loops = family.getLoopCount();
+        final int e = family.getExternalCount();
+        final long[][] result = new long[n][n];
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j < n; ++j) {
+                long sum = 0;
+                for (int a = 0; a < e; ++a) {
+                    for (int b = 0; b < e; ++b) {
+                        final long c = (long) family.getMomentumCoefficient(
+                            i, loops + a)
+                            * family.getMomentumCoefficient(j, loops + b);
+                        if (c != 0) {
+                            sum = field.add(sum, field.multiply(
+                                field.fromLong(c),
+                                family.getScalarProduct(a, b)
+                                    .toField(field)));
+                        }
+                    }
+                }
+                result[i][j] = sum;
+            }
+        }
+        return result;
+    }
+
+    private static boolean isScaleless(
+            final IntegralFamily family,
+            final PrimeField field,
+            final long[][] products,
+            final int sector) {
+        final int vars = Integer.bitCount(sector);
+        if (vars == 0) {
+            return true;
+        }
+        final int loops = family.getLoopCount();
+        final int[] lines = new int[vars];
+        for (int j = 0, v = 0; j < family.getPropagatorCount(); ++j) {
+            if ((sector & (1 << j)) != 0) {
+                lines[v++] = j;
+            }
+        }
+        final Polynomial[] x = new Polynomial[vars];
+        for (int v = 0; v < vars; ++v) {
+            x[v] = Polynomial.variable(field, vars, v);
+        }
+
+        // sum_j x_j D_j = k.A.k + 2 k.B + C
+        final Polynomial zero = Polynomial.zero(field, vars);
+        final Polynomial[][] a = new Polynomial[loops][loops];
+        final Polynomial[][] bb = new Polynomial[loops][loops];
+        Polynomial c = zero;
+        for (int i = 0; i < loops; ++i) {
+            for (int l = 0; l < loops; ++l) {
+                a[i][l] = zero;
+                bb[i][l] = zero;
+                for (int v = 0; v < vars; ++v) {
+                    final int j = lines[v];
+                    final long f = (long) family.getMomentumCoefficient(j, i)
+                        * family.getMomentumCoefficient(j, l);
+                    a[i][l] = a[i][l].add(x[v].scale(field.fromLong(f)));
+                    for (int w = 0; w < vars; ++w) {
+                        final int h = lines[w];
+                        final long g = (long) family.getMomentumCoefficient(
+                            j, i) * family.getMomentumCoefficient(h, l);
+                        if (g != 0 && products[j][h] != 0) {
+                            bb[i][l] = bb[i][l].add(x[v].multiply(x[w])
+                                .scale(field.multiply(field.fromLong(g),
+                                    products[j][h])));
+                        }
+                    }
+                }
+            }
+        }
+        for (int v = 0; v < vars; ++v) {
+            final int j = lines[v];
+            c = c.add(x[v].scale(field.subtract(products[j][j],
+                family.getMassSquared(j).toField(field))));
+        }
+
+        final int[] all = new int[loops];
+        for (int i = 0; i < loops; ++i) {
+            all[i] = i;
+        }
+        final Polynomial u = det(a, all, all);
+        if (u.isZero()) {
+            return true;
+        }
+        // F = B.adj(A).B - C U, up to a sign which does not matter here
+        Polynomial f = c.multiply(u).negate();
+        for (int i = 0; i < loops; ++i) {
+            for (int l = 0; l < loops; ++l) {
+                Polynomial cofactor = det(a, without(all, i), without(all, l));
+                if (((i + l) & 1) != 0) {
+                    cofactor = cofactor.negate();
+                }
+                f = f.add(cofactor.multiply(bb[i][l]));
+            }
+        }
+        return hasScalingSolution(u.add(f), field);
+    }
+
+    private static int[] without(final int[] indices, final int drop) {
+        final int[] result = new int[indices.length - 1];
+        for (int i = 0, n = 0; i < indices.length; ++i) {
+            if (indices[i] != drop) {
+                result[n++] = indices[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the determinant of a submatrix by expansion along its
+     * first row, which is adequate for the few loop momenta.
+     */
+    private static Polynomial det(
+            final Polynomial[][] m,
+            final int[] rows,
+            final int[] cols) {
+        final Polynomial any = m[0][0];
+        if (rows.length == 0) {
+            return Polynomial.constant(
+                any.getRing(), any.getVariableCount(), 1);
+        }
+        Polynomial result = Polynomial.zero(
+            any.getRing(), any.getVariableCount());
+        final int[] rest = without(rows, rows[0]);
+        for (int k = 0; k < cols.length; ++k) {
+            final Polynomial entry = m[rows[0]][cols[k]];
+            if (entry.isZero()) {
+                continue;
+            }
+            final Polynomial term =
+                entry.multiply(det(m, rest, without(cols, cols[k])));
+            result = (k & 1) == 0 ? result.add(term) : result.subtract(term);
+        }
+        return result;
+    }
+
+    /**
+     * Solves <code>&sum;_j k_j e_j = 1</code> for the exponent vectors
+     * <code>e</code> of all monomials of a polynomial.
+     *
+     * @return <code>true</code> if the system is consistent
+     */
+    private static boolean hasScalingSolution(
+            final Polynomial g,
+            final PrimeField field) {
+        final int vars = g.getVariableCount();
+        final int rows = g.getTermCount();
+        final long[][] m = new long[rows][vars + 1];
+        for (int t = 0; t < rows; ++t) {
+            for (int v = 0; v < vars; ++v) {
+                m[t][v] = field.fromLong(g.getExponent(t, v));
+            }
+            m[t][vars] = field.one();
+        }
+        int rank = 0;
+        for (int col = 0; col <= vars && rank < rows; ++col) {
+            int pivot = rank;
+            while (pivot < rows && m[pivot][col] == 0) {
+                ++pivot;
+            }
+            if (pivot == rows) {
+                continue;
+            }
+            if (col == vars) {
+                // a row 0 = 1
+                return false;
+            }
+            final long[] p = m[pivot];
+            m[pivot] = m[rank];
+            m[rank] = p;
+            final long inv = field.inverse(p[col]);
+            for (int r = rank + 1; r < rows; ++r) {
+                if (m[r][col] != 0) {
+                    final long factor = field.negate(
+                        field.multiply(m[r][col], inv));
+                    field.multiplyAdd(m[r], p, factor, col, vars + 1);
+                }
+            }
+            ++rank;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * package-info.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+/**
+ * This package reduces Feynman integrals to master integrals by
+ * integration-by-parts (IBP) identities, following Laporta's
+ * algorithm.
+ *
+ * The identities of a set of seed integrals form a large sparse
+ * linear system, which is solved by Gaussian elimination modulo
+ * word-sized primes, ordering the unknowns by the complexity of the
+ * integrals. The coefficients of the reduction tables are lifted to
+ * rational numbers by the
+ * {@link com.github.anyloop.finitefield.ModularEngine}.
+ */
+package com.github.anyloop.ibp;
@@ -0,0 +1,375 @@
+/*
+ * FeynmanQuadrature.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.integrals;
+
+/**
+ * Numerical integration of the three- and four-point functions over
+ * their Feynman parameters.
+ *
+ * With <code>Q(a) = a.Y.a / 2</code> on the simplex
+ * <code>a_0 + ... + a_{N-1} = 1</code>,
+ * <pre>
+ * C0 = -int da 1 / Q(a),    D0 = int da 1 / Q(a)^2.
+ * </pre>
+ * The simplex is mapped onto the unit cube by
+ * <code>a_0 = 1 - t_0</code>, <code>a_1 = t_0 (1 - t_1)</code>, ...,
+ * <code>a_{N-1} = t_0 ... t_{N-2}</code>, and every <code>t_k</code> is
+ * integrated by a Gauss-Legendre rule after the substitution
+ * <code>t = u^2 (3 - 2 u)</code>, which tames singularities at the
+ * faces of the cube. To avoid the zeros of <code>Q</code> above
+ * thresholds, the contour is moved into the complex plane by
+ * <code>t_k -&gt; t_k - i lambda t_k (1 - t_k) d Re Q / d t_k</code>,
+ * which leaves the faces fixed and gives <code>Q</code> the negative
+ * imaginary part demanded by the Feynman prescription. Should
+ * <code>Im Q</code> become positive anywhere, <code>lambda</code> is
+ * halved. Below all thresholds, where <code>Re Q</code> has no zero,
+ * the undeformed contour is kept.
+ *
+ * Instances are immutable and thread-safe.
+ *
+ * @since 0.1.0
+ */
+final class FeynmanQuadrature {
+
+    /**
+     * The deformation in units of the inverse largest entry of
+     * <code>Y</code>.
+     */
+    private static final double LAMBDA = 4;
+
+    /**
+     * The number of times the deformation is halved before it is
+     * given up.
+     */
+    private static final int MAX_HALVINGS = 12;
+
+    /**
+     * The relative size of a positive <code>Im Q</code> which is
+     * still accepted as rounding error.
+     */
+    private static final double TOLERANCE = 1e-12;
+
+    /**
+     * The number of nodes per parameter.
+     */
+    private final int nodes;
+
+    /**
+     * The nodes in <code>t</code>.
+     */
+    private final double[] abscissas;
+
+    /**
+     * The weights including the Jacobian of the substitution.
+     */
+    private final double[] weights;
+
+    /**
+     * Creates a quadrature rule.
+     *
+     * @param theNodes the number of nodes per parameter
+     */
+    FeynmanQuadrature(final int theNodes) {
+        this.nodes = theNodes;
+        this.abscissas = new double[theNodes];
+        this.weights = new double[theNodes];
+        for (int i = 0; i < (theNodes + 1) / 2; ++i) {
+            // Newton iteration for the i-th root of P_n
+            double z = Math.cos(Math.PI * (i + 0.75) / (theNodes + 0.5));
+            double derivative;
+            while (true) {
+                double p1 = 1;
+                double p2 = 0;
+                for (int j = 1; j <= theNodes; ++j) {
+                    final double p3 = p2;
+                    p2 = p1;
+                    p1 = ((2 * j - 1) * z * p2 - (j - 1) * p3) / j;
+                }
+                derivative = theNodes * (z * p1 - p2) / (z * z - 1);
+                final double step = p1 / derivative;
+                z -= step;
+                if (Math.abs(step) < 1e-15) {
+                    break;
+                }
+            }
+            final double w = 1 / ((1 - z * z) * derivative * derivative);
+            this.set(i, (1 - z) / 2, w);
+            this.set(theNodes - 1 - i, (1 + z) / 2, w);
+        }
+    }
+
+    private void set(final int i, final double u, final double w) {
+        this.abscissas[i] = u * u * (3 - 2 * u);
+        this.weights[i] = w * 6 * u * (1 - u);
+    }
+
+    /**
+     * Returns the number of nodes per parameter.
+     *
+     * @return the number of nodes
+     */
+    int getNodes() {
+        return this.nodes;
+    }
+
+    /**
+     * Integrates the three- or four-point function.
+     *
+     * @param points three or four
+     * @param ws the workspace holding <code>Y</code>, which receives
+     *        the result
+     */
+    void integrate(final int points, final Workspace ws) {
+        double scale = 0;
+        for (int i = 0; i < points; ++i) {
+            for (int j = 0; j < points; ++j) {
+                scale = Math.max(scale, Math.abs(ws.yRe[4 * i + j])
+                    + Math.abs(ws.yIm[4 * i + j]));
+            }
+        }
+        if (scale == 0) {
+            scale = 1;
+        }
+        // without a zero of Re Q the real contour is the best one
+        if (this.sum(points, 0, Double.POSITIVE_INFINITY, ws)
+                && ws.minimum > 0) {
+            return;
+        }
+        double lambda = LAMBDA / scale;
+        for (int h = 0; h < MAX_HALVINGS; ++h) {
+            if (this.sum(points, lambda, TOLERANCE * scale, ws)) {
+                return;
+            }
+            lambda /= 2;
+        }
+        this.sum(points, 0, Double.POSITIVE_INFINITY, ws);
+    }
+
+    /**
+     * Sums the integrand over all nodes.
+     *
+     * @param points three or four
+     * @param lambda the size of the deformation
+     * @param tolerance the largest positive <code>Im Q</code> accepted
+     * @param ws the workspace, which receives the sum and the least
+     *        <code>Re Q</code>
+     * @return <code>false</code> if <code>Im Q</code> exceeded the
+     *         tolerance
+     */
+    private boolean sum(
+            final int points,
+            final double lambda,
+            final double tolerance,
+            final Workspace ws) {
+        final int n = points - 1;
+        int total = 1;
+        for (int k = 0; k < n; ++k) {
+            total *= this.nodes;
+        }
+        final double[] t = ws.t;
+        final double[] g = ws.gradient;
+        final double[] h = ws.hessian;
+        double sumRe = 0;
+        double sumIm = 0;
+        ws.minimum = Double.POSITIVE_INFINITY;
+        for (int node = 0; node < total; ++node) {
+            double weight = 1;
+            for (int k = 0, r = node; k < n; ++k, r /= this.nodes) {
+                t[k] = this.abscissas[r % this.nodes];
+                weight *= this.weights[r % this.nodes];
+            }
+            derivatives(n, ws);
+
+            // the deformation and its Jacobian determinant
+            // det(1 - i lambda H) = 1 - i lambda tr H - lambda^2 e2(H)
+            //     + i lambda^3 det H
+            for (int k = 0; k < n; ++k) {
+                final double c = t[k] * (1 - t[k]);
+                for (int l = 0; l < n; ++l) {
+                    h[3 * k + l] *= c;
+                }
+                h[4 * k] += (1 - 2 * t[k]) * g[k];
+                ws.zaIm[k] = -lambda * c * g[k];
+            }
+            double trace = 0;
+            double e2 = 0;
+            for (int k = 0; k < n; ++k) {
+                trace += h[4 * k];
+                for (int l = k + 1; l < n; ++l) {
+                    e2 += h[4 * k] * h[4 * l] - h[3 * k + l] * h[3 * l + k];
+                }
+            }
+            final double det = n < 3 ? 0
+                : h[0] * (h[4] * h[8] - h[5] * h[7])
+                    - h[1] * (h[3] * h[8] - h[5] * h[6])
+                    + h[2] * (h[3] * h[7] - h[4] * h[6]);
+            final double jRe = 1 - lambda * lambda * e2;
+            final double jIm = lambda * (lambda * lambda * det - trace);
+
+            // the deformed point on the simplex and the Jacobian
+            // t_0^(n-1) t_1^(n-2) ... of the map from the cube
+            double pRe = 1;
+            double pIm = 0;
+            double vRe = jRe * weight;
+            double vIm = jIm * weight;
+            for (int i = 0; i <= n; ++i) {
+                final double zRe = i < n ? t[i] : 0;
+                final double zIm = i < n ? ws.zaIm[i] : 0;
+                final double tailRe = i < n ? 1 - zRe : 1;
+                final double tailIm = i < n ? -zIm : 0;
+                ws.sRe[i] = pRe * tailRe - pIm * tailIm;
+                ws.sIm[i] = pRe * tailIm + pIm * tailRe;
+                if (i < n) {
+                    final double x = pRe * zRe - pIm * zIm;
+                    pIm = pRe * zIm + pIm * zRe;
+                    pRe = x;
+                    for (int e = 0; e < n - 1 - i; ++e) {
+                        final double y = vRe * zRe - vIm * zIm;
+                        vIm = vRe * zIm + vIm * zRe;
+                        vRe = y;
+                    }
+                }
+            }
+            for (int i = 0; i <= n; ++i) {
+                ws.zaRe[i] = ws.sRe[i];
+                ws.zaIm[i] = ws.sIm[i];
+            }
+
+            // Q = a.Y.a / 2
+            double qRe = 0;
+            double qIm = 0;
+            for (int i = 0; i <= n; ++i) {
+                double yaRe = 0;
+                double yaIm = 0;
+                for (int j = 0; j <= n; ++j) {
+                    final double yr = ws.yRe[4 * i + j];
+                    final double yi = ws.yIm[4 * i + j];
+                    yaRe += yr * ws.zaRe[j] - yi * ws.zaIm[j];
+                    yaIm += yr * ws.zaIm[j] + yi * ws.zaRe[j];
+                }
+                qRe += ws.zaRe[i] * yaRe - ws.zaIm[i] * yaIm;
+                qIm += ws.zaRe[i] * yaIm + ws.zaIm[i] * yaRe;
+            }
+            qRe /= 2;
+            qIm /= 2;
+            ws.minimum = Math.min(ws.minimum, qRe);
+            if (qIm > tolerance) {
+                return false;
+            }
+
+            // -1/Q for C0, 1/Q^2 for D0
+            final double norm = qRe * qRe + qIm * qIm;
+            double fRe = qRe / norm;
+            double fIm = -qIm / norm;
+            if (points == 3) {
+                fRe = -fRe;
+                fIm = -fIm;
+            } else {
+                final double x = fRe * fRe - fIm * fIm;
+                fIm = 2 * fRe * fIm;
+                fRe = x;
+            }
+            sumRe += vRe * fRe - vIm * fIm;
+            sumIm += vRe * fIm + vIm * fRe;
+        }
+        ws.result[0] = sumRe;
+        ws.result[1] = sumIm;
+        return true;
+    }
+
+    /**
+     * Computes the gradient and the Hessian of <code>Re Q</code> with
+     * respect to the parameters on the cube.
+     *
+     * @param n the number of parameters
+     * @param ws the workspace holding the parameters
+     */
+    private static void derivatives(final int n, final Workspace ws) {
+        final double[] t = ws.t;
+        final double[] a = ws.a;
+        final double[] da = ws.da;
+        final double[] dda = ws.dda;
+        for (int i = 0; i <= n; ++i) {
+            final double tail = i < n ? 1 - t[i] : 1;
+            a[i] = product(t, i, -1, -1) * tail;
+            for (int k = 0; k < n; ++k) {
+                da[4 * k + i] = k < i ? product(t, i, k, -1) * tail
+                    : k == i ? -product(t, i, -1, -1) : 0;
+                for (int l = 0; l < n; ++l) {
+                    final int hi = Math.max(k, l);
+                    final int lo = Math.min(k, l);
+                    dda[4 * (3 * k + l) + i] = k == l ? 0
+                        : hi < i ? product(t, i, k, l) * tail
+                        : hi == i ? -product(t, i, lo, -1) : 0;
+                }
+            }
+        }
+        for (int i = 0; i <= n; ++i) {
+            double s = 0;
+            for (int j = 0; j <= n; ++j) {
+                s += ws.yRe[4 * i + j] * a[j];
+            }
+            ws.sRe[i] = s;
+            for (int k = 0; k < n; ++k) {
+                double v = 0;
+                for (int j = 0; j <= n; ++j) {
+                    v += ws.yRe[4 * i + j] * da[4 * k + j];
+                }
+                ws.u[4 * k + i] = v;
+            }
+        }
+        for (int k = 0; k < n; ++k) {
+            double gk = 0;
+            for (int i = 0; i <= n; ++i) {
+                gk += ws.sRe[i] * da[4 * k + i];
+            }
+            ws.gradient[k] = gk;
+            for (int l = 0; l < n; ++l) {
+                double hkl = 0;
+                for (int i = 0; i <= n; ++i) {
+                    hkl += da[4 * l + i] * ws.u[4 * k + i]
+                        + ws.sRe[i] * dda[4 * (3 * k + l) + i];
+                }
+                ws.hessian[3 * k + l] = hkl;
+            }
+        }
+    }
+
+    /**
+     * Returns <code>t_0 ... t_{i-1}</code> without up to two factors.
+     */
+    private static double product(
+            final double[] t,
+            final int i,
+            final int skip1,
+            final int skip2) {
+        double p = 1;
+        for (int k = 0; k < i; ++k) {
+            if (k != skip1 && k != skip2) {
+                p *= t[k];
+            }
+        }
+        return p;
+    }
+}
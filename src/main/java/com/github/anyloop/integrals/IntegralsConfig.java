@@ -0,0 +1,76 @@
+/*
+ * IntegralsConfig.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.integrals;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.chassis.annotations.ConfigProperty;
+import com.github.anyloop.chassis.annotations.DefaultValue;
+
+/**
+ * Configuration of the scalar integrals.
+ *
+ * In YAML notation:
+ * <pre>
+ * integrals:
+ *   scale: 8315.18
+ *   nodes: 32
+ *   cacheSize: 65536
+ * </pre>
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public interface IntegralsConfig {
+
+    /**
+     * The square of the renormalization scale <code>mu</code>.
+     *
+     * @return the scale in the units of the invariants
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("integrals.scale")
+    @DefaultValue("1")
+    double getScale() throws ConfigurationException;
+
+    /**
+     * The number of quadrature nodes per Feynman parameter of the
+     * three- and four-point functions.
+     *
+     * @return the number of nodes
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("integrals.nodes")
+    @DefaultValue("32")
+    int getNodes() throws ConfigurationException;
+
+    /**
+     * The number of results kept for reuse; zero disables the cache.
+     *
+     * @return the number of entries
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("integrals.cacheSize")
+    @DefaultValue("65536")
+    int getCacheSize() throws ConfigurationException;
+}
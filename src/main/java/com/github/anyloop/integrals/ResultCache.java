@@ -0,0 +1,162 @@
+/*
+ * ResultCache.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.integrals;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A direct-mapped memo table of complex results keyed by the exact bit
+ * patterns of the arguments.
+ *
+ * Keys and values live in flat arrays, so that neither lookups nor
+ * insertions allocate. A new entry replaces the one in its slot. The
+ * slots are guarded by a fixed number of locks, each held only while
+ * a single slot is read or written.
+ *
+ * @since 0.1.0
+ */
+final class ResultCache {
+
+    /**
+     * The largest number of arguments of a key.
+     */
+    static final int KEY_LENGTH = 16;
+
+    /**
+     * The number of locks.
+     */
+    private static final int STRIPES = 64;
+
+    /**
+     * The number of slots minus one.
+     */
+    private final int mask;
+
+    /**
+     * The keys, {@link #KEY_LENGTH} per slot; a slot whose first entry
+     * is zero is empty.
+     */
+    private final long[] keys;
+
+    /**
+     * The real and imaginary parts of the results.
+     */
+    private final double[] values;
+
+    /**
+     * The locks.
+     */
+    private final Object[] locks = new Object[STRIPES];
+
+    /**
+     * The number of successful lookups.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * The number of failed lookups.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a cache.
+     *
+     * @param capacity the least number of slots, positive
+     */
+    ResultCache(final int capacity) {
+        final int slots = Integer.highestOneBit(
+            Math.max(1, capacity - 1)) << 1;
+        this.mask = slots - 1;
+        this.keys = new long[slots * KEY_LENGTH];
+        this.values = new double[2 * slots];
+        for (int i = 0; i < STRIPES; ++i) {
+            this.locks[i] = new Object();
+        }
+    }
+
+    private int slot(final long[] key, final int length) {
+        long h = length;
+        for (int i = 0; i < length; ++i) {
+            h = (h ^ key[i]) * 0x9e3779b97f4a7c15L;
+        }
+        return (int) (h ^ (h >>> 32)) & this.mask;
+    }
+
+    /**
+     * Looks up a result.
+     *
+     * @param key the arguments, the first of them not zero
+     * @param length the number of arguments
+     * @param result receives the real and imaginary part if found
+     * @return <code>true</code> if the result was found
+     */
+    boolean get(final long[] key, final int length, final double[] result) {
+        final int slot = this.slot(key, length);
+        final int base = slot * KEY_LENGTH;
+        synchronized (this.locks[slot & (STRIPES - 1)]) {
+            boolean found = true;
+            for (int i = 0; i < KEY_LENGTH && found; ++i) {
+                found = this.keys[base + i] == (i < length ? key[i] : 0);
+            }
+            if (found) {
+                result[0] = this.values[2 * slot];
+                result[1] = this.values[2 * slot + 1];
+            }
+            (found ? this.hits : this.misses).incrementAndGet();
+            return found;
+        }
+    }
+
+    /**
+     * Stores a result.
+     *
+     * @param key the arguments, the first of them not zero
+     * @param length the number of arguments
+     * @param re the real part
+     * @param im the imaginary part
+     */
+    void put(
+            final long[] key,
+            final int length,
+            final double re,
+            final double im) {
+        final int slot = this.slot(key, length);
+        final int base = slot * KEY_LENGTH;
+        synchronized (this.locks[slot & (STRIPES - 1)]) {
+            for (int i = 0; i < KEY_LENGTH; ++i) {
+                this.keys[base + i] = i < length ? key[i] : 0;
+            }
+            this.values[2 * slot] = re;
+            this.values[2 * slot + 1] = im;
+        }
+    }
+
+    long getHitCount() {
+        return this.hits.get();
+    }
+
+    long getMissCount() {
+        return this.misses.get();
+    }
+}
@@ -0,0 +1,553 @@
+/*
+ * ScalarIntegrals.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.integrals;
+
+import com.github.anyloop.chassis.ConfigurationException;
+
+/**
+ * Numerical one-loop scalar integrals with up to {@link #MAX_POINTS}
+ * denominators <code>(k + q_i)^2 - m_i^2</code>.
+ *
+ * The integrals are normalized as
+ * <code>(2 pi mu)^(4 - d) / (i pi^2) int d^d k / (D_0 ... D_{N-1})</code>
+ * and returned as their finite parts in the convention in which the
+ * ultraviolet pole enters as
+ * <code>Delta = 1/epsilon - gamma_E + log(4 pi)</code>; the coefficient
+ * of <code>Delta</code> is given by {@link #pole}. Scaleless integrals
+ * vanish, and the three- and four-point functions must be free of
+ * infrared divergences.
+ *
+ * The squared masses may be complex with a negative imaginary part;
+ * real masses carry the infinitesimal <code>-i epsilon</code>. The
+ * invariants follow the usual order: <code>p1^2</code> for
+ * <code>B0</code>, <code>p1^2, p2^2, (p1 + p2)^2</code> for
+ * <code>C0</code> and <code>p1^2, p2^2, p3^2, p4^2, (p1 + p2)^2,
+ * (p2 + p3)^2</code> for <code>D0</code>, where
+ * <code>p_i = q_i - q_{i-1}</code>.
+ *
+ * <code>A0</code> and <code>B0</code> are evaluated in closed form.
+ * <code>C0</code> and <code>D0</code> are integrated numerically by a
+ * {@link FeynmanQuadrature}, whose accuracy is set by the number of
+ * nodes. Results are memoised in a table shared by all threads, and
+ * each thread works in its own scratch arrays, so that no evaluation
+ * allocates memory. Instances are thread-safe.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class ScalarIntegrals {
+
+    /**
+     * The largest number of denominators.
+     *
+     * @since 0.1.0
+     */
+    public static final int MAX_POINTS = 4;
+
+    /**
+     * The imaginary part given to real squared masses, relative to the
+     * size of the integral's arguments.
+     */
+    private static final double INFINITESIMAL = 1e-30;
+
+    /**
+     * The relative size below which <code>p^2</code> or a mass
+     * difference of a two-point function counts as zero.
+     */
+    private static final double NEGLIGIBLE = 1e-8;
+
+    /**
+     * The pairs <code>(i, j)</code> of the invariants
+     * <code>(q_i - q_j)^2</code> by number of points.
+     */
+    private static final int[][][] PAIRS = {
+        {},
+        {},
+        {{0, 1}},
+        {{0, 1}, {1, 2}, {0, 2}},
+        {{0, 1}, {1, 2}, {2, 3}, {0, 3}, {0, 2}, {1, 3}}
+    };
+
+    /**
+     * The square of the renormalization scale.
+     */
+    private final double scale;
+
+    /**
+     * The rule for <code>C0</code> and <code>D0</code>.
+     */
+    private final FeynmanQuadrature quadrature;
+
+    /**
+     * The memo table or <code>null</code>.
+     */
+    private final ResultCache cache;
+
+    /**
+     * The scratch arrays of each thread.
+     */
+    private final ThreadLocal<Workspace> workspaces =
+        ThreadLocal.withInitial(Workspace::new);
+
+    /**
+     * Creates a library of scalar integrals.
+     *
+     * @param theScale the square of the renormalization scale
+     * @param theNodes the number of quadrature nodes per Feynman
+     *        parameter
+     * @param theCacheSize the number of results kept for reuse, zero to
+     *        disable the memo table
+     *
+     * @since 0.1.0
+     */
+    public ScalarIntegrals(
+            final double theScale,
+            final int theNodes,
+            final int theCacheSize) {
+        if (!(theScale > 0) || theNodes < 2 || theCacheSize < 0) {
+            throw new IllegalArgumentException(
+                "Invalid scale, number of nodes or cache size");
+        }
+        this.scale = theScale;
+        this.quadrature = new FeynmanQuadrature(theNodes);
+        this.cache = theCacheSize == 0 ? null : new ResultCache(theCacheSize);
+    }
+
+    /**
+     * Creates a library of scalar integrals from the configuration.
+     *
+     * @param config the configuration
+     * @return the library
+     * @throws ConfigurationException if the configuration is invalid
+     *
+     * @since 0.1.0
+     */
+    public static ScalarIntegrals fromConfig(final IntegralsConfig config)
+            throws ConfigurationException {
+        if (!(config.getScale() > 0)) {
+            throw new ConfigurationException(
+                "integrals.scale must be positive");
+        }
+        if (config.getNodes() < 2) {
+            throw new ConfigurationException(
+                "integrals.nodes must be at least two");
+        }
+        if (config.getCacheSize() < 0) {
+            throw new ConfigurationException(
+                "integrals.cacheSize must not be negative");
+        }
+        return new ScalarIntegrals(config.getScale(), config.getNodes(),
+            config.getCacheSize());
+    }
+
+    /**
+     * Returns the number of invariants of an integral.
+     *
+     * @param points the number of denominators
+     * @return <code>points (points - 1) / 2</code>
+     *
+     * @since 0.1.0
+     */
+    public static int getInvariantCount(final int points) {
+        return points * (points - 1) / 2;
+    }
+
+    /**
+     * Returns the coefficient of <code>Delta</code>: <code>m_0^2</code>
+     * for <code>A0</code>, one for <code>B0</code> and zero otherwise.
+     *
+     * @param points the number of denominators
+     * @param massRe the real parts of the squared masses
+     * @param massIm the imaginary parts of the squared masses
+     * @param result receives the real and imaginary part
+     *
+     * @since 0.1.0
+     */
+    public static void pole(
+            final int points,
+            final double[] massRe,
+            final double[] massIm,
+            final double[] result) {
+        result[0] = points == 1 ? massRe[0] : points == 2 ? 1 : 0;
+        result[1] = points == 1 ? massIm[0] : 0;
+    }
+
+    /**
+     * Returns the square of the renormalization scale.
+     *
+     * @return <code>mu^2</code>
+     *
+     * @since 0.1.0
+     */
+    public double getScale() {
+        return this.scale;
+    }
+
+    /**
+     * Returns the number of results found in the memo table.
+     *
+     * @return the number of hits
+     *
+     * @since 0.1.0
+     */
+    public long getHitCount() {
+        return this.cache == null ? 0 : this.cache.getHitCount();
+    }
+
+    /**
+     * Returns the number of results not found in the memo table.
+     *
+     * @return the number of misses
+     *
+     * @since 0.1.0
+     */
+    public long getMissCount() {
+        return this.cache == null ? 0 : this.cache.getMissCount();
+    }
+
+    /**
+     * Evaluates the finite part of one integral.
+     *
+     * @param points the number of denominators
+     * @param invariants the invariants
+     * @param massRe the real parts of the squared masses
+     * @param massIm the imaginary parts of the squared masses, not
+     *        positive
+     * @param result receives the real and imaginary part
+     *
+     * @since 0.1.0
+     */
+    public void evaluate(
+            final int points,
+            final double[] invariants,
+            final double[] massRe,
+            final double[] massIm,
+            final double[] result) {
+        check(points);
+        final Workspace ws = this.workspaces.get();
+        System.arraycopy(invariants, 0, ws.invariants, 0,
+            getInvariantCount(points));
+        System.arraycopy(massRe, 0, ws.massRe, 0, points);
+        System.arraycopy(massIm, 0, ws.massIm, 0, points);
+        this.evaluate(points, ws);
+        result[0] = ws.result[0];
+        result[1] = ws.result[1];
+    }
+
+    /**
+     * Evaluates the finite parts of one integral at many points. The
+     * arguments are given column by column, e.g.
+     * <code>invariants[k][p]</code> is the <code>k</code>-th invariant
+     * of the point <code>p</code>.
+     *
+     * @param points the number of denominators
+     * @param count the number of phase-space points
+     * @param invariants the invariants
+     * @param massRe the real parts of the squared masses
+     * @param massIm the imaginary parts of the squared masses, not
+     *        positive
+     * @param re receives the real parts
+     * @param im receives the imaginary parts
+     *
+     * @since 0.1.0
+     */
+    public void evaluate(
+            final int points,
+            final int count,
+            final double[][] invariants,
+            final double[][] massRe,
+            final double[][] massIm,
+            final double[] re,
+            final double[] im) {
+        check(points);
+        final Workspace ws = this.workspaces.get();
+        final int invariantCount = getInvariantCount(points);
+        for (int p = 0; p < count; ++p) {
+            for (int k = 0; k < invariantCount; ++k) {
+                ws.invariants[k] = invariants[k][p];
+            }
+            for (int i = 0; i < points; ++i) {
+                ws.massRe[i] = massRe[i][p];
+                ws.massIm[i] = massIm[i][p];
+            }
+            this.evaluate(points, ws);
+            re[p] = ws.result[0];
+            im[p] = ws.result[1];
+        }
+    }
+
+    private static void check(final int points) {
+        if (points < 1 || points > MAX_POINTS) {
+            throw new IllegalArgumentException(
+                "Between 1 and " + MAX_POINTS
+                + " points are supported, not " + points);
+        }
+    }
+
+    /**
+     * Evaluates the integral described by the workspace.
+     *
+     * @param points the number of denominators
+     * @param ws the workspace, which receives the result
+     */
+    private void evaluate(final int points, final Workspace ws) {
+        final int invariantCount = getInvariantCount(points);
+        int length = 0;
+        ws.key[length++] = points;
+        for (int k = 0; k < invariantCount; ++k) {
+            ws.key[length++] = Double.doubleToLongBits(ws.invariants[k]);
+        }
+        for (int i = 0; i < points; ++i) {
+            if (ws.massIm[i] > 0) {
+                throw new IllegalArgumentException(
+                    "Squared masses must not have a positive imaginary"
+                    + " part");
+            }
+            ws.key[length++] = Double.doubleToLongBits(ws.massRe[i]);
+            ws.key[length++] = Double.doubleToLongBits(ws.massIm[i]);
+        }
+        if (this.cache != null && this.cache.get(ws.key, length, ws.result)) {
+            return;
+        }
+        switch (points) {
+        case 1:
+            this.a0(ws);
+            break;
+        case 2:
+            this.b0(ws);
+            break;
+        default:
+            for (int i = 0; i < points; ++i) {
+                for (int j = 0; j < points; ++j) {
+                    ws.yRe[4 * i + j] = ws.massRe[i] + ws.massRe[j];
+                    ws.yIm[4 * i + j] = ws.massIm[i] + ws.massIm[j];
+                }
+            }
+            for (int k = 0; k < invariantCount; ++k) {
+                final int i = PAIRS[points][k][0];
+                final int j = PAIRS[points][k][1];
+                ws.yRe[4 * i + j] -= ws.invariants[k];
+                ws.yRe[4 * j + i] -= ws.invariants[k];
+            }
+            this.quadrature.integrate(points, ws);
+            break;
+        }
+        if (this.cache != null) {
+            this.cache.put(ws.key, length, ws.result[0], ws.result[1]);
+        }
+    }
+
+    /**
+     * <code>A0 = m^2 (1 - log(m^2 / mu^2))</code>.
+     *
+     * @param ws the workspace
+     */
+    private void a0(final Workspace ws) {
+        final double mr = ws.massRe[0];
+        // -0.0 selects log(m^2 - i epsilon) for negative m^2
+        final double mi = ws.massIm[0] == 0 ? -0.0 : ws.massIm[0];
+        if (mr == 0 && mi == 0) {
+            ws.result[0] = 0;
+            ws.result[1] = 0;
+            return;
+        }
+        final double lr = 1 - logRe(mr, mi) + Math.log(this.scale);
+        final double li = -Math.atan2(mi, mr);
+        ws.result[0] = mr * lr - mi * li;
+        ws.result[1] = mr * li + mi * lr;
+    }
+
+    /**
+     * <code>B0 = -int_0^1 dx log(Q(x) / mu^2)</code> with
+     * <code>Q(x) = p^2 x^2 + (m_1^2 - m_0^2 - p^2) x + m_0^2</code>.
+     *
+     * Integrating by parts turns the logarithm into
+     * <code>log Q(1) - 2 + int (b x + 2 c) / Q</code>, and the remaining
+     * rational function is split at the zeros <code>x_1, x_2</code> of
+     * <code>Q</code> into
+     * <code>b / (2 p^2) (L_1 + L_2) - (x_1 - x_2) / 2 (L_1 - L_2)</code>
+     * with <code>L_i = log(1 - x_i) - log(-x_i)</code>. This form
+     * stays finite where the zeros coincide at thresholds. The zeros
+     * of <code>Q(1 - y)</code> are computed as well, so that
+     * <code>1 - x_i</code> is accurate for <code>x_i</code> near one.
+     *
+     * @param ws the workspace
+     */
+    private void b0(final Workspace ws) {
+        final double p2 = ws.invariants[0];
+        final double m0r = ws.massRe[0];
+        final double m1r = ws.massRe[1];
+        final double size = Math.abs(p2) + Math.hypot(m0r, ws.massIm[0])
+            + Math.hypot(m1r, ws.massIm[1]);
+        if (size == 0) {
+            ws.result[0] = 0;
+            ws.result[1] = 0;
+            return;
+        }
+        final double m0i = ws.massIm[0] == 0
+            ? -INFINITESIMAL * size : ws.massIm[0];
+        final double m1i = ws.massIm[1] == 0
+            ? -INFINITESIMAL * size : ws.massIm[1];
+        final double[] c = ws.complex;
+        double re;
+        double im;
+        if (Math.abs(p2) <= NEGLIGIBLE * size) {
+            final double br = m1r - m0r;
+            final double bi = m1i - m0i;
+            if (Math.hypot(br, bi) <= NEGLIGIBLE * size) {
+                re = logRe(m0r, m0i);
+                im = Math.atan2(m0i, m0r);
+            } else {
+                // (m1 log m1 - m0 log m0) / (m1 - m0) - 1
+                final double l0r = logRe(m0r, m0i);
+                final double l0i = Math.atan2(m0i, m0r);
+                final double l1r = logRe(m1r, m1i);
+                final double l1i = Math.atan2(m1i, m1r);
+                final double nr = m1r * l1r - m1i * l1i - m0r * l0r + m0i * l0i;
+                final double ni = m1r * l1i + m1i * l1r - m0r * l0i - m0i * l0r;
+                final double norm = br * br + bi * bi;
+                re = (nr * br + ni * bi) / norm - 1;
+                im = (ni * br - nr * bi) / norm;
+            }
+        } else {
+            final double br = m1r - m0r - p2;
+            final double bi = m1i - m0i;
+            roots(p2, br, bi, m0r, m0i, c, 0);
+            roots(p2, -2 * p2 - br, -bi, m1r, m1i, c, 4);
+            // pair y_i with 1 - x_i
+            final double straight =
+                Math.hypot(1 - c[0] - c[4], c[1] + c[5])
+                + Math.hypot(1 - c[2] - c[6], c[3] + c[7]);
+            final double swapped =
+                Math.hypot(1 - c[0] - c[6], c[1] + c[7])
+                + Math.hypot(1 - c[2] - c[4], c[3] + c[5]);
+            if (swapped < straight) {
+                for (int k = 4; k < 6; ++k) {
+                    final double x = c[k];
+                    c[k] = c[k + 2];
+                    c[k + 2] = x;
+                }
+            }
+            difference(c[0], c[1], c[4], c[5], c, 8);
+            difference(c[2], c[3], c[6], c[7], c, 10);
+            final double sumRe = c[8] + c[10];
+            final double sumIm = c[9] + c[11];
+            final double diffRe = c[8] - c[10];
+            final double diffIm = c[9] - c[11];
+            final double hr = (c[0] - c[2]) / 2;
+            final double hi = (c[1] - c[3]) / 2;
+            re = logRe(m1r, m1i) - 2
+                + (br * sumRe - bi * sumIm) / (2 * p2)
+                - (hr * diffRe - hi * diffIm);
+            im = Math.atan2(m1i, m1r)
+                + (br * sumIm + bi * sumRe) / (2 * p2)
+                - (hr * diffIm + hi * diffRe);
+        }
+        ws.result[0] = Math.log(this.scale) - re;
+        ws.result[1] = -im;
+    }
+
+    /**
+     * Computes the zeros of <code>a x^2 + b x + c</code> for real
+     * <code>a</code>, avoiding cancellations.
+     *
+     * @param a the leading coefficient, not zero
+     * @param br the real part of <code>b</code>
+     * @param bi the imaginary part of <code>b</code>
+     * @param cr the real part of <code>c</code>
+     * @param ci the imaginary part of <code>c</code>
+     * @param out receives the real and imaginary parts of both zeros
+     * @param offset the position of the first zero
+     */
+    private static void roots(
+            final double a,
+            final double br,
+            final double bi,
+            final double cr,
+            final double ci,
+            final double[] out,
+            final int offset) {
+        final double dr = br * br - bi * bi - 4 * a * cr;
+        final double di = 2 * br * bi - 4 * a * ci;
+        // the principal square root, computed without cancellation so
+        // that an infinitesimal imaginary part survives
+        final double r = Math.hypot(dr, di);
+        double sr;
+        double si;
+        if (dr >= 0) {
+            sr = Math.sqrt((r + dr) / 2);
+            si = sr == 0 ? 0 : di / (2 * sr);
+        } else {
+            si = Math.copySign(Math.sqrt((r - dr) / 2), di);
+            sr = di / (2 * si);
+        }
+        if (br * sr + bi * si < 0) {
+            sr = -sr;
+            si = -si;
+        }
+        final double qr = -(br + sr) / 2;
+        final double qi = -(bi + si) / 2;
+        out[offset] = qr / a;
+        out[offset + 1] = qi / a;
+        final double norm = qr * qr + qi * qi;
+        out[offset + 2] = norm == 0 ? 0 : (cr * qr + ci * qi) / norm;
+        out[offset + 3] = norm == 0 ? 0 : (ci * qr - cr * qi) / norm;
+    }
+
+    /**
+     * Computes <code>log(1 - x) - log(-x)</code> given <code>x</code>
+     * and <code>y = 1 - x</code>.
+     *
+     * @param xr the real part of <code>x</code>
+     * @param xi the imaginary part of <code>x</code>
+     * @param yr the real part of <code>y</code>
+     * @param yi the imaginary part of <code>y</code>
+     * @param out receives the real and imaginary part
+     * @param offset the position of the result
+     */
+    private static void difference(
+            final double xr,
+            final double xi,
+            final double yr,
+            final double yi,
+            final double[] out,
+            final int offset) {
+        final double norm = xr * xr + xi * xi;
+        if (norm > 4) {
+            // log(1 - 1/x); both logarithms have arguments in the same
+            // half-plane, so their difference is the principal value
+            final double wr = -xr / norm;
+            final double wi = xi / norm;
+            out[offset] = Math.log1p(2 * wr + wr * wr + wi * wi) / 2;
+            out[offset + 1] = Math.atan2(wi, 1 + wr);
+        } else {
+            out[offset] = logRe(yr, yi) - logRe(-xr, -xi);
+            out[offset + 1] = Math.atan2(yi, yr) - Math.atan2(-xi, -xr);
+        }
+    }
+
+    private static double logRe(final double re, final double im) {
+        return Math.log(Math.hypot(re, im));
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Workspace.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.integrals;
+
+/**
+ * The scratch arrays of one thread, so that evaluating an integral
+ * does not allocate.
+ *
+ * @since 0.1.0
+ */
+final class Workspace {
+
+    /**
+     * The key of the current integral.
+     */
+    final long[] key = new long[ResultCache.KEY_LENGTH];
+
+    /**
+     * The invariants of the current integral.
+     */
+    final double[] invariants = new double[6];
+
+    /**
+     * The real parts of the squared masses.
+     */
+    final double[] massRe = new double[ScalarIntegrals.MAX_POINTS];
+
+    /**
+     * The imaginary parts of the squared masses.
+     */
+    final double[] massIm = new double[ScalarIntegrals.MAX_POINTS];
+
+    /**
+     * The real part of the modified Cayley matrix
+     * <code>Y_ij = m_i^2 + m_j^2 - (q_i - q_j)^2</code>, row by row
+     * with a stride of {@link ScalarIntegrals#MAX_POINTS}.
+     */
+    final double[] yRe = new double[16];
+
+    /**
+     * The imaginary part of the modified Cayley matrix.
+     */
+    final double[] yIm = new double[16];
+
+    /**
+     * The least real part of <code>Q</code> met by the quadrature.
+     */
+    double minimum;
+
+    /**
+     * The real and imaginary part of the result.
+     */
+    final double[] result = new double[2];
+
+    /**
+     * Complex intermediate values of the closed forms.
+     */
+    final double[] complex = new double[12];
+
+    /**
+     * The Feynman parameters on the unit cube.
+     */
+    final double[] t = new double[3];
+
+    /**
+     * The Feynman parameters on the simplex.
+     */
+    final double[] a = new double[4];
+
+    /**
+     * <code>d a_i / d t_k</code> at <code>4 k + i</code>.
+     */
+    final double[] da = new double[12];
+
+    /**
+     * <code>d^2 a_i / d t_k d t_l</code> at
+     * <code>4 (3 k + l) + i</code>.
+     */
+    final double[] dda = new double[36];
+
+    /**
+     * <code>sum_j Re Y_ij a_j</code> and then the complex
+     * <code>sum_j Y_ij a_j</code>.
+     */
+    final double[] sRe = new double[4];
+
+    /**
+     * The imaginary part of <code>sum_j Y_ij a_j</code>.
+     */
+    final double[] sIm = new double[4];
+
+    /**
+     * <code>sum_j Re Y_ij d a_j / d t_k</code> at <code>4 k + i</code>.
+     */
+    final double[] u = new double[12];
+
+    /**
+     * The gradient of <code>Re Q</code> on the unit cube.
+     */
+    final double[] gradient = new double[3];
+
+    /**
+     * The Jacobian matrix of the contour deformation without the unit
+     * matrix and the factor <code>-i lambda</code>.
+     */
+    final double[] hessian = new double[9];
+
+    /**
+     * The deformed parameters on the simplex, real parts.
+     */
+    final double[] zaRe = new double[4];
+
+    /**
+     * The deformed parameters on the simplex, imaginary parts.
+     */
+    final double[] zaIm = new double[4];
+}
@@ -0,0 +1,37 @@
+/*
+ * package-info.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+/**
+ * This package evaluates the one-loop scalar integrals
+ * <code>A0</code>, <code>B0</code>, <code>C0</code> and <code>D0</code>
+ * numerically, with real or complex internal masses.
+ *
+ * The integrals are evaluated for many phase-space points at once from
+ * kinematics given as structure-of-arrays columns. The one- and
+ * two-point functions are given in closed form; the three- and
+ * four-point functions are integrated over their Feynman parameters
+ * along a contour that is deformed into the complex plane, away from
+ * the thresholds. Results are memoised, so that integrals shared by
+ * several diagrams or repeated across points are evaluated once.
+ */
+package com.github.anyloop.integrals;
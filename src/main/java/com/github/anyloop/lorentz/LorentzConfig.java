@@ -0,0 +1,66 @@
+/*
+ * LorentzConfig.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.lorentz;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.chassis.annotations.ConfigProperty;
+import com.github.anyloop.chassis.annotations.DefaultValue;
+
+/**
+ * Configuration of the tensor contraction.
+ *
+ * In YAML notation:
+ * <pre>
+ * lorentz:
+ *   dimension: d
+ *   dummyPrefix: N
+ * </pre>
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public interface LorentzConfig {
+
+    /**
+     * The name of the symbol denoting the space-time dimension.
+     *
+     * @return the symbol name
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("lorentz.dimension")
+    @DefaultValue("d")
+    String getDimension() throws ConfigurationException;
+
+    /**
+     * The prefix of canonical dummy indices, which are named
+     * <code>N1_, N2_, ...</code> for the prefix <code>N</code>. No
+     * other index may be named like this.
+     *
+     * @return the prefix
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("lorentz.dummyPrefix")
+    @DefaultValue("N")
+    String getDummyPrefix() throws ConfigurationException;
+}
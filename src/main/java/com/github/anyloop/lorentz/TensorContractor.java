@@ -0,0 +1,935 @@
+/*
+ * TensorContractor.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.lorentz;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.symbolic.Expr;
+
+/**
+ * Contracts repeated Lorentz indices.
+ *
+ * The factors of a term are
+ * <ul>
+ *   <li>metric tensors <code>g(mu, nu)</code>,</li>
+ *   <li>vectors <code>p(mu)</code>, a function named after the
+ *       momentum with a single index,</li>
+ *   <li>other tensors, i.e. functions with at least one index among
+ *       their arguments, and</li>
+ *   <li>scalars, which include <code>dot(p, q)</code>.</li>
+ * </ul>
+ * A metric tensor sharing an index with another factor is absorbed by
+ * renaming that index, a vector is absorbed by putting the momentum in
+ * place of the index, and <code>g(mu, mu)</code> becomes the dimension.
+ * Metric tensors and vectors whose arguments are all momenta turn into
+ * scalar products. Indices shared by two other tensors remain; they
+ * are renamed to canonical dummies, trying all assignments of dummies
+ * for up to {@value #MAX_PERMUTED} of them and choosing the smallest
+ * result, so that equal tensor structures collect into a single term.
+ *
+ * Products of sums are expanded one sum at a time, each step being
+ * contracted and collected before the next. The sum to be multiplied
+ * next is the one sharing the most indices with the partial result,
+ * which contracts as much as possible early, and among those the
+ * shortest. The terms of a sum are contracted in parallel if a pool is
+ * given.
+ *
+ * Instances are thread-safe; they count the terms and the time spent.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class TensorContractor {
+
+    /**
+     * The name of the metric tensor.
+     */
+    private static final String METRIC = "g";
+
+    /**
+     * The name of the scalar product.
+     */
+    private static final String DOT = "dot";
+
+    /**
+     * The largest number of dummy indices of a term for which all
+     * assignments of canonical dummies are tried.
+     */
+    private static final int MAX_PERMUTED = 5;
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(TensorContractor.class);
+
+    /**
+     * The symbol denoting the dimension.
+     */
+    private final Expr dimension;
+
+    /**
+     * The prefix of the canonical dummy indices.
+     */
+    private final String dummyPrefix;
+
+    /**
+     * The canonical dummy index of each number.
+     */
+    private final Map<Integer, Expr> dummies = new ConcurrentHashMap<>();
+
+    /**
+     * The number of each symbol that is a canonical dummy, zero for
+     * other symbols.
+     */
+    private final Map<Expr, Integer> dummyNumbers = new ConcurrentHashMap<>();
+
+    /**
+     * The number of terms contracted.
+     */
+    private final LongAdder inputTerms = new LongAdder();
+
+    /**
+     * The number of terms produced.
+     */
+    private final LongAdder outputTerms = new LongAdder();
+
+    /**
+     * The largest number of terms of an intermediate product.
+     */
+    private final AtomicLong peakTerms = new AtomicLong();
+
+    /**
+     * The time spent in {@link #contract}, in nanoseconds.
+     */
+    private final LongAdder nanos = new LongAdder();
+
+    /**
+     * Creates a contractor.
+     *
+     * @param theDimension the symbol denoting the dimension
+     * @param theDummyPrefix the prefix of canonical dummy indices
+     *
+     * @since 0.1.0
+     */
+    public TensorContractor(
+            final Expr theDimension,
+            final String theDummyPrefix) {
+        if (theDimension.getKind() != Expr.Kind.SYMBOL) {
+            throw new IllegalArgumentException(
+                "The dimension must be a symbol, not " + theDimension);
+        }
+        this.dimension = theDimension;
+        this.dummyPrefix = theDummyPrefix;
+    }
+
+    /**
+     * Creates a contractor from its configuration.
+     *
+     * @param config the configuration
+     * @return the contractor
+     * @throws ConfigurationException if the configuration is invalid
+     *
+     * @since 0.1.0
+     */
+    public static TensorContractor fromConfig(final LorentzConfig config)
+            throws ConfigurationException {
+        final String name = config.getDimension().trim();
+        if (name.isEmpty()) {
+            throw new ConfigurationException(
+                "lorentz.dimension must not be empty");
+        }
+        final String prefix = config.getDummyPrefix().trim();
+        if (prefix.isEmpty()) {
+            throw new ConfigurationException(
+                "lorentz.dummyPrefix must not be empty");
+        }
+        return new TensorContractor(Expr.symbol(name), prefix);
+    }
+
+    /**
+     * Returns the symbol denoting the dimension.
+     *
+     * @return the dimension
+     *
+     * @since 0.1.0
+     */
+    public Expr getDimension() {
+        return this.dimension;
+    }
+
+    /**
+     * Returns a canonical dummy index.
+     *
+     * @param number the number of the dummy, starting at one
+     * @return the index
+     *
+     * @since 0.1.0
+     */
+    public Expr dummy(final int number) {
+        return this.dummies.computeIfAbsent(number, n -> {
+            final Expr d = Expr.symbol(this.dummyPrefix + n + "_");
+            this.dummyNumbers.put(d, n);
+            return d;
+        });
+    }
+
+    /**
+     * Returns the number of terms given to {@link #contract} so far.
+     *
+     * @return the number of input terms
+     *
+     * @since 0.1.0
+     */
+    public long getInputTermCount() {
+        return this.inputTerms.sum();
+    }
+
+    /**
+     * Returns the number of terms returned by {@link #contract} so far.
+     *
+     * @return the number of output terms
+     *
+     * @since 0.1.0
+     */
+    public long getOutputTermCount() {
+        return this.outputTerms.sum();
+    }
+
+    /**
+     * Returns the largest number of terms of an intermediate product.
+     *
+     * @return the largest intermediate term count
+     *
+     * @since 0.1.0
+     */
+    public long getPeakTermCount() {
+        return this.peakTerms.get();
+    }
+
+    /**
+     * Returns the time spent contracting so far.
+     *
+     * @return the time in nanoseconds, summed over all threads
+     *
+     * @since 0.1.0
+     */
+    public long getContractionTime() {
+        return this.nanos.sum();
+    }
+
+    /**
+     * Contracts all repeated indices of an expression.
+     *
+     * @param expr the expression
+     * @param indices the symbols which are Lorentz indices
+     * @return the contracted expression
+     * @throws IllegalArgumentException if an index occurs more than
+     *         twice in a term
+     *
+     * @since 0.1.0
+     */
+    public Expr contract(final Expr expr, final Set<Expr> indices) {
+        return this.contract(expr, indices, null);
+    }
+
+    /**
+     * Contracts all repeated indices of an expression, processing the
+     * terms of a sum in parallel.
+     *
+     * @param expr the expression
+     * @param indices the symbols which are Lorentz indices
+     * @param pool the pool in which the terms are contracted or
+     *        <code>null</code> to contract them in this thread
+     * @return the contracted expression
+     * @throws IllegalArgumentException if an index occurs more than
+     *         twice in a term
+     *
+     * @since 0.1.0
+     */
+    public Expr contract(
+            final Expr expr,
+            final Set<Expr> indices,
+            final ForkJoinPool pool) {
+        final long start = System.nanoTime();
+        final Contraction c = new Contraction(indices);
+        final List<Expr> terms = expr.getKind() == Expr.Kind.SUM
+            ? arguments(expr) : List.of(expr);
+        final Map<Expr, List<Expr>> collected;
+        if (pool == null || terms.size() < 2) {
+            collected = c.contractTerms(terms, 0, terms.size());
+        } else {
+            final int chunks =
+                Math.min(terms.size(), 4 * pool.getParallelism());
+            final List<ForkJoinTask<Map<Expr, List<Expr>>>> tasks =
+                new ArrayList<>();
+            for (int k = 0; k < chunks; ++k) {
+                final int from = (int) ((long) k * terms.size() / chunks);
+                final int to = (int) ((k + 1L) * terms.size() / chunks);
+                tasks.add(pool.submit(
+                    () -> c.contractTerms(terms, from, to)));
+            }
+            collected = new HashMap<>();
+            for (final ForkJoinTask<Map<Expr, List<Expr>>> task : tasks) {
+                task.join().forEach((key, coefficients) ->
+                    collected.computeIfAbsent(key, k -> new ArrayList<>())
+                        .addAll(coefficients));
+            }
+        }
+
+        final List<Expr> out = new ArrayList<>();
+        collected.forEach((key, coefficients) ->
+            out.add(Expr.product(Expr.sum(coefficients), key)));
+        final Expr result = Expr.sum(out);
+        final int count = result == Expr.ZERO ? 0
+            : result.getKind() == Expr.Kind.SUM ? result.getArgCount() : 1;
+
+        final long time = System.nanoTime() - start;
+        this.inputTerms.add(terms.size());
+        this.outputTerms.add(count);
+        this.nanos.add(time);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(String.format(
+                "Contracted %d terms into %d, %d intermediate terms"
+                + " at most, %.1f ms", terms.size(), count,
+                this.peakTerms.get(), time / 1e6));
+        }
+        return result;
+    }
+
+    private static List<Expr> arguments(final Expr expr) {
+        final List<Expr> args = new ArrayList<>(expr.getArgCount());
+        for (int i = 0; i < expr.getArgCount(); ++i) {
+            args.add(expr.getArg(i));
+        }
+        return args;
+    }
+
+    /**
+     * Returns the number of a canonical dummy index.
+     *
+     * @param e a symbol
+     * @return the number of the dummy or zero
+     */
+    private int dummyNumber(final Expr e) {
+        if (e.getKind() != Expr.Kind.SYMBOL) {
+            return 0;
+        }
+        final Integer n = this.dummyNumbers.get(e);
+        if (n != null) {
+            return n;
+        }
+        // a dummy from an earlier run or another instance
+        final String name = e.getName();
+        final int end = name.length() - 1;
+        int number = 0;
+        if (name.startsWith(this.dummyPrefix) && end > this.dummyPrefix.length()
+                && name.charAt(end) == '_') {
+            try {
+                number = Integer.parseInt(
+                    name.substring(this.dummyPrefix.length(), end));
+            } catch (NumberFormatException ex) {
+                number = 0;
+            }
+        }
+        this.dummyNumbers.put(e, Math.max(0, number));
+        return Math.max(0, number);
+    }
+
+    /**
+     * A factor carrying indices.
+     */
+    private static final class Tensor {
+        /**
+         * The name of the function.
+         */
+        private final String name;
+
+        /**
+         * The arguments, indices or momenta.
+         */
+        private final Expr[] slots;
+
+        Tensor(final String theName, final Expr[] theSlots) {
+            this.name = theName;
+            this.slots = theSlots;
+        }
+
+        boolean isMetric() {
+            return this.slots.length == 2 && METRIC.equals(this.name);
+        }
+
+        boolean isVector() {
+            return this.slots.length == 1;
+        }
+
+        Expr toExpr() {
+            return Expr.function(this.name, this.slots);
+        }
+    }
+
+    /**
+     * A product of a scalar coefficient and tensors.
+     */
+    private static final class Term {
+        /**
+         * The coefficient, free of indices.
+         */
+        private Expr coefficient;
+
+        /**
+         * The tensors.
+         */
+        private final List<Tensor> tensors;
+
+        /**
+         * The number of canonical dummies, which are numbered from one.
+         */
+        private int dummyCount;
+
+        Term(final Expr theCoefficient, final List<Tensor> theTensors) {
+            this.coefficient = theCoefficient;
+            this.tensors = theTensors;
+        }
+    }
+
+    /**
+     * The state of a single call of {@link #contract}.
+     */
+    private final class Contraction {
+        /**
+         * The Lorentz indices.
+         */
+        private final Set<Expr> indices;
+
+        Contraction(final Set<Expr> theIndices) {
+            this.indices = theIndices;
+        }
+
+        boolean isIndex(final Expr e) {
+            return e.getKind() == Expr.Kind.SYMBOL
+                && (this.indices.contains(e) || dummyNumber(e) > 0);
+        }
+
+        boolean containsIndex(final Expr e) {
+            if (this.isIndex(e)) {
+                return true;
+            }
+            for (int i = 0; i < e.getArgCount(); ++i) {
+                if (this.containsIndex(e.getArg(i))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Contracts some terms of a sum.
+         *
+         * @param terms the terms
+         * @param from the first term
+         * @param to the term after the last one
+         * @return the coefficients of each tensor structure
+         */
+        Map<Expr, List<Expr>> contractTerms(
+                final List<Expr> terms,
+                final int from,
+                final int to) {
+            final Map<Expr, List<Expr>> out = new HashMap<>();
+            for (int t = from; t < to; ++t) {
+                this.contractProduct(terms.get(t)).forEach((key, term) ->
+                    out.computeIfAbsent(key, k -> new ArrayList<>())
+                        .add(term.coefficient));
+            }
+            return out;
+        }
+
+        /**
+         * Contracts a product.
+         *
+         * @param product the product
+         * @return the contracted terms by their tensor structure
+         */
+        Map<Expr, Term> contractProduct(final Expr product) {
+            final List<Expr> factors =
+                product.getKind() == Expr.Kind.PRODUCT
+                ? arguments(product) : List.of(product);
+            final List<Expr> scalars = new ArrayList<>();
+            final List<Tensor> tensors = new ArrayList<>();
+            final List<Map<Expr, Term>> sums = new ArrayList<>();
+            for (final Expr f : factors) {
+                this.addFactor(f, scalars, tensors, sums);
+            }
+
+            final Term base = new Term(Expr.product(scalars), tensors);
+            this.contract(base);
+            Map<Expr, Term> current = new HashMap<>();
+            current.put(this.canonicalize(base), base);
+            while (!sums.isEmpty() && !current.isEmpty()) {
+                current = this.multiply(current,
+                    sums.remove(this.next(current, sums)));
+            }
+            return current;
+        }
+
+        private void addFactor(
+                final Expr f,
+                final List<Expr> scalars,
+                final List<Tensor> tensors,
+                final List<Map<Expr, Term>> sums) {
+            if (!this.containsIndex(f)) {
+                scalars.add(f);
+                return;
+            }
+            switch (f.getKind()) {
+                case FUNCTION:
+                    final Expr[] slots = new Expr[f.getArgCount()];
+                    for (int i = 0; i < slots.length; ++i) {
+                        slots[i] = f.getArg(i);
+                    }
+                    tensors.add(new Tensor(f.getName(), slots));
+                    break;
+                case SUM:
+                    sums.add(this.contractSum(f));
+                    break;
+                case POWER:
+                    if (f.getExponent() < 1) {
+                        throw new IllegalArgumentException(
+                            "Negative power of a tensor: " + f);
+                    }
+                    for (int k = 0; k < f.getExponent(); ++k) {
+                        this.addFactor(f.getArg(0), scalars, tensors, sums);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException(
+                        "A Lorentz index is not a factor: " + f);
+            }
+        }
+
+        /**
+         * Contracts the terms of a sum which is a factor of a product.
+         *
+         * @param sum the sum
+         * @return the contracted terms by their tensor structure
+         */
+        private Map<Expr, Term> contractSum(final Expr sum) {
+            final Map<Expr, List<Term>> parts = new LinkedHashMap<>();
+            for (int i = 0; i < sum.getArgCount(); ++i) {
+                this.contractProduct(sum.getArg(i)).forEach((key, term) ->
+                    parts.computeIfAbsent(key, k -> new ArrayList<>())
+                        .add(term));
+            }
+            return this.collect(parts);
+        }
+
+        /**
+         * Adds up the coefficients of equal tensor structures.
+         *
+         * @param parts the terms by their tensor structure
+         * @return the sums by their tensor structure, without zeros
+         */
+        private Map<Expr, Term> collect(final Map<Expr, List<Term>> parts) {
+            final Map<Expr, Term> out = new HashMap<>();
+            parts.forEach((key, terms) -> {
+                final Term first = terms.get(0);
+                if (terms.size() > 1) {
+                    final List<Expr> coefficients = new ArrayList<>();
+                    for (final Term term : terms) {
+                        coefficients.add(term.coefficient);
+                    }
+                    first.coefficient = Expr.sum(coefficients);
+                }
+                if (first.coefficient != Expr.ZERO) {
+                    out.put(key, first);
+                }
+            });
+            peakTerms.accumulateAndGet(out.size(), Math::max);
+            return out;
+        }
+
+        /**
+         * Chooses the sum to be multiplied next.
+         *
+         * @param current the partial product
+         * @param sums the remaining sums
+         * @return the position of the sum in the list
+         */
+        private int next(
+                final Map<Expr, Term> current,
+                final List<Map<Expr, Term>> sums) {
+            if (sums.size() == 1) {
+                return 0;
+            }
+            final Set<Expr> open =
+                this.freeIndices(current.values().iterator().next());
+            int best = -1;
+            int bestShared = -1;
+            for (int k = 0; k < sums.size(); ++k) {
+                final Map<Expr, Term> s = sums.get(k);
+                int shared = 0;
+                if (!s.isEmpty()) {
+                    for (final Expr e
+                            : this.freeIndices(s.values().iterator().next())) {
+                        if (open.contains(e)) {
+                            ++shared;
+                        }
+                    }
+                }
+                if (shared > bestShared || (shared == bestShared
+                        && s.size() < sums.get(best).size())) {
+                    best = k;
+                    bestShared = shared;
+                }
+            }
+            return best;
+        }
+
+        private Set<Expr> freeIndices(final Term term) {
+            final Map<Expr, Integer> count = new HashMap<>();
+            for (final Tensor x : term.tensors) {
+                for (final Expr e : x.slots) {
+                    if (this.isIndex(e)) {
+                        count.merge(e, 1, Integer::sum);
+                    }
+                }
+            }
+            count.values().removeIf(n -> n > 1);
+            return count.keySet();
+        }
+
+        /**
+         * Multiplies two contracted sums and contracts the result.
+         *
+         * @param x the first sum
+         * @param y the second sum
+         * @return the contracted product by its tensor structure
+         */
+        private Map<Expr, Term> multiply(
+                final Map<Expr, Term> x,
+                final Map<Expr, Term> y) {
+            final Map<Expr, List<Term>> parts = new HashMap<>();
+            for (final Term a : x.values()) {
+                for (final Term b : y.values()) {
+                    // the dummies of b are renamed apart from those of a
+                    final List<Tensor> tensors = new ArrayList<>();
+                    for (final Tensor t : a.tensors) {
+                        tensors.add(new Tensor(t.name, t.slots.clone()));
+                    }
+                    for (final Tensor t : b.tensors) {
+                        final Expr[] slots = t.slots.clone();
+                        for (int i = 0; i < slots.length; ++i) {
+                            final int n = dummyNumber(slots[i]);
+                            if (n > 0) {
+                                slots[i] = dummy(n + a.dummyCount);
+                            }
+                        }
+                        tensors.add(new Tensor(t.name, slots));
+                    }
+                    final Term term = new Term(
+                        Expr.product(a.coefficient, b.coefficient), tensors);
+                    this.contract(term);
+                    parts.computeIfAbsent(this.canonicalize(term),
+                        k -> new ArrayList<>()).add(term);
+                }
+            }
+            return this.collect(parts);
+        }
+
+        /**
+         * Contracts the indices of a term, as far as possible.
+         *
+         * @param term the term, modified in place
+         */
+        private void contract(final Term term) {
+            final Map<Expr, Integer> count = new HashMap<>();
+            for (final Tensor x : term.tensors) {
+                for (final Expr e : x.slots) {
+                    if (this.isIndex(e)
+                            && count.merge(e, 1, Integer::sum) > 2) {
+                        throw new IllegalArgumentException(
+                            "Index " + e + " occurs more than twice");
+                    }
+                }
+            }
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                final Map<Expr, int[]> seen = new HashMap<>();
+                scan:
+                for (int i = 0; i < term.tensors.size(); ++i) {
+                    final Expr[] slots = term.tensors.get(i).slots;
+                    for (int s = 0; s < slots.length; ++s) {
+                        if (!this.isIndex(slots[s])) {
+                            continue;
+                        }
+                        final int[] first =
+                            seen.put(slots[s], new int[] {i, s});
+                        if (first == null) {
+                            continue;
+                        }
+                        if (this.join(term, first[0], first[1], i, s)) {
+                            changed = true;
+                            break scan;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Contracts an index occurring in two slots.
+         *
+         * @return <code>true</code> if the index was eliminated
+         */
+        private boolean join(
+                final Term term,
+                final int i,
+                final int s,
+                final int j,
+                final int r) {
+            final Tensor a = term.tensors.get(i);
+            final Tensor b = term.tensors.get(j);
+            if (i == j) {
+                if (a.isMetric()) {
+                    term.tensors.remove(i);
+                    term.coefficient =
+                        Expr.product(term.coefficient, dimension);
+                    return true;
+                }
+                return false;
+            }
+            if (a.isMetric()) {
+                return this.absorb(term, a, b, r, a.slots[1 - s]);
+            }
+            if (b.isMetric()) {
+                return this.absorb(term, b, a, s, b.slots[1 - r]);
+            }
+            if (a.isVector()) {
+                return this.absorb(term, a, b, r, Expr.symbol(a.name));
+            }
+            if (b.isVector()) {
+                return this.absorb(term, b, a, s, Expr.symbol(b.name));
+            }
+            return false;
+        }
+
+        /**
+         * Removes a metric tensor or vector, replacing the contracted
+         * index of another tensor.
+         */
+        private boolean absorb(
+                final Term term,
+                final Tensor removed,
+                final Tensor target,
+                final int slot,
+                final Expr replacement) {
+            term.tensors.remove(removed);
+            target.slots[slot] = replacement;
+            final Expr scalar = this.normalize(target);
+            if (scalar != null) {
+                term.tensors.remove(target);
+                term.coefficient = Expr.product(term.coefficient, scalar);
+            }
+            return true;
+        }
+
+        /**
+         * Brings a metric tensor or vector whose index was replaced into
+         * normal form.
+         *
+         * @param x the tensor, modified in place
+         * @return the scalar it turned into or <code>null</code>
+         */
+        private Expr normalize(final Tensor x) {
+            if (x.isMetric()) {
+                final boolean first = this.isIndex(x.slots[0]);
+                final boolean second = this.isIndex(x.slots[1]);
+                if (!first && !second) {
+                    return dot(x.slots[0], x.slots[1]);
+                }
+                if (first && second) {
+                    if (x.slots[0].compareTo(x.slots[1]) > 0) {
+                        final Expr e = x.slots[0];
+                        x.slots[0] = x.slots[1];
+                        x.slots[1] = e;
+                    }
+                    return null;
+                }
+                return null;
+            }
+            if (x.isVector() && !this.isIndex(x.slots[0])) {
+                return dot(Expr.symbol(x.name), x.slots[0]);
+            }
+            return null;
+        }
+
+        /**
+         * Renames the dummy indices of a term canonically.
+         *
+         * @param term the contracted term, modified in place
+         * @return the tensor structure
+         */
+        private Expr canonicalize(final Term term) {
+            // metric tensors with a momentum are vectors
+            for (int i = 0; i < term.tensors.size(); ++i) {
+                final Tensor x = term.tensors.get(i);
+                if (x.isMetric() && !this.isIndex(x.slots[1])
+                        && x.slots[1].getKind() == Expr.Kind.SYMBOL) {
+                    term.tensors.set(i, new Tensor(x.slots[1].getName(),
+                        new Expr[] {x.slots[0]}));
+                } else if (x.isMetric() && !this.isIndex(x.slots[0])
+                        && x.slots[0].getKind() == Expr.Kind.SYMBOL) {
+                    term.tensors.set(i, new Tensor(x.slots[0].getName(),
+                        new Expr[] {x.slots[1]}));
+                }
+            }
+
+            final Map<Expr, Integer> count = new LinkedHashMap<>();
+            for (final Tensor x : term.tensors) {
+                for (final Expr e : x.slots) {
+                    if (this.isIndex(e)) {
+                        count.merge(e, 1, Integer::sum);
+                    }
+                }
+            }
+            count.values().removeIf(n -> n < 2);
+            final Expr[] names = count.keySet().toArray(new Expr[0]);
+            term.dummyCount = names.length;
+            if (names.length == 0) {
+                return structure(term.tensors, Map.of());
+            }
+
+            final Map<Expr, Expr> best = new HashMap<>();
+            Expr bestKey = null;
+            if (names.length <= MAX_PERMUTED) {
+                final int[] perm = new int[names.length];
+                for (int k = 0; k < perm.length; ++k) {
+                    perm[k] = k;
+                }
+                final Map<Expr, Expr> renaming = new HashMap<>();
+                do {
+                    for (int k = 0; k < perm.length; ++k) {
+                        renaming.put(names[k], dummy(perm[k] + 1));
+                    }
+                    final Expr key = structure(term.tensors, renaming);
+                    if (bestKey == null || key.compareTo(bestKey) < 0) {
+                        bestKey = key;
+                        best.clear();
+                        best.putAll(renaming);
+                    }
+                } while (nextPermutation(perm));
+            } else {
+                // number the dummies by their first occurrence in the
+                // tensors ordered with all dummies alike
+                final Expr mask = Expr.symbol(dummyPrefix);
+                final Map<Expr, Expr> masked = new HashMap<>();
+                for (final Expr e : names) {
+                    masked.put(e, mask);
+                }
+                final List<Tensor> sorted = new ArrayList<>(term.tensors);
+                sorted.sort((x, y) -> rename(x, masked).compareTo(
+                    rename(y, masked)));
+                for (final Tensor x : sorted) {
+                    for (final Expr e : x.slots) {
+                        if (masked.containsKey(e) && !best.containsKey(e)) {
+                            best.put(e, dummy(best.size() + 1));
+                        }
+                    }
+                }
+                bestKey = structure(term.tensors, best);
+            }
+            for (final Tensor x : term.tensors) {
+                for (int i = 0; i < x.slots.length; ++i) {
+                    x.slots[i] = best.getOrDefault(x.slots[i], x.slots[i]);
+                }
+            }
+            return bestKey;
+        }
+    }
+
+    private static Expr dot(final Expr p, final Expr q) {
+        return p.compareTo(q) <= 0
+            ? Expr.function(DOT, p, q) : Expr.function(DOT, q, p);
+    }
+
+    private static Expr rename(final Tensor x, final Map<Expr, Expr> names) {
+        final Expr[] slots = new Expr[x.slots.length];
+        for (int i = 0; i < slots.length; ++i) {
+            slots[i] = names.getOrDefault(x.slots[i], x.slots[i]);
+        }
+        if (x.isMetric() && slots[0].compareTo(slots[1]) > 0) {
+            return Expr.function(x.name, slots[1], slots[0]);
+        }
+        return Expr.function(x.name, slots);
+    }
+
+    private static Expr structure(
+            final List<Tensor> tensors,
+            final Map<Expr, Expr> names) {
+        final Expr[] factors = new Expr[tensors.size()];
+        for (int i = 0; i < factors.length; ++i) {
+            factors[i] = rename(tensors.get(i), names);
+        }
+        return Expr.product(factors);
+    }
+
+    private static boolean nextPermutation(final int[] a) {
+        int i = a.length - 2;
+        while (i >= 0 && a[i] >= a[i + 1]) {
+            --i;
+        }
+        if (i < 0) {
+            return false;
+        }
+        int j = a.length - 1;
+        while (a[j] <= a[i]) {
+            --j;
+        }
+        int x = a[i];
+        a[i] = a[j];
+        a[j] = x;
+        for (int l = i + 1, r = a.length - 1; l < r; ++l, --r) {
+            x = a[l];
+            a[l] = a[r];
+            a[r] = x;
+        }
+        return true;
+    }
+}
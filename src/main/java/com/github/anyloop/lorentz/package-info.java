@@ -0,0 +1,34 @@
+/*
+ * package-info.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+/**
+ * This package contracts Lorentz indices of tensor expressions.
+ *
+ * Metric tensors and momenta are contracted into the other factors,
+ * the remaining dummy indices are renamed canonically, so that equal
+ * tensor structures collect into one term, and products of sums are
+ * expanded in an order which keeps the intermediate results small.
+ * The notation is that of the Dirac traces, <code>g(mu, nu)</code>,
+ * <code>p(mu)</code> and <code>dot(p, q)</code>.
+ */
+package com.github.anyloop.lorentz;
@@ -0,0 +1,602 @@
+/*
+ * Model.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.anyloop.chassis.ConfigurationException;
+
+/**
+ * An index based representation of a model.
+ *
+ * Every particle and every antiparticle is given a field ID, and
+ * every vertex is given a vertex type ID. Both are dense integer
+ * ranges starting at zero, so that all lookups needed during
+ * diagram generation are plain array accesses. Vertex types can also
+ * be looked up by the fields meeting at the vertex, see
+ * {@link #findVertexKey}; such queries neither allocate nor touch
+ * any field names.
+ *
+ * Instances are immutable and may be shared between threads.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class Model {
+
+    /**
+     * The name of the model.
+     */
+    private final String name;
+
+    /**
+     * The name of each field.
+     */
+    private final String[] fieldNames;
+
+    /**
+     * The ID of the conjugate field of each field.
+     */
+    private final int[] conjugates;
+
+    /**
+     * Twice the spin of each field.
+     */
+    private final int[] twiceSpins;
+
+    /**
+     * The mass symbol of each field.
+     */
+    private final String[] masses;
+
+    /**
+     * The field IDs of each vertex type.
+     */
+    private final int[][] vertexFields;
+
+    /**
+     * The coupling symbol of each vertex type.
+     */
+    private final String[] couplings;
+
+    /**
+     * For each field, the vertex types having at least one leg
+     * of that field.
+     */
+    private final int[][] verticesWithField;
+
+    /**
+     * Lookup of vertex types by the fields meeting at the vertex.
+     */
+    private final VertexIndex vertexIndex;
+
+    /**
+     * For each field, the vertex keys having at least one leg of that
+     * field.
+     */
+    private final int[][] keysWithField;
+
+    /**
+     * Mapping from field names to field IDs.
+     */
+    private final Map<String, Integer> fieldIds;
+
+    /**
+     * Creates a model from its tables.
+     *
+     * @param theName the name of the model
+     * @param theFieldNames the field names
+     * @param theConjugates the conjugate field IDs
+     * @param theTwiceSpins twice the spin per field
+     * @param theMasses the mass symbol per field
+     * @param theVertexFields the field IDs per vertex type
+     * @param theCouplings the coupling symbol per vertex type
+     */
+    private Model(
+            final String theName,
+            final String[] theFieldNames,
+            final int[] theConjugates,
+            final int[] theTwiceSpins,
+            final String[] theMasses,
+            final int[][] theVertexFields,
+            final String[] theCouplings) {
+        this.name = theName;
+        this.fieldNames = theFieldNames;
+        this.conjugates = theConjugates;
+        this.twiceSpins = theTwiceSpins;
+        this.masses = theMasses;
+        this.vertexFields = theVertexFields;
+        this.couplings = theCouplings;
+
+        this.fieldIds = new HashMap<>();
+        for (int f = 0; f < theFieldNames.length; ++f) {
+            this.fieldIds.put(theFieldNames[f], f);
+        }
+
+        final int[] counts = new int[theFieldNames.length];
+        final int[][] withField = new int[theFieldNames.length][];
+        for (final int[] fields : theVertexFields) {
+            for (int i = 0; i < fields.length; ++i) {
+                if (indexOf(fields, fields[i]) == i) {
+                    ++counts[fields[i]];
+                }
+            }
+        }
+        for (int f = 0; f < counts.length; ++f) {
+            withField[f] = new int[counts[f]];
+            counts[f] = 0;
+        }
+        for (int t = 0; t < theVertexFields.length; ++t) {
+            final int[] fields = theVertexFields[t];
+            for (int i = 0; i < fields.length; ++i) {
+                if (indexOf(fields, fields[i]) == i) {
+                    withField[fields[i]][counts[fields[i]]++] = t;
+                }
+            }
+        }
+        this.verticesWithField = withField;
+        this.vertexIndex = new VertexIndex(theVertexFields);
+
+        // the fields of a key are sorted, so repeated ones are adjacent
+        final VertexIndex index = this.vertexIndex;
+        Arrays.fill(counts, 0);
+        for (int k = 0; k < index.getKeyCount(); ++k) {
+            for (int i = 0; i < index.getKeyLength(k); ++i) {
+                final int f = index.getKeyField(k, i);
+                if (i == 0 || index.getKeyField(k, i - 1) != f) {
+                    ++counts[f];
+                }
+            }
+        }
+        this.keysWithField = new int[counts.length][];
+        for (int f = 0; f < counts.length; ++f) {
+            this.keysWithField[f] = new int[counts[f]];
+            counts[f] = 0;
+        }
+        for (int k = 0; k < index.getKeyCount(); ++k) {
+            for (int i = 0; i < index.getKeyLength(k); ++i) {
+                final int f = index.getKeyField(k, i);
+                if (i == 0 || index.getKeyField(k, i - 1) != f) {
+                    this.keysWithField[f][counts[f]++] = k;
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds a model from its configuration.
+     *
+     * @param config the configuration of the model
+     * @return the model
+     * @throws ConfigurationException if the model is inconsistent,
+     *         e.g. if a vertex refers to an unknown particle.
+     *
+     * @since 0.1.0
+     */
+    public static Model fromConfig(final ModelConfig config)
+            throws ConfigurationException {
+        final List<String> names = new ArrayList<>();
+        final List<Integer> conj = new ArrayList<>();
+        final List<Integer> spins = new ArrayList<>();
+        final List<String> massList = new ArrayList<>();
+        final Map<String, Integer> ids = new HashMap<>();
+
+        for (final ModelConfig.Particle particle : config.getParticles()) {
+            final String pname = particle.getName();
+            final String aname = particle.getAntiName();
+            final int spin = parseTwiceSpin(pname, particle.getSpin());
+            final String mass = particle.getMass();
+
+            final int id = addField(names, ids, pname);
+            spins.add(spin);
+            massList.add(mass);
+            if (aname.isEmpty() || aname.equals(pname)) {
+                conj.add(id);
+            } else {
+                final int aid = addField(names, ids, aname);
+                spins.add(spin);
+                massList.add(mass);
+                conj.add(aid);
+                conj.add(id);
+            }
+        }
+
+        final ModelConfig.Vertex[] vertices = config.getVertices();
+        final int[][] vfields = new int[vertices.length][];
+        final String[] vcouplings = new String[vertices.length];
+        for (int t = 0; t < vertices.length; ++t) {
+            final String[] fields = vertices[t].getFields();
+            if (fields.length < 3) {
+                throw new ConfigurationException(
+                    "Vertex " + Arrays.toString(fields)
+                    + " must have at least three legs");
+            }
+            vfields[t] = new int[fields.length];
+            for (int i = 0; i < fields.length; ++i) {
+                final Integer id = ids.get(fields[i]);
+                if (id == null) {
+                    throw new ConfigurationException(
+                        "Vertex " + Arrays.toString(fields)
+                        + " refers to unknown particle " + fields[i]);
+                }
+                vfields[t][i] = id;
+            }
+            vcouplings[t] = vertices[t].getCoupling();
+        }
+
+        return new Model(
+            config.getName(),
+            names.toArray(new String[0]),
+            conj.stream().mapToInt(Integer::intValue).toArray(),
+            spins.stream().mapToInt(Integer::intValue).toArray(),
+            massList.toArray(new String[0]),
+            vfields,
+            vcouplings);
+    }
+
+    private static int addField(
+            final List<String> names,
+            final Map<String, Integer> ids,
+            final String fieldName) throws ConfigurationException {
+        if (ids.containsKey(fieldName)) {
+            throw new ConfigurationException(
+                "Particle " + fieldName + " is defined more than once");
+        }
+        final int id = names.size();
+        names.add(fieldName);
+        ids.put(fieldName, id);
+        return id;
+    }
+
+    private static int parseTwiceSpin(
+            final String particle,
+            final String spin) throws ConfigurationException {
+        try {
+            final String s = spin.trim();
+            final int slash = s.indexOf('/');
+            if (slash < 0) {
+                return 2 * Integer.parseInt(s);
+            }
+            if (!"2".equals(s.substring(slash + 1).trim())) {
+                throw new NumberFormatException(s);
+            }
+            return Integer.parseInt(s.substring(0, slash).trim());
+        } catch (NumberFormatException ex) {
+            throw new ConfigurationException(
+                "Invalid spin " + spin + " of particle " + particle, ex);
+        }
+    }
+
+    private static int indexOf(final int[] array, final int value) {
+        for (int i = 0; i < array.length; ++i) {
+            if (array[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the name of the model.
+     *
+     * @return the name of the model
+     *
+     * @since 0.1.0
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Returns the number of fields, counting particles and
+     * antiparticles separately.
+     *
+     * @return the number of fields
+     *
+     * @since 0.1.0
+     */
+    public int getFieldCount() {
+        return this.fieldNames.length;
+    }
+
+    /**
+     * Looks up the ID of a field by its name.
+     *
+     * @param fieldName the name of a particle or antiparticle
+     * @return the field ID
+     * @throws ConfigurationException if there is no such field
+     *
+     * @since 0.1.0
+     */
+    public int getFieldId(final String fieldName)
+            throws ConfigurationException {
+        final Integer id = this.fieldIds.get(fieldName);
+        if (id == null) {
+            throw new ConfigurationException(
+                "Unknown particle " + fieldName + " in model " + this.name);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the name of a field.
+     *
+     * @param field the field ID
+     * @return the name of the field
+     *
+     * @since 0.1.0
+     */
+    public String getFieldName(final int field) {
+        return this.fieldNames[field];
+    }
+
+    /**
+     * Returns the ID of the conjugate field.
+     *
+     * @param field the field ID
+     * @return the ID of the antiparticle of the given field
+     *
+     * @since 0.1.0
+     */
+    public int getConjugate(final int field) {
+        return this.conjugates[field];
+    }
+
+    /**
+     * Returns twice the spin of a field.
+     *
+     * @param field the field ID
+     * @return twice the spin
+     *
+     * @since 0.1.0
+     */
+    public int getTwiceSpin(final int field) {
+        return this.twiceSpins[field];
+    }
+
+    /**
+     * Returns the mass symbol of a field.
+     *
+     * @param field the field ID
+     * @return the mass symbol, <code>0</code> for massless fields
+     *
+     * @since 0.1.0
+     */
+    public String getMass(final int field) {
+        return this.masses[field];
+    }
+
+    /**
+     * Returns the number of vertex types.
+     *
+     * @return the number of vertex types
+     *
+     * @since 0.1.0
+     */
+    public int getVertexTypeCount() {
+        return this.vertexFields.length;
+    }
+
+    /**
+     * Returns the number of legs of a vertex type.
+     *
+     * @param type the vertex type ID
+     * @return the number of legs
+     *
+     * @since 0.1.0
+     */
+    public int getVertexDegree(final int type) {
+        return this.vertexFields[type].length;
+    }
+
+    /**
+     * Returns the field of a leg of a vertex.
+     *
+     * @param type the vertex type ID
+     * @param leg the index of the leg
+     * @return the field ID of the (outgoing) leg
+     *
+     * @since 0.1.0
+     */
+    public int getVertexField(final int type, final int leg) {
+        return this.vertexFields[type][leg];
+    }
+
+    /**
+     * Returns the first leg of a vertex carrying the given field.
+     *
+     * @param type the vertex type ID
+     * @param field the field ID
+     * @return the index of the leg or <code>-1</code>
+     *
+     * @since 0.1.0
+     */
+    public int getVertexLeg(final int type, final int field) {
+        return indexOf(this.vertexFields[type], field);
+    }
+
+    /**
+     * Returns the coupling symbol of a vertex type.
+     *
+     * @param type the vertex type ID
+     * @return the coupling symbol
+     *
+     * @since 0.1.0
+     */
+    public String getCoupling(final int type) {
+        return this.couplings[type];
+    }
+
+    /**
+     * Returns the number of vertex types having a leg of the given
+     * field.
+     *
+     * @param field the field ID
+     * @return the number of vertex types
+     *
+     * @since 0.1.0
+     */
+    public int getVertexCountWithField(final int field) {
+        return this.verticesWithField[field].length;
+    }
+
+    /**
+     * Returns a vertex type having a leg of the given field.
+     *
+     * @param field the field ID
+     * @param index a number between zero and
+     *        {@link #getVertexCountWithField} (exclusive)
+     * @return the vertex type ID
+     *
+     * @since 0.1.0
+     */
+    public int getVertexWithField(final int field, final int index) {
+        return this.verticesWithField[field][index];
+    }
+
+    /**
+     * Returns the number of distinct vertex keys. A vertex key stands
+     * for a multiset of fields; all vertex types with the same fields
+     * share the same key.
+     *
+     * @return the number of vertex keys
+     *
+     * @since 0.1.0
+     */
+    public int getVertexKeyCount() {
+        return this.vertexIndex.getKeyCount();
+    }
+
+    /**
+     * Finds the vertex key of the given fields.
+     *
+     * @param fields the (outgoing) field IDs in any order
+     * @param count the number of fields used from the array
+     * @return the vertex key or <code>-1</code> if no vertex of the
+     *         model connects exactly these fields
+     *
+     * @since 0.1.0
+     */
+    public int findVertexKey(final int[] fields, final int count) {
+        return this.vertexIndex.find(fields, count);
+    }
+
+    /**
+     * Returns the number of vertex keys having a leg of the given
+     * field. Diagram generation attaches vertices by their keys, since
+     * vertex types with the same fields give diagrams of the same
+     * shape.
+     *
+     * @param field the field ID
+     * @return the number of vertex keys
+     *
+     * @since 0.1.0
+     */
+    public int getVertexKeyCountWithField(final int field) {
+        return this.keysWithField[field].length;
+    }
+
+    /**
+     * Returns a vertex key having a leg of the given field.
+     *
+     * @param field the field ID
+     * @param index a number between zero and
+     *        {@link #getVertexKeyCountWithField} (exclusive)
+     * @return the vertex key
+     *
+     * @since 0.1.0
+     */
+    public int getVertexKeyWithField(final int field, final int index) {
+        return this.keysWithField[field][index];
+    }
+
+    /**
+     * Returns the vertex key of a vertex type.
+     *
+     * @param type the vertex type ID
+     * @return the vertex key
+     *
+     * @since 0.1.0
+     */
+    public int getVertexKey(final int type) {
+        return this.vertexIndex.getKey(type);
+    }
+
+    /**
+     * Returns the number of fields of a vertex key.
+     *
+     * @param key the vertex key
+     * @return the number of fields
+     *
+     * @since 0.1.0
+     */
+    public int getVertexKeyLength(final int key) {
+        return this.vertexIndex.getKeyLength(key);
+    }
+
+    /**
+     * Returns a field of a vertex key. The fields of a key are sorted
+     * by their IDs.
+     *
+     * @param key the vertex key
+     * @param index a number between zero and
+     *        {@link #getVertexKeyLength} (exclusive)
+     * @return the field ID
+     *
+     * @since 0.1.0
+     */
+    public int getVertexKeyField(final int key, final int index) {
+        return this.vertexIndex.getKeyField(key, index);
+    }
+
+    /**
+     * Returns the number of vertex types with the given vertex key.
+     *
+     * @param key the vertex key
+     * @return the number of vertex types
+     *
+     * @since 0.1.0
+     */
+    public int getVertexCountWithKey(final int key) {
+        return this.vertexIndex.getVertexCount(key);
+    }
+
+    /**
+     * Returns a vertex type with the given vertex key.
+     *
+     * @param key the vertex key
+     * @param index a number between zero and
+     *        {@link #getVertexCountWithKey} (exclusive)
+     * @return the vertex type ID
+     *
+     * @since 0.1.0
+     */
+    public int getVertexWithKey(final int key, final int index) {
+        return this.vertexIndex.getVertex(key, index);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * ModelConfig.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.model;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.chassis.annotations.ConfigProperty;
+import com.github.anyloop.chassis.annotations.DefaultValue;
+
+/**
+ * Configuration view of a model (a set of Feynman rules).
+ *
+ * A model in YAML notation looks like this:
+ * <pre>
+ * model:
+ *   name: QED
+ *   particles:
+ *     particle:
+ *       - name: e-
+ *         antiname: e+
+ *         spin: 1/2
+ *         mass: me
+ *       - name: A
+ *         spin: 1
+ *   vertices:
+ *     vertex:
+ *       - fields: [e+, e-, A]
+ *         coupling: e
+ * </pre>
+ *
+ * All fields of a vertex are understood as outgoing.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public interface ModelConfig {
+
+    /**
+     * Configuration object for a particle and its antiparticle.
+     *
+     * @since 0.1.0
+     */
+    interface Particle {
+        /**
+         * The name of the particle.
+         *
+         * @return the name of the particle
+         * @throws ConfigurationException if the name is missing
+         */
+        @ConfigProperty(".name")
+        String getName() throws ConfigurationException;
+
+        /**
+         * The name of the antiparticle. An empty name denotes a
+         * self-conjugate particle.
+         *
+         * @return the name of the antiparticle
+         * @throws ConfigurationException if the value cannot be read
+         */
+        @ConfigProperty(".antiname")
+        @DefaultValue("")
+        String getAntiName() throws ConfigurationException;
+
+        /**
+         * The spin of the particle, either as an integer or as a
+         * fraction such as <code>1/2</code>.
+         *
+         * @return the spin as a string
+         * @throws ConfigurationException if the value cannot be read
+         */
+        @ConfigProperty(".spin")
+        @DefaultValue("0")
+        String getSpin() throws ConfigurationException;
+
+        /**
+         * The symbol denoting the mass of the particle.
+         *
+         * @return the mass symbol, <code>0</code> for massless particles
+         * @throws ConfigurationException if the value cannot be read
+         */
+        @ConfigProperty(".mass")
+        @DefaultValue("0")
+        String getMass() throws ConfigurationException;
+    }
+
+    /**
+     * Configuration object for an interaction vertex.
+     *
+     * @since 0.1.0
+     */
+    interface Vertex {
+        /**
+         * The names of the (outgoing) fields meeting at this vertex.
+         *
+         * @return the field names
+         * @throws ConfigurationException if the value cannot be read
+         */
+        @ConfigProperty(".fields")
+        String[] getFields() throws ConfigurationException;
+
+        /**
+         * The symbol of the coupling constant of this vertex.
+         *
+         * @return the coupling symbol
+         * @throws ConfigurationException if the value cannot be read
+         */
+        @ConfigProperty(".coupling")
+        @DefaultValue("1")
+        String getCoupling() throws ConfigurationException;
+    }
+
+    /**
+     * The name of the model.
+     *
+     * @return the name of the model
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("model.name")
+    @DefaultValue("unnamed")
+    String getName() throws ConfigurationException;
+
+    /**
+     * The particles of the model.
+     *
+     * @return the list of particles
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("model.particles.particle")
+    Particle[] getParticles() throws ConfigurationException;
+
+    /**
+     * The interaction vertices of the model.
+     *
+     * @return the list of vertices
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("model.vertices.vertex")
+    Vertex[] getVertices() throws ConfigurationException;
+}
@@ -0,0 +1,132 @@
+/*
+ * ProcessConfig.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.model;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.chassis.annotations.ConfigProperty;
+import com.github.anyloop.chassis.annotations.DefaultValue;
+
+/**
+ * Configuration view of a scattering process.
+ *
+ * A process in YAML notation looks like this:
+ * <pre>
+ * process:
+ *   incoming: [e-, e+]
+ *   outgoing: [mu-, mu+]
+ *   loops: 1
+ *   output: diagrams.txt
+ *   amplitude: berends-giele
+ * </pre>
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public interface ProcessConfig {
+
+    /**
+     * The names of the incoming particles.
+     *
+     * @return the incoming particles
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("process.incoming")
+    String[] getIncoming() throws ConfigurationException;
+
+    /**
+     * The names of the outgoing particles.
+     *
+     * @return the outgoing particles
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("process.outgoing")
+    String[] getOutgoing() throws ConfigurationException;
+
+    /**
+     * The highest loop order to be computed.
+     *
+     * @return the number of loops
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("process.loops")
+    @DefaultValue("0")
+    int getLoops() throws ConfigurationException;
+
+    /**
+     * Whether only one-particle irreducible diagrams are kept.
+     *
+     * @return <code>true</code> if reducible diagrams are dropped
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("process.filter.onePI")
+    @DefaultValue("false")
+    boolean isOnePI() throws ConfigurationException;
+
+    /**
+     * Whether self-energy insertions on external legs are dropped.
+     *
+     * @return <code>true</code> if external legs are on-shell
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("process.filter.onShell")
+    @DefaultValue("true")
+    boolean isOnShell() throws ConfigurationException;
+
+    /**
+     * Whether tadpole diagrams are dropped.
+     *
+     * @return <code>true</code> if tadpoles are dropped
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("process.filter.noTadpoles")
+    @DefaultValue("true")
+    boolean isNoTadpoles() throws ConfigurationException;
+
+    /**
+     * The file to which the diagrams are written, one per line, while
+     * they are generated. An empty value means that they are only
+     * counted. A resumed run writes the diagrams found after the
+     * restart only.
+     *
+     * @return the file name
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("process.output")
+    @DefaultValue("")
+    String getOutput() throws ConfigurationException;
+
+    /**
+     * The method by which the tree amplitude is evaluated numerically,
+     * either <code>diagrams</code> for the sum over the Feynman
+     * diagrams or <code>berends-giele</code> for the recursion of
+     * off-shell currents, which scales much better with the number
+     * of legs.
+     *
+     * @return the method
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("process.amplitude")
+    @DefaultValue("diagrams")
+    String getAmplitude() throws ConfigurationException;
+}
@@ -0,0 +1,252 @@
+/*
+ * ScatteringProcess.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.model;
+
+import java.util.Arrays;
+
+import com.github.anyloop.chassis.ConfigurationException;
+
+/**
+ * A scattering process resolved against a {@link Model}.
+ *
+ * All external particles are treated as outgoing: an incoming
+ * particle is represented by its outgoing antiparticle. The incoming
+ * particles come first, followed by the outgoing ones.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class ScatteringProcess {
+
+    /**
+     * The model in which the process is defined.
+     */
+    private final Model model;
+
+    /**
+     * The field IDs of the external legs, all outgoing.
+     */
+    private final int[] externalFields;
+
+    /**
+     * The number of incoming particles.
+     */
+    private final int incomingCount;
+
+    /**
+     * The highest loop order.
+     */
+    private final int loops;
+
+    /**
+     * Whether only one-particle irreducible diagrams are kept.
+     */
+    private final boolean onePI;
+
+    /**
+     * Whether self-energies on external legs are dropped.
+     */
+    private final boolean onShell;
+
+    /**
+     * Whether tadpoles are dropped.
+     */
+    private final boolean noTadpoles;
+
+    /**
+     * Creates a process.
+     *
+     * @param theModel the model
+     * @param theExternalFields the (outgoing) external fields
+     * @param theIncomingCount the number of incoming particles
+     * @param theLoops the highest loop order
+     * @param isOnePI whether only 1PI diagrams are kept
+     * @param isOnShell whether external self-energies are dropped
+     * @param isNoTadpoles whether tadpoles are dropped
+     *
+     * @since 0.1.0
+     */
+    public ScatteringProcess(
+            final Model theModel,
+            final int[] theExternalFields,
+            final int theIncomingCount,
+            final int theLoops,
+            final boolean isOnePI,
+            final boolean isOnShell,
+            final boolean isNoTadpoles) {
+        this.model = theModel;
+        this.externalFields = Arrays.copyOf(
+            theExternalFields, theExternalFields.length);
+        this.incomingCount = theIncomingCount;
+        this.loops = theLoops;
+        this.onePI = isOnePI;
+        this.onShell = isOnShell;
+        this.noTadpoles = isNoTadpoles;
+    }
+
+    /**
+     * Resolves a process configuration against a model.
+     *
+     * @param config the process configuration
+     * @param model the model
+     * @return the resolved process
+     * @throws ConfigurationException if no particles are given, if a
+     *         particle is unknown or if the loop order is negative
+     *
+     * @since 0.1.0
+     */
+    public static ScatteringProcess fromConfig(
+            final ProcessConfig config,
+            final Model model) throws ConfigurationException {
+        final String[] in = config.getIncoming();
+        final String[] out = config.getOutgoing();
+
+        if (in.length + out.length == 0) {
+            throw new ConfigurationException("No process specified");
+        }
+        final int loops = config.getLoops();
+        if (loops < 0) {
+            throw new ConfigurationException(
+                "The number of loops must not be negative");
+        }
+
+        final int[] fields = new int[in.length + out.length];
+        for (int i = 0; i < in.length; ++i) {
+            fields[i] = model.getConjugate(model.getFieldId(in[i]));
+        }
+        for (int i = 0; i < out.length; ++i) {
+            fields[in.length + i] = model.getFieldId(out[i]);
+        }
+
+        return new ScatteringProcess(model, fields, in.length, loops,
+            config.isOnePI(), config.isOnShell(), config.isNoTadpoles());
+    }
+
+    /**
+     * Returns the model.
+     *
+     * @return the model of this process
+     *
+     * @since 0.1.0
+     */
+    public Model getModel() {
+        return this.model;
+    }
+
+    /**
+     * Returns the number of external legs.
+     *
+     * @return the number of external legs
+     *
+     * @since 0.1.0
+     */
+    public int getExternalCount() {
+        return this.externalFields.length;
+    }
+
+    /**
+     * Returns the (outgoing) field of an external leg.
+     *
+     * @param leg the index of the leg
+     * @return the field ID
+     *
+     * @since 0.1.0
+     */
+    public int getExternalField(final int leg) {
+        return this.externalFields[leg];
+    }
+
+    /**
+     * Returns the number of incoming particles.
+     *
+     * @return the number of incoming particles
+     *
+     * @since 0.1.0
+     */
+    public int getIncomingCount() {
+        return this.incomingCount;
+    }
+
+    /**
+     * Returns the highest loop order.
+     *
+     * @return the number of loops
+     *
+     * @since 0.1.0
+     */
+    public int getLoops() {
+        return this.loops;
+    }
+
+    /**
+     * Tells whether only one-particle irreducible diagrams are kept.
+     *
+     * @return the value of the filter option
+     *
+     * @since 0.1.0
+     */
+    public boolean isOnePI() {
+        return this.onePI;
+    }
+
+    /**
+     * Tells whether self-energy insertions on external legs are
+     * dropped.
+     *
+     * @return the value of the filter option
+     *
+     * @since 0.1.0
+     */
+    public boolean isOnShell() {
+        return this.onShell;
+    }
+
+    /**
+     * Tells whether tadpoles are dropped.
+     *
+     * @return the value of the filter option
+     *
+     * @since 0.1.0
+     */
+    public boolean isNoTadpoles() {
+        return this.noTadpoles;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < this.externalFields.length; ++i) {
+            if (i == this.incomingCount) {
+                sb.append(i == 0 ? "->" : " ->");
+            }
+            if (i > 0 || this.incomingCount == 0) {
+                sb.append(' ');
+            }
+            final int f = this.externalFields[i];
+            sb.append(this.model.getFieldName(
+                i < this.incomingCount ? this.model.getConjugate(f) : f));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * VertexIndex.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.model;
+
+import java.util.Arrays;
+
+/**
+ * Lookup table from the fields meeting at a vertex to the vertex
+ * types of a model.
+ *
+ * Each distinct multiset of fields is stored once as a sorted tuple
+ * (a <em>key</em>) in a flat array, and the keys are found through an
+ * open-addressing hash table over primitive arrays. The hash of a
+ * tuple does not depend on the order of its fields, so queries may
+ * list the fields in any order and need neither sorting nor
+ * allocation. Several vertex types with the same fields, e.g.
+ * different Lorentz structures of an effective operator, share one
+ * key.
+ *
+ * @since 0.1.0
+ */
+final class VertexIndex {
+
+    /**
+     * Marker for an empty slot of the hash table.
+     */
+    private static final int EMPTY = -1;
+
+    /**
+     * The sorted field tuples of all keys, stored one after another.
+     */
+    private final int[] keyFields;
+
+    /**
+     * The start of each key in {@link #keyFields}, with one extra
+     * entry marking the end of the last key.
+     */
+    private final int[] keyStart;
+
+    /**
+     * The vertex types of all keys, stored one after another.
+     */
+    private final int[] members;
+
+    /**
+     * The start of the vertex types of each key in {@link #members},
+     * with one extra entry marking the end of the last key.
+     */
+    private final int[] memberStart;
+
+    /**
+     * The key of each vertex type.
+     */
+    private final int[] keyOfType;
+
+    /**
+     * The hash table, mapping slots to keys or {@link #EMPTY}.
+     */
+    private final int[] slots;
+
+    /**
+     * The full hash of the key in each slot, to skip most mismatches
+     * without comparing tuples.
+     */
+    private final int[] slotHashes;
+
+    /**
+     * Builds the index.
+     *
+     * @param vertexFields the field IDs per vertex type
+     */
+    VertexIndex(final int[][] vertexFields) {
+        final int types = vertexFields.length;
+        int capacity = 4;
+        while (capacity < 2 * types) {
+            capacity <<= 1;
+        }
+        this.slots = new int[capacity];
+        this.slotHashes = new int[capacity];
+        Arrays.fill(this.slots, EMPTY);
+
+        int total = 0;
+        for (final int[] fields : vertexFields) {
+            total += fields.length;
+        }
+        final int[] keyData = new int[total];
+        final int[] starts = new int[types + 1];
+        final int[] keyOf = new int[types];
+        final int[] sizes = new int[types];
+        int keys = 0;
+
+        for (int t = 0; t < types; ++t) {
+            final int[] fields = vertexFields[t];
+            final int hash = hash(fields, fields.length);
+            int slot = hash & (capacity - 1);
+            int key = EMPTY;
+            while (this.slots[slot] != EMPTY) {
+                final int k = this.slots[slot];
+                if (this.slotHashes[slot] == hash && sameFields(
+                        keyData, starts[k], starts[k + 1],
+                        fields, fields.length)) {
+                    key = k;
+                    break;
+                }
+                slot = (slot + 1) & (capacity - 1);
+            }
+            if (key == EMPTY) {
+                key = keys++;
+                final int start = starts[key];
+                System.arraycopy(fields, 0, keyData, start, fields.length);
+                Arrays.sort(keyData, start, start + fields.length);
+                starts[key + 1] = start + fields.length;
+                this.slots[slot] = key;
+                this.slotHashes[slot] = hash;
+            }
+            keyOf[t] = key;
+            ++sizes[key];
+        }
+
+        this.keyFields = Arrays.copyOf(keyData, starts[keys]);
+        this.keyStart = Arrays.copyOf(starts, keys + 1);
+        this.keyOfType = keyOf;
+
+        final int[] memberStarts = new int[keys + 1];
+        for (int k = 0; k < keys; ++k) {
+            memberStarts[k + 1] = memberStarts[k] + sizes[k];
+            sizes[k] = 0;
+        }
+        final int[] all = new int[types];
+        for (int t = 0; t < types; ++t) {
+            final int k = keyOf[t];
+            all[memberStarts[k] + sizes[k]++] = t;
+        }
+        this.members = all;
+        this.memberStart = memberStarts;
+    }
+
+    /**
+     * Computes a hash of a multiset of fields, independent of the
+     * order of the fields.
+     *
+     * @param fields the fields
+     * @param count the number of fields used from the array
+     * @return the hash
+     */
+    private static int hash(final int[] fields, final int count) {
+        int sum = count * 0x9E3779B9;
+        for (int i = 0; i < count; ++i) {
+            // finaliser of MurmurHash3, so that summing mixes well
+            int h = fields[i] + 1;
+            h ^= h >>> 16;
+            h *= 0x85EBCA6B;
+            h ^= h >>> 13;
+            h *= 0xC2B2AE35;
+            h ^= h >>> 16;
+            sum += h;
+        }
+        return sum ^ (sum >>> 16);
+    }
+
+    /**
+     * Compares a sorted key with a multiset of fields in any order.
+     * Vertices have few legs, so counting the occurrences of each
+     * field is cheaper than sorting a copy.
+     *
+     * @param data the array holding the key
+     * @param start the start of the key
+     * @param end the end of the key
+     * @param fields the fields
+     * @param count the number of fields used from the array
+     * @return <code>true</code> if both contain the same fields
+     */
+    private static boolean sameFields(
+            final int[] data,
+            final int start,
+            final int end,
+            final int[] fields,
+            final int count) {
+        if (end - start != count) {
+            return false;
+        }
+        for (int i = 0; i < count; ++i) {
+            final int f = fields[i];
+            int inFields = 0;
+            for (int j = 0; j < count; ++j) {
+                if (fields[j] == f) {
+                    ++inFields;
+                }
+            }
+            int inKey = 0;
+            for (int j = start; j < end && data[j] <= f; ++j) {
+                if (data[j] == f) {
+                    ++inKey;
+                }
+            }
+            if (inFields != inKey) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the key of a multiset of fields.
+     *
+     * @param fields the fields, in any order
+     * @param count the number of fields used from the array
+     * @return the key or <code>-1</code> if no vertex has exactly
+     *         these fields
+     */
+    int find(final int[] fields, final int count) {
+        final int hash = hash(fields, count);
+        final int mask = this.slots.length - 1;
+        for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+            final int k = this.slots[slot];
+            if (k == EMPTY) {
+                return EMPTY;
+            }
+            if (this.slotHashes[slot] == hash && sameFields(
+                    this.keyFields, this.keyStart[k], this.keyStart[k + 1],
+                    fields, count)) {
+                return k;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of distinct keys.
+     *
+     * @return the number of keys
+     */
+    int getKeyCount() {
+        return this.keyStart.length - 1;
+    }
+
+    /**
+     * Returns the key of a vertex type.
+     *
+     * @param type the vertex type
+     * @return the key
+     */
+    int getKey(final int type) {
+        return this.keyOfType[type];
+    }
+
+    /**
+     * Returns the number of fields of a key.
+     *
+     * @param key the key
+     * @return the number of fields
+     */
+    int getKeyLength(final int key) {
+        return this.keyStart[key + 1] - this.keyStart[key];
+    }
+
+    /**
+     * Returns a field of a key.
+     *
+     * @param key the key
+     * @param i the position within the sorted tuple
+     * @return the field ID
+     */
+    int getKeyField(final int key, final int i) {
+        return this.keyFields[this.keyStart[key] + i];
+    }
+
+    /**
+     * Returns the number of vertex types with a key.
+     *
+     * @param key the key
+     * @return the number of vertex types
+     */
+    int getVertexCount(final int key) {
+        return this.memberStart[key + 1] - this.memberStart[key];
+    }
+
+    /**
+     * Returns a vertex type with a key.
+     *
+     * @param key the key
+     * @param i the index among the vertex types with this key
+     * @return the vertex type
+     */
+    int getVertex(final int key, final int i) {
+        return this.members[this.memberStart[key] + i];
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * LineWriter.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.pipeline;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * The stage at the end of a pipeline which writes each item as a line
+ * of text to a file.
+ *
+ * The stage has a single worker, so that the lines of different items
+ * are not mixed, and passes nothing on. Since the file is written
+ * while the earlier stages are still busy, writing overlaps with
+ * computing.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class LineWriter implements PipelineStage<Object, Void>,
+        Closeable {
+
+    private final Path file;
+
+    private final BufferedWriter writer;
+
+    /**
+     * Creates or truncates a file.
+     *
+     * @param theFile the file
+     * @throws IOException if the file cannot be created
+     *
+     * @since 0.1.0
+     */
+    public LineWriter(final Path theFile) throws IOException {
+        this.file = theFile;
+        this.writer = Files.newBufferedWriter(theFile, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the file.
+     *
+     * @return the file
+     *
+     * @since 0.1.0
+     */
+    public Path getFile() {
+        return this.file;
+    }
+
+    @Override
+    public String getName() {
+        return "write";
+    }
+
+    @Override
+    public void process(final Object item, final Consumer<? super Void> out)
+            throws IOException {
+        this.writer.write(String.valueOf(item));
+        this.writer.newLine();
+    }
+
+    @Override
+    public void finish(final Consumer<? super Void> out) throws IOException {
+        this.writer.flush();
+    }
+
+    @Override
+    public int getMaxWorkers() {
+        return 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.writer.close();
+    }
+}
@@ -0,0 +1,672 @@
+/*
+ * Pipeline.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.pipeline;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.anyloop.chassis.ClassHelper;
+import com.github.anyloop.chassis.ConfigurableRunnable;
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.chassis.Configurator;
+
+/**
+ * A source and a chain of stages connected by bounded queues.
+ *
+ * All steps run at the same time: the source on the calling thread,
+ * each stage on worker threads of its own. The worker threads given
+ * by the configuration are shared out in proportion to the weights of
+ * the source and the stages, but every step gets at least one thread
+ * and no stage more than it can use, and together they never get
+ * more threads than configured. If there are fewer threads than
+ * steps, the source and all stages run on the calling thread instead,
+ * each item passing through the whole chain before the source
+ * produces the next one. A step blocks when the queue to the next one
+ * is full, so that the items in flight never exceed the capacity of
+ * the queues plus one per thread, however many the source produces.
+ * A thread of a {@link ForkJoinPool} blocks through a
+ * {@link ForkJoinPool.ManagedBlocker}, so that its pool may start
+ * another thread meanwhile. The items passed on by the last stage are
+ * counted and dropped.
+ *
+ * The queues are plain {@link BlockingQueue}s rather than a
+ * {@link java.util.concurrent.SubmissionPublisher}, which would hand
+ * every item to each of the workers of a stage instead of to one of
+ * them.
+ *
+ * If a step fails, the others stop at their next item and
+ * {@link #execute} throws the exception of the first failure.
+ *
+ * A pipeline for two stages is built like this:
+ * <pre>
+ * Pipeline p = Pipeline.from("diagrams", source)
+ *     .then(formatter)
+ *     .then(writer)
+ *     .build();
+ * </pre>
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class Pipeline implements ConfigurableRunnable {
+
+    /**
+     * The logger of this class.
+     */
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(Pipeline.class);
+
+    /**
+     * The marker telling a worker that there are no more items.
+     */
+    private static final Object END = new Object();
+
+    /**
+     * The number of milliseconds after which a blocked step checks
+     * whether another one has failed.
+     */
+    private static final long POLL_MILLIS = 100;
+
+    private final String name;
+
+    private final PipelineSource<Object> source;
+
+    private final List<PipelineStage<Object, Object>> stages;
+
+    private PipelineConfig config;
+
+    /**
+     * The number of items passed on by each step of the last run.
+     */
+    private volatile long[] counts;
+
+    private Pipeline(
+            final String theName,
+            final PipelineSource<Object> theSource,
+            final List<PipelineStage<Object, Object>> theStages) {
+        this.name = theName;
+        this.source = theSource;
+        this.stages = theStages;
+        this.counts = new long[theStages.size() + 1];
+    }
+
+    /**
+     * Starts building a pipeline.
+     *
+     * @param <T> the type of the items of the source
+     * @param name the name of the pipeline
+     * @param source the source
+     * @return the builder, to which the stages are to be added
+     *
+     * @since 0.1.0
+     */
+    public static <T> Builder<T> from(
+            final String name,
+            final PipelineSource<? extends T> source) {
+        return new Builder<>(name, source);
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public String getVersion() {
+        return ClassHelper.getVersion(Pipeline.class);
+    }
+
+    @Override
+    public void init(final Configurator configurator) {
+        this.config = configurator.create(PipelineConfig.class);
+    }
+
+    @Override
+    public void run() {
+        try {
+            this.execute(this.config);
+        } catch (ConfigurationException ex) {
+            LOGGER.error("Configuration failed", ex);
+        } catch (IOException ex) {
+            LOGGER.error("Pipeline " + this.name + " failed", ex);
+        }
+    }
+
+    @Override
+    public void terminate() { }
+
+    /**
+     * Shares out worker threads.
+     *
+     * @param jobs the number of threads
+     * @param weights the positive weight of each step
+     * @param max the largest number of threads of each step
+     * @return the number of threads of each step, at least one, and
+     *         no more than <code>jobs</code> in total unless there are
+     *         fewer threads than steps
+     */
+    static int[] share(final int jobs, final int[] weights, final int[] max) {
+        long total = 0;
+        for (final int w : weights) {
+            if (w < 1) {
+                throw new IllegalArgumentException(
+                    "Weights must be positive");
+            }
+            total += w;
+        }
+        final int[] workers = new int[weights.length];
+        long used = 0;
+        for (int i = 0; i < weights.length; ++i) {
+            final long share = Math.round((double) jobs * weights[i] / total);
+            workers[i] = (int) Math.max(1, Math.min(max[i], share));
+            used += workers[i];
+        }
+        // rounding up may have given out too many
+        while (used > jobs) {
+            int largest = 0;
+            for (int i = 1; i < workers.length; ++i) {
+                if (workers[i] > workers[largest]) {
+                    largest = i;
+                }
+            }
+            if (workers[largest] == 1) {
+                break;
+            }
+            --workers[largest];
+            --used;
+        }
+        return workers;
+    }
+
+    /**
+     * Runs the source and the stages with the configured threads and
+     * queues until all items have passed through.
+     *
+     * @param configuration the configuration
+     * @return the number of items passed on by the last stage
+     * @throws ConfigurationException if the configuration is invalid
+     * @throws IOException if a step fails or the calling thread is
+     *         interrupted
+     *
+     * @since 0.1.0
+     */
+    public long execute(final PipelineConfig configuration)
+            throws ConfigurationException, IOException {
+        int jobs = configuration.getJobs();
+        if (jobs < 1) {
+            jobs = Runtime.getRuntime().availableProcessors();
+        }
+        final int buffer = configuration.getBuffer();
+        if (buffer < 1) {
+            throw new ConfigurationException(
+                "pipeline.buffer must be positive");
+        }
+        return this.execute(jobs, buffer);
+    }
+
+    /**
+     * Runs the source and the stages until all items have passed
+     * through.
+     *
+     * @param jobs the number of threads to be shared out, all steps
+     *        running on the calling thread if there are fewer threads
+     *        than steps
+     * @param buffer the capacity of each queue
+     * @return the number of items passed on by the last stage
+     * @throws IOException if a step fails or the calling thread is
+     *         interrupted
+     * @throws IllegalArgumentException if the capacity is not positive
+     *
+     * @since 0.1.0
+     */
+    public long execute(final int jobs, final int buffer) throws IOException {
+        final int n = this.stages.size();
+        if (jobs < n + 1) {
+            return this.executeInline();
+        }
+        final int[] weights = new int[n + 1];
+        final int[] max = new int[n + 1];
+        weights[0] = this.source.getWeight();
+        max[0] = Integer.MAX_VALUE;
+        for (int i = 0; i < n; ++i) {
+            weights[i + 1] = this.stages.get(i).getWeight();
+            max[i + 1] = this.stages.get(i).getMaxWorkers();
+        }
+        final int[] workers = share(jobs, weights, max);
+
+        final Run run = new Run(workers, buffer);
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            final int stage = i;
+            for (int k = 0; k < workers[i + 1]; ++k) {
+                final Thread thread = new Thread(() -> run.work(stage),
+                    this.name + "-" + this.stages.get(i).getName() + "-" + k);
+                thread.setDaemon(true);
+                threads.add(thread);
+            }
+        }
+        LOGGER.debug("Pipeline " + this.name + " uses "
+            + Arrays.toString(workers) + " workers");
+        threads.forEach(Thread::start);
+
+        try {
+            this.source.emit(workers[0], item -> run.put(0, item));
+            run.end(0);
+        } catch (Cancelled ex) {
+            // a stage has failed
+        } catch (IOException | RuntimeException | Error ex) {
+            run.fail("source", ex);
+        }
+        try {
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException ex) {
+            run.fail("source", ex);
+            Thread.currentThread().interrupt();
+        }
+
+        final long[] c = new long[n + 1];
+        for (int i = 0; i <= n; ++i) {
+            c[i] = run.counts[i].sum();
+        }
+        this.counts = c;
+        if (run.failure != null) {
+            throw run.failure;
+        }
+        return c[n];
+    }
+
+    /**
+     * Runs the source and the stages on the calling thread, passing
+     * each item through the whole chain as soon as it is produced.
+     *
+     * @return the number of items passed on by the last stage
+     * @throws IOException if a step fails
+     */
+    private long executeInline() throws IOException {
+        final int n = this.stages.size();
+        final long[] c = new long[n + 1];
+        final List<Consumer<Object>> outs =
+            new ArrayList<>(Collections.nCopies(n + 1, null));
+        outs.set(n, item -> ++c[n]);
+        for (int i = n - 1; i >= 0; --i) {
+            final int step = i;
+            final PipelineStage<Object, Object> s = this.stages.get(i);
+            final Consumer<Object> next = outs.get(i + 1);
+            outs.set(i, item -> {
+                ++c[step];
+                try {
+                    s.process(item, next);
+                } catch (IOException | RuntimeException | Error ex) {
+                    throw StepFailure.of(s.getName(), ex);
+                }
+            });
+        }
+        LOGGER.debug("Pipeline " + this.name + " runs on one thread");
+
+        IOException failure = null;
+        try {
+            this.source.emit(1, outs.get(0));
+            for (int i = 0; i < n; ++i) {
+                final PipelineStage<Object, Object> s = this.stages.get(i);
+                try {
+                    s.finish(outs.get(i + 1));
+                } catch (IOException | RuntimeException | Error ex) {
+                    throw StepFailure.of(s.getName(), ex);
+                }
+            }
+        } catch (StepFailure ex) {
+            failure = this.failure(ex.step, ex.getCause());
+        } catch (IOException | RuntimeException | Error ex) {
+            failure = this.failure("source", ex);
+        }
+        this.counts = c;
+        if (failure != null) {
+            throw failure;
+        }
+        return c[n];
+    }
+
+    /**
+     * Creates the exception reporting the failure of a step.
+     *
+     * @param step the name of the step
+     * @param cause the exception thrown by the step
+     * @return the exception
+     */
+    private IOException failure(final String step, final Throwable cause) {
+        final String message = "Pipeline " + this.name + ": " + step
+            + " failed";
+        return cause instanceof InterruptedException
+            ? (IOException) new InterruptedIOException(message)
+                .initCause(cause)
+            : new IOException(message, cause);
+    }
+
+    /**
+     * Returns the number of items passed on by a step of the last
+     * run.
+     *
+     * @param step zero for the source or one more than the index of
+     *        the stage
+     * @return the number of items
+     *
+     * @since 0.1.0
+     */
+    public long getCount(final int step) {
+        return this.counts[step];
+    }
+
+    /**
+     * Returns the number of stages.
+     *
+     * @return the number of stages, not counting the source
+     *
+     * @since 0.1.0
+     */
+    public int getStageCount() {
+        return this.stages.size();
+    }
+
+    /**
+     * The state of a single call of {@link #execute}.
+     */
+    private final class Run {
+
+        /**
+         * The queue in front of each stage.
+         */
+        private final List<BlockingQueue<Object>> queues;
+
+        /**
+         * The number of threads of each step.
+         */
+        private final int[] workers;
+
+        /**
+         * The number of workers of each stage still processing items.
+         */
+        private final AtomicInteger[] active;
+
+        /**
+         * The number of items passed on by each step.
+         */
+        private final LongAdder[] counts;
+
+        /**
+         * The first failure or <code>null</code>.
+         */
+        private volatile IOException failure;
+
+        Run(final int[] theWorkers, final int buffer) {
+            final int n = Pipeline.this.stages.size();
+            this.workers = theWorkers;
+            this.queues = new ArrayList<>(n);
+            this.active = new AtomicInteger[n];
+            this.counts = new LongAdder[n + 1];
+            for (int i = 0; i < n; ++i) {
+                this.queues.add(new ArrayBlockingQueue<>(buffer));
+                this.active[i] = new AtomicInteger(theWorkers[i + 1]);
+            }
+            for (int i = 0; i <= n; ++i) {
+                this.counts[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Processes the items of a stage.
+         *
+         * @param stage the index of the stage
+         */
+        void work(final int stage) {
+            final PipelineStage<Object, Object> s =
+                Pipeline.this.stages.get(stage);
+            final BlockingQueue<Object> in = this.queues.get(stage);
+            final Consumer<Object> out = item -> this.put(stage + 1, item);
+            try {
+                for (Object item = this.take(in); item != END;
+                        item = this.take(in)) {
+                    s.process(item, out);
+                }
+                if (this.active[stage].decrementAndGet() == 0) {
+                    s.finish(out);
+                    this.end(stage + 1);
+                }
+            } catch (Cancelled ex) {
+                // another step has failed
+            } catch (IOException | RuntimeException | Error ex) {
+                this.fail(s.getName(), ex);
+            }
+        }
+
+        /**
+         * Passes an item on from a step.
+         *
+         * @param step the step
+         * @param item the item
+         */
+        void put(final int step, final Object item) {
+            this.counts[step].increment();
+            if (step < this.queues.size()) {
+                this.offer(this.queues.get(step), item);
+            }
+        }
+
+        /**
+         * Tells the next stage that a step has passed on all items.
+         *
+         * @param step the step
+         */
+        void end(final int step) {
+            if (step < this.queues.size()) {
+                for (int k = 0; k < this.workers[step + 1]; ++k) {
+                    this.offer(this.queues.get(step), END);
+                }
+            }
+        }
+
+        private void offer(final BlockingQueue<Object> queue, final Object o) {
+            try {
+                ForkJoinPool.managedBlock(new Handoff(queue, o));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                this.fail(Thread.currentThread().getName(), ex);
+                throw new Cancelled();
+            }
+        }
+
+        private Object take(final BlockingQueue<Object> queue) {
+            try {
+                Object item;
+                while ((item = queue.poll(
+                        POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                    if (this.failure != null) {
+                        throw new Cancelled();
+                    }
+                }
+                return item;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                this.fail(Thread.currentThread().getName(), ex);
+                throw new Cancelled();
+            }
+        }
+
+        /**
+         * Records a failure unless there has been one before.
+         *
+         * @param step the name of the failed step
+         * @param cause the exception
+         */
+        synchronized void fail(final String step, final Throwable cause) {
+            if (this.failure == null) {
+                this.failure = Pipeline.this.failure(step, cause);
+            }
+        }
+
+        /**
+         * Puts an item into a queue, waiting while it is full.
+         */
+        private final class Handoff implements ForkJoinPool.ManagedBlocker {
+
+            private final BlockingQueue<Object> queue;
+
+            private final Object item;
+
+            private boolean done;
+
+            Handoff(
+                    final BlockingQueue<Object> theQueue,
+                    final Object theItem) {
+                this.queue = theQueue;
+                this.item = theItem;
+            }
+
+            @Override
+            public boolean block() throws InterruptedException {
+                if (!this.done) {
+                    this.done = this.queue.offer(
+                        this.item, POLL_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (!this.done && Run.this.failure != null) {
+                    throw new Cancelled();
+                }
+                return this.done;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                if (!this.done) {
+                    this.done = this.queue.offer(this.item);
+                }
+                return this.done;
+            }
+        }
+    }
+
+    /**
+     * Thrown when a step stops because another one has failed.
+     */
+    private static final class Cancelled extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        Cancelled() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Carries the failure of a stage run on the calling thread through
+     * the consumers of the steps before it.
+     */
+    private static final class StepFailure extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The name of the failed step.
+         */
+        private final String step;
+
+        private StepFailure(final String theStep, final Throwable cause) {
+            super(null, cause, false, false);
+            this.step = theStep;
+        }
+
+        static StepFailure of(final String step, final Throwable cause) {
+            return cause instanceof StepFailure
+                ? (StepFailure) cause : new StepFailure(step, cause);
+        }
+    }
+
+    /**
+     * Collects the source and the stages of a pipeline.
+     *
+     * @param <T> the type of the items passed on by the last stage
+     *        added so far
+     *
+     * @since 0.1.0
+     */
+    public static final class Builder<T> {
+
+        private final String name;
+
+        private final PipelineSource<Object> source;
+
+        private final List<PipelineStage<Object, Object>> stages =
+            new ArrayList<>();
+
+        @SuppressWarnings("unchecked")
+        private Builder(
+                final String theName,
+                final PipelineSource<?> theSource) {
+            this.name = theName;
+            this.source = (PipelineSource<Object>) theSource;
+        }
+
+        /**
+         * Appends a stage.
+         *
+         * @param <O> the type of the items passed on by the stage
+         * @param stage the stage
+         * @return this builder, typed for the next stage
+         *
+         * @since 0.1.0
+         */
+        @SuppressWarnings("unchecked")
+        public <O> Builder<O> then(
+                final PipelineStage<? super T, ? extends O> stage) {
+            this.stages.add((PipelineStage<Object, Object>) stage);
+            return (Builder<O>) this;
+        }
+
+        /**
+         * Creates the pipeline.
+         *
+         * @return the pipeline
+         *
+         * @since 0.1.0
+         */
+        public Pipeline build() {
+            return new Pipeline(
+                this.name, this.source, new ArrayList<>(this.stages));
+        }
+    }
+}
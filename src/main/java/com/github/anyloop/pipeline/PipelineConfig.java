@@ -0,0 +1,69 @@
+/*
+ * PipelineConfig.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.pipeline;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.chassis.annotations.ConfigProperty;
+import com.github.anyloop.chassis.annotations.DefaultValue;
+
+/**
+ * Configuration of the pipelines.
+ *
+ * In YAML notation:
+ * <pre>
+ * jobs: 8
+ * pipeline:
+ *   buffer: 256
+ * </pre>
+ *
+ * The worker threads given by <code>jobs</code> are shared out among
+ * the source and the stages of a pipeline, which never uses more. If
+ * there are fewer than steps, the whole pipeline runs on one thread.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public interface PipelineConfig {
+
+    /**
+     * The number of worker threads; zero or less means one per
+     * available processor.
+     *
+     * @return the number of threads
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("jobs")
+    @DefaultValue("1")
+    int getJobs() throws ConfigurationException;
+
+    /**
+     * The number of items each queue between two stages can hold.
+     *
+     * @return the capacity of a queue
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("pipeline.buffer")
+    @DefaultValue("256")
+    int getBuffer() throws ConfigurationException;
+}
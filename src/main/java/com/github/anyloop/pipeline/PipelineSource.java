@@ -0,0 +1,63 @@
+/*
+ * PipelineSource.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.pipeline;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * The producer of the items at the start of a {@link Pipeline}.
+ *
+ * @param <T> the type of the items
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+@FunctionalInterface
+public interface PipelineSource<T> {
+
+    /**
+     * Produces all items. The consumer blocks while the first stage
+     * is busy and may be called from several threads at once.
+     *
+     * @param workers the number of threads the source may use
+     * @param out the consumer receiving the items
+     * @throws IOException if the items cannot be produced
+     *
+     * @since 0.1.0
+     */
+    void emit(int workers, Consumer<? super T> out) throws IOException;
+
+    /**
+     * Returns the share of the worker threads of the pipeline given
+     * to the source, relative to the weights of the stages.
+     *
+     * @return a positive weight
+     *
+     * @since 0.1.0
+     */
+    default int getWeight() {
+        return 1;
+    }
+}
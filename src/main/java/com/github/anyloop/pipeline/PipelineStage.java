@@ -0,0 +1,101 @@
+/*
+ * PipelineStage.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.pipeline;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * A step of a {@link Pipeline} which turns each item into any number
+ * of items for the next step.
+ *
+ * {@link #process} is called concurrently by the workers of the stage
+ * unless {@link #getMaxWorkers} is one, and must be thread-safe
+ * accordingly.
+ *
+ * @param <I> the type of the items received
+ * @param <O> the type of the items passed on
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public interface PipelineStage<I, O> {
+
+    /**
+     * Returns the name of the stage, which is used for the worker
+     * threads and in messages.
+     *
+     * @return the name
+     *
+     * @since 0.1.0
+     */
+    String getName();
+
+    /**
+     * Processes an item.
+     *
+     * @param item the item
+     * @param out the consumer passing items on to the next stage,
+     *        which blocks while the next stage is busy
+     * @throws IOException if the item cannot be processed
+     *
+     * @since 0.1.0
+     */
+    void process(I item, Consumer<? super O> out) throws IOException;
+
+    /**
+     * Finishes the stage after all items have been processed. This is
+     * called once, by the last worker of the stage.
+     *
+     * @param out the consumer passing items on to the next stage
+     * @throws IOException if the stage cannot be finished
+     *
+     * @since 0.1.0
+     */
+    default void finish(Consumer<? super O> out) throws IOException { }
+
+    /**
+     * Returns the share of the worker threads of the pipeline given
+     * to the stage, relative to the weights of the other stages.
+     *
+     * @return a positive weight
+     *
+     * @since 0.1.0
+     */
+    default int getWeight() {
+        return 1;
+    }
+
+    /**
+     * Returns the largest number of workers the stage can use. Stages
+     * which write to a single file, for instance, return one.
+     *
+     * @return a positive number
+     *
+     * @since 0.1.0
+     */
+    default int getMaxWorkers() {
+        return Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * package-info.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+/**
+ * This package streams items through a chain of stages.
+ *
+ * A {@link com.github.anyloop.pipeline.Pipeline} connects a
+ * {@link com.github.anyloop.pipeline.PipelineSource} and a number of
+ * {@link com.github.anyloop.pipeline.PipelineStage}s by bounded queues.
+ * Every stage runs on worker threads of its own, so that later stages
+ * work on the first items while the source is still producing, and a
+ * full queue blocks the producer, so that no more than a few buffers
+ * of items are held in memory at any time.
+ */
+package com.github.anyloop.pipeline;
@@ -0,0 +1,268 @@
+/*
+ * FormFactor.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.pv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The label of a coefficient in the decomposition of a tensor integral.
+ *
+ * The tensor integral of rank <code>P</code> of an <code>N</code>-point
+ * function with the momenta <code>q_1, ..., q_(N-1)</code> is written as
+ * the sum of <code>T_(00...00 i_1...i_m) {g...g q_(i_1)...q_(i_m)}</code>
+ * over all numbers of pairs of zeros and all sorted indices, where the
+ * braces denote the sum over all different distributions of the
+ * <code>P</code> Lorentz indices. A form factor is given by the number
+ * of pairs and the sorted indices.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class FormFactor {
+
+    /**
+     * The number of pairs of zeros, i.e. of metric tensors.
+     */
+    private final int pairs;
+
+    /**
+     * The momentum indices, ascending.
+     */
+    private final int[] indices;
+
+    private FormFactor(final int thePairs, final int[] theIndices) {
+        this.pairs = thePairs;
+        this.indices = theIndices;
+    }
+
+    /**
+     * Returns a form factor.
+     *
+     * @param pairs the number of metric tensors
+     * @param indices the momentum indices, starting at one, in any order
+     * @return the form factor
+     *
+     * @since 0.1.0
+     */
+    public static FormFactor of(final int pairs, final int... indices) {
+        if (pairs < 0) {
+            throw new IllegalArgumentException(
+                "Negative number of metric tensors");
+        }
+        final int[] sorted = indices.clone();
+        Arrays.sort(sorted);
+        if (sorted.length > 0 && sorted[0] < 1) {
+            throw new IllegalArgumentException(
+                "Momentum indices start at one");
+        }
+        return new FormFactor(pairs, sorted);
+    }
+
+    /**
+     * Returns all form factors of a given rank.
+     *
+     * @param points the number of points
+     * @param rank the rank
+     * @return the form factors, ordered by the number of pairs and
+     *         then lexicographically
+     *
+     * @since 0.1.0
+     */
+    public static List<FormFactor> all(final int points, final int rank) {
+        final List<FormFactor> all = new ArrayList<>();
+        for (int pairs = 0; 2 * pairs <= rank; ++pairs) {
+            final int m = rank - 2 * pairs;
+            if (m > 0 && points < 2) {
+                continue;
+            }
+            final int[] indices = new int[m];
+            Arrays.fill(indices, 1);
+            while (true) {
+                all.add(new FormFactor(pairs, indices.clone()));
+                // next non-decreasing sequence
+                int k = m - 1;
+                while (k >= 0 && indices[k] == points - 1) {
+                    --k;
+                }
+                if (k < 0) {
+                    break;
+                }
+                final int v = indices[k] + 1;
+                for (int l = k; l < m; ++l) {
+                    indices[l] = v;
+                }
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Returns the number of metric tensors.
+     *
+     * @return the number of pairs of zeros
+     *
+     * @since 0.1.0
+     */
+    public int getPairs() {
+        return this.pairs;
+    }
+
+    /**
+     * Returns the momentum indices.
+     *
+     * @return the indices, ascending
+     *
+     * @since 0.1.0
+     */
+    public int[] getIndices() {
+        return this.indices.clone();
+    }
+
+    /**
+     * Returns the rank.
+     *
+     * @return twice the number of pairs plus the number of indices
+     *
+     * @since 0.1.0
+     */
+    public int getRank() {
+        return 2 * this.pairs + this.indices.length;
+    }
+
+    /**
+     * Returns how often an index occurs.
+     *
+     * @param index the index
+     * @return the multiplicity
+     *
+     * @since 0.1.0
+     */
+    public int count(final int index) {
+        int n = 0;
+        for (final int i : this.indices) {
+            if (i == index) {
+                ++n;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Returns the largest index.
+     *
+     * @return the largest index or zero if there are none
+     */
+    int maxIndex() {
+        return this.indices.length == 0
+            ? 0 : this.indices[this.indices.length - 1];
+    }
+
+    /**
+     * Returns the form factor with an index added.
+     *
+     * @param index the index
+     * @return the new form factor
+     */
+    FormFactor with(final int index) {
+        final int[] r = Arrays.copyOf(this.indices, this.indices.length + 1);
+        r[this.indices.length] = index;
+        Arrays.sort(r);
+        return new FormFactor(this.pairs, r);
+    }
+
+    /**
+     * Returns the form factor with one occurrence of an index removed.
+     *
+     * @param index an index that occurs
+     * @param pairDelta the change of the number of pairs
+     * @return the new form factor
+     */
+    FormFactor without(final int index, final int pairDelta) {
+        final int[] r = new int[this.indices.length - 1];
+        boolean removed = false;
+        int k = 0;
+        for (final int i : this.indices) {
+            if (i == index && !removed) {
+                removed = true;
+            } else {
+                r[k++] = i;
+            }
+        }
+        return new FormFactor(this.pairs + pairDelta, r);
+    }
+
+    /**
+     * Returns the form factor with a different number of pairs.
+     *
+     * @param newPairs the number of pairs
+     * @return the new form factor
+     */
+    FormFactor withPairs(final int newPairs) {
+        return new FormFactor(newPairs, this.indices);
+    }
+
+    /**
+     * Relabels the indices after the momentum <code>q_n</code> was
+     * removed.
+     *
+     * @param n the removed index, which must not occur
+     * @return the form factor in the labelling of the pinched function
+     */
+    FormFactor pinch(final int n) {
+        final int[] r = new int[this.indices.length];
+        for (int k = 0; k < r.length; ++k) {
+            r[k] = this.indices[k] > n ? this.indices[k] - 1 : this.indices[k];
+        }
+        return new FormFactor(this.pairs, r);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (!(obj instanceof FormFactor)) {
+            return false;
+        }
+        final FormFactor other = (FormFactor) obj;
+        return this.pairs == other.pairs
+            && Arrays.equals(this.indices, other.indices);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.pairs + Arrays.hashCode(this.indices);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder s = new StringBuilder("T(");
+        for (int k = 0; k < this.pairs; ++k) {
+            s.append("00");
+        }
+        for (final int i : this.indices) {
+            s.append(i);
+        }
+        return s.append(')').toString();
+    }
+}
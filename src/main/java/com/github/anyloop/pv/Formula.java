@@ -0,0 +1,227 @@
+/*
+ * Formula.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.pv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.anyloop.finitefield.Rational;
+
+/**
+ * One recursion step of the reduction of a form factor: a sum of terms,
+ * each a rational number times a product of kinematic quantities times
+ * another form factor of the same function, of one of its pinches or
+ * the scalar integral.
+ *
+ * The kinematic quantities are encoded as <code>int</code>s with the
+ * kind in the bits above {@link #KIND_SHIFT} and up to two arguments
+ * of eight bits below.
+ *
+ * @since 0.1.0
+ */
+final class Formula {
+
+    /**
+     * The position of the kind of a kinematic quantity.
+     */
+    static final int KIND_SHIFT = 16;
+
+    /**
+     * The mask of an argument of a kinematic quantity.
+     */
+    static final int ARG_MASK = 0xff;
+
+    /**
+     * The element <code>(k, n)</code> of the inverse of the Gram matrix
+     * <code>Z_kn = 2 q_k.q_n</code>.
+     */
+    static final int INVERSE_GRAM = 1;
+
+    /**
+     * <code>f_n = q_n^2 - m_n^2 + m_0^2</code>.
+     */
+    static final int F = 2;
+
+    /**
+     * <code>m_0^2</code>.
+     */
+    static final int MASS = 3;
+
+    /**
+     * <code>1 / (d + c)</code>; the argument is <code>c</code> plus
+     * {@link #POLE_OFFSET}.
+     */
+    static final int POLE = 4;
+
+    /**
+     * The offset of the argument of {@link #POLE}.
+     */
+    static final int POLE_OFFSET = 128;
+
+    /**
+     * The coefficient of the pinch <code>n</code> in the reduction of a
+     * six-point function by the linear dependence of its momenta.
+     */
+    static final int NULL = 5;
+
+    /**
+     * The reference to a form factor of the same function.
+     */
+    static final int SELF = -1;
+
+    /**
+     * The reference to the scalar integral of the function.
+     */
+    static final int SCALAR = -2;
+
+    /**
+     * The numerators of the rational coefficients.
+     */
+    private final long[] numerators;
+
+    /**
+     * The denominators of the rational coefficients.
+     */
+    private final long[] denominators;
+
+    /**
+     * The kinematic quantities of each term.
+     */
+    private final int[][] quantities;
+
+    /**
+     * The function of each term: {@link #SELF}, {@link #SCALAR} or the
+     * index of the pinched denominator.
+     */
+    private final int[] pinches;
+
+    /**
+     * The form factor of each term, <code>null</code> for the scalar
+     * integral.
+     */
+    private final FormFactor[] references;
+
+    Formula(
+            final long[] theNumerators,
+            final long[] theDenominators,
+            final int[][] theQuantities,
+            final int[] thePinches,
+            final FormFactor[] theReferences) {
+        this.numerators = theNumerators;
+        this.denominators = theDenominators;
+        this.quantities = theQuantities;
+        this.pinches = thePinches;
+        this.references = theReferences;
+    }
+
+    static int quantity(final int kind, final int a, final int b) {
+        return kind << KIND_SHIFT | (a & ARG_MASK) << Byte.SIZE
+            | (b & ARG_MASK);
+    }
+
+    int size() {
+        return this.pinches.length;
+    }
+
+    long getNumerator(final int term) {
+        return this.numerators[term];
+    }
+
+    long getDenominator(final int term) {
+        return this.denominators[term];
+    }
+
+    int[] getQuantities(final int term) {
+        return this.quantities[term];
+    }
+
+    int getPinch(final int term) {
+        return this.pinches[term];
+    }
+
+    FormFactor getReference(final int term) {
+        return this.references[term];
+    }
+
+    /**
+     * Collects terms, adding up those which differ in their rational
+     * coefficient only.
+     */
+    static final class Builder {
+        /**
+         * The terms by their kinematic quantities and reference.
+         */
+        private final Map<List<Object>, Rational> terms =
+            new LinkedHashMap<>();
+
+        void add(
+                final Rational coefficient,
+                final int pinch,
+                final FormFactor reference,
+                final int... quantities) {
+            final int[] q = quantities.clone();
+            Arrays.sort(q);
+            final List<Object> key = new ArrayList<>();
+            key.add(pinch);
+            key.add(reference);
+            for (final int x : q) {
+                key.add(x);
+            }
+            this.terms.merge(key, coefficient, Rational::add);
+        }
+
+        Formula build() {
+            final List<Map.Entry<List<Object>, Rational>> entries =
+                new ArrayList<>();
+            for (final Map.Entry<List<Object>, Rational> e
+                    : this.terms.entrySet()) {
+                if (e.getValue().getNumerator().signum() != 0) {
+                    entries.add(e);
+                }
+            }
+            final int n = entries.size();
+            final long[] num = new long[n];
+            final long[] den = new long[n];
+            final int[][] quantities = new int[n][];
+            final int[] pinches = new int[n];
+            final FormFactor[] references = new FormFactor[n];
+            for (int t = 0; t < n; ++t) {
+                final List<Object> key = entries.get(t).getKey();
+                final Rational c = entries.get(t).getValue();
+                num[t] = c.getNumerator().longValueExact();
+                den[t] = c.getDenominator().longValueExact();
+                pinches[t] = (Integer) key.get(0);
+                references[t] = (FormFactor) key.get(1);
+                quantities[t] = new int[key.size() - 2];
+                for (int k = 2; k < key.size(); ++k) {
+                    quantities[t][k - 2] = (Integer) key.get(k);
+                }
+            }
+            return new Formula(num, den, quantities, pinches, references);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * FormulaGenerator.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.pv;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.anyloop.finitefield.Rational;
+
+/**
+ * Derives the reduction formulas.
+ *
+ * With <code>D_0 = k^2 - m_0^2</code>, <code>D_i = (k + q_i)^2 -
+ * m_i^2</code> and <code>2 q_k.k = D_k - D_0 - f_k</code>, contracting
+ * the tensor integral with a momentum or with the metric gives the
+ * recursions of Denner, Fortschr. Phys. 41 (1993) 307, which are used
+ * for up to five points:
+ * <pre>
+ * T_(00 M) = [2 m_0^2 T_M + T_M(0) + sum_k f_k T_(k M)]
+ *            / (2 (d + P - 1 - N))
+ * T_(k M)  = sum_n Zinv_kn [T_M(n) - T_M(0) - f_n T_M
+ *                           - 2 #n(M) T_(00 M\n)]
+ * </pre>
+ * where <code>T(n)</code> is the function without <code>D_n</code>.
+ * The function without <code>D_0</code> is expressed by the form
+ * factors with respect to the shifted loop momentum <code>k +
+ * q_1</code>. The momenta of a six-point function are linearly
+ * dependent in four dimensions, <code>sum_i a_i q_i = 0</code>, so
+ * that <code>sum_i a_i D_i - (sum_i a_i) D_0 = sum_i a_i f_i</code>,
+ * which reduces it to five-point functions without any recursion.
+ *
+ * @since 0.1.0
+ */
+final class FormulaGenerator {
+
+    private static final Rational ONE = Rational.of(1, 1);
+
+    private static final Rational HALF = Rational.of(1, 2);
+
+    private static final Rational MINUS_ONE = Rational.of(-1, 1);
+
+    /**
+     * Disable constructor. This class is purely static.
+     */
+    private FormulaGenerator() { }
+
+    /**
+     * Derives the formulas of all form factors of a given rank.
+     *
+     * @param points the number of points
+     * @param rank the rank
+     * @return the formulas
+     */
+    static Map<FormFactor, Formula> generate(
+            final int points,
+            final int rank) {
+        final Map<FormFactor, Formula> formulas = new LinkedHashMap<>();
+        for (final FormFactor m : FormFactor.all(points, rank)) {
+            formulas.put(m, formula(points, m));
+        }
+        return formulas;
+    }
+
+    private static Formula formula(final int n, final FormFactor m) {
+        final Formula.Builder b = new Formula.Builder();
+        final int rank = m.getRank();
+        if (n == PvReducer.MAX_POINTS) {
+            for (int i = 1; i < n; ++i) {
+                if (m.count(i) == 0) {
+                    b.add(ONE, i, m.pinch(i),
+                        Formula.quantity(Formula.NULL, i, 0));
+                }
+            }
+            addShifted(b, n, m, ONE, Formula.quantity(Formula.NULL, 0, 0));
+        } else if (rank == 0) {
+            b.add(ONE, Formula.SCALAR, null);
+        } else if (m.getPairs() > 0) {
+            final int pole = Formula.quantity(Formula.POLE,
+                rank - 1 - n + Formula.POLE_OFFSET, 0);
+            final FormFactor lower = m.withPairs(m.getPairs() - 1);
+            b.add(ONE, Formula.SELF, lower, pole,
+                Formula.quantity(Formula.MASS, 0, 0));
+            addShifted(b, n, lower, HALF, pole);
+            for (int k = 1; k < n; ++k) {
+                b.add(HALF, Formula.SELF, lower.with(k), pole,
+                    Formula.quantity(Formula.F, k, 0));
+            }
+        } else {
+            final int k = m.getIndices()[0];
+            final FormFactor rest = m.without(k, 0);
+            for (int i = 1; i < n; ++i) {
+                final int inverse = Formula.quantity(Formula.INVERSE_GRAM,
+                    Math.min(k, i), Math.max(k, i));
+                final int multiplicity = rest.count(i);
+                if (multiplicity == 0) {
+                    b.add(ONE, i, rest.pinch(i), inverse);
+                }
+                addShifted(b, n, rest, MINUS_ONE, inverse);
+                b.add(MINUS_ONE, Formula.SELF, rest, inverse,
+                    Formula.quantity(Formula.F, i, 0));
+                if (multiplicity > 0) {
+                    b.add(Rational.of(-2L * multiplicity, 1), Formula.SELF,
+                        rest.without(i, 1), inverse);
+                }
+            }
+        }
+        return b.build();
+    }
+
+    /**
+     * Adds a form factor of the function without <code>D_0</code>.
+     *
+     * @param b the formula
+     * @param n the number of points of the unpinched function
+     * @param m the form factor in the labelling of the unpinched
+     *        function
+     * @param factor the rational factor
+     * @param quantities the kinematic factors
+     */
+    private static void addShifted(
+            final Formula.Builder b,
+            final int n,
+            final FormFactor m,
+            final Rational factor,
+            final int... quantities) {
+        if (n == 1) {
+            // no scaleless zero-point functions
+            return;
+        }
+        shifted(n, m).forEach((reference, c) ->
+            b.add(factor.multiply(c), 0, reference, quantities));
+    }
+
+    /**
+     * Expresses a form factor of the function without <code>D_0</code>
+     * by those with respect to the loop momentum <code>k' = k +
+     * q_1</code> and the momenta <code>q_(l+1) - q_1</code>.
+     *
+     * Inserting <code>a.k = a.k' - a.q_1</code> into
+     * <code>(a.k)^R</code> for an auxiliary vector <code>a</code> and
+     * comparing the coefficients of <code>(a^2)^j prod_i
+     * (a.q_i)^(m_i)</code> gives the form factor as a sum over all
+     * those of the shifted function whose indices <code>l</code>
+     * occur at least <code>m_(l+1)</code> times.
+     *
+     * @param n the number of points of the unpinched function
+     * @param m the form factor in the labelling of the unpinched
+     *        function
+     * @return the form factors of the shifted function and their
+     *         coefficients
+     */
+    static Map<FormFactor, Rational> shifted(
+            final int n,
+            final FormFactor m) {
+        final int rank = m.getRank();
+        final int first = m.count(1);
+        final Rational sign = Rational.of(first % 2 == 0 ? 1 : -1, 1);
+        final Map<FormFactor, Rational> out = new LinkedHashMap<>();
+        final int slots = n - 2;
+        for (int extra = 0; extra <= first; ++extra) {
+            if (slots == 0 && extra > 0) {
+                break;
+            }
+            final int s = rank - first + extra;
+            for (final int[] e : compositions(extra, slots)) {
+                final List<Integer> indices = new ArrayList<>();
+                long ways = 1;
+                for (int l = 1; l <= slots; ++l) {
+                    final int need = m.count(l + 1);
+                    final int have = need + e[l - 1];
+                    for (int k = 0; k < have; ++k) {
+                        indices.add(l);
+                    }
+                    ways *= binomial(have, need);
+                }
+                final int[] array = new int[indices.size()];
+                for (int k = 0; k < array.length; ++k) {
+                    array[k] = indices.get(k);
+                }
+                final FormFactor reference =
+                    FormFactor.of(m.getPairs(), array);
+                out.put(reference, sign
+                    .multiply(Rational.of(binomial(rank, s) * ways, 1))
+                    .multiply(multiplicity(reference))
+                    .multiply(inverse(multiplicity(m))));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Returns all ways to write a number as an ordered sum of
+     * non-negative parts.
+     */
+    private static List<int[]> compositions(final int total, final int parts) {
+        final List<int[]> out = new ArrayList<>();
+        if (parts == 0) {
+            if (total == 0) {
+                out.add(new int[0]);
+            }
+            return out;
+        }
+        final int[] current = new int[parts];
+        compose(total, 0, current, out);
+        return out;
+    }
+
+    private static void compose(
+            final int left,
+            final int position,
+            final int[] current,
+            final List<int[]> out) {
+        if (position == current.length - 1) {
+            current[position] = left;
+            out.add(current.clone());
+            return;
+        }
+        for (int k = 0; k <= left; ++k) {
+            current[position] = k;
+            compose(left - k, position + 1, current, out);
+        }
+    }
+
+    /**
+     * Returns the number of different terms of the tensor structure
+     * of a form factor, <code>P! / (2^j j! prod_i m_i!)</code>.
+     *
+     * @param m the form factor
+     * @return the number of terms
+     */
+    static Rational multiplicity(final FormFactor m) {
+        long denominator = factorial(m.getPairs()) << m.getPairs();
+        for (int i = 1; i <= m.maxIndex(); ++i) {
+            denominator *= factorial(m.count(i));
+        }
+        return Rational.of(factorial(m.getRank()), denominator);
+    }
+
+    private static Rational inverse(final Rational r) {
+        return Rational.of(r.getDenominator(), r.getNumerator());
+    }
+
+    private static long factorial(final int n) {
+        long f = 1;
+        for (int k = 2; k <= n; ++k) {
+            f *= k;
+        }
+        return f;
+    }
+
+    private static long binomial(final int n, final int k) {
+        return factorial(n) / (factorial(k) * factorial(n - k));
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * FormulaTable.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.pv;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The reduction formulas of all form factors of one number of points
+ * and one rank.
+ *
+ * On disk, a table consists of a header, an index which gives the
+ * position of the formula of each form factor and the formulas
+ * themselves. A table read from disk is mapped into memory and each
+ * formula is decoded when it is first looked up.
+ *
+ * Instances are thread-safe.
+ *
+ * @since 0.1.0
+ */
+final class FormulaTable {
+
+    /**
+     * The first four bytes of a table file.
+     */
+    private static final int MAGIC = 0x616c7076;
+
+    /**
+     * The version of the file format and of the formulas; tables of
+     * another version are derived again.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The number of points.
+     */
+    private final int points;
+
+    /**
+     * The rank.
+     */
+    private final int rank;
+
+    /**
+     * The decoded formulas.
+     */
+    private final Map<FormFactor, Formula> formulas;
+
+    /**
+     * The position of each encoded formula, empty for a table which was
+     * not read from disk.
+     */
+    private final Map<FormFactor, Integer> positions;
+
+    /**
+     * The encoded formulas or <code>null</code>.
+     */
+    private final ByteBuffer data;
+
+    private FormulaTable(
+            final int thePoints,
+            final int theRank,
+            final Map<FormFactor, Formula> theFormulas,
+            final Map<FormFactor, Integer> thePositions,
+            final ByteBuffer theData) {
+        this.points = thePoints;
+        this.rank = theRank;
+        this.formulas = new ConcurrentHashMap<>(theFormulas);
+        this.positions = thePositions;
+        this.data = theData;
+    }
+
+    /**
+     * Derives a table.
+     *
+     * @param points the number of points
+     * @param rank the rank
+     * @return the table
+     */
+    static FormulaTable generate(final int points, final int rank) {
+        return new FormulaTable(points, rank,
+            FormulaGenerator.generate(points, rank), Map.of(), null);
+    }
+
+    /**
+     * Returns the number of form factors.
+     *
+     * @return the number of formulas
+     */
+    int size() {
+        return Math.max(this.formulas.size(), this.positions.size());
+    }
+
+    /**
+     * Looks up the formula of a form factor.
+     *
+     * @param m the form factor
+     * @return the formula or <code>null</code> if there is no such form
+     *         factor
+     */
+    Formula get(final FormFactor m) {
+        final Formula f = this.formulas.get(m);
+        if (f != null || !this.positions.containsKey(m)) {
+            return f;
+        }
+        return this.formulas.computeIfAbsent(m, this::decode);
+    }
+
+    private Formula decode(final FormFactor m) {
+        final ByteBuffer in = this.data.duplicate();
+        in.position(this.positions.get(m));
+        final int n = in.getInt();
+        final long[] num = new long[n];
+        final long[] den = new long[n];
+        final int[][] quantities = new int[n][];
+        final int[] pinches = new int[n];
+        final FormFactor[] references = new FormFactor[n];
+        for (int t = 0; t < n; ++t) {
+            num[t] = in.getLong();
+            den[t] = in.getLong();
+            pinches[t] = in.getInt();
+            if (pinches[t] != Formula.SCALAR) {
+                references[t] = readFormFactor(in);
+            }
+            quantities[t] = new int[in.getInt()];
+            for (int k = 0; k < quantities[t].length; ++k) {
+                quantities[t][k] = in.getInt();
+            }
+        }
+        return new Formula(num, den, quantities, pinches, references);
+    }
+
+    private static FormFactor readFormFactor(final ByteBuffer in) {
+        final int pairs = in.getInt();
+        final int[] indices = new int[in.getInt()];
+        for (int k = 0; k < indices.length; ++k) {
+            indices[k] = in.getInt();
+        }
+        return FormFactor.of(pairs, indices);
+    }
+
+    private static void writeFormFactor(
+            final DataOutputStream out,
+            final FormFactor m) throws IOException {
+        out.writeInt(m.getPairs());
+        final int[] indices = m.getIndices();
+        out.writeInt(indices.length);
+        for (final int i : indices) {
+            out.writeInt(i);
+        }
+    }
+
+    /**
+     * Writes the table to a temporary file which is then moved into
+     * place, so that concurrent runs never read a partial table.
+     *
+     * @param file the file
+     * @throws IOException if the file cannot be written
+     */
+    void store(final Path file) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final DataOutputStream b = new DataOutputStream(body);
+        final Map<FormFactor, Integer> offsets = new HashMap<>();
+        for (final FormFactor m : FormFactor.all(this.points, this.rank)) {
+            offsets.put(m, b.size());
+            final Formula f = this.get(m);
+            b.writeInt(f.size());
+            for (int t = 0; t < f.size(); ++t) {
+                b.writeLong(f.getNumerator(t));
+                b.writeLong(f.getDenominator(t));
+                b.writeInt(f.getPinch(t));
+                if (f.getPinch(t) != Formula.SCALAR) {
+                    writeFormFactor(b, f.getReference(t));
+                }
+                final int[] q = f.getQuantities(t);
+                b.writeInt(q.length);
+                for (final int x : q) {
+                    b.writeInt(x);
+                }
+            }
+        }
+        b.flush();
+
+        final Path parent = file.toAbsolutePath().getParent();
+        final Path tmp = Files.createTempFile(parent, ".pv", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(this.points);
+                out.writeInt(this.rank);
+                out.writeInt(offsets.size());
+                for (final FormFactor m
+                        : FormFactor.all(this.points, this.rank)) {
+                    writeFormFactor(out, m);
+                    out.writeInt(offsets.get(m));
+                }
+                body.writeTo(out);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Reads a table written by {@link #store}.
+     *
+     * @param file the file
+     * @param points the expected number of points
+     * @param rank the expected rank
+     * @return the table
+     * @throws IOException if the file cannot be read, is malformed or
+     *         of another version
+     */
+    static FormulaTable load(
+            final Path file,
+            final int points,
+            final int rank) throws IOException {
+        final MappedByteBuffer map;
+        try (FileChannel channel =
+                FileChannel.open(file, StandardOpenOption.READ)) {
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                channel.size());
+        }
+        try {
+            if (map.getInt() != MAGIC || map.getInt() != VERSION
+                    || map.getInt() != points || map.getInt() != rank) {
+                throw new IOException(file + " is not a reduction table"
+                    + " of version " + VERSION + " for " + points
+                    + " points and rank " + rank);
+            }
+            final int count = map.getInt();
+            final Map<FormFactor, Integer> positions = new HashMap<>();
+            for (int k = 0; k < count; ++k) {
+                final FormFactor m = readFormFactor(map);
+                positions.put(m, map.getInt());
+            }
+            final ByteBuffer data = map.slice();
+            if (count != FormFactor.all(points, rank).size()) {
+                throw new IOException("Incomplete index in " + file);
+            }
+            for (final int p : positions.values()) {
+                if (p < 0 || p >= data.limit()) {
+                    throw new IOException("Malformed index in " + file);
+                }
+            }
+            return new FormulaTable(points, rank, Map.of(), positions,
+                data.asReadOnlyBuffer());
+        } catch (BufferUnderflowException | IllegalArgumentException ex) {
+            throw new IOException("Truncated reduction table " + file, ex);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Kinematics.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.pv;
+
+/**
+ * A kinematic point of a one-loop function with the denominators
+ * <code>(k + q_i)^2 - m_i^2</code>, <code>i = 0, ..., N - 1</code>.
+ *
+ * The point is given by the scalar products <code>q_i.q_j</code> and the
+ * squared masses. Only differences of the momenta enter, so
+ * <code>q_0</code> need not vanish; the form factors then refer to the
+ * loop momentum <code>k + q_0</code> and the momenta
+ * <code>q_i - q_0</code>. The coefficients of the reduction
+ * are expanded around the given dimension, i.e. in <code>epsilon</code>
+ * with <code>d = dimension - 2 epsilon</code>.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class Kinematics {
+
+    /**
+     * The scalar products of the momenta.
+     */
+    private final double[][] products;
+
+    /**
+     * The squared masses.
+     */
+    private final double[] masses;
+
+    /**
+     * The dimension around which is expanded.
+     */
+    private final double dimension;
+
+    /**
+     * Creates a kinematic point.
+     *
+     * @param theProducts the symmetric matrix of the scalar products
+     *        <code>q_i.q_j</code>
+     * @param theMasses the squared masses <code>m_i^2</code>
+     * @param theDimension the dimension around which the coefficients
+     *        are expanded, four in dimensional regularization
+     *
+     * @since 0.1.0
+     */
+    public Kinematics(
+            final double[][] theProducts,
+            final double[] theMasses,
+            final double theDimension) {
+        final int n = theMasses.length;
+        if (n < 1 || n > PvReducer.MAX_POINTS) {
+            throw new IllegalArgumentException(
+                "Between 1 and " + PvReducer.MAX_POINTS
+                + " points are supported, not " + n);
+        }
+        this.products = new double[n][];
+        for (int i = 0; i < n; ++i) {
+            if (theProducts[i].length != n) {
+                throw new IllegalArgumentException(
+                    "The scalar products must form a square matrix");
+            }
+            this.products[i] = theProducts[i].clone();
+        }
+        this.masses = theMasses.clone();
+        this.dimension = theDimension;
+    }
+
+    /**
+     * Returns the number of points.
+     *
+     * @return the number of denominators
+     *
+     * @since 0.1.0
+     */
+    public int getPointCount() {
+        return this.masses.length;
+    }
+
+    /**
+     * Returns a scalar product.
+     *
+     * @param i the first momentum
+     * @param j the second momentum
+     * @return <code>q_i.q_j</code>
+     *
+     * @since 0.1.0
+     */
+    public double getProduct(final int i, final int j) {
+        return this.products[i][j];
+    }
+
+    /**
+     * Returns a squared mass.
+     *
+     * @param i the denominator
+     * @return <code>m_i^2</code>
+     *
+     * @since 0.1.0
+     */
+    public double getMass(final int i) {
+        return this.masses[i];
+    }
+
+    /**
+     * Returns the dimension around which is expanded.
+     *
+     * @return the dimension
+     *
+     * @since 0.1.0
+     */
+    public double getDimension() {
+        return this.dimension;
+    }
+}
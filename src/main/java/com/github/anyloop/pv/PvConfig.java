@@ -0,0 +1,66 @@
+/*
+ * PvConfig.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.pv;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.chassis.annotations.ConfigProperty;
+import com.github.anyloop.chassis.annotations.DefaultValue;
+
+/**
+ * Configuration of the tensor reduction.
+ *
+ * In YAML notation:
+ * <pre>
+ * pv:
+ *   directory: /scratch/anyloop/pv
+ *   epsilonOrder: 2
+ * </pre>
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public interface PvConfig {
+
+    /**
+     * The directory in which the reduction tables are kept across runs.
+     * An empty value keeps them in memory only.
+     *
+     * @return the directory
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("pv.directory")
+    @DefaultValue("")
+    String getDirectory() throws ConfigurationException;
+
+    /**
+     * The highest order in <code>epsilon = (4 - d) / 2</code> of the
+     * coefficients of the scalar integrals.
+     *
+     * @return the order
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("pv.epsilonOrder")
+    @DefaultValue("2")
+    int getEpsilonOrder() throws ConfigurationException;
+}
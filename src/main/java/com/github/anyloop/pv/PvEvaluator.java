@@ -0,0 +1,497 @@
+/*
+ * PvEvaluator.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.pv;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates reduction formulas at one kinematic point.
+ *
+ * The functions obtained by removing denominators are identified by
+ * the subset of the remaining denominators. For each of them the
+ * momenta are taken relative to its first denominator, and the
+ * inverse Gram matrix or, for six points, the vector orthogonal to
+ * the momenta is computed once. The reductions of all form factors
+ * met on the way are kept, so that the form factors of one tensor
+ * integral share their common subexpressions.
+ *
+ * Instances are not thread-safe; create one evaluator per thread and
+ * kinematic point.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class PvEvaluator {
+
+    /**
+     * The lowest order in <code>epsilon</code>: every pole
+     * <code>1/(d - 4)</code> lowers it by one, and there is at most one
+     * pole for every two units of rank.
+     */
+    private static final int LOWEST_ORDER = -PvReducer.MAX_RANK / 2;
+
+    /**
+     * The number of orders computed beyond the requested ones, since
+     * every pole costs one order at the top.
+     */
+    private static final int GUARD = PvReducer.MAX_RANK / 2;
+
+    /**
+     * The relative size below which a pivot counts as zero.
+     */
+    private static final double TOLERANCE = 1e-10;
+
+    /**
+     * The reducer which supplies the formulas.
+     */
+    private final PvReducer reducer;
+
+    /**
+     * The kinematic point.
+     */
+    private final Kinematics kinematics;
+
+    /**
+     * The number of points.
+     */
+    private final int points;
+
+    /**
+     * The number of orders kept internally.
+     */
+    private final int width;
+
+    /**
+     * The kinematic data of each subset.
+     */
+    private final Subset[] subsets;
+
+    /**
+     * The reduced form factors of each subset.
+     */
+    private final List<Map<FormFactor, double[]>> values;
+
+    PvEvaluator(final PvReducer theReducer, final Kinematics theKinematics) {
+        this.reducer = theReducer;
+        this.kinematics = theKinematics;
+        this.points = theKinematics.getPointCount();
+        this.width = theReducer.getEpsilonOrder() + GUARD - LOWEST_ORDER + 1;
+        this.subsets = new Subset[1 << this.points];
+        this.values = new ArrayList<>(
+            Collections.nCopies(1 << this.points, null));
+    }
+
+    /**
+     * Reduces a form factor of the function with all denominators.
+     *
+     * @param m the form factor
+     * @return the coefficients of the scalar integrals
+     * @throws IllegalArgumentException if the form factor does not exist
+     * @throws ArithmeticException if the kinematic point is degenerate
+     *
+     * @since 0.1.0
+     */
+    public Reduction reduce(final FormFactor m) {
+        final double[] v = this.value((1 << this.points) - 1, m);
+        final int orders = this.reducer.getEpsilonOrder() - LOWEST_ORDER + 1;
+        final double[] c = new double[orders << this.points];
+        for (int s = 0; s < 1 << this.points; ++s) {
+            System.arraycopy(v, s * this.width, c, s * orders, orders);
+        }
+        return new Reduction(this.points, LOWEST_ORDER, orders, c);
+    }
+
+    /**
+     * Returns the reduction of a form factor of a subset.
+     *
+     * @param mask the subset
+     * @param m the form factor in the labelling of the subset
+     * @return the coefficients by subset and order
+     */
+    private double[] value(final int mask, final FormFactor m) {
+        Map<FormFactor, double[]> known = this.values.get(mask);
+        if (known == null) {
+            known = new HashMap<>();
+            this.values.set(mask, known);
+        }
+        double[] v = known.get(m);
+        if (v != null) {
+            return v;
+        }
+        v = new double[this.width << this.points];
+        final Formula f = this.reducer.formula(Integer.bitCount(mask), m);
+        final Subset s = this.subset(mask);
+        for (int t = 0; t < f.size(); ++t) {
+            final double[] c = this.coefficient(s, f, t);
+            final int pinch = f.getPinch(t);
+            if (pinch == Formula.SCALAR) {
+                this.convolve(v, mask, c, null);
+            } else if (pinch == Formula.SELF) {
+                this.convolve(v, 0, c, this.value(mask, f.getReference(t)));
+            } else {
+                final int sub = mask & ~(1 << s.elements[pinch]);
+                if (sub != 0) {
+                    this.convolve(v, 0, c, this.value(sub, f.getReference(t)));
+                }
+            }
+        }
+        known.put(m, v);
+        return v;
+    }
+
+    /**
+     * Adds the product of a coefficient and a reduction.
+     *
+     * @param v the result
+     * @param mask the subset of the scalar integral if <code>r</code>
+     *        is <code>null</code>
+     * @param c the coefficient
+     * @param r the reduction or <code>null</code> for a scalar integral
+     */
+    private void convolve(
+            final double[] v,
+            final int mask,
+            final double[] c,
+            final double[] r) {
+        final int w = this.width;
+        if (r == null) {
+            for (int i = 0; i < w; ++i) {
+                v[mask * w + i] += c[i];
+            }
+            return;
+        }
+        for (int s = 1; s < 1 << this.points; ++s) {
+            for (int j = 0; j < w; ++j) {
+                final double b = r[s * w + j];
+                if (b == 0) {
+                    continue;
+                }
+                for (int i = 0; i < w; ++i) {
+                    final int k = i + j + LOWEST_ORDER;
+                    if (c[i] == 0 || k >= w) {
+                        continue;
+                    }
+                    if (k < 0) {
+                        throw new ArithmeticException(
+                            "Pole of too high order");
+                    }
+                    v[s * w + k] += c[i] * b;
+                }
+            }
+        }
+    }
+
+    /**
+     * Evaluates the coefficient of a term.
+     *
+     * @param s the subset
+     * @param f the formula
+     * @param t the term
+     * @return the coefficient as a series in <code>epsilon</code>
+     */
+    private double[] coefficient(final Subset s, final Formula f, final int t) {
+        double constant = (double) f.getNumerator(t) / f.getDenominator(t);
+        double[] series = null;
+        for (final int q : f.getQuantities(t)) {
+            final int a = (q >>> 8) & Formula.ARG_MASK;
+            final int b = q & Formula.ARG_MASK;
+            switch (q >>> Formula.KIND_SHIFT) {
+            case Formula.INVERSE_GRAM:
+                constant *= s.inverseGram[a - 1][b - 1];
+                break;
+            case Formula.F:
+                constant *= s.f[a];
+                break;
+            case Formula.MASS:
+                constant *= s.mass;
+                break;
+            case Formula.NULL:
+                constant *= s.nulls[a];
+                break;
+            case Formula.POLE:
+                series = this.multiply(series, this.pole(
+                    this.kinematics.getDimension() + a - Formula.POLE_OFFSET));
+                break;
+            default:
+                throw new IllegalStateException("Unknown quantity " + q);
+            }
+        }
+        final double[] c = series == null ? new double[this.width] : series;
+        if (series == null) {
+            c[-LOWEST_ORDER] = 1;
+        }
+        for (int i = 0; i < this.width; ++i) {
+            c[i] *= constant;
+        }
+        return c;
+    }
+
+    /**
+     * Expands <code>1 / (x - 2 epsilon)</code>.
+     *
+     * @param x the value at <code>epsilon = 0</code>
+     * @return the series
+     */
+    private double[] pole(final double x) {
+        final double[] p = new double[this.width];
+        if (Math.abs(x) < TOLERANCE) {
+            p[-1 - LOWEST_ORDER] = -0.5;
+        } else {
+            double term = 1 / x;
+            for (int i = -LOWEST_ORDER; i < this.width; ++i) {
+                p[i] = term;
+                term *= 2 / x;
+            }
+        }
+        return p;
+    }
+
+    private double[] multiply(final double[] a, final double[] b) {
+        if (a == null) {
+            return b;
+        }
+        final double[] p = new double[this.width];
+        for (int i = 0; i < this.width; ++i) {
+            for (int j = 0; j < this.width; ++j) {
+                final int k = i + j + LOWEST_ORDER;
+                if (a[i] != 0 && b[j] != 0 && k < this.width) {
+                    if (k < 0) {
+                        throw new ArithmeticException(
+                            "Pole of too high order");
+                    }
+                    p[k] += a[i] * b[j];
+                }
+            }
+        }
+        return p;
+    }
+
+    private Subset subset(final int mask) {
+        if (this.subsets[mask] == null) {
+            this.subsets[mask] = new Subset(this.kinematics, mask);
+        }
+        return this.subsets[mask];
+    }
+
+    /**
+     * The kinematic data of a subset of the denominators.
+     */
+    private static final class Subset {
+
+        /**
+         * The denominators in ascending order.
+         */
+        private final int[] elements;
+
+        /**
+         * The squared mass of the first denominator.
+         */
+        private final double mass;
+
+        /**
+         * <code>f_k = r_k^2 - m_k^2 + m_0^2</code> with the momenta
+         * <code>r_k</code> relative to the first denominator.
+         */
+        private final double[] f;
+
+        /**
+         * The inverse of the Gram matrix <code>2 r_k.r_l</code>,
+         * <code>k, l = 1, ...</code>, or <code>null</code> for six
+         * points.
+         */
+        private final double[][] inverseGram;
+
+        /**
+         * The coefficients of the denominators in the partial fraction
+         * of unity, for six points only.
+         */
+        private final double[] nulls;
+
+        Subset(final Kinematics kin, final int mask) {
+            this.elements = new int[Integer.bitCount(mask)];
+            for (int i = 0, k = 0; k < this.elements.length; ++i) {
+                if ((mask & (1 << i)) != 0) {
+                    this.elements[k++] = i;
+                }
+            }
+            final int n = this.elements.length;
+            final int e0 = this.elements[0];
+            this.mass = kin.getMass(e0);
+            final double[][] z = new double[n - 1][n - 1];
+            this.f = new double[n];
+            for (int k = 1; k < n; ++k) {
+                final int ek = this.elements[k];
+                for (int l = 1; l < n; ++l) {
+                    final int el = this.elements[l];
+                    z[k - 1][l - 1] = 2 * (kin.getProduct(ek, el)
+                        - kin.getProduct(ek, e0) - kin.getProduct(e0, el)
+                        + kin.getProduct(e0, e0));
+                }
+                this.f[k] = z[k - 1][k - 1] / 2 - kin.getMass(ek) + this.mass;
+            }
+            if (n == PvReducer.MAX_POINTS) {
+                this.inverseGram = null;
+                this.nulls = nullVector(z, this.f);
+            } else {
+                this.inverseGram = invert(z);
+                this.nulls = null;
+            }
+        }
+
+        private static double scale(final double[][] z) {
+            double scale = 0;
+            for (final double[] row : z) {
+                for (final double x : row) {
+                    scale = Math.max(scale, Math.abs(x));
+                }
+            }
+            return scale;
+        }
+
+        private static double[][] invert(final double[][] z) {
+            final int n = z.length;
+            final double eps = TOLERANCE * scale(z);
+            final double[][] a = new double[n][2 * n];
+            for (int i = 0; i < n; ++i) {
+                System.arraycopy(z[i], 0, a[i], 0, n);
+                a[i][n + i] = 1;
+            }
+            for (int c = 0; c < n; ++c) {
+                int p = c;
+                for (int r = c + 1; r < n; ++r) {
+                    if (Math.abs(a[r][c]) > Math.abs(a[p][c])) {
+                        p = r;
+                    }
+                }
+                if (Math.abs(a[p][c]) <= eps) {
+                    throw new ArithmeticException(
+                        "Vanishing Gram determinant");
+                }
+                final double[] x = a[p];
+                a[p] = a[c];
+                a[c] = x;
+                for (int r = 0; r < n; ++r) {
+                    if (r != c && a[r][c] != 0) {
+                        final double q = a[r][c] / a[c][c];
+                        for (int k = c; k < 2 * n; ++k) {
+                            a[r][k] -= q * a[c][k];
+                        }
+                    }
+                }
+            }
+            final double[][] inverse = new double[n][n];
+            for (int i = 0; i < n; ++i) {
+                for (int k = 0; k < n; ++k) {
+                    inverse[i][k] = a[i][n + k] / a[i][i];
+                }
+            }
+            return inverse;
+        }
+
+        /**
+         * Solves <code>sum_i alpha_i r_i = 0</code> and normalizes the
+         * solution such that <code>1 = sum_i c_i D_i</code>, which
+         * follows from <code>2 k.r_i = D_i - D_0 - f_i</code>.
+         *
+         * @param z the Gram matrix
+         * @param f the values <code>f_i</code>
+         * @return the coefficients <code>c_i</code>
+         */
+        private static double[] nullVector(
+                final double[][] z,
+                final double[] f) {
+            final int n = z.length;
+            final double eps = 1e3 * TOLERANCE * scale(z);
+            final double[][] a = new double[n][];
+            for (int i = 0; i < n; ++i) {
+                a[i] = z[i].clone();
+            }
+            // reduced row echelon form
+            final int[] pivots = new int[n];
+            int rank = 0;
+            int free = -1;
+            for (int c = 0; c < n; ++c) {
+                int p = rank;
+                for (int r = rank + 1; r < n; ++r) {
+                    if (Math.abs(a[r][c]) > Math.abs(a[p][c])) {
+                        p = r;
+                    }
+                }
+                if (rank == n || Math.abs(a[p][c]) <= eps) {
+                    if (free >= 0) {
+                        throw new ArithmeticException(
+                            "Degenerate six-point kinematics");
+                    }
+                    free = c;
+                    continue;
+                }
+                final double[] x = a[p];
+                a[p] = a[rank];
+                a[rank] = x;
+                final double d = a[rank][c];
+                for (int k = c; k < n; ++k) {
+                    a[rank][k] /= d;
+                }
+                for (int r = 0; r < n; ++r) {
+                    if (r != rank && a[r][c] != 0) {
+                        final double q = a[r][c];
+                        for (int k = c; k < n; ++k) {
+                            a[r][k] -= q * a[rank][k];
+                        }
+                    }
+                }
+                pivots[rank++] = c;
+            }
+            if (free < 0) {
+                throw new ArithmeticException(
+                    "The momenta of a six-point function must be linearly"
+                    + " dependent");
+            }
+            final double[] alpha = new double[n + 1];
+            alpha[free + 1] = 1;
+            for (int r = 0; r < rank; ++r) {
+                alpha[pivots[r] + 1] = -a[r][free];
+            }
+            double sum = 0;
+            double norm = 0;
+            for (int i = 1; i <= n; ++i) {
+                sum += alpha[i];
+                norm += alpha[i] * f[i];
+            }
+            if (Math.abs(norm) <= TOLERANCE * scale(z)) {
+                throw new ArithmeticException(
+                    "Degenerate six-point kinematics");
+            }
+            for (int i = 1; i <= n; ++i) {
+                alpha[i] /= norm;
+            }
+            alpha[0] = -sum / norm;
+            return alpha;
+        }
+    }
+}
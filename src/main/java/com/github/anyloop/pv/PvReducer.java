@@ -0,0 +1,275 @@
+/*
+ * PvReducer.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.pv;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.anyloop.chassis.ConfigurationException;
+
+/**
+ * Passarino-Veltman reduction of one-loop tensor integrals with up to
+ * {@link #MAX_POINTS} denominators and up to rank {@link #MAX_RANK}.
+ *
+ * A tensor integral is decomposed into form factors, see
+ * {@link FormFactor}. Each form factor is expressed by one recursion
+ * step through form factors of lower rank, of the same function and
+ * of the functions with one denominator removed:
+ * <ul>
+ * <li>the coefficients of <code>g^{mu nu}</code> are obtained from
+ *     the trace of the tensor integral and carry a pole
+ *     <code>1/(d + P - N - 1)</code>,</li>
+ * <li>the remaining ones by contraction with the momenta and
+ *     multiplication by the inverse Gram matrix,</li>
+ * <li>and for six points, where the momenta are linearly dependent in
+ *     four dimensions, by the vector orthogonal to all of them.</li>
+ * </ul>
+ * The formulas of each number of points and rank are generated when
+ * they are first needed. If a directory is configured, they are kept
+ * there in binary tables that later runs map into memory instead of
+ * generating them again.
+ *
+ * The formulas are evaluated at a kinematic point by a
+ * {@link PvEvaluator}. Instances of this class are thread-safe.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class PvReducer {
+
+    /**
+     * The largest number of points.
+     *
+     * @since 0.1.0
+     */
+    public static final int MAX_POINTS = 6;
+
+    /**
+     * The largest rank.
+     *
+     * @since 0.1.0
+     */
+    public static final int MAX_RANK = 6;
+
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(PvReducer.class);
+
+    /**
+     * The directory of the tables or <code>null</code>.
+     */
+    private final Path directory;
+
+    /**
+     * The highest order in <code>epsilon</code>.
+     */
+    private final int epsilonOrder;
+
+    /**
+     * The tables by <code>points * (MAX_RANK + 1) + rank</code>.
+     */
+    private final Map<Integer, FormulaTable> tables =
+        new ConcurrentHashMap<>();
+
+    /**
+     * The number of tables generated.
+     */
+    private final AtomicInteger generated = new AtomicInteger();
+
+    /**
+     * The number of tables read from the directory.
+     */
+    private final AtomicInteger loaded = new AtomicInteger();
+
+    /**
+     * Creates a reducer.
+     *
+     * @param theDirectory the directory in which the tables are kept,
+     *        <code>null</code> to keep them in memory only
+     * @param theEpsilonOrder the highest order in <code>epsilon</code>
+     *        of the coefficients
+     *
+     * @since 0.1.0
+     */
+    public PvReducer(final Path theDirectory, final int theEpsilonOrder) {
+        if (theEpsilonOrder < 0) {
+            throw new IllegalArgumentException(
+                "The order in epsilon must not be negative");
+        }
+        this.directory = theDirectory;
+        this.epsilonOrder = theEpsilonOrder;
+    }
+
+    /**
+     * Creates a reducer from the configuration.
+     *
+     * @param config the configuration
+     * @return the reducer
+     * @throws ConfigurationException if the configuration is invalid
+     *
+     * @since 0.1.0
+     */
+    public static PvReducer fromConfig(final PvConfig config)
+            throws ConfigurationException {
+        if (config.getEpsilonOrder() < 0) {
+            throw new ConfigurationException(
+                "pv.epsilonOrder must not be negative");
+        }
+        final String dir = config.getDirectory();
+        try {
+            return new PvReducer(dir.isEmpty() ? null
+                    : Files.createDirectories(Paths.get(dir)),
+                config.getEpsilonOrder());
+        } catch (IOException ex) {
+            throw new ConfigurationException(
+                "Cannot create pv directory '" + dir + "'", ex);
+        }
+    }
+
+    /**
+     * Returns the highest order in <code>epsilon</code>.
+     *
+     * @return the order
+     *
+     * @since 0.1.0
+     */
+    public int getEpsilonOrder() {
+        return this.epsilonOrder;
+    }
+
+    /**
+     * Returns the number of tables generated by this reducer.
+     *
+     * @return the number of tables
+     *
+     * @since 0.1.0
+     */
+    public int getGeneratedTableCount() {
+        return this.generated.get();
+    }
+
+    /**
+     * Returns the number of tables read from the directory.
+     *
+     * @return the number of tables
+     *
+     * @since 0.1.0
+     */
+    public int getLoadedTableCount() {
+        return this.loaded.get();
+    }
+
+    /**
+     * Creates an evaluator at a kinematic point.
+     *
+     * @param kinematics the kinematic point
+     * @return the evaluator
+     *
+     * @since 0.1.0
+     */
+    public PvEvaluator evaluator(final Kinematics kinematics) {
+        return new PvEvaluator(this, kinematics);
+    }
+
+    /**
+     * Reduces a single form factor, see {@link PvEvaluator#reduce}.
+     *
+     * @param kinematics the kinematic point
+     * @param m the form factor
+     * @return the coefficients of the scalar integrals
+     *
+     * @since 0.1.0
+     */
+    public Reduction reduce(final Kinematics kinematics, final FormFactor m) {
+        return this.evaluator(kinematics).reduce(m);
+    }
+
+    /**
+     * Looks up the formula of a form factor.
+     *
+     * @param points the number of points
+     * @param m the form factor
+     * @return the formula
+     */
+    Formula formula(final int points, final FormFactor m) {
+        if (points < 1 || points > MAX_POINTS || m.getRank() > MAX_RANK
+                || m.maxIndex() >= points) {
+            throw new IllegalArgumentException("No form factor " + m
+                + " of a " + points + "-point function");
+        }
+        final Formula f = this.table(points, m.getRank()).get(m);
+        if (f == null) {
+            throw new IllegalArgumentException("No form factor " + m
+                + " of a " + points + "-point function");
+        }
+        return f;
+    }
+
+    /**
+     * Returns a table, reading or generating it if necessary.
+     *
+     * @param points the number of points
+     * @param rank the rank
+     * @return the table
+     */
+    FormulaTable table(final int points, final int rank) {
+        return this.tables.computeIfAbsent(points * (MAX_RANK + 1) + rank,
+            key -> this.loadOrGenerate(points, rank));
+    }
+
+    private FormulaTable loadOrGenerate(final int points, final int rank) {
+        final Path file = this.directory == null ? null
+            : this.directory.resolve("pv-" + points + "-" + rank + ".table");
+        if (file != null && Files.isRegularFile(file)) {
+            try {
+                final FormulaTable t = FormulaTable.load(file, points, rank);
+                this.loaded.incrementAndGet();
+                return t;
+            } catch (IOException ex) {
+                LOGGER.warn("Regenerating unreadable reduction table", ex);
+            }
+        }
+        final long start = System.nanoTime();
+        final FormulaTable t = FormulaTable.generate(points, rank);
+        this.generated.incrementAndGet();
+        LOGGER.debug(String.format(
+            "Generated %d reduction formulas for N = %d, P = %d in %.3f s",
+            t.size(), points, rank, (System.nanoTime() - start) * 1e-9));
+        if (file != null) {
+            try {
+                t.store(file);
+            } catch (IOException ex) {
+                LOGGER.warn("Cannot store reduction table", ex);
+            }
+        }
+        return t;
+    }
+}
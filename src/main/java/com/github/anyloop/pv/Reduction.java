@@ -0,0 +1,141 @@
+/*
+ * Reduction.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.pv;
+
+/**
+ * A form factor reduced to scalar integrals: for each subset of the
+ * denominators the coefficient of its scalar integral as a truncated
+ * Laurent series in <code>epsilon</code>.
+ *
+ * A subset is given as a bit mask with bit <code>i</code> standing for
+ * the denominator <code>i</code>.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class Reduction {
+
+    /**
+     * The number of points.
+     */
+    private final int points;
+
+    /**
+     * The lowest order in <code>epsilon</code>.
+     */
+    private final int lowestOrder;
+
+    /**
+     * The number of orders.
+     */
+    private final int orders;
+
+    /**
+     * The coefficients by subset and then by order.
+     */
+    private final double[] coefficients;
+
+    Reduction(
+            final int thePoints,
+            final int theLowestOrder,
+            final int theOrders,
+            final double[] theCoefficients) {
+        this.points = thePoints;
+        this.lowestOrder = theLowestOrder;
+        this.orders = theOrders;
+        this.coefficients = theCoefficients;
+    }
+
+    /**
+     * Returns the number of points.
+     *
+     * @return the number of denominators
+     *
+     * @since 0.1.0
+     */
+    public int getPointCount() {
+        return this.points;
+    }
+
+    /**
+     * Returns the lowest order in <code>epsilon</code>.
+     *
+     * @return the order of the leading pole
+     *
+     * @since 0.1.0
+     */
+    public int getLowestOrder() {
+        return this.lowestOrder;
+    }
+
+    /**
+     * Returns the highest order in <code>epsilon</code>.
+     *
+     * @return the order
+     *
+     * @since 0.1.0
+     */
+    public int getHighestOrder() {
+        return this.lowestOrder + this.orders - 1;
+    }
+
+    /**
+     * Returns a coefficient.
+     *
+     * @param subset the denominators of the scalar integral as a bit mask
+     * @param order the order in <code>epsilon</code>
+     * @return the coefficient of <code>epsilon^order</code> in the
+     *         coefficient of the scalar integral
+     *
+     * @since 0.1.0
+     */
+    public double getCoefficient(final int subset, final int order) {
+        if (order < this.lowestOrder || order > this.getHighestOrder()) {
+            throw new IllegalArgumentException("Order " + order
+                + " outside " + this.lowestOrder + " to "
+                + this.getHighestOrder());
+        }
+        return this.coefficients[
+            subset * this.orders + order - this.lowestOrder];
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder s = new StringBuilder();
+        for (int subset = 1; subset < 1 << this.points; ++subset) {
+            for (int k = 0; k < this.orders; ++k) {
+                final double c = this.coefficients[subset * this.orders + k];
+                if (c != 0) {
+                    if (s.length() > 0) {
+                        s.append(" + ");
+                    }
+                    s.append(c).append("*eps^").append(this.lowestOrder + k)
+                        .append("*I[").append(Integer.toBinaryString(subset))
+                        .append(']');
+                }
+            }
+        }
+        return s.length() == 0 ? "0" : s.toString();
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * package-info.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+/**
+ * This package reduces one-loop tensor integrals to scalar integrals
+ * by the method of Passarino and Veltman.
+ *
+ * The reduction formulas of each number of points and rank are
+ * generated once and kept in binary tables, which are read back by
+ * later runs. They are applied at a kinematic point by looking up and
+ * evaluating one recursion step after the other, down to the scalar
+ * integrals of the function and of its pinches.
+ */
+package com.github.anyloop.pv;
@@ -0,0 +1,131 @@
+/*
+ * CostFeatures.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.scheduler;
+
+/**
+ * The cheap features of a task from which its cost is estimated.
+ *
+ * Instances are immutable.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class CostFeatures {
+
+    /**
+     * The number of loops.
+     */
+    private final int loops;
+
+    /**
+     * The number of propagators.
+     */
+    private final int propagators;
+
+    /**
+     * The rank of the numerators.
+     */
+    private final int rank;
+
+    /**
+     * Creates the features of a task.
+     *
+     * @param theLoops the number of loops
+     * @param thePropagators the number of propagators
+     * @param theRank the highest rank of the numerators
+     * @throws IllegalArgumentException if a feature is negative
+     *
+     * @since 0.1.0
+     */
+    public CostFeatures(
+            final int theLoops,
+            final int thePropagators,
+            final int theRank) {
+        if (theLoops < 0 || thePropagators < 0 || theRank < 0) {
+            throw new IllegalArgumentException(
+                "Features must not be negative");
+        }
+        this.loops = theLoops;
+        this.propagators = thePropagators;
+        this.rank = theRank;
+    }
+
+    /**
+     * Returns the number of loops.
+     *
+     * @return the number of loops
+     *
+     * @since 0.1.0
+     */
+    public int getLoops() {
+        return this.loops;
+    }
+
+    /**
+     * Returns the number of propagators.
+     *
+     * @return the number of propagators
+     *
+     * @since 0.1.0
+     */
+    public int getPropagators() {
+        return this.propagators;
+    }
+
+    /**
+     * Returns the rank of the numerators.
+     *
+     * @return the highest rank
+     *
+     * @since 0.1.0
+     */
+    public int getRank() {
+        return this.rank;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CostFeatures)) {
+            return false;
+        }
+        final CostFeatures other = (CostFeatures) obj;
+        return this.loops == other.loops
+            && this.propagators == other.propagators
+            && this.rank == other.rank;
+    }
+
+    @Override
+    public int hashCode() {
+        return (31 * this.loops + this.propagators) * 31 + this.rank;
+    }
+
+    @Override
+    public String toString() {
+        return "loops=" + this.loops + ", propagators=" + this.propagators
+            + ", rank=" + this.rank;
+    }
+}
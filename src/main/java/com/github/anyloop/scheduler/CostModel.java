@@ -0,0 +1,360 @@
+/*
+ * CostModel.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.scheduler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.anyloop.chassis.ConfigurationException;
+
+/**
+ * Estimates the running time of a kind of task from its
+ * {@link CostFeatures}.
+ *
+ * The model is log-linear: the logarithm of the time in nanoseconds
+ * is a weighted sum of a constant and the three features, so that
+ * every further loop, propagator or unit of rank multiplies the
+ * estimate by a constant factor. The weights are fitted by least
+ * squares to the recorded running times, regularised towards the
+ * defaults so that a handful of samples cannot throw the model off.
+ * Only the order of the estimates matters to the scheduler, so a
+ * rough model already keeps the expensive tasks at the front.
+ *
+ * The samples can be kept in a tab-separated file with one line per
+ * task, holding the kind, the features, the estimated and the actual
+ * time in nanoseconds.
+ *
+ * Instances are thread-safe.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class CostModel {
+
+    /**
+     * The logger of this class.
+     */
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(CostModel.class);
+
+    /**
+     * The default weights: a millisecond, and factors of thirty per
+     * loop, two per propagator and three per unit of rank.
+     */
+    private static final double[] DEFAULTS = {
+        Math.log(1e6), Math.log(30), Math.log(2), Math.log(3)
+    };
+
+    /**
+     * The weight of the defaults in the fit, in samples.
+     */
+    private static final double PRIOR = 1;
+
+    /**
+     * The kind of task.
+     */
+    private final String kind;
+
+    /**
+     * The current weights.
+     */
+    private final double[] weights = DEFAULTS.clone();
+
+    /**
+     * All samples, each the features followed by the logarithm of the
+     * actual time.
+     */
+    private final List<double[]> samples = new ArrayList<>();
+
+    /**
+     * The samples recorded since the model was created or loaded, in
+     * the format of the file.
+     */
+    private final List<String> recorded = new ArrayList<>();
+
+    /**
+     * Creates a model with the default weights.
+     *
+     * @param theKind the kind of task, without whitespace
+     * @throws IllegalArgumentException if the kind is empty or
+     *         contains whitespace
+     *
+     * @since 0.1.0
+     */
+    public CostModel(final String theKind) {
+        if (theKind.isEmpty() || !theKind.matches("\\S+")) {
+            throw new IllegalArgumentException(
+                "Invalid kind of task: '" + theKind + "'");
+        }
+        this.kind = theKind;
+    }
+
+    /**
+     * Creates a model fitted to the samples of one kind of task kept
+     * in a file.
+     *
+     * @param file the file, which need not exist
+     * @param kind the kind of task
+     * @return the model
+     * @throws IOException if the file cannot be read or is malformed
+     *
+     * @since 0.1.0
+     */
+    public static CostModel load(final Path file, final String kind)
+            throws IOException {
+        final CostModel model = new CostModel(kind);
+        if (!Files.exists(file)) {
+            return model;
+        }
+        try (BufferedReader in =
+                Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            int number = 0;
+            for (String line = in.readLine(); line != null;
+                    line = in.readLine()) {
+                ++number;
+                final String[] fields = line.split("\t");
+                if (line.isEmpty() || !kind.equals(fields[0])) {
+                    continue;
+                }
+                try {
+                    if (fields.length != 6) {
+                        throw new NumberFormatException();
+                    }
+                    model.add(new CostFeatures(
+                            Integer.parseInt(fields[1]),
+                            Integer.parseInt(fields[2]),
+                            Integer.parseInt(fields[3])),
+                        Long.parseLong(fields[5]));
+                } catch (IllegalArgumentException ex) {
+                    throw new IOException(
+                        "Malformed timing in " + file + ":" + number, ex);
+                }
+            }
+        }
+        model.fit();
+        return model;
+    }
+
+    /**
+     * Creates a model fitted to the configured timings, or with the
+     * default weights if there are none or they cannot be read.
+     *
+     * @param config the configuration
+     * @param kind the kind of task
+     * @return the model
+     * @throws ConfigurationException if the configuration is invalid
+     *
+     * @since 0.1.0
+     */
+    public static CostModel fromConfig(
+            final SchedulerConfig config,
+            final String kind) throws ConfigurationException {
+        final String timings = config.getTimings();
+        if (!timings.isEmpty()) {
+            try {
+                return load(Paths.get(timings), kind);
+            } catch (IOException ex) {
+                LOGGER.warn("Cannot read the timings", ex);
+            }
+        }
+        return new CostModel(kind);
+    }
+
+    /**
+     * Returns the kind of task.
+     *
+     * @return the kind
+     *
+     * @since 0.1.0
+     */
+    public String getKind() {
+        return this.kind;
+    }
+
+    private static double[] vector(final CostFeatures features) {
+        return new double[] {
+            1, features.getLoops(), features.getPropagators(),
+            features.getRank()
+        };
+    }
+
+    /**
+     * Estimates the running time of a task.
+     *
+     * @param features the features of the task
+     * @return the time in nanoseconds
+     *
+     * @since 0.1.0
+     */
+    public synchronized double estimate(final CostFeatures features) {
+        final double[] x = vector(features);
+        double log = 0;
+        for (int i = 0; i < x.length; ++i) {
+            log += this.weights[i] * x[i];
+        }
+        return Math.exp(log);
+    }
+
+    private void add(final CostFeatures features, final long actual) {
+        final double[] x = vector(features);
+        final double[] sample = new double[x.length + 1];
+        System.arraycopy(x, 0, sample, 0, x.length);
+        sample[x.length] = Math.log(Math.max(1, actual));
+        this.samples.add(sample);
+    }
+
+    /**
+     * Records the running time of a task. The weights are only
+     * changed by {@link #fit}.
+     *
+     * @param features the features of the task
+     * @param estimated the estimated time in nanoseconds
+     * @param actual the actual time in nanoseconds
+     *
+     * @since 0.1.0
+     */
+    public synchronized void record(
+            final CostFeatures features,
+            final double estimated,
+            final long actual) {
+        this.add(features, actual);
+        this.recorded.add(this.kind + "\t" + features.getLoops()
+            + "\t" + features.getPropagators() + "\t" + features.getRank()
+            + "\t" + Math.round(estimated) + "\t" + actual);
+    }
+
+    /**
+     * Returns the number of samples the model has been fitted to or
+     * will be fitted to by the next call of {@link #fit}.
+     *
+     * @return the number of samples
+     *
+     * @since 0.1.0
+     */
+    public synchronized int getSampleCount() {
+        return this.samples.size();
+    }
+
+    /**
+     * Fits the weights to all samples.
+     *
+     * @since 0.1.0
+     */
+    public synchronized void fit() {
+        // normal equations of the regularised least squares problem,
+        // (X^T X + c I) w = X^T y + c w0
+        final int n = DEFAULTS.length;
+        final double[][] a = new double[n][n + 1];
+        for (int i = 0; i < n; ++i) {
+            a[i][i] = PRIOR;
+            a[i][n] = PRIOR * DEFAULTS[i];
+        }
+        for (final double[] s : this.samples) {
+            for (int i = 0; i < n; ++i) {
+                for (int j = 0; j < n; ++j) {
+                    a[i][j] += s[i] * s[j];
+                }
+                a[i][n] += s[i] * s[n];
+            }
+        }
+        // the matrix is positive definite, so Gaussian elimination
+        // needs no pivoting
+        for (int k = 0; k < n; ++k) {
+            for (int i = k + 1; i < n; ++i) {
+                final double f = a[i][k] / a[k][k];
+                for (int j = k; j <= n; ++j) {
+                    a[i][j] -= f * a[k][j];
+                }
+            }
+        }
+        for (int i = n - 1; i >= 0; --i) {
+            double s = a[i][n];
+            for (int j = i + 1; j < n; ++j) {
+                s -= a[i][j] * this.weights[j];
+            }
+            this.weights[i] = s / a[i][i];
+        }
+    }
+
+    /**
+     * Appends the samples recorded since the model was created or
+     * loaded to a file.
+     *
+     * @param file the file, which is created if it does not exist
+     * @throws IOException if the file cannot be written
+     *
+     * @since 0.1.0
+     */
+    public synchronized void save(final Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file,
+                StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND)) {
+            for (final String line : this.recorded) {
+                out.write(line);
+                out.newLine();
+            }
+        }
+        this.recorded.clear();
+    }
+
+    /**
+     * Appends the samples recorded since the model was created or
+     * loaded to the configured timings, if any.
+     *
+     * @param config the configuration
+     * @throws ConfigurationException if the configuration is invalid
+     *
+     * @since 0.1.0
+     */
+    public void save(final SchedulerConfig config)
+            throws ConfigurationException {
+        final String timings = config.getTimings();
+        if (!timings.isEmpty()) {
+            try {
+                this.save(Paths.get(timings));
+            } catch (IOException ex) {
+                LOGGER.warn("Cannot write the timings", ex);
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s: %.3g ns * %.3g^loops * %.3g^propagators"
+            + " * %.3g^rank", this.kind, Math.exp(this.weights[0]),
+            Math.exp(this.weights[1]), Math.exp(this.weights[2]),
+            Math.exp(this.weights[3]));
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * ScheduleReport.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.scheduler;
+
+/**
+ * The statistics of a single run of a {@link TaskScheduler}.
+ *
+ * Instances are immutable.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class ScheduleReport {
+
+    /**
+     * The number of tasks.
+     */
+    private final int taskCount;
+
+    /**
+     * The number of worker threads.
+     */
+    private final int workers;
+
+    /**
+     * The time from the start of the first task to the end of the
+     * last, in nanoseconds.
+     */
+    private final long wallTime;
+
+    /**
+     * The time the workers were busy, in nanoseconds.
+     */
+    private final long busyTime;
+
+    /**
+     * The time from the start of the last task to the end of the run,
+     * in nanoseconds.
+     */
+    private final long tail;
+
+    /**
+     * The geometric mean of the ratio of actual to estimated time.
+     */
+    private final double ratio;
+
+    /**
+     * Creates a report.
+     *
+     * @param theTaskCount the number of tasks
+     * @param theWorkers the number of worker threads
+     * @param theWallTime the duration of the run in nanoseconds
+     * @param theBusyTime the time the workers were busy in nanoseconds
+     * @param theTail the time from the start of the last task to the
+     *        end of the run in nanoseconds
+     * @param theRatio the geometric mean of the ratio of actual to
+     *        estimated time
+     */
+    ScheduleReport(
+            final int theTaskCount,
+            final int theWorkers,
+            final long theWallTime,
+            final long theBusyTime,
+            final long theTail,
+            final double theRatio) {
+        this.taskCount = theTaskCount;
+        this.workers = theWorkers;
+        this.wallTime = theWallTime;
+        this.busyTime = theBusyTime;
+        this.tail = theTail;
+        this.ratio = theRatio;
+    }
+
+    /**
+     * Returns the number of tasks.
+     *
+     * @return the number of tasks
+     *
+     * @since 0.1.0
+     */
+    public int getTaskCount() {
+        return this.taskCount;
+    }
+
+    /**
+     * Returns the duration of the run.
+     *
+     * @return the time in nanoseconds
+     *
+     * @since 0.1.0
+     */
+    public long getWallTime() {
+        return this.wallTime;
+    }
+
+    /**
+     * Returns the time the workers were busy, summed over all of them.
+     *
+     * @return the time in nanoseconds
+     *
+     * @since 0.1.0
+     */
+    public long getBusyTime() {
+        return this.busyTime;
+    }
+
+    /**
+     * Returns the fraction of the available worker time which was
+     * used.
+     *
+     * @return the utilisation between zero and one
+     *
+     * @since 0.1.0
+     */
+    public double getUtilisation() {
+        if (this.wallTime <= 0) {
+            return 1;
+        }
+        return Math.min(1,
+            (double) this.busyTime / this.wallTime / this.workers);
+    }
+
+    /**
+     * Returns the tail of the run, i.e. the time from the start of the
+     * last task to the end, during which workers run out of work.
+     *
+     * @return the time in nanoseconds
+     *
+     * @since 0.1.0
+     */
+    public long getTail() {
+        return this.tail;
+    }
+
+    /**
+     * Returns the geometric mean of the ratio of the actual to the
+     * estimated running time of the tasks.
+     *
+     * @return the ratio, one for perfect estimates
+     *
+     * @since 0.1.0
+     */
+    public double getEstimateRatio() {
+        return this.ratio;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d tasks on %d workers in %.1f ms,"
+            + " utilisation %.1f %%, tail %.1f ms,"
+            + " actual/estimated time %.3g", this.taskCount, this.workers,
+            this.wallTime / 1e6, 100 * this.getUtilisation(),
+            this.tail / 1e6, this.ratio);
+    }
+}
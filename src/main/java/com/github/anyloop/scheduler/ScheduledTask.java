@@ -0,0 +1,59 @@
+/*
+ * ScheduledTask.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.scheduler;
+
+import java.io.IOException;
+
+/**
+ * A unit of work run by a {@link TaskScheduler}.
+ *
+ * @param <T> the type of the result
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public interface ScheduledTask<T> {
+
+    /**
+     * Returns the features from which the cost of the task is
+     * estimated. This is called before the task is started and should
+     * be cheap.
+     *
+     * @return the features
+     *
+     * @since 0.1.0
+     */
+    CostFeatures getFeatures();
+
+    /**
+     * Runs the task in a worker thread of the scheduler's pool, in
+     * which it may fork subtasks of its own.
+     *
+     * @return the result
+     * @throws IOException if the task fails
+     *
+     * @since 0.1.0
+     */
+    T call() throws IOException;
+}
@@ -0,0 +1,55 @@
+/*
+ * SchedulerConfig.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.scheduler;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.chassis.annotations.ConfigProperty;
+import com.github.anyloop.chassis.annotations.DefaultValue;
+
+/**
+ * Configuration of the task scheduler.
+ *
+ * In YAML notation:
+ * <pre>
+ * scheduler:
+ *   timings: /scratch/anyloop/timings.tsv
+ * </pre>
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public interface SchedulerConfig {
+
+    /**
+     * The file collecting the estimated and actual running times of
+     * the tasks, from which the cost models are fitted at the start of
+     * a run. An empty value keeps the default models.
+     *
+     * @return the file
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("scheduler.timings")
+    @DefaultValue("")
+    String getTimings() throws ConfigurationException;
+}
@@ -0,0 +1,300 @@
+/*
+ * TaskScheduler.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.scheduler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs tasks of very different cost on a work-stealing pool, the most
+ * expensive first.
+ *
+ * Splitting work into chunks of equal size leaves most workers idle
+ * at the end if one chunk takes far longer than the others. The
+ * scheduler therefore orders the tasks by the running time estimated
+ * by its {@link CostModel} and starts them in descending order, so
+ * that the cheap tasks are left to fill the gaps at the end. The
+ * tasks may fork subtasks into the same pool, which idle workers
+ * steal.
+ *
+ * The actual running time of every task is recorded in the model,
+ * which is fitted anew after each run, and every run is summarised in
+ * a {@link ScheduleReport}. The time the workers were busy is taken
+ * from the CPU time of their threads if the JVM measures it, and from
+ * the running times of the tasks otherwise.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class TaskScheduler implements Closeable {
+
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(TaskScheduler.class);
+
+    /**
+     * The pool.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The cost model.
+     */
+    private final CostModel model;
+
+    /**
+     * The worker threads of the pool.
+     */
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The CPU time meter or <code>null</code>.
+     */
+    private final ThreadMXBean meter;
+
+    /**
+     * The report of the last run or <code>null</code>.
+     */
+    private volatile ScheduleReport report;
+
+    /**
+     * Creates a scheduler with its own pool.
+     *
+     * @param theParallelism the number of worker threads
+     * @param theModel the model estimating the cost of the tasks
+     * @throws IllegalArgumentException if the number of threads is not
+     *         positive
+     *
+     * @since 0.1.0
+     */
+    public TaskScheduler(final int theParallelism, final CostModel theModel) {
+        if (theParallelism < 1) {
+            throw new IllegalArgumentException(
+                "The number of workers must be positive");
+        }
+        this.model = theModel;
+        this.pool = new ForkJoinPool(theParallelism, p -> {
+            final ForkJoinWorkerThread thread =
+                ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            this.threads.add(thread);
+            return thread;
+        }, null, false);
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        this.meter = bean.isThreadCpuTimeSupported()
+            && bean.isThreadCpuTimeEnabled() ? bean : null;
+    }
+
+    /**
+     * Returns the pool, into which the tasks may fork subtasks.
+     *
+     * @return the pool
+     *
+     * @since 0.1.0
+     */
+    public ForkJoinPool getPool() {
+        return this.pool;
+    }
+
+    /**
+     * Returns the cost model.
+     *
+     * @return the model
+     *
+     * @since 0.1.0
+     */
+    public CostModel getCostModel() {
+        return this.model;
+    }
+
+    /**
+     * Returns the report of the last run.
+     *
+     * @return the report or <code>null</code> before the first run
+     *
+     * @since 0.1.0
+     */
+    public ScheduleReport getReport() {
+        return this.report;
+    }
+
+    /**
+     * Runs tasks and waits for all of them to finish.
+     *
+     * If a task fails, the others still run to the end, and then the
+     * first failure is rethrown.
+     *
+     * @param <T> the type of the results
+     * @param tasks the tasks
+     * @return the results, in the order of the tasks
+     * @throws IOException if a task fails
+     *
+     * @since 0.1.0
+     */
+    public <T> List<T> run(final List<? extends ScheduledTask<T>> tasks)
+            throws IOException {
+        final int n = tasks.size();
+        final CostFeatures[] features = new CostFeatures[n];
+        final double[] estimates = new double[n];
+        final Integer[] order = new Integer[n];
+        for (int i = 0; i < n; ++i) {
+            features[i] = tasks.get(i).getFeatures();
+            estimates[i] = this.model.estimate(features[i]);
+            order[i] = i;
+        }
+        Arrays.sort(order,
+            Comparator.comparingDouble((Integer i) -> estimates[i])
+                .reversed());
+
+        final long[] start = new long[n];
+        final long[] end = new long[n];
+        final Throwable[] failures = new Throwable[n];
+        final List<T> results = new ArrayList<>();
+        final List<ForkJoinTask<?>> submitted = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            results.add(null);
+            submitted.add(null);
+        }
+
+        final Map<Thread, Long> cpu = this.cpuTimes();
+        final long origin = System.nanoTime();
+        // a worker of the pool takes its own tasks in LIFO order, all
+        // others in FIFO order
+        final boolean inside = ForkJoinTask.getPool() == this.pool;
+        for (int k = 0; k < n; ++k) {
+            final int i = order[inside ? n - 1 - k : k];
+            final ScheduledTask<T> task = tasks.get(i);
+            final ForkJoinTask<?> f = ForkJoinTask.adapt(() -> {
+                start[i] = System.nanoTime();
+                try {
+                    results.set(i, task.call());
+                } catch (IOException | RuntimeException | Error ex) {
+                    failures[i] = ex;
+                }
+                end[i] = System.nanoTime();
+            });
+            submitted.set(i, f);
+            if (inside) {
+                f.fork();
+            } else {
+                this.pool.execute(f);
+            }
+        }
+        for (final ForkJoinTask<?> f : submitted) {
+            f.join();
+        }
+        final long finish = System.nanoTime();
+
+        long busy = 0;
+        long lastStart = origin;
+        double logRatio = 0;
+        int measured = 0;
+        for (int i = 0; i < n; ++i) {
+            busy += end[i] - start[i];
+            lastStart = Math.max(lastStart, start[i]);
+            if (failures[i] == null) {
+                final long actual = end[i] - start[i];
+                this.model.record(features[i], estimates[i], actual);
+                logRatio += Math.log(Math.max(1, actual) / estimates[i]);
+                ++measured;
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug(String.format(
+                        "Task %s: estimated %.1f ms, took %.1f ms",
+                        features[i], estimates[i] / 1e6, actual / 1e6));
+                }
+            }
+        }
+        if (this.meter != null) {
+            busy = 0;
+            for (final Map.Entry<Thread, Long> e
+                    : this.cpuTimes().entrySet()) {
+                busy += e.getValue() - cpu.getOrDefault(e.getKey(), 0L);
+            }
+        }
+        this.model.fit();
+        this.report = new ScheduleReport(n, this.pool.getParallelism(),
+            finish - origin, busy, finish - lastStart,
+            measured == 0 ? 1 : Math.exp(logRatio / measured));
+
+        for (final Throwable failure : failures) {
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Measures the CPU time of all worker threads.
+     *
+     * @return the time in nanoseconds by thread, empty if the JVM does
+     *         not measure it
+     */
+    private Map<Thread, Long> cpuTimes() {
+        final Map<Thread, Long> times = new HashMap<>();
+        if (this.meter == null) {
+            return times;
+        }
+        for (final Thread thread : this.threads) {
+            final long t = this.meter.getThreadCpuTime(thread.getId());
+            if (t >= 0) {
+                times.put(thread, t);
+            } else {
+                this.threads.remove(thread);
+            }
+        }
+        return times;
+    }
+
+    /**
+     * Shuts the pool down.
+     *
+     * @since 0.1.0
+     */
+    @Override
+    public void close() {
+        this.pool.shutdown();
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * package-info.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+/**
+ * This package schedules engine tasks whose costs differ by orders of
+ * magnitude.
+ *
+ * Each {@link com.github.anyloop.scheduler.ScheduledTask} describes
+ * itself by a few cheap {@link com.github.anyloop.scheduler.CostFeatures}
+ * from which a {@link com.github.anyloop.scheduler.CostModel} estimates
+ * its running time. The
+ * {@link com.github.anyloop.scheduler.TaskScheduler} starts the most
+ * expensive tasks first on a work-stealing pool, so that the cheap ones
+ * fill the gaps at the end instead of the other way round. It records
+ * the actual running times, which tune the model for later runs, and
+ * reports the utilisation of the workers and the length of the tail of
+ * every run.
+ */
+package com.github.anyloop.scheduler;
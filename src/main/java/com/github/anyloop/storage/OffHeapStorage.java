@@ -0,0 +1,244 @@
+/*
+ * OffHeapStorage.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.anyloop.chassis.ConfigurationException;
+
+/**
+ * A directory of memory-mapped segment files with a common budget for
+ * the number of mapped bytes.
+ *
+ * Each {@link RecordStore} created by this storage owns its own
+ * segment files. When a store maps a segment and the budget would be
+ * exceeded, it releases its least recently used segments first; since
+ * a store cannot release the segments of other stores, the budget is
+ * a soft limit if many stores are active at the same time.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class OffHeapStorage implements Closeable {
+
+    /**
+     * The directory of the segment files.
+     */
+    private final Path directory;
+
+    /**
+     * Tells whether the directory was created by this storage and is
+     * deleted on {@link #close}.
+     */
+    private final boolean temporary;
+
+    /**
+     * The number of bytes which may be mapped at a time.
+     */
+    private final long budget;
+
+    /**
+     * The size of a regular segment.
+     */
+    private final int segmentSize;
+
+    /**
+     * The number of bytes currently mapped by all stores.
+     */
+    private final AtomicLong mapped = new AtomicLong();
+
+    /**
+     * The stores which have not been closed yet.
+     */
+    private final List<RecordStore> stores = new ArrayList<>();
+
+    /**
+     * Creates a storage.
+     *
+     * @param theDirectory the directory of the segment files or
+     *        <code>null</code> for a new temporary directory
+     * @param theBudget the number of bytes which may be mapped at a time
+     * @param theSegmentSize the size of a regular segment in bytes
+     * @throws IOException if the directory cannot be created
+     *
+     * @since 0.1.0
+     */
+    public OffHeapStorage(
+            final Path theDirectory,
+            final long theBudget,
+            final int theSegmentSize) throws IOException {
+        if (theBudget <= 0 || theSegmentSize <= 0) {
+            throw new IllegalArgumentException(
+                "Budget and segment size must be positive");
+        }
+        if (theDirectory == null) {
+            this.directory = Files.createTempDirectory("anyloop-");
+            this.temporary = true;
+        } else {
+            this.directory = Files.createDirectories(theDirectory);
+            this.temporary = false;
+        }
+        this.budget = theBudget;
+        this.segmentSize = theSegmentSize;
+    }
+
+    /**
+     * Creates a storage from its configuration.
+     *
+     * @param config the configuration
+     * @return the storage
+     * @throws ConfigurationException if the configuration is invalid
+     *         or the directory cannot be created
+     *
+     * @since 0.1.0
+     */
+    public static OffHeapStorage fromConfig(final StorageConfig config)
+            throws ConfigurationException {
+        final String dir = config.getDirectory();
+        final long budget = config.getBudget();
+        final int segment = config.getSegmentSize();
+        if (budget <= 0 || segment <= 0) {
+            throw new ConfigurationException(
+                "storage.budget and storage.segmentSize must be positive");
+        }
+        if (segment > budget) {
+            throw new ConfigurationException(
+                "storage.segmentSize must not exceed storage.budget");
+        }
+        try {
+            return new OffHeapStorage(
+                dir.isEmpty() ? null : Paths.get(dir), budget, segment);
+        } catch (IOException ex) {
+            throw new ConfigurationException(
+                "Cannot create storage directory '" + dir + "'", ex);
+        }
+    }
+
+    /**
+     * Returns the directory of the segment files.
+     *
+     * @return the directory
+     *
+     * @since 0.1.0
+     */
+    public Path getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Returns the number of bytes which may be mapped at a time.
+     *
+     * @return the budget in bytes
+     *
+     * @since 0.1.0
+     */
+    public long getBudget() {
+        return this.budget;
+    }
+
+    /**
+     * Returns the number of bytes currently mapped by all stores.
+     *
+     * @return the mapped bytes
+     *
+     * @since 0.1.0
+     */
+    public long getMappedBytes() {
+        return this.mapped.get();
+    }
+
+    int getSegmentSize() {
+        return this.segmentSize;
+    }
+
+    /**
+     * Accounts for a segment being mapped or released.
+     *
+     * @param bytes the size of the segment, negative if released
+     * @return the number of mapped bytes afterwards
+     */
+    long addMapped(final long bytes) {
+        return this.mapped.addAndGet(bytes);
+    }
+
+    /**
+     * Creates a new, empty store.
+     *
+     * @return the store
+     * @throws UncheckedIOException if the storage has been closed
+     *
+     * @since 0.1.0
+     */
+    public RecordStore createStore() {
+        synchronized (this.stores) {
+            if (!Files.isDirectory(this.directory)) {
+                throw new UncheckedIOException(new IOException(
+                    "Storage directory " + this.directory + " is gone"));
+            }
+            final RecordStore store = new RecordStore(this);
+            this.stores.add(store);
+            return store;
+        }
+    }
+
+    /**
+     * Called by a store when it is closed.
+     *
+     * @param store the store
+     */
+    void release(final RecordStore store) {
+        synchronized (this.stores) {
+            this.stores.remove(store);
+        }
+    }
+
+    /**
+     * Closes all stores and deletes the directory if it is temporary.
+     *
+     * @throws IOException if the directory cannot be deleted
+     *
+     * @since 0.1.0
+     */
+    @Override
+    public void close() throws IOException {
+        final List<RecordStore> open;
+        synchronized (this.stores) {
+            open = new ArrayList<>(this.stores);
+        }
+        for (final RecordStore store : open) {
+            store.close();
+        }
+        if (this.temporary) {
+            Files.deleteIfExists(this.directory);
+        }
+    }
+}
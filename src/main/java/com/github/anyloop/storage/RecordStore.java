@@ -0,0 +1,427 @@
+/*
+ * RecordStore.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * An append-only store of records in memory-mapped segment files.
+ *
+ * A record consists of a sequence of <code>int</code>s and a sequence
+ * of <code>long</code>s, such as the column indices and coefficients of
+ * a sparse row. The <code>int</code>s are stored as differences to
+ * their predecessors in a variable-length zig-zag encoding, which is
+ * compact for sorted indices; the <code>long</code>s are stored with
+ * eight bytes each. Appending returns a handle by which the record can
+ * be read back.
+ *
+ * Records are appended by a single thread, but may be read by any
+ * number of threads concurrently, also while records are appended.
+ * Segments which were released to stay within the budget of the
+ * storage are mapped again when they are read.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class RecordStore implements Closeable {
+
+    /**
+     * The largest number of bytes of a variable-length
+     * <code>int</code>.
+     */
+    private static final int MAX_VARINT = 5;
+
+    private static final int SEVEN_BITS = 0x7f;
+
+    private static final int MORE = 0x80;
+
+    private static final int SEGMENT_SHIFT = 32;
+
+    private static final long OFFSET_MASK = 0xffffffffL;
+
+    /**
+     * The storage to which this store belongs.
+     */
+    private final OffHeapStorage storage;
+
+    /**
+     * The segments, replaced by a longer copy when a segment is added.
+     */
+    private volatile Segment[] segments = new Segment[0];
+
+    /**
+     * The position at which the next record is written into the last
+     * segment.
+     */
+    private int position;
+
+    /**
+     * The number of records.
+     */
+    private long recordCount;
+
+    /**
+     * The number of bytes written.
+     */
+    private long byteCount;
+
+    /**
+     * A clock for the least-recently-used order of the segments.
+     */
+    private long clock;
+
+    /**
+     * Tells whether the store has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * A segment file.
+     */
+    private static final class Segment {
+        /**
+         * The file.
+         */
+        private final Path file;
+
+        /**
+         * The size of the file in bytes.
+         */
+        private final int size;
+
+        /**
+         * The mapping of the file or <code>null</code>.
+         */
+        private volatile MappedByteBuffer buffer;
+
+        /**
+         * The time of the last access.
+         */
+        private long lastUse;
+
+        Segment(final Path theFile, final int theSize) {
+            this.file = theFile;
+            this.size = theSize;
+        }
+    }
+
+    /**
+     * Creates an empty store.
+     *
+     * @param theStorage the storage to which the store belongs
+     */
+    RecordStore(final OffHeapStorage theStorage) {
+        this.storage = theStorage;
+    }
+
+    /**
+     * Returns the number of records.
+     *
+     * @return the number of records
+     *
+     * @since 0.1.0
+     */
+    public long getRecordCount() {
+        return this.recordCount;
+    }
+
+    /**
+     * Returns the number of bytes written to the segments.
+     *
+     * @return the number of bytes
+     *
+     * @since 0.1.0
+     */
+    public long getByteCount() {
+        return this.byteCount;
+    }
+
+    /**
+     * Returns the number of segment files.
+     *
+     * @return the number of segments
+     *
+     * @since 0.1.0
+     */
+    public int getSegmentCount() {
+        return this.segments.length;
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @param ints the array holding the <code>int</code>s
+     * @param intCount the number of <code>int</code>s
+     * @param longs the array holding the <code>long</code>s
+     * @param longCount the number of <code>long</code>s
+     * @return the handle of the record
+     * @throws UncheckedIOException if a segment cannot be created
+     *
+     * @since 0.1.0
+     */
+    public long append(
+            final int[] ints,
+            final int intCount,
+            final long[] longs,
+            final int longCount) {
+        if (this.closed) {
+            throw new IllegalStateException("Store is closed");
+        }
+        final long bound = 2L * MAX_VARINT + (long) MAX_VARINT * intCount
+            + (long) Long.BYTES * longCount;
+        if (bound > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Record too large");
+        }
+        Segment[] segs = this.segments;
+        if (segs.length == 0
+                || segs[segs.length - 1].size - this.position < bound) {
+            this.addSegment((int) Math.max(
+                bound, this.storage.getSegmentSize()));
+            segs = this.segments;
+        }
+        final int index = segs.length - 1;
+        final MappedByteBuffer buf = this.map(segs[index]);
+        final int start = this.position;
+
+        int pos = putVarint(buf, start, intCount);
+        pos = putVarint(buf, pos, longCount);
+        int previous = 0;
+        for (int i = 0; i < intCount; ++i) {
+            final int delta = ints[i] - previous;
+            pos = putVarint(buf, pos, (delta << 1) ^ (delta >> 31));
+            previous = ints[i];
+        }
+        for (int i = 0; i < longCount; ++i) {
+            buf.putLong(pos, longs[i]);
+            pos += Long.BYTES;
+        }
+
+        this.position = pos;
+        this.byteCount += pos - start;
+        ++this.recordCount;
+        return ((long) index << SEGMENT_SHIFT) | start;
+    }
+
+    /**
+     * Returns the number of <code>int</code>s of a record.
+     *
+     * @param handle the handle of the record
+     * @return the number of <code>int</code>s
+     *
+     * @since 0.1.0
+     */
+    public int getIntCount(final long handle) {
+        final MappedByteBuffer buf = this.bufferOf(handle);
+        return getVarint(buf, (int) (handle & OFFSET_MASK));
+    }
+
+    /**
+     * Returns the number of <code>long</code>s of a record.
+     *
+     * @param handle the handle of the record
+     * @return the number of <code>long</code>s
+     *
+     * @since 0.1.0
+     */
+    public int getLongCount(final long handle) {
+        final MappedByteBuffer buf = this.bufferOf(handle);
+        final int pos = (int) (handle & OFFSET_MASK);
+        return getVarint(buf, skipVarint(buf, pos));
+    }
+
+    /**
+     * Reads a record.
+     *
+     * @param handle the handle of the record
+     * @param ints receives the <code>int</code>s, at least
+     *        {@link #getIntCount} long
+     * @param longs receives the <code>long</code>s, at least
+     *        {@link #getLongCount} long
+     *
+     * @since 0.1.0
+     */
+    public void read(final long handle, final int[] ints, final long[] longs) {
+        final MappedByteBuffer buf = this.bufferOf(handle);
+        int pos = (int) (handle & OFFSET_MASK);
+        final int intCount = getVarint(buf, pos);
+        pos = skipVarint(buf, pos);
+        final int longCount = getVarint(buf, pos);
+        pos = skipVarint(buf, pos);
+        int previous = 0;
+        for (int i = 0; i < intCount; ++i) {
+            final int z = getVarint(buf, pos);
+            pos = skipVarint(buf, pos);
+            previous += (z >>> 1) ^ -(z & 1);
+            ints[i] = previous;
+        }
+        for (int i = 0; i < longCount; ++i) {
+            longs[i] = buf.getLong(pos);
+            pos += Long.BYTES;
+        }
+    }
+
+    private static int putVarint(
+            final MappedByteBuffer buf,
+            final int position,
+            final int value) {
+        int pos = position;
+        int v = value;
+        while ((v & ~SEVEN_BITS) != 0) {
+            buf.put(pos++, (byte) ((v & SEVEN_BITS) | MORE));
+            v >>>= 7;
+        }
+        buf.put(pos++, (byte) v);
+        return pos;
+    }
+
+    private static int getVarint(final MappedByteBuffer buf, final int pos) {
+        int value = 0;
+        int shift = 0;
+        for (int p = pos;; ++p, shift += 7) {
+            final byte b = buf.get(p);
+            value |= (b & SEVEN_BITS) << shift;
+            if ((b & MORE) == 0) {
+                return value;
+            }
+        }
+    }
+
+    private static int skipVarint(final MappedByteBuffer buf, final int pos) {
+        int p = pos;
+        while ((buf.get(p) & MORE) != 0) {
+            ++p;
+        }
+        return p + 1;
+    }
+
+    private MappedByteBuffer bufferOf(final long handle) {
+        if (this.closed) {
+            throw new IllegalStateException("Store is closed");
+        }
+        return this.map(this.segments[(int) (handle >>> SEGMENT_SHIFT)]);
+    }
+
+    /**
+     * Returns the mapping of a segment, mapping it if necessary.
+     */
+    private MappedByteBuffer map(final Segment segment) {
+        segment.lastUse = ++this.clock;
+        final MappedByteBuffer buf = segment.buffer;
+        if (buf != null) {
+            return buf;
+        }
+        synchronized (this) {
+            if (segment.buffer == null) {
+                this.evictFor(segment);
+                try (FileChannel channel = FileChannel.open(segment.file,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    segment.buffer = channel.map(
+                        FileChannel.MapMode.READ_WRITE, 0, segment.size);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                this.storage.addMapped(segment.size);
+            }
+            return segment.buffer;
+        }
+    }
+
+    /**
+     * Releases the least recently used segments until the given
+     * segment fits into the budget. The last segment, which receives
+     * new records, is never released.
+     */
+    private void evictFor(final Segment segment) {
+        final Segment[] segs = this.segments;
+        while (this.storage.getMappedBytes() + segment.size
+                > this.storage.getBudget()) {
+            Segment victim = null;
+            for (int s = 0; s < segs.length - 1; ++s) {
+                if (segs[s] != segment && segs[s].buffer != null
+                        && (victim == null
+                            || segs[s].lastUse < victim.lastUse)) {
+                    victim = segs[s];
+                }
+            }
+            if (victim == null) {
+                return;
+            }
+            // the mapping itself is released once it is unreachable
+            victim.buffer = null;
+            this.storage.addMapped(-victim.size);
+        }
+    }
+
+    private void addSegment(final int size) {
+        try {
+            final Path file = Files.createTempFile(
+                this.storage.getDirectory(), "segment-", ".bin");
+            final Segment[] segs = this.segments;
+            final Segment[] grown = Arrays.copyOf(segs, segs.length + 1);
+            grown[segs.length] = new Segment(file, size);
+            synchronized (this) {
+                this.segments = grown;
+            }
+            this.position = 0;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Releases all segments and deletes their files. Handles become
+     * invalid.
+     *
+     * @since 0.1.0
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            for (final Segment segment : this.segments) {
+                if (segment.buffer != null) {
+                    segment.buffer = null;
+                    this.storage.addMapped(-segment.size);
+                }
+                try {
+                    Files.deleteIfExists(segment.file);
+                } catch (IOException ex) {
+                    segment.file.toFile().deleteOnExit();
+                }
+            }
+        }
+        this.storage.release(this);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * StorageConfig.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.storage;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.chassis.annotations.ConfigProperty;
+import com.github.anyloop.chassis.annotations.DefaultValue;
+
+/**
+ * Configuration of the off-heap storage.
+ *
+ * In YAML notation:
+ * <pre>
+ * storage:
+ *   offHeap: true
+ *   directory: /scratch/anyloop
+ *   budget: 4294967296
+ *   segmentSize: 67108864
+ * </pre>
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public interface StorageConfig {
+
+    /**
+     * Tells whether large tables are kept off the heap.
+     *
+     * @return <code>true</code> to use the off-heap storage
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("storage.offHeap")
+    @DefaultValue("false")
+    boolean isOffHeap() throws ConfigurationException;
+
+    /**
+     * The directory in which the segment files are created. An empty
+     * value denotes the temporary directory of the system.
+     *
+     * @return the directory
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("storage.directory")
+    @DefaultValue("")
+    String getDirectory() throws ConfigurationException;
+
+    /**
+     * The number of bytes which may be mapped into memory at a time.
+     *
+     * @return the budget in bytes
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("storage.budget")
+    @DefaultValue("1073741824")
+    long getBudget() throws ConfigurationException;
+
+    /**
+     * The size of a segment file in bytes. Larger records get a
+     * segment of their own.
+     *
+     * @return the segment size in bytes
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("storage.segmentSize")
+    @DefaultValue("67108864")
+    int getSegmentSize() throws ConfigurationException;
+}
@@ -0,0 +1,179 @@
+/*
+ * BoundedCache.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.symbolic;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A concurrent memo table with a bounded number of entries.
+ *
+ * Entries are evicted in the order in which they were inserted once
+ * the capacity is exceeded. Lookups take no locks, so the table can be
+ * shared by all workers of a fork/join pool. Two threads computing the
+ * same entry at the same time both compute it, but only the first
+ * result is kept.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class BoundedCache<K, V> {
+
+    /**
+     * The largest number of entries.
+     */
+    private final int capacity;
+
+    /**
+     * The entries.
+     */
+    private final Map<K, V> map = new ConcurrentHashMap<>();
+
+    /**
+     * The keys in insertion order.
+     */
+    private final Queue<K> order = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The number of entries, maintained apart from the map so that it
+     * is cheap to read.
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * The number of successful lookups.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * The number of failed lookups.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param theCapacity the largest number of entries, positive
+     *
+     * @since 0.1.0
+     */
+    public BoundedCache(final int theCapacity) {
+        if (theCapacity <= 0) {
+            throw new IllegalArgumentException(
+                "Cache capacity must be positive");
+        }
+        this.capacity = theCapacity;
+    }
+
+    /**
+     * Looks up an entry.
+     *
+     * @param key the key
+     * @return the value or <code>null</code> if there is no entry
+     *
+     * @since 0.1.0
+     */
+    public V get(final K key) {
+        final V value = this.map.get(key);
+        (value == null ? this.misses : this.hits).incrementAndGet();
+        return value;
+    }
+
+    /**
+     * Adds an entry unless the key is present already, evicting the
+     * oldest entries if the capacity is exceeded.
+     *
+     * @param key the key
+     * @param value the value
+     * @return the value in the cache, which is the given one unless
+     *         another thread was faster
+     *
+     * @since 0.1.0
+     */
+    public V putIfAbsent(final K key, final V value) {
+        final V previous = this.map.putIfAbsent(key, value);
+        if (previous != null) {
+            return previous;
+        }
+        this.order.add(key);
+        if (this.size.incrementAndGet() > this.capacity) {
+            final K eldest = this.order.poll();
+            if (eldest != null && this.map.remove(eldest) != null) {
+                this.size.decrementAndGet();
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Returns the largest number of entries.
+     *
+     * @return the capacity
+     *
+     * @since 0.1.0
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return the size
+     *
+     * @since 0.1.0
+     */
+    public int size() {
+        return this.size.get();
+    }
+
+    /**
+     * Returns the number of successful lookups.
+     *
+     * @return the hits
+     *
+     * @since 0.1.0
+     */
+    public long getHitCount() {
+        return this.hits.get();
+    }
+
+    /**
+     * Returns the number of failed lookups.
+     *
+     * @return the misses
+     *
+     * @since 0.1.0
+     */
+    public long getMissCount() {
+        return this.misses.get();
+    }
+}
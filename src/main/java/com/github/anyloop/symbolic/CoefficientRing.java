@@ -0,0 +1,103 @@
+/*
+ * CoefficientRing.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.symbolic;
+
+/**
+ * The arithmetic of polynomial coefficients stored as primitive
+ * <code>long</code> values.
+ *
+ * Implementations decide how a coefficient is represented in its
+ * <code>long</code>, e.g. as a plain integer or as a residue in some
+ * internal form, but the value <code>0L</code> must always represent
+ * zero so that vanishing terms can be recognised without a call.
+ * Implementations are immutable and thread-safe.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public interface CoefficientRing {
+
+    /**
+     * Converts an integer into a coefficient.
+     *
+     * @param n the integer
+     * @return the representation of <code>n</code>
+     *
+     * @since 0.1.0
+     */
+    long fromLong(long n);
+
+    /**
+     * Adds two coefficients.
+     *
+     * @param a a coefficient
+     * @param b another coefficient
+     * @return <code>a + b</code>
+     *
+     * @since 0.1.0
+     */
+    long add(long a, long b);
+
+    /**
+     * Subtracts two coefficients.
+     *
+     * @param a a coefficient
+     * @param b another coefficient
+     * @return <code>a - b</code>
+     *
+     * @since 0.1.0
+     */
+    long subtract(long a, long b);
+
+    /**
+     * Negates a coefficient.
+     *
+     * @param a a coefficient
+     * @return <code>-a</code>
+     *
+     * @since 0.1.0
+     */
+    long negate(long a);
+
+    /**
+     * Multiplies two coefficients.
+     *
+     * @param a a coefficient
+     * @param b another coefficient
+     * @return <code>a * b</code>
+     *
+     * @since 0.1.0
+     */
+    long multiply(long a, long b);
+
+    /**
+     * Formats a coefficient.
+     *
+     * @param a a coefficient
+     * @return a human readable form of the coefficient
+     *
+     * @since 0.1.0
+     */
+    String format(long a);
+}
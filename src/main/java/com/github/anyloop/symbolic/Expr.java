@@ -0,0 +1,964 @@
+/*
+ * Expr.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.symbolic;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable, hash-consed symbolic expression.
+ *
+ * Expressions form a directed acyclic graph: every node is interned
+ * in a global concurrent table when it is created, so that
+ * structurally equal subterms are represented by one and the same
+ * object. The table refers to its nodes weakly: a node that is no
+ * longer reachable from outside is collected, and its entry is
+ * removed the next time an expression is interned. All factory
+ * methods bring their result into a canonical form first:
+ * <ul>
+ *   <li>nested sums and products are flattened,</li>
+ *   <li>rational numbers are folded exactly,</li>
+ *   <li>equal bases of a product are collected into powers and equal
+ *       terms of a sum into rational multiples,</li>
+ *   <li>the operands of sums and products are sorted by
+ *       {@link #compareTo}.</li>
+ * </ul>
+ * Consequently two expressions are equal if and only if they are
+ * identical, and <code>==</code> may be used instead of
+ * {@link #equals}. Products are commutative; non-commuting objects
+ * such as chains of Dirac matrices are represented as functions,
+ * whose arguments keep their order.
+ *
+ * The ordering of {@link #compareTo} depends on structure and symbol
+ * names only. It does not depend on the order in which expressions
+ * were created, so the printed form of an expression is the same in
+ * every run, however many threads build it.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class Expr implements Comparable<Expr> {
+
+    /**
+     * The kinds of expression nodes, in canonical order.
+     *
+     * @since 0.1.0
+     */
+    public enum Kind {
+        /** A rational number. */
+        NUMBER,
+        /** A symbol. */
+        SYMBOL,
+        /** A power with integer exponent. */
+        POWER,
+        /** A commutative product of at least two factors. */
+        PRODUCT,
+        /** A sum of at least two terms. */
+        SUM,
+        /** A function of ordered arguments. */
+        FUNCTION
+    }
+
+    /**
+     * The global table of all live expressions. Keys and values are
+     * the same weak references.
+     */
+    private static final Map<Ref, Ref> TABLE = new ConcurrentHashMap<>();
+
+    /**
+     * The queue of references to collected expressions, whose entries
+     * are still to be removed from {@link #TABLE}.
+     */
+    private static final ReferenceQueue<Expr> COLLECTED =
+        new ReferenceQueue<>();
+
+    /**
+     * Argument array of leaves.
+     */
+    private static final Expr[] NO_ARGS = new Expr[0];
+
+    /**
+     * The number zero.
+     *
+     * @since 0.1.0
+     */
+    public static final Expr ZERO = number(0);
+
+    /**
+     * The number one.
+     *
+     * @since 0.1.0
+     */
+    public static final Expr ONE = number(1);
+
+    /**
+     * The number minus one.
+     *
+     * @since 0.1.0
+     */
+    public static final Expr MINUS_ONE = number(-1);
+
+    /**
+     * The kind of this node.
+     */
+    private final Kind kind;
+
+    /**
+     * The numerator of a number, the ID of a symbol or function, or
+     * the exponent of a power.
+     */
+    private final long value;
+
+    /**
+     * The denominator of a number, one otherwise.
+     */
+    private final long denominator;
+
+    /**
+     * The operands, empty for numbers and symbols.
+     */
+    private final Expr[] args;
+
+    /**
+     * The structural hash code.
+     */
+    private final int hash;
+
+    /**
+     * The number of nodes of the expression written out as a tree,
+     * saturating at {@link Long#MAX_VALUE}.
+     */
+    private final long treeSize;
+
+    private Expr(
+            final Kind theKind,
+            final long theValue,
+            final long theDenominator,
+            final Expr[] theArgs) {
+        this.kind = theKind;
+        this.value = theValue;
+        this.denominator = theDenominator;
+        this.args = theArgs;
+
+        int h = 31 * theKind.ordinal() + Long.hashCode(theValue);
+        h = 31 * h + Long.hashCode(theDenominator);
+        long size = 1;
+        for (final Expr arg : theArgs) {
+            h = 31 * h + arg.hash;
+            size += arg.treeSize;
+            if (size < 0) {
+                size = Long.MAX_VALUE;
+            }
+        }
+        this.hash = h;
+        this.treeSize = size;
+    }
+
+    /**
+     * Returns the unique instance of a node.
+     *
+     * @param kind the kind of the node
+     * @param value the value of the node
+     * @param denominator the denominator of a number
+     * @param args the interned operands in canonical order
+     * @return the interned node
+     */
+    private static Expr intern(
+            final Kind kind,
+            final long value,
+            final long denominator,
+            final Expr[] args) {
+        expunge();
+        final Expr candidate = new Expr(kind, value, denominator, args);
+        final Ref ref = new Ref(candidate);
+        while (true) {
+            final Ref existing = TABLE.putIfAbsent(ref, ref);
+            if (existing == null) {
+                return candidate;
+            }
+            final Expr e = existing.get();
+            if (e != null) {
+                return e;
+            }
+            // collected but not yet expunged
+            TABLE.remove(existing, existing);
+        }
+    }
+
+    /**
+     * Removes the entries of collected expressions from the table.
+     */
+    private static void expunge() {
+        Reference<? extends Expr> ref;
+        while ((ref = COLLECTED.poll()) != null) {
+            TABLE.remove(ref, ref);
+        }
+    }
+
+    /**
+     * Returns an integer.
+     *
+     * @param n the value
+     * @return the number
+     *
+     * @since 0.1.0
+     */
+    public static Expr number(final long n) {
+        return intern(Kind.NUMBER, n, 1, NO_ARGS);
+    }
+
+    /**
+     * Returns a rational number.
+     *
+     * @param numerator the numerator
+     * @param denominator the denominator, not zero
+     * @return the number in lowest terms
+     * @throws ArithmeticException if the denominator is zero
+     *
+     * @since 0.1.0
+     */
+    public static Expr number(final long numerator, final long denominator) {
+        if (denominator == 0) {
+            throw new ArithmeticException("Division by zero");
+        }
+        long g = gcd(Math.abs(numerator), Math.abs(denominator));
+        if (denominator < 0) {
+            g = -g;
+        }
+        return intern(Kind.NUMBER,
+            numerator / g, denominator / g, NO_ARGS);
+    }
+
+    /**
+     * Returns a symbol.
+     *
+     * @param name the name of the symbol
+     * @return the symbol
+     *
+     * @since 0.1.0
+     */
+    public static Expr symbol(final String name) {
+        return symbol(Symbols.intern(name));
+    }
+
+    /**
+     * Returns a symbol.
+     *
+     * @param id the ID of the symbol, see {@link Symbols}
+     * @return the symbol
+     *
+     * @since 0.1.0
+     */
+    public static Expr symbol(final int id) {
+        return intern(Kind.SYMBOL, id, 1, NO_ARGS);
+    }
+
+    /**
+     * Returns a function applied to arguments. The order of the
+     * arguments is kept.
+     *
+     * @param name the name of the function
+     * @param arguments the arguments
+     * @return the function application
+     *
+     * @since 0.1.0
+     */
+    public static Expr function(final String name, final Expr... arguments) {
+        return intern(Kind.FUNCTION, Symbols.intern(name), 1,
+            arguments.length == 0 ? NO_ARGS : arguments.clone());
+    }
+
+    /**
+     * Returns the sum of expressions in canonical form.
+     *
+     * @param terms the terms
+     * @return the sum
+     *
+     * @since 0.1.0
+     */
+    public static Expr sum(final Expr... terms) {
+        return sum(Arrays.asList(terms));
+    }
+
+    /**
+     * Returns the sum of expressions in canonical form.
+     *
+     * @param terms the terms
+     * @return the sum
+     *
+     * @since 0.1.0
+     */
+    public static Expr sum(final List<Expr> terms) {
+        // split every term into a rational coefficient and the rest
+        final List<Expr> coefficients = new ArrayList<>();
+        final List<Expr> rests = new ArrayList<>();
+        Expr constant = ZERO;
+        for (final Expr term : terms) {
+            if (term.kind == Kind.SUM) {
+                for (final Expr t : term.args) {
+                    if (t.kind == Kind.NUMBER) {
+                        constant = add(constant, t);
+                    } else {
+                        splitTerm(t, coefficients, rests);
+                    }
+                }
+            } else if (term.kind == Kind.NUMBER) {
+                constant = add(constant, term);
+            } else {
+                splitTerm(term, coefficients, rests);
+            }
+        }
+
+        final Integer[] order = sortedIndices(rests);
+        final List<Expr> result = new ArrayList<>(order.length + 1);
+        if (constant != ZERO) {
+            result.add(constant);
+        }
+        for (int i = 0; i < order.length;) {
+            final Expr rest = rests.get(order[i]);
+            Expr coefficient = coefficients.get(order[i]);
+            int j = i + 1;
+            while (j < order.length && rests.get(order[j]) == rest) {
+                coefficient = add(coefficient, coefficients.get(order[j]));
+                ++j;
+            }
+            if (coefficient != ZERO) {
+                result.add(coefficient == ONE
+                    ? rest : product(coefficient, rest));
+            }
+            i = j;
+        }
+
+        if (result.isEmpty()) {
+            return ZERO;
+        }
+        if (result.size() == 1) {
+            return result.get(0);
+        }
+        return intern(Kind.SUM, 0, 1, result.toArray(NO_ARGS));
+    }
+
+    private static void splitTerm(
+            final Expr term,
+            final List<Expr> coefficients,
+            final List<Expr> rests) {
+        if (term.kind == Kind.PRODUCT && term.args[0].kind == Kind.NUMBER) {
+            coefficients.add(term.args[0]);
+            // the remaining factors are still sorted and collected
+            rests.add(term.args.length == 2
+                ? term.args[1]
+                : intern(Kind.PRODUCT, 0, 1,
+                    Arrays.copyOfRange(term.args, 1, term.args.length)));
+        } else {
+            coefficients.add(ONE);
+            rests.add(term);
+        }
+    }
+
+    /**
+     * Returns the product of expressions in canonical form.
+     *
+     * @param factors the factors
+     * @return the product
+     *
+     * @since 0.1.0
+     */
+    public static Expr product(final Expr... factors) {
+        return product(Arrays.asList(factors));
+    }
+
+    /**
+     * Returns the product of expressions in canonical form.
+     *
+     * @param factors the factors
+     * @return the product
+     *
+     * @since 0.1.0
+     */
+    public static Expr product(final List<Expr> factors) {
+        // split every factor into base and exponent
+        final List<Expr> bases = new ArrayList<>();
+        final List<Integer> exponents = new ArrayList<>();
+        Expr coefficient = ONE;
+        for (final Expr factor : factors) {
+            if (factor.kind == Kind.PRODUCT) {
+                for (final Expr f : factor.args) {
+                    if (f.kind == Kind.NUMBER) {
+                        coefficient = multiply(coefficient, f);
+                    } else {
+                        splitFactor(f, bases, exponents);
+                    }
+                }
+            } else if (factor.kind == Kind.NUMBER) {
+                coefficient = multiply(coefficient, factor);
+            } else {
+                splitFactor(factor, bases, exponents);
+            }
+        }
+        if (coefficient == ZERO) {
+            return ZERO;
+        }
+
+        final Integer[] order = sortedIndices(bases);
+        final List<Expr> result = new ArrayList<>(order.length + 1);
+        if (coefficient != ONE) {
+            result.add(coefficient);
+        }
+        for (int i = 0; i < order.length;) {
+            final Expr base = bases.get(order[i]);
+            int exponent = exponents.get(order[i]);
+            int j = i + 1;
+            while (j < order.length && bases.get(order[j]) == base) {
+                exponent = Math.addExact(exponent, exponents.get(order[j]));
+                ++j;
+            }
+            if (exponent != 0) {
+                result.add(exponent == 1
+                    ? base : intern(Kind.POWER, exponent, 1,
+                        new Expr[] {base}));
+            }
+            i = j;
+        }
+
+        if (result.isEmpty()) {
+            return ONE;
+        }
+        if (result.size() == 1) {
+            return result.get(0);
+        }
+        return intern(Kind.PRODUCT, 0, 1, result.toArray(NO_ARGS));
+    }
+
+    private static void splitFactor(
+            final Expr factor,
+            final List<Expr> bases,
+            final List<Integer> exponents) {
+        if (factor.kind == Kind.POWER) {
+            bases.add(factor.args[0]);
+            exponents.add((int) factor.value);
+        } else {
+            bases.add(factor);
+            exponents.add(1);
+        }
+    }
+
+    /**
+     * Returns a power in canonical form. Powers of numbers are
+     * evaluated, and powers of products and powers are distributed.
+     *
+     * @param base the base
+     * @param exponent the exponent
+     * @return the power
+     * @throws ArithmeticException if zero is raised to a negative power
+     *
+     * @since 0.1.0
+     */
+    public static Expr power(final Expr base, final int exponent) {
+        if (exponent == 0) {
+            return ONE;
+        }
+        if (exponent == 1) {
+            return base;
+        }
+        switch (base.kind) {
+            case NUMBER:
+                return numberPower(base, exponent);
+            case POWER:
+                return power(base.args[0],
+                    Math.multiplyExact((int) base.value, exponent));
+            case PRODUCT:
+                final Expr[] factors = new Expr[base.args.length];
+                for (int i = 0; i < factors.length; ++i) {
+                    factors[i] = power(base.args[i], exponent);
+                }
+                return product(factors);
+            default:
+                return intern(Kind.POWER, exponent, 1, new Expr[] {base});
+        }
+    }
+
+    /**
+     * Returns <code>this + other</code>.
+     *
+     * @param other the other term
+     * @return the sum
+     *
+     * @since 0.1.0
+     */
+    public Expr plus(final Expr other) {
+        return sum(this, other);
+    }
+
+    /**
+     * Returns <code>this - other</code>.
+     *
+     * @param other the subtrahend
+     * @return the difference
+     *
+     * @since 0.1.0
+     */
+    public Expr minus(final Expr other) {
+        return sum(this, other.negate());
+    }
+
+    /**
+     * Returns <code>this * other</code>.
+     *
+     * @param other the other factor
+     * @return the product
+     *
+     * @since 0.1.0
+     */
+    public Expr times(final Expr other) {
+        return product(this, other);
+    }
+
+    /**
+     * Returns <code>-this</code>.
+     *
+     * @return the negated expression
+     *
+     * @since 0.1.0
+     */
+    public Expr negate() {
+        return product(MINUS_ONE, this);
+    }
+
+    /**
+     * Returns <code>this^exponent</code>.
+     *
+     * @param exponent the exponent
+     * @return the power
+     *
+     * @since 0.1.0
+     */
+    public Expr pow(final int exponent) {
+        return power(this, exponent);
+    }
+
+    /**
+     * Returns the kind of this node.
+     *
+     * @return the kind
+     *
+     * @since 0.1.0
+     */
+    public Kind getKind() {
+        return this.kind;
+    }
+
+    /**
+     * Returns the number of operands.
+     *
+     * @return the number of terms of a sum, factors of a product or
+     *         arguments of a function, one for powers and zero for
+     *         numbers and symbols
+     *
+     * @since 0.1.0
+     */
+    public int getArgCount() {
+        return this.args.length;
+    }
+
+    /**
+     * Returns an operand. The base of a power is its only operand.
+     *
+     * @param index the index of the operand
+     * @return the operand
+     *
+     * @since 0.1.0
+     */
+    public Expr getArg(final int index) {
+        return this.args[index];
+    }
+
+    /**
+     * Returns the numerator of a number.
+     *
+     * @return the numerator
+     *
+     * @since 0.1.0
+     */
+    public long getNumerator() {
+        return this.value;
+    }
+
+    /**
+     * Returns the denominator of a number, which is always positive.
+     *
+     * @return the denominator
+     *
+     * @since 0.1.0
+     */
+    public long getDenominator() {
+        return this.denominator;
+    }
+
+    /**
+     * Returns the exponent of a power.
+     *
+     * @return the exponent
+     *
+     * @since 0.1.0
+     */
+    public int getExponent() {
+        return (int) this.value;
+    }
+
+    /**
+     * Returns the symbol ID of a symbol or function.
+     *
+     * @return the symbol ID, see {@link Symbols}
+     *
+     * @since 0.1.0
+     */
+    public int getSymbol() {
+        return (int) this.value;
+    }
+
+    /**
+     * Returns the name of a symbol or function.
+     *
+     * @return the name
+     *
+     * @since 0.1.0
+     */
+    public String getName() {
+        return Symbols.name((int) this.value);
+    }
+
+    /**
+     * Returns the number of nodes this expression would have if
+     * it were written out as a tree without sharing.
+     *
+     * @return the size of the tree, saturating at
+     *         {@link Long#MAX_VALUE}
+     *
+     * @since 0.1.0
+     */
+    public long getTreeSize() {
+        return this.treeSize;
+    }
+
+    /**
+     * Counts the distinct nodes of this expression, i.e. the number of
+     * objects it actually occupies.
+     *
+     * @return the number of distinct nodes
+     *
+     * @since 0.1.0
+     */
+    public int getDagSize() {
+        final Map<Expr, Boolean> seen = new IdentityHashMap<>();
+        final List<Expr> stack = new ArrayList<>();
+        stack.add(this);
+        while (!stack.isEmpty()) {
+            final Expr e = stack.remove(stack.size() - 1);
+            if (seen.put(e, Boolean.TRUE) == null) {
+                stack.addAll(Arrays.asList(e.args));
+            }
+        }
+        return seen.size();
+    }
+
+    /**
+     * Returns the number of interned expressions that have not been
+     * collected yet.
+     *
+     * @return the size of the global table
+     *
+     * @since 0.1.0
+     */
+    public static int getInternedCount() {
+        expunge();
+        return TABLE.size();
+    }
+
+    private static Integer[] sortedIndices(final List<Expr> keys) {
+        final Integer[] order = new Integer[keys.size()];
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> keys.get(a).compareTo(keys.get(b)));
+        return order;
+    }
+
+    private static long gcd(final long a, final long b) {
+        long x = a;
+        long y = b;
+        while (y != 0) {
+            final long t = x % y;
+            x = y;
+            y = t;
+        }
+        return x == 0 ? 1 : x;
+    }
+
+    private static Expr add(final Expr a, final Expr b) {
+        if (a == ZERO) {
+            return b;
+        }
+        if (b == ZERO) {
+            return a;
+        }
+        final long g = gcd(a.denominator, b.denominator);
+        final long da = a.denominator / g;
+        return number(
+            Math.addExact(
+                Math.multiplyExact(a.value, b.denominator / g),
+                Math.multiplyExact(b.value, da)),
+            Math.multiplyExact(da, b.denominator));
+    }
+
+    private static Expr multiply(final Expr a, final Expr b) {
+        if (a == ONE) {
+            return b;
+        }
+        if (b == ONE) {
+            return a;
+        }
+        final long g1 = gcd(Math.abs(a.value), b.denominator);
+        final long g2 = gcd(Math.abs(b.value), a.denominator);
+        return number(
+            Math.multiplyExact(a.value / g1, b.value / g2),
+            Math.multiplyExact(a.denominator / g2, b.denominator / g1));
+    }
+
+    private static Expr numberPower(final Expr base, final int exponent) {
+        long num = 1;
+        long den = 1;
+        for (int i = Math.abs(exponent); i > 0; --i) {
+            num = Math.multiplyExact(num, base.value);
+            den = Math.multiplyExact(den, base.denominator);
+        }
+        return exponent > 0 ? number(num, den) : number(den, num);
+    }
+
+    /**
+     * Compares two expressions structurally. Numbers come first and
+     * are ordered by value, symbols and functions are ordered by
+     * name, and compound expressions by kind and then by their
+     * operands.
+     *
+     * @param other the other expression
+     * @return a negative number, zero or a positive number if this
+     *         expression is smaller, equal or larger
+     */
+    @Override
+    public int compareTo(final Expr other) {
+        if (this == other) {
+            return 0;
+        }
+        int c = this.kind.compareTo(other.kind);
+        if (c != 0) {
+            return c;
+        }
+        switch (this.kind) {
+            case NUMBER:
+                return compareNumbers(this, other);
+            case SYMBOL:
+                return this.getName().compareTo(other.getName());
+            case POWER:
+                c = this.args[0].compareTo(other.args[0]);
+                return c != 0 ? c : Long.compare(this.value, other.value);
+            case FUNCTION:
+                c = this.getName().compareTo(other.getName());
+                return c != 0 ? c : compareArgs(this.args, other.args);
+            default:
+                return compareArgs(this.args, other.args);
+        }
+    }
+
+    private static int compareNumbers(final Expr a, final Expr b) {
+        try {
+            return Long.compare(
+                Math.multiplyExact(a.value, b.denominator),
+                Math.multiplyExact(b.value, a.denominator));
+        } catch (ArithmeticException ex) {
+            return Double.compare(
+                (double) a.value / a.denominator,
+                (double) b.value / b.denominator);
+        }
+    }
+
+    private static int compareArgs(final Expr[] a, final Expr[] b) {
+        final int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; ++i) {
+            final int c = a[i].compareTo(b[i]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
+    /**
+     * Compares the node data and the identities of the operands.
+     * For interned expressions this is equivalent to <code>==</code>.
+     *
+     * @param obj the other object
+     * @return <code>true</code> if both are the same node
+     */
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Expr)) {
+            return false;
+        }
+        final Expr other = (Expr) obj;
+        if (this.hash != other.hash
+                || this.kind != other.kind
+                || this.value != other.value
+                || this.denominator != other.denominator
+                || this.args.length != other.args.length) {
+            return false;
+        }
+        for (int i = 0; i < this.args.length; ++i) {
+            if (this.args[i] != other.args[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        this.format(sb);
+        return sb.toString();
+    }
+
+    private void format(final StringBuilder sb) {
+        switch (this.kind) {
+            case NUMBER:
+                sb.append(this.value);
+                if (this.denominator != 1) {
+                    sb.append('/').append(this.denominator);
+                }
+                break;
+            case SYMBOL:
+                sb.append(this.getName());
+                break;
+            case FUNCTION:
+                sb.append(this.getName()).append('(');
+                for (int i = 0; i < this.args.length; ++i) {
+                    if (i > 0) {
+                        sb.append(", ");
+                    }
+                    this.args[i].format(sb);
+                }
+                sb.append(')');
+                break;
+            case POWER:
+                this.args[0].formatOperand(sb, Kind.POWER);
+                sb.append('^');
+                if (this.value < 0) {
+                    sb.append('(').append(this.value).append(')');
+                } else {
+                    sb.append(this.value);
+                }
+                break;
+            case PRODUCT:
+                for (int i = 0; i < this.args.length; ++i) {
+                    if (i > 0) {
+                        sb.append('*');
+                    }
+                    this.args[i].formatOperand(sb, Kind.PRODUCT);
+                }
+                break;
+            default:
+                for (int i = 0; i < this.args.length; ++i) {
+                    if (i > 0) {
+                        sb.append(" + ");
+                    }
+                    this.args[i].format(sb);
+                }
+                break;
+        }
+    }
+
+    private void formatOperand(final StringBuilder sb, final Kind parent) {
+        final boolean atomic = this.kind == Kind.SYMBOL
+            || this.kind == Kind.FUNCTION
+            || (this.kind == Kind.NUMBER && (parent == Kind.PRODUCT
+                || (this.denominator == 1 && this.value >= 0)))
+            || (this.kind == Kind.POWER && parent == Kind.PRODUCT);
+        if (atomic) {
+            this.format(sb);
+        } else {
+            sb.append('(');
+            this.format(sb);
+            sb.append(')');
+        }
+    }
+
+    /**
+     * A weak entry of the table. Two entries are equal if they refer
+     * to structurally equal live nodes; an entry whose node has been
+     * collected is equal to itself only.
+     */
+    private static final class Ref extends WeakReference<Expr> {
+
+        /**
+         * The hash code of the node, kept after it is collected.
+         */
+        private final int hash;
+
+        Ref(final Expr referent) {
+            super(referent, COLLECTED);
+            this.hash = referent.hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Ref) || this.hash != ((Ref) obj).hash) {
+                return false;
+            }
+            final Expr e = this.get();
+            return e != null && e.equals(((Ref) obj).get());
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * ExprReader.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.symbolic;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads named expressions in the notation of {@link Expr#toString}.
+ *
+ * The input is a sequence of statements of the form
+ * <pre>
+ * amp1 = s12^(-1)*(spa(1, 2) + 2*mu^2) - 3/4*s23;
+ * </pre>
+ * Besides the operators <code>+ - * ^</code> written by
+ * {@link Expr#toString} the division <code>/</code> and unary signs
+ * are understood, and exponents need no parentheses. Names consist of
+ * letters, digits and underscores and do not start with a digit. The
+ * input is read as a stream, so that the size of a file is limited
+ * only by the size of the expressions in it.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class ExprReader implements Closeable {
+
+    /**
+     * Marker for the end of the input.
+     */
+    private static final int EOF = -1;
+
+    private final Reader reader;
+
+    /**
+     * The next character or {@link #EOF}.
+     */
+    private int next;
+
+    private int line = 1;
+
+    private String name;
+
+    private Expr expr;
+
+    /**
+     * Creates a reader.
+     *
+     * @param theReader the source of the statements
+     * @throws IOException if the source cannot be read
+     *
+     * @since 0.1.0
+     */
+    public ExprReader(final Reader theReader) throws IOException {
+        this.reader = theReader instanceof BufferedReader
+            || theReader instanceof StringReader
+            ? theReader : new BufferedReader(theReader);
+        this.next = this.reader.read();
+    }
+
+    /**
+     * Parses a single expression.
+     *
+     * @param text the expression
+     * @return the expression
+     * @throws IllegalArgumentException if the text is not an expression
+     *
+     * @since 0.1.0
+     */
+    public static Expr parse(final String text) {
+        try (ExprReader r = new ExprReader(new StringReader(text))) {
+            final Expr e = r.sum();
+            r.skipBlanks();
+            if (r.next != EOF) {
+                throw r.error("end of input");
+            }
+            return e;
+        } catch (IOException ex) {
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Reads the next statement.
+     *
+     * @return <code>false</code> at the end of the input
+     * @throws IOException if the input cannot be read or contains a
+     *         syntax error
+     *
+     * @since 0.1.0
+     */
+    public boolean next() throws IOException {
+        this.skipBlanks();
+        if (this.next == EOF) {
+            return false;
+        }
+        this.name = this.identifier();
+        this.expect('=');
+        this.expr = this.sum();
+        this.expect(';');
+        return true;
+    }
+
+    /**
+     * Returns the name of the current statement.
+     *
+     * @return the name on the left-hand side
+     *
+     * @since 0.1.0
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Returns the expression of the current statement.
+     *
+     * @return the expression on the right-hand side
+     *
+     * @since 0.1.0
+     */
+    public Expr getExpr() {
+        return this.expr;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+    }
+
+    private void advance() throws IOException {
+        if (this.next == '\n') {
+            ++this.line;
+        }
+        this.next = this.reader.read();
+    }
+
+    private void skipBlanks() throws IOException {
+        while (this.next != EOF && Character.isWhitespace(this.next)) {
+            this.advance();
+        }
+    }
+
+    /**
+     * Consumes an operator if it comes next.
+     *
+     * @param c the operator
+     * @return <code>true</code> if it was consumed
+     * @throws IOException if the input cannot be read
+     */
+    private boolean accept(final char c) throws IOException {
+        this.skipBlanks();
+        if (this.next == c) {
+            this.advance();
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(final char c) throws IOException {
+        if (!this.accept(c)) {
+            throw this.error("'" + c + "'");
+        }
+    }
+
+    private IOException error(final String expected) {
+        return new IOException("Line " + this.line + ": expected "
+            + expected + " but found "
+            + (this.next == EOF ? "end of input"
+                : "'" + (char) this.next + "'"));
+    }
+
+    private Expr sum() throws IOException {
+        final List<Expr> terms = new ArrayList<>();
+        terms.add(this.product());
+        while (true) {
+            if (this.accept('+')) {
+                terms.add(this.product());
+            } else if (this.accept('-')) {
+                terms.add(this.product().negate());
+            } else {
+                return terms.size() == 1 ? terms.get(0) : Expr.sum(terms);
+            }
+        }
+    }
+
+    private Expr product() throws IOException {
+        final List<Expr> factors = new ArrayList<>();
+        factors.add(this.signed());
+        while (true) {
+            if (this.accept('*')) {
+                factors.add(this.signed());
+            } else if (this.accept('/')) {
+                factors.add(Expr.power(this.signed(), -1));
+            } else {
+                return factors.size() == 1
+                    ? factors.get(0) : Expr.product(factors);
+            }
+        }
+    }
+
+    private Expr signed() throws IOException {
+        if (this.accept('-')) {
+            return this.signed().negate();
+        }
+        if (this.accept('+')) {
+            return this.signed();
+        }
+        final Expr base = this.primary();
+        if (!this.accept('^')) {
+            return base;
+        }
+        final boolean parenthesized = this.accept('(');
+        final boolean negative = this.accept('-');
+        this.skipBlanks();
+        final long exponent = this.integer();
+        if (parenthesized) {
+            this.expect(')');
+        }
+        if (exponent > Integer.MAX_VALUE) {
+            throw new IOException("Line " + this.line
+                + ": exponent too large");
+        }
+        return Expr.power(base, negative ? -(int) exponent : (int) exponent);
+    }
+
+    private Expr primary() throws IOException {
+        if (this.accept('(')) {
+            final Expr e = this.sum();
+            this.expect(')');
+            return e;
+        }
+        this.skipBlanks();
+        if (this.next >= '0' && this.next <= '9') {
+            return Expr.number(this.integer());
+        }
+        final String id = this.identifier();
+        if (!this.accept('(')) {
+            return Expr.symbol(id);
+        }
+        final List<Expr> args = new ArrayList<>();
+        if (!this.accept(')')) {
+            do {
+                args.add(this.sum());
+            } while (this.accept(','));
+            this.expect(')');
+        }
+        return Expr.function(id, args.toArray(new Expr[0]));
+    }
+
+    private long integer() throws IOException {
+        if (this.next < '0' || this.next > '9') {
+            throw this.error("a number");
+        }
+        long n = 0;
+        while (this.next >= '0' && this.next <= '9') {
+            try {
+                n = Math.addExact(Math.multiplyExact(n, 10),
+                    this.next - '0');
+            } catch (ArithmeticException ex) {
+                throw new IOException("Line " + this.line
+                    + ": number too large", ex);
+            }
+            this.advance();
+        }
+        return n;
+    }
+
+    private String identifier() throws IOException {
+        this.skipBlanks();
+        if (this.next == EOF || !(Character.isLetter(this.next)
+                || this.next == '_')) {
+            throw this.error("a name");
+        }
+        final StringBuilder sb = new StringBuilder();
+        while (this.next != EOF && (Character.isLetterOrDigit(this.next)
+                || this.next == '_')) {
+            sb.append((char) this.next);
+            this.advance();
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * IntegerRing.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.symbolic;
+
+/**
+ * The integers in the range of <code>long</code>, with an
+ * {@link ArithmeticException} on overflow.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class IntegerRing implements CoefficientRing {
+
+    /**
+     * The only instance.
+     *
+     * @since 0.1.0
+     */
+    public static final IntegerRing INSTANCE = new IntegerRing();
+
+    /**
+     * Hidden constructor.
+     */
+    private IntegerRing() { }
+
+    @Override
+    public long fromLong(final long n) {
+        return n;
+    }
+
+    @Override
+    public long add(final long a, final long b) {
+        return Math.addExact(a, b);
+    }
+
+    @Override
+    public long subtract(final long a, final long b) {
+        return Math.subtractExact(a, b);
+    }
+
+    @Override
+    public long negate(final long a) {
+        return Math.negateExact(a);
+    }
+
+    @Override
+    public long multiply(final long a, final long b) {
+        return Math.multiplyExact(a, b);
+    }
+
+    @Override
+    public String format(final long a) {
+        return Long.toString(a);
+    }
+
+    @Override
+    public String toString() {
+        return "Z";
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * MemoryBudget.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.symbolic;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.anyloop.chassis.ConfigurationException;
+
+/**
+ * The heap budget shared by the symbolic stages of a run.
+ *
+ * Every {@link TermSorter} reserves the approximate footprint of the
+ * terms it keeps on the heap. A reservation which would exceed the
+ * budget is refused, and the sorter writes its terms to a sort file
+ * instead. The other stages which build large sums, such as the IBP
+ * reduction and the code optimizer, reserve their footprint in the same
+ * way and fall back to their leaner mode when it is refused. The budget
+ * therefore bounds the data held by all of them together, not the
+ * memory of the temporaries of single operations.
+ *
+ * Instances are thread-safe.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class MemoryBudget {
+
+    /**
+     * The number of bytes which may be reserved at a time.
+     */
+    private final long limit;
+
+    /**
+     * The directory of the sort files, <code>null</code> for the
+     * temporary directory of the system.
+     */
+    private final Path directory;
+
+    /**
+     * The number of bytes reserved at the moment.
+     */
+    private final AtomicLong used = new AtomicLong();
+
+    /**
+     * The largest number of bytes reserved so far.
+     */
+    private final AtomicLong peak = new AtomicLong();
+
+    /**
+     * Creates a budget.
+     *
+     * @param theLimit the number of bytes which may be reserved at a
+     *        time
+     * @param theDirectory the directory of the sort files or
+     *        <code>null</code> for the temporary directory of the system
+     *
+     * @since 0.1.0
+     */
+    public MemoryBudget(final long theLimit, final Path theDirectory) {
+        if (theLimit <= 0) {
+            throw new IllegalArgumentException("Budget must be positive");
+        }
+        this.limit = theLimit;
+        this.directory = theDirectory;
+    }
+
+    /**
+     * Creates a budget from its configuration.
+     *
+     * @param config the configuration
+     * @return the budget
+     * @throws ConfigurationException if the configuration is invalid
+     *         or the directory cannot be created
+     *
+     * @since 0.1.0
+     */
+    public static MemoryBudget fromConfig(final MemoryConfig config)
+            throws ConfigurationException {
+        long budget = config.getBudget();
+        if (budget < 0) {
+            throw new ConfigurationException(
+                "memory.budget must not be negative");
+        }
+        if (budget == 0) {
+            budget = Runtime.getRuntime().maxMemory() / 4;
+        }
+        final String dir = config.getDirectory();
+        if (dir.isEmpty()) {
+            return new MemoryBudget(budget, null);
+        }
+        try {
+            return new MemoryBudget(budget,
+                Files.createDirectories(Paths.get(dir)));
+        } catch (IOException ex) {
+            throw new ConfigurationException(
+                "Cannot create sort directory '" + dir + "'", ex);
+        }
+    }
+
+    /**
+     * Returns the number of bytes which may be reserved at a time.
+     *
+     * @return the budget in bytes
+     *
+     * @since 0.1.0
+     */
+    public long getLimit() {
+        return this.limit;
+    }
+
+    /**
+     * Returns the number of bytes reserved at the moment.
+     *
+     * @return the reserved bytes
+     *
+     * @since 0.1.0
+     */
+    public long getUsed() {
+        return this.used.get();
+    }
+
+    /**
+     * Returns the largest number of bytes reserved so far.
+     *
+     * @return the peak footprint in bytes
+     *
+     * @since 0.1.0
+     */
+    public long getPeak() {
+        return this.peak.get();
+    }
+
+    /**
+     * Reserves heap bytes if the budget allows it.
+     *
+     * @param bytes the number of bytes
+     * @return <code>true</code> if the bytes have been reserved
+     *
+     * @since 0.1.0
+     */
+    public boolean tryReserve(final long bytes) {
+        long current;
+        do {
+            current = this.used.get();
+            if (bytes > this.limit - current) {
+                return false;
+            }
+        } while (!this.used.compareAndSet(current, current + bytes));
+        this.peak.accumulateAndGet(current + bytes, Math::max);
+        return true;
+    }
+
+    /**
+     * Returns reserved bytes to the budget.
+     *
+     * @param bytes the number of bytes
+     *
+     * @since 0.1.0
+     */
+    public void release(final long bytes) {
+        this.used.addAndGet(-bytes);
+    }
+
+    /**
+     * Creates a new, empty sort file.
+     *
+     * @return the path of the file
+     * @throws IOException if the file cannot be created
+     */
+    Path createSortFile() throws IOException {
+        return this.directory == null
+            ? Files.createTempFile("anyloop-sort-", ".run")
+            : Files.createTempFile(this.directory, "anyloop-sort-", ".run");
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * MemoryConfig.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.symbolic;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.chassis.annotations.ConfigProperty;
+import com.github.anyloop.chassis.annotations.DefaultValue;
+
+/**
+ * Configuration of the memory budget shared by the stages of a run
+ * which build large sums: the symbolic stages, the IBP reduction and
+ * the code optimizer.
+ *
+ * In YAML notation:
+ * <pre>
+ * memory:
+ *   budget: 536870912
+ *   directory: /scratch/anyloop
+ * </pre>
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public interface MemoryConfig {
+
+    /**
+     * The number of heap bytes which intermediate expressions, pivot
+     * rows and programs under construction may occupy before they are
+     * moved to disk or a leaner mode is taken. Zero denotes a quarter
+     * of the maximum heap size.
+     *
+     * @return the budget in bytes
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("memory.budget")
+    @DefaultValue("0")
+    long getBudget() throws ConfigurationException;
+
+    /**
+     * The directory in which the sort files are created. An empty
+     * value denotes the temporary directory of the system.
+     *
+     * @return the directory
+     * @throws ConfigurationException if the value cannot be read
+     */
+    @ConfigProperty("memory.directory")
+    @DefaultValue("")
+    String getDirectory() throws ConfigurationException;
+}
@@ -0,0 +1,772 @@
+/*
+ * Polynomial.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.symbolic;
+
+import java.util.Arrays;
+
+/**
+ * An immutable sparse multivariate polynomial.
+ *
+ * The terms are stored in two parallel primitive arrays, one with the
+ * coefficients and one with the packed exponent vectors, so that no
+ * object is allocated per term. Each exponent takes
+ * {@value #FIELD_BITS} bits of a <code>long</code> word: seven bits
+ * for the exponent itself and one guard bit which catches overflows
+ * when monomials are multiplied by adding their words. Variable
+ * <code>0</code> occupies the highest bits of the first word, so that
+ * comparing the words as numbers orders the monomials
+ * lexicographically. The terms are sorted in descending order.
+ *
+ * Addition merges the two sorted term lists. Multiplication uses a
+ * binary heap over the rows of the shorter factor (Johnson's
+ * algorithm), which produces the terms of the product in order and
+ * needs memory proportional to the shorter factor only. Rows enter
+ * the heap only once they can hold the largest remaining product,
+ * which keeps the heap small for dense factors.
+ *
+ * All operands of an operation must have the same number of
+ * variables and the same {@link CoefficientRing}.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class Polynomial {
+
+    /**
+     * The number of bits per exponent, including the guard bit.
+     */
+    public static final int FIELD_BITS = 8;
+
+    /**
+     * The number of exponents per <code>long</code> word.
+     */
+    public static final int VARIABLES_PER_WORD = Long.SIZE / FIELD_BITS;
+
+    /**
+     * The largest exponent of a single variable.
+     */
+    public static final int MAX_EXPONENT = (1 << (FIELD_BITS - 1)) - 1;
+
+    /**
+     * The guard bits of all exponents of a word.
+     */
+    private static final long GUARD = 0x8080808080808080L;
+
+    /**
+     * The mask of a single exponent.
+     */
+    private static final long MASK = (1L << FIELD_BITS) - 1;
+
+    /**
+     * The arithmetic of the coefficients.
+     */
+    private final CoefficientRing ring;
+
+    /**
+     * The number of variables.
+     */
+    private final int variables;
+
+    /**
+     * The number of words per exponent vector.
+     */
+    private final int words;
+
+    /**
+     * The number of terms.
+     */
+    private final int size;
+
+    /**
+     * The coefficient of each term.
+     */
+    private final long[] coefficients;
+
+    /**
+     * The packed exponent vectors, <code>words</code> per term.
+     */
+    private final long[] exponents;
+
+    private Polynomial(
+            final CoefficientRing theRing,
+            final int theVariables,
+            final int theSize,
+            final long[] theCoefficients,
+            final long[] theExponents) {
+        this.ring = theRing;
+        this.variables = theVariables;
+        this.words = wordCount(theVariables);
+        this.size = theSize;
+        this.coefficients = theCoefficients;
+        this.exponents = theExponents;
+    }
+
+    /**
+     * Returns the number of words per exponent vector.
+     *
+     * @param variables the number of variables
+     * @return the number of words
+     */
+    static int wordCount(final int variables) {
+        return Math.max(1,
+            (variables + VARIABLES_PER_WORD - 1) / VARIABLES_PER_WORD);
+    }
+
+    /**
+     * Returns the zero polynomial.
+     *
+     * @param ring the ring of the coefficients
+     * @param variables the number of variables
+     * @return the zero polynomial
+     *
+     * @since 0.1.0
+     */
+    public static Polynomial zero(
+            final CoefficientRing ring,
+            final int variables) {
+        return new Polynomial(ring, variables, 0, new long[0], new long[0]);
+    }
+
+    /**
+     * Returns a constant polynomial.
+     *
+     * @param ring the ring of the coefficients
+     * @param variables the number of variables
+     * @param value the constant
+     * @return the constant polynomial
+     *
+     * @since 0.1.0
+     */
+    public static Polynomial constant(
+            final CoefficientRing ring,
+            final int variables,
+            final long value) {
+        return monomial(ring, variables, value, new int[variables]);
+    }
+
+    /**
+     * Returns a single variable.
+     *
+     * @param ring the ring of the coefficients
+     * @param variables the number of variables
+     * @param variable the index of the variable
+     * @return the polynomial consisting of the variable
+     *
+     * @since 0.1.0
+     */
+    public static Polynomial variable(
+            final CoefficientRing ring,
+            final int variables,
+            final int variable) {
+        final int[] powers = new int[variables];
+        powers[variable] = 1;
+        return monomial(ring, variables, 1, powers);
+    }
+
+    /**
+     * Returns a monomial.
+     *
+     * @param ring the ring of the coefficients
+     * @param variables the number of variables
+     * @param value the coefficient as an integer
+     * @param powers the exponent of each variable
+     * @return the monomial
+     * @throws ArithmeticException if an exponent exceeds
+     *         {@link #MAX_EXPONENT}
+     *
+     * @since 0.1.0
+     */
+    public static Polynomial monomial(
+            final CoefficientRing ring,
+            final int variables,
+            final long value,
+            final int[] powers) {
+        final long c = ring.fromLong(value);
+        if (c == 0) {
+            return zero(ring, variables);
+        }
+        final long[] packed = new long[wordCount(variables)];
+        for (int v = 0; v < variables; ++v) {
+            if (powers[v] < 0 || powers[v] > MAX_EXPONENT) {
+                throw new ArithmeticException(
+                    "Exponent " + powers[v] + " out of range");
+            }
+            packed[v / VARIABLES_PER_WORD] |= (long) powers[v] << shift(v);
+        }
+        return new Polynomial(ring, variables, 1, new long[] {c}, packed);
+    }
+
+    static int shift(final int variable) {
+        return Long.SIZE - FIELD_BITS
+            - FIELD_BITS * (variable % VARIABLES_PER_WORD);
+    }
+
+    /**
+     * Returns the ring of the coefficients.
+     *
+     * @return the ring
+     *
+     * @since 0.1.0
+     */
+    public CoefficientRing getRing() {
+        return this.ring;
+    }
+
+    /**
+     * Returns the number of variables.
+     *
+     * @return the number of variables
+     *
+     * @since 0.1.0
+     */
+    public int getVariableCount() {
+        return this.variables;
+    }
+
+    /**
+     * Returns the number of terms.
+     *
+     * @return the number of terms
+     *
+     * @since 0.1.0
+     */
+    public int getTermCount() {
+        return this.size;
+    }
+
+    /**
+     * Tells whether this is the zero polynomial.
+     *
+     * @return <code>true</code> if there are no terms
+     *
+     * @since 0.1.0
+     */
+    public boolean isZero() {
+        return this.size == 0;
+    }
+
+    /**
+     * Returns the coefficient of a term.
+     *
+     * @param term the index of the term
+     * @return the coefficient in the representation of the ring
+     *
+     * @since 0.1.0
+     */
+    public long getCoefficient(final int term) {
+        return this.coefficients[term];
+    }
+
+    /**
+     * Returns the exponent of a variable in a term.
+     *
+     * @param term the index of the term
+     * @param variable the index of the variable
+     * @return the exponent
+     *
+     * @since 0.1.0
+     */
+    public int getExponent(final int term, final int variable) {
+        final long word = this.exponents[
+            term * this.words + variable / VARIABLES_PER_WORD];
+        return (int) ((word >>> shift(variable)) & MASK);
+    }
+
+    /**
+     * Copies the packed exponent vector of a term.
+     *
+     * @param term the index of the term
+     * @param target the array receiving the vector
+     * @param offset the start of the vector in the target
+     */
+    void copyExponents(final int term, final long[] target, final int offset) {
+        System.arraycopy(this.exponents, term * this.words,
+            target, offset, this.words);
+    }
+
+    /**
+     * Returns a range of terms as a polynomial of its own.
+     *
+     * @param from the first term
+     * @param to the term after the last one
+     * @return the terms from <code>from</code> to <code>to - 1</code>
+     */
+    Polynomial slice(final int from, final int to) {
+        return new Polynomial(this.ring, this.variables, to - from,
+            Arrays.copyOfRange(this.coefficients, from, to),
+            Arrays.copyOfRange(this.exponents,
+                from * this.words, to * this.words));
+    }
+
+    /**
+     * Returns the highest exponent of a variable.
+     *
+     * @param variable the index of the variable
+     * @return the degree in the variable, <code>-1</code> for zero
+     *
+     * @since 0.1.0
+     */
+    public int getDegree(final int variable) {
+        int degree = this.size == 0 ? -1 : 0;
+        for (int t = 0; t < this.size; ++t) {
+            degree = Math.max(degree, this.getExponent(t, variable));
+        }
+        return degree;
+    }
+
+    private void checkCompatible(final Polynomial other) {
+        if (this.ring != other.ring || this.variables != other.variables) {
+            throw new IllegalArgumentException(
+                "Polynomials over " + this.ring + " in " + this.variables
+                + " and over " + other.ring + " in " + other.variables
+                + " variables cannot be combined");
+        }
+    }
+
+    /**
+     * Compares two packed exponent vectors.
+     *
+     * @param a the array holding the first vector
+     * @param i the start of the first vector
+     * @param b the array holding the second vector
+     * @param j the start of the second vector
+     * @param words the number of words per vector
+     * @return the sign of the comparison
+     */
+    static int compare(
+            final long[] a,
+            final int i,
+            final long[] b,
+            final int j,
+            final int words) {
+        for (int k = 0; k < words; ++k) {
+            // the guard bit keeps every word non-negative
+            if (a[i + k] != b[j + k]) {
+                return a[i + k] < b[j + k] ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns <code>this + other</code>.
+     *
+     * @param other the other summand
+     * @return the sum
+     *
+     * @since 0.1.0
+     */
+    public Polynomial add(final Polynomial other) {
+        return this.merge(other, false);
+    }
+
+    /**
+     * Returns <code>this - other</code>.
+     *
+     * @param other the subtrahend
+     * @return the difference
+     *
+     * @since 0.1.0
+     */
+    public Polynomial subtract(final Polynomial other) {
+        return this.merge(other, true);
+    }
+
+    private Polynomial merge(final Polynomial other, final boolean negate) {
+        this.checkCompatible(other);
+        final int w = this.words;
+        final Terms out = new Terms(w, this.size + other.size);
+        int i = 0;
+        int j = 0;
+        while (i < this.size && j < other.size) {
+            final int c = compare(
+                this.exponents, i * w, other.exponents, j * w, w);
+            if (c > 0) {
+                out.append(this.coefficients[i], this.exponents, i * w);
+                ++i;
+            } else if (c < 0) {
+                out.append(this.otherCoefficient(other, j, negate),
+                    other.exponents, j * w);
+                ++j;
+            } else {
+                out.append(negate
+                    ? this.ring.subtract(
+                        this.coefficients[i], other.coefficients[j])
+                    : this.ring.add(
+                        this.coefficients[i], other.coefficients[j]),
+                    this.exponents, i * w);
+                ++i;
+                ++j;
+            }
+        }
+        for (; i < this.size; ++i) {
+            out.append(this.coefficients[i], this.exponents, i * w);
+        }
+        for (; j < other.size; ++j) {
+            out.append(this.otherCoefficient(other, j, negate),
+                other.exponents, j * w);
+        }
+        return out.toPolynomial(this.ring, this.variables);
+    }
+
+    private long otherCoefficient(
+            final Polynomial other,
+            final int j,
+            final boolean negate) {
+        return negate
+            ? this.ring.negate(other.coefficients[j])
+            : other.coefficients[j];
+    }
+
+    /**
+     * Returns <code>-this</code>.
+     *
+     * @return the negated polynomial
+     *
+     * @since 0.1.0
+     */
+    public Polynomial negate() {
+        final long[] c = new long[this.size];
+        for (int t = 0; t < this.size; ++t) {
+            c[t] = this.ring.negate(this.coefficients[t]);
+        }
+        // the exponent vectors are never modified and may be shared
+        return new Polynomial(
+            this.ring, this.variables, this.size, c, this.exponents);
+    }
+
+    /**
+     * Multiplies every coefficient by a constant.
+     *
+     * @param factor the constant in the representation of the ring
+     * @return the scaled polynomial
+     *
+     * @since 0.1.0
+     */
+    public Polynomial scale(final long factor) {
+        final Terms out = new Terms(this.words, this.size);
+        for (int t = 0; t < this.size; ++t) {
+            out.append(this.ring.multiply(this.coefficients[t], factor),
+                this.exponents, t * this.words);
+        }
+        return out.toPolynomial(this.ring, this.variables);
+    }
+
+    /**
+     * Returns <code>this * other</code>.
+     *
+     * @param other the other factor
+     * @return the product
+     * @throws ArithmeticException if an exponent of the product
+     *         exceeds {@link #MAX_EXPONENT}
+     *
+     * @since 0.1.0
+     */
+    public Polynomial multiply(final Polynomial other) {
+        this.checkCompatible(other);
+        final Polynomial p = this.size <= other.size ? this : other;
+        final Polynomial q = this.size <= other.size ? other : this;
+        final int n = p.size;
+        final int m = q.size;
+        final int w = this.words;
+        if (n == 0) {
+            return p;
+        }
+
+        // row i of the heap stands for the products p[i] * q[col[i]],
+        // keys[i] holding the exponent vector of the current product.
+        // Row i + 1 cannot contain the largest product before p[i] * q[0]
+        // has been taken, so rows enter the heap only then.
+        final int[] heap = new int[n];
+        final int[] col = new int[n];
+        final long[] keys = new long[n * w];
+        final long[] current = new long[w];
+        setKey(keys, 0, p, 0, q, 0, w);
+        int heapSize = 1;
+        int nextRow = 1;
+
+        final Terms out = new Terms(w, n + m);
+        while (heapSize > 0) {
+            System.arraycopy(keys, heap[0] * w, current, 0, w);
+            long sum = 0;
+            do {
+                final int i = heap[0];
+                sum = this.ring.add(sum,
+                    this.ring.multiply(p.coefficients[i],
+                        q.coefficients[col[i]]));
+                if (col[i] == 0 && nextRow < n) {
+                    setKey(keys, nextRow, p, nextRow, q, 0, w);
+                    heap[heapSize] = nextRow++;
+                    siftUp(heap, heapSize++, keys, w);
+                }
+                if (++col[i] < m) {
+                    setKey(keys, i, p, i, q, col[i], w);
+                } else {
+                    heap[0] = heap[--heapSize];
+                }
+                siftDown(heap, heapSize, 0, keys, w);
+            } while (heapSize > 0
+                && compare(keys, heap[0] * w, current, 0, w) == 0);
+            out.append(sum, current, 0);
+        }
+        return out.toPolynomial(this.ring, this.variables);
+    }
+
+    private static void setKey(
+            final long[] keys,
+            final int row,
+            final Polynomial p,
+            final int i,
+            final Polynomial q,
+            final int j,
+            final int w) {
+        for (int k = 0; k < w; ++k) {
+            final long word = p.exponents[i * w + k] + q.exponents[j * w + k];
+            if ((word & GUARD) != 0) {
+                throw new ArithmeticException(
+                    "Exponent exceeds " + MAX_EXPONENT);
+            }
+            keys[row * w + k] = word;
+        }
+    }
+
+    /**
+     * Restores the max-heap property above a position.
+     *
+     * @param heap the rows in heap order
+     * @param start the position to be sifted up
+     * @param keys the exponent vectors of the rows
+     * @param w the number of words per vector
+     */
+    private static void siftUp(
+            final int[] heap,
+            final int start,
+            final long[] keys,
+            final int w) {
+        int k = start;
+        final int row = heap[k];
+        while (k > 0) {
+            final int parent = (k - 1) / 2;
+            if (compare(keys, heap[parent] * w, keys, row * w, w) >= 0) {
+                break;
+            }
+            heap[k] = heap[parent];
+            k = parent;
+        }
+        heap[k] = row;
+    }
+
+    /**
+     * Restores the max-heap property below a position.
+     *
+     * @param heap the rows in heap order
+     * @param size the number of rows in the heap
+     * @param start the position to be sifted down
+     * @param keys the exponent vectors of the rows
+     * @param w the number of words per vector
+     */
+    private static void siftDown(
+            final int[] heap,
+            final int size,
+            final int start,
+            final long[] keys,
+            final int w) {
+        int k = start;
+        final int row = heap[k];
+        while (true) {
+            int child = 2 * k + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && compare(keys, heap[child + 1] * w,
+                    keys, heap[child] * w, w) > 0) {
+                ++child;
+            }
+            if (compare(keys, heap[child] * w, keys, row * w, w) <= 0) {
+                break;
+            }
+            heap[k] = heap[child];
+            k = child;
+        }
+        heap[k] = row;
+    }
+
+    /**
+     * Raises this polynomial to a power by repeated squaring.
+     *
+     * @param exponent the exponent, not negative
+     * @return the power
+     *
+     * @since 0.1.0
+     */
+    public Polynomial pow(final int exponent) {
+        if (exponent < 0) {
+            throw new ArithmeticException("Negative exponent " + exponent);
+        }
+        Polynomial result = constant(this.ring, this.variables, 1);
+        Polynomial square = this;
+        for (int e = exponent; e > 0; e >>= 1) {
+            if ((e & 1) != 0) {
+                result = result.multiply(square);
+            }
+            if (e > 1) {
+                square = square.multiply(square);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Polynomial)) {
+            return false;
+        }
+        final Polynomial other = (Polynomial) obj;
+        return this.ring == other.ring
+            && this.variables == other.variables
+            && Arrays.equals(this.coefficients, 0, this.size,
+                other.coefficients, 0, other.size)
+            && Arrays.equals(this.exponents, 0, this.size * this.words,
+                other.exponents, 0, other.size * other.words);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = this.variables;
+        for (int t = 0; t < this.size; ++t) {
+            h = 31 * h + Long.hashCode(this.coefficients[t]);
+        }
+        for (int k = 0; k < this.size * this.words; ++k) {
+            h = 31 * h + Long.hashCode(this.exponents[k]);
+        }
+        return h;
+    }
+
+    /**
+     * Formats the polynomial with the given variable names.
+     *
+     * @param names the name of each variable
+     * @return a human readable form
+     *
+     * @since 0.1.0
+     */
+    public String format(final String... names) {
+        if (this.size == 0) {
+            return "0";
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (int t = 0; t < this.size; ++t) {
+            if (t > 0) {
+                sb.append(" + ");
+            }
+            sb.append(this.ring.format(this.coefficients[t]));
+            for (int v = 0; v < this.variables; ++v) {
+                final int e = this.getExponent(t, v);
+                if (e > 0) {
+                    sb.append('*').append(names[v]);
+                    if (e > 1) {
+                        sb.append('^').append(e);
+                    }
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        final String[] names = new String[this.variables];
+        for (int v = 0; v < names.length; ++v) {
+            names[v] = "x" + v;
+        }
+        return this.format(names);
+    }
+
+    /**
+     * A growable list of terms under construction.
+     */
+    static final class Terms {
+        /**
+         * The number of words per exponent vector.
+         */
+        private final int words;
+
+        /**
+         * The coefficients collected so far.
+         */
+        private long[] coefficients;
+
+        /**
+         * The exponent vectors collected so far.
+         */
+        private long[] exponents;
+
+        /**
+         * The number of terms collected so far.
+         */
+        private int size;
+
+        Terms(final int theWords, final int capacity) {
+            this.words = theWords;
+            this.coefficients = new long[Math.max(1, capacity)];
+            this.exponents = new long[Math.max(1, capacity) * theWords];
+        }
+
+        /**
+         * Appends a term unless its coefficient is zero.
+         *
+         * @param coefficient the coefficient
+         * @param source the array holding the exponent vector
+         * @param offset the start of the exponent vector
+         */
+        void append(
+                final long coefficient,
+                final long[] source,
+                final int offset) {
+            if (coefficient == 0) {
+                return;
+            }
+            if (this.size == this.coefficients.length) {
+                this.coefficients =
+                    Arrays.copyOf(this.coefficients, 2 * this.size);
+                this.exponents =
+                    Arrays.copyOf(this.exponents, 2 * this.size * this.words);
+            }
+            this.coefficients[this.size] = coefficient;
+            System.arraycopy(source, offset,
+                this.exponents, this.size * this.words, this.words);
+            ++this.size;
+        }
+
+        Polynomial toPolynomial(
+                final CoefficientRing ring,
+                final int variables) {
+            return new Polynomial(ring, variables, this.size,
+                this.coefficients, this.exponents);
+        }
+    }
+}
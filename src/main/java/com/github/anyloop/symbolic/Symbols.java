@@ -0,0 +1,122 @@
+/*
+ * Symbols.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.symbolic;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The global table of symbol names.
+ *
+ * Every name is mapped to a dense integer ID, starting at zero, on
+ * first use. IDs are never released. Looking up the ID of a known
+ * name does not lock, and neither does looking up the name of an ID.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class Symbols {
+
+    /**
+     * Mapping from names to IDs.
+     */
+    private static final Map<String, Integer> IDS =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Lock for assigning new IDs.
+     */
+    private static final Object LOCK = new Object();
+
+    /**
+     * The name of each ID. The array is replaced when it grows, and
+     * written before the ID is published through {@link #IDS}.
+     */
+    private static volatile String[] names = new String[64];
+
+    /**
+     * The number of IDs assigned so far.
+     */
+    private static int count;
+
+    /**
+     * Hidden constructor.
+     */
+    private Symbols() { }
+
+    /**
+     * Returns the ID of a symbol name, assigning a new one if the name
+     * is not yet known.
+     *
+     * @param name the name of the symbol
+     * @return the ID of the symbol
+     *
+     * @since 0.1.0
+     */
+    public static int intern(final String name) {
+        final Integer id = IDS.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (LOCK) {
+            final Integer again = IDS.get(name);
+            if (again != null) {
+                return again;
+            }
+            final int newId = count++;
+            String[] table = names;
+            if (newId == table.length) {
+                table = Arrays.copyOf(table, 2 * table.length);
+            }
+            table[newId] = name;
+            names = table;
+            IDS.put(name, newId);
+            return newId;
+        }
+    }
+
+    /**
+     * Returns the name of a symbol.
+     *
+     * @param id the ID of the symbol
+     * @return the name of the symbol
+     *
+     * @since 0.1.0
+     */
+    public static String name(final int id) {
+        return names[id];
+    }
+
+    /**
+     * Returns the number of symbols interned so far.
+     *
+     * @return the number of symbols
+     *
+     * @since 0.1.0
+     */
+    public static int size() {
+        return IDS.size();
+    }
+}
@@ -0,0 +1,702 @@
+/*
+ * TermSorter.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.symbolic;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects a large sum of polynomials, on the heap as long as a
+ * {@link MemoryBudget} allows and in sorted runs on disk beyond it.
+ *
+ * On the heap the summands are kept as sorted polynomials, and a
+ * summand is merged with its predecessor whenever that one is not
+ * much larger, so that every term takes part in a logarithmic number
+ * of merges. When the budget refuses another summand, all of them are
+ * merged into a sort file in a single pass that combines like terms;
+ * {@link #MERGE_WIDTH} runs are in turn merged into one. The sum is
+ * produced by a streaming merge of the runs and of the summands left
+ * on the heap, the scheme of the sort files of FORM. A sum that fits
+ * into the budget never touches the disk.
+ *
+ * Instances are not thread-safe, but several sorters may share a
+ * budget.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class TermSorter implements Closeable {
+
+    /**
+     * The number of runs which are merged into one.
+     */
+    static final int MERGE_WIDTH = 16;
+
+    /**
+     * The buffer size of a sort file stream.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The mask of a single exponent.
+     */
+    private static final long MASK = (1L << Polynomial.FIELD_BITS) - 1;
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(TermSorter.class);
+
+    /**
+     * The arithmetic of the coefficients.
+     */
+    private final CoefficientRing ring;
+
+    /**
+     * The number of variables.
+     */
+    private final int variables;
+
+    /**
+     * The number of words per exponent vector.
+     */
+    private final int words;
+
+    /**
+     * The budget from which the summands on the heap are reserved.
+     */
+    private final MemoryBudget budget;
+
+    /**
+     * The summands on the heap, in decreasing size.
+     */
+    private final List<Polynomial> pieces = new ArrayList<>();
+
+    /**
+     * The number of bytes reserved for the summands on the heap.
+     */
+    private long reserved;
+
+    /**
+     * The sort files.
+     */
+    private final List<Run> runs = new ArrayList<>();
+
+    /**
+     * The number of terms written to sort files so far.
+     */
+    private long spilledTerms;
+
+    /**
+     * Receives the terms of the sum one by one.
+     *
+     * @since 0.1.0
+     */
+    @FunctionalInterface
+    public interface TermConsumer {
+        /**
+         * Accepts a term.
+         *
+         * @param coefficient the coefficient in the representation of
+         *        the ring, never zero
+         * @param exponents the exponent of each variable; the array is
+         *        reused for the next term
+         * @throws IOException if the term cannot be processed
+         */
+        void accept(long coefficient, int[] exponents) throws IOException;
+    }
+
+    /**
+     * Creates an empty sorter.
+     *
+     * @param theRing the ring of the coefficients
+     * @param theVariables the number of variables
+     * @param theBudget the budget for the terms on the heap
+     *
+     * @since 0.1.0
+     */
+    public TermSorter(
+            final CoefficientRing theRing,
+            final int theVariables,
+            final MemoryBudget theBudget) {
+        this.ring = theRing;
+        this.variables = theVariables;
+        this.words = Polynomial.wordCount(theVariables);
+        this.budget = theBudget;
+    }
+
+    /**
+     * Estimates the heap footprint of packed terms.
+     *
+     * @param terms the number of terms
+     * @param words the number of words per exponent vector
+     * @return the number of bytes, saturated at
+     *         <code>Long.MAX_VALUE</code>
+     */
+    static long footprint(final long terms, final int words) {
+        final long perTerm = (words + 1L) * Long.BYTES;
+        return terms > Long.MAX_VALUE / perTerm
+            ? Long.MAX_VALUE : terms * perTerm;
+    }
+
+    /**
+     * Returns the number of bytes currently reserved for terms on the
+     * heap.
+     *
+     * @return the footprint in bytes
+     *
+     * @since 0.1.0
+     */
+    public long getFootprint() {
+        return this.reserved;
+    }
+
+    /**
+     * Returns the number of sort files.
+     *
+     * @return the number of runs on disk
+     *
+     * @since 0.1.0
+     */
+    public int getRunCount() {
+        return this.runs.size();
+    }
+
+    /**
+     * Returns the number of terms which have been moved from the heap
+     * to sort files.
+     *
+     * @return the number of spilled terms
+     *
+     * @since 0.1.0
+     */
+    public long getSpilledTerms() {
+        return this.spilledTerms;
+    }
+
+    private void checkCompatible(final Polynomial p) {
+        if (p.getRing() != this.ring
+                || p.getVariableCount() != this.variables) {
+            throw new IllegalArgumentException(
+                "A polynomial over " + p.getRing() + " in "
+                + p.getVariableCount() + " variables cannot be added to"
+                + " a sum over " + this.ring + " in " + this.variables
+                + " variables");
+        }
+    }
+
+    /**
+     * Adds a polynomial to the sum.
+     *
+     * @param p the summand
+     * @throws IOException if a sort file cannot be written
+     *
+     * @since 0.1.0
+     */
+    public void add(final Polynomial p) throws IOException {
+        this.checkCompatible(p);
+        if (p.isZero()) {
+            return;
+        }
+        final long bytes = footprint(p.getTermCount(), this.words);
+        if (!this.budget.tryReserve(bytes)) {
+            this.spill(p);
+            return;
+        }
+        this.reserved += bytes;
+        this.pieces.add(p);
+        for (int n = this.pieces.size(); n >= 2
+                && this.pieces.get(n - 2).getTermCount()
+                    <= 2L * this.pieces.get(n - 1).getTermCount();
+                --n) {
+            final Polynomial last = this.pieces.remove(n - 1);
+            final Polynomial previous = this.pieces.remove(n - 2);
+            final Polynomial sum = previous.add(last);
+            this.pieces.add(sum);
+            final long freed = footprint(previous.getTermCount()
+                + last.getTermCount() - sum.getTermCount(), this.words);
+            this.budget.release(freed);
+            this.reserved -= freed;
+        }
+    }
+
+    /**
+     * Adds the product of two polynomials to the sum. If the product
+     * may not fit into the budget, it is computed in slices of the
+     * smaller factor.
+     *
+     * @param a the first factor
+     * @param b the second factor
+     * @throws IOException if a sort file cannot be written
+     *
+     * @since 0.1.0
+     */
+    public void addProduct(final Polynomial a, final Polynomial b)
+            throws IOException {
+        this.checkCompatible(a);
+        this.checkCompatible(b);
+        final Polynomial p = a.getTermCount() <= b.getTermCount() ? a : b;
+        final Polynomial q = p == a ? b : a;
+        final int n = p.getTermCount();
+        if (n == 0) {
+            return;
+        }
+        final long bytes = footprint(productBound(p, q), this.words);
+        if (n > 1 && !this.budget.tryReserve(bytes)) {
+            // make room by moving the summands to disk, then slice
+            this.spill(null);
+            if (!this.budget.tryReserve(bytes)) {
+                this.addProduct(p.slice(0, n / 2), q);
+                this.addProduct(p.slice(n / 2, n), q);
+                return;
+            }
+        }
+        final Polynomial product = p.multiply(q);
+        if (n > 1) {
+            this.budget.release(bytes);
+        }
+        this.add(product);
+    }
+
+    /**
+     * Bounds the number of terms of a product by the number of term
+     * pairs and by the number of exponent vectors within the degrees
+     * of the factors.
+     *
+     * @param p the first factor
+     * @param q the second factor
+     * @return the bound
+     */
+    private static long productBound(final Polynomial p, final Polynomial q) {
+        final long pairs = (long) p.getTermCount() * q.getTermCount();
+        long vectors = 1;
+        for (int v = 0; v < p.getVariableCount() && vectors < pairs; ++v) {
+            vectors *= p.getDegree(v) + q.getDegree(v) + 1;
+        }
+        return Math.min(pairs, vectors);
+    }
+
+    /**
+     * Moves all summands on the heap, together with an extra one, into
+     * a new sort file.
+     *
+     * @param extra a summand which is not on the heap yet or
+     *        <code>null</code>
+     * @throws IOException if the sort file cannot be written
+     */
+    private void spill(final Polynomial extra) throws IOException {
+        final List<Source> sources = new ArrayList<>();
+        for (final Polynomial piece : this.pieces) {
+            sources.add(new PieceSource(piece, this.words));
+        }
+        if (extra != null) {
+            sources.add(new PieceSource(extra, this.words));
+        }
+        if (sources.isEmpty()) {
+            return;
+        }
+        final Run run = this.writeRun(sources);
+        this.spilledTerms += run.terms;
+        this.pieces.clear();
+        this.budget.release(this.reserved);
+        this.reserved = 0;
+        this.runs.add(run);
+        LOGGER.debug("Spilled " + run.terms + " terms to " + run.path);
+
+        if (this.runs.size() >= MERGE_WIDTH) {
+            final List<Source> all = new ArrayList<>();
+            for (final Run r : this.runs) {
+                all.add(new RunSource(r, this.words));
+            }
+            final Run merged = this.writeRun(all);
+            for (final Run r : this.runs) {
+                Files.deleteIfExists(r.path);
+            }
+            this.runs.clear();
+            this.runs.add(merged);
+            LOGGER.debug("Merged " + MERGE_WIDTH + " runs into "
+                + merged.terms + " terms");
+        }
+    }
+
+    /**
+     * Merges terms into a new sort file.
+     *
+     * @param sources the sorted sources of the terms
+     * @return the run
+     * @throws IOException if the sort file cannot be written
+     */
+    private Run writeRun(final List<Source> sources) throws IOException {
+        final Path path = this.budget.createSortFile();
+        final int w = this.words;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                    Files.newOutputStream(path), BUFFER_SIZE))) {
+            final long terms = this.merge(sources, (coefficient, key) -> {
+                out.writeLong(coefficient);
+                for (int k = 0; k < w; ++k) {
+                    out.writeLong(key[k]);
+                }
+            });
+            return new Run(path, terms);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(path);
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns sources for all terms of the sum.
+     *
+     * @return the sources
+     */
+    private List<Source> sources() {
+        final List<Source> sources = new ArrayList<>();
+        for (final Run run : this.runs) {
+            sources.add(new RunSource(run, this.words));
+        }
+        for (final Polynomial piece : this.pieces) {
+            sources.add(new PieceSource(piece, this.words));
+        }
+        return sources;
+    }
+
+    /**
+     * Returns the sum as a polynomial.
+     *
+     * @return the sum of all polynomials added so far
+     * @throws IOException if a sort file cannot be read
+     *
+     * @since 0.1.0
+     */
+    public Polynomial toPolynomial() throws IOException {
+        if (this.runs.isEmpty() && this.pieces.size() <= 1) {
+            return this.pieces.isEmpty()
+                ? Polynomial.zero(this.ring, this.variables)
+                : this.pieces.get(0);
+        }
+        final Polynomial.Terms terms = new Polynomial.Terms(this.words, 16);
+        this.merge(this.sources(),
+            (coefficient, key) -> terms.append(coefficient, key, 0));
+        return terms.toPolynomial(this.ring, this.variables);
+    }
+
+    /**
+     * Streams the terms of the sum in the order of {@link Polynomial},
+     * without holding them on the heap.
+     *
+     * @param consumer the receiver of the terms
+     * @return the number of terms
+     * @throws IOException if a sort file cannot be read or the consumer
+     *         fails
+     *
+     * @since 0.1.0
+     */
+    public long forEach(final TermConsumer consumer) throws IOException {
+        final int[] exponents = new int[this.variables];
+        return this.merge(this.sources(), (coefficient, key) -> {
+            for (int v = 0; v < exponents.length; ++v) {
+                exponents[v] = (int) ((key[v / Polynomial.VARIABLES_PER_WORD]
+                    >>> Polynomial.shift(v)) & MASK);
+            }
+            consumer.accept(coefficient, exponents);
+        });
+    }
+
+    /**
+     * Merges sorted sources, combining like terms and dropping those
+     * which cancel.
+     *
+     * @param sources the sources, closed afterwards
+     * @param sink the receiver of the merged terms
+     * @return the number of merged terms
+     * @throws IOException if a source or the sink fails
+     */
+    private long merge(final List<Source> sources, final Sink sink)
+            throws IOException {
+        final int w = this.words;
+        try {
+            final Source[] heap = new Source[sources.size()];
+            int size = 0;
+            for (final Source source : sources) {
+                if (source.advance()) {
+                    heap[size] = source;
+                    siftUp(heap, size++, w);
+                }
+            }
+            final long[] key = new long[w];
+            long count = 0;
+            while (size > 0) {
+                System.arraycopy(heap[0].key, 0, key, 0, w);
+                long sum = 0;
+                do {
+                    final Source top = heap[0];
+                    sum = this.ring.add(sum, top.coefficient);
+                    if (!top.advance()) {
+                        heap[0] = heap[--size];
+                    }
+                    siftDown(heap, size, w);
+                } while (size > 0
+                    && Polynomial.compare(heap[0].key, 0, key, 0, w) == 0);
+                if (sum != 0) {
+                    sink.accept(sum, key);
+                    ++count;
+                }
+            }
+            return count;
+        } finally {
+            for (final Source source : sources) {
+                source.close();
+            }
+        }
+    }
+
+    /**
+     * Restores the max-heap property above a position.
+     *
+     * @param heap the sources in heap order
+     * @param start the position to be sifted up
+     * @param w the number of words per vector
+     */
+    private static void siftUp(
+            final Source[] heap,
+            final int start,
+            final int w) {
+        int k = start;
+        final Source source = heap[k];
+        while (k > 0) {
+            final int parent = (k - 1) / 2;
+            if (Polynomial.compare(
+                    heap[parent].key, 0, source.key, 0, w) >= 0) {
+                break;
+            }
+            heap[k] = heap[parent];
+            k = parent;
+        }
+        heap[k] = source;
+    }
+
+    /**
+     * Restores the max-heap property below the top.
+     *
+     * @param heap the sources in heap order
+     * @param size the number of sources in the heap
+     * @param w the number of words per vector
+     */
+    private static void siftDown(
+            final Source[] heap,
+            final int size,
+            final int w) {
+        if (size == 0) {
+            return;
+        }
+        int k = 0;
+        final Source source = heap[k];
+        while (true) {
+            int child = 2 * k + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && Polynomial.compare(
+                    heap[child + 1].key, 0, heap[child].key, 0, w) > 0) {
+                ++child;
+            }
+            if (Polynomial.compare(
+                    heap[child].key, 0, source.key, 0, w) <= 0) {
+                break;
+            }
+            heap[k] = heap[child];
+            k = child;
+        }
+        heap[k] = source;
+    }
+
+    /**
+     * Releases the reserved bytes and deletes the sort files.
+     *
+     * @throws IOException if a sort file cannot be deleted
+     *
+     * @since 0.1.0
+     */
+    @Override
+    public void close() throws IOException {
+        this.pieces.clear();
+        this.budget.release(this.reserved);
+        this.reserved = 0;
+        for (final Run run : this.runs) {
+            Files.deleteIfExists(run.path);
+        }
+        this.runs.clear();
+    }
+
+    /**
+     * Receives merged terms.
+     */
+    private interface Sink {
+        void accept(long coefficient, long[] key) throws IOException;
+    }
+
+    /**
+     * A sort file.
+     */
+    private static final class Run {
+        /**
+         * The path of the file.
+         */
+        private final Path path;
+
+        /**
+         * The number of terms in the file.
+         */
+        private final long terms;
+
+        Run(final Path thePath, final long theTerms) {
+            this.path = thePath;
+            this.terms = theTerms;
+        }
+    }
+
+    /**
+     * A cursor over sorted terms.
+     */
+    private abstract static class Source {
+        /**
+         * The exponent vector of the current term.
+         */
+        protected final long[] key;
+
+        /**
+         * The coefficient of the current term.
+         */
+        protected long coefficient;
+
+        Source(final int words) {
+            this.key = new long[words];
+        }
+
+        /**
+         * Moves to the next term.
+         *
+         * @return <code>false</code> if there is none
+         * @throws IOException if the term cannot be read
+         */
+        abstract boolean advance() throws IOException;
+
+        void close() throws IOException { }
+    }
+
+    /**
+     * A cursor over the terms of a polynomial.
+     */
+    private static final class PieceSource extends Source {
+        /**
+         * The polynomial.
+         */
+        private final Polynomial piece;
+
+        /**
+         * The index of the next term.
+         */
+        private int next;
+
+        PieceSource(final Polynomial thePiece, final int words) {
+            super(words);
+            this.piece = thePiece;
+        }
+
+        @Override
+        boolean advance() {
+            if (this.next == this.piece.getTermCount()) {
+                return false;
+            }
+            this.coefficient = this.piece.getCoefficient(this.next);
+            this.piece.copyExponents(this.next++, this.key, 0);
+            return true;
+        }
+    }
+
+    /**
+     * A cursor over the terms of a sort file, which is opened on the
+     * first access.
+     */
+    private static final class RunSource extends Source {
+        /**
+         * The sort file.
+         */
+        private final Run run;
+
+        /**
+         * The stream of the file or <code>null</code> before the first
+         * access.
+         */
+        private DataInputStream in;
+
+        /**
+         * The number of terms which have not been read yet.
+         */
+        private long remaining;
+
+        RunSource(final Run theRun, final int words) {
+            super(words);
+            this.run = theRun;
+            this.remaining = theRun.terms;
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            if (this.remaining == 0) {
+                return false;
+            }
+            if (this.in == null) {
+                this.in = new DataInputStream(new BufferedInputStream(
+                    Files.newInputStream(this.run.path), BUFFER_SIZE));
+            }
+            this.coefficient = this.in.readLong();
+            for (int k = 0; k < this.key.length; ++k) {
+                this.key[k] = this.in.readLong();
+            }
+            --this.remaining;
+            return true;
+        }
+
+        @Override
+        void close() throws IOException {
+            if (this.in != null) {
+                this.in.close();
+            }
+        }
+    }
+}
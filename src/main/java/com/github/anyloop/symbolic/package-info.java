@@ -0,0 +1,41 @@
+/*
+ * package-info.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+/**
+ * This package provides the symbolic core used to represent
+ * amplitudes.
+ *
+ * Expressions are immutable and globally hash-consed: every
+ * structurally distinct subterm exists only once per JVM, so large
+ * amplitudes share their common parts, and two expressions are equal
+ * exactly if they are the same object. Symbol names are interned to
+ * dense integer IDs by {@link com.github.anyloop.symbolic.Symbols}.
+ * Both tables are concurrent and may be filled by the worker threads
+ * of a parallel computation.
+ *
+ * Sums too large for the heap are collected by a
+ * {@link com.github.anyloop.symbolic.TermSorter}, which moves its terms
+ * to sorted runs on disk once a shared
+ * {@link com.github.anyloop.symbolic.MemoryBudget} is exhausted.
+ */
+package com.github.anyloop.symbolic;
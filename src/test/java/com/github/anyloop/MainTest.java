@@ -0,0 +1,154 @@
+/*
+ * MainTest.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This test runs the whole program on small processes.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public class MainTest {
+
+    /**
+     * Checks that a run resumed from its checkpoints writes every
+     * diagram to the output file, including those found before the
+     * interruption.
+     */
+    @Test
+    public void testResumeWithOutput(@TempDir final Path dir)
+            throws IOException {
+        final Path checkpoints = dir.resolve("checkpoints");
+        final Path output = dir.resolve("diagrams.txt");
+        final String[] args = {
+            "-c", "res://phi3-model.yaml",
+            "-c", "res://scalar-2to2.yaml",
+            "-D", "process.output=" + output,
+            "-D", "checkpoint.directory=" + checkpoints,
+            "-D", "checkpoint.interval=0",
+        };
+        Main.main(args);
+        final List<String> expected = Files.readAllLines(output);
+        assertFalse(expected.isEmpty());
+
+        // cut every log in the middle of a record
+        final List<Path> logs;
+        try (Stream<Path> files = Files.list(checkpoints)) {
+            logs = files.collect(Collectors.toList());
+        }
+        assertFalse(logs.isEmpty());
+        for (final Path log : logs) {
+            try (RandomAccessFile raf =
+                    new RandomAccessFile(log.toFile(), "rw")) {
+                raf.setLength(Files.size(log) / 2 + 1);
+            }
+        }
+
+        final String[] resumed = new String[args.length + 1];
+        System.arraycopy(args, 0, resumed, 0, args.length);
+        resumed[args.length] = "-r";
+        Main.main(resumed);
+        final List<String> lines = Files.readAllLines(output);
+        assertEquals(expected.size(), lines.size());
+        assertEquals(expected.stream().sorted().collect(Collectors.toList()),
+            lines.stream().sorted().collect(Collectors.toList()));
+    }
+
+    /**
+     * Checks that workers find the same diagrams as a single process,
+     * each written once as it arrives at the coordinator.
+     */
+    @Test
+    public void testDistributedOutput(@TempDir final Path dir)
+            throws IOException {
+        final Path local = dir.resolve("local.txt");
+        Main.main(new String[] {
+            "-c", "res://phi3-model.yaml",
+            "-c", "res://scalar-2to2.yaml",
+            "-D", "process.output=" + local,
+        });
+        final Path distributed = dir.resolve("distributed.txt");
+        Main.main(new String[] {
+            "-c", "res://phi3-model.yaml",
+            "-c", "res://scalar-2to2.yaml",
+            "-D", "process.output=" + distributed,
+            "-D", "distributed.workers=2",
+            "-D", "distributed.partitions=5",
+        });
+        final List<String> expected = Files.readAllLines(local);
+        assertFalse(expected.isEmpty());
+        assertEquals(expected.stream().sorted().collect(Collectors.toList()),
+            Files.readAllLines(distributed).stream().sorted()
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Checks that the expressions are not optimised once the
+     * configuration of an earlier stage has failed.
+     */
+    @Test
+    public void testConfigurationFailureStopsRun(@TempDir final Path dir)
+            throws IOException {
+        final Path input = dir.resolve("input.txt");
+        Files.write(input, List.of("amp = (a + b)^2;"),
+            StandardCharsets.UTF_8);
+        final Path output = dir.resolve("out");
+        Files.createDirectories(output);
+        final String[] args = {
+            "-c", "res://phi3-model.yaml",
+            "-c", "res://scalar-2to2.yaml",
+            "-D", "codegen.input=" + input,
+            "-D", "codegen.output=" + output.resolve("amp"),
+        };
+        final String[] failing = Arrays.copyOf(args, args.length + 2);
+        failing[args.length] = "-D";
+        failing[args.length + 1] = "memory.budget=-1";
+        Main.main(failing);
+        try (Stream<Path> files = Files.list(output)) {
+            assertEquals(0, files.count());
+        }
+
+        Main.main(args);
+        try (Stream<Path> files = Files.list(output)) {
+            assertTrue(files.count() > 0);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * TestConfigurator.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.github.anyloop.chassis.ConfigurableRunnable;
+import com.github.anyloop.chassis.Configurator;
+import com.github.anyloop.chassis.DefaultConfigurator;
+
+/**
+ * Helper for unit tests which need configuration objects outside of
+ * a {@link ConfigurableRunnable}.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public final class TestConfigurator {
+
+    /**
+     * Hidden constructor.
+     */
+    private TestConfigurator() { }
+
+    /**
+     * Runs a {@link DefaultConfigurator} with the given command line
+     * and returns it once it is initialised.
+     *
+     * @param args the command line arguments
+     * @return the configurator
+     */
+    public static Configurator configure(final String... args) {
+        final AtomicReference<Configurator> result = new AtomicReference<>();
+        new DefaultConfigurator(args).run(new ConfigurableRunnable() {
+            @Override
+            public void init(final Configurator c) {
+                result.set(c);
+            }
+
+            @Override
+            public void run() { }
+
+            @Override
+            public void terminate() { }
+
+            @Override
+            public String getVersion() {
+                return "TEST VERSION";
+            }
+
+            @Override
+            public String getName() {
+                return "TEST NAME";
+            }
+        });
+        return result.get();
+    }
+
+    /**
+     * Runs a {@link DefaultConfigurator} with the given command line
+     * and returns a configuration object created by it.
+     *
+     * @param <T> the type of the configuration object
+     * @param clazz the interface to be implemented
+     * @param args the command line arguments
+     * @return the configuration object
+     */
+    public static <T> T create(final Class<T> clazz, final String... args) {
+        final Configurator configurator = configure(args);
+        return configurator == null ? null : configurator.create(clazz);
+    }
+}
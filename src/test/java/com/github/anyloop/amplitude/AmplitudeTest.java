@@ -0,0 +1,226 @@
+/*
+ * AmplitudeTest.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.amplitude;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.anyloop.TestConfigurator;
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.model.Model;
+import com.github.anyloop.model.ModelConfig;
+import com.github.anyloop.model.ProcessConfig;
+import com.github.anyloop.model.ScatteringProcess;
+
+/**
+ * This test checks the Berends-Giele recursion against the sum over
+ * the Feynman diagrams and a closed form.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public class AmplitudeTest {
+
+    private static final Map<String, Double> PARAMETERS = Map.of(
+        "g", 0.7, "lambda", 1.3, "m", 0.5,
+        "y", 0.9, "kappa", 0.4, "M", 1.1,
+        "y2", 0.3, "g2", -0.5, "rho", 0.8, "rho2", 0.6);
+
+    private static final double ENERGY = 10;
+
+    private static ScatteringProcess process(
+            final String resource,
+            final String incoming,
+            final String outgoing) throws ConfigurationException {
+        final Model model = Model.fromConfig(TestConfigurator.create(
+            ModelConfig.class, "-c", "res://" + resource));
+        final String[] in = incoming.split(" ");
+        final String[] out = outgoing.split(" ");
+        final int[] fields = new int[in.length + out.length];
+        for (int i = 0; i < in.length; ++i) {
+            fields[i] = model.getConjugate(model.getFieldId(in[i]));
+        }
+        for (int i = 0; i < out.length; ++i) {
+            fields[in.length + i] = model.getFieldId(out[i]);
+        }
+        return new ScatteringProcess(
+            model, fields, in.length, 0, false, true, true);
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "phi3-model.yaml, phi phi, phi phi",
+        "phi3-model.yaml, phi phi, phi phi phi phi",
+        "phi3-model.yaml, phi phi, phi phi phi phi phi phi",
+        "phi4-model.yaml, phi phi, phi phi phi phi",
+        "phi34-model.yaml, phi phi, phi phi phi",
+        "phi34-model.yaml, phi phi, phi phi phi phi phi",
+        "phi34-model.yaml, phi, phi phi phi phi",
+        "scalar-yukawa-model.yaml, chi chi~, phi phi",
+        "scalar-yukawa-model.yaml, chi chi, chi chi phi",
+        "scalar-yukawa-model.yaml, chi phi, chi phi phi phi",
+        "scalar-yukawa-model.yaml, chi chi~, chi chi~ chi chi~",
+        "scalar-operators-model.yaml, chi chi~, phi phi",
+        "scalar-operators-model.yaml, chi phi, chi phi phi",
+        "scalar-operators-model.yaml, chi chi~, chi chi~ phi phi",
+    })
+    public void recursionMatchesDiagrams(
+            final String resource,
+            final String incoming,
+            final String outgoing) throws ConfigurationException {
+        final ScatteringProcess process =
+            process(resource, incoming, outgoing);
+        final DiagramAmplitude diagrams =
+            new DiagramAmplitude(process, PARAMETERS);
+        final BerendsGiele recursion = new BerendsGiele(process, PARAMETERS);
+        assertTrue(diagrams.getDiagramCount() > 0);
+
+        final PhaseSpace space = PhaseSpace.of(recursion, ENERGY);
+        final Random random = new Random(1);
+        final double[] momenta = new double[4 * space.getLegCount() + 1];
+        for (int point = 0; point < 5; ++point) {
+            space.generate(random, momenta, 1);
+            final double expected = diagrams.evaluate(momenta, 1);
+            assertTrue(expected != 0);
+            assertEquals(expected, recursion.evaluate(momenta, 1),
+                1e-12 * Math.abs(expected));
+        }
+    }
+
+    @Test
+    public void closedFormOfTwoToTwo() throws ConfigurationException {
+        final AmplitudeEngine engine = new BerendsGiele(
+            process("phi3-model.yaml", "phi phi", "phi phi"), PARAMETERS);
+        final double[] p = new double[16];
+        PhaseSpace.of(engine, ENERGY).generate(new Random(2), p, 0);
+
+        final double s = invariant(p, 0, 4, 1);
+        final double t = invariant(p, 0, 8, -1);
+        final double u = invariant(p, 0, 12, -1);
+        assertEquals(4 * 0.25, s + t + u, 1e-9);
+        final double expected = -0.49
+            * (1 / (s - 0.25) + 1 / (t - 0.25) + 1 / (u - 0.25));
+        assertEquals(expected, engine.evaluate(p, 0), 1e-14);
+    }
+
+    private static double invariant(
+            final double[] p,
+            final int a,
+            final int b,
+            final int sign) {
+        double q2 = 0;
+        for (int mu = 0; mu < 4; ++mu) {
+            final double q = p[a + mu] + sign * p[b + mu];
+            q2 += mu == 0 ? q * q : -q * q;
+        }
+        return q2;
+    }
+
+    @Test
+    public void phaseSpacePointsAreOnShell() throws ConfigurationException {
+        final AmplitudeEngine engine = new DiagramAmplitude(
+            process("scalar-yukawa-model.yaml", "chi phi", "chi phi phi"),
+            PARAMETERS);
+        final PhaseSpace space = PhaseSpace.of(engine, ENERGY);
+        final double[] p = new double[4 * space.getLegCount()];
+        space.generate(new Random(3), p, 0);
+        final double[] total = new double[4];
+        for (int leg = 0; leg < space.getLegCount(); ++leg) {
+            final int i = 4 * leg;
+            final double m = engine.getMass(leg);
+            assertEquals(m * m, p[i] * p[i] - p[i + 1] * p[i + 1]
+                - p[i + 2] * p[i + 2] - p[i + 3] * p[i + 3], 1e-9);
+            for (int mu = 0; mu < 4; ++mu) {
+                total[mu] += (leg < 2 ? 1 : -1) * p[i + mu];
+            }
+        }
+        for (int mu = 0; mu < 4; ++mu) {
+            assertEquals(0, total[mu], 1e-9);
+        }
+        assertThrows(IllegalArgumentException.class,
+            () -> PhaseSpace.of(engine, 1));
+    }
+
+    @Test
+    public void engineIsChosenPerProcess() throws ConfigurationException {
+        final String[] args = {
+            "-c", "res://phi3-model.yaml",
+            "-c", "res://scalar-2to2.yaml",
+            "-c", "res://phi3-amplitude.yaml",
+        };
+        final ScatteringProcess process = ScatteringProcess.fromConfig(
+            TestConfigurator.create(ProcessConfig.class, args),
+            Model.fromConfig(
+                TestConfigurator.create(ModelConfig.class, args)));
+        final AmplitudeConfig config =
+            TestConfigurator.create(AmplitudeConfig.class, args);
+        assertEquals(DiagramAmplitude.METHOD, AmplitudeEngine.fromConfig(
+            TestConfigurator.create(ProcessConfig.class, args),
+            process, config).getMethod());
+
+        final String[] recursion = {
+            "-c", "res://scalar-2to2.yaml",
+            "-D", "process.amplitude=berends-giele",
+        };
+        assertEquals(BerendsGiele.METHOD, AmplitudeEngine.fromConfig(
+            TestConfigurator.create(ProcessConfig.class, recursion),
+            process, config).getMethod());
+
+        final String[] unknown = {
+            "-c", "res://scalar-2to2.yaml",
+            "-D", "process.amplitude=unknown",
+        };
+        assertThrows(ConfigurationException.class,
+            () -> AmplitudeEngine.fromConfig(
+                TestConfigurator.create(ProcessConfig.class, unknown),
+                process, config));
+        // no values for the couplings and masses
+        assertThrows(ConfigurationException.class,
+            () -> AmplitudeEngine.fromConfig(
+                TestConfigurator.create(ProcessConfig.class, args),
+                process, TestConfigurator.create(AmplitudeConfig.class)));
+    }
+
+    @Test
+    public void onlyScalarsAreSupported() throws ConfigurationException {
+        final String[] args = {
+            "-c", "res://qed-model.yaml",
+            "-c", "res://qed-eemumu.yaml",
+        };
+        final ScatteringProcess process = ScatteringProcess.fromConfig(
+            TestConfigurator.create(ProcessConfig.class, args),
+            Model.fromConfig(
+                TestConfigurator.create(ModelConfig.class, args)));
+        assertThrows(IllegalArgumentException.class,
+            () -> new BerendsGiele(process, PARAMETERS));
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * CacheTest.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.cache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.github.anyloop.TestConfigurator;
+import com.github.anyloop.chassis.ConfigDependencies;
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.chassis.Configurator;
+import com.github.anyloop.model.ModelConfig;
+import com.github.anyloop.model.ProcessConfig;
+
+/**
+ * This test checks that cache keys follow the configuration values
+ * and that results are shared, restored and evicted as documented.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public class CacheTest {
+
+    private static String modelKey(final Path file, final String text)
+            throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        return CacheKey.of("diagrams", "1.0").add(ModelConfig.class,
+            TestConfigurator.create(ModelConfig.class, "-c", file.toString()))
+            .getHash();
+    }
+
+    private static String processKey(final String... args) {
+        return CacheKey.of("diagrams", "1.0").add(ProcessConfig.class,
+            TestConfigurator.create(ProcessConfig.class, args)).getHash();
+    }
+
+    @Test
+    public void keysDependOnValuesOnly(@TempDir final Path dir)
+            throws IOException {
+        final String model = modelKey(dir.resolve("a.yaml"), "model:\n"
+            + "  particles:\n"
+            + "    particle:\n"
+            + "      - name: W+\n"
+            + "        antiname: W-\n"
+            + "        spin: 1\n"
+            + "  vertices:\n"
+            + "    vertex:\n"
+            + "      - fields: [W+, W-, W+, W-]\n"
+            + "        coupling: g2\n");
+        assertEquals(64, model.length());
+        assertEquals(model, modelKey(dir.resolve("b.yaml"), "model:\n"
+            + "  vertices:\n"
+            + "    vertex:\n"
+            + "      - coupling: g2\n"
+            + "        fields:\n"
+            + "          - W+\n"
+            + "          - W-\n"
+            + "          - W+\n"
+            + "          - W-\n"
+            + "  particles:\n"
+            + "    particle:\n"
+            + "      - spin: 1\n"
+            + "        name: W+\n"
+            + "        antiname: W-\n"));
+        assertNotEquals(model, modelKey(dir.resolve("c.yaml"), "model:\n"
+            + "  particles:\n"
+            + "    particle:\n"
+            + "      - name: W+\n"
+            + "        antiname: W-\n"
+            + "        spin: 1\n"
+            + "  vertices:\n"
+            + "    vertex:\n"
+            + "      - fields: [W+, W-, W+, W-]\n"
+            + "        coupling: g4\n"));
+
+        final String process = processKey("-D", "process.incoming=e-");
+        assertEquals(process, processKey(
+            "-D", "process.incoming=e-", "-D", "process.loops=0"));
+        assertNotEquals(process, processKey(
+            "-D", "process.incoming=e-", "-D", "process.loops=1"));
+        assertNotEquals(process, processKey(
+            "-D", "process.incoming=e+"));
+
+        assertEquals(CacheKey.of("x", null).getHash(),
+            CacheKey.of("x", CacheKey.UNVERSIONED).getHash());
+        assertNotEquals(CacheKey.of("x", "1.0").getHash(),
+            CacheKey.of("y", "1.0").getHash());
+        assertNotEquals(CacheKey.of("x", "1.0").add("a", "b=").getHash(),
+            CacheKey.of("x", "1.0").add("a=", "b").getHash());
+
+        final CacheKey key = CacheKey.of("x", "1.0");
+        key.getHash();
+        assertThrows(IllegalStateException.class, () -> key.add("a", 1));
+    }
+
+    private static byte[] bytes(final int n, final int seed) {
+        final byte[] data = new byte[n];
+        for (int i = 0; i < n; ++i) {
+            data[i] = (byte) (seed + i);
+        }
+        return data;
+    }
+
+    private static long countBlobs(final Path cache) throws IOException {
+        try (Stream<Path> files = Files.walk(cache.resolve("blobs"))) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+
+    @Test
+    public void resultsAreSharedAndRestored(@TempDir final Path dir)
+            throws IOException {
+        final StageCache cache = new StageCache(dir.resolve("cache"), 1000);
+        final CacheKey first = CacheKey.of("x", "1.0").add("n", 1);
+        final CacheKey second = CacheKey.of("x", "1.0").add("n", 2);
+        assertNull(cache.get(first));
+
+        final Path file = dir.resolve("out.txt");
+        Files.write(file, bytes(100, 1));
+        cache.put(first, Collections.singletonMap("out.txt", file),
+            Collections.singletonMap("extra", bytes(10, 2)));
+        cache.put(second, "same", bytes(100, 1));
+        assertEquals(110, cache.getSize());
+
+        Files.delete(file);
+        final Map<String, Path> result = cache.get(first);
+        assertEquals(2, result.size());
+        assertArrayEquals(bytes(100, 1),
+            Files.readAllBytes(result.get("out.txt")));
+        assertArrayEquals(bytes(10, 2),
+            Files.readAllBytes(result.get("extra")));
+        assertEquals(result.get("out.txt"), cache.get(second).get("same"));
+
+        // a new result replaces the old one
+        cache.put(first, "out.txt", bytes(20, 3));
+        assertEquals(1, cache.get(first).size());
+        assertEquals(120, cache.getSize());
+        assertEquals(2, countBlobs(dir.resolve("cache")));
+
+        // results survive reopening the cache
+        assertNotNull(new StageCache(dir.resolve("cache"), 1000).get(second));
+    }
+
+    @Test
+    public void leastRecentlyUsedResultsAreEvicted(@TempDir final Path dir)
+            throws IOException {
+        final StageCache cache = new StageCache(dir, 250);
+        final CacheKey[] keys = new CacheKey[4];
+        for (int k = 0; k < keys.length; ++k) {
+            keys[k] = CacheKey.of("x", "1.0").add("k", k);
+        }
+        cache.put(keys[0], "a", bytes(100, 0));
+        cache.put(keys[1], "a", bytes(100, 1));
+        assertNotNull(cache.get(keys[0]));
+        cache.put(keys[2], "a", bytes(100, 2));
+        assertNotNull(cache.get(keys[0]));
+        assertNull(cache.get(keys[1]));
+        assertNotNull(cache.get(keys[2]));
+        assertEquals(200, cache.getSize());
+
+        // a result larger than the cache is kept on its own
+        cache.put(keys[3], "a", bytes(1000, 3));
+        assertNull(cache.get(keys[0]));
+        assertNull(cache.get(keys[2]));
+        assertNotNull(cache.get(keys[3]));
+        assertEquals(1000, cache.getSize());
+    }
+
+    @Test
+    public void orderOfUseSurvivesReopening(@TempDir final Path dir)
+            throws IOException {
+        final CacheKey[] keys = new CacheKey[3];
+        for (int k = 0; k < keys.length; ++k) {
+            keys[k] = CacheKey.of("x", "1.0").add("k", k);
+        }
+        final StageCache cache = new StageCache(dir, 250);
+        cache.put(keys[1], "a", bytes(100, 1));
+        cache.put(keys[0], "a", bytes(100, 0));
+        assertNotNull(cache.get(keys[1]));
+
+        final StageCache reopened = new StageCache(dir, 250);
+        assertEquals(200, reopened.getSize());
+        reopened.put(keys[2], "a", bytes(100, 2));
+        assertNull(reopened.get(keys[0]));
+        assertNotNull(reopened.get(keys[1]));
+        assertNotNull(reopened.get(keys[2]));
+
+        // the first instance learns of the eviction on lookup
+        assertNull(cache.get(keys[0]));
+        assertEquals(100, cache.getSize());
+    }
+
+    private static byte[] lookup(
+            final StageCache cache,
+            final CacheKey stage,
+            final String... args) throws IOException {
+        final Map<String, Path> files =
+            cache.get(stage, TestConfigurator.configure(args));
+        return files == null ? null : Files.readAllBytes(files.get("r"));
+    }
+
+    @Test
+    public void resultsDependOnKeysRead(@TempDir final Path dir)
+            throws IOException, ConfigurationException {
+        final StageCache cache = new StageCache(dir, 1000);
+        final CacheKey stage = CacheKey.of("stage", "1.0");
+        for (final int size : new int[] {5, 6}) {
+            final Configurator configurator = TestConfigurator.configure(
+                "-D", "cache.size=" + size, "-D", "cache.directory=a");
+            final ConfigDependencies read = new ConfigDependencies();
+            assertEquals(size, configurator.create(
+                CacheConfig.class, read).getSize());
+            cache.put(stage, read, "r", bytes(10, size));
+        }
+
+        // only the key read matters
+        assertArrayEquals(bytes(10, 5), lookup(cache, stage,
+            "-D", "cache.size=5", "-D", "cache.directory=b"));
+        assertArrayEquals(bytes(10, 6), lookup(cache, stage,
+            "-D", "cache.size=6"));
+        assertNull(lookup(cache, stage, "-D", "cache.size=7"));
+        assertNull(lookup(cache, stage));
+        assertNull(lookup(cache, CacheKey.of("other", "1.0"),
+            "-D", "cache.size=5"));
+
+        // replacing a result keeps a single line in the index
+        final ConfigDependencies read = new ConfigDependencies();
+        TestConfigurator.configure("-D", "cache.size=5")
+            .create(CacheConfig.class, read).getSize();
+        cache.put(stage, read, "r", bytes(10, 7));
+        assertArrayEquals(bytes(10, 7), lookup(cache, stage,
+            "-D", "cache.size=5"));
+        assertEquals(2, Files.readAllLines(dir.resolve("dependencies")
+            .resolve(stage.getHash())).size());
+        assertEquals(20, cache.getSize());
+    }
+
+    @Test
+    public void invalidConfiguration(@TempDir final Path dir)
+            throws ConfigurationException {
+        assertNull(StageCache.fromConfig(
+            TestConfigurator.create(CacheConfig.class)));
+        assertNotNull(StageCache.fromConfig(TestConfigurator.create(
+            CacheConfig.class, "-D", "cache.directory=" + dir)));
+        assertThrows(ConfigurationException.class,
+            () -> StageCache.fromConfig(TestConfigurator.create(
+                CacheConfig.class, "-D", "cache.directory=" + dir,
+                "-D", "cache.size=0")));
+        assertThrows(IllegalArgumentException.class,
+            () -> new StageCache(dir, -1));
+    }
+}
@@ -25,6 +25,8 @@ package com.github.anyloop.chassis;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,7 +39,9 @@ import org.junit.jupiter.params.provider.ValueSource;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 
@@ -354,6 +358,68 @@ public class ConfigurationTest {
 
         configurator.run(runnable);
     }
+
+    @Test
+    public void testDependencies() {
+        final String[] args = {
+            "-c", "res://example-config.yaml",
+        };
+
+        final DefaultConfigurator configurator = new DefaultConfigurator(args);
+        final BaseConfigurableRunnable runnable =
+            new BaseConfigurableRunnable() {
+                private Configurator configurator;
+
+                @Override
+                public void init(final Configurator c) {
+                    super.init(c);
+                    this.configurator = c;
+                }
+
+                @Override
+                public void run() {
+                    super.run();
+                    final ConfigDependencies read = new ConfigDependencies();
+                    final ExampleConfig conf =
+                        this.configurator.create(ExampleConfig.class, read);
+
+                    try {
+                        conf.getVersion();
+                        conf.getTheDefault();
+                        conf.getAuthors();
+                        conf.getArtifactInfo().getGroupId();
+                        assertEquals("1.8.0",
+                            conf.getDependencies()[1].getVersion());
+                    } catch (ConfigurationException ex) {
+                        fail(ex);
+                    }
+
+                    final Map<String, String> expected = new TreeMap<>();
+                    expected.put("artifact_info.groupId",
+                        "com.github.anyloop");
+                    expected.put("authors",
+                        "[Mickey Mouse, Donald Duck, Daisy Duck]");
+                    expected.put("dependencies.dependency#", "3");
+                    expected.put("dependencies.dependency(1).version",
+                        "1.8.0");
+                    expected.put("nonexistent_hash", null);
+                    expected.put("version", "2.1");
+                    assertEquals(expected, read.getValues());
+
+                    // the same keys can be looked up again
+                    for (final var e : expected.entrySet()) {
+                        assertEquals(e.getValue(),
+                            this.configurator.lookup(e.getKey()));
+                    }
+                    assertNull(this.configurator.lookup("no.such.key"));
+                    assertEquals("0",
+                        this.configurator.lookup("no.such.list#"));
+                }
+            };
+
+        configurator.run(runnable);
+        assertTrue(runnable.is_run);
+    }
 }
 
 /**
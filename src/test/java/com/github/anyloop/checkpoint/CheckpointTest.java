@@ -0,0 +1,211 @@
+/*
+ * CheckpointTest.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.checkpoint;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.anyloop.TestConfigurator;
+import com.github.anyloop.cache.CacheKey;
+import com.github.anyloop.chassis.ConfigurationException;
+
+/**
+ * This test checks that checkpoint logs are read back up to the last
+ * intact record.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public class CheckpointTest {
+
+    private static void write(final CheckpointLog log, final int from,
+            final int to) {
+        for (int i = from; i < to; ++i) {
+            final int value = i;
+            log.append(out -> {
+                out.writeInt(value);
+                out.writeUTF("record " + value);
+            });
+        }
+    }
+
+    private static List<Integer> read(final CheckpointLog log)
+            throws IOException {
+        final List<Integer> values = new ArrayList<>();
+        final int count = log.replay(in -> {
+            final int value = in.readInt();
+            assertEquals("record " + value, in.readUTF());
+            values.add(value);
+        });
+        assertEquals(values.size(), count);
+        return values;
+    }
+
+    private static List<Integer> range(final int from, final int to) {
+        final List<Integer> values = new ArrayList<>();
+        for (int i = from; i < to; ++i) {
+            values.add(i);
+        }
+        return values;
+    }
+
+    @Test
+    public void recordsSurviveReopening(@TempDir final Path dir)
+            throws IOException {
+        final Path file = dir.resolve("run.log");
+        try (CheckpointLog log = new CheckpointLog(file, true, 0)) {
+            assertTrue(read(log).isEmpty());
+            write(log, 0, 1000);
+        }
+        try (CheckpointLog log = new CheckpointLog(file, true, 1000)) {
+            assertEquals(range(0, 1000), read(log));
+            write(log, 1000, 1010);
+            // records appended since opening are not replayed
+            assertEquals(range(0, 1000), read(log));
+        }
+        try (CheckpointLog log = new CheckpointLog(file, true, 0)) {
+            assertEquals(range(0, 1010), read(log));
+        }
+        try (CheckpointLog log = new CheckpointLog(file, false, 0)) {
+            assertTrue(read(log).isEmpty());
+        }
+
+        final CheckpointLog closed = new CheckpointLog(file, true, 0);
+        assertTrue(read(closed).isEmpty());
+        closed.close();
+        assertThrows(IllegalStateException.class, () -> write(closed, 0, 1));
+    }
+
+    @Test
+    public void damagedTailsAreCutOff(@TempDir final Path dir)
+            throws IOException {
+        final Path file = dir.resolve("run.log");
+        try (CheckpointLog log = new CheckpointLog(file, false, 0)) {
+            write(log, 0, 100);
+        }
+
+        // a crash in the middle of the last record
+        final long size = Files.size(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(size - 3);
+        }
+        try (CheckpointLog log = new CheckpointLog(file, true, 0)) {
+            assertEquals(range(0, 99), read(log));
+            write(log, 99, 100);
+        }
+        assertEquals(size, Files.size(file));
+
+        // a garbled record in the middle
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(size / 2);
+            final int b = raf.read();
+            raf.seek(size / 2);
+            raf.write(b ^ 0x10);
+        }
+        try (CheckpointLog log = new CheckpointLog(file, true, 0)) {
+            final List<Integer> values = read(log);
+            assertFalse(values.isEmpty());
+            assertTrue(values.size() < 100);
+            assertEquals(range(0, values.size()), values);
+        }
+        assertTrue(Files.size(file) < size);
+
+        // no log at all
+        Files.write(file, new byte[] {1, 2, 3});
+        try (CheckpointLog log = new CheckpointLog(file, true, 0)) {
+            assertTrue(read(log).isEmpty());
+        }
+    }
+
+    @Test
+    public void producersWaitForSlowDisks(@TempDir final Path dir)
+            throws IOException, InterruptedException {
+        final Path file = dir.resolve("run.log");
+        final CountDownLatch disk = new CountDownLatch(1);
+        try (CheckpointLog log = new CheckpointLog(file, false, 0)) {
+            // the writer stalls on the first record
+            log.append(out -> {
+                try {
+                    disk.await();
+                } catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+                out.writeInt(-1);
+                out.writeUTF("record -1");
+            });
+            final Thread producer = new Thread(() -> write(log, 0, 20000));
+            producer.start();
+            producer.join(500);
+            assertTrue(producer.isAlive());
+            disk.countDown();
+            producer.join();
+        }
+        try (CheckpointLog log = new CheckpointLog(file, true, 0)) {
+            final List<Integer> expected = range(0, 20000);
+            expected.add(0, -1);
+            assertEquals(expected, read(log));
+        }
+    }
+
+    @Test
+    public void configuration(@TempDir final Path dir)
+            throws ConfigurationException, IOException {
+        assertTrue(TestConfigurator.create(
+            CheckpointConfig.class, "--resume").isResume());
+        assertTrue(TestConfigurator.create(
+            CheckpointConfig.class, "-r").isResume());
+        assertFalse(TestConfigurator.create(
+            CheckpointConfig.class).isResume());
+
+        final CacheKey key = CacheKey.of("test", "1.0");
+        assertNull(CheckpointLog.fromConfig(
+            TestConfigurator.create(CheckpointConfig.class), key));
+        try (CheckpointLog log = CheckpointLog.fromConfig(
+                TestConfigurator.create(CheckpointConfig.class,
+                    "-D", "checkpoint.directory=" + dir.resolve("c")), key)) {
+            assertNotNull(log);
+            assertEquals(dir.resolve("c").resolve(key.getHash() + ".log"),
+                log.getFile());
+        }
+        assertThrows(ConfigurationException.class,
+            () -> CheckpointLog.fromConfig(TestConfigurator.create(
+                CheckpointConfig.class, "-D", "checkpoint.directory=" + dir,
+                "-D", "checkpoint.interval=-1"), key));
+    }
+}
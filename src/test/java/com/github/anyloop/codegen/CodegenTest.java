@@ -0,0 +1,790 @@
+/*
+ * CodegenTest.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.codegen;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.anyloop.TestConfigurator;
+import com.github.anyloop.cache.CacheConfig;
+import com.github.anyloop.cache.StageCache;
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.chassis.DefaultConfigurator;
+import com.github.anyloop.finitefield.Rational;
+import com.github.anyloop.symbolic.Expr;
+import com.github.anyloop.symbolic.MemoryBudget;
+import com.github.luben.zstd.ZstdInputStream;
+
+/**
+ * This test checks the translation of expressions into programs and
+ * the generated evaluators against a direct evaluation of the
+ * expression trees.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public class CodegenTest {
+
+    private static final Expr A = Expr.symbol("a");
+
+    private static final Expr B = Expr.symbol("b");
+
+    private static final Expr C = Expr.symbol("c");
+
+    /**
+     * Evaluates an expression written out as a tree.
+     *
+     * @param e the expression
+     * @param values the values of the symbols
+     * @return the value of the expression
+     */
+    static double tree(final Expr e, final Map<Expr, Double> values) {
+        final Double value = values.get(e);
+        if (value != null) {
+            return value;
+        }
+        double result;
+        switch (e.getKind()) {
+            case NUMBER:
+                return (double) e.getNumerator() / e.getDenominator();
+            case SUM:
+                result = 0;
+                for (int i = 0; i < e.getArgCount(); ++i) {
+                    result += tree(e.getArg(i), values);
+                }
+                return result;
+            case PRODUCT:
+                result = 1;
+                for (int i = 0; i < e.getArgCount(); ++i) {
+                    result *= tree(e.getArg(i), values);
+                }
+                return result;
+            case POWER:
+                return Math.pow(tree(e.getArg(0), values), e.getExponent());
+            case FUNCTION:
+                if ("sqrt".equals(e.getName())) {
+                    return Math.sqrt(tree(e.getArg(0), values));
+                }
+                if ("exp".equals(e.getName())) {
+                    return Math.exp(tree(e.getArg(0), values));
+                }
+                break;
+            default:
+                break;
+        }
+        throw new IllegalArgumentException("Cannot evaluate " + e);
+    }
+
+    /**
+     * Creates a random expression in the shape of an amplitude: a sum
+     * of rational multiples of products of propagators, which are
+     * shared between the terms.
+     *
+     * @param random the source of randomness
+     * @param symbols the kinematic invariants
+     * @param terms the number of terms
+     * @return the expression
+     */
+    static Expr amplitude(
+            final Random random,
+            final List<Expr> symbols,
+            final int terms) {
+        final List<Expr> propagators = new ArrayList<>();
+        for (int i = 0; i < symbols.size(); ++i) {
+            for (int j = i + 1; j < symbols.size(); ++j) {
+                propagators.add(Expr.sum(symbols.get(i), symbols.get(j),
+                    Expr.number(-1, 3)));
+            }
+        }
+        final List<Expr> sum = new ArrayList<>();
+        for (int t = 0; t < terms; ++t) {
+            final List<Expr> factors = new ArrayList<>();
+            factors.add(Expr.number(
+                random.nextInt(19) - 9, 1 + random.nextInt(7)));
+            for (int f = 0; f < 4; ++f) {
+                factors.add(propagators.get(
+                    random.nextInt(propagators.size()))
+                    .pow(random.nextInt(5) - 2));
+            }
+            factors.add(symbols.get(random.nextInt(symbols.size())));
+            if (random.nextInt(8) == 0) {
+                factors.add(Expr.function("sqrt", propagators.get(
+                    random.nextInt(propagators.size()))));
+            }
+            sum.add(Expr.product(factors));
+        }
+        return Expr.sum(sum);
+    }
+
+    /**
+     * Creates a random amplitude with its numerators multiplied out, as
+     * after the evaluation of traces: every diagram is a product of
+     * four linear forms in the invariants over two propagators.
+     *
+     * @param random the source of randomness
+     * @param symbols the kinematic invariants, at least two
+     * @param diagrams the number of diagrams
+     * @return the expression
+     */
+    static Expr expandedAmplitude(
+            final Random random,
+            final List<Expr> symbols,
+            final int diagrams) {
+        final int n = symbols.size();
+        final List<Expr> sum = new ArrayList<>();
+        for (int d = 0; d < diagrams; ++d) {
+            List<Expr> terms = Arrays.asList(
+                symbols.get(random.nextInt(n / 2)).pow(-1)
+                    .times(symbols.get(n / 2 + random.nextInt(n - n / 2))
+                    .pow(-1)));
+            for (int f = 0; f < 4; ++f) {
+                final List<Expr> next = new ArrayList<>();
+                for (int j = 0; j < 5; ++j) {
+                    final Expr x = Expr.number(random.nextInt(9) - 4)
+                        .times(symbols.get(random.nextInt(n)));
+                    for (final Expr t : terms) {
+                        next.add(t.times(x));
+                    }
+                }
+                terms = next;
+            }
+            sum.addAll(terms);
+        }
+        return Expr.sum(sum);
+    }
+
+    /**
+     * Creates the symbols <code>s0, s1, ...</code>.
+     *
+     * @param n the number of symbols
+     * @return the symbols
+     */
+    static List<Expr> symbols(final int n) {
+        final List<Expr> symbols = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            symbols.add(Expr.symbol("s" + i));
+        }
+        return symbols;
+    }
+
+    private static Map<Expr, Double> values(
+            final List<Expr> symbols,
+            final double[] x) {
+        final Map<Expr, Double> values = new IdentityHashMap<>();
+        for (int i = 0; i < x.length; ++i) {
+            values.put(symbols.get(i), x[i]);
+        }
+        return values;
+    }
+
+    private static void assertClose(
+            final double expected,
+            final double actual) {
+        assertClose(expected, actual, 1e-12);
+    }
+
+    private static void assertClose(
+            final double expected,
+            final double actual,
+            final double tolerance) {
+        assertEquals(expected, actual,
+            tolerance * Math.max(1, Math.abs(expected)));
+    }
+
+    @Test
+    public void programsShareSubexpressions() {
+        final List<Expr> inputs = Arrays.asList(A, B, C);
+        final Expr ab = A.times(B);
+        Program p = Program.of(inputs,
+            Arrays.asList(ab.plus(ab.times(C))));
+        assertEquals(3, p.getOperationCount());
+
+        p = Program.of(inputs, Arrays.asList(
+            A.minus(B), A.negate().minus(B), A.pow(5), A.pow(-2)));
+        // a - b; -a, -a - b; a^2, a^4, a^5; 1/a^2
+        assertEquals(7, p.getOperationCount());
+        final double[] out = new double[4];
+        p.interpret(new double[] {2, 3, 5}, out);
+        assertEquals(-1, out[0]);
+        assertEquals(-5, out[1]);
+        assertEquals(32, out[2]);
+        assertEquals(0.25, out[3]);
+
+        // rational coefficients and divisions
+        p = Program.of(inputs, Arrays.asList(
+            Expr.product(Expr.number(-3, 4), A, B.pow(-1), C.pow(-2))));
+        p.interpret(new double[] {2, 3, 5}, out);
+        assertClose(-0.75 * 2 / 3 / 25, out[0]);
+    }
+
+    @Test
+    public void unknownSymbolsAndFunctions() {
+        final List<Expr> inputs = Arrays.asList(A, B);
+        assertThrows(IllegalArgumentException.class,
+            () -> Program.of(inputs, Arrays.asList(A.plus(C))));
+        assertThrows(IllegalArgumentException.class,
+            () -> Program.of(inputs, Arrays.asList(
+                Expr.function("sin", A))));
+        assertThrows(IllegalArgumentException.class,
+            () -> Program.of(Arrays.asList(A, A), Arrays.asList(A)));
+
+        // functions may be inputs themselves
+        final Expr spinor = Expr.function("spa", A, B);
+        final Program p = Program.of(Arrays.asList(spinor),
+            Arrays.asList(spinor.pow(2)));
+        final double[] out = new double[1];
+        new BytecodeCompiler(BytecodeCompiler.MIN_METHOD_SIZE)
+            .compile(p).evaluate(new double[] {3}, out);
+        assertEquals(9, out[0]);
+    }
+
+    @Test
+    public void evaluatorsMatchTrees() {
+        final Random random = new Random(1);
+        final List<Expr> symbols = symbols(6);
+        final List<Expr> outputs = new ArrayList<>();
+        for (int k = 0; k < 3; ++k) {
+            outputs.add(amplitude(random, symbols, 400));
+        }
+        final Program program = Program.of(symbols, outputs);
+
+        final CompiledEvaluator small = new BytecodeCompiler(
+            BytecodeCompiler.MIN_METHOD_SIZE).compile(program);
+        final CompiledEvaluator large = new BytecodeCompiler(
+            BytecodeCompiler.MAX_METHOD_SIZE).compile(program);
+        assertTrue(small.getMethodCount() > large.getMethodCount());
+        assertTrue(small.getWorkspaceSize() > 0);
+
+        final double[] x = new double[symbols.size()];
+        final double[] interpreted = new double[outputs.size()];
+        final double[] compiled = new double[outputs.size()];
+        for (int trial = 0; trial < 10; ++trial) {
+            for (int i = 0; i < x.length; ++i) {
+                x[i] = 1 + random.nextDouble();
+            }
+            final Map<Expr, Double> values = values(symbols, x);
+            program.interpret(x, interpreted);
+            for (int k = 0; k < outputs.size(); ++k) {
+                assertClose(tree(outputs.get(k), values), interpreted[k]);
+            }
+            for (final CompiledEvaluator e : new CompiledEvaluator[] {
+                    small, large}) {
+                e.evaluate(x, compiled);
+                for (int k = 0; k < outputs.size(); ++k) {
+                    assertClose(interpreted[k], compiled[k]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void outputsOfAllKinds() {
+        final List<Expr> inputs = Arrays.asList(A, B);
+        final Expr log = Expr.function("log",
+            Expr.function("exp", A.plus(B)));
+        final Program p = Program.of(inputs, Arrays.asList(
+            B, Expr.number(3, 4), A.times(B), B, log, A.times(B)));
+        final double[] expected = {3, 0.75, 6, 3, 5, 6};
+        final double[] out = new double[6];
+        p.interpret(new double[] {2, 3}, out);
+        for (int k = 0; k < out.length; ++k) {
+            assertClose(expected[k], out[k]);
+        }
+
+        final CompiledEvaluator e =
+            new BytecodeCompiler(4000).compile(p);
+        Arrays.fill(out, 0);
+        e.evaluate(new double[] {2, 3}, out, new double[0]);
+        for (int k = 0; k < out.length; ++k) {
+            assertClose(expected[k], out[k]);
+        }
+
+        final Program empty = Program.of(inputs, Arrays.asList());
+        new BytecodeCompiler(4000).compile(empty)
+            .evaluate(new double[0], new double[0]);
+    }
+
+    @Test
+    public void evaluatorsAreThreadSafe() {
+        final List<Expr> symbols = symbols(4);
+        final Expr amplitude = amplitude(new Random(2), symbols, 300);
+        final Evaluator compiled = new BytecodeCompiler(
+            BytecodeCompiler.MIN_METHOD_SIZE).compile(
+                Program.of(symbols, Arrays.asList(amplitude)));
+        IntStream.range(0, 64).parallel().forEach(seed -> {
+            final Random random = new Random(seed);
+            final double[] x = new double[symbols.size()];
+            final double[] out = new double[1];
+            for (int trial = 0; trial < 20; ++trial) {
+                for (int i = 0; i < x.length; ++i) {
+                    x[i] = 1 + random.nextDouble();
+                }
+                compiled.evaluate(x, out);
+                assertClose(tree(amplitude, values(symbols, x)), out[0]);
+            }
+        });
+    }
+
+    @Test
+    public void hornerSchemesMatchTrees() {
+        final Random random = new Random(3);
+        final List<Expr> symbols = symbols(6);
+        final List<Expr> outputs = Arrays.asList(
+            amplitude(random, symbols, 400),
+            amplitude(random, symbols, 400).plus(Expr.function("exp",
+                symbols.get(0).minus(symbols.get(1)))));
+        final List<Expr> inputs = Optimizer.collectInputs(outputs);
+        assertEquals(symbols, inputs);
+
+        final Program plain = Program.of(inputs, outputs);
+        final Program horner = new Optimizer(4, 60).optimize(
+            inputs, outputs);
+        assertTrue(horner.getOperationCount() < plain.getOperationCount());
+        final CompiledEvaluator compiled =
+            new BytecodeCompiler(4000).compile(horner);
+
+        final double[] x = new double[inputs.size()];
+        final double[] out = new double[outputs.size()];
+        for (int trial = 0; trial < 10; ++trial) {
+            for (int i = 0; i < x.length; ++i) {
+                x[i] = 1 + random.nextDouble();
+            }
+            compiled.evaluate(x, out);
+            for (int k = 0; k < outputs.size(); ++k) {
+                assertClose(tree(outputs.get(k), values(symbols, x)),
+                    out[k], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void hornerSchemesReduceExpandedAmplitudes() {
+        // the ten invariants s_ij of a 2 -> 3 process
+        final List<Expr> symbols = symbols(10);
+        final List<Expr> outputs = Arrays.asList(
+            expandedAmplitude(new Random(3), symbols, 15));
+        final long written = Optimizer.countTreeOperations(outputs);
+        final Program plain = Program.of(symbols, outputs);
+        final Program greedy = new Optimizer(1, 60).optimize(
+            symbols, outputs);
+        final Program best = new Optimizer(8, 60).optimize(
+            symbols, outputs);
+        assertEquals(plain.getOperationCount(),
+            new Optimizer(0, 60).optimize(symbols, outputs)
+                .getOperationCount());
+        assertTrue(best.getOperationCount() <= greedy.getOperationCount());
+        assertTrue(5 * greedy.getOperationCount() < written);
+        assertTrue(2 * greedy.getOperationCount()
+            < plain.getOperationCount());
+
+        // a budget without room for a second program keeps the greedy
+        // scheme, and reservations are returned
+        final MemoryBudget tight = new MemoryBudget(1, null);
+        assertEquals(greedy.getOperationCount(), new Optimizer(8, 60)
+            .optimize(symbols, outputs, tight).getOperationCount());
+        assertEquals(0, tight.getPeak());
+        final MemoryBudget ample = new MemoryBudget(1L << 30, null);
+        assertEquals(best.getOperationCount(), new Optimizer(8, 60)
+            .optimize(symbols, outputs, ample).getOperationCount());
+        assertTrue(ample.getPeak() > 0);
+        assertEquals(0, ample.getUsed());
+
+        final Random random = new Random(4);
+        final double[] x = new double[symbols.size()];
+        final double[] out = new double[1];
+        for (int trial = 0; trial < 10; ++trial) {
+            for (int i = 0; i < x.length; ++i) {
+                x[i] = 1 + random.nextDouble();
+            }
+            best.interpret(x, out);
+            assertClose(tree(outputs.get(0), values(symbols, x)),
+                out[0], 1e-9);
+        }
+    }
+
+    @Test
+    public void expandedProductsAreFactored() {
+        final List<Expr> s = symbols(6);
+        // (s0 + 2 s1) (s2 - s3)^2 (3 s4 + s5), expanded
+        final Expr product = s.get(0).plus(Expr.number(2).times(s.get(1)))
+            .times(s.get(2).minus(s.get(3)).pow(2))
+            .times(Expr.number(3).times(s.get(4)).plus(s.get(5)));
+        final Expr expanded = expand(product);
+        assertEquals(Expr.Kind.SUM, expanded.getKind());
+        assertEquals(12, expanded.getArgCount());
+        final List<Expr> outputs = Arrays.asList(expanded);
+        final Program p = new Optimizer(1, 60).optimize(s, outputs);
+        // the binomials with their factors 2 and 3, the square as a
+        // quadratic factor and two products
+        assertTrue(p.getOperationCount() <= 11,
+            OptimizerStage.describe(p));
+        assertTrue(3 * p.getOperationCount()
+            < Optimizer.countTreeOperations(outputs));
+
+        final Random random = new Random(5);
+        final double[] x = new double[s.size()];
+        final double[] out = new double[1];
+        for (int trial = 0; trial < 10; ++trial) {
+            for (int i = 0; i < x.length; ++i) {
+                x[i] = 1 + random.nextDouble();
+            }
+            p.interpret(x, out);
+            assertClose(tree(product, values(s, x)), out[0], 1e-9);
+        }
+    }
+
+    /**
+     * Multiplies out the sums in a product of sums and powers of sums.
+     *
+     * @param e the product
+     * @return the sum of the products of the terms
+     */
+    private static Expr expand(final Expr e) {
+        List<Expr> terms = Arrays.asList(Expr.number(1));
+        for (int i = 0; i < e.getArgCount(); ++i) {
+            final Expr f = e.getArg(i);
+            final boolean power = f.getKind() == Expr.Kind.POWER;
+            final Expr base = power ? f.getArg(0) : f;
+            for (int k = 0; k < (power ? f.getExponent() : 1); ++k) {
+                final List<Expr> next = new ArrayList<>();
+                for (final Expr t : terms) {
+                    for (int j = 0; j < base.getArgCount(); ++j) {
+                        next.add(t.times(base.getArg(j)));
+                    }
+                }
+                terms = next;
+            }
+        }
+        return Expr.sum(terms);
+    }
+
+    @Test
+    public void optimizerStageReadsExpressions(@TempDir final Path dir)
+            throws IOException {
+        final Path file = dir.resolve("amplitudes.txt");
+        Files.write(file, Arrays.asList(
+            "amp1 = (a + b)^2 * c^-1;",
+            "amp2 = 2*a*b*c^-1 + sqrt(a*b);"), StandardCharsets.UTF_8);
+        final OptimizerStage stage = new OptimizerStage();
+        new DefaultConfigurator(new String[] {
+            "-D", "codegen.input=" + file, "-D", "codegen.effort=4"})
+            .run(stage);
+        assertEquals(Arrays.asList("amp1", "amp2"), stage.getNames());
+        assertEquals(Arrays.asList(A, B, C), stage.getInputs());
+
+        final double[] out = new double[2];
+        stage.getProgram().interpret(new double[] {2, 8, 4}, out);
+        assertClose(25, out[0]);
+        assertClose(12, out[1]);
+    }
+
+    @Test
+    public void programsAreWrittenAndReadBack() throws IOException {
+        final Program p = Program.of(Arrays.asList(A, B), Arrays.asList(
+            A.times(B).plus(Expr.number(3, 4)),
+            Expr.function("exp", A).negate(), B));
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            p.write(out);
+        }
+        final byte[] data = bytes.toByteArray();
+        final Program q = Program.read(new DataInputStream(
+            new ByteArrayInputStream(data)));
+        assertEquals(p.toString(), q.toString());
+        assertEquals(p.getInputCount(), q.getInputCount());
+
+        // an operand out of range
+        data[8 + 1 + 4 + 4 + 8 + 1] = 0x7f;
+        assertThrows(IOException.class, () -> Program.read(
+            new DataInputStream(new ByteArrayInputStream(data))));
+    }
+
+    @Test
+    public void optimizerStageUsesCache(@TempDir final Path dir)
+            throws IOException, ConfigurationException {
+        final Path file = dir.resolve("amplitudes.txt");
+        Files.write(file, Arrays.asList(
+            "amp1 = (a + b)^2 * c^-1;",
+            "amp2 = 2*a*b*c^-1 + sqrt(a*b);"), StandardCharsets.UTF_8);
+        final String[] args = {
+            "-D", "codegen.input=" + file,
+            "-D", "codegen.output=" + dir.resolve("amp"),
+            "-D", "cache.directory=" + dir.resolve("cache")};
+        final OptimizerStage first = new OptimizerStage();
+        new DefaultConfigurator(args).run(first);
+        final List<String> sources = new ArrayList<>();
+        for (final Path source : first.getFiles()) {
+            sources.add(Files.readString(source, StandardCharsets.UTF_8));
+            Files.delete(source);
+        }
+        final long size = StageCache.fromConfig(TestConfigurator.create(
+            CacheConfig.class, args)).getSize();
+        assertTrue(size > 0);
+
+        final OptimizerStage second = new OptimizerStage();
+        new DefaultConfigurator(args).run(second);
+        assertEquals(first.getProgram().toString(),
+            second.getProgram().toString());
+        assertEquals(first.getFiles(), second.getFiles());
+        for (int k = 0; k < sources.size(); ++k) {
+            assertEquals(sources.get(k), Files.readString(
+                second.getFiles().get(k), StandardCharsets.UTF_8));
+        }
+
+        // another input is a miss
+        Files.write(file, Arrays.asList("amp1 = a*b;"),
+            StandardCharsets.UTF_8);
+        final OptimizerStage third = new OptimizerStage();
+        new DefaultConfigurator(args).run(third);
+        assertEquals(1, third.getProgram().getOutputCount());
+    }
+
+    private static List<String> names(final int n) {
+        final List<String> names = new ArrayList<>();
+        for (int k = 0; k < n; ++k) {
+            names.add("amp" + k);
+        }
+        return names;
+    }
+
+    @Test
+    public void cSourceIsSplitIntoParts(@TempDir final Path dir)
+            throws IOException {
+        final Program p = Program.of(Arrays.asList(A, B), Arrays.asList(
+            A.times(B).plus(Expr.number(3, 4)),
+            Expr.function("sqrt", A).negate(), B));
+        final List<Path> files = Emitter.create("c", Compression.NONE,
+            1, 2, Emitter.MIN_BUFFER_SIZE).emit(
+                dir.resolve("amp"), p, names(3), Arrays.asList(A, B));
+        // four computed values, two per function and one function
+        // per file
+        assertEquals(Arrays.asList(dir.resolve("amp_0.c"),
+            dir.resolve("amp_1.c"), dir.resolve("amp.c")), files);
+
+        final String part = new String(Files.readAllBytes(files.get(0)),
+            StandardCharsets.UTF_8);
+        assertTrue(part.contains("#include <math.h>\n"));
+        assertTrue(part.contains(
+            "void amp_f0(const double *x, double *w)\n{\n"
+            + "    w[0] = x[1] * x[0];\n"
+            + "    w[1] = w[0] + 0.75;\n}\n"));
+
+        final List<String> driver = Files.readAllLines(files.get(2));
+        assertTrue(driver.contains(" *   x[1] = b"));
+        assertTrue(driver.contains("#define AMP_WORKSPACE 4"));
+        assertTrue(driver.contains(
+            "void amp_f1(const double *x, double *w);"));
+        assertTrue(driver.contains(
+            "void amp(const double *x, double *out, double *w)"));
+        assertTrue(driver.contains("    amp_f1(x, w);"));
+        assertTrue(driver.contains("    out[2] = x[1]; /* amp2 */"));
+    }
+
+    @Test
+    public void javaSourceCompilesToTheSameValues(@TempDir final Path dir)
+            throws Exception {
+        final Random random = new Random(5);
+        final List<Expr> symbols = symbols(5);
+        final List<Expr> outputs = Arrays.asList(
+            amplitude(random, symbols, 300),
+            amplitude(random, symbols, 300));
+        final Program p = new Optimizer(1, 60).optimize(symbols, outputs);
+        final List<Path> files = Emitter.create("java", Compression.NONE,
+            20000, 1000, Emitter.MIN_BUFFER_SIZE).emit(
+                dir.resolve("Amplitudes"), p, names(2), symbols);
+        assertTrue(files.size() > 2);
+
+        // javac runs in a process of its own, out of reach of the
+        // coverage agent
+        final List<String> command = new ArrayList<>(Arrays.asList(
+            Paths.get(System.getProperty("java.home"), "bin", "javac")
+                .toString(), "--release", "11", "-d", dir.toString()));
+        for (final Path file : files) {
+            command.add(file.toString());
+        }
+        assertEquals(0, new ProcessBuilder(command).inheritIO().start()
+            .waitFor());
+
+        try (URLClassLoader loader = new URLClassLoader(
+                new URL[] {dir.toUri().toURL()})) {
+            final Class<?> c = loader.loadClass("Amplitudes");
+            final double[] w = new double[c.getField("WORKSPACE").getInt(null)];
+            final double[] x = new double[symbols.size()];
+            final double[] expected = new double[outputs.size()];
+            final double[] actual = new double[outputs.size()];
+            for (int trial = 0; trial < 5; ++trial) {
+                for (int i = 0; i < x.length; ++i) {
+                    x[i] = 1 + random.nextDouble();
+                }
+                p.interpret(x, expected);
+                c.getMethod("evaluate", double[].class, double[].class,
+                    double[].class).invoke(null, x, actual, w);
+                for (int k = 0; k < outputs.size(); ++k) {
+                    assertClose(expected[k], actual[k]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void compressedFilesMatchPlainOnes(@TempDir final Path dir)
+            throws IOException {
+        final List<Expr> symbols = symbols(6);
+        final Program p = Program.of(symbols, Arrays.asList(
+            amplitude(new Random(6), symbols, 2000)));
+        final List<Path> plain = Emitter.create("c", Compression.NONE,
+            30000, 500, Emitter.MIN_BUFFER_SIZE).emit(
+                dir.resolve("plain"), p, names(1), symbols);
+        assertTrue(plain.size() > 2);
+        for (final Compression c : new Compression[] {
+                Compression.GZIP, Compression.ZSTD}) {
+            final List<Path> packed = Emitter.create("c", c, 30000, 500,
+                Emitter.MIN_BUFFER_SIZE).emit(
+                    dir.resolve(c.getName()), p, names(1), symbols);
+            assertEquals(plain.size(), packed.size());
+            for (int k = 0; k < plain.size(); ++k) {
+                assertTrue(packed.get(k).toString().endsWith(
+                    c.getSuffix()));
+                assertTrue(Files.size(packed.get(k))
+                    < Files.size(plain.get(k)));
+                final byte[] text;
+                try (InputStream in = c == Compression.GZIP
+                        ? new GZIPInputStream(
+                            Files.newInputStream(packed.get(k)))
+                        : new ZstdInputStream(
+                            Files.newInputStream(packed.get(k)))) {
+                    text = in.readAllBytes();
+                }
+                final String expected = new String(
+                    Files.readAllBytes(plain.get(k)), StandardCharsets.UTF_8)
+                    .replace("plain", c.getName())
+                    .replace("PLAIN", c.getName().toUpperCase());
+                assertEquals(expected,
+                    new String(text, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    public void formSourceUsesExactFractions(@TempDir final Path dir)
+            throws IOException {
+        assertEquals(Rational.of(-3, 4), FormEmitter.toRational(-0.75));
+        assertEquals(Rational.of(1, 3), FormEmitter.toRational(1.0 / 3));
+        assertEquals(Rational.of(-12345, 1),
+            FormEmitter.toRational(-12345));
+        assertEquals(Rational.of(1, 1L << 60),
+            FormEmitter.toRational(Math.scalb(1.0, -60)));
+        final Rational pi = FormEmitter.toRational(Math.PI);
+        assertEquals(Math.PI, pi.getNumerator().doubleValue()
+            / pi.getDenominator().doubleValue());
+
+        final Expr spa = Expr.function("spa", A, B);
+        final Program p = Program.of(Arrays.asList(spa, C), Arrays.asList(
+            Expr.product(Expr.number(-1, 3), spa, C.pow(-1)),
+            Expr.function("log", C)));
+        final List<Path> files = Emitter.create("form", Compression.NONE,
+            1000, 1000, Emitter.MIN_BUFFER_SIZE).emit(
+                dir.resolve("amp"), p, Arrays.asList("r", "l"),
+                Arrays.asList(spa, C));
+        assertEquals(2, files.size());
+        final List<String> part = Files.readAllLines(files.get(0));
+        assertTrue(part.stream().anyMatch(
+            line -> line.matches("#\\$w\\d+ = .*\\*den\\(\\$x1\\);")));
+        assertTrue(part.contains("#$w0 = $x0 * 1/3;"));
+        assertTrue(part.contains("#$w2 = -$w1;"));
+
+        final List<String> driver = Files.readAllLines(files.get(1));
+        assertTrue(driver.contains("Symbols a, b, c;"));
+        assertTrue(driver.contains("CFunctions den, log, spa;"));
+        assertTrue(driver.contains("#$x0 = spa(a, b);"));
+        assertTrue(driver.contains("#include amp_0.frm"));
+        assertTrue(driver.stream().anyMatch(
+            line -> line.matches("Local l = \\$w\\d+;")));
+    }
+
+    @Test
+    public void configuration() throws ConfigurationException {
+        assertEquals(4000, BytecodeCompiler.fromConfig(
+            TestConfigurator.create(CodegenConfig.class))
+            .getMethodSize());
+        assertThrows(ConfigurationException.class,
+            () -> BytecodeCompiler.fromConfig(TestConfigurator.create(
+                CodegenConfig.class, "-D", "codegen.methodSize=9000")));
+        assertThrows(IllegalArgumentException.class,
+            () -> new BytecodeCompiler(100));
+
+        assertEquals(1, Optimizer.fromConfig(
+            TestConfigurator.create(CodegenConfig.class)).getEffort());
+        assertThrows(ConfigurationException.class,
+            () -> Optimizer.fromConfig(TestConfigurator.create(
+                CodegenConfig.class, "-D", "codegen.effort=-1")));
+        assertThrows(ConfigurationException.class,
+            () -> Optimizer.fromConfig(TestConfigurator.create(
+                CodegenConfig.class, "-D", "codegen.timeBudget=-2")));
+        assertThrows(IllegalArgumentException.class,
+            () -> new Optimizer(1, Double.NaN));
+
+        final Emitter emitter = Emitter.fromConfig(
+            TestConfigurator.create(CodegenConfig.class,
+                "-D", "codegen.language=java",
+                "-D", "codegen.compression=gzip"));
+        assertTrue(emitter instanceof JavaEmitter);
+        assertEquals(Compression.GZIP, emitter.getCompression());
+        assertEquals(450, emitter.getFunctionSize());
+        assertThrows(ConfigurationException.class,
+            () -> Emitter.fromConfig(TestConfigurator.create(
+                CodegenConfig.class, "-D", "codegen.language=fortran")));
+        assertThrows(ConfigurationException.class,
+            () -> Emitter.fromConfig(TestConfigurator.create(
+                CodegenConfig.class, "-D", "codegen.compression=xz")));
+        assertThrows(ConfigurationException.class,
+            () -> Emitter.fromConfig(TestConfigurator.create(
+                CodegenConfig.class, "-D", "codegen.bufferSize=100")));
+    }
+}
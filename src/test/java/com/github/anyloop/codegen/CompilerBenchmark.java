@@ -0,0 +1,114 @@
+/*
+ * CompilerBenchmark.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.codegen;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.anyloop.symbolic.Expr;
+
+/**
+ * Benchmarks the evaluation of a random amplitude at one point: by
+ * walking the expression tree, by interpreting its program and by the
+ * compiled evaluator.
+ *
+ * Run with <code>mvn -Pbenchmark test -Djmh.args=CompilerBenchmark</code>.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompilerBenchmark {
+
+    /**
+     * The number of terms of the amplitude.
+     */
+    @Param({"100", "3000"})
+    private int terms;
+
+    private Expr amplitude;
+
+    private Map<Expr, Double> values;
+
+    private Program program;
+
+    private Evaluator compiled;
+
+    private final double[] inputs = new double[6];
+
+    private final double[] outputs = new double[1];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random random = new Random(this.terms);
+        final List<Expr> symbols = CodegenTest.symbols(this.inputs.length);
+        this.amplitude = CodegenTest.amplitude(random, symbols, this.terms);
+        this.values = new IdentityHashMap<>();
+        for (int i = 0; i < this.inputs.length; ++i) {
+            this.inputs[i] = 1 + random.nextDouble();
+            this.values.put(symbols.get(i), this.inputs[i]);
+        }
+        this.program = Program.of(symbols, Arrays.asList(this.amplitude));
+        this.compiled = new BytecodeCompiler(4000).compile(this.program);
+    }
+
+    @Benchmark
+    public double tree() {
+        return CodegenTest.tree(this.amplitude, this.values);
+    }
+
+    @Benchmark
+    public double interpreted() {
+        this.program.interpret(this.inputs, this.outputs);
+        return this.outputs[0];
+    }
+
+    @Benchmark
+    public double compiled() {
+        this.compiled.evaluate(this.inputs, this.outputs);
+        return this.outputs[0];
+    }
+}
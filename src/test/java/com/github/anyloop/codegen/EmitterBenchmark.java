@@ -0,0 +1,115 @@
+/*
+ * EmitterBenchmark.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.codegen;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.anyloop.symbolic.Expr;
+
+/**
+ * Benchmarks writing the program of a random amplitude as C source
+ * code split into files of 16 MB. The time per term should not depend
+ * on the size of the amplitude.
+ *
+ * Run with <code>mvn -Pbenchmark test -Djmh.args=EmitterBenchmark</code>.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmitterBenchmark {
+
+    /**
+     * The number of terms of the amplitude.
+     */
+    @Param({"10000", "100000"})
+    private int terms;
+
+    /**
+     * The name of the compression.
+     */
+    @Param({"none", "gzip", "zstd"})
+    private String compression;
+
+    private Program program;
+
+    private List<Expr> symbols;
+
+    private Emitter emitter;
+
+    private Path dir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.symbols = CodegenTest.symbols(6);
+        this.program = Program.of(this.symbols, Arrays.asList(
+            CodegenTest.amplitude(new Random(1), this.symbols, this.terms)));
+        this.emitter = Emitter.create("c",
+            Compression.forName(this.compression), 16 << 20, 2000, 1 << 20);
+        this.dir = Files.createTempDirectory("emitter");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(this.dir)) {
+            for (final Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(this.dir);
+    }
+
+    @Benchmark
+    public List<Path> emit() throws IOException {
+        return this.emitter.emit(this.dir.resolve("amp"), this.program,
+            Collections.singletonList("amp"), this.symbols);
+    }
+}
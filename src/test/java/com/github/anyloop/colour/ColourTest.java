@@ -0,0 +1,269 @@
+/*
+ * ColourTest.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.colour;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.anyloop.TestConfigurator;
+import com.github.anyloop.cache.CacheKey;
+import com.github.anyloop.cache.StageCache;
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.finitefield.Rational;
+import com.github.anyloop.model.ModelConfig;
+import com.github.anyloop.model.ProcessConfig;
+
+/**
+ * This test checks colour reductions against identities of SU(N) and
+ * against explicit SU(3) generators.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public class ColourTest {
+
+    private static final double SQRT3 = Math.sqrt(3);
+
+    /**
+     * The Gell-Mann matrices as real and imaginary parts.
+     */
+    private static final double[][][][] LAMBDA = {
+        {{{0, 1, 0}, {1, 0, 0}, {0, 0, 0}}, {{0, 0, 0}, {0, 0, 0}, {0, 0, 0}}},
+        {{{0, 0, 0}, {0, 0, 0}, {0, 0, 0}}, {{0, -1, 0}, {1, 0, 0}, {0, 0, 0}}},
+        {{{1, 0, 0}, {0, -1, 0}, {0, 0, 0}}, {{0, 0, 0}, {0, 0, 0}, {0, 0, 0}}},
+        {{{0, 0, 1}, {0, 0, 0}, {1, 0, 0}}, {{0, 0, 0}, {0, 0, 0}, {0, 0, 0}}},
+        {{{0, 0, 0}, {0, 0, 0}, {0, 0, 0}}, {{0, 0, -1}, {0, 0, 0}, {1, 0, 0}}},
+        {{{0, 0, 0}, {0, 0, 1}, {0, 1, 0}}, {{0, 0, 0}, {0, 0, 0}, {0, 0, 0}}},
+        {{{0, 0, 0}, {0, 0, 0}, {0, 0, 0}}, {{0, 0, 0}, {0, 0, -1}, {0, 1, 0}}},
+        {{{1 / SQRT3, 0, 0}, {0, 1 / SQRT3, 0}, {0, 0, -2 / SQRT3}},
+            {{0, 0, 0}, {0, 0, 0}, {0, 0, 0}}},
+    };
+
+    private static final ColourAlgebra TRACE =
+        new ColourAlgebra(ColourBasis.TRACE, 1024, null, null);
+
+    private static ColourFactor factor(final long numerator, final int power) {
+        return ColourFactor.monomial(Rational.of(numerator, 1), power);
+    }
+
+    @Test
+    public void fierzIdentities() {
+        // Tr(T^a T^a) = N^2 - 1
+        assertEquals(factor(1, 2).add(factor(-1, 0)),
+            TRACE.reduce(ColourSum.trace(1, 1)).getScalar());
+        // (T^a T^a)_ij = (N - 1/N) delta_ij
+        assertEquals(ColourSum.line(0, 1).scale(
+                factor(1, 1).add(factor(-1, -1))),
+            TRACE.reduce(ColourSum.line(0, 1, 2, 2)));
+        // T^a T^b T^a = -T^b / N
+        assertEquals(ColourSum.line(0, 1, 2).scale(factor(-1, -1)),
+            TRACE.reduce(ColourSum.line(0, 1, 3, 2, 3)));
+        // quark lines are joined: delta_ij T^a_jk = T^a_ik
+        assertEquals(ColourSum.line(0, 2, 5),
+            TRACE.reduce(ColourSum.line(0, 1)
+                .multiply(ColourSum.line(1, 2, 5))));
+        // closing a quark line gives a trace
+        assertEquals(ColourSum.trace(5, 6),
+            TRACE.reduce(ColourSum.line(0, 1, 5)
+                .multiply(ColourSum.line(1, 0, 6))));
+    }
+
+    @Test
+    public void structureConstants() {
+        // f~^abc f~^abc = 2 N (N^2 - 1)
+        final ColourSum f = ColourSum.structureConstant(1, 2, 3);
+        assertEquals(factor(2, 3).add(factor(-2, 1)),
+            TRACE.scalarProduct(f, f));
+        // f~ is imaginary, so f~^acd f~^bcd = -2 N Tr(T^a T^b)
+        assertEquals(ColourSum.trace(0, 1).scale(factor(-2, 1)),
+            TRACE.reduce(ColourSum.structureConstant(0, 2, 3)
+                .multiply(ColourSum.structureConstant(1, 2, 3))));
+        assertThrows(IllegalArgumentException.class,
+            () -> TRACE.scalarProduct(f, ColourSum.trace(1, 2, 4)));
+        assertThrows(IllegalArgumentException.class,
+            () -> TRACE.reduce(ColourSum.trace(1, 1, 1)));
+    }
+
+    @Test
+    public void gluonMatrixMatchesSu3() {
+        final int n = 4;
+        final List<ColourSum> basis = ColourAlgebra.gluonBasis(n);
+        assertEquals(6, basis.size());
+        final double[][] m = TRACE.matrix(basis).evaluate(3);
+
+        // explicit sum over the colours of all four gluons
+        final int[][] orders = new int[basis.size()][];
+        for (int i = 0; i < orders.length; ++i) {
+            final ColourProduct p = basis.get(i).getProduct(0);
+            orders[i] = p.getGluons(0);
+        }
+        final double[][] expected = new double[orders.length][orders.length];
+        final int[] colours = new int[n];
+        for (int c = 0; c < 1 << (3 * n); ++c) {
+            for (int k = 0; k < n; ++k) {
+                colours[k] = (c >> (3 * k)) & 7;
+            }
+            final double[][] traces = new double[orders.length][];
+            for (int i = 0; i < orders.length; ++i) {
+                traces[i] = trace(orders[i], colours);
+            }
+            for (int i = 0; i < orders.length; ++i) {
+                for (int j = 0; j < orders.length; ++j) {
+                    expected[i][j] += traces[i][0] * traces[j][0]
+                        + traces[i][1] * traces[j][1];
+                }
+            }
+        }
+        for (int i = 0; i < orders.length; ++i) {
+            for (int j = 0; j < orders.length; ++j) {
+                assertEquals(expected[i][j], m[i][j], 1e-9);
+            }
+        }
+    }
+
+    /**
+     * Computes the trace of a product of SU(3) generators
+     * <code>T = lambda / sqrt(2)</code>.
+     */
+    private static double[] trace(final int[] order, final int[] colours) {
+        double[][] re = {{1, 0, 0}, {0, 1, 0}, {0, 0, 1}};
+        double[][] im = new double[3][3];
+        for (final int g : order) {
+            final double[][] lr = LAMBDA[colours[g]][0];
+            final double[][] li = LAMBDA[colours[g]][1];
+            final double[][] r = new double[3][3];
+            final double[][] s = new double[3][3];
+            for (int i = 0; i < 3; ++i) {
+                for (int j = 0; j < 3; ++j) {
+                    for (int k = 0; k < 3; ++k) {
+                        r[i][j] += re[i][k] * lr[k][j] - im[i][k] * li[k][j];
+                        s[i][j] += re[i][k] * li[k][j] + im[i][k] * lr[k][j];
+                    }
+                    r[i][j] /= Math.sqrt(2);
+                    s[i][j] /= Math.sqrt(2);
+                }
+            }
+            re = r;
+            im = s;
+        }
+        return new double[] {re[0][0] + re[1][1] + re[2][2],
+            im[0][0] + im[1][1] + im[2][2]};
+    }
+
+    @Test
+    public void colourFlowBasis() {
+        final ColourAlgebra flow =
+            new ColourAlgebra(ColourBasis.COLOUR_FLOW, 1024, null, null);
+        final ColourMatrix m = flow.matrix(ColourAlgebra.gluonBasis(4));
+        for (int i = 0; i < m.getDimension(); ++i) {
+            assertEquals(factor(1, 4), m.get(i, i));
+        }
+        // U(N): T^a_ij T^a_kl = delta_il delta_kj
+        assertEquals(ColourSum.line(0, 3).multiply(ColourSum.line(2, 1)),
+            flow.reduce(ColourSum.line(0, 1, 5)
+                .multiply(ColourSum.line(2, 3, 5))));
+    }
+
+    @Test
+    public void relabelledProductsShareCacheEntries() {
+        final ColourAlgebra algebra =
+            new ColourAlgebra(ColourBasis.TRACE, 1024, null, null);
+        algebra.reduce(ColourSum.trace(1, 2, 1, 2));
+        final long misses = algebra.getCache().getMissCount();
+        assertEquals(algebra.reduce(ColourSum.trace(1, 2, 1, 2)),
+            algebra.reduce(ColourSum.trace(7, 3, 7, 3)));
+        assertEquals(misses, algebra.getCache().getMissCount());
+    }
+
+    @Test
+    public void cachedSixGluonMatrix(@TempDir final Path dir)
+            throws Exception {
+        final StageCache cache = new StageCache(dir, 1L << 30);
+        final CacheKey context = context("res://qed-eemumu.yaml");
+        final ColourAlgebra first =
+            new ColourAlgebra(ColourBasis.TRACE, 1 << 16, cache, context);
+        final ColourMatrix m = first.gluonMatrix(6);
+        assertEquals(120, m.getDimension());
+        for (int i = 0; i < 120; i += 7) {
+            for (int j = 0; j < 120; j += 11) {
+                assertEquals(m.get(i, j), m.get(j, i));
+            }
+        }
+        // Tr(...) Tr(...)^* of the same ordering leads with N^6
+        assertEquals(Rational.of(1, 1), m.get(0, 0).getCoefficient(6));
+        assertTrue(cache.getSize() > 0);
+
+        final ColourAlgebra second = new ColourAlgebra(ColourBasis.TRACE,
+            16, cache, context("res://qed-eemumu.yaml"));
+        final ColourMatrix loaded = second.gluonMatrix(6);
+        assertEquals(0, second.getCache().getMissCount());
+        for (int i = 0; i < 120; ++i) {
+            for (int j = 0; j < 120; ++j) {
+                assertEquals(m.get(i, j), loaded.get(i, j));
+            }
+        }
+
+        // another process has matrices of its own
+        final ColourAlgebra other = new ColourAlgebra(ColourBasis.TRACE,
+            1 << 16, cache, context("res://scalar-2to2.yaml"));
+        other.gluonMatrix(3);
+        assertTrue(other.getCache().getMissCount() > 0);
+        final ColourAlgebra again = new ColourAlgebra(ColourBasis.TRACE,
+            1 << 16, cache, context);
+        again.gluonMatrix(3);
+        assertTrue(again.getCache().getMissCount() > 0);
+    }
+
+    private static CacheKey context(final String process)
+            throws ConfigurationException {
+        return CacheKey.of("process", "test")
+            .add(ModelConfig.class, TestConfigurator.create(
+                ModelConfig.class, "-c", "res://qed-model.yaml"))
+            .add(ProcessConfig.class, TestConfigurator.create(
+                ProcessConfig.class, "-c", process));
+    }
+
+    @Test
+    public void configuration() throws ConfigurationException {
+        final ColourAlgebra algebra = ColourAlgebra.fromConfig(
+            TestConfigurator.create(ColourConfig.class,
+                "-D", "colour.basis=flow"));
+        assertEquals(ColourBasis.COLOUR_FLOW, algebra.getBasis());
+        assertThrows(ConfigurationException.class,
+            () -> ColourAlgebra.fromConfig(
+                TestConfigurator.create(ColourConfig.class,
+                    "-D", "colour.basis=octet")));
+        assertThrows(ConfigurationException.class,
+            () -> ColourAlgebra.fromConfig(
+                TestConfigurator.create(ColourConfig.class,
+                    "-D", "colour.cacheSize=0")));
+    }
+}
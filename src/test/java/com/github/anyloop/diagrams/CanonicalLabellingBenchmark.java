@@ -0,0 +1,195 @@
+/*
+ * CanonicalLabellingBenchmark.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.diagrams;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.model.Model;
+import com.github.anyloop.model.ScatteringProcess;
+
+/**
+ * Benchmarks canonical labelling and diagram generation on two-loop
+ * vacuum and one-loop 2 &rarr; 4 topologies of a scalar theory with
+ * cubic and quartic vertices.
+ *
+ * Run with <code>mvn -Pbenchmark test -Djmh.args=CanonicalLabelling</code>.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CanonicalLabellingBenchmark {
+
+    /**
+     * The number of worker threads used for generation.
+     */
+    @Param({"1", "4"})
+    private int jobs;
+
+    private Model model;
+
+    private ScatteringProcess vacuum;
+
+    private ScatteringProcess sixPoint;
+
+    private Diagram[] vacuumDiagrams;
+
+    private Diagram[] sixPointDiagrams;
+
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ConfigurationException {
+        this.model = DiagramGeneratorTest.loadModel("phi34-model.yaml");
+        this.vacuum = new ScatteringProcess(
+            this.model, new int[0], 0, 2, false, false, false);
+        this.sixPoint = new ScatteringProcess(
+            this.model, new int[6], 2, 1, false, true, true);
+        this.pool = new ForkJoinPool(this.jobs);
+
+        final Random random = new Random(4711);
+        this.vacuumDiagrams = this.scrambled(this.vacuum, 2, random);
+        this.sixPointDiagrams = this.scrambled(this.sixPoint, 1, random);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.pool.shutdown();
+    }
+
+    private Diagram[] scrambled(
+            final ScatteringProcess process,
+            final int loops,
+            final Random random) {
+        final ConcurrentLinkedQueue<Diagram> found =
+            new ConcurrentLinkedQueue<>();
+        new DiagramGenerator(process).generate(loops, this.pool, found::add);
+
+        final List<Diagram> result = new ArrayList<>();
+        for (final Diagram d : found) {
+            final int ext = d.getExternalCount();
+            final int vertices = d.getVertexCount();
+            final int[] perm = new int[vertices];
+            for (int v = 0; v < vertices; ++v) {
+                perm[v] = v;
+            }
+            for (int v = vertices - 1; v > 0; --v) {
+                final int w = random.nextInt(v + 1);
+                final int t = perm[v];
+                perm[v] = perm[w];
+                perm[w] = t;
+            }
+            final int[] types = new int[vertices];
+            for (int v = 0; v < vertices; ++v) {
+                types[perm[v]] = d.getVertexType(v);
+            }
+            final int edges = d.getEdgeCount();
+            final int[] from = new int[edges];
+            final int[] to = new int[edges];
+            final int[] fields = new int[edges];
+            for (int e = 0; e < edges; ++e) {
+                final int a = d.getEdgeFrom(e);
+                final int b = d.getEdgeTo(e);
+                from[e] = a < ext ? a : ext + perm[a - ext];
+                to[e] = b < ext ? b : ext + perm[b - ext];
+                fields[e] = d.getEdgeField(e);
+            }
+            result.add(new Diagram(ext, loops, types, from, to, fields, 0));
+        }
+        return result.toArray(new Diagram[0]);
+    }
+
+    /**
+     * Canonical labelling of all two-loop vacuum diagrams.
+     *
+     * @param bh sink for the results
+     */
+    @Benchmark
+    public void canonicalVacuumTwoLoop(final Blackhole bh) {
+        for (final Diagram d : this.vacuumDiagrams) {
+            bh.consume(CanonicalLabelling.compute(d, this.model));
+        }
+    }
+
+    /**
+     * Canonical labelling of all one-loop 2 &rarr; 4 diagrams.
+     *
+     * @param bh sink for the results
+     */
+    @Benchmark
+    public void canonicalOneLoopTwoToFour(final Blackhole bh) {
+        for (final Diagram d : this.sixPointDiagrams) {
+            bh.consume(CanonicalLabelling.compute(d, this.model));
+        }
+    }
+
+    /**
+     * Generation of all one-loop 2 &rarr; 4 diagrams, including
+     * deduplication through the hash index.
+     *
+     * @return the number of diagrams
+     */
+    @Benchmark
+    public long generateOneLoopTwoToFour() {
+        return new DiagramGenerator(this.sixPoint)
+            .generate(1, this.pool, d -> { });
+    }
+
+    /**
+     * Generation of all three-loop vacuum diagrams.
+     *
+     * @return the number of diagrams
+     */
+    @Benchmark
+    public long generateVacuumThreeLoop() {
+        return new DiagramGenerator(this.vacuum)
+            .generate(3, this.pool, d -> { });
+    }
+}
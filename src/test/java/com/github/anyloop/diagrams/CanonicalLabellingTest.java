@@ -0,0 +1,278 @@
+/*
+ * CanonicalLabellingTest.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.diagrams;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.model.Model;
+import com.github.anyloop.model.ScatteringProcess;
+
+/**
+ * This test checks canonical forms and symmetry factors computed by
+ * {@link CanonicalLabelling}.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public class CanonicalLabellingTest {
+
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    public static void createPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    public static void shutdownPool() {
+        pool.shutdown();
+    }
+
+    private static List<Diagram> generate(
+            final ScatteringProcess process,
+            final int loops) {
+        final ConcurrentLinkedQueue<Diagram> diagrams =
+            new ConcurrentLinkedQueue<>();
+        new DiagramGenerator(process).generate(loops, pool, diagrams::add);
+        return new ArrayList<>(diagrams);
+    }
+
+    private static List<Long> symmetryFactors(final List<Diagram> diagrams) {
+        final List<Long> result = new ArrayList<>();
+        for (final Diagram d : diagrams) {
+            result.add(d.getSymmetryFactor());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Relabels the internal vertices of a diagram.
+     */
+    private static Diagram permute(final Diagram d, final int[] perm) {
+        final int ext = d.getExternalCount();
+        final int[] types = new int[d.getVertexCount()];
+        for (int v = 0; v < types.length; ++v) {
+            types[perm[v]] = d.getVertexType(v);
+        }
+        final int edges = d.getEdgeCount();
+        final int[] from = new int[edges];
+        final int[] to = new int[edges];
+        final int[] fields = new int[edges];
+        for (int e = 0; e < edges; ++e) {
+            final int a = d.getEdgeFrom(e);
+            final int b = d.getEdgeTo(e);
+            from[e] = a < ext ? a : ext + perm[a - ext];
+            to[e] = b < ext ? b : ext + perm[b - ext];
+            fields[e] = d.getEdgeField(e);
+        }
+        return new Diagram(ext, d.getLoops(), types, from, to, fields, 0);
+    }
+
+    /**
+     * Checks the two-loop vacuum diagrams of a theory with cubic and
+     * quartic vertices: the theta (S = 12), the dumbbell (S = 8) and
+     * the figure eight (S = 8).
+     */
+    @Test
+    public void testVacuumSymmetryFactors() throws ConfigurationException {
+        final Model model = DiagramGeneratorTest.loadModel("phi34-model.yaml");
+        final ScatteringProcess vacuum = new ScatteringProcess(
+            model, new int[0], 0, 2, false, false, false);
+
+        assertEquals(List.of(8L, 8L, 12L),
+            symmetryFactors(generate(vacuum, 2)));
+    }
+
+    /**
+     * Checks 2 &rarr; 2 scattering in phi^4 theory: the contact
+     * diagram with S = 1 at tree level and three bubbles with S = 2
+     * at one loop.
+     */
+    @Test
+    public void testScalarSymmetryFactors() throws ConfigurationException {
+        final Model model = DiagramGeneratorTest.loadModel("phi4-model.yaml");
+        final ScatteringProcess process = new ScatteringProcess(
+            model, new int[4], 2, 1, false, true, true);
+
+        assertEquals(List.of(2L, 2L, 2L),
+            symmetryFactors(generate(process, 1)));
+        assertEquals(List.of(1L),
+            symmetryFactors(generate(process, 0)));
+    }
+
+    /**
+     * Checks that canonical forms do not depend on the labelling of
+     * the internal vertices, and that different diagrams have
+     * different canonical forms.
+     */
+    @Test
+    public void testRelabellingInvariance() throws ConfigurationException {
+        final Model model = DiagramGeneratorTest.loadModel("phi34-model.yaml");
+        final ScatteringProcess process = new ScatteringProcess(
+            model, new int[4], 2, 1, false, false, false);
+        final List<Diagram> diagrams = generate(process, 1);
+        final Random random = new Random(4711);
+
+        final List<CanonicalForm> forms = new ArrayList<>();
+        for (final Diagram d : diagrams) {
+            final CanonicalForm form = CanonicalLabelling.compute(d, model);
+            assertEquals(d.getSymmetryFactor(), form.getSymmetryFactor());
+            for (int trial = 0; trial < 5; ++trial) {
+                final List<Integer> perm = new ArrayList<>();
+                for (int v = 0; v < d.getVertexCount(); ++v) {
+                    perm.add(v);
+                }
+                Collections.shuffle(perm, random);
+                final Diagram p = permute(d,
+                    perm.stream().mapToInt(Integer::intValue).toArray());
+                final CanonicalForm other =
+                    CanonicalLabelling.compute(p, model);
+                assertEquals(form, other);
+                assertEquals(form.getSymmetryFactor(),
+                    other.getSymmetryFactor());
+            }
+            forms.add(form);
+        }
+        for (int i = 0; i < forms.size(); ++i) {
+            for (int j = i + 1; j < forms.size(); ++j) {
+                assertNotEquals(forms.get(i), forms.get(j));
+            }
+        }
+    }
+
+    /**
+     * Builds a vacuum diagram of a single vertex type and field.
+     *
+     * @param model the model
+     * @param degree the degree of the vertices
+     * @param vertices the number of vertices
+     * @param edges the end points of the edges, in pairs
+     * @return the diagram
+     * @throws ConfigurationException if the model has no field phi
+     */
+    private static Diagram vacuum(final Model model, final int degree,
+            final int vertices, final int... edges)
+            throws ConfigurationException {
+        int type = 0;
+        while (model.getVertexDegree(type) != degree) {
+            ++type;
+        }
+        final int[] types = new int[vertices];
+        Arrays.fill(types, type);
+        final int n = edges.length / 2;
+        final int[] from = new int[n];
+        final int[] to = new int[n];
+        final int[] fields = new int[n];
+        Arrays.fill(fields, model.getFieldId("phi"));
+        for (int e = 0; e < n; ++e) {
+            from[e] = edges[2 * e];
+            to[e] = edges[2 * e + 1];
+        }
+        return new Diagram(0, n - vertices + 1, types, from, to, fields, 0);
+    }
+
+    /**
+     * Checks that the search of symmetric multi-loop vacuum graphs is
+     * pruned by their automorphisms: a tree of cubic vertices whose
+     * leaves carry self-loops has more than ten million vertex
+     * automorphisms, each of which was a leaf of the search before.
+     */
+    @Test
+    public void testSymmetricVacuumGraphs() throws ConfigurationException {
+        final Model model = DiagramGeneratorTest.loadModel("phi34-model.yaml");
+
+        // root with three subtrees of depth three, each inner vertex
+        // with two children, each of the 24 leaves with a self-loop
+        final List<Integer> edges = new ArrayList<>();
+        int next = 1;
+        List<Integer> level = List.of(0);
+        for (int depth = 0; depth < 4; ++depth) {
+            final List<Integer> children = new ArrayList<>();
+            for (final int v : level) {
+                for (int k = 0; k < (depth == 0 ? 3 : 2); ++k) {
+                    edges.add(v);
+                    edges.add(next);
+                    children.add(next++);
+                }
+            }
+            level = children;
+        }
+        for (final int v : level) {
+            edges.add(v);
+            edges.add(v);
+        }
+        final Diagram tree = vacuum(model, 3, next,
+            edges.stream().mapToInt(Integer::intValue).toArray());
+        assertEquals(24, tree.getLoops());
+        final CanonicalForm form = assertTimeoutPreemptively(
+            Duration.ofSeconds(10),
+            () -> CanonicalLabelling.compute(tree, model));
+        assertEquals(6L << 45, form.getSymmetryFactor());
+
+        final int[] perm = new int[next];
+        for (int v = 0; v < next; ++v) {
+            perm[v] = (v * 17 + 5) % next;
+        }
+        assertEquals(form,
+            CanonicalLabelling.compute(permute(tree, perm), model));
+
+        // the Petersen graph, the complete bipartite graph K(3, 3) and
+        // the cube
+        assertEquals(120, CanonicalLabelling.compute(vacuum(model, 3, 10,
+            0, 1, 1, 2, 2, 3, 3, 4, 4, 0, 0, 5, 1, 6, 2, 7, 3, 8, 4, 9,
+            5, 7, 7, 9, 9, 6, 6, 8, 8, 5), model).getSymmetryFactor());
+        assertEquals(72, CanonicalLabelling.compute(vacuum(model, 3, 6,
+            0, 3, 0, 4, 0, 5, 1, 3, 1, 4, 1, 5, 2, 3, 2, 4, 2, 5), model)
+            .getSymmetryFactor());
+        assertEquals(48, CanonicalLabelling.compute(vacuum(model, 3, 8,
+            0, 1, 1, 3, 3, 2, 2, 0, 4, 5, 5, 7, 7, 6, 6, 4,
+            0, 4, 1, 5, 2, 6, 3, 7), model).getSymmetryFactor());
+
+        // K(4, 4) of quartic vertices
+        final int[] bipartite = new int[32];
+        for (int i = 0; i < 16; ++i) {
+            bipartite[2 * i] = i / 4;
+            bipartite[2 * i + 1] = 4 + i % 4;
+        }
+        assertEquals(1152, CanonicalLabelling.compute(
+            vacuum(model, 4, 8, bipartite), model).getSymmetryFactor());
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * DiagramGeneratorTest.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.diagrams;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.anyloop.TestConfigurator;
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.checkpoint.CheckpointLog;
+import com.github.anyloop.model.Model;
+import com.github.anyloop.model.ModelConfig;
+import com.github.anyloop.model.ProcessConfig;
+import com.github.anyloop.model.ScatteringProcess;
+
+/**
+ * This test checks the {@link DiagramGenerator} against known
+ * numbers of diagrams.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public class DiagramGeneratorTest {
+
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    public static void createPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    public static void shutdownPool() {
+        pool.shutdown();
+    }
+
+    static Model loadModel(final String resource)
+            throws ConfigurationException {
+        return Model.fromConfig(TestConfigurator.create(
+            ModelConfig.class, "-c", "res://" + resource));
+    }
+
+    static ScatteringProcess scalarProcess(
+            final Model model,
+            final int legs) {
+        final int[] fields = new int[legs];
+        return new ScatteringProcess(
+            model, fields, 2, 1, false, true, true);
+    }
+
+    /**
+     * Checks the number of tree diagrams of scalar theories, which is
+     * <code>(2n-5)!!</code> for n legs with cubic vertices.
+     */
+    @ParameterizedTest
+    @CsvSource({
+        "phi3-model.yaml, 4, 0, 3",
+        "phi3-model.yaml, 5, 0, 15",
+        "phi3-model.yaml, 6, 0, 105",
+        "phi3-model.yaml, 7, 0, 945",
+        "phi4-model.yaml, 4, 0, 1",
+        "phi4-model.yaml, 6, 0, 10",
+        "phi3-model.yaml, 4, 1, 12",
+        "phi4-model.yaml, 4, 1, 3",
+    })
+    public void testScalarCounts(
+            final String resource,
+            final int legs,
+            final int loops,
+            final long expected) throws ConfigurationException {
+        final Model model = loadModel(resource);
+        final DiagramGenerator generator =
+            new DiagramGenerator(scalarProcess(model, legs));
+
+        assertEquals(expected, generator.generate(loops, pool, d -> { }));
+    }
+
+    /**
+     * Checks a model with several vertex types connecting the same
+     * fields, which the search attaches as one, against the numbers
+     * found by attaching every vertex type on its own.
+     */
+    @ParameterizedTest
+    @CsvSource({
+        "phi phi phi phi, 0, 12",
+        "phi phi phi phi, 1, 1764",
+        "chi chi~ phi phi, 0, 14",
+        "chi chi~ phi phi, 1, 1762",
+        "chi chi~ chi chi~, 1, 1119",
+        "'', 2, 19",
+    })
+    public void testSharedVertexKeys(
+            final String fields,
+            final int loops,
+            final long expected) throws ConfigurationException {
+        final Model model = loadModel("scalar-operators-model.yaml");
+        final String[] names = fields.isEmpty()
+            ? new String[0] : fields.split(" ");
+        final int[] ids = new int[names.length];
+        for (int i = 0; i < ids.length; ++i) {
+            ids[i] = model.getFieldId(names[i]);
+        }
+        final DiagramGenerator generator = new DiagramGenerator(
+            new ScatteringProcess(model, ids, Math.min(2, ids.length),
+                loops, false, false, false));
+
+        assertEquals(expected, generator.generate(loops, pool, d -> { }));
+    }
+
+    /**
+     * Checks e+ e- &rarr; mu+ mu- in QED: one tree diagram and six
+     * one-loop diagrams (two vertex corrections, two vacuum
+     * polarisations and two boxes).
+     */
+    @Test
+    public void testQedProcess() throws ConfigurationException {
+        final String[] args = {
+            "-c", "res://qed-model.yaml",
+            "-c", "res://qed-eemumu.yaml",
+        };
+        final Model model = Model.fromConfig(
+            TestConfigurator.create(ModelConfig.class, args));
+        final ScatteringProcess process = ScatteringProcess.fromConfig(
+            TestConfigurator.create(ProcessConfig.class, args), model);
+        final DiagramGenerator generator = new DiagramGenerator(process);
+
+        assertEquals(1, generator.generate(0, pool, d -> { }));
+
+        final ConcurrentLinkedQueue<Diagram> diagrams =
+            new ConcurrentLinkedQueue<>();
+        assertEquals(6, generator.generate(1, pool, diagrams::add));
+        for (final Diagram d : diagrams) {
+            assertEquals(1, d.getLoops());
+            assertEquals(4, d.getVertexCount());
+            assertFalse(d.hasTadpole());
+            assertFalse(d.hasExternalSelfEnergy());
+        }
+    }
+
+    /**
+     * Checks that the result does not depend on the way the search is
+     * split.
+     */
+    @Test
+    public void testSplitting() throws ConfigurationException {
+        final Model model = loadModel("phi3-model.yaml");
+        final ScatteringProcess process = new ScatteringProcess(
+            model, new int[5], 2, 1, false, false, false);
+        final ForkJoinPool single = new ForkJoinPool(1);
+        try {
+            final long sequential = new DiagramGenerator(process, 0)
+                .generate(1, single, d -> { });
+            final long parallel = new DiagramGenerator(process, 64)
+                .generate(1, pool, d -> { });
+            assertEquals(sequential, parallel);
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    /**
+     * Checks that an interrupted search resumes from its checkpoint
+     * without reporting any diagram twice.
+     */
+    @Test
+    public void testResume(@TempDir final Path dir)
+            throws ConfigurationException, IOException {
+        final Model model = loadModel("phi3-model.yaml");
+        final ScatteringProcess process = new ScatteringProcess(
+            model, new int[5], 2, 1, false, false, false);
+        final DiagramGenerator generator = new DiagramGenerator(process, 64);
+        final Path file = dir.resolve("diagrams.log");
+
+        final long expected;
+        try (CheckpointLog log = new CheckpointLog(file, false, 0)) {
+            expected = generator.generate(1, pool, d -> { }, log);
+        }
+
+        // cut the log in the middle of a record
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(Files.size(file) / 2 + 1);
+        }
+        final LongAdder reported = new LongAdder();
+        try (CheckpointLog log = new CheckpointLog(file, true, 0)) {
+            assertEquals(expected, generator.generate(
+                1, pool, d -> reported.increment(), log));
+        }
+        assertTrue(reported.sum() > 0);
+        assertTrue(reported.sum() < expected);
+
+        // the completed log leaves nothing to do
+        reported.reset();
+        try (CheckpointLog log = new CheckpointLog(file, true, 0)) {
+            assertEquals(expected, generator.generate(
+                1, pool, d -> reported.increment(), log));
+        }
+        assertEquals(0, reported.sum());
+
+        // a sink which did not survive the interruption gets them all
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(Files.size(file) / 2 + 1);
+        }
+        final Set<String> replayed = ConcurrentHashMap.newKeySet();
+        try (CheckpointLog log = new CheckpointLog(file, true, 0)) {
+            assertEquals(expected, generator.generate(1, pool,
+                d -> replayed.add(d.format(model)), log, true));
+        }
+        assertEquals(expected, replayed.size());
+    }
+
+    /**
+     * Checks that the partitions of the search together yield every
+     * diagram.
+     */
+    @Test
+    public void testPartitions() throws ConfigurationException {
+        final Model model = loadModel("phi3-model.yaml");
+        final ScatteringProcess process = new ScatteringProcess(
+            model, new int[5], 2, 1, false, false, false);
+        final DiagramGenerator generator = new DiagramGenerator(process);
+        final Set<String> all = ConcurrentHashMap.newKeySet();
+        final long expected =
+            generator.generate(1, pool, d -> all.add(d.format(model)));
+        assertEquals(expected, all.size());
+
+        final int count = 5;
+        final Set<String> union = ConcurrentHashMap.newKeySet();
+        long largest = 0;
+        for (int p = 0; p < count; ++p) {
+            largest = Math.max(largest, generator.generate(
+                1, pool, d -> union.add(d.format(model)), p, count));
+        }
+        assertEquals(all, union);
+        assertTrue(largest < expected);
+        assertThrows(IllegalArgumentException.class,
+            () -> generator.generate(1, pool, d -> { }, count, count));
+    }
+
+    @Test
+    public void testUnknownParticle() throws ConfigurationException {
+        final String[] args = {
+            "-c", "res://phi3-model.yaml",
+            "-c", "res://qed-eemumu.yaml",
+        };
+        final Model model = Model.fromConfig(
+            TestConfigurator.create(ModelConfig.class, args));
+        final ProcessConfig config =
+            TestConfigurator.create(ProcessConfig.class, args);
+
+        assertThrows(ConfigurationException.class,
+            () -> ScatteringProcess.fromConfig(config, model));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * TraceBenchmark.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.dirac;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.anyloop.symbolic.Expr;
+
+/**
+ * Benchmarks traces of 12 and 16 gamma matrices as they occur in
+ * squared one-loop amplitudes: slashed external momenta, loop
+ * momentum and two contracted index pairs. Each invocation uses a new
+ * engine, so that no subtrace is known in advance.
+ *
+ * Run with <code>mvn -Pbenchmark test -Djmh.args=TraceBenchmark</code>.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TraceBenchmark {
+
+    private static final Set<Expr> INDICES =
+        Set.of(Expr.symbol("mu"), Expr.symbol("nu"));
+
+    /**
+     * The string of gamma matrices.
+     */
+    @Param({
+        "p1 mu k nu p2 mu k nu p3 k p4 k",
+        "p1 mu k nu p2 mu k nu p3 k p4 k p1 p2 p3 p4"
+    })
+    private String gammas;
+
+    private List<Expr> string;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.string = Arrays.stream(this.gammas.split(" "))
+            .map(Expr::symbol).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public Expr trace() {
+        return new TraceEngine(Expr.symbol("d"), 1 << 16)
+            .trace(this.string, INDICES);
+    }
+}
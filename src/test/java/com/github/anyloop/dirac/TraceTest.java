@@ -0,0 +1,345 @@
+/*
+ * TraceTest.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.dirac;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.anyloop.TestConfigurator;
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.symbolic.Expr;
+
+/**
+ * This test checks traces against an explicit real representation of
+ * the Clifford algebra with the metric <code>diag(1, 1, 1, -1)</code>
+ * in four dimensions. The expansion of the engine only uses the
+ * anticommutator, so the signature does not matter.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public class TraceTest {
+
+    private static final double[] METRIC = {1, 1, 1, -1};
+
+    private static final double[][] GAMMA = gammaMatrices();
+
+    private static final Set<Expr> INDICES = symbols("mu nu rho sigma");
+
+    private static final Map<String, double[]> MOMENTA = new HashMap<>();
+
+    static {
+        final Random random = new Random(1);
+        for (final String p : new String[] {"p", "q", "r", "s"}) {
+            final double[] v = new double[4];
+            for (int a = 0; a < 4; ++a) {
+                v[a] = random.nextDouble() - 0.5;
+            }
+            MOMENTA.put(p, v);
+        }
+    }
+
+    private static Set<Expr> symbols(final String names) {
+        return Arrays.stream(names.split(" "))
+            .map(Expr::symbol).collect(Collectors.toSet());
+    }
+
+    private static List<Expr> string(final String names) {
+        return Arrays.stream(names.split(" "))
+            .map(Expr::symbol).collect(Collectors.toList());
+    }
+
+    private static double[] kron(final double[] x, final double[] y) {
+        final double[] m = new double[16];
+        for (int i = 0; i < 4; ++i) {
+            for (int j = 0; j < 4; ++j) {
+                m[4 * i + j] = x[2 * (i / 2) + j / 2] * y[2 * (i % 2) + j % 2];
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Builds real matrices with <code>{G_a, G_b} = 2 g_ab</code> from
+     * tensor products of <code>sigma_x</code>, <code>sigma_z</code> and
+     * <code>epsilon</code>, whose squares are <code>1, 1, -1</code>.
+     */
+    private static double[][] gammaMatrices() {
+        final double[] one = {1, 0, 0, 1};
+        final double[] sx = {0, 1, 1, 0};
+        final double[] sz = {1, 0, 0, -1};
+        final double[] eps = {0, 1, -1, 0};
+        return new double[][] {
+            kron(sx, one), kron(sz, one), kron(eps, eps), kron(eps, sx)};
+    }
+
+    private static double[] multiply(final double[] x, final double[] y) {
+        final double[] m = new double[16];
+        for (int i = 0; i < 4; ++i) {
+            for (int k = 0; k < 4; ++k) {
+                for (int j = 0; j < 4; ++j) {
+                    m[4 * i + j] += x[4 * i + k] * y[4 * k + j];
+                }
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Computes a trace numerically, summing over contracted indices.
+     */
+    private static double numericTrace(
+            final List<Expr> gammas,
+            final Map<String, Integer> free) {
+        final List<String> contracted = new ArrayList<>();
+        for (final Expr g : gammas) {
+            if (INDICES.contains(g) && !free.containsKey(g.getName())
+                    && !contracted.contains(g.getName())) {
+                contracted.add(g.getName());
+            }
+        }
+        double sum = 0;
+        for (int values = 0; values < 1 << (2 * contracted.size());
+                ++values) {
+            final Set<String> seen = new HashSet<>();
+            double[] m = kron(new double[] {1, 0, 0, 1},
+                new double[] {1, 0, 0, 1});
+            for (final Expr g : gammas) {
+                final String name = g.getName();
+                final double[] gamma = new double[16];
+                if (free.containsKey(name)) {
+                    System.arraycopy(GAMMA[free.get(name)], 0, gamma, 0, 16);
+                } else if (contracted.contains(name)) {
+                    final int a = values >> (2 * contracted.indexOf(name)) & 3;
+                    final double sign = seen.add(name) ? 1 : METRIC[a];
+                    for (int k = 0; k < 16; ++k) {
+                        gamma[k] = sign * GAMMA[a][k];
+                    }
+                } else {
+                    final double[] p = MOMENTA.get(name);
+                    for (int a = 0; a < 4; ++a) {
+                        for (int k = 0; k < 16; ++k) {
+                            gamma[k] += p[a] * GAMMA[a][k];
+                        }
+                    }
+                }
+                m = multiply(m, gamma);
+            }
+            sum += m[0] + m[5] + m[10] + m[15];
+        }
+        return sum;
+    }
+
+    /**
+     * Evaluates a trace in four dimensions.
+     */
+    private static double evaluate(
+            final Expr e,
+            final Map<String, Integer> free) {
+        switch (e.getKind()) {
+        case NUMBER:
+            return (double) e.getNumerator() / e.getDenominator();
+        case SYMBOL:
+            assertEquals("d", e.getName());
+            return 4;
+        case POWER:
+            return Math.pow(evaluate(e.getArg(0), free), e.getExponent());
+        case SUM:
+        case PRODUCT:
+            double result = e.getKind() == Expr.Kind.SUM ? 0 : 1;
+            for (int i = 0; i < e.getArgCount(); ++i) {
+                final double x = evaluate(e.getArg(i), free);
+                result = e.getKind() == Expr.Kind.SUM ? result + x : result * x;
+            }
+            return result;
+        default:
+            final String name = e.getName();
+            if ("g".equals(name)) {
+                final int a = free.get(e.getArg(0).getName());
+                final int b = free.get(e.getArg(1).getName());
+                return a == b ? METRIC[a] : 0;
+            }
+            if ("dot".equals(name)) {
+                final double[] p = MOMENTA.get(e.getArg(0).getName());
+                final double[] q = MOMENTA.get(e.getArg(1).getName());
+                double dot = 0;
+                for (int a = 0; a < 4; ++a) {
+                    dot += METRIC[a] * p[a] * q[a];
+                }
+                return dot;
+            }
+            final int a = free.get(e.getArg(0).getName());
+            return METRIC[a] * MOMENTA.get(name)[a];
+        }
+    }
+
+    private static void assertNumericallyEqual(
+            final TraceEngine engine,
+            final List<Expr> gammas,
+            final Map<String, Integer> free) {
+        final double expected = numericTrace(gammas, free);
+        final double actual = evaluate(engine.trace(gammas, INDICES), free);
+        assertEquals(expected, actual, 1e-9 * (1 + Math.abs(expected)),
+            gammas + " with " + free);
+    }
+
+    @Test
+    public void shortTraces() {
+        final TraceEngine engine = new TraceEngine(Expr.symbol("d"), 100);
+        assertEquals("4*g(mu, nu)",
+            engine.trace(string("mu nu"), INDICES).toString());
+        assertEquals("4*p(mu)",
+            engine.trace(string("p mu"), INDICES).toString());
+        assertEquals("4*dot(p, q)",
+            engine.trace(string("q p"), INDICES).toString());
+        assertEquals("4*d", engine.trace(string("mu mu"), INDICES).toString());
+        assertSame(Expr.ZERO, engine.trace(string("mu nu p"), INDICES));
+        assertSame(Expr.number(4),
+            engine.trace(Collections.emptyList(), INDICES));
+        // gamma^mu gamma^rho q gamma_mu = 4 q^rho - (4 - d) gamma^rho q
+        final Expr t = engine.trace(string("p mu rho q mu rho"), INDICES);
+        assertEquals("(-16 + 24*d + -4*d^2)*dot(p, q)", t.toString());
+        assertSame(t, engine.trace(string("q rho mu p rho mu"), INDICES));
+    }
+
+    @Test
+    public void canonicalFormIsInvariantUnderRotationAndReversal() {
+        final int[] s = {5, 3, 9, 3, 7, 1};
+        final int[] c = TraceEngine.canonical(s);
+        assertArrayEquals(new int[] {1, 5, 3, 9, 3, 7}, c);
+        for (int r = 0; r < s.length; ++r) {
+            final int[] rotated = new int[s.length];
+            final int[] reversed = new int[s.length];
+            for (int k = 0; k < s.length; ++k) {
+                rotated[k] = s[(r + k) % s.length];
+                reversed[k] = s[(r + s.length - k) % s.length];
+            }
+            assertArrayEquals(c, TraceEngine.canonical(rotated));
+            assertArrayEquals(c, TraceEngine.canonical(reversed));
+        }
+    }
+
+    @Test
+    public void randomTracesMatchMatrices() {
+        final TraceEngine engine = new TraceEngine(Expr.symbol("d"), 1000);
+        final Random random = new Random(2);
+        final String[] momenta = {"p", "q", "r"};
+        for (int round = 0; round < 200; ++round) {
+            final int length = 2 * (1 + random.nextInt(5));
+            final List<String> slots = new ArrayList<>();
+            final int pairs = random.nextInt(Math.min(3, length / 2 + 1));
+            for (int k = 0; k < pairs; ++k) {
+                slots.add(k == 0 ? "rho" : "sigma");
+                slots.add(k == 0 ? "rho" : "sigma");
+            }
+            final Map<String, Integer> free = new HashMap<>();
+            for (final String index : new String[] {"mu", "nu"}) {
+                if (slots.size() < length && random.nextBoolean()) {
+                    slots.add(index);
+                    free.put(index, random.nextInt(4));
+                }
+            }
+            while (slots.size() < length) {
+                slots.add(momenta[random.nextInt(momenta.length)]);
+            }
+            Collections.shuffle(slots, random);
+            assertNumericallyEqual(engine,
+                string(String.join(" ", slots)), free);
+        }
+        assertTrue(engine.getCache().getHitCount() > 0);
+        assertTrue(engine.getCache().size() <= 1000);
+    }
+
+    @Test
+    public void longTraces() {
+        final TraceEngine engine = new TraceEngine(Expr.symbol("d"), 1 << 16);
+        assertNumericallyEqual(engine,
+            string("p q r s p q r s p q r s p q r s"), Map.of());
+        assertNumericallyEqual(engine,
+            string("mu p nu q rho r mu s nu p rho q"), Map.of());
+        final Map<String, Integer> free = Map.of("mu", 3, "nu", 3);
+        assertNumericallyEqual(engine,
+            string("mu p q r s p nu q r s p q"), free);
+    }
+
+    @Test
+    public void concurrentTracesAgree() {
+        final List<List<Expr>> strings = new ArrayList<>();
+        final Random random = new Random(3);
+        for (int i = 0; i < 64; ++i) {
+            final List<String> slots = new ArrayList<>(
+                List.of("p", "q", "r", "s", "p", "q", "mu", "mu", "nu", "r"));
+            Collections.shuffle(slots, random);
+            strings.add(string(String.join(" ", slots)));
+        }
+        final TraceEngine sequential = new TraceEngine(Expr.symbol("d"), 64);
+        final TraceEngine shared = new TraceEngine(Expr.symbol("d"), 64);
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final List<Expr> parallel = pool.submit(() -> strings
+                .parallelStream()
+                .map(s -> shared.trace(s, INDICES))
+                .collect(Collectors.toList())).join();
+            for (int i = 0; i < strings.size(); ++i) {
+                assertSame(sequential.trace(strings.get(i), INDICES),
+                    parallel.get(i));
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue(shared.getCache().size() <= 64);
+    }
+
+    @Test
+    public void invalidInput() throws ConfigurationException {
+        final TraceEngine engine = TraceEngine.fromConfig(
+            TestConfigurator.create(DiracConfig.class));
+        assertEquals(Expr.symbol("d"), engine.getDimension());
+        assertEquals(65536, engine.getCache().getCapacity());
+        assertThrows(IllegalArgumentException.class,
+            () -> engine.trace(string("mu mu mu nu"), INDICES));
+        assertThrows(IllegalArgumentException.class,
+            () -> engine.trace(List.of(Expr.number(2)), INDICES));
+        assertThrows(ConfigurationException.class,
+            () -> TraceEngine.fromConfig(TestConfigurator.create(
+                DiracConfig.class, "-D", "dirac.cacheSize=0")));
+    }
+}
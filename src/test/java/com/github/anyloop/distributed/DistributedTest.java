@@ -0,0 +1,264 @@
+/*
+ * DistributedTest.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.distributed;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This test runs a coordinator with worker JVMs on this machine, some
+ * of which crash or fail.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public class DistributedTest {
+
+    /**
+     * The number of values per partition.
+     */
+    private static final int SIZE = 1000;
+
+    /**
+     * A worker sending the squares of the numbers of its partitions.
+     */
+    public static final class Squares {
+
+        private Squares() {
+        }
+
+        /**
+         * Runs the worker.
+         *
+         * @param args the mode followed by the arguments appended by
+         *        the launcher
+         * @throws IOException if the connection fails
+         */
+        public static void main(final String[] args) throws IOException {
+            final String mode = args[0];
+            final Map<String, String> defines = new HashMap<>();
+            for (int i = 1; i + 1 < args.length; i += 2) {
+                final String[] kv = args[i + 1].split("=", 2);
+                defines.put(kv[0], kv[1]);
+            }
+            final Map<String, PartitionTask> tasks = new HashMap<>();
+            tasks.put("squares", (partition, count, out) -> {
+                for (int i = 0; i < SIZE; ++i) {
+                    if (i == SIZE / 2 && partition == 3) {
+                        if (mode.equals("fail")) {
+                            throw new IOException("cannot square");
+                        }
+                        if (mode.startsWith("crash:")) {
+                            final Path marker =
+                                Path.of(mode.substring("crash:".length()));
+                            if (!Files.exists(marker)) {
+                                Files.createFile(marker);
+                                Runtime.getRuntime().halt(3);
+                            }
+                        }
+                    }
+                    final long n = (long) partition * SIZE + i;
+                    out.accept(ByteBuffer.allocate(Long.BYTES)
+                        .putLong(n * n).array());
+                }
+            });
+            final String coordinator = defines.get("distributed.coordinator");
+            final int worker =
+                Integer.parseInt(defines.get("distributed.worker"));
+            if (mode.startsWith("vanish:")) {
+                final Path marker = Path.of(mode.substring("vanish:".length()));
+                if (!Files.exists(marker)) {
+                    // connect and exit before asking for work
+                    Files.createFile(marker);
+                    final String[] address = coordinator.split(":");
+                    final Socket socket = new Socket(
+                        address[0], Integer.parseInt(address[1]));
+                    final DataOutputStream out =
+                        new DataOutputStream(socket.getOutputStream());
+                    out.writeByte(Protocol.HELLO);
+                    out.writeInt(Protocol.MAGIC);
+                    out.writeInt(worker);
+                    out.flush();
+                    Runtime.getRuntime().halt(3);
+                }
+            }
+            Worker.serve(coordinator, worker, tasks);
+        }
+    }
+
+    private static JvmLauncher launcher(final String mode) {
+        return new JvmLauncher(List.of("-Xmx64m"),
+            Squares.class.getName(), List.of(mode));
+    }
+
+    private static long expected(final int partitions) {
+        long sum = 0;
+        for (long n = 0; n < (long) partitions * SIZE; ++n) {
+            sum += n * n;
+        }
+        return sum;
+    }
+
+    @Test
+    public void partitionsOfCrashedWorkersAreReassigned(
+            @TempDir final Path dir) throws IOException {
+        final int partitions = 8;
+        final long[] sum = new long[1];
+        final List<Integer> merged = new ArrayList<>();
+        final Coordinator coordinator = new Coordinator("squares",
+            partitions, 3, 2,
+            launcher("crash:" + dir.resolve("crashed")));
+        coordinator.run((partition, records) -> {
+            merged.add(partition);
+            assertEquals(SIZE, records.size());
+            for (final byte[] r : records) {
+                sum[0] += ByteBuffer.wrap(r).getLong();
+            }
+            return false;
+        });
+        assertEquals(partitions, merged.size());
+        assertEquals(expected(partitions), sum[0]);
+        assertEquals(1, coordinator.getFailureCount());
+        assertEquals(4, coordinator.getLaunchCount());
+    }
+
+    @Test
+    public void workersExitingAfterConnectingAreReplacedOnce(
+            @TempDir final Path dir) throws IOException {
+        final List<Integer> merged = new ArrayList<>();
+        final Coordinator coordinator = new Coordinator("squares", 2, 1, 2,
+            launcher("vanish:" + dir.resolve("vanished")));
+        coordinator.run((partition, records) -> {
+            merged.add(partition);
+            return false;
+        });
+        assertEquals(2, merged.size());
+        assertEquals(2, coordinator.getLaunchCount());
+    }
+
+    @Test
+    public void recordsAreStreamedAsTheyArrive(@TempDir final Path dir)
+            throws IOException {
+        final int partitions = 8;
+        final long[] sum = new long[1];
+        final int[] received = new int[1];
+        final List<Integer> done = new ArrayList<>();
+        final List<Integer> failed = new ArrayList<>();
+        final FingerprintSet seen = new FingerprintSet();
+        final Coordinator coordinator = new Coordinator("squares",
+            partitions, 3, 2,
+            launcher("crash:" + dir.resolve("crashed")));
+        coordinator.stream(new RecordMerger() {
+            @Override
+            public void record(final int partition, final byte[] record) {
+                ++received[0];
+                if (seen.add(record)) {
+                    sum[0] += ByteBuffer.wrap(record).getLong();
+                }
+            }
+
+            @Override
+            public boolean done(final int partition) {
+                done.add(partition);
+                return false;
+            }
+
+            @Override
+            public void failed(final int partition) {
+                failed.add(partition);
+            }
+        });
+        assertEquals(partitions, done.size());
+        assertEquals(List.of(3), failed);
+        // the crashed attempt may have sent some records already
+        assertTrue(received[0] >= partitions * SIZE);
+        assertEquals(partitions * SIZE, seen.size());
+        assertEquals(expected(partitions), sum[0]);
+    }
+
+    @Test
+    public void fingerprintsDropRepeatedRecords() {
+        final FingerprintSet seen = new FingerprintSet();
+        for (int round = 0; round < 2; ++round) {
+            for (int i = 0; i < 5000; ++i) {
+                final byte[] record = ("diagram " + i).getBytes(
+                    StandardCharsets.UTF_8);
+                assertEquals(round == 0, seen.add(record));
+            }
+        }
+        assertEquals(5000, seen.size());
+        assertTrue(seen.add(new byte[0]));
+        assertFalse(seen.add(new byte[0]));
+    }
+
+    @Test
+    public void mergerMayStopEarly() throws IOException {
+        final List<Integer> merged = new ArrayList<>();
+        final Coordinator coordinator =
+            new Coordinator("squares", 100, 2, 1, launcher("ok"));
+        coordinator.run((partition, records) -> {
+            merged.add(partition);
+            return merged.size() == 3;
+        });
+        assertEquals(3, merged.size());
+        assertTrue(coordinator.getLaunchCount() <= 2);
+    }
+
+    @Test
+    public void failuresAreReported() {
+        final Coordinator failing =
+            new Coordinator("squares", 4, 2, 2, launcher("fail"));
+        final IOException ex = assertThrows(IOException.class,
+            () -> failing.run((partition, records) -> false));
+        assertTrue(ex.getMessage().startsWith(
+            "Partition 3 of squares failed 2 times"), ex.getMessage());
+
+        final Coordinator missing = new Coordinator("squares", 4, 2, 2,
+            new JvmLauncher(List.of(), "no.such.Main", List.of()));
+        assertEquals("Workers of squares cannot be started",
+            assertThrows(IOException.class,
+                () -> missing.run((partition, records) -> false))
+            .getMessage());
+
+        assertThrows(IllegalArgumentException.class,
+            () -> new Coordinator("squares", 0, 1, 1, launcher("ok")));
+    }
+}
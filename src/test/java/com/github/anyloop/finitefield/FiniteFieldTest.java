@@ -0,0 +1,218 @@
+/*
+ * FiniteFieldTest.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.finitefield;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.github.anyloop.TestConfigurator;
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.symbolic.Polynomial;
+
+/**
+ * This test checks modular arithmetic against {@link BigInteger} and
+ * the reconstruction of rational results.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public class FiniteFieldTest {
+
+    private static final long LARGEST = 9223372036854775783L;
+
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    public static void createPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    public static void shutdownPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void scalarArithmeticMatchesBigInteger() {
+        final Random random = new Random(1);
+        for (final long p : new long[] {3, 1000003, LARGEST}) {
+            final PrimeField f = PrimeField.of(p);
+            final BigInteger bp = BigInteger.valueOf(p);
+            for (int i = 0; i < 1000; ++i) {
+                final long a = random.nextLong();
+                final long b = random.nextLong();
+                final long fa = f.fromLong(a);
+                final long fb = f.fromLong(b);
+                final BigInteger ba = BigInteger.valueOf(a);
+                final BigInteger bb = BigInteger.valueOf(b);
+                assertEquals(ba.mod(bp).longValue(), f.toLong(fa));
+                assertEquals(ba.add(bb).mod(bp).longValue(),
+                    f.toLong(f.add(fa, fb)));
+                assertEquals(ba.subtract(bb).mod(bp).longValue(),
+                    f.toLong(f.subtract(fa, fb)));
+                assertEquals(ba.multiply(bb).mod(bp).longValue(),
+                    f.toLong(f.multiply(fa, fb)));
+                assertEquals(ba.negate().mod(bp).longValue(),
+                    f.toLong(f.negate(fa)));
+                if (fb != 0) {
+                    assertEquals(f.one(), f.multiply(fb, f.inverse(fb)));
+                }
+            }
+            assertEquals(BigInteger.valueOf(5).modPow(
+                    BigInteger.valueOf(1234567), bp).longValue(),
+                f.toLong(f.pow(f.fromLong(5), 1234567)));
+        }
+    }
+
+    @Test
+    public void vectorOperationsMatchScalarOnes() {
+        final PrimeField f = PrimeField.of(LARGEST);
+        final Random random = new Random(2);
+        final int n = 100;
+        final long[] a = new long[n];
+        final long[] b = new long[n];
+        for (int i = 0; i < n; ++i) {
+            a[i] = f.fromLong(random.nextLong());
+            b[i] = f.fromLong(random.nextLong() | 1);
+        }
+        final long c = f.fromLong(random.nextLong());
+
+        final long[] sum = new long[n];
+        final long[] product = new long[n];
+        final long[] scaled = new long[n];
+        final long[] axpy = a.clone();
+        final long[] inverses = new long[n];
+        f.add(a, b, sum, n);
+        f.multiply(a, b, product, n);
+        f.scale(a, c, scaled, n);
+        f.multiplyAdd(axpy, b, c, 0, n);
+        f.inverse(b, inverses, n);
+        for (int i = 0; i < n; ++i) {
+            assertEquals(f.add(a[i], b[i]), sum[i]);
+            assertEquals(f.multiply(a[i], b[i]), product[i]);
+            assertEquals(f.multiply(a[i], c), scaled[i]);
+            assertEquals(f.add(a[i], f.multiply(b[i], c)), axpy[i]);
+            assertEquals(f.inverse(b[i]), inverses[i]);
+        }
+
+        final long[] back = new long[n];
+        f.toLongs(a, back, n);
+        f.fromLongs(back, back, n);
+        assertArrayEquals(a, back);
+    }
+
+    @Test
+    public void invalidPrimes() {
+        assertThrows(IllegalArgumentException.class, () -> PrimeField.of(2));
+        assertThrows(IllegalArgumentException.class,
+            () -> PrimeField.of(1000001));
+    }
+
+    @Test
+    public void rationalReconstruction() {
+        final long[] primes = PrimeField.largestPrimesBelow(Long.MAX_VALUE, 3);
+        final Rational expected = Rational.of(
+            new BigInteger("-123456789012345678901234567"),
+            new BigInteger("98765432109876543210987"));
+        BigInteger x = BigInteger.ZERO;
+        BigInteger m = BigInteger.ONE;
+        for (final long p : primes) {
+            final PrimeField f = PrimeField.of(p);
+            x = RationalReconstruction.chineseRemainder(
+                x, m, f.toLong(expected.toField(f)), p);
+            m = m.multiply(BigInteger.valueOf(p));
+        }
+        assertEquals(expected, RationalReconstruction.reconstruct(x, m));
+        assertNull(RationalReconstruction.reconstruct(
+            x.mod(BigInteger.valueOf(primes[0])),
+            BigInteger.valueOf(primes[0])));
+    }
+
+    @Test
+    public void harmonicNumbersFromConfiguredPrimes()
+            throws ConfigurationException {
+        final ModularEngine engine = new ModularEngine(
+            TestConfigurator.create(FiniteFieldConfig.class,
+                "-D", "finitefield.primeCount=8",
+                "-D", "finitefield.samples=2"));
+        assertEquals(8, engine.getFieldCount());
+
+        // H_n = 1 + 1/2 + ... + 1/n for n = 10, 40 and 60 needs up to
+        // three primes
+        final int[] orders = {10, 40, 60};
+        final Rational[] result = engine.reconstruct(field -> {
+            final long[] h = new long[orders.length];
+            for (int k = 0; k < orders.length; ++k) {
+                for (int i = 1; i <= orders[k]; ++i) {
+                    h[k] = field.add(h[k], field.inverse(field.fromLong(i)));
+                }
+            }
+            return h;
+        }, pool);
+
+        for (int k = 0; k < orders.length; ++k) {
+            Rational h = Rational.of(0, 1);
+            for (int i = 1; i <= orders[k]; ++i) {
+                h = h.add(Rational.of(1, i));
+            }
+            assertEquals(h, result[k]);
+        }
+    }
+
+    @Test
+    public void explicitPrimesAndExhaustion() throws ConfigurationException {
+        final ModularEngine engine = new ModularEngine(
+            TestConfigurator.create(FiniteFieldConfig.class,
+                "-D", "finitefield.primes=1000003"));
+        assertEquals(1, engine.getFieldCount());
+        assertEquals(1000003, engine.getField(0).getPrime());
+        assertThrows(ArithmeticException.class, () -> engine.reconstruct(
+            field -> new long[] {field.inverse(field.fromLong(1L << 40))},
+            pool));
+
+        assertThrows(ConfigurationException.class, () -> new ModularEngine(
+            TestConfigurator.create(FiniteFieldConfig.class,
+                "-D", "finitefield.primes=1000001")));
+    }
+
+    @Test
+    public void polynomialsOverPrimeField() {
+        final PrimeField f = PrimeField.of(LARGEST);
+        final Polynomial x = Polynomial.variable(f, 1, 0);
+        final Polynomial p = x.add(Polynomial.constant(f, 1, -1)).pow(20);
+        assertEquals(21, p.getTermCount());
+        // the coefficient of x^11 is -binomial(20, 11)
+        assertEquals(LARGEST - 167960, f.toLong(p.getCoefficient(9)));
+    }
+}
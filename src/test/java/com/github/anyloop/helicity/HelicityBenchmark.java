@@ -0,0 +1,120 @@
+/*
+ * HelicityBenchmark.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.helicity;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.anyloop.amplitude.PhaseSpace;
+
+/**
+ * Benchmarks the Parke-Taylor amplitude of six gluons over a batch of
+ * random points, once on the calling thread and once split among the
+ * workers of a pool.
+ *
+ * Run with
+ * <code>mvn -Pbenchmark test -Djmh.args=HelicityBenchmark</code>.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HelicityBenchmark {
+
+    /**
+     * The number of legs.
+     */
+    private static final int LEGS = 6;
+
+    /**
+     * The number of points in a batch.
+     */
+    @Param({"1024", "16384"})
+    private int points;
+
+    private SpinorBatch batch;
+
+    private BracketMonomial amplitude;
+
+    private double[] re;
+
+    private double[] im;
+
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final PhaseSpace space = new PhaseSpace(10, new double[LEGS], 2);
+        final Random random = new Random(this.points);
+        final double[] momenta = new double[4 * LEGS];
+        this.batch = new SpinorBatch(LEGS, 2, this.points);
+        for (int p = 0; p < this.points; ++p) {
+            space.generate(random, momenta, 0);
+            this.batch.setMomenta(p, momenta, 0);
+        }
+        this.amplitude = BracketMonomial.parkeTaylor(LEGS, 0, 3);
+        this.re = new double[this.points];
+        this.im = new double[this.points];
+        this.pool = new ForkJoinPool(4);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.pool.shutdown();
+    }
+
+    @Benchmark
+    public double[] sequential() {
+        this.amplitude.evaluate(this.batch, null, this.points,
+            this.re, this.im);
+        return this.re;
+    }
+
+    @Benchmark
+    public double[] parallel() {
+        this.amplitude.evaluate(this.batch, this.pool, this.points,
+            this.re, this.im);
+        return this.re;
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * HelicityTest.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.helicity;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.github.anyloop.amplitude.PhaseSpace;
+
+/**
+ * This test checks the spinor products against the invariants of the
+ * momenta and known identities, and the parallel evaluation against
+ * the sequential one.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public class HelicityTest {
+
+    private static final double ENERGY = 10;
+
+    private static final double EPSILON = 1e-9;
+
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    public static void createPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    public static void shutdownPool() {
+        pool.shutdown();
+    }
+
+    /**
+     * Fills a batch with random massless points of a process with two
+     * incoming particles.
+     *
+     * @param legs the number of legs
+     * @param points the number of points
+     * @param momenta receives the momenta of all points
+     * @return the batch, not yet computed
+     */
+    private static SpinorBatch batch(
+            final int legs,
+            final int points,
+            final double[] momenta) {
+        final PhaseSpace space = new PhaseSpace(ENERGY, new double[legs], 2);
+        final SpinorBatch batch = new SpinorBatch(legs, 2, points);
+        final Random random = new Random(legs);
+        for (int p = 0; p < points; ++p) {
+            space.generate(random, momenta, 4 * legs * p);
+            batch.setMomenta(p, momenta, 4 * legs * p);
+        }
+        return batch;
+    }
+
+    /**
+     * Computes <code>2 k_i.k_j</code> of the outgoing momenta.
+     */
+    private static double invariant(
+            final double[] momenta,
+            final int legs,
+            final int point,
+            final int i,
+            final int j) {
+        final int a = 4 * (legs * point + i);
+        final int b = 4 * (legs * point + j);
+        final double dot = momenta[a] * momenta[b]
+            - momenta[a + 1] * momenta[b + 1]
+            - momenta[a + 2] * momenta[b + 2]
+            - momenta[a + 3] * momenta[b + 3];
+        // the incoming momenta flip their sign when crossed
+        return (i < 2) == (j < 2) ? 2 * dot : -2 * dot;
+    }
+
+    private static void assertClose(final double expected, final double actual,
+            final double scale) {
+        assertEquals(expected, actual, EPSILON * scale);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"4", "5", "7"})
+    public void productsGiveInvariants(final int legs) {
+        final int points = 50;
+        final double[] momenta = new double[4 * legs * points];
+        final SpinorBatch batch = batch(legs, points, momenta);
+        batch.compute(null, points);
+        final double scale = ENERGY * ENERGY;
+        for (int p = 0; p < points; ++p) {
+            for (int i = 0; i < legs; ++i) {
+                assertEquals(0, batch.getAngleRe(i, i, p));
+                assertEquals(0, batch.getSquareIm(i, i, p));
+                for (int j = 0; j < legs; ++j) {
+                    if (i == j) {
+                        continue;
+                    }
+                    final double ar = batch.getAngleRe(i, j, p);
+                    final double ai = batch.getAngleIm(i, j, p);
+                    final double sr = batch.getSquareRe(j, i, p);
+                    final double si = batch.getSquareIm(j, i, p);
+                    final double s = invariant(momenta, legs, p, i, j);
+                    assertClose(s, ar * sr - ai * si, scale);
+                    assertClose(0, ar * si + ai * sr, scale);
+                    assertClose(Math.abs(s), ar * ar + ai * ai, scale);
+                    assertEquals(-ar, batch.getAngleRe(j, i, p));
+                    assertEquals(-si, batch.getSquareIm(i, j, p));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void momentumConservationAndSchouten() {
+        final int legs = 6;
+        final int points = 20;
+        final SpinorBatch batch =
+            batch(legs, points, new double[4 * legs * points]);
+        batch.compute(null, points);
+        final double scale = ENERGY * ENERGY;
+        for (int p = 0; p < points; ++p) {
+            for (int i = 0; i < legs; ++i) {
+                for (int j = 0; j < legs; ++j) {
+                    if (i == j) {
+                        continue;
+                    }
+                    // sum_k <ik>[kj] = 0
+                    double re = 0;
+                    double im = 0;
+                    for (int k = 0; k < legs; ++k) {
+                        final double ar = batch.getAngleRe(i, k, p);
+                        final double ai = batch.getAngleIm(i, k, p);
+                        final double sr = batch.getSquareRe(k, j, p);
+                        final double si = batch.getSquareIm(k, j, p);
+                        re += ar * sr - ai * si;
+                        im += ar * si + ai * sr;
+                    }
+                    assertClose(0, re, scale);
+                    assertClose(0, im, scale);
+                }
+            }
+            // <01><23> + <02><31> + <03><12> = 0
+            final double[] sum = new double[2];
+            addProduct(batch, p, 0, 1, 2, 3, sum);
+            addProduct(batch, p, 0, 2, 3, 1, sum);
+            addProduct(batch, p, 0, 3, 1, 2, sum);
+            assertClose(0, sum[0], scale);
+            assertClose(0, sum[1], scale);
+        }
+    }
+
+    private static void addProduct(
+            final SpinorBatch batch,
+            final int p,
+            final int i,
+            final int j,
+            final int k,
+            final int l,
+            final double[] sum) {
+        final double ar = batch.getAngleRe(i, j, p);
+        final double ai = batch.getAngleIm(i, j, p);
+        final double br = batch.getAngleRe(k, l, p);
+        final double bi = batch.getAngleIm(k, l, p);
+        sum[0] += ar * br - ai * bi;
+        sum[1] += ar * bi + ai * br;
+    }
+
+    @ParameterizedTest
+    @CsvSource({"4, 0, 1", "5, 1, 3", "6, 0, 3", "6, 4, 2"})
+    public void parkeTaylorSquared(final int legs, final int i, final int j) {
+        final int points = 40;
+        final double[] momenta = new double[4 * legs * points];
+        final SpinorBatch batch = batch(legs, points, momenta);
+        final BracketMonomial amplitude =
+            BracketMonomial.parkeTaylor(legs, i, j);
+        final double[] re = new double[points];
+        final double[] im = new double[points];
+        amplitude.evaluate(batch, null, points, re, im);
+        for (int p = 0; p < points; ++p) {
+            // |A|^2 = s_ij^4 / prod |s_k,k+1|
+            double expected = Math.pow(invariant(momenta, legs, p, i, j), 4);
+            for (int k = 0; k < legs; ++k) {
+                expected /= Math.abs(
+                    invariant(momenta, legs, p, k, (k + 1) % legs));
+            }
+            final double actual = re[p] * re[p] + im[p] * im[p];
+            assertEquals(1, actual / expected, EPSILON);
+        }
+    }
+
+    @Test
+    public void orientationOfFactors() {
+        final int points = 10;
+        final SpinorBatch batch = batch(4, points, new double[16 * points]);
+        final double[] re = new double[points];
+        final double[] im = new double[points];
+        final double[] flippedRe = new double[points];
+        final double[] flippedIm = new double[points];
+        BracketMonomial.builder(4).coefficient(3)
+            .angle(0, 2, 1).square(1, 3, -1).angle(2, 3, 2).build()
+            .evaluate(batch, null, points, re, im);
+        BracketMonomial.builder(4).coefficient(-3)
+            .angle(2, 0, 1).square(1, 3, -1).angle(3, 2, 2).build()
+            .evaluate(batch, null, points, flippedRe, flippedIm);
+        assertArrayEquals(re, flippedRe);
+        assertArrayEquals(im, flippedIm);
+        for (int p = 0; p < points; ++p) {
+            // 3 <02> <23>^2 / [13]
+            double zr = 3;
+            double zi = 0;
+            for (final int[] f : new int[][] {{0, 2}, {2, 3}, {2, 3}}) {
+                final double ar = batch.getAngleRe(f[0], f[1], p);
+                final double ai = batch.getAngleIm(f[0], f[1], p);
+                final double r = zr * ar - zi * ai;
+                zi = zr * ai + zi * ar;
+                zr = r;
+            }
+            final double sr = batch.getSquareRe(1, 3, p);
+            final double si = batch.getSquareIm(1, 3, p);
+            final double scale = Math.hypot(zr, zi) / Math.hypot(sr, si);
+            assertClose(zr * sr + zi * si,
+                re[p] * (sr * sr + si * si), scale * (sr * sr + si * si));
+            assertClose(zi * sr - zr * si,
+                im[p] * (sr * sr + si * si), scale * (sr * sr + si * si));
+        }
+    }
+
+    @Test
+    public void parallelMatchesSequential() {
+        final int legs = 6;
+        final int points = 3001;
+        final double[] momenta = new double[4 * legs * points];
+        final SpinorBatch sequential = batch(legs, points, momenta);
+        final SpinorBatch parallel = batch(legs, points, momenta);
+        final BracketMonomial amplitude =
+            BracketMonomial.parkeTaylor(legs, 1, 4);
+        final double[] re = new double[points];
+        final double[] im = new double[points];
+        final double[] parallelRe = new double[points];
+        final double[] parallelIm = new double[points];
+        amplitude.evaluate(sequential, null, points, re, im);
+        amplitude.evaluate(parallel, pool, points, parallelRe, parallelIm);
+        assertArrayEquals(re, parallelRe);
+        assertArrayEquals(im, parallelIm);
+        for (int p = 0; p < points; p += 97) {
+            assertEquals(sequential.getSquareRe(2, 5, p),
+                parallel.getSquareRe(2, 5, p));
+        }
+
+        // reusing the batch for fewer points leaves the others alone
+        parallel.compute(pool, 100);
+        amplitude.evaluate(parallel, 0, 100, parallelRe, parallelIm);
+        assertArrayEquals(re, parallelRe);
+    }
+
+    @Test
+    public void invalidArguments() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new SpinorBatch(1, 0, 10));
+        assertThrows(IllegalArgumentException.class,
+            () -> new SpinorBatch(4, 5, 10));
+        assertThrows(IllegalArgumentException.class,
+            () -> new SpinorBatch(4, 2, 0));
+        final SpinorBatch batch = new SpinorBatch(4, 2, 10);
+        assertThrows(IllegalArgumentException.class,
+            () -> batch.compute(pool, 11));
+        assertThrows(IllegalArgumentException.class,
+            () -> BracketMonomial.parkeTaylor(3, 0, 1));
+        assertThrows(IllegalArgumentException.class,
+            () -> BracketMonomial.builder(4).angle(1, 1, 1));
+        assertThrows(IllegalArgumentException.class,
+            () -> BracketMonomial.builder(4).square(0, 4, 1));
+        assertThrows(IllegalArgumentException.class,
+            () -> BracketMonomial.parkeTaylor(5, 0, 1).evaluate(
+                batch, 0, 10, new double[10], new double[10]));
+    }
+}
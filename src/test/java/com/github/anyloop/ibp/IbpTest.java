@@ -0,0 +1,276 @@
+/*
+ * IbpTest.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.ibp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.anyloop.TestConfigurator;
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.checkpoint.CheckpointLog;
+import com.github.anyloop.finitefield.FiniteFieldConfig;
+import com.github.anyloop.finitefield.ModularEngine;
+import com.github.anyloop.finitefield.Rational;
+import com.github.anyloop.storage.OffHeapStorage;
+import com.github.anyloop.symbolic.MemoryBudget;
+
+/**
+ * This test checks the IBP reduction against known one-loop results.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public class IbpTest {
+
+    /**
+     * The dimension used by the test families.
+     */
+    private static final Rational D = Rational.of(1013, 257);
+
+    private static ForkJoinPool pool;
+
+    private static ModularEngine engine;
+
+    @BeforeAll
+    public static void setUp() throws ConfigurationException {
+        pool = new ForkJoinPool(2);
+        engine = new ModularEngine(TestConfigurator.create(
+            FiniteFieldConfig.class, "-D", "finitefield.samples=1"));
+    }
+
+    @AfterAll
+    public static void shutdownPool() {
+        pool.shutdown();
+    }
+
+    private static ReductionTable reduce(final String source)
+            throws ConfigurationException {
+        return IbpReducer.fromConfig(TestConfigurator.create(
+            IbpConfig.class, "-c", source)).reduce(engine, pool);
+    }
+
+    private static Rational plus(final Rational a, final long n) {
+        return a.add(Rational.of(n, 1));
+    }
+
+    @Test
+    public void massiveTadpole() throws ConfigurationException {
+        final ReductionTable table = reduce("res://ibp-tadpole.yaml");
+        assertEquals(1, table.getMasterCount());
+        assertArrayEquals(new int[] {1}, table.getMaster(0));
+
+        // I(2) = (d-2)/2 I(1), I(3) = (d-4)(d-2)/8 I(1)
+        final Rational i2 = plus(D, -2).multiply(Rational.of(1, 2));
+        assertEquals(i2, table.getCoefficient(0, 0));
+        assertEquals(i2.multiply(plus(D, -4)).multiply(Rational.of(1, 4)),
+            table.getCoefficient(1, 0));
+        assertEquals("I(2) = " + i2 + "*I(1)",
+            table.toString().lines().findFirst().get());
+    }
+
+    @Test
+    public void masslessBubble() throws ConfigurationException {
+        final ReductionTable table = reduce("res://ibp-bubble.yaml");
+        // the massless tadpoles are scaleless
+        assertEquals(1, table.getMasterCount());
+        assertArrayEquals(new int[] {1, 1}, table.getMaster(0));
+
+        // B(1,2) = -(d-3)/s B(1,1), B(2,2) = (d-6)(d-3)/s^2 B(1,1)
+        assertEquals(plus(D, -3).multiply(Rational.of(-1, 3)),
+            table.getCoefficient(0, 0));
+        assertEquals(plus(D, -3).multiply(plus(D, -6))
+            .multiply(Rational.of(1, 9)), table.getCoefficient(1, 0));
+        assertEquals(Rational.of(0, 1), table.getCoefficient(2, 0));
+    }
+
+    @Test
+    public void scalelessBubble() throws ConfigurationException {
+        final Rational zero = Rational.of(0, 1);
+        final IntegralFamily family = new IntegralFamily(
+            "B", 1, 1, new int[][] {{1, 0}, {1, -1}},
+            new Rational[] {zero, zero}, new boolean[2],
+            new Rational[][] {{zero}}, D);
+        final ReductionTable table = new IbpReducer(
+            family, new int[][] {{1, 1}, {2, 1}}, 0, 0)
+            .reduce(engine, pool);
+        assertEquals(0, table.getMasterCount());
+        assertEquals(2, table.getTargetCount());
+        assertEquals("B(1,1) = 0", table.toString().lines().findFirst().get());
+    }
+
+    @Test
+    public void twoLoopSelfEnergy()
+            throws ConfigurationException, IOException {
+        final ReductionTable table = reduce("res://ibp-twoloop.yaml");
+
+        // the product of two bubbles is a master integral, and raising
+        // a power gives a factor -(d-3)/p^2 per bubble
+        int product = -1;
+        for (int m = 0; m < table.getMasterCount(); ++m) {
+            if (Arrays.equals(
+                    new int[] {1, 1, 1, 1, 0}, table.getMaster(m))) {
+                product = m;
+            }
+        }
+        final Rational b12 = plus(D, -3);
+        assertEquals(b12, table.getCoefficient(1, product));
+        assertEquals(b12.multiply(b12), table.getCoefficient(2, product));
+
+        // a dot on the sunset gives (d-3)(3d-8)/(d-4)/p^2
+        assertEquals(Rational.of(-242 * 983, 15 * 257),
+            table.getCoefficient(3, 0));
+        assertArrayEquals(new int[] {0, 1, 1, 0, 1}, table.getMaster(0));
+
+        // larger seeds give the same reduction
+        final IbpConfig config = TestConfigurator.create(
+            IbpConfig.class, "-c", "res://ibp-twoloop.yaml");
+        final int[][] targets = new int[table.getTargetCount()][];
+        for (int t = 0; t < targets.length; ++t) {
+            targets[t] = table.getTarget(t);
+        }
+        final ReductionTable more = new IbpReducer(
+            IntegralFamily.fromConfig(config), targets, 6, 2)
+            .reduce(engine, pool);
+        assertEquals(table.toString(), more.toString());
+
+        // keeping the pivot rows in small memory-mapped segments
+        try (OffHeapStorage storage =
+                new OffHeapStorage(null, 1 << 14, 1 << 12)) {
+            final ReductionTable mapped = IbpReducer.fromConfig(config)
+                .reduce(engine, pool, storage);
+            assertEquals(table.toString(), mapped.toString());
+
+            // the rows within a budget stay on the heap, the others
+            // are moved off it
+            for (final long limit : new long[] {1, 1 << 10, 1 << 30}) {
+                final MemoryBudget budget = new MemoryBudget(limit, null);
+                assertEquals(table.toString(), IbpReducer.fromConfig(config)
+                    .reduce(engine, pool, storage, budget, null)
+                    .toString());
+                assertEquals(0, budget.getUsed());
+                assertTrue(budget.getPeak() <= limit);
+                assertEquals(limit > 1, budget.getPeak() > 0);
+            }
+        }
+
+        // without a storage, the rows beyond the budget stay as well
+        final MemoryBudget budget = new MemoryBudget(1 << 10, null);
+        assertEquals(table.toString(), IbpReducer.fromConfig(config)
+            .reduce(engine, pool, null, budget, null).toString());
+        assertEquals(0, budget.getUsed());
+    }
+
+    @Test
+    public void resumedReduction(@TempDir final Path dir)
+            throws ConfigurationException, IOException {
+        final IbpReducer reducer = IbpReducer.fromConfig(
+            TestConfigurator.create(
+                IbpConfig.class, "-c", "res://ibp-twoloop.yaml"));
+        final String expected = reducer.reduce(engine, pool).toString();
+        final Path file = dir.resolve("ibp.log");
+        try (CheckpointLog log = new CheckpointLog(file, false, 0)) {
+            assertEquals(expected,
+                reducer.reduce(engine, pool, null, log).toString());
+        }
+        final long size = Files.size(file);
+
+        // interrupted in the middle of the elimination
+        for (final long length : new long[] {size / 3, size - 1, size}) {
+            try (RandomAccessFile raf =
+                    new RandomAccessFile(file.toFile(), "rw")) {
+                raf.setLength(length);
+            }
+            try (CheckpointLog log = new CheckpointLog(file, true, 0)) {
+                assertEquals(expected,
+                    reducer.reduce(engine, pool, null, log).toString());
+            }
+        }
+    }
+
+    @Test
+    public void imagesFromSeparatePrimes()
+            throws ConfigurationException, IOException {
+        final IbpReducer reducer = IbpReducer.fromConfig(
+            TestConfigurator.create(
+                IbpConfig.class, "-c", "res://ibp-twoloop.yaml"));
+        final String expected = reducer.reduce(engine, pool).toString();
+        final ReductionImages images = reducer.images(engine);
+        boolean complete = false;
+        // the primes in reverse order, as they might arrive from
+        // other processes
+        for (int i = engine.getFieldCount() - 1; !complete; --i) {
+            assertNull(images.getTable());
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            reducer.reduce(engine.getField(i), new DataOutputStream(bytes));
+            complete = images.add(engine.getField(i), new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())));
+        }
+        assertEquals(expected, images.getTable().toString());
+    }
+
+    @Test
+    public void invalidFamilies() {
+        // k and 2k span the same scalar products
+        final Rational zero = Rational.of(0, 1);
+        assertThrows(ConfigurationException.class, () -> new IntegralFamily(
+            "I", 1, 1, new int[][] {{1, 0}, {2, 0}},
+            new Rational[] {zero, zero}, new boolean[2],
+            new Rational[][] {{zero}}, D));
+
+        final Map<String, Integer> momenta = Map.of("k", 0, "p", 1);
+        assertThrows(ConfigurationException.class,
+            () -> IntegralFamily.parseMomentum("k - q", momenta));
+        assertThrows(ConfigurationException.class,
+            () -> IntegralFamily.parseMomentum("k p", momenta));
+    }
+
+    @Test
+    public void parseMomentum() throws ConfigurationException {
+        final Map<String, Integer> momenta = Map.of("k", 0, "p", 1);
+        assertArrayEquals(new int[] {1, -2},
+            IntegralFamily.parseMomentum("k - 2*p", momenta));
+        assertArrayEquals(new int[] {-1, 3},
+            IntegralFamily.parseMomentum("-k+p+2p", momenta));
+    }
+}
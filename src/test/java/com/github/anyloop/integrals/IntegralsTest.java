@@ -0,0 +1,288 @@
+/*
+ * IntegralsTest.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.integrals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.github.anyloop.TestConfigurator;
+import com.github.anyloop.chassis.ConfigurationException;
+
+/**
+ * This test checks the scalar integrals against closed forms, against
+ * direct integration and against the partial fractions which relate
+ * integrals with coinciding momenta to integrals with one denominator
+ * less.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public class IntegralsTest {
+
+    private static final ScalarIntegrals INTEGRALS =
+        new ScalarIntegrals(1, 48, 0);
+
+    private static double[] evaluate(
+            final ScalarIntegrals integrals,
+            final double[] invariants,
+            final double[] massRe,
+            final double[] massIm) {
+        final double[] result = new double[2];
+        integrals.evaluate(massRe.length, invariants, massRe, massIm, result);
+        return result;
+    }
+
+    private static double[] evaluate(
+            final double[] invariants,
+            final double... masses) {
+        return evaluate(INTEGRALS, invariants, masses,
+            new double[masses.length]);
+    }
+
+    private static void assertComplex(
+            final double re,
+            final double im,
+            final double[] actual,
+            final double tolerance) {
+        final double scale = Math.max(1, Math.hypot(re, im)) * tolerance;
+        assertEquals(re, actual[0], scale, "real part");
+        assertEquals(im, actual[1], scale, "imaginary part");
+    }
+
+    /**
+     * Integrates <code>-log Q(x)</code> by the midpoint rule in
+     * <code>u</code> with <code>x = u^2 (3 - 2 u)</code>, for masses
+     * with a finite width.
+     */
+    private static double[] b0Directly(
+            final double p2,
+            final double m0r,
+            final double m0i,
+            final double m1r,
+            final double m1i) {
+        final int n = 200000;
+        double re = 0;
+        double im = 0;
+        for (int k = 0; k < n; ++k) {
+            final double u = (k + 0.5) / n;
+            final double x = u * u * (3 - 2 * u);
+            final double w = 6 * u * (1 - u);
+            final double qr = x * m1r + (1 - x) * m0r - x * (1 - x) * p2;
+            final double qi = x * m1i + (1 - x) * m0i;
+            re -= w * Math.log(Math.hypot(qr, qi)) / n;
+            im -= w * Math.atan2(qi, qr) / n;
+        }
+        return new double[] {re, im};
+    }
+
+    @Test
+    public void oneAndTwoPointFunctions() {
+        final ScalarIntegrals scaled = new ScalarIntegrals(3, 8, 0);
+        assertComplex(2 * (1 - Math.log(2.0 / 3)), 0,
+            evaluate(scaled, new double[0], new double[] {2},
+                new double[] {0}), 1e-14);
+        assertComplex(0, 0, evaluate(new double[0], 0), 0);
+
+        assertComplex(-Math.log(2), 0, evaluate(new double[] {0}, 2, 2),
+            1e-14);
+        assertComplex(1 - Math.log(2), 0, evaluate(new double[] {0}, 0, 2),
+            1e-14);
+        assertComplex(2 - Math.log(5), Math.PI,
+            evaluate(new double[] {5}, 0, 0), 1e-14);
+        assertComplex(2 - Math.log(5), 0,
+            evaluate(new double[] {-5}, 0, 0), 1e-14);
+        assertComplex(0, 0, evaluate(new double[] {0}, 0, 0), 0);
+
+        // equal masses above threshold
+        final double s = 10;
+        final double beta = Math.sqrt(1 - 4 / s);
+        final double log = Math.log((1 + beta) / (1 - beta));
+        assertComplex(2 - beta * log, Math.PI * beta,
+            evaluate(new double[] {s}, 1, 1), 1e-13);
+        // at threshold B0 is continuous
+        assertComplex(2, 0, evaluate(new double[] {4 * (1 + 1e-12)}, 1, 1),
+            1e-5);
+
+        final double[][] cases = {
+            {1, 1, 0, 2, 0},
+            {10, 1, -0.1, 2, -0.2},
+            {1e-10, 1, -0.1, 3, 0},
+            {1e6, 1, -0.01, 1, -0.01},
+            {-7, 0.5, 0, 0.25, -0.3},
+            {3, 1, -1e-3, 0.25, -1e-3},
+        };
+        for (final double[] c : cases) {
+            final double[] expected = b0Directly(c[0], c[1], c[2], c[3], c[4]);
+            assertComplex(expected[0], expected[1],
+                evaluate(INTEGRALS, new double[] {c[0]},
+                    new double[] {c[1], c[3]}, new double[] {c[2], c[4]}),
+                1e-8);
+        }
+    }
+
+    @Test
+    public void threePointFunctions() {
+        assertComplex(-0.25, 0, evaluate(new double[] {0, 0, 0}, 2, 2, 2),
+            1e-12);
+
+        // the triangle of the decay of a scalar into two photons
+        final double asin = Math.asin(Math.sqrt(3.0 / 4));
+        assertComplex(-2.0 / 3 * asin * asin, 0,
+            evaluate(new double[] {0, 0, 3}, 1, 1, 1), 1e-7);
+        final double s = 10;
+        final double beta = Math.sqrt(1 - 4 / s);
+        final double log = Math.log((1 + beta) / (1 - beta));
+        assertComplex((log * log - Math.PI * Math.PI) / (2 * s),
+            -2 * Math.PI * log / (2 * s),
+            evaluate(new double[] {0, 0, s}, 1, 1, 1), 1e-6);
+
+        // q_2 = q_1 turns C0 into a difference of two B0
+        final double p2 = 9;
+        final double[][] masses = {
+            {0.5, 1, 2, 0, 0, 0},
+            {0.5, 1, 2, -0.1, -0.2, -0.05},
+            {0, 0.1, 0.3, 0, 0, 0},
+        };
+        for (final double[] m : masses) {
+            final double[] b1 = evaluate(INTEGRALS, new double[] {p2},
+                new double[] {m[0], m[1]}, new double[] {m[3], m[4]});
+            final double[] b2 = evaluate(INTEGRALS, new double[] {p2},
+                new double[] {m[0], m[2]}, new double[] {m[3], m[5]});
+            final double dr = m[1] - m[2];
+            final double di = m[4] - m[5];
+            final double norm = dr * dr + di * di;
+            final double nr = b1[0] - b2[0];
+            final double ni = b1[1] - b2[1];
+            assertComplex((nr * dr + ni * di) / norm,
+                (ni * dr - nr * di) / norm,
+                evaluate(INTEGRALS, new double[] {p2, 0, p2},
+                    new double[] {m[0], m[1], m[2]},
+                    new double[] {m[3], m[4], m[5]}),
+                1e-6);
+        }
+    }
+
+    @Test
+    public void fourPointFunctions() {
+        assertComplex(1.0 / 24, 0,
+            evaluate(new double[] {0, 0, 0, 0, 0, 0}, 2, 2, 2, 2), 1e-10);
+
+        // q_3 = q_2 turns D0 into a difference of two C0
+        final double[][] masses = {
+            {0.3, 0.6, 1.2, 0.9, 0, 0, 0, 0},
+            {0.3, 0.6, 1.2, 0.9, -0.05, -0.1, -0.2, -0.15},
+        };
+        final double s01 = 1;
+        final double s12 = 2;
+        final double s02 = 20;
+        for (final double[] m : masses) {
+            final double[] c2 = evaluate(INTEGRALS,
+                new double[] {s01, s12, s02},
+                new double[] {m[0], m[1], m[2]},
+                new double[] {m[4], m[5], m[6]});
+            final double[] c3 = evaluate(INTEGRALS,
+                new double[] {s01, s12, s02},
+                new double[] {m[0], m[1], m[3]},
+                new double[] {m[4], m[5], m[7]});
+            final double dr = m[2] - m[3];
+            final double di = m[6] - m[7];
+            final double norm = dr * dr + di * di;
+            final double nr = c2[0] - c3[0];
+            final double ni = c2[1] - c3[1];
+            assertComplex((nr * dr + ni * di) / norm,
+                (ni * dr - nr * di) / norm,
+                evaluate(INTEGRALS, new double[] {s01, s12, 0, s02, s02, s12},
+                    new double[] {m[0], m[1], m[2], m[3]},
+                    new double[] {m[4], m[5], m[6], m[7]}),
+                1e-5);
+        }
+    }
+
+    @Test
+    public void batchesAndMemoTable() {
+        final Random random = new Random(1);
+        final int count = 20;
+        final double[][] invariants = new double[6][count];
+        final double[][] massRe = new double[4][count];
+        final double[][] massIm = new double[4][count];
+        for (int p = 0; p < count; ++p) {
+            for (int k = 0; k < 6; ++k) {
+                invariants[k][p] = 10 * random.nextDouble() - 2;
+            }
+            for (int i = 0; i < 4; ++i) {
+                massRe[i][p] = random.nextDouble();
+                massIm[i][p] = -0.1 * random.nextDouble();
+            }
+        }
+        final ScalarIntegrals cached = new ScalarIntegrals(1, 12, 1024);
+        for (int points = 1; points <= ScalarIntegrals.MAX_POINTS; ++points) {
+            final double[] re = new double[count];
+            final double[] im = new double[count];
+            cached.evaluate(points, count, invariants, massRe, massIm, re, im);
+            for (int p = 0; p < count; ++p) {
+                final double[] inv = new double[6];
+                final double[] mr = new double[points];
+                final double[] mi = new double[points];
+                for (int k = 0; k < 6; ++k) {
+                    inv[k] = invariants[k][p];
+                }
+                for (int i = 0; i < points; ++i) {
+                    mr[i] = massRe[i][p];
+                    mi[i] = massIm[i][p];
+                }
+                final double[] expected = evaluate(
+                    new ScalarIntegrals(1, 12, 0), inv, mr, mi);
+                assertEquals(expected[0], re[p]);
+                assertEquals(expected[1], im[p]);
+            }
+        }
+        assertEquals(0, cached.getHitCount());
+        assertEquals(4 * count, cached.getMissCount());
+        final double[] re = new double[count];
+        final double[] im = new double[count];
+        cached.evaluate(4, count, invariants, massRe, massIm, re, im);
+        assertEquals(count, cached.getHitCount());
+    }
+
+    @Test
+    public void configuration() throws ConfigurationException {
+        final ScalarIntegrals integrals = ScalarIntegrals.fromConfig(
+            TestConfigurator.create(IntegralsConfig.class,
+                "-D", "integrals.scale=91.1876"));
+        assertEquals(91.1876, integrals.getScale());
+        assertThrows(ConfigurationException.class,
+            () -> ScalarIntegrals.fromConfig(
+                TestConfigurator.create(IntegralsConfig.class,
+                    "-D", "integrals.nodes=1")));
+        assertThrows(IllegalArgumentException.class,
+            () -> evaluate(INTEGRALS, new double[0], new double[] {1},
+                new double[] {1}));
+        assertThrows(IllegalArgumentException.class,
+            () -> evaluate(new double[10], 1, 1, 1, 1, 1));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * ScalarIntegralsBenchmark.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.integrals;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the batch evaluation of scalar integrals at random
+ * physical points, once without memo table and once with a table in
+ * which every point is already present.
+ *
+ * Run with
+ * <code>mvn -Pbenchmark test -Djmh.args=ScalarIntegralsBenchmark</code>.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScalarIntegralsBenchmark {
+
+    /**
+     * The number of points in a batch.
+     */
+    private static final int COUNT = 16;
+
+    /**
+     * The number of external legs.
+     */
+    @Param({"2", "3", "4"})
+    private int points;
+
+    private double[][] invariants;
+
+    private double[][] massRe;
+
+    private double[][] massIm;
+
+    private final double[] re = new double[COUNT];
+
+    private final double[] im = new double[COUNT];
+
+    private ScalarIntegrals uncached;
+
+    private ScalarIntegrals cached;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random random = new Random(this.points);
+        final int n = ScalarIntegrals.getInvariantCount(this.points);
+        this.invariants = new double[n][COUNT];
+        this.massRe = new double[this.points][COUNT];
+        this.massIm = new double[this.points][COUNT];
+        for (int k = 0; k < COUNT; ++k) {
+            for (int i = 0; i < n; ++i) {
+                this.invariants[i][k] = 20 * random.nextDouble() - 5;
+            }
+            for (int i = 0; i < this.points; ++i) {
+                this.massRe[i][k] = 1 + random.nextDouble();
+                this.massIm[i][k] = -0.01 * random.nextDouble();
+            }
+        }
+        this.uncached = new ScalarIntegrals(1, 32, 0);
+        this.cached = new ScalarIntegrals(1, 32, 1024);
+        this.evaluate(this.cached);
+    }
+
+    @Benchmark
+    public double[] uncached() {
+        return this.evaluate(this.uncached);
+    }
+
+    @Benchmark
+    public double[] cached() {
+        return this.evaluate(this.cached);
+    }
+
+    private double[] evaluate(final ScalarIntegrals integrals) {
+        integrals.evaluate(this.points, COUNT, this.invariants,
+            this.massRe, this.massIm, this.re, this.im);
+        return this.re;
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * LorentzTest.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.lorentz;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.anyloop.TestConfigurator;
+import com.github.anyloop.chassis.ConfigurationException;
+import com.github.anyloop.dirac.TraceEngine;
+import com.github.anyloop.symbolic.Expr;
+
+/**
+ * This test checks contractions against explicit sums over the index
+ * values in four dimensions with the metric
+ * <code>diag(1, 1, 1, -1)</code>.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public class LorentzTest {
+
+    private static final double[] METRIC = {1, 1, 1, -1};
+
+    private static final Expr D = Expr.symbol("d");
+
+    private static final Expr MU = Expr.symbol("mu");
+
+    private static final Expr NU = Expr.symbol("nu");
+
+    private static final Expr RHO = Expr.symbol("rho");
+
+    private static final Set<Expr> INDICES = Set.of(MU, NU, RHO);
+
+    private static final Map<Expr, double[]> MOMENTA = new HashMap<>();
+
+    static {
+        final Random random = new Random(3);
+        for (final String p : new String[] {"p", "q", "k", "l"}) {
+            final double[] v = new double[4];
+            for (int a = 0; a < 4; ++a) {
+                v[a] = random.nextDouble() - 0.5;
+            }
+            MOMENTA.put(Expr.symbol(p), v);
+        }
+    }
+
+    private final TensorContractor contractor =
+        new TensorContractor(D, "N");
+
+    private static Expr g(final Expr a, final Expr b) {
+        return Expr.function("g", a, b);
+    }
+
+    private static Expr v(final String p, final Expr index) {
+        return Expr.function(p, index);
+    }
+
+    private static Expr dot(final String p, final String q) {
+        return Expr.function("dot", Expr.symbol(p), Expr.symbol(q));
+    }
+
+    @Test
+    public void metricsAndMomenta() {
+        assertEquals(D, this.contractor.contract(g(MU, MU), INDICES));
+        assertEquals(D, this.contractor.contract(
+            g(MU, NU).times(g(NU, MU)), INDICES));
+        assertEquals(dot("p", "q"), this.contractor.contract(
+            Expr.product(v("p", MU), g(MU, NU), v("q", NU)), INDICES));
+        assertEquals(v("p", RHO), this.contractor.contract(
+            Expr.product(v("p", MU), g(MU, NU), g(NU, RHO)), INDICES));
+        assertEquals(dot("k", "p"), this.contractor.contract(
+            g(MU, Expr.symbol("p")).times(v("k", MU)), INDICES));
+        assertEquals(dot("p", "p").minus(dot("q", "q")),
+            this.contractor.contract(v("p", MU).plus(v("q", MU))
+                .times(v("p", MU).minus(v("q", MU))), INDICES));
+        assertEquals(dot("p", "p"), this.contractor.contract(
+            v("p", MU).pow(2), INDICES));
+        assertThrows(IllegalArgumentException.class,
+            () -> this.contractor.contract(Expr.product(
+                v("p", MU), v("q", MU), v("k", MU)), INDICES));
+    }
+
+    @Test
+    public void equivalentTermsCollapse() {
+        final Expr a = Expr.symbol("a");
+        final Expr b = Expr.symbol("b");
+        final Set<Expr> indices = Set.of(MU, NU, a, b);
+        final Expr x = Expr.sum(
+            Expr.product(t("T", MU, NU), t("U", MU, NU)),
+            Expr.product(t("T", a, b), t("U", a, b)),
+            Expr.product(t("T", NU, MU), t("U", NU, MU)),
+            Expr.product(t("T", a, b), t("U", b, a), g(MU, MU)));
+        final Expr n1 = this.contractor.dummy(1);
+        final Expr n2 = this.contractor.dummy(2);
+        final Expr expected = Expr.sum(
+            Expr.product(Expr.number(3), t("T", n1, n2), t("U", n1, n2)),
+            Expr.product(D, t("T", n1, n2), t("U", n2, n1)));
+        assertEquals(expected, this.contractor.contract(x, indices));
+        // the result is a fixed point
+        assertEquals(expected, this.contractor.contract(expected, indices));
+        assertNotEquals(expected, this.contractor.contract(x, Set.of()));
+    }
+
+    private static Expr t(final String name, final Expr... slots) {
+        return Expr.function(name, slots);
+    }
+
+    @Test
+    public void contractedTracesMatchExplicitSums() {
+        final TraceEngine traces = new TraceEngine(D, 1024);
+        final Expr p = Expr.symbol("p");
+        final Expr q = Expr.symbol("q");
+        final Expr k = Expr.symbol("k");
+        final Expr l = Expr.symbol("l");
+        final Expr x = traces.trace(List.of(p, MU, q, NU, RHO), INDICES)
+            .times(traces.trace(List.of(k, NU, l, MU, RHO), INDICES));
+        final Expr y = this.contractor.contract(x, INDICES);
+        assertTrue(isScalar(y));
+
+        double expected = 0;
+        final Map<Expr, Integer> values = new HashMap<>();
+        for (int c = 0; c < 64; ++c) {
+            values.put(MU, c & 3);
+            values.put(NU, (c >> 2) & 3);
+            values.put(RHO, c >> 4);
+            expected += METRIC[c & 3] * METRIC[(c >> 2) & 3]
+                * METRIC[c >> 4] * evaluate(x, values);
+        }
+        assertEquals(expected, evaluate(y, values),
+            1e-9 * Math.abs(expected));
+    }
+
+    private static boolean isScalar(final Expr e) {
+        if (INDICES.contains(e)) {
+            return false;
+        }
+        for (int i = 0; i < e.getArgCount(); ++i) {
+            if (!isScalar(e.getArg(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Evaluates an expression in four dimensions for given values of
+     * the indices.
+     */
+    private static double evaluate(
+            final Expr e,
+            final Map<Expr, Integer> values) {
+        switch (e.getKind()) {
+            case NUMBER:
+                return (double) e.getNumerator() / e.getDenominator();
+            case SYMBOL:
+                assertEquals(D, e);
+                return 4;
+            case POWER:
+                return Math.pow(evaluate(e.getArg(0), values),
+                    e.getExponent());
+            case PRODUCT:
+            case SUM:
+                final boolean product = e.getKind() == Expr.Kind.PRODUCT;
+                double r = product ? 1 : 0;
+                for (int i = 0; i < e.getArgCount(); ++i) {
+                    final double a = evaluate(e.getArg(i), values);
+                    r = product ? r * a : r + a;
+                }
+                return r;
+            default:
+                if ("g".equals(e.getName())) {
+                    final int a = values.get(e.getArg(0));
+                    return a == values.get(e.getArg(1)) ? METRIC[a] : 0;
+                }
+                if ("dot".equals(e.getName())) {
+                    final double[] x = MOMENTA.get(e.getArg(0));
+                    final double[] y = MOMENTA.get(e.getArg(1));
+                    double s = 0;
+                    for (int a = 0; a < 4; ++a) {
+                        s += METRIC[a] * x[a] * y[a];
+                    }
+                    return s;
+                }
+                return MOMENTA.get(Expr.symbol(e.getName()))
+                    [values.get(e.getArg(0))];
+        }
+    }
+
+    @Test
+    public void sharedIndicesAreContractedFirst() {
+        final String[] momenta = {"p", "q", "k", "l"};
+        final Expr[] sums = new Expr[4];
+        final Expr[] slots = {MU, NU, MU, NU};
+        for (int s = 0; s < 4; ++s) {
+            final List<Expr> terms = new ArrayList<>();
+            for (int m = 0; m < 4; ++m) {
+                terms.add(Expr.number(s + m + 1)
+                    .times(v(momenta[m], slots[s])));
+            }
+            sums[s] = Expr.sum(terms);
+        }
+        final TensorContractor c = new TensorContractor(D, "N");
+        final Expr y = c.contract(Expr.product(sums), INDICES);
+        assertTrue(isScalar(y));
+        // multiplying the sums in the order given would produce 16
+        // open tensor structures
+        assertTrue(c.getPeakTermCount() <= 4, "" + c.getPeakTermCount());
+        assertEquals(1, c.getInputTermCount());
+        assertEquals(y.getArgCount(), c.getOutputTermCount());
+    }
+
+    @Test
+    public void parallelContraction() {
+        final List<Expr> terms = new ArrayList<>();
+        final Set<Expr> indices = new HashSet<>(INDICES);
+        for (int i = 0; i < 200; ++i) {
+            final Expr a = Expr.symbol("a" + i);
+            indices.add(a);
+            terms.add(Expr.product(Expr.number(i % 7 - 3), t("T", a, MU),
+                v(i % 2 == 0 ? "p" : "q", a), g(MU, NU)));
+        }
+        final Expr x = Expr.sum(terms);
+        final Expr sequential = this.contractor.contract(x, indices);
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(sequential,
+                this.contractor.contract(x, indices, pool));
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(2, sequential.getArgCount());
+        assertTrue(this.contractor.getContractionTime() > 0);
+    }
+
+    @Test
+    public void configuration() throws ConfigurationException {
+        final TensorContractor c = TensorContractor.fromConfig(
+            TestConfigurator.create(LorentzConfig.class,
+                "-D", "lorentz.dimension=D",
+                "-D", "lorentz.dummyPrefix=M"));
+        assertEquals(Expr.symbol("D"), c.getDimension());
+        assertEquals(Expr.symbol("M1_"), c.dummy(1));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * ModelBenchmark.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.anyloop.chassis.ConfigurationException;
+
+/**
+ * Benchmarks loading a model and looking up its vertices, for a
+ * model of the size of the Standard Model and one of the size of
+ * its effective field theory extension.
+ *
+ * Run with <code>mvn -Pbenchmark test -Djmh.args=ModelBenchmark</code>.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelBenchmark {
+
+    /**
+     * The number of vertices of the model.
+     */
+    @Param({"400", "4000"})
+    private int vertices;
+
+    private Path file;
+
+    private Model model;
+
+    private int[][] queries;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, ConfigurationException {
+        this.file = Files.createTempFile("model", ".yaml");
+        ModelTest.writeRandomModel(this.file, 60, this.vertices, 42);
+        this.model = ModelTest.load(this.file.toString());
+
+        this.queries = new int[this.model.getVertexTypeCount()][];
+        for (int t = 0; t < this.queries.length; ++t) {
+            final int degree = this.model.getVertexDegree(t);
+            this.queries[t] = new int[degree];
+            for (int i = 0; i < degree; ++i) {
+                // reversed, so that the lookup sees an unsorted tuple
+                this.queries[t][i] =
+                    this.model.getVertexField(t, degree - 1 - i);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.file);
+    }
+
+    @Benchmark
+    public Model load() throws ConfigurationException {
+        return ModelTest.load(this.file.toString());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int lookupAllVertices() {
+        int sum = 0;
+        for (final int[] query : this.queries) {
+            sum += this.model.findVertexKey(query, query.length);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * ModelTest.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.model;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.anyloop.TestConfigurator;
+import com.github.anyloop.chassis.ConfigurationException;
+
+/**
+ * This test checks the compiled lookup tables of {@link Model}.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public class ModelTest {
+
+    static Model load(final String source) throws ConfigurationException {
+        return Model.fromConfig(TestConfigurator.create(
+            ModelConfig.class, "-c", source));
+    }
+
+    /**
+     * Writes a random model with the given numbers of particles and
+     * vertices, roughly the size of an effective field theory.
+     *
+     * @param file the file to be written
+     * @param particles the number of particles
+     * @param vertices the number of vertices
+     * @param seed the seed of the random numbers
+     * @throws IOException if the file cannot be written
+     */
+    static void writeRandomModel(
+            final Path file,
+            final int particles,
+            final int vertices,
+            final long seed) throws IOException {
+        final Random random = new Random(seed);
+        final String[] fields = new String[2 * particles];
+        int fieldCount = 0;
+        final StringBuilder sb = new StringBuilder();
+        sb.append("model:\n  name: random\n  particles:\n    particle:\n");
+        for (int p = 0; p < particles; ++p) {
+            sb.append("      - name: p").append(p).append('\n');
+            fields[fieldCount++] = "p" + p;
+            if (p % 3 != 0) {
+                sb.append("        antiname: P").append(p).append('\n')
+                    .append("        spin: 1/2\n");
+                fields[fieldCount++] = "P" + p;
+            }
+        }
+        sb.append("  vertices:\n    vertex:\n");
+        for (int v = 0; v < vertices; ++v) {
+            final int degree = 3 + random.nextInt(4);
+            sb.append("      - fields: [");
+            for (int i = 0; i < degree; ++i) {
+                sb.append(i == 0 ? "" : ", ")
+                    .append(fields[random.nextInt(fieldCount)]);
+            }
+            sb.append("]\n        coupling: g").append(v).append('\n');
+        }
+        Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void lookupIgnoresOrderOfFields() throws ConfigurationException {
+        final Model qed = load("res://qed-model.yaml");
+        final int em = qed.getFieldId("e-");
+        final int ep = qed.getFieldId("e+");
+        final int mm = qed.getFieldId("mu-");
+        final int a = qed.getFieldId("A");
+
+        final int key = qed.findVertexKey(new int[] {a, em, ep}, 3);
+        assertTrue(key >= 0);
+        assertEquals(key, qed.findVertexKey(new int[] {ep, a, em, 17}, 3));
+        assertEquals(1, qed.getVertexCountWithKey(key));
+        assertEquals(key, qed.getVertexKey(qed.getVertexWithKey(key, 0)));
+        assertEquals(2, qed.getVertexKeyCount());
+        assertEquals(2, qed.getVertexKeyCountWithField(a));
+        assertEquals(1, qed.getVertexKeyCountWithField(ep));
+        assertEquals(key, qed.getVertexKeyWithField(ep, 0));
+
+        assertEquals(-1, qed.findVertexKey(new int[] {a, em, em}, 3));
+        assertEquals(-1, qed.findVertexKey(new int[] {a, em, mm}, 3));
+        assertEquals(-1, qed.findVertexKey(new int[] {a, em}, 2));
+        assertEquals(-1, qed.findVertexKey(new int[] {a, a, em, ep}, 4));
+    }
+
+    @Test
+    public void verticesWithSameFieldsShareKey(@TempDir final Path dir)
+            throws IOException, ConfigurationException {
+        final Path file = dir.resolve("shared.yaml");
+        Files.write(file, ("model:\n"
+            + "  particles:\n"
+            + "    particle:\n"
+            + "      - name: W+\n"
+            + "        antiname: W-\n"
+            + "        spin: 1\n"
+            + "      - name: A\n"
+            + "        spin: 1\n"
+            + "  vertices:\n"
+            + "    vertex:\n"
+            + "      - fields: [W+, W-, A]\n"
+            + "        coupling: e\n"
+            + "      - fields: [A, W-, W+]\n"
+            + "        coupling: c1\n"
+            + "      - fields: [W+, W-, A, A]\n"
+            + "        coupling: e2\n").getBytes(StandardCharsets.UTF_8));
+        final Model model = load(file.toString());
+
+        assertEquals(2, model.getVertexKeyCount());
+        final int key = model.getVertexKey(0);
+        assertEquals(key, model.getVertexKey(1));
+        assertEquals(2, model.getVertexCountWithKey(key));
+        assertEquals(0, model.getVertexWithKey(key, 0));
+        assertEquals(1, model.getVertexWithKey(key, 1));
+        assertEquals(3, model.getVertexKeyLength(key));
+    }
+
+    @Test
+    public void largeModelLookup(@TempDir final Path dir)
+            throws IOException, ConfigurationException {
+        final Path file = dir.resolve("large.yaml");
+        writeRandomModel(file, 60, 3000, 42);
+        final Model model = load(file.toString());
+        assertEquals(3000, model.getVertexTypeCount());
+
+        final Random random = new Random(7);
+        final int[] fields = new int[8];
+        for (int t = 0; t < model.getVertexTypeCount(); ++t) {
+            final int degree = model.getVertexDegree(t);
+            for (int i = 0; i < degree; ++i) {
+                fields[i] = model.getVertexField(t, i);
+            }
+            for (int i = degree - 1; i > 0; --i) {
+                final int j = random.nextInt(i + 1);
+                final int swap = fields[i];
+                fields[i] = fields[j];
+                fields[j] = swap;
+            }
+            final int key = model.findVertexKey(fields, degree);
+            assertEquals(model.getVertexKey(t), key);
+
+            final int[] sorted = Arrays.copyOf(fields, degree);
+            Arrays.sort(sorted);
+            final int[] stored = new int[model.getVertexKeyLength(key)];
+            for (int i = 0; i < stored.length; ++i) {
+                stored[i] = model.getVertexKeyField(key, i);
+            }
+            assertEquals(Arrays.toString(sorted), Arrays.toString(stored));
+        }
+
+        int members = 0;
+        for (int k = 0; k < model.getVertexKeyCount(); ++k) {
+            members += model.getVertexCountWithKey(k);
+        }
+        assertEquals(model.getVertexTypeCount(), members);
+    }
+
+    @Test
+    public void vertexNeedsThreeLegs(@TempDir final Path dir)
+            throws IOException {
+        final Path file = dir.resolve("short.yaml");
+        Files.write(file, ("model:\n"
+            + "  particles:\n"
+            + "    particle:\n"
+            + "      - name: phi\n"
+            + "  vertices:\n"
+            + "    vertex:\n"
+            + "      - fields: [phi, phi]\n").getBytes(StandardCharsets.UTF_8));
+        assertThrows(ConfigurationException.class,
+            () -> load(file.toString()));
+    }
+}
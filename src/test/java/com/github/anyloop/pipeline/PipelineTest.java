@@ -0,0 +1,361 @@
+/*
+ * PipelineTest.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.pipeline;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.anyloop.TestConfigurator;
+import com.github.anyloop.chassis.ConfigurationException;
+
+/**
+ * This test checks that items stream through the stages of a
+ * pipeline with bounded memory and that failures stop all of them.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public class PipelineTest {
+
+    /**
+     * A stage calling a function for each item.
+     */
+    private static final class Step implements PipelineStage<Long, Long> {
+
+        private final String name;
+
+        private final int weight;
+
+        private final Consumer<Long> action;
+
+        private final AtomicInteger finished = new AtomicInteger();
+
+        Step(final String theName, final int theWeight,
+                final Consumer<Long> theAction) {
+            this.name = theName;
+            this.weight = theWeight;
+            this.action = theAction;
+        }
+
+        @Override
+        public String getName() {
+            return this.name;
+        }
+
+        @Override
+        public int getWeight() {
+            return this.weight;
+        }
+
+        @Override
+        public void process(final Long item, final Consumer<? super Long> out)
+                throws IOException {
+            if (item < 0) {
+                throw new IOException("negative item " + item);
+            }
+            this.action.accept(item);
+            out.accept(item);
+        }
+
+        @Override
+        public void finish(final Consumer<? super Long> out) {
+            this.finished.incrementAndGet();
+            out.accept(-1L);
+        }
+    }
+
+    private static PipelineSource<Long> numbers(final long n) {
+        return (workers, out) -> {
+            for (long i = 0; i < n; ++i) {
+                out.accept(i);
+            }
+        };
+    }
+
+    @Test
+    public void itemsFlowThroughAllStages() throws IOException {
+        final LongAdder squares = new LongAdder();
+        final LongAdder sum = new LongAdder();
+        final Step first = new Step("square", 2, x -> squares.add(x * x));
+        final Step second = new Step("sum", 1, sum::add);
+        final Pipeline pipeline = Pipeline.from("test", numbers(10000))
+            .then(first)
+            .then(new PipelineStage<Long, Long>() {
+                @Override
+                public String getName() {
+                    return "positive";
+                }
+
+                @Override
+                public void process(
+                        final Long item,
+                        final Consumer<? super Long> out) {
+                    if (item >= 0) {
+                        out.accept(item);
+                    }
+                }
+            })
+            .then(second)
+            .build();
+
+        // the marker passed on by finish goes through the last stage
+        assertEquals(10001, pipeline.execute(4, 16));
+        assertEquals(10000, pipeline.getCount(0));
+        assertEquals(10001, pipeline.getCount(1));
+        assertEquals(10000, pipeline.getCount(2));
+        assertEquals(3, pipeline.getStageCount());
+        assertEquals(9999L * 10000 * 19999 / 6, squares.sum());
+        assertEquals(9999L * 10000 / 2, sum.sum());
+        assertEquals(1, first.finished.get());
+        assertEquals(1, second.finished.get());
+
+        // a pipeline can run again
+        assertEquals(10001, pipeline.execute(1, 1));
+        assertEquals(2 * 9999L * 10000 / 2, sum.sum());
+    }
+
+    @Test
+    public void backpressureBoundsItemsInFlight() throws IOException {
+        final AtomicLong emitted = new AtomicLong();
+        final AtomicLong done = new AtomicLong();
+        final AtomicLong peak = new AtomicLong();
+        final PipelineSource<Long> source = (workers, out) -> {
+            for (long i = 0; i < 20000; ++i) {
+                peak.accumulateAndGet(
+                    emitted.incrementAndGet() - done.get(), Math::max);
+                out.accept(i);
+            }
+        };
+        final List<Long> seen = new ArrayList<>();
+        final Pipeline pipeline = Pipeline.from("bounded", source)
+            .then(new Step("copy", 1, x -> { }))
+            .then(new PipelineStage<Long, Long>() {
+                @Override
+                public String getName() {
+                    return "slow";
+                }
+
+                @Override
+                public void process(
+                        final Long item,
+                        final Consumer<? super Long> out)
+                        throws IOException {
+                    if (item % 1000 == 0) {
+                        try {
+                            Thread.sleep(1);
+                        } catch (InterruptedException ex) {
+                            throw new IOException(ex);
+                        }
+                    }
+                    seen.add(item);
+                    done.incrementAndGet();
+                }
+
+                @Override
+                public int getMaxWorkers() {
+                    return 1;
+                }
+            })
+            .build();
+        pipeline.execute(3, 8);
+
+        assertEquals(20001, seen.size());
+        // two queues of eight, one item per worker and one being
+        // offered by each producer
+        assertTrue(peak.get() <= 2 * 8 + 2 * 2 + 1, "peak " + peak);
+    }
+
+    @Test
+    public void fewerThreadsThanStepsRunOnTheCallingThread()
+            throws IOException {
+        final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        final LongAdder sum = new LongAdder();
+        final Step step = new Step("sum", 1, x -> {
+            threads.add(Thread.currentThread());
+            sum.add(x);
+        });
+        final Pipeline pipeline = Pipeline.from("inline", numbers(1000))
+            .then(step)
+            .build();
+        assertEquals(1001, pipeline.execute(1, 4));
+        assertEquals(Set.of(Thread.currentThread()), threads);
+        assertEquals(1000, pipeline.getCount(0));
+        assertEquals(999L * 1000 / 2, sum.sum());
+        assertEquals(1, step.finished.get());
+
+        final Pipeline failing = Pipeline.from("failing", numbers(10))
+            .then(new Step("check", 1, x -> { }))
+            .then(new PipelineStage<Long, Long>() {
+                @Override
+                public String getName() {
+                    return "copy";
+                }
+
+                @Override
+                public void process(
+                        final Long item,
+                        final Consumer<? super Long> out) {
+                    out.accept(item);
+                }
+            })
+            .then(new Step("last", 1, x -> { }))
+            .build();
+        final IOException ex = assertThrows(IOException.class,
+            () -> failing.execute(1, 1));
+        assertEquals("Pipeline failing: last failed", ex.getMessage());
+        assertEquals("negative item -1", ex.getCause().getMessage());
+    }
+
+    @Test
+    public void blockedPoolThreadsAreCompensated()
+            throws InterruptedException {
+        // the only thread of the pool blocks on the full queue while
+        // the stage needs the pool to make progress
+        final ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            final PipelineSource<Long> source = (workers, out) ->
+                pool.submit(() -> {
+                    for (long i = 0; i < 1000; ++i) {
+                        out.accept(i);
+                    }
+                }).join();
+            final LongAdder sum = new LongAdder();
+            final Pipeline pipeline = Pipeline.from("pool", source)
+                .then(new PipelineStage<Long, Long>() {
+                    @Override
+                    public String getName() {
+                        return "pooled";
+                    }
+
+                    @Override
+                    public void process(
+                            final Long item,
+                            final Consumer<? super Long> out) {
+                        sum.add(pool.submit(() -> 2 * item).join());
+                    }
+                })
+                .build();
+            assertTimeoutPreemptively(Duration.ofMinutes(1),
+                () -> pipeline.execute(2, 1));
+            assertEquals(999L * 1000, sum.sum());
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    @Test
+    public void failuresStopAllSteps() {
+        final Pipeline failingStage = Pipeline.from("failing",
+                (PipelineSource<Long>) (workers, out) -> {
+                    for (long i = 0; ; ++i) {
+                        out.accept(i == 5000 ? -1 : i);
+                    }
+                })
+            .then(new Step("check", 1, x -> { }))
+            .then(new Step("more", 1, x -> { }))
+            .build();
+        final IOException ex = assertThrows(IOException.class,
+            () -> failingStage.execute(4, 4));
+        assertEquals("Pipeline failing: check failed", ex.getMessage());
+        assertEquals("negative item -1", ex.getCause().getMessage());
+
+        final Pipeline failingSource = Pipeline.from("source",
+                (PipelineSource<Long>) (workers, out) -> {
+                    out.accept(1L);
+                    throw new IOException("cannot read");
+                })
+            .then(new Step("check", 1, x -> { }))
+            .build();
+        final IOException ex2 = assertThrows(IOException.class,
+            () -> failingSource.execute(2, 4));
+        assertEquals("cannot read", ex2.getCause().getMessage());
+    }
+
+    @Test
+    public void workersAreSharedByWeight() {
+        final int max = Integer.MAX_VALUE;
+        assertArrayEquals(new int[] {6, 2, 2},
+            Pipeline.share(10, new int[] {3, 1, 1}, new int[] {max, max, max}));
+        assertArrayEquals(new int[] {1, 1, 1},
+            Pipeline.share(1, new int[] {3, 1, 1}, new int[] {max, max, max}));
+        assertArrayEquals(new int[] {6, 2, 1},
+            Pipeline.share(10, new int[] {3, 1, 1}, new int[] {max, max, 1}));
+        // rounding up never gives out more threads than there are
+        assertArrayEquals(new int[] {1, 2, 2},
+            Pipeline.share(5, new int[] {1, 1, 1}, new int[] {max, max, max}));
+        assertArrayEquals(new int[] {1, 1, 1, 1},
+            Pipeline.share(4, new int[] {1, 1, 1, 1},
+                new int[] {max, max, max, max}));
+        assertThrows(IllegalArgumentException.class,
+            () -> Pipeline.share(1, new int[] {0}, new int[] {max}));
+    }
+
+    @Test
+    public void linesAreWrittenAndConfigurationIsChecked(
+            @TempDir final Path dir)
+            throws ConfigurationException, IOException {
+        final Path file = dir.resolve("numbers.txt");
+        final Pipeline pipeline;
+        try (LineWriter writer = new LineWriter(file)) {
+            pipeline = Pipeline.from("write", numbers(1000))
+                .then(writer)
+                .build();
+            assertEquals(0, pipeline.execute(TestConfigurator.create(
+                PipelineConfig.class, "-D", "jobs=0")));
+        }
+        final List<String> lines =
+            Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(1000, lines.size());
+        for (int i = 0; i < lines.size(); ++i) {
+            assertEquals(Integer.toString(i), lines.get(i));
+        }
+
+        assertThrows(ConfigurationException.class,
+            () -> pipeline.execute(TestConfigurator.create(
+                PipelineConfig.class, "-D", "pipeline.buffer=0")));
+    }
+}
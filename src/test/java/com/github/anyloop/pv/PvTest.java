@@ -0,0 +1,493 @@
+/*
+ * PvTest.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.pv;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.anyloop.TestConfigurator;
+import com.github.anyloop.chassis.ConfigurationException;
+
+/**
+ * This test checks the tensor reduction against identities of the
+ * generating function <code>G_P(a) = int (a.k)^P / (D_0 ... D_{N-1})
+ * </code> and against closed forms of two-point functions.
+ *
+ * The form factors enter <code>G_P</code> as the coefficients of
+ * <code>y^j x_{i_1} ... x_{i_m}</code> with <code>y = a.a</code> and
+ * <code>x_i = a.q_i</code>. Since the scalar integrals are independent
+ * functions, the identities must hold for the coefficient of each
+ * scalar integral separately.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public class PvTest {
+
+    private static final double DIMENSION = 4.7;
+
+    private static final PvReducer REDUCER = new PvReducer(null, 0);
+
+    /**
+     * One evaluator per kinematic point, so that the form factors of
+     * a point share their reductions.
+     */
+    private static final Map<Kinematics, PvEvaluator> EVALUATORS =
+        new IdentityHashMap<>();
+
+    /**
+     * The pinches of each kinematic point.
+     */
+    private static final Map<Kinematics, Kinematics[]> PINCHES =
+        new IdentityHashMap<>();
+
+    /**
+     * Creates a kinematic point with <code>q_0 = 0</code> from random
+     * Euclidean four-vectors.
+     */
+    private static double[][] momenta(final Random random, final int n) {
+        final double[][] q = new double[n][4];
+        for (int i = 1; i < n; ++i) {
+            for (int mu = 0; mu < 4; ++mu) {
+                q[i][mu] = 2 * random.nextDouble() - 1;
+            }
+        }
+        return q;
+    }
+
+    private static double dot(final double[] a, final double[] b) {
+        double s = 0;
+        for (int mu = 0; mu < a.length; ++mu) {
+            s += a[mu] * b[mu];
+        }
+        return s;
+    }
+
+    private static Kinematics kinematics(
+            final double[][] q,
+            final double[] masses,
+            final double dimension) {
+        final double[][] products = new double[q.length][q.length];
+        for (int i = 0; i < q.length; ++i) {
+            for (int j = 0; j < q.length; ++j) {
+                products[i][j] = dot(q[i], q[j]);
+            }
+        }
+        return new Kinematics(products, masses, dimension);
+    }
+
+    /**
+     * Removes a denominator.
+     */
+    private static Kinematics pinch(final Kinematics kin, final int k) {
+        final Kinematics[] pinches = PINCHES.computeIfAbsent(
+            kin, key -> new Kinematics[key.getPointCount()]);
+        if (pinches[k] == null) {
+            pinches[k] = newPinch(kin, k);
+        }
+        return pinches[k];
+    }
+
+    private static Kinematics newPinch(final Kinematics kin, final int k) {
+        final int n = kin.getPointCount() - 1;
+        final double[][] products = new double[n][n];
+        final double[] masses = new double[n];
+        for (int i = 0; i < n; ++i) {
+            final int a = i < k ? i : i + 1;
+            masses[i] = kin.getMass(a);
+            for (int j = 0; j < n; ++j) {
+                products[i][j] = kin.getProduct(a, j < k ? j : j + 1);
+            }
+        }
+        return new Kinematics(products, masses, kin.getDimension());
+    }
+
+    /**
+     * Maps coefficients of a pinched function to the subsets of the
+     * full one.
+     */
+    private static double[] lift(final double[] sub, final int k) {
+        final double[] full = new double[2 * sub.length];
+        for (int s = 0; s < sub.length; ++s) {
+            final int low = s & ((1 << k) - 1);
+            full[low | ((s ^ low) << 1)] = sub[s];
+        }
+        return full;
+    }
+
+    private static double[] coefficients(
+            final Kinematics kin,
+            final FormFactor m) {
+        final Reduction r =
+            EVALUATORS.computeIfAbsent(kin, REDUCER::evaluator).reduce(m);
+        final double[] c = new double[1 << kin.getPointCount()];
+        for (int s = 1; s < c.length; ++s) {
+            c[s] = r.getCoefficient(s, 0);
+        }
+        return c;
+    }
+
+    private static long factorial(final int n) {
+        return n <= 1 ? 1 : n * factorial(n - 1);
+    }
+
+    private static double multiplicity(final FormFactor m) {
+        double c = (double) factorial(m.getRank())
+            / factorial(m.getPairs()) / (1L << m.getPairs());
+        for (int i = 1; i <= PvReducer.MAX_POINTS; ++i) {
+            c /= factorial(m.count(i));
+        }
+        return c;
+    }
+
+    /**
+     * Returns <code>x_{i_1} ... x_{i_m}</code> without the factors at
+     * two positions.
+     */
+    private static double monomial(
+            final double[] x,
+            final int[] indices,
+            final int skip1,
+            final int skip2) {
+        double p = 1;
+        for (int r = 0; r < indices.length; ++r) {
+            if (r != skip1 && r != skip2) {
+                p *= x[indices[r]];
+            }
+        }
+        return p;
+    }
+
+    /**
+     * The coefficients of the scalar integrals in <code>G_P</code>.
+     */
+    private static double[] generating(
+            final Kinematics kin,
+            final int rank,
+            final double y,
+            final double[] x) {
+        final double[] g = new double[1 << kin.getPointCount()];
+        if (rank < 0) {
+            return g;
+        }
+        for (final FormFactor m : FormFactor.all(kin.getPointCount(), rank)) {
+            final double[] c = coefficients(kin, m);
+            final double w = multiplicity(m) * Math.pow(y, m.getPairs())
+                * monomial(x, m.getIndices(), -1, -1);
+            for (int s = 0; s < g.length; ++s) {
+                g[s] += w * c[s];
+            }
+        }
+        return g;
+    }
+
+    /**
+     * The coefficients in the generating function of the function
+     * without <code>D_0</code>, whose form factors refer to the loop
+     * momentum <code>k + q_1</code>.
+     */
+    private static double[] shifted(
+            final Kinematics kin,
+            final int rank,
+            final double y,
+            final double[] x) {
+        final double[] g = new double[1 << kin.getPointCount()];
+        if (kin.getPointCount() == 1 || rank < 0) {
+            return g;
+        }
+        final Kinematics sub = pinch(kin, 0);
+        final double[] xs = new double[x.length - 1];
+        for (int l = 1; l < xs.length; ++l) {
+            xs[l] = x[l + 1] - x[1];
+        }
+        double binomial = 1;
+        for (int s = rank; s >= 0; --s) {
+            final double[] c = lift(generating(sub, s, y, xs), 0);
+            final double w = binomial * Math.pow(-x[1], rank - s);
+            for (int t = 0; t < g.length; ++t) {
+                g[t] += w * c[t];
+            }
+            binomial = binomial * s / (rank - s + 1);
+        }
+        return g;
+    }
+
+    private static void assertClose(
+            final double[] expected,
+            final double[] actual,
+            final String message) {
+        double scale = 1;
+        for (int s = 0; s < expected.length; ++s) {
+            scale = Math.max(scale, Math.abs(expected[s]));
+        }
+        for (int s = 0; s < expected.length; ++s) {
+            assertEquals(expected[s], actual[s], 1e-5 * scale,
+                message + ", subset " + Integer.toBinaryString(s));
+        }
+    }
+
+    @Test
+    public void contractionWithMomenta() {
+        final Random random = new Random(1);
+        for (int n = 2; n <= PvReducer.MAX_POINTS; ++n) {
+            final double[][] q = momenta(random, n);
+            final double[] masses = new double[n];
+            for (int i = 0; i < n; ++i) {
+                masses[i] = random.nextDouble();
+            }
+            final Kinematics kin = kinematics(q, masses, DIMENSION);
+            final double[] a = momenta(random, 2)[1];
+            final double y = dot(a, a);
+            final double[] x = new double[n];
+            for (int i = 1; i < n; ++i) {
+                x[i] = dot(a, q[i]);
+            }
+            for (int rank = 1; rank <= PvReducer.MAX_RANK; ++rank) {
+                final double[] lower = generating(kin, rank - 1, y, x);
+                final double[] shifted = shifted(kin, rank - 1, y, x);
+                for (int k = 1; k < n; ++k) {
+                    // 2 q_k.d/da acting on G_P
+                    final double[] lhs = new double[1 << n];
+                    for (final FormFactor m : FormFactor.all(n, rank)) {
+                        final double[] c = coefficients(kin, m);
+                        final int[] indices = m.getIndices();
+                        final int j = m.getPairs();
+                        double w = j == 0 ? 0
+                            : 4 * j * x[k] * Math.pow(y, j - 1)
+                                * monomial(x, indices, -1, -1);
+                        for (int r = 0; r < indices.length; ++r) {
+                            w += Math.pow(y, j) * 2 * dot(q[k], q[indices[r]])
+                                * monomial(x, indices, r, -1);
+                        }
+                        w *= multiplicity(m);
+                        for (int s = 0; s < lhs.length; ++s) {
+                            lhs[s] += w * c[s];
+                        }
+                    }
+                    final double[] xk = new double[n - 1];
+                    for (int i = 1; i < n - 1; ++i) {
+                        xk[i] = x[i < k ? i : i + 1];
+                    }
+                    final double[] pinched =
+                        lift(generating(pinch(kin, k), rank - 1, y, xk), k);
+                    final double f = dot(q[k], q[k]) - masses[k] + masses[0];
+                    final double[] rhs = new double[1 << n];
+                    for (int s = 0; s < rhs.length; ++s) {
+                        rhs[s] = rank
+                            * (pinched[s] - shifted[s] - f * lower[s]);
+                    }
+                    assertClose(rhs, lhs,
+                        "N = " + n + ", P = " + rank + ", k = " + k);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void traceIdentity() {
+        final Random random = new Random(2);
+        for (int n = 1; n <= PvReducer.MAX_POINTS; ++n) {
+            final double[][] q = momenta(random, n);
+            final double[] masses = new double[n];
+            for (int i = 0; i < n; ++i) {
+                masses[i] = random.nextDouble();
+            }
+            final Kinematics kin = kinematics(q, masses, DIMENSION);
+            final double[] a = momenta(random, 2)[1];
+            final double y = dot(a, a);
+            final double[] x = new double[n];
+            for (int i = 1; i < n; ++i) {
+                x[i] = dot(a, q[i]);
+            }
+            for (int rank = 2; rank <= PvReducer.MAX_RANK; ++rank) {
+                // the d-dimensional Laplacian acting on G_P
+                final double[] lhs = new double[1 << n];
+                for (final FormFactor m : FormFactor.all(n, rank)) {
+                    final double[] c = coefficients(kin, m);
+                    final int[] indices = m.getIndices();
+                    final int j = m.getPairs();
+                    double w = j == 0 ? 0
+                        : 2 * j * (DIMENSION + 2 * j - 2 + 2 * indices.length)
+                            * Math.pow(y, j - 1)
+                            * monomial(x, indices, -1, -1);
+                    for (int r = 0; r < indices.length; ++r) {
+                        for (int t = 0; t < indices.length; ++t) {
+                            if (r != t) {
+                                w += Math.pow(y, j)
+                                    * dot(q[indices[r]], q[indices[t]])
+                                    * monomial(x, indices, r, t);
+                            }
+                        }
+                    }
+                    w *= multiplicity(m);
+                    for (int s = 0; s < lhs.length; ++s) {
+                        lhs[s] += w * c[s];
+                    }
+                }
+                final double[] lower = generating(kin, rank - 2, y, x);
+                final double[] shifted = shifted(kin, rank - 2, y, x);
+                final double[] rhs = new double[1 << n];
+                for (int s = 0; s < rhs.length; ++s) {
+                    rhs[s] = rank * (rank - 1)
+                        * (shifted[s] + masses[0] * lower[s]);
+                }
+                assertClose(rhs, lhs, "N = " + n + ", P = " + rank);
+            }
+        }
+    }
+
+    @Test
+    public void twoPointClosedForms() {
+        final double p2 = 0.3;
+        final double m0 = 0.2;
+        final double m1 = 0.5;
+        final Kinematics kin = new Kinematics(
+            new double[][] {{0, 0}, {0, p2}}, new double[] {m0, m1},
+            DIMENSION);
+        final double f1 = p2 - m1 + m0;
+
+        // B1 = (A0(m0) - A0(m1) - f1 B0) / (2 p^2)
+        final double[] b1 = coefficients(kin, FormFactor.of(0, 1));
+        assertEquals(1 / (2 * p2), b1[0b01], 1e-12);
+        assertEquals(-1 / (2 * p2), b1[0b10], 1e-12);
+        assertEquals(-f1 / (2 * p2), b1[0b11], 1e-12);
+
+        // B00 = (A0(m1) + 2 m0 B0 + f1 B1) / (2 (d - 1))
+        final double[] b00 = coefficients(kin, FormFactor.of(1));
+        final double[] a0m1 = {0, 0, 1, 0};
+        final double[] b0 = {0, 0, 0, 1};
+        for (int s = 1; s < 4; ++s) {
+            assertEquals((a0m1[s] + 2 * m0 * b0[s] + f1 * b1[s])
+                / (2 * (DIMENSION - 1)), b00[s], 1e-12);
+        }
+
+        // A00 = m^2 A0 / d
+        final Kinematics tadpole = new Kinematics(
+            new double[][] {{0}}, new double[] {m1}, DIMENSION);
+        assertEquals(m1 / DIMENSION,
+            coefficients(tadpole, FormFactor.of(1))[1], 1e-12);
+        assertEquals("T(00)", FormFactor.of(1).toString());
+    }
+
+    @Test
+    public void poleOfPentagon() {
+        final Random random = new Random(3);
+        final double[][] q = momenta(random, 5);
+        final double[] masses = {0.1, 0.2, 0.3, 0.4, 0.5};
+        final FormFactor e00 = FormFactor.of(1);
+        final Reduction atFour = REDUCER.reduce(kinematics(q, masses, 4), e00);
+        final double delta = 1e-6;
+        final Reduction nearFour =
+            REDUCER.reduce(kinematics(q, masses, 4 + delta), e00);
+        assertEquals(-3, atFour.getLowestOrder());
+        assertEquals(0, atFour.getHighestOrder());
+
+        // c(d) = R / (d - 4) + O(1), i.e. -R / 2 at epsilon^-1
+        boolean pole = false;
+        for (int s = 1; s < 1 << 5; ++s) {
+            final double residue = -2 * atFour.getCoefficient(s, -1);
+            assertEquals(residue, delta * nearFour.getCoefficient(s, 0),
+                1e-4 * (1 + Math.abs(residue)));
+            assertEquals(0, atFour.getCoefficient(s, -2));
+            pole |= residue != 0;
+        }
+        assertTrue(pole);
+        assertThrows(IllegalArgumentException.class,
+            () -> atFour.getCoefficient(1, 1));
+    }
+
+    @Test
+    public void degenerateKinematics() {
+        final double[][] q = {{0, 0, 0, 0}, {1, 0, 0, 0}, {2, 0, 0, 0}};
+        final Kinematics kin = kinematics(q, new double[] {0, 0, 0}, 4);
+        assertThrows(ArithmeticException.class,
+            () -> REDUCER.reduce(kin, FormFactor.of(0, 1)));
+        assertThrows(IllegalArgumentException.class,
+            () -> REDUCER.reduce(kin, FormFactor.of(0, 3)));
+        assertThrows(IllegalArgumentException.class,
+            () -> FormFactor.of(0, 0));
+    }
+
+    @Test
+    public void tablesAreReused(@TempDir final Path dir) throws Exception {
+        final Random random = new Random(4);
+        final Kinematics kin =
+            kinematics(momenta(random, 4), new double[] {0, 1, 0, 1}, 4);
+        final FormFactor m = FormFactor.of(1, 1, 2, 3);
+
+        final PvReducer first = new PvReducer(dir, 1);
+        final Reduction expected = first.reduce(kin, m);
+        assertTrue(first.getGeneratedTableCount() > 0);
+        assertEquals(0, first.getLoadedTableCount());
+        assertTrue(Files.isRegularFile(dir.resolve("pv-4-5.table")));
+
+        final PvReducer second = new PvReducer(dir, 1);
+        final Reduction actual = second.reduce(kin, m);
+        assertEquals(0, second.getGeneratedTableCount());
+        assertEquals(first.getGeneratedTableCount(),
+            second.getLoadedTableCount());
+        assertEquals(expected.toString(), actual.toString());
+
+        Files.write(dir.resolve("pv-4-5.table"), new byte[] {1, 2, 3});
+        final PvReducer third = new PvReducer(dir, 1);
+        assertEquals(expected.toString(), third.reduce(kin, m).toString());
+        assertEquals(1, third.getGeneratedTableCount());
+        assertEquals(first.getLoadedTableCount(), 0);
+    }
+
+    @Test
+    public void formFactorsAndTables() {
+        final List<FormFactor> all = FormFactor.all(3, 2);
+        assertEquals(4, all.size());
+        assertEquals(FormFactor.of(0, 1, 1), all.get(0));
+        assertEquals(FormFactor.of(1), all.get(3));
+        for (int n = 1; n <= PvReducer.MAX_POINTS; ++n) {
+            for (int rank = 0; rank <= PvReducer.MAX_RANK; ++rank) {
+                assertEquals(FormFactor.all(n, rank).size(),
+                    REDUCER.table(n, rank).size());
+            }
+        }
+    }
+
+    @Test
+    public void configuration() throws ConfigurationException {
+        final PvReducer reducer = PvReducer.fromConfig(
+            TestConfigurator.create(PvConfig.class));
+        assertEquals(2, reducer.getEpsilonOrder());
+        assertThrows(ConfigurationException.class, () -> PvReducer.fromConfig(
+            TestConfigurator.create(PvConfig.class,
+                "-D", "pv.epsilonOrder=-1")));
+    }
+}
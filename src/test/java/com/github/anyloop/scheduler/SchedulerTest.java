@@ -0,0 +1,196 @@
+/*
+ * SchedulerTest.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.scheduler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This test checks that the scheduler starts the expensive tasks first
+ * and that the cost model learns from the recorded timings.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public class SchedulerTest {
+
+    private static ScheduledTask<Integer> task(
+            final int propagators,
+            final List<Integer> started) {
+        return new ScheduledTask<>() {
+            @Override
+            public CostFeatures getFeatures() {
+                return new CostFeatures(1, propagators, 0);
+            }
+
+            @Override
+            public Integer call() {
+                started.add(propagators);
+                return propagators;
+            }
+        };
+    }
+
+    @Test
+    public void largestTasksStartFirst() throws IOException {
+        final List<Integer> started =
+            Collections.synchronizedList(new ArrayList<>());
+        final List<ScheduledTask<Integer>> tasks = new ArrayList<>();
+        for (final int p : new int[] {3, 7, 1, 5, 0, 6, 2, 4}) {
+            tasks.add(task(p, started));
+        }
+        try (TaskScheduler scheduler =
+                new TaskScheduler(1, new CostModel("test"))) {
+            assertEquals(List.of(3, 7, 1, 5, 0, 6, 2, 4),
+                scheduler.run(tasks));
+            assertEquals(List.of(7, 6, 5, 4, 3, 2, 1, 0), started);
+            assertEquals(8, scheduler.getReport().getTaskCount());
+            assertEquals(8, scheduler.getCostModel().getSampleCount());
+        }
+    }
+
+    @Test
+    public void tasksForkIntoThePool() throws IOException {
+        try (TaskScheduler scheduler =
+                new TaskScheduler(4, new CostModel("test"))) {
+            final List<ScheduledTask<Long>> tasks = new ArrayList<>();
+            for (int i = 1; i <= 6; ++i) {
+                final int n = 100000 * i;
+                tasks.add(new ScheduledTask<>() {
+                    @Override
+                    public CostFeatures getFeatures() {
+                        return new CostFeatures(0, n / 100000, 0);
+                    }
+
+                    @Override
+                    public Long call() {
+                        return scheduler.getPool().submit(() ->
+                            LongStream.rangeClosed(1, n).parallel().sum())
+                            .join();
+                    }
+                });
+            }
+            final List<Long> sums = scheduler.run(tasks);
+            for (int i = 1; i <= 6; ++i) {
+                final long n = 100000L * i;
+                assertEquals(n * (n + 1) / 2, sums.get(i - 1));
+            }
+            final ScheduleReport report = scheduler.getReport();
+            assertTrue(report.getUtilisation() > 0, report.toString());
+            assertTrue(report.getUtilisation() <= 1, report.toString());
+            assertTrue(report.getTail() <= report.getWallTime());
+            assertTrue(report.getEstimateRatio() > 0);
+        }
+    }
+
+    @Test
+    public void failuresAreRethrownAfterAllTasks() {
+        final AtomicInteger done = new AtomicInteger();
+        final List<ScheduledTask<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 5; ++i) {
+            final int p = i;
+            tasks.add(new ScheduledTask<>() {
+                @Override
+                public CostFeatures getFeatures() {
+                    return new CostFeatures(0, p, 0);
+                }
+
+                @Override
+                public Integer call() throws IOException {
+                    if (p == 4) {
+                        throw new IOException("task failed");
+                    }
+                    return done.incrementAndGet();
+                }
+            });
+        }
+        try (TaskScheduler scheduler =
+                new TaskScheduler(2, new CostModel("test"))) {
+            final IOException ex = assertThrows(IOException.class,
+                () -> scheduler.run(tasks));
+            assertEquals("task failed", ex.getMessage());
+            assertEquals(4, done.get());
+            assertEquals(4, scheduler.getCostModel().getSampleCount());
+        }
+        assertThrows(IllegalArgumentException.class,
+            () -> new TaskScheduler(0, new CostModel("test")));
+    }
+
+    @Test
+    public void modelLearnsFromTimings(@TempDir final Path dir)
+            throws IOException {
+        // ten times as long for every propagator, independent of the
+        // rank
+        final CostModel model = new CostModel("ibp");
+        for (int sweep = 0; sweep < 20; ++sweep) {
+            for (int p = 1; p <= 6; ++p) {
+                for (int r = 0; r <= 2; ++r) {
+                    final CostFeatures f = new CostFeatures(2, p, r);
+                    model.record(f, model.estimate(f),
+                        (long) (1000 * Math.pow(10, p)));
+                }
+            }
+        }
+        model.fit();
+        final double ratio = model.estimate(new CostFeatures(2, 5, 1))
+            / model.estimate(new CostFeatures(2, 4, 1));
+        assertEquals(10, ratio, 0.5);
+        final double rank = model.estimate(new CostFeatures(2, 5, 2))
+            / model.estimate(new CostFeatures(2, 5, 0));
+        assertEquals(1, rank, 0.1);
+
+        final Path file = dir.resolve("timings.tsv");
+        Files.write(file, List.of("diagrams\t1\t2\t0\t5\t7"),
+            StandardCharsets.UTF_8);
+        model.save(file);
+        final CostModel loaded = CostModel.load(file, "ibp");
+        assertEquals(360, loaded.getSampleCount());
+        final CostFeatures f = new CostFeatures(2, 3, 1);
+        assertEquals(model.estimate(f), loaded.estimate(f),
+            1e-6 * model.estimate(f));
+        assertEquals(1, CostModel.load(file, "diagrams").getSampleCount());
+        assertEquals(0, CostModel.load(dir.resolve("none"), "ibp")
+            .getSampleCount());
+
+        Files.write(file, List.of("ibp\t1\tx\t0\t5\t7"),
+            StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> CostModel.load(file, "ibp"));
+        assertThrows(IllegalArgumentException.class,
+            () -> new CostModel("two words"));
+    }
+}
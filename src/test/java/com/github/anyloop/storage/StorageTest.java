@@ -0,0 +1,169 @@
+/*
+ * StorageTest.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.anyloop.TestConfigurator;
+import com.github.anyloop.chassis.ConfigurationException;
+
+/**
+ * This test checks that records survive the round trip through the
+ * memory-mapped segments, also when segments are released to stay
+ * within the budget.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public class StorageTest {
+
+    private static final int SEGMENT = 4096;
+
+    private static int[] randomInts(final Random random, final int n) {
+        final int[] ints = new int[n];
+        for (int i = 0; i < n; ++i) {
+            ints[i] = i % 7 == 3 ? random.nextInt()
+                : (i > 0 ? ints[i - 1] : 0) + random.nextInt(100);
+        }
+        return ints;
+    }
+
+    private static long[] randomLongs(final Random random, final int n) {
+        return random.longs(n).toArray();
+    }
+
+    @Test
+    public void recordsSurviveEviction(@TempDir final Path dir)
+            throws IOException {
+        final Random random = new Random(42);
+        final int records = 2000;
+        final int[][] ints = new int[records][];
+        final long[][] longs = new long[records][];
+        final long[] handles = new long[records];
+        try (OffHeapStorage storage =
+                new OffHeapStorage(dir, 3 * SEGMENT, SEGMENT)) {
+            final RecordStore store = storage.createStore();
+            for (int r = 0; r < records; ++r) {
+                ints[r] = randomInts(random, random.nextInt(40));
+                longs[r] = randomLongs(random, random.nextInt(20));
+                handles[r] = store.append(
+                    ints[r], ints[r].length, longs[r], longs[r].length);
+                assertTrue(storage.getMappedBytes() <= 3 * SEGMENT);
+            }
+            assertEquals(records, store.getRecordCount());
+            assertTrue(store.getSegmentCount() > 10);
+
+            final int[] intBuffer = new int[40];
+            final long[] longBuffer = new long[20];
+            for (int k = 0; k < 3 * records; ++k) {
+                final int r = random.nextInt(records);
+                assertEquals(ints[r].length, store.getIntCount(handles[r]));
+                assertEquals(longs[r].length,
+                    store.getLongCount(handles[r]));
+                store.read(handles[r], intBuffer, longBuffer);
+                for (int i = 0; i < ints[r].length; ++i) {
+                    assertEquals(ints[r][i], intBuffer[i]);
+                }
+                for (int i = 0; i < longs[r].length; ++i) {
+                    assertEquals(longs[r][i], longBuffer[i]);
+                }
+                assertTrue(storage.getMappedBytes() <= 3 * SEGMENT);
+            }
+
+            store.close();
+            assertEquals(0, storage.getMappedBytes());
+            try (Stream<Path> files = Files.list(dir)) {
+                assertEquals(0, files.count());
+            }
+            assertThrows(IllegalStateException.class,
+                () -> store.getIntCount(handles[0]));
+        }
+    }
+
+    @Test
+    public void largeRecordGetsOwnSegment() throws IOException {
+        final Random random = new Random(7);
+        final Path dir;
+        try (OffHeapStorage storage =
+                new OffHeapStorage(null, 1L << 20, SEGMENT)) {
+            dir = storage.getDirectory();
+            final RecordStore store = storage.createStore();
+            final int[] ints = randomInts(random, 5000);
+            final long[] longs = randomLongs(random, 3000);
+            final long small = store.append(ints, 10, longs, 10);
+            final long large = store.append(
+                ints, ints.length, longs, longs.length);
+            assertEquals(2, store.getSegmentCount());
+
+            final int[] intBuffer = new int[ints.length];
+            final long[] longBuffer = new long[longs.length];
+            store.read(large, intBuffer, longBuffer);
+            assertArrayEquals(ints, intBuffer);
+            assertArrayEquals(longs, longBuffer);
+            store.read(small, intBuffer, longBuffer);
+            assertEquals(ints[9], intBuffer[9]);
+            assertEquals(longs[9], longBuffer[9]);
+        }
+        assertFalse(Files.exists(dir));
+    }
+
+    @Test
+    public void fromConfig(@TempDir final Path dir)
+            throws ConfigurationException, IOException {
+        final StorageConfig config = TestConfigurator.create(
+            StorageConfig.class,
+            "-D", "storage.offHeap=true",
+            "-D", "storage.directory=" + dir.resolve("sub"),
+            "-D", "storage.budget=65536",
+            "-D", "storage.segmentSize=4096");
+        assertTrue(config.isOffHeap());
+        try (OffHeapStorage storage = OffHeapStorage.fromConfig(config)) {
+            assertEquals(dir.resolve("sub"), storage.getDirectory());
+            assertEquals(65536, storage.getBudget());
+            storage.createStore().append(new int[1], 1, new long[1], 1);
+            assertEquals(SEGMENT, storage.getMappedBytes());
+        }
+        assertTrue(Files.isDirectory(dir.resolve("sub")));
+
+        assertThrows(ConfigurationException.class,
+            () -> OffHeapStorage.fromConfig(TestConfigurator.create(
+                StorageConfig.class, "-D", "storage.budget=0")));
+        assertThrows(ConfigurationException.class,
+            () -> OffHeapStorage.fromConfig(TestConfigurator.create(
+                StorageConfig.class, "-D", "storage.budget=4096")));
+    }
+}
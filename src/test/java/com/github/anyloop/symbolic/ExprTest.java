@@ -0,0 +1,208 @@
+/*
+ * ExprTest.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.symbolic;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This test checks canonical forms and sharing of {@link Expr}.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public class ExprTest {
+
+    private static final Expr A = Expr.symbol("a");
+    private static final Expr B = Expr.symbol("b");
+    private static final Expr C = Expr.symbol("c");
+
+    @Test
+    public void symbolsAreInterned() {
+        final int id = Symbols.intern("a");
+        assertEquals(id, Symbols.intern("a"));
+        assertEquals("a", Symbols.name(id));
+        assertSame(A, Expr.symbol(id));
+        assertSame(A, Expr.symbol("a"));
+    }
+
+    @Test
+    public void commutativeOperationsAreCanonical() {
+        assertSame(Expr.sum(A, B, C), Expr.sum(C, Expr.sum(B, A)));
+        assertSame(Expr.product(A, B, C), Expr.product(Expr.product(C, A), B));
+        assertSame(A.plus(B).times(C), C.times(B.plus(A)));
+        assertEquals("a + b + c", Expr.sum(C, A, B).toString());
+        assertEquals("a*b*c", Expr.product(B, C, A).toString());
+    }
+
+    @Test
+    public void functionArgumentsKeepTheirOrder() {
+        final Expr ab = Expr.function("g", A, B);
+        assertSame(ab, Expr.function("g", A, B));
+        assertTrue(ab != Expr.function("g", B, A));
+        assertEquals("g(a, b)", ab.toString());
+    }
+
+    @Test
+    public void likeTermsAndFactorsAreCollected() {
+        assertSame(A.times(Expr.number(2)), A.plus(A));
+        assertSame(Expr.ZERO, A.minus(A));
+        assertSame(A.pow(3), A.times(A).times(A));
+        assertSame(Expr.ONE, A.times(A.pow(-1)));
+        assertSame(B, Expr.sum(A.times(B), B, A.times(B).negate()));
+        assertSame(Expr.number(5, 6),
+            Expr.sum(Expr.number(1, 2), Expr.number(1, 3)));
+        assertSame(Expr.number(1, 4), Expr.power(Expr.number(-2), -2));
+        assertSame(A.pow(6).times(B.pow(2)), A.pow(3).times(B).pow(2));
+        assertEquals("b + 3/2*a^2", Expr.sum(
+            B, A.pow(2), Expr.number(1, 2).times(A.pow(2))).toString());
+        assertThrows(ArithmeticException.class,
+            () -> Expr.power(Expr.ZERO, -1));
+    }
+
+    @Test
+    public void subtermsAreShared() {
+        // a binary tree of depth 40 written out has 2^41 - 1 nodes
+        Expr e = A;
+        for (int i = 0; i < 40; ++i) {
+            e = Expr.function("f", e, e);
+        }
+        assertEquals((1L << 41) - 1, e.getTreeSize());
+        assertEquals(41, e.getDagSize());
+
+        Expr again = A;
+        for (int i = 0; i < 40; ++i) {
+            again = Expr.function("f", again, again);
+        }
+        assertSame(e, again);
+    }
+
+    @Test
+    public void unreferencedExpressionsAreCollected()
+            throws InterruptedException {
+        final int before = Expr.getInternedCount();
+        Expr e = Expr.symbol("collected");
+        for (int i = 0; i < 1000; ++i) {
+            e = Expr.function("g", e, Expr.number(i));
+        }
+        assertTrue(Expr.getInternedCount() >= before + 1000);
+        final WeakReference<Expr> ref = new WeakReference<>(e);
+        e = null;
+        for (int i = 0; i < 100 && ref.get() != null; ++i) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(ref.get());
+        assertTrue(Expr.getInternedCount() < before + 1000);
+
+        // a collected node is built anew under the same name
+        final Expr again = Expr.function("g",
+            Expr.symbol("collected"), Expr.ZERO);
+        assertSame(again, Expr.function("g",
+            Expr.symbol("collected"), Expr.ZERO));
+    }
+
+    @Test
+    public void parallelConstructionSharesNodes()
+            throws InterruptedException {
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final List<Expr> results = pool.submit(() ->
+                IntStream.range(0, 64).parallel()
+                    .mapToObj(ExprTest::polynomial)
+                    .collect(Collectors.toList())).join();
+            for (final Expr e : results) {
+                assertSame(results.get(0), e);
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    @Test
+    public void printedExpressionsAreReadBack() throws IOException {
+        final Expr e = Expr.sum(polynomial(3),
+            Expr.product(Expr.number(-3, 4), A.plus(B).pow(-2),
+                Expr.function("spa", A, C.negate())),
+            Expr.function("sqrt", A.minus(C)).pow(3));
+        assertSame(e, ExprReader.parse(e.toString()));
+        assertSame(A.times(B.plus(C)).pow(-1),
+            ExprReader.parse("1 / (a*(b + c))"));
+        assertSame(A.pow(-2).negate(), ExprReader.parse("-a^-2"));
+
+        try (ExprReader reader = new ExprReader(new StringReader(
+                "amp1 = a + b;\n  amp2 = (a - b)^2 ;\n"))) {
+            assertTrue(reader.next());
+            assertEquals("amp1", reader.getName());
+            assertSame(A.plus(B), reader.getExpr());
+            assertTrue(reader.next());
+            assertEquals("amp2", reader.getName());
+            assertSame(A.minus(B).pow(2), reader.getExpr());
+            assertFalse(reader.next());
+        }
+
+        for (final String bad : new String[] {
+                "a +", "a * (b", "f(a,)", "a^b", "a b"}) {
+            assertThrows(IllegalArgumentException.class,
+                () -> ExprReader.parse(bad));
+        }
+        assertThrows(IOException.class, () -> new ExprReader(
+            new StringReader("y = b\n")).next());
+    }
+
+    /**
+     * Builds the same sum of monomials in an order depending on the
+     * seed.
+     *
+     * @param seed the seed
+     * @return the sum
+     */
+    private static Expr polynomial(final int seed) {
+        final List<Expr> terms = new ArrayList<>();
+        for (int i = 0; i < 50; ++i) {
+            final int k = (i * 7 + seed) % 50;
+            terms.add(Expr.product(Expr.number(k + 1),
+                Expr.symbol("x" + (k % 5)).pow(k % 3 + 1),
+                Expr.symbol("y" + (k % 7))));
+        }
+        return Expr.sum(terms);
+    }
+}
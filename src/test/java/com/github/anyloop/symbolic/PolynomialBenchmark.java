@@ -0,0 +1,135 @@
+/*
+ * PolynomialBenchmark.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.symbolic;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks polynomial arithmetic: Fateman's dense product
+ * <code>f * (f + 1)</code> with <code>f = (1 + x + y + z + t)^n</code>,
+ * and sparse products and sums in twelve variables, which need two
+ * exponent words. The Fateman product is also collected by a
+ * {@link TermSorter}, once within its budget and once with a budget
+ * of 64 KiB, which forces it through sort files.
+ *
+ * Run with <code>mvn -Pbenchmark test -Djmh.args=PolynomialBenchmark</code>.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PolynomialBenchmark {
+
+    /**
+     * The power <code>n</code> of Fateman's benchmark.
+     */
+    @Param({"10", "15"})
+    private int power;
+
+    private Polynomial fateman;
+
+    private Polynomial fatemanPlusOne;
+
+    private Polynomial sparseA;
+
+    private Polynomial sparseB;
+
+    private MemoryBudget ample;
+
+    private MemoryBudget tight;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final CoefficientRing z = IntegerRing.INSTANCE;
+        Polynomial f = Polynomial.constant(z, 4, 1);
+        for (int v = 0; v < 4; ++v) {
+            f = f.add(Polynomial.variable(z, 4, v));
+        }
+        this.fateman = f.pow(this.power);
+        this.fatemanPlusOne =
+            this.fateman.add(Polynomial.constant(z, 4, 1));
+
+        final Random random = new Random(this.power);
+        this.sparseA = PolynomialTest.random(random, 12, 2000, 4);
+        this.sparseB = PolynomialTest.random(random, 12, 2000, 4);
+
+        this.ample = new MemoryBudget(Long.MAX_VALUE, null);
+        this.tight = new MemoryBudget(1 << 16, null);
+    }
+
+    @Benchmark
+    public Polynomial fatemanMultiply() {
+        return this.fateman.multiply(this.fatemanPlusOne);
+    }
+
+    @Benchmark
+    public Polynomial fatemanSorted() throws IOException {
+        return this.sortedProduct(this.ample);
+    }
+
+    @Benchmark
+    public Polynomial fatemanSpilled() throws IOException {
+        return this.sortedProduct(this.tight);
+    }
+
+    private Polynomial sortedProduct(final MemoryBudget budget)
+            throws IOException {
+        try (TermSorter sorter = new TermSorter(
+                this.fateman.getRing(), 4, budget)) {
+            sorter.addProduct(this.fateman, this.fatemanPlusOne);
+            return sorter.toPolynomial();
+        }
+    }
+
+    @Benchmark
+    public Polynomial sparseMultiply() {
+        return this.sparseA.multiply(this.sparseB);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Polynomial sparseAdd() {
+        return this.sparseA.add(this.sparseB);
+    }
+}
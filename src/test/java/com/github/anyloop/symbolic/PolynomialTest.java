@@ -0,0 +1,174 @@
+/*
+ * PolynomialTest.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.symbolic;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This test checks the arithmetic of {@link Polynomial} against
+ * straightforward term-by-term computations.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public class PolynomialTest {
+
+    private static final CoefficientRing Z = IntegerRing.INSTANCE;
+
+    static Polynomial random(
+            final Random random,
+            final int variables,
+            final int terms,
+            final int maxExponent) {
+        Polynomial p = Polynomial.zero(Z, variables);
+        for (int t = 0; t < terms; ++t) {
+            final int[] powers = new int[variables];
+            for (int v = 0; v < variables; ++v) {
+                powers[v] = random.nextInt(maxExponent + 1);
+            }
+            p = p.add(Polynomial.monomial(
+                Z, variables, random.nextInt(201) - 100, powers));
+        }
+        return p;
+    }
+
+    /**
+     * Expands a polynomial into a map from exponent vectors to
+     * coefficients.
+     *
+     * @param p the polynomial
+     * @return the terms
+     */
+    private static Map<String, Long> terms(final Polynomial p) {
+        final Map<String, Long> result = new HashMap<>();
+        for (int t = 0; t < p.getTermCount(); ++t) {
+            result.put(exponents(p, t), p.getCoefficient(t));
+        }
+        return result;
+    }
+
+    private static String exponents(final Polynomial p, final int t) {
+        final int[] powers = new int[p.getVariableCount()];
+        for (int v = 0; v < powers.length; ++v) {
+            powers[v] = p.getExponent(t, v);
+        }
+        return Arrays.toString(powers);
+    }
+
+    private static Map<String, Long> naiveProduct(
+            final Polynomial p,
+            final Polynomial q) {
+        final Map<String, Long> result = new HashMap<>();
+        final int n = p.getVariableCount();
+        for (int i = 0; i < p.getTermCount(); ++i) {
+            for (int j = 0; j < q.getTermCount(); ++j) {
+                final int[] powers = new int[n];
+                for (int v = 0; v < n; ++v) {
+                    powers[v] = p.getExponent(i, v) + q.getExponent(j, v);
+                }
+                result.merge(Arrays.toString(powers),
+                    p.getCoefficient(i) * q.getCoefficient(j), Long::sum);
+            }
+        }
+        result.values().removeIf(c -> c == 0);
+        return result;
+    }
+
+    @Test
+    public void binomial() {
+        final Polynomial x = Polynomial.variable(Z, 2, 0);
+        final Polynomial y = Polynomial.variable(Z, 2, 1);
+        assertEquals("1*x^2 + 2*x*y + 1*y^2",
+            x.add(y).pow(2).format("x", "y"));
+        assertEquals("1*x^2 + -1*y^2",
+            x.add(y).multiply(x.subtract(y)).format("x", "y"));
+        assertTrue(x.subtract(x).isZero());
+        assertEquals(Polynomial.zero(Z, 2), y.add(x).subtract(x.add(y)));
+    }
+
+    @Test
+    public void termsAreSortedAndUnique() {
+        final Polynomial p = random(new Random(1), 3, 200, 5);
+        for (int t = 1; t < p.getTermCount(); ++t) {
+            assertTrue(exponents(p, t - 1).compareTo(exponents(p, t)) > 0);
+        }
+    }
+
+    @Test
+    public void multiplicationMatchesNaiveExpansion() {
+        final Random random = new Random(2);
+        for (final int variables : new int[] {1, 4, 8, 11}) {
+            final Polynomial p = random(random, variables, 40, 6);
+            final Polynomial q = random(random, variables, 25, 6);
+            final Polynomial pq = p.multiply(q);
+            assertEquals(naiveProduct(p, q), terms(pq));
+            assertEquals(pq, q.multiply(p));
+            for (int t = 1; t < pq.getTermCount(); ++t) {
+                assertTrue(exponents(pq, t - 1)
+                    .compareTo(exponents(pq, t)) != 0);
+            }
+        }
+    }
+
+    @Test
+    public void ringLaws() {
+        final Random random = new Random(3);
+        final Polynomial p = random(random, 5, 30, 3);
+        final Polynomial q = random(random, 5, 30, 3);
+        final Polynomial r = random(random, 5, 30, 3);
+        assertEquals(p.add(q).multiply(r),
+            p.multiply(r).add(q.multiply(r)));
+        assertEquals(p.multiply(q).multiply(r),
+            p.multiply(q.multiply(r)));
+        assertEquals(p.scale(3), p.add(p).add(p));
+        assertEquals(p.negate(), Polynomial.zero(Z, 5).subtract(p));
+        assertEquals(p.pow(3), p.multiply(p).multiply(p));
+    }
+
+    @Test
+    public void exponentOverflow() {
+        final int[] powers = {Polynomial.MAX_EXPONENT, 0};
+        final Polynomial p = Polynomial.monomial(Z, 2, 1, powers);
+        assertThrows(ArithmeticException.class, () -> p.multiply(p));
+        assertThrows(ArithmeticException.class,
+            () -> Polynomial.monomial(Z, 2, 1,
+                new int[] {Polynomial.MAX_EXPONENT + 1, 0}));
+    }
+
+    @Test
+    public void incompatibleOperands() {
+        assertThrows(IllegalArgumentException.class,
+            () -> Polynomial.variable(Z, 2, 0).add(
+                Polynomial.variable(Z, 3, 0)));
+    }
+}
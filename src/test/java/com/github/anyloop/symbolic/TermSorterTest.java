@@ -0,0 +1,154 @@
+/*
+ * TermSorterTest.java
+ *
+ * Copyright 2020 Thomas Reiter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ *
+ *
+ */
+
+package com.github.anyloop.symbolic;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.anyloop.TestConfigurator;
+import com.github.anyloop.chassis.ConfigurationException;
+
+/**
+ * This test checks that sums collected by {@link TermSorter} are the
+ * same on the heap and in sort files.
+ *
+ * @author https://github.com/tom65536
+ * @since 0.1.0
+ */
+public class TermSorterTest {
+
+    private static final CoefficientRing Z = IntegerRing.INSTANCE;
+
+    private static long fileCount(final Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    public void productWithinBudgetStaysOnHeap(@TempDir final Path dir)
+            throws IOException {
+        final Random random = new Random(1);
+        final Polynomial p = PolynomialTest.random(random, 5, 300, 6);
+        final Polynomial q = PolynomialTest.random(random, 5, 200, 6);
+        final MemoryBudget budget = new MemoryBudget(1L << 30, dir);
+        try (TermSorter sorter = new TermSorter(Z, 5, budget)) {
+            sorter.addProduct(p, q);
+            sorter.add(p);
+            assertEquals(p.multiply(q).add(p), sorter.toPolynomial());
+            assertEquals(0, sorter.getRunCount());
+            assertEquals(budget.getUsed(), sorter.getFootprint());
+        }
+        assertEquals(0, budget.getUsed());
+        assertEquals(0, fileCount(dir));
+    }
+
+    @Test
+    public void sumBeyondBudgetIsSortedOnDisk(@TempDir final Path dir)
+            throws IOException {
+        final Random random = new Random(2);
+        final int variables = 11;
+        Polynomial expected = Polynomial.zero(Z, variables);
+        final MemoryBudget budget = new MemoryBudget(4096, dir);
+        try (TermSorter sorter = new TermSorter(Z, variables, budget)) {
+            for (int i = 0; i < 40; ++i) {
+                final Polynomial p =
+                    PolynomialTest.random(random, variables, 30, 3);
+                final Polynomial q =
+                    PolynomialTest.random(random, variables, 20, 3);
+                sorter.addProduct(p, q);
+                expected = expected.add(p.multiply(q));
+                assertTrue(budget.getUsed() <= budget.getLimit());
+            }
+            assertTrue(sorter.getSpilledTerms() > 0);
+            assertTrue(sorter.getRunCount() > 0);
+            assertTrue(sorter.getRunCount() < TermSorter.MERGE_WIDTH);
+            assertEquals(sorter.getRunCount(), fileCount(dir));
+            assertEquals(expected, sorter.toPolynomial());
+
+            // streaming yields the same terms in the same order
+            final Polynomial sum = expected;
+            final int[] t = {0};
+            final long count = sorter.forEach((coefficient, exponents) -> {
+                assertEquals(sum.getCoefficient(t[0]), coefficient);
+                for (int v = 0; v < variables; ++v) {
+                    assertEquals(sum.getExponent(t[0], v), exponents[v]);
+                }
+                ++t[0];
+            });
+            assertEquals(expected.getTermCount(), count);
+
+            // cancellation across runs and heap
+            sorter.add(expected.negate());
+            assertTrue(sorter.toPolynomial().isZero());
+        }
+        assertEquals(0, budget.getUsed());
+        assertEquals(0, fileCount(dir));
+    }
+
+    @Test
+    public void sortersShareBudget(@TempDir final Path dir)
+            throws IOException {
+        final Random random = new Random(3);
+        final Polynomial p = PolynomialTest.random(random, 3, 100, 8);
+        final long bytes = TermSorter.footprint(p.getTermCount(), 1);
+        final MemoryBudget budget = new MemoryBudget(bytes, dir);
+        try (TermSorter a = new TermSorter(Z, 3, budget);
+                TermSorter b = new TermSorter(Z, 3, budget)) {
+            a.add(p);
+            b.add(p);
+            assertEquals(bytes, budget.getUsed());
+            assertEquals(0, a.getRunCount());
+            assertEquals(1, b.getRunCount());
+            assertEquals(a.toPolynomial(), b.toPolynomial());
+            assertThrows(IllegalArgumentException.class,
+                () -> a.add(Polynomial.variable(Z, 4, 0)));
+        }
+        assertEquals(bytes, budget.getPeak());
+    }
+
+    @Test
+    public void fromConfig() throws ConfigurationException {
+        final MemoryBudget budget = MemoryBudget.fromConfig(
+            TestConfigurator.create(MemoryConfig.class));
+        assertEquals(Runtime.getRuntime().maxMemory() / 4,
+            budget.getLimit());
+        assertEquals(1000, MemoryBudget.fromConfig(
+            TestConfigurator.create(MemoryConfig.class,
+                "-D", "memory.budget=1000")).getLimit());
+        assertThrows(ConfigurationException.class,
+            () -> MemoryBudget.fromConfig(TestConfigurator.create(
+                MemoryConfig.class, "-D", "memory.budget=-1")));
+    }
+}